@@ -0,0 +1,44 @@
+package com.twsela.benchmark;
+
+import com.twsela.service.AwbService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracking-number generation and parsing in {@link AwbService}, which runs for every
+ * created shipment and every AWB lookup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AwbServiceBenchmark {
+
+    private AwbService service;
+    private String awb;
+
+    @Setup
+    public void setUp() {
+        service = new AwbService();
+        awb = service.generateAwb();
+    }
+
+    @Benchmark
+    public String generateAwb() {
+        return service.generateAwb();
+    }
+
+    @Benchmark
+    public boolean isValidAwb() {
+        return service.isValidAwb(awb);
+    }
+
+    @Benchmark
+    public LocalDate extractDate() {
+        return service.extractDate(awb);
+    }
+}
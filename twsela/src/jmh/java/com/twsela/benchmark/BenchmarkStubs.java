@@ -0,0 +1,30 @@
+package com.twsela.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+
+/**
+ * In-memory stand-ins for repository interfaces in benchmarks. Only the named methods
+ * answer; any other call throws, so an unexpected query fails the run instead of skewing it.
+ */
+final class BenchmarkStubs {
+
+    interface Answer {
+        Object answer(Object[] args);
+    }
+
+    private BenchmarkStubs() {
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> T stub(Class<T> type, Map<String, Answer> answers) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, m, args) -> {
+                    Answer answer = answers.get(m.getName());
+                    if (answer != null) {
+                        return answer.answer(args);
+                    }
+                    throw new UnsupportedOperationException(m.getName());
+                });
+    }
+}
@@ -0,0 +1,46 @@
+package com.twsela.benchmark;
+
+import com.twsela.security.JwtService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token signing and verification in {@link JwtService}. Every authenticated request
+ * parses its bearer token, so {@code isTokenValid} is on the hot path of the whole API.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtServiceBenchmark {
+
+    private static final String SUBJECT = "0501234567";
+
+    private JwtService service;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        service = new JwtService("dGVzdC1zZWNyZXQta2V5LWZvci1qd3QtdG9rZW4tbXVzdC1iZS1sb25n", 3_600_000);
+        token = service.generateToken(SUBJECT, Map.of("role", "COURIER", "userId", 42L));
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return service.generateToken(SUBJECT, Map.of("role", "COURIER", "userId", 42L));
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return service.extractUsername(token);
+    }
+
+    @Benchmark
+    public boolean isTokenValid() {
+        return service.isTokenValid(token, SUBJECT);
+    }
+}
@@ -0,0 +1,66 @@
+package com.twsela.benchmark;
+
+import com.twsela.domain.RecipientDetails;
+import com.twsela.domain.Shipment;
+import com.twsela.domain.User;
+import com.twsela.service.PdfService;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Arabic shipping-label rendering in {@link PdfService}, one label and a 50-label batch.
+ * Run from the {@code twsela} directory: the service loads its font by relative path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PdfLabelBenchmark {
+
+    private PdfService service;
+    private Shipment shipment;
+    private List<Shipment> batch;
+
+    @Setup
+    public void setUp() {
+        service = new PdfService();
+        shipment = shipment(1);
+        batch = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(shipment(i + 1));
+        }
+    }
+
+    @Benchmark
+    public byte[] shipmentLabel() throws Exception {
+        return service.generateShipmentLabel(shipment);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(50)
+    public byte[] bulkLabelsOf50() throws Exception {
+        return service.generateBulkLabels(batch);
+    }
+
+    private static Shipment shipment(int i) {
+        User merchant = new User();
+        merchant.setName("متجر النيل للإلكترونيات");
+        merchant.setPhone("01012345678");
+
+        Shipment shipment = new Shipment();
+        shipment.setId((long) i);
+        shipment.setTrackingNumber(String.format("TWS-20260301-%06d", i));
+        shipment.setMerchant(merchant);
+        shipment.setRecipientDetails(new RecipientDetails("01098765432", "أحمد محمود",
+                "١٢ شارع التحرير، الدقي، الجيزة"));
+        shipment.setCodAmount(new BigDecimal("350.00"));
+        shipment.setDeliveryFee(new BigDecimal("45.00"));
+        return shipment;
+    }
+}
@@ -0,0 +1,110 @@
+package com.twsela.benchmark;
+
+import com.twsela.domain.Contract;
+import com.twsela.domain.CustomPricingRule;
+import com.twsela.domain.Zone;
+import com.twsela.repository.ContractRepository;
+import com.twsela.repository.CustomPricingRuleRepository;
+import com.twsela.repository.DeliveryPricingRepository;
+import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.TelemetrySettingsRepository;
+import com.twsela.repository.ZoneRepository;
+import com.twsela.service.PricingEngine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.twsela.benchmark.BenchmarkStubs.stub;
+
+/**
+ * Quotes from {@link PricingEngine}'s compiled tables for 1,000 contract merchants with
+ * 20 zone-pair rules each. The target is one million single quotes per second per core;
+ * the repositories are stubs, so any accidental query shows up as a failure, not latency.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PricingEngineBenchmark {
+
+    private static final int MERCHANTS = 1_000;
+    private static final int ZONES = 20;
+    private static final BigDecimal COD = new BigDecimal("350.00");
+
+    private PricingEngine engine;
+    private List<PricingEngine.QuoteRequest> batch;
+
+    @Setup
+    public void setUp() {
+        engine = new PricingEngine(
+                stub(ContractRepository.class, Map.of("findActiveByPartyId", args -> {
+                    Contract contract = new Contract();
+                    contract.setId((Long) args[0]);
+                    contract.setContractNumber("TWS-CTR-" + args[0]);
+                    return Optional.of(contract);
+                })),
+                stub(CustomPricingRuleRepository.class, Map.of("findByContractIdAndActiveTrue", args -> rules())),
+                stub(DeliveryPricingRepository.class, Map.of("findByMerchantIdAndIsActiveTrue", args -> List.of())),
+                stub(ZoneRepository.class, Map.of("findAll", args -> List.of())),
+                stub(TelemetrySettingsRepository.class, Map.of("findBySettingKey", args -> Optional.empty())),
+                stub(ShipmentRepository.class, Map.of("countByMerchantIdAndCreatedAtBetween", args -> 500L)),
+                new SimpleMeterRegistry());
+
+        batch = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            batch.add(new PricingEngine.QuoteRequest((long) (1 + i % 25), (long) (1 + i % ZONES),
+                    (long) (1 + (i * 7) % ZONES), 1.5, COD));
+        }
+        for (long merchant = 1; merchant <= MERCHANTS; merchant++) {
+            engine.quote(merchant, 1L, 2L, 1.0, null);
+        }
+    }
+
+    @Benchmark
+    public PricingEngine.Quote quote() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return engine.quote(1L + random.nextInt(MERCHANTS), 1L + random.nextInt(ZONES),
+                1L + random.nextInt(ZONES), 2.5, COD);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(500)
+    public List<PricingEngine.Quote> quoteBatchOf500() {
+        return engine.quoteAll(batch);
+    }
+
+    private static List<CustomPricingRule> rules() {
+        List<CustomPricingRule> rules = new ArrayList<>();
+        for (int i = 0; i < ZONES; i++) {
+            CustomPricingRule rule = new CustomPricingRule();
+            rule.setId((long) i + 1);
+            rule.setZoneFrom(zone(1 + i));
+            if (i % 2 == 0) {
+                rule.setZoneTo(zone(1 + (i * 7) % ZONES));
+            }
+            rule.setBasePrice(new BigDecimal("30.00"));
+            rule.setPerKgPrice(new BigDecimal("3.00"));
+            rule.setCodFeePercent(new BigDecimal("2.50"));
+            rule.setMinimumCharge(new BigDecimal("20.00"));
+            rule.setDiscountPercent(new BigDecimal("10.00"));
+            rule.setMinMonthlyShipments(100);
+            rules.add(rule);
+        }
+        return rules;
+    }
+
+    private static Zone zone(long id) {
+        Zone zone = new Zone();
+        zone.setId(id);
+        return zone;
+    }
+}
@@ -0,0 +1,65 @@
+package com.twsela.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.config.JacksonConfig;
+import com.twsela.web.dto.ShipmentResponseDTO;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON serialization of {@link ShipmentResponseDTO} with the application's
+ * {@link ObjectMapper}, for a single shipment and a 100-row list page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ShipmentSerializationBenchmark {
+
+    private ObjectMapper objectMapper;
+    private ShipmentResponseDTO shipment;
+    private List<ShipmentResponseDTO> page;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new JacksonConfig().objectMapper();
+        shipment = shipment(1);
+        page = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            page.add(shipment(i + 1));
+        }
+    }
+
+    @Benchmark
+    public byte[] single() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(shipment);
+    }
+
+    @Benchmark
+    public byte[] pageOf100() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+
+    private static ShipmentResponseDTO shipment(int i) {
+        ShipmentResponseDTO dto = new ShipmentResponseDTO();
+        dto.setId((long) i);
+        dto.setTrackingNumber(String.format("TWS-20260301-%06d", i));
+        dto.setStatus("OUT_FOR_DELIVERY");
+        dto.setMerchantName("متجر النيل للإلكترونيات");
+        dto.setCourierName("محمد علي");
+        dto.setRecipientName("أحمد محمود");
+        dto.setRecipientPhone("01098765432");
+        dto.setDeliveryFee(new BigDecimal("45.00"));
+        dto.setCreatedAt(Instant.parse("2026-03-01T08:15:00Z"));
+        dto.setUpdatedAt(Instant.parse("2026-03-01T11:40:00Z"));
+        return dto;
+    }
+}
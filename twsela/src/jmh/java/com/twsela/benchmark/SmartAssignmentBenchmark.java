@@ -0,0 +1,91 @@
+package com.twsela.benchmark;
+
+import com.twsela.domain.AssignmentScore;
+import com.twsela.domain.CourierLocationHistory;
+import com.twsela.domain.CourierZone;
+import com.twsela.domain.Shipment;
+import com.twsela.domain.Zone;
+import com.twsela.repository.AssignmentRuleRepository;
+import com.twsela.repository.AssignmentScoreRepository;
+import com.twsela.repository.CourierLocationHistoryRepository;
+import com.twsela.repository.CourierRatingRepository;
+import com.twsela.repository.CourierZoneRepository;
+import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.UserRepository;
+import com.twsela.repository.VehicleAssignmentRepository;
+import com.twsela.service.SmartAssignmentService;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.twsela.benchmark.BenchmarkStubs.stub;
+
+/**
+ * Scores a Cairo delivery against 50 candidate couriers with {@link SmartAssignmentService}.
+ * The repositories answer from memory, so this is the CPU cost of scoring on top of the
+ * seven queries per courier that production pays.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SmartAssignmentBenchmark {
+
+    private static final int COURIERS = 50;
+
+    private SmartAssignmentService service;
+    private Shipment shipment;
+    private List<Long> candidates;
+
+    @Setup
+    public void setUp() {
+        List<CourierLocationHistory> location = List.of(new CourierLocationHistory(null,
+                new BigDecimal("30.0561"), new BigDecimal("31.2394")));
+        service = new SmartAssignmentService(
+                stub(AssignmentRuleRepository.class, Map.of("findByRuleKey", args -> Optional.empty())),
+                stub(AssignmentScoreRepository.class, Map.of("save", args -> args[0])),
+                stub(ShipmentRepository.class, Map.of(
+                        "countByCourierIdAndStatusName", args -> ((Long) args[0]) % 12,
+                        "countByCourierIdAndCreatedAtBetween", args -> 120L)),
+                stub(UserRepository.class, Map.of()),
+                stub(CourierLocationHistoryRepository.class,
+                        Map.of("findByCourierIdOrderByTimestampDesc", args -> location)),
+                stub(CourierZoneRepository.class,
+                        Map.of("findByCourierIdAndZoneId", args -> ((Long) args[0]) % 3 == 0
+                                ? List.of() : List.of(new CourierZone()))),
+                stub(CourierRatingRepository.class,
+                        Map.of("getAverageRatingByCourierId", args -> 3.5 + ((Long) args[0]) % 4 * 0.4)),
+                stub(VehicleAssignmentRepository.class,
+                        Map.of("existsByCourierIdAndStatus", args -> ((Long) args[0]) % 5 != 0)));
+
+        Zone zone = new Zone();
+        zone.setId(3L);
+        shipment = new Shipment();
+        shipment.setId(1L);
+        shipment.setZone(zone);
+        shipment.setDeliveryLatitude(new BigDecimal("30.0444"));
+        shipment.setDeliveryLongitude(new BigDecimal("31.2357"));
+
+        candidates = new ArrayList<>();
+        for (long id = 1; id <= COURIERS; id++) {
+            candidates.add(id);
+        }
+    }
+
+    @Benchmark
+    public AssignmentScore calculateScore() {
+        return service.calculateScore(7L, shipment);
+    }
+
+    @Benchmark
+    public Optional<AssignmentScore> findBestCourierOf50() {
+        return service.findBestCourier(shipment, candidates);
+    }
+}
@@ -0,0 +1,47 @@
+package com.twsela.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The great-circle distance helpers that assignment, courier search, and live tracking
+ * each carry, on the same pair of Cairo points. Lives in {@code com.twsela.service}
+ * because the helpers are package-private.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HaversineBenchmark {
+
+    // Non-final so the JIT cannot fold the arithmetic away
+    public double lat1 = 30.0444;
+    public double lng1 = 31.2357;
+    public double lat2 = 30.0561;
+    public double lng2 = 31.2394;
+
+    private LiveTrackingService liveTrackingService;
+
+    @Setup
+    public void setUp() {
+        liveTrackingService = new LiveTrackingService(null, null, null, null);
+    }
+
+    @Benchmark
+    public double smartAssignment() {
+        return SmartAssignmentService.haversineKm(lat1, lng1, lat2, lng2);
+    }
+
+    @Benchmark
+    public double courierLocation() {
+        return CourierLocationService.haversineDistance(lat1, lng1, lat2, lng2);
+    }
+
+    @Benchmark
+    public double liveTracking() {
+        return liveTrackingService.haversineDistance(lat1, lng1, lat2, lng2);
+    }
+}
@@ -0,0 +1,60 @@
+package com.twsela.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Nearest-neighbour construction and 2-opt improvement in {@link RouteOptimizationService}
+ * for a day's manifest of 20 to 100 stops scattered over Greater Cairo. Lives in
+ * {@code com.twsela.service} because both steps are package-private.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RouteOptimizationBenchmark {
+
+    private static final double DEPOT_LAT = 30.0444;
+    private static final double DEPOT_LNG = 31.2357;
+
+    @Param({"20", "50", "100"})
+    public int stops;
+
+    private RouteOptimizationService service;
+    private List<RouteOptimizationService.Waypoint> waypoints;
+    private List<RouteOptimizationService.Waypoint> nearestNeighbourRoute;
+
+    @Setup
+    public void setUp() {
+        service = new RouteOptimizationService(null, null);
+        Random random = new Random(42);
+        waypoints = new ArrayList<>();
+        for (int i = 0; i < stops; i++) {
+            waypoints.add(new RouteOptimizationService.Waypoint((long) i + 1,
+                    DEPOT_LAT + (random.nextDouble() - 0.5) * 0.3,
+                    DEPOT_LNG + (random.nextDouble() - 0.5) * 0.3));
+        }
+        nearestNeighbourRoute = service.nearestNeighbor(waypoints, DEPOT_LAT, DEPOT_LNG);
+    }
+
+    @Benchmark
+    public List<RouteOptimizationService.Waypoint> nearestNeighbor() {
+        return service.nearestNeighbor(waypoints, DEPOT_LAT, DEPOT_LNG);
+    }
+
+    @Benchmark
+    public List<RouteOptimizationService.Waypoint> twoOptImprove() {
+        return service.twoOptImprove(nearestNeighbourRoute);
+    }
+
+    @Benchmark
+    public double totalDistance() {
+        return service.calculateTotalDistance(nearestNeighbourRoute, DEPOT_LAT, DEPOT_LNG);
+    }
+}
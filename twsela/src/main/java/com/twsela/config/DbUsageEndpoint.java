@@ -0,0 +1,26 @@
+package com.twsela.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * {@code /actuator/dbusage} — استخدام قاعدة البيانات لكل مسار ومعاملة وآخر التجاوزات.
+ */
+@Component
+@Endpoint(id = "dbusage")
+public class DbUsageEndpoint {
+
+    private final DbUsageMonitor monitor;
+
+    public DbUsageEndpoint(DbUsageMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @ReadOperation
+    public Map<String, Object> dbUsage() {
+        return monitor.snapshot();
+    }
+}
@@ -0,0 +1,223 @@
+package com.twsela.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * مراقبة استخدام قاعدة البيانات لكل مسار ولكل معاملة، وكشف أنماط N+1.
+ * <p>
+ * {@link RequestTracingFilter} reports every {@code /api/} request and
+ * {@link TransactionalDbUsageAspect} every {@code @Transactional} service method. Per route
+ * the monitor records {@code twsela.http.db.time}, {@code twsela.http.db.queries},
+ * {@code twsela.http.db.entity-loads} and {@code twsela.http.db.collection-fetches} with
+ * percentile histograms; per transaction only {@code twsela.tx.db.queries}, without one.
+ * A request or transaction over any of the {@code app.db-usage.*} thresholds is logged with
+ * its most loaded entity, counted in {@code twsela.db.flagged} and kept among the most recent
+ * offenders for the {@code dbusage} actuator endpoint ({@link DbUsageEndpoint}).
+ */
+@Component
+public class DbUsageMonitor {
+
+    private static final Logger log = LoggerFactory.getLogger(DbUsageMonitor.class);
+    private static final int TOP_N = 20;
+
+    private record RouteMeters(Timer dbTime, DistributionSummary queries,
+                               DistributionSummary entityLoads, DistributionSummary collectionFetches) {}
+
+    /** Something that ran over a threshold, as shown by the endpoint. */
+    public record Flagged(Instant at, String scope, String name, int queries, int entityLoads,
+                          int collectionFetches, String topEntity) {}
+
+    private final MeterRegistry meterRegistry;
+    private final int maxQueries;
+    private final int maxEntityLoads;
+    private final int maxCollectionFetches;
+    private final int recentFlaggedSize;
+    private final Map<String, RouteMeters> routeMeters = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> txMeters = new ConcurrentHashMap<>();
+    private final Map<String, Usage> routes = new ConcurrentHashMap<>();
+    private final Map<String, Usage> transactions = new ConcurrentHashMap<>();
+    private final Deque<Flagged> recentFlagged = new ArrayDeque<>();
+    private final Counter flaggedRequests;
+    private final Counter flaggedTransactions;
+
+    public DbUsageMonitor(MeterRegistry meterRegistry,
+                          @Value("${app.db-usage.max-queries:50}") int maxQueries,
+                          @Value("${app.db-usage.max-entity-loads:500}") int maxEntityLoads,
+                          @Value("${app.db-usage.max-collection-fetches:50}") int maxCollectionFetches,
+                          @Value("${app.db-usage.recent-flagged:100}") int recentFlaggedSize) {
+        this.meterRegistry = meterRegistry;
+        this.maxQueries = maxQueries;
+        this.maxEntityLoads = maxEntityLoads;
+        this.maxCollectionFetches = maxCollectionFetches;
+        this.recentFlaggedSize = recentFlaggedSize;
+        this.flaggedRequests = flaggedCounter("request");
+        this.flaggedTransactions = flaggedCounter("transaction");
+    }
+
+    /** One finished request; {@code route} is the handler's path template, never the raw URI. */
+    void recordRequest(String method, String route, String uri, RequestDbStats stats) {
+        String key = method + " " + route;
+        RouteMeters meters = routeMeters.computeIfAbsent(key, k -> newRouteMeters(method, route));
+        meters.dbTime().record(stats.nanos(), TimeUnit.NANOSECONDS);
+        meters.queries().record(stats.queries());
+        meters.entityLoads().record(stats.entityLoads());
+        meters.collectionFetches().record(stats.collectionFetches());
+        routes.computeIfAbsent(key, k -> new Usage()).add(stats);
+
+        if (exceeds(stats)) {
+            flaggedRequests.increment();
+            flag("request", key, stats);
+            log.warn("DB usage over budget: {} {} ({}): {} queries, {} entity loads, {} collection fetches, top entity {}",
+                    method, uri, route, stats.queries(), stats.entityLoads(), stats.collectionFetches(),
+                    stats.topEntity());
+        }
+    }
+
+    /** One finished {@code @Transactional} method, named {@code Class.method}. */
+    void recordTransaction(String name, RequestDbStats stats) {
+        txMeters.computeIfAbsent(name, this::newTxMeter).record(stats.queries());
+        transactions.computeIfAbsent(name, k -> new Usage()).add(stats);
+
+        if (exceeds(stats)) {
+            flaggedTransactions.increment();
+            flag("transaction", name, stats);
+            log.warn("DB usage over budget in {}: {} queries, {} entity loads, {} collection fetches, top entity {}",
+                    name, stats.queries(), stats.entityLoads(), stats.collectionFetches(), stats.topEntity());
+        }
+    }
+
+    boolean exceeds(RequestDbStats stats) {
+        return stats.queries() > maxQueries
+                || stats.entityLoads() > maxEntityLoads
+                || stats.collectionFetches() > maxCollectionFetches;
+    }
+
+    /** Thresholds, the heaviest routes and transactions by worst case, and recent offenders. */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> thresholds = new LinkedHashMap<>();
+        thresholds.put("maxQueries", maxQueries);
+        thresholds.put("maxEntityLoads", maxEntityLoads);
+        thresholds.put("maxCollectionFetches", maxCollectionFetches);
+
+        List<Flagged> flagged;
+        synchronized (recentFlagged) {
+            flagged = new ArrayList<>(recentFlagged);
+        }
+
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("thresholds", thresholds);
+        snapshot.put("routes", top(routes));
+        snapshot.put("transactions", top(transactions));
+        snapshot.put("recentFlagged", flagged);
+        return snapshot;
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    private void flag(String scope, String name, RequestDbStats stats) {
+        Flagged flagged = new Flagged(Instant.now(), scope, name, stats.queries(), stats.entityLoads(),
+                stats.collectionFetches(), stats.topEntity());
+        synchronized (recentFlagged) {
+            if (recentFlagged.size() >= recentFlaggedSize) {
+                recentFlagged.removeLast();
+            }
+            recentFlagged.addFirst(flagged);
+        }
+    }
+
+    private static List<Map<String, Object>> top(Map<String, Usage> usages) {
+        List<Map<String, Object>> top = new ArrayList<>();
+        usages.entrySet().stream()
+                .sorted(Comparator.comparingInt((Map.Entry<String, Usage> e) -> e.getValue().maxQueries.get())
+                        .reversed())
+                .limit(TOP_N)
+                .forEach(e -> top.add(e.getValue().toMap(e.getKey())));
+        return top;
+    }
+
+    private RouteMeters newRouteMeters(String method, String route) {
+        Timer dbTime = Timer.builder("twsela.http.db.time")
+                .description("Database time per request, by route")
+                .tags("method", method, "route", route)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        return new RouteMeters(dbTime,
+                routeSummary("twsela.http.db.queries", "Database statements per request, by route", method, route),
+                routeSummary("twsela.http.db.entity-loads", "Entities loaded per request, by route", method, route),
+                routeSummary("twsela.http.db.collection-fetches", "Lazy collections fetched per request, by route",
+                        method, route));
+    }
+
+    private DistributionSummary routeSummary(String name, String description, String method, String route) {
+        return DistributionSummary.builder(name)
+                .description(description)
+                .tags("method", method, "route", route)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary newTxMeter(String name) {
+        return DistributionSummary.builder("twsela.tx.db.queries")
+                .description("Database statements per @Transactional method")
+                .tag("method", name)
+                .register(meterRegistry);
+    }
+
+    private Counter flaggedCounter(String scope) {
+        return Counter.builder("twsela.db.flagged")
+                .description("Requests and transactions over the DB usage thresholds")
+                .tag("scope", scope)
+                .register(meterRegistry);
+    }
+
+    private static final class Usage {
+        final LongAdder count = new LongAdder();
+        final LongAdder queries = new LongAdder();
+        final LongAdder entityLoads = new LongAdder();
+        final LongAdder collectionFetches = new LongAdder();
+        final AtomicInteger maxQueries = new AtomicInteger();
+        final AtomicInteger maxEntityLoads = new AtomicInteger();
+
+        void add(RequestDbStats stats) {
+            count.increment();
+            queries.add(stats.queries());
+            entityLoads.add(stats.entityLoads());
+            collectionFetches.add(stats.collectionFetches());
+            maxQueries.accumulateAndGet(stats.queries(), Math::max);
+            maxEntityLoads.accumulateAndGet(stats.entityLoads(), Math::max);
+        }
+
+        Map<String, Object> toMap(String name) {
+            long n = Math.max(1, count.sum());
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("name", name);
+            map.put("count", count.sum());
+            map.put("avgQueries", (double) queries.sum() / n);
+            map.put("maxQueries", maxQueries.get());
+            map.put("avgEntityLoads", (double) entityLoads.sum() / n);
+            map.put("maxEntityLoads", maxEntityLoads.get());
+            map.put("avgCollectionFetches", (double) collectionFetches.sum() / n);
+            return map;
+        }
+    }
+}
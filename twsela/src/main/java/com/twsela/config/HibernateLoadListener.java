@@ -0,0 +1,55 @@
+package com.twsela.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.PostLoadEvent;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * يحصي تحميل الكيانات وجلب المجموعات الكسولة للطلب أو المعاملة الجارية.
+ * <p>
+ * Every entity Hibernate materialises — by query, by {@code find}, or by initialising a
+ * lazy proxy — and every lazy collection it initialises is added to the thread's
+ * {@link RequestDbStats}. Hibernate's own statistics are not needed, so
+ * {@code hibernate.generate_statistics} stays off.
+ */
+@Component
+public class HibernateLoadListener implements PostLoadEventListener, InitializeCollectionEventListener {
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    public HibernateLoadListener(EntityManagerFactory entityManagerFactory) {
+        this.entityManagerFactory = entityManagerFactory;
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_LOAD, this);
+        registry.appendListeners(EventType.INIT_COLLECTION, this);
+    }
+
+    @Override
+    public void onPostLoad(PostLoadEvent event) {
+        RequestDbStats stats = RequestDbStats.current();
+        if (stats != null) {
+            String entityName = event.getPersister().getEntityName();
+            stats.recordEntityLoad(entityName.substring(entityName.lastIndexOf('.') + 1));
+        }
+    }
+
+    @Override
+    public void onInitializeCollection(InitializeCollectionEvent event) {
+        RequestDbStats stats = RequestDbStats.current();
+        if (stats != null) {
+            stats.recordCollectionFetch();
+        }
+    }
+}
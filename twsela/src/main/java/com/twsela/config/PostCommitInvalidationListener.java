@@ -0,0 +1,122 @@
+package com.twsela.config;
+
+import com.twsela.domain.Contract;
+import com.twsela.domain.Country;
+import com.twsela.domain.CustomPricingRule;
+import com.twsela.domain.DeliveryPricing;
+import com.twsela.domain.ExchangeRate;
+import com.twsela.domain.TaxRule;
+import com.twsela.domain.TelemetrySettings;
+import com.twsela.domain.Zone;
+import com.twsela.service.PricingEngine;
+import com.twsela.service.ReferenceDataCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * يُبطل الذاكرات المؤقتة المشتقة من قاعدة البيانات بعد أي تعديل مُثبَت على الكيانات التي تعتمد عليها.
+ * <p>
+ * Pricing tables ({@link PricingEngine}) and the reference-data snapshot
+ * ({@link ReferenceDataCache}) are built from entities edited by several services and
+ * controllers. Hibernate's post-commit events catch every such edit, and only once it is
+ * visible to the queries that rebuild the cache. Each cache maps its entity classes to an
+ * invalidation callback in the constructor; a callback runs at most once per event.
+ */
+@Component
+public class PostCommitInvalidationListener implements PostCommitInsertEventListener,
+        PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+
+    private static final Logger log = LoggerFactory.getLogger(PostCommitInvalidationListener.class);
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Map<Class<?>, List<Runnable>> callbacks = new HashMap<>();
+
+    public PostCommitInvalidationListener(EntityManagerFactory entityManagerFactory,
+                                          PricingEngine pricingEngine,
+                                          ReferenceDataCache referenceDataCache) {
+        this.entityManagerFactory = entityManagerFactory;
+        invalidateOn(pricingEngine::invalidate,
+                Contract.class, CustomPricingRule.class, DeliveryPricing.class, Zone.class, TelemetrySettings.class);
+        invalidateOn(referenceDataCache::invalidate, TaxRule.class, ExchangeRate.class, Country.class);
+    }
+
+    @PostConstruct
+    public void register() {
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(EventListenerRegistry.class);
+        registry.appendListeners(EventType.POST_COMMIT_INSERT, this);
+        registry.appendListeners(EventType.POST_COMMIT_UPDATE, this);
+        registry.appendListeners(EventType.POST_COMMIT_DELETE, this);
+    }
+
+    @Override
+    public boolean requiresPostCommitHandling(EntityPersister persister) {
+        return callbacks.containsKey(persister.getMappedClass());
+    }
+
+    @Override
+    public void onPostInsert(PostInsertEvent event) {
+        changed(event.getPersister());
+    }
+
+    @Override
+    public void onPostUpdate(PostUpdateEvent event) {
+        changed(event.getPersister());
+    }
+
+    @Override
+    public void onPostDelete(PostDeleteEvent event) {
+        changed(event.getPersister());
+    }
+
+    // Nothing was committed, so there is nothing to invalidate
+    @Override
+    public void onPostInsertCommitFailed(PostInsertEvent event) {
+    }
+
+    @Override
+    public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+    }
+
+    @Override
+    public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    private void invalidateOn(Runnable callback, Class<?>... entities) {
+        for (Class<?> entity : entities) {
+            callbacks.computeIfAbsent(entity, key -> new ArrayList<>()).add(callback);
+        }
+    }
+
+    // Hibernate calls every post-commit listener once any of them wants the entity
+    private void changed(EntityPersister persister) {
+        for (Runnable callback : callbacks.getOrDefault(persister.getMappedClass(), List.of())) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                log.error("Cache invalidation after {} commit failed: {}",
+                        persister.getMappedClass().getSimpleName(), e.getMessage(), e);
+            }
+        }
+    }
+}
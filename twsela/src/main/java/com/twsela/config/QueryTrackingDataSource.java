@@ -0,0 +1,130 @@
+package com.twsela.config;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * مصدر بيانات يحصي استعلامات الطلب الجاري ووقتها.
+ * <p>
+ * Connections are wrapped so that every {@code execute*} call on their statements is timed
+ * with {@link System#nanoTime()} and added to the request's {@link RequestDbStats}. Outside
+ * a request the wrappers only check a thread-local. Every {@link DataSource} bean is wrapped
+ * by {@link Installer} unless {@code app.tracing.db.enabled=false}; pool metrics still see
+ * the pool through {@link #unwrap}.
+ */
+public class QueryTrackingDataSource extends DelegatingDataSource {
+
+    public QueryTrackingDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return track(super.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return track(super.getConnection(username, password));
+    }
+
+    static Connection track(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(QueryTrackingDataSource.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    /** Wraps the DataSource beans as they are created. */
+    @Component
+    @ConditionalOnProperty(name = "app.tracing.db.enabled", havingValue = "true", matchIfMissing = true)
+    static class Installer implements BeanPostProcessor {
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (bean instanceof DataSource dataSource && !(bean instanceof QueryTrackingDataSource)) {
+                return new QueryTrackingDataSource(dataSource);
+            }
+            return bean;
+        }
+    }
+
+    private abstract static class Handler implements InvocationHandler {
+
+        final Object target;
+
+        Handler(Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    try {
+                        return handle(method, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+            }
+        }
+
+        abstract Object handle(Method method, Object[] args) throws Exception;
+    }
+
+    private static final class ConnectionHandler extends Handler {
+
+        ConnectionHandler(Connection target) {
+            super(target);
+        }
+
+        @Override
+        Object handle(Method method, Object[] args) throws Exception {
+            Object result = method.invoke(target, args);
+            if (result instanceof Statement statement) {
+                Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                        : statement instanceof PreparedStatement ? PreparedStatement.class
+                        : Statement.class;
+                return Proxy.newProxyInstance(QueryTrackingDataSource.class.getClassLoader(),
+                        new Class<?>[]{type}, new StatementHandler(statement));
+            }
+            return result;
+        }
+    }
+
+    private static final class StatementHandler extends Handler {
+
+        StatementHandler(Statement target) {
+            super(target);
+        }
+
+        @Override
+        Object handle(Method method, Object[] args) throws Exception {
+            RequestDbStats stats = method.getName().startsWith("execute") ? RequestDbStats.current() : null;
+            if (stats == null) {
+                return method.invoke(target, args);
+            }
+            long start = System.nanoTime();
+            try {
+                return method.invoke(target, args);
+            } finally {
+                stats.record(System.nanoTime() - start);
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.twsela.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * جسر Redis لبث رسائل WebSocket بين عدة نسخ من التطبيق.
+ * <p>
+ * Active when {@code app.websocket.broker.mode=redis}. Every node keeps its in-memory
+ * simple broker; this interceptor on the broker channel publishes each application
+ * broadcast to {@code /topic/**} or {@code /user/**} on one Redis pub/sub channel, and
+ * every other node re-injects it into its own broker channel, so subscribers see it
+ * whichever node they are connected to. User destinations are relayed unresolved and
+ * resolved by the receiving node; resolved per-session {@code /queue} destinations are
+ * never relayed. Publishing goes through a bounded queue on its own thread: a slow or
+ * unavailable Redis drops cross-node copies (counted) instead of blocking senders.
+ */
+@Component
+@ConditionalOnProperty(name = "app.websocket.broker.mode", havingValue = "redis")
+public class RedisBrokerBridge implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisBrokerBridge.class);
+
+    /** Set on messages injected from Redis so they are not published again. */
+    static final String RELAYED_HEADER = "twselaRelayedFrom";
+
+    /** What travels over Redis: the converted payload plus the headers the broker needs. */
+    record Envelope(String origin, String destination, String contentType, byte[] payload) {}
+
+    private final StringRedisTemplate redisTemplate;
+    private final Supplier<MessageChannel> brokerChannel;
+    private final ObjectMapper objectMapper;
+    private final ExecutorService publisher;
+    private final String channel;
+    private final String userPrefix;
+    private final String nodeId;
+    private RedisMessageListenerContainer listenerContainer;
+
+    private final Counter publishedCounter;
+    private final Counter receivedCounter;
+    private final Counter droppedCounter;
+
+    @Autowired
+    public RedisBrokerBridge(StringRedisTemplate redisTemplate,
+                             @Qualifier("brokerChannel") ObjectProvider<MessageChannel> brokerChannel,
+                             ObjectMapper objectMapper,
+                             MeterRegistry meterRegistry,
+                             @Value("${app.websocket.broker.redis.channel:twsela:websocket:broadcast}") String channel,
+                             @Value("${app.websocket.broker.redis.publish-queue:10000}") int publishQueue) {
+        this(redisTemplate, brokerChannel::getObject, objectMapper, meterRegistry,
+                new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(publishQueue),
+                        new CustomizableThreadFactory("ws-redis-bridge-")),
+                channel, newNodeId());
+    }
+
+    RedisBrokerBridge(StringRedisTemplate redisTemplate,
+                      Supplier<MessageChannel> brokerChannel,
+                      ObjectMapper objectMapper,
+                      MeterRegistry meterRegistry,
+                      ExecutorService publisher,
+                      String channel,
+                      String nodeId) {
+        this.redisTemplate = redisTemplate;
+        this.brokerChannel = brokerChannel;
+        this.objectMapper = objectMapper;
+        this.publisher = publisher;
+        this.channel = channel;
+        this.userPrefix = WebSocketConfig.USER_DESTINATION_PREFIX + "/";
+        this.nodeId = nodeId;
+
+        this.publishedCounter = Counter.builder("twsela.websocket.bridge.published")
+                .description("Broker messages published to Redis for other nodes")
+                .register(meterRegistry);
+        this.receivedCounter = Counter.builder("twsela.websocket.bridge.received")
+                .description("Broker messages received from other nodes through Redis")
+                .register(meterRegistry);
+        this.droppedCounter = Counter.builder("twsela.websocket.bridge.dropped")
+                .description("Broker messages not relayed because the publish queue was full or Redis failed")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        listenerContainer = new RedisMessageListenerContainer();
+        listenerContainer.setConnectionFactory(redisTemplate.getRequiredConnectionFactory());
+        listenerContainer.addMessageListener((message, pattern) -> onMessage(message.getBody()),
+                new ChannelTopic(channel));
+        listenerContainer.afterPropertiesSet();
+        listenerContainer.start();
+        log.info("WebSocket Redis bridge started on channel {} as node {}", channel, nodeId);
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        publisher.shutdown();
+        if (listenerContainer != null) {
+            listenerContainer.destroy();
+        }
+    }
+
+    // ── Outgoing ────────────────────────────────────────────────
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel sendChannel) {
+        if (shouldRelay(message)) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+            MimeType contentType = accessor.getContentType();
+            Envelope envelope = new Envelope(nodeId, accessor.getDestination(),
+                    contentType != null ? contentType.toString() : null, (byte[]) message.getPayload());
+            try {
+                publisher.execute(() -> publish(envelope));
+            } catch (RejectedExecutionException e) {
+                droppedCounter.increment();
+            }
+        }
+        return message;
+    }
+
+    boolean shouldRelay(Message<?> message) {
+        if (message.getHeaders().containsKey(RELAYED_HEADER) || !(message.getPayload() instanceof byte[])) {
+            return false;
+        }
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return false;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        return destination != null && (destination.startsWith("/topic/") || destination.startsWith(userPrefix));
+    }
+
+    private void publish(Envelope envelope) {
+        try {
+            redisTemplate.convertAndSend(channel, objectMapper.writeValueAsString(envelope));
+            publishedCounter.increment();
+        } catch (Exception e) {
+            droppedCounter.increment();
+            log.warn("Failed to relay WebSocket message to {} through Redis: {}", envelope.destination(),
+                    e.getMessage());
+        }
+    }
+
+    // ── Incoming ────────────────────────────────────────────────
+
+    void onMessage(byte[] body) {
+        Envelope envelope;
+        try {
+            envelope = objectMapper.readValue(new String(body, StandardCharsets.UTF_8), Envelope.class);
+        } catch (Exception e) {
+            log.warn("Ignoring malformed WebSocket bridge message: {}", e.getMessage());
+            return;
+        }
+        if (nodeId.equals(envelope.origin())) {
+            return;
+        }
+
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(envelope.destination());
+        if (envelope.contentType() != null) {
+            accessor.setContentType(MimeType.valueOf(envelope.contentType()));
+        }
+        accessor.setHeader(RELAYED_HEADER, envelope.origin());
+        accessor.setLeaveMutable(true);
+        brokerChannel.get().send(MessageBuilder.createMessage(envelope.payload(), accessor.getMessageHeaders()));
+        receivedCounter.increment();
+    }
+
+    private static String newNodeId() {
+        return ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
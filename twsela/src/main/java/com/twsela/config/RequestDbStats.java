@@ -0,0 +1,104 @@
+package com.twsela.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * استخدام قاعدة البيانات للطلب أو المعاملة الجارية على هذا الخيط.
+ * <p>
+ * {@link RequestTracingFilter} opens a record per request and
+ * {@link TransactionalDbUsageAspect} one per {@code @Transactional} method; records nest,
+ * and everything counted in an inner record also counts for the records around it.
+ * {@link QueryTrackingDataSource} adds executed statements, {@link HibernateLoadListener}
+ * entity loads and lazy collection fetches. Work handed to other threads (async executors,
+ * streamed responses) is not counted.
+ */
+final class RequestDbStats {
+
+    private static final ThreadLocal<RequestDbStats> CURRENT = new ThreadLocal<>();
+
+    private final RequestDbStats parent;
+    private int queries;
+    private long nanos;
+    private int entityLoads;
+    private int collectionFetches;
+    private Map<String, Integer> loadsByEntity;
+
+    private RequestDbStats(RequestDbStats parent) {
+        this.parent = parent;
+    }
+
+    /** Start counting for the current thread, inside whatever record is already open. */
+    static RequestDbStats begin() {
+        RequestDbStats stats = new RequestDbStats(CURRENT.get());
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /** Stop counting into {@code stats}; the record around it becomes current again. */
+    static void end(RequestDbStats stats) {
+        if (stats.parent != null) {
+            CURRENT.set(stats.parent);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /** The innermost open record on this thread, or null outside a request or transaction. */
+    static RequestDbStats current() {
+        return CURRENT.get();
+    }
+
+    void record(long statementNanos) {
+        for (RequestDbStats stats = this; stats != null; stats = stats.parent) {
+            stats.queries++;
+            stats.nanos += statementNanos;
+        }
+    }
+
+    void recordEntityLoad(String entityName) {
+        for (RequestDbStats stats = this; stats != null; stats = stats.parent) {
+            stats.entityLoads++;
+            if (stats.loadsByEntity == null) {
+                stats.loadsByEntity = new HashMap<>();
+            }
+            stats.loadsByEntity.merge(entityName, 1, Integer::sum);
+        }
+    }
+
+    void recordCollectionFetch() {
+        for (RequestDbStats stats = this; stats != null; stats = stats.parent) {
+            stats.collectionFetches++;
+        }
+    }
+
+    int queries() {
+        return queries;
+    }
+
+    long nanos() {
+        return nanos;
+    }
+
+    int entityLoads() {
+        return entityLoads;
+    }
+
+    int collectionFetches() {
+        return collectionFetches;
+    }
+
+    /** The most loaded entity as {@code Name×count}, the usual suspect in an N+1, or null. */
+    String topEntity() {
+        if (loadsByEntity == null) {
+            return null;
+        }
+        Map.Entry<String, Integer> top = null;
+        for (Map.Entry<String, Integer> entry : loadsByEntity.entrySet()) {
+            if (top == null || entry.getValue() > top.getValue()) {
+                top = entry;
+            }
+        }
+        return top.getKey() + "×" + top.getValue();
+    }
+}
@@ -6,23 +6,51 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.annotation.Order;
 import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerMapping;
 
 import java.io.IOException;
-import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Assigns a unique request ID to each HTTP request for traceability.
  * The ID is added to MDC for logging and returned as a response header.
+ * <p>
+ * Requests are timed with {@link System#nanoTime()} and the database statements they run
+ * and entities they load are counted (see {@link QueryTrackingDataSource} and
+ * {@link HibernateLoadListener}). Per route template — never the raw URI — the counts go to
+ * {@link DbUsageMonitor}, which is absent in web slice tests; request latency per route is
+ * Spring's {@code http.server.requests}. Each {@code /api/} request writes one line to the
+ * {@code twsela.access} logger, which logback-spring.xml sends through an async appender,
+ * and requests slower than {@code app.tracing.slow-request-ms} are logged as warnings,
+ * sampled at {@code app.tracing.slow-log-sample-rate}.
  */
 @Component
 @Order(1)
 public class RequestTracingFilter implements Filter {
 
     private static final Logger log = LoggerFactory.getLogger(RequestTracingFilter.class);
+    private static final Logger accessLog = LoggerFactory.getLogger("twsela.access");
     private static final String REQUEST_ID_HEADER = "X-Request-Id";
     private static final String MDC_KEY = "requestId";
+    private static final int MAX_REQUEST_ID_LENGTH = 64;
+    static final String UNMAPPED_ROUTE = "UNMAPPED";
+
+    private final DbUsageMonitor dbUsageMonitor;
+    private final long slowRequestNanos;
+    private final double slowLogSampleRate;
+
+    public RequestTracingFilter(@Autowired(required = false) DbUsageMonitor dbUsageMonitor,
+                                @Value("${app.tracing.slow-request-ms:1000}") long slowRequestMs,
+                                @Value("${app.tracing.slow-log-sample-rate:1.0}") double slowLogSampleRate) {
+        this.dbUsageMonitor = dbUsageMonitor;
+        this.slowRequestNanos = TimeUnit.MILLISECONDS.toNanos(slowRequestMs);
+        this.slowLogSampleRate = slowLogSampleRate;
+    }
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
@@ -30,25 +58,69 @@ public class RequestTracingFilter implements Filter {
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
 
-        // Use incoming header if present, otherwise generate
+        // Use incoming header if present and safe to log, otherwise generate
         String requestId = httpRequest.getHeader(REQUEST_ID_HEADER);
-        if (requestId == null || requestId.isBlank()) {
-            requestId = UUID.randomUUID().toString().substring(0, 8);
+        if (!isValidRequestId(requestId)) {
+            requestId = newRequestId();
         }
 
         MDC.put(MDC_KEY, requestId);
         httpResponse.setHeader(REQUEST_ID_HEADER, requestId);
 
-        long start = System.currentTimeMillis();
+        RequestDbStats stats = RequestDbStats.begin();
+        long start = System.nanoTime();
         try {
             chain.doFilter(request, response);
         } finally {
-            long duration = System.currentTimeMillis() - start;
+            long nanos = System.nanoTime() - start;
+            RequestDbStats.end(stats);
             if (httpRequest.getRequestURI().startsWith("/api/")) {
-                log.info("{} {} {} {}ms", httpRequest.getMethod(), httpRequest.getRequestURI(),
-                        httpResponse.getStatus(), duration);
+                record(httpRequest, httpResponse, nanos, stats);
             }
             MDC.remove(MDC_KEY);
         }
     }
+
+    private void record(HttpServletRequest request, HttpServletResponse response, long nanos, RequestDbStats stats) {
+        String route = routeOf(request);
+        if (dbUsageMonitor != null) {
+            dbUsageMonitor.recordRequest(request.getMethod(), route, request.getRequestURI(), stats);
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        long dbMillis = TimeUnit.NANOSECONDS.toMillis(stats.nanos());
+        if (accessLog.isInfoEnabled()) {
+            accessLog.info("{} {} {} {}ms db={}/{}ms loads={} fetches={}", request.getMethod(), route,
+                    response.getStatus(), millis, stats.queries(), dbMillis, stats.entityLoads(),
+                    stats.collectionFetches());
+        }
+        if (nanos >= slowRequestNanos && ThreadLocalRandom.current().nextDouble() < slowLogSampleRate) {
+            log.warn("Slow request {} {} ({}) {} in {}ms: {} queries, {}ms in DB", request.getMethod(),
+                    request.getRequestURI(), route, response.getStatus(), millis, stats.queries(), dbMillis);
+        }
+    }
+
+    /** The matched handler's path template, so metrics stay bounded whatever the URIs. */
+    static String routeOf(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern.toString() : UNMAPPED_ROUTE;
+    }
+
+    /** Eight hex digits from the thread's random source; no UUID, no shared lock. */
+    static String newRequestId() {
+        return Integer.toHexString(ThreadLocalRandom.current().nextInt() | 0x80000000);
+    }
+
+    private static boolean isValidRequestId(String requestId) {
+        if (requestId == null || requestId.isBlank() || requestId.length() > MAX_REQUEST_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < requestId.length(); i++) {
+            char c = requestId.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '-' && c != '_' && c != '.') {
+                return false;
+            }
+        }
+        return true;
+    }
 }
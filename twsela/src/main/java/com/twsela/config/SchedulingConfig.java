@@ -0,0 +1,35 @@
+package com.twsela.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * مجدولات المهام الدورية.
+ * <p>
+ * {@code taskScheduler} runs the short periodic loops and honours
+ * {@code spring.task.scheduling.*}. Nightly batch jobs that can run for minutes
+ * (SLA evaluation, speed-profile learning) name {@link #BATCH_SCHEDULER} in their
+ * {@code @Scheduled} so they never hold a thread the short loops are waiting for.
+ */
+@Configuration
+public class SchedulingConfig {
+
+    public static final String BATCH_SCHEDULER = "batchTaskScheduler";
+
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean(BATCH_SCHEDULER)
+    public ThreadPoolTaskScheduler batchTaskScheduler(@Value("${app.scheduling.batch-pool-size:2}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, poolSize));
+        scheduler.setThreadNamePrefix("batch-scheduling-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(false);
+        return scheduler;
+    }
+}
@@ -0,0 +1,77 @@
+package com.twsela.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * اتصالات قراءة متدفقة للاستعلامات الطويلة (التصدير، بناء التسويات، تعلّم السرعات).
+ * <p>
+ * MySQL Connector/J ignores the statement fetch size and buffers the whole result unless
+ * the connection has {@code useCursorFetch=true}. That switch changes every statement on
+ * the connection, so it is not set on the shared URL: against MySQL this component opens
+ * its own small pool with the flag added, and cursor readers take their
+ * {@link JdbcTemplate} from here. Other databases (H2 in tests) stream without the flag
+ * and reuse the main pool. Not a {@link DataSource} or {@code JdbcTemplate} bean, so Boot's
+ * primary DataSource and JdbcTemplate are unaffected.
+ */
+@Component
+public class StreamingJdbc {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingJdbc.class);
+
+    static final String CURSOR_FETCH = "useCursorFetch=true";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HikariDataSource ownPool;
+
+    @Autowired
+    public StreamingJdbc(DataSource dataSource,
+                         DataSourceProperties properties,
+                         @Value("${app.datasource.streaming.pool-size:4}") int poolSize) {
+        String url = properties.determineUrl();
+        if (url != null && url.startsWith("jdbc:mysql:")) {
+            this.ownPool = properties.initializeDataSourceBuilder()
+                    .type(HikariDataSource.class)
+                    .url(withCursorFetch(url))
+                    .build();
+            ownPool.setPoolName("streaming");
+            ownPool.setMaximumPoolSize(Math.max(1, poolSize));
+            ownPool.setMinimumIdle(0);
+            ownPool.setReadOnly(true);
+            this.jdbcTemplate = new JdbcTemplate(new QueryTrackingDataSource(ownPool));
+            log.info("Streaming reads use a dedicated cursor-fetch pool of {} connection(s)", poolSize);
+        } else {
+            this.ownPool = null;
+            this.jdbcTemplate = new JdbcTemplate(dataSource);
+        }
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (ownPool != null) {
+            ownPool.close();
+        }
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    static String withCursorFetch(String url) {
+        if (url.contains("useCursorFetch=")) {
+            return url;
+        }
+        return url + (url.indexOf('?') >= 0 ? "&" : "?") + CURSOR_FETCH;
+    }
+}
@@ -0,0 +1,42 @@
+package com.twsela.config;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * يحصي استخدام قاعدة البيانات لكل دالة {@code @Transactional} في التطبيق.
+ * <p>
+ * Each call opens a nested {@link RequestDbStats} record, so a request's totals still include
+ * it, and reports it to {@link DbUsageMonitor} as {@code Class.method}. The aspect runs just
+ * outside the transaction interceptor so statements flushed at commit are counted too.
+ * Spring Data repositories are left out; their calls count towards the service around them.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class TransactionalDbUsageAspect {
+
+    private final DbUsageMonitor monitor;
+
+    public TransactionalDbUsageAspect(DbUsageMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Around("within(com.twsela..*) && !within(com.twsela.repository..*) && "
+            + "(@annotation(org.springframework.transaction.annotation.Transactional) "
+            + "|| @within(org.springframework.transaction.annotation.Transactional))")
+    public Object track(ProceedingJoinPoint joinPoint) throws Throwable {
+        RequestDbStats stats = RequestDbStats.begin();
+        try {
+            return joinPoint.proceed();
+        } finally {
+            RequestDbStats.end(stats);
+            monitor.recordTransaction(joinPoint.getSignature().getDeclaringType().getSimpleName()
+                    + "." + joinPoint.getSignature().getName(), stats);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.twsela.config;
 
+import com.twsela.repository.UserRepository;
 import com.twsela.security.JwtService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,25 +10,39 @@ import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.stereotype.Component;
 
+import java.security.Principal;
+import java.util.Objects;
+
 /**
- * Intercepts WebSocket STOMP CONNECT frames to authenticate via JWT.
+ * Intercepts WebSocket STOMP CONNECT frames to authenticate via JWT, and SUBSCRIBE frames
+ * to scoped presence topics: {@code /topic/presence.role.{ROLE}} is open to that role and
+ * {@code /topic/presence.tenant.{tenantId}} to that tenant's users, both to OWNER and ADMIN.
  */
 @Component
 public class WebSocketAuthInterceptor implements ChannelInterceptor {
 
     private static final Logger log = LoggerFactory.getLogger(WebSocketAuthInterceptor.class);
 
+    private static final String PRESENCE_ROLE_PREFIX = "/topic/presence.role.";
+    private static final String PRESENCE_TENANT_PREFIX = "/topic/presence.tenant.";
+
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final UserRepository userRepository;
 
-    public WebSocketAuthInterceptor(JwtService jwtService, UserDetailsService userDetailsService) {
+    public WebSocketAuthInterceptor(JwtService jwtService, UserDetailsService userDetailsService,
+                                    UserRepository userRepository) {
         this.jwtService = jwtService;
         this.userDetailsService = userDetailsService;
+        this.userRepository = userRepository;
     }
 
     @Override
@@ -58,6 +73,47 @@ public class WebSocketAuthInterceptor implements ChannelInterceptor {
             }
         }
 
+        if (accessor != null && StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+            String destination = accessor.getDestination();
+            if (destination != null && destination.startsWith(PRESENCE_ROLE_PREFIX)) {
+                authorizePresence(accessor.getUser(), destination, true);
+            } else if (destination != null && destination.startsWith(PRESENCE_TENANT_PREFIX)) {
+                authorizePresence(accessor.getUser(), destination, false);
+            }
+        }
+
         return message;
     }
+
+    private void authorizePresence(Principal principal, String destination, boolean byRole) {
+        if (!(principal instanceof Authentication authentication) || !authentication.isAuthenticated()) {
+            throw new AccessDeniedException("Presence subscriptions require an authenticated session");
+        }
+        if (hasAuthority(authentication, "ROLE_OWNER") || hasAuthority(authentication, "ROLE_ADMIN")) {
+            return;
+        }
+        boolean allowed;
+        if (byRole) {
+            allowed = hasAuthority(authentication, "ROLE_" + destination.substring(PRESENCE_ROLE_PREFIX.length()));
+        } else {
+            String tenant = destination.substring(PRESENCE_TENANT_PREFIX.length());
+            allowed = userRepository.findByPhone(authentication.getName())
+                    .map(user -> Objects.toString(user.getTenantId(), null))
+                    .filter(tenant::equals)
+                    .isPresent();
+        }
+        if (!allowed) {
+            log.warn("Presence subscription to {} denied for {}", destination, authentication.getName());
+            throw new AccessDeniedException("Not allowed to subscribe to " + destination);
+        }
+    }
+
+    private static boolean hasAuthority(Authentication authentication, String authority) {
+        for (GrantedAuthority granted : authentication.getAuthorities()) {
+            if (authority.equals(granted.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
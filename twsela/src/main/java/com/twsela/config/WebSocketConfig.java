@@ -1,31 +1,125 @@
 package com.twsela.config;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.util.StringUtils;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.Locale;
 
 /**
  * WebSocket configuration with STOMP messaging.
  * Enables real-time shipment tracking and dashboard live updates.
+ * <p>
+ * {@code app.websocket.broker.mode} selects the broker:
+ * <ul>
+ *   <li>{@code simple} (default) — in-memory broker; broadcasts reach this node's clients only.</li>
+ *   <li>{@code relay} — relay to an external STOMP broker (e.g. RabbitMQ with the STOMP
+ *       plugin); user destinations and the user registry are shared across nodes.</li>
+ *   <li>{@code redis} — in-memory broker per node plus {@link RedisBrokerBridge}, which
+ *       fans application broadcasts out to the other nodes over Redis pub/sub.</li>
+ * </ul>
+ * Client channel thread pools and per-session send limits are configured in every mode;
+ * sessions that exceed the send limits are closed (see {@link WebSocketSlowConsumerMonitor}).
  */
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final Logger log = LoggerFactory.getLogger(WebSocketConfig.class);
+
+    static final String USER_DESTINATION_PREFIX = "/user";
+
+    enum BrokerMode { SIMPLE, RELAY, REDIS }
+
     private final WebSocketAuthInterceptor webSocketAuthInterceptor;
+    private final WebSocketSlowConsumerMonitor slowConsumerMonitor;
+    private final ObjectProvider<RedisBrokerBridge> redisBrokerBridge;
+    private final BrokerMode brokerMode;
+
+    @Value("${app.websocket.broker.relay.host:localhost}")
+    private String relayHost;
+    @Value("${app.websocket.broker.relay.port:61613}")
+    private int relayPort;
+    @Value("${app.websocket.broker.relay.client-login:guest}")
+    private String relayClientLogin;
+    @Value("${app.websocket.broker.relay.client-passcode:guest}")
+    private String relayClientPasscode;
+    @Value("${app.websocket.broker.relay.system-login:guest}")
+    private String relaySystemLogin;
+    @Value("${app.websocket.broker.relay.system-passcode:guest}")
+    private String relaySystemPasscode;
+    @Value("${app.websocket.broker.relay.virtual-host:}")
+    private String relayVirtualHost;
+    @Value("${app.websocket.broker.relay.heartbeat-ms:10000}")
+    private long relayHeartbeatMs;
+
+    @Value("${app.websocket.inbound.core-pool-size:8}")
+    private int inboundCorePoolSize;
+    @Value("${app.websocket.inbound.max-pool-size:32}")
+    private int inboundMaxPoolSize;
+    @Value("${app.websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+    @Value("${app.websocket.outbound.core-pool-size:8}")
+    private int outboundCorePoolSize;
+    @Value("${app.websocket.outbound.max-pool-size:32}")
+    private int outboundMaxPoolSize;
+    @Value("${app.websocket.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
+    @Value("${app.websocket.transport.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+    @Value("${app.websocket.transport.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+    @Value("${app.websocket.transport.message-size-limit:65536}")
+    private int messageSizeLimit;
 
-    public WebSocketConfig(WebSocketAuthInterceptor webSocketAuthInterceptor) {
+    public WebSocketConfig(WebSocketAuthInterceptor webSocketAuthInterceptor,
+                           WebSocketSlowConsumerMonitor slowConsumerMonitor,
+                           ObjectProvider<RedisBrokerBridge> redisBrokerBridge,
+                           @Value("${app.websocket.broker.mode:simple}") String brokerMode) {
         this.webSocketAuthInterceptor = webSocketAuthInterceptor;
+        this.slowConsumerMonitor = slowConsumerMonitor;
+        this.redisBrokerBridge = redisBrokerBridge;
+        this.brokerMode = BrokerMode.valueOf(brokerMode.trim().toUpperCase(Locale.ROOT));
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic", "/queue");
+        switch (brokerMode) {
+            case RELAY -> {
+                config.enableStompBrokerRelay("/topic", "/queue")
+                        .setRelayHost(relayHost)
+                        .setRelayPort(relayPort)
+                        .setClientLogin(relayClientLogin)
+                        .setClientPasscode(relayClientPasscode)
+                        .setSystemLogin(relaySystemLogin)
+                        .setSystemPasscode(relaySystemPasscode)
+                        .setVirtualHost(StringUtils.hasText(relayVirtualHost) ? relayVirtualHost : null)
+                        .setSystemHeartbeatSendInterval(relayHeartbeatMs)
+                        .setSystemHeartbeatReceiveInterval(relayHeartbeatMs)
+                        // A user may be connected to another node: broadcast what this node cannot resolve
+                        .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                        .setUserRegistryBroadcast("/topic/simp-user-registry");
+                log.info("WebSocket broker: STOMP relay to {}:{}", relayHost, relayPort);
+            }
+            case REDIS -> {
+                config.enableSimpleBroker("/topic", "/queue");
+                config.configureBrokerChannel().interceptors(redisBrokerBridge.getObject());
+                log.info("WebSocket broker: in-memory with Redis fan-out");
+            }
+            default -> config.enableSimpleBroker("/topic", "/queue");
+        }
         config.setApplicationDestinationPrefixes("/app");
-        config.setUserDestinationPrefix("/user");
+        config.setUserDestinationPrefix(USER_DESTINATION_PREFIX);
     }
 
     @Override
@@ -38,5 +132,25 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
         registration.interceptors(webSocketAuthInterceptor);
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit(sendTimeLimitMs)
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit)
+                .addDecoratorFactory(slowConsumerMonitor);
     }
 }
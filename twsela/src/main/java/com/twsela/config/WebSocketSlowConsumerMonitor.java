@@ -0,0 +1,50 @@
+package com.twsela.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+/**
+ * Counts WebSocket sessions evicted as slow consumers.
+ * <p>
+ * Eviction itself is Spring's: every session's sends go through a decorator that closes
+ * it with {@link CloseStatus#SESSION_NOT_RELIABLE} once a send exceeds the configured
+ * time limit or its buffered backlog exceeds the buffer limit (see
+ * {@code app.websocket.transport.*}), so one stalled client cannot hold an outbound
+ * channel thread or grow memory without bound.
+ */
+@Component
+public class WebSocketSlowConsumerMonitor implements WebSocketHandlerDecoratorFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(WebSocketSlowConsumerMonitor.class);
+
+    private final Counter evictedCounter;
+
+    public WebSocketSlowConsumerMonitor(MeterRegistry meterRegistry) {
+        this.evictedCounter = Counter.builder("twsela.websocket.sessions.evicted")
+                .description("WebSocket sessions closed because the client could not keep up")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                if (closeStatus.equalsCode(CloseStatus.SESSION_NOT_RELIABLE)) {
+                    evictedCounter.increment();
+                    log.warn("WebSocket session {} evicted as a slow consumer ({})", session.getId(),
+                            closeStatus.getReason());
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+}
@@ -12,7 +12,9 @@ import java.util.UUID;
         @Index(name = "idx_async_job_status", columnList = "status"),
         @Index(name = "idx_async_job_type", columnList = "job_type"),
         @Index(name = "idx_async_job_priority", columnList = "priority"),
-        @Index(name = "idx_async_job_scheduled", columnList = "scheduled_at")
+        @Index(name = "idx_async_job_scheduled", columnList = "scheduled_at"),
+        @Index(name = "idx_async_job_claim", columnList = "job_type, status, priority, scheduled_at"),
+        @Index(name = "idx_async_job_lease", columnList = "status, lease_expires_at")
 })
 public class AsyncJob {
 
@@ -61,6 +63,23 @@ public class AsyncJob {
     @Column(name = "error_message", columnDefinition = "TEXT")
     private String errorMessage;
 
+    /** Worker holding the lease while RUNNING; null otherwise. */
+    @Column(name = "lease_owner", length = 100)
+    private String leaseOwner;
+
+    @Column(name = "lease_expires_at")
+    private Instant leaseExpiresAt;
+
+    @Column(name = "heartbeat_at")
+    private Instant heartbeatAt;
+
+    @Column(nullable = false)
+    private int progress = 0;
+
+    /** Handler-defined resume state, kept across lease reclaims. */
+    @Column(columnDefinition = "TEXT")
+    private String checkpoint;
+
     @Column(name = "created_at", nullable = false, updatable = false)
     private Instant createdAt;
 
@@ -117,6 +136,21 @@ public class AsyncJob {
     public String getErrorMessage() { return errorMessage; }
     public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
 
+    public String getLeaseOwner() { return leaseOwner; }
+    public void setLeaseOwner(String leaseOwner) { this.leaseOwner = leaseOwner; }
+
+    public Instant getLeaseExpiresAt() { return leaseExpiresAt; }
+    public void setLeaseExpiresAt(Instant leaseExpiresAt) { this.leaseExpiresAt = leaseExpiresAt; }
+
+    public Instant getHeartbeatAt() { return heartbeatAt; }
+    public void setHeartbeatAt(Instant heartbeatAt) { this.heartbeatAt = heartbeatAt; }
+
+    public int getProgress() { return progress; }
+    public void setProgress(int progress) { this.progress = progress; }
+
+    public String getCheckpoint() { return checkpoint; }
+    public void setCheckpoint(String checkpoint) { this.checkpoint = checkpoint; }
+
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
 
@@ -9,6 +9,7 @@ import java.time.Instant;
 @Entity
 @Table(name = "chat_messages", indexes = {
         @Index(name = "idx_cm_room", columnList = "chat_room_id"),
+        @Index(name = "idx_cm_room_id", columnList = "chat_room_id, id"),
         @Index(name = "idx_cm_sent", columnList = "sent_at")
 })
 public class ChatMessage {
@@ -0,0 +1,68 @@
+package com.twsela.domain;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * عضوية مستخدم في غرفة محادثة — فهرس الغرف لكل مستخدم وآخر رسالة قرأها.
+ */
+@Entity
+@Table(name = "chat_room_members",
+        uniqueConstraints = @UniqueConstraint(name = "uk_crm_room_user", columnNames = {"chat_room_id", "user_id"}),
+        indexes = @Index(name = "idx_crm_user_room", columnList = "user_id, chat_room_id"))
+public class ChatRoomMember {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "chat_room_id", nullable = false)
+    private ChatRoom chatRoom;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    /** Highest message id the member has read; receipts only ever move it forward. */
+    @Column(name = "last_read_message_id")
+    private Long lastReadMessageId;
+
+    @Column(name = "joined_at", nullable = false, updatable = false)
+    private Instant joinedAt = Instant.now();
+
+    // ── Constructors ──
+    public ChatRoomMember() {}
+
+    public ChatRoomMember(ChatRoom chatRoom, User user) {
+        this.chatRoom = chatRoom;
+        this.user = user;
+    }
+
+    // ── Getters / Setters ──
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public ChatRoom getChatRoom() { return chatRoom; }
+    public void setChatRoom(ChatRoom chatRoom) { this.chatRoom = chatRoom; }
+
+    public User getUser() { return user; }
+    public void setUser(User user) { this.user = user; }
+
+    public Long getLastReadMessageId() { return lastReadMessageId; }
+    public void setLastReadMessageId(Long lastReadMessageId) { this.lastReadMessageId = lastReadMessageId; }
+
+    public Instant getJoinedAt() { return joinedAt; }
+    public void setJoinedAt(Instant joinedAt) { this.joinedAt = joinedAt; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ChatRoomMember that)) return false;
+        return id != null && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() { return getClass().hashCode(); }
+}
@@ -8,7 +8,8 @@ import java.util.Objects;
 
 @Entity
 @Table(name = "courier_location_history", indexes = {
-    @Index(name = "idx_clh_courier", columnList = "courier_id")
+    @Index(name = "idx_clh_courier", columnList = "courier_id"),
+    @Index(name = "idx_clh_courier_ts", columnList = "courier_id, timestamp")
 })
 public class CourierLocationHistory {
 
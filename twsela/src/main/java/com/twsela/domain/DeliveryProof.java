@@ -11,7 +11,8 @@ import java.util.Objects;
 @Entity
 @Table(name = "delivery_proofs", indexes = {
         @Index(name = "idx_dp_shipment", columnList = "shipment_id", unique = true),
-        @Index(name = "idx_dp_captured_by", columnList = "captured_by_user_id")
+        @Index(name = "idx_dp_captured_by", columnList = "captured_by_user_id"),
+        @Index(name = "idx_dp_images_pending", columnList = "images_pending, created_at")
 })
 public class DeliveryProof {
 
@@ -29,6 +30,17 @@ public class DeliveryProof {
     @Column(name = "signature_url", length = 500)
     private String signatureUrl;
 
+    @Column(name = "thumbnail_url", length = 500)
+    private String thumbnailUrl;
+
+    /** Uploaded images still waiting for ProofImagePipeline to shrink them. */
+    @Column(name = "images_pending", nullable = false)
+    private boolean imagesPending;
+
+    /** Times ProofImagePipeline has started on this proof's images. */
+    @Column(name = "image_attempts", nullable = false)
+    private int imageAttempts;
+
     @Column(name = "latitude")
     private Double latitude;
 
@@ -69,6 +81,15 @@ public class DeliveryProof {
     public String getSignatureUrl() { return signatureUrl; }
     public void setSignatureUrl(String signatureUrl) { this.signatureUrl = signatureUrl; }
 
+    public String getThumbnailUrl() { return thumbnailUrl; }
+    public void setThumbnailUrl(String thumbnailUrl) { this.thumbnailUrl = thumbnailUrl; }
+
+    public boolean isImagesPending() { return imagesPending; }
+    public void setImagesPending(boolean imagesPending) { this.imagesPending = imagesPending; }
+
+    public int getImageAttempts() { return imageAttempts; }
+    public void setImageAttempts(int imageAttempts) { this.imageAttempts = imageAttempts; }
+
     public Double getLatitude() { return latitude; }
     public void setLatitude(Double latitude) { this.latitude = latitude; }
 
@@ -0,0 +1,103 @@
+package com.twsela.domain;
+
+import com.twsela.domain.ECommerceConnection.ECommercePlatform;
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * Webhook order payload waiting in the durable ingestion queue.
+ * <p>
+ * Rows are written by the webhook endpoint right after the signature check and turned
+ * into {@link ECommerceOrder}s by the ingestion workers. {@code deliveryKey} identifies
+ * one webhook delivery (connection + payload hash), so a platform retry is stored once.
+ */
+@Entity
+@Table(name = "ecommerce_inbound_orders", indexes = {
+        @Index(name = "uk_inbound_delivery_key", columnList = "delivery_key", unique = true),
+        @Index(name = "idx_inbound_claim", columnList = "status, id"),
+        @Index(name = "idx_inbound_lease", columnList = "status, lease_expires_at")
+})
+public class ECommerceInboundOrder {
+
+    public enum InboundStatus {
+        PENDING, PROCESSING, DONE, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "connection_id", nullable = false)
+    private ECommerceConnection connection;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "platform", nullable = false, length = 20)
+    private ECommercePlatform platform;
+
+    @Column(name = "delivery_key", nullable = false, length = 100)
+    private String deliveryKey;
+
+    @Column(name = "raw_payload", nullable = false, columnDefinition = "MEDIUMTEXT")
+    private String rawPayload;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private InboundStatus status = InboundStatus.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts = 0;
+
+    @Column(name = "lease_owner", length = 100)
+    private String leaseOwner;
+
+    @Column(name = "lease_expires_at")
+    private Instant leaseExpiresAt;
+
+    @Column(name = "error_message", length = 1000)
+    private String errorMessage;
+
+    @Column(name = "received_at", nullable = false)
+    private Instant receivedAt = Instant.now();
+
+    @Column(name = "processed_at")
+    private Instant processedAt;
+
+    // ── Getters / Setters ──
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public ECommerceConnection getConnection() { return connection; }
+    public void setConnection(ECommerceConnection connection) { this.connection = connection; }
+
+    public ECommercePlatform getPlatform() { return platform; }
+    public void setPlatform(ECommercePlatform platform) { this.platform = platform; }
+
+    public String getDeliveryKey() { return deliveryKey; }
+    public void setDeliveryKey(String deliveryKey) { this.deliveryKey = deliveryKey; }
+
+    public String getRawPayload() { return rawPayload; }
+    public void setRawPayload(String rawPayload) { this.rawPayload = rawPayload; }
+
+    public InboundStatus getStatus() { return status; }
+    public void setStatus(InboundStatus status) { this.status = status; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public String getLeaseOwner() { return leaseOwner; }
+    public void setLeaseOwner(String leaseOwner) { this.leaseOwner = leaseOwner; }
+
+    public Instant getLeaseExpiresAt() { return leaseExpiresAt; }
+    public void setLeaseExpiresAt(Instant leaseExpiresAt) { this.leaseExpiresAt = leaseExpiresAt; }
+
+    public String getErrorMessage() { return errorMessage; }
+    public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
+
+    public Instant getReceivedAt() { return receivedAt; }
+    public void setReceivedAt(Instant receivedAt) { this.receivedAt = receivedAt; }
+
+    public Instant getProcessedAt() { return processedAt; }
+    public void setProcessedAt(Instant processedAt) { this.processedAt = processedAt; }
+}
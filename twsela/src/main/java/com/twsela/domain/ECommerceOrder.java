@@ -8,7 +8,9 @@ import java.time.Instant;
  * Represents an order received from an external e-commerce platform.
  */
 @Entity
-@Table(name = "ecommerce_orders")
+@Table(name = "ecommerce_orders", indexes = {
+        @Index(name = "uk_ecommerce_order_idempotency_key", columnList = "idempotency_key", unique = true)
+})
 public class ECommerceOrder {
 
     public enum OrderStatus {
@@ -41,6 +43,10 @@ public class ECommerceOrder {
     @Column(name = "status", nullable = false, length = 30)
     private OrderStatus status = OrderStatus.RECEIVED;
 
+    /** {@code <connectionId>:<externalOrderId>}; null for orders that could not be parsed. */
+    @Column(name = "idempotency_key", length = 150)
+    private String idempotencyKey;
+
     @Column(name = "raw_payload", columnDefinition = "TEXT")
     private String rawPayload;
 
@@ -76,6 +82,9 @@ public class ECommerceOrder {
     public OrderStatus getStatus() { return status; }
     public void setStatus(OrderStatus status) { this.status = status; }
 
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+
     public String getRawPayload() { return rawPayload; }
     public void setRawPayload(String rawPayload) { this.rawPayload = rawPayload; }
 
@@ -10,7 +10,8 @@ import java.util.Objects;
 @Entity
 @Table(name = "location_pings", indexes = {
         @Index(name = "idx_lp_session", columnList = "tracking_session_id"),
-        @Index(name = "idx_lp_timestamp", columnList = "timestamp")
+        @Index(name = "idx_lp_timestamp", columnList = "timestamp"),
+        @Index(name = "idx_lp_session_ts", columnList = "tracking_session_id, timestamp")
 })
 public class LocationPing {
 
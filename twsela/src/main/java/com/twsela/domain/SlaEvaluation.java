@@ -0,0 +1,120 @@
+package com.twsela.domain;
+
+import jakarta.persistence.*;
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * نتيجة SLA محسوبة مسبقاً لعقد عن فترة مراجعة — تُحدَّث كل ليلة.
+ */
+@Entity
+@Table(name = "contract_sla_evaluations",
+        uniqueConstraints = @UniqueConstraint(name = "uk_cse_contract_period",
+                columnNames = {"contract_id", "period_start", "period_end"}))
+public class SlaEvaluation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "contract_id", nullable = false)
+    private Long contractId;
+
+    /** First instant of the review period (Africa/Cairo midnight). */
+    @Column(name = "period_start", nullable = false)
+    private Instant periodStart;
+
+    /** Last instant of the review period, inclusive; still in the future while the period runs. */
+    @Column(name = "period_end", nullable = false)
+    private Instant periodEnd;
+
+    @Column(name = "total_shipments", nullable = false)
+    private long totalShipments;
+
+    @Column(name = "delivered_shipments", nullable = false)
+    private long deliveredShipments;
+
+    @Column(name = "late_shipments", nullable = false)
+    private long lateShipments;
+
+    @Column(name = "lost_shipments", nullable = false)
+    private long lostShipments;
+
+    @Column(name = "target_rate", nullable = false)
+    private double targetRate;
+
+    @Column(name = "actual_rate", nullable = false)
+    private double actualRate;
+
+    @Column(name = "compliant", nullable = false)
+    private boolean compliant;
+
+    @Column(name = "late_penalties", nullable = false, precision = 12, scale = 2)
+    private BigDecimal latePenalties = BigDecimal.ZERO;
+
+    @Column(name = "lost_penalties", nullable = false, precision = 12, scale = 2)
+    private BigDecimal lostPenalties = BigDecimal.ZERO;
+
+    @Column(name = "total_penalties", nullable = false, precision = 12, scale = 2)
+    private BigDecimal totalPenalties = BigDecimal.ZERO;
+
+    /** Shipments created up to this instant are counted. */
+    @Column(name = "evaluated_at", nullable = false)
+    private Instant evaluatedAt = Instant.now();
+
+    // ── Constructors ──
+    public SlaEvaluation() {}
+
+    public SlaEvaluation(Long contractId, Instant periodStart, Instant periodEnd) {
+        this.contractId = contractId;
+        this.periodStart = periodStart;
+        this.periodEnd = periodEnd;
+    }
+
+    // ── Getters / Setters ──
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getContractId() { return contractId; }
+    public void setContractId(Long contractId) { this.contractId = contractId; }
+
+    public Instant getPeriodStart() { return periodStart; }
+    public void setPeriodStart(Instant periodStart) { this.periodStart = periodStart; }
+
+    public Instant getPeriodEnd() { return periodEnd; }
+    public void setPeriodEnd(Instant periodEnd) { this.periodEnd = periodEnd; }
+
+    public long getTotalShipments() { return totalShipments; }
+    public void setTotalShipments(long totalShipments) { this.totalShipments = totalShipments; }
+
+    public long getDeliveredShipments() { return deliveredShipments; }
+    public void setDeliveredShipments(long deliveredShipments) { this.deliveredShipments = deliveredShipments; }
+
+    public long getLateShipments() { return lateShipments; }
+    public void setLateShipments(long lateShipments) { this.lateShipments = lateShipments; }
+
+    public long getLostShipments() { return lostShipments; }
+    public void setLostShipments(long lostShipments) { this.lostShipments = lostShipments; }
+
+    public double getTargetRate() { return targetRate; }
+    public void setTargetRate(double targetRate) { this.targetRate = targetRate; }
+
+    public double getActualRate() { return actualRate; }
+    public void setActualRate(double actualRate) { this.actualRate = actualRate; }
+
+    public boolean isCompliant() { return compliant; }
+    public void setCompliant(boolean compliant) { this.compliant = compliant; }
+
+    public BigDecimal getLatePenalties() { return latePenalties; }
+    public void setLatePenalties(BigDecimal latePenalties) { this.latePenalties = latePenalties; }
+
+    public BigDecimal getLostPenalties() { return lostPenalties; }
+    public void setLostPenalties(BigDecimal lostPenalties) { this.lostPenalties = lostPenalties; }
+
+    public BigDecimal getTotalPenalties() { return totalPenalties; }
+    public void setTotalPenalties(BigDecimal totalPenalties) { this.totalPenalties = totalPenalties; }
+
+    public Instant getEvaluatedAt() { return evaluatedAt; }
+    public void setEvaluatedAt(Instant evaluatedAt) { this.evaluatedAt = evaluatedAt; }
+}
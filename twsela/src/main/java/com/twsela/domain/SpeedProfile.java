@@ -0,0 +1,94 @@
+package com.twsela.domain;
+
+import jakarta.persistence.*;
+import java.time.Instant;
+
+/**
+ * ملف سرعة مُتعلَّم لمنطقة وساعة من اليوم — من نقاط الموقع التاريخية للمناديب.
+ */
+@Entity
+@Table(name = "speed_profiles",
+        uniqueConstraints = @UniqueConstraint(name = "uk_sp_zone_hour", columnNames = {"zone_id", "hour_of_day"}))
+public class SpeedProfile {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "zone_id", nullable = false)
+    private Long zoneId;
+
+    /** Hour of day (0–23, Africa/Cairo) the observations started in. */
+    @Column(name = "hour_of_day", nullable = false)
+    private int hourOfDay;
+
+    /** Travel speed including short halts such as traffic lights; longer stops count as dwell. */
+    @Column(name = "speed_kmh", nullable = false)
+    private double speedKmh;
+
+    /** Driven path length over straight-line distance for trips in this zone and hour. */
+    @Column(name = "detour_factor", nullable = false)
+    private double detourFactor;
+
+    /** Observed travel time behind {@link #speedKmh}; low counts fall back to coarser profiles. */
+    @Column(name = "sample_seconds", nullable = false)
+    private long sampleSeconds;
+
+    /** Average time stopped at a stop (a halt of at least a minute and a half). */
+    @Column(name = "stop_dwell_seconds", nullable = false)
+    private double stopDwellSeconds;
+
+    /** Stops behind {@link #stopDwellSeconds}. */
+    @Column(name = "stop_count", nullable = false)
+    private int stopCount;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt = Instant.now();
+
+    // ── Constructors ──
+    public SpeedProfile() {}
+
+    public SpeedProfile(Long zoneId, int hourOfDay) {
+        this.zoneId = zoneId;
+        this.hourOfDay = hourOfDay;
+    }
+
+    // ── Getters / Setters ──
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getZoneId() { return zoneId; }
+    public void setZoneId(Long zoneId) { this.zoneId = zoneId; }
+
+    public int getHourOfDay() { return hourOfDay; }
+    public void setHourOfDay(int hourOfDay) { this.hourOfDay = hourOfDay; }
+
+    public double getSpeedKmh() { return speedKmh; }
+    public void setSpeedKmh(double speedKmh) { this.speedKmh = speedKmh; }
+
+    public double getDetourFactor() { return detourFactor; }
+    public void setDetourFactor(double detourFactor) { this.detourFactor = detourFactor; }
+
+    public long getSampleSeconds() { return sampleSeconds; }
+    public void setSampleSeconds(long sampleSeconds) { this.sampleSeconds = sampleSeconds; }
+
+    public double getStopDwellSeconds() { return stopDwellSeconds; }
+    public void setStopDwellSeconds(double stopDwellSeconds) { this.stopDwellSeconds = stopDwellSeconds; }
+
+    public int getStopCount() { return stopCount; }
+    public void setStopCount(int stopCount) { this.stopCount = stopCount; }
+
+    public Instant getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(Instant updatedAt) { this.updatedAt = updatedAt; }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SpeedProfile that)) return false;
+        return id != null && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() { return getClass().hashCode(); }
+}
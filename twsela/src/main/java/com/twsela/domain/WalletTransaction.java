@@ -6,12 +6,14 @@ import java.time.Instant;
 
 /**
  * Represents a single transaction (credit or debit) on a wallet.
+ * Rows are append-only; the wallet balance is maintained alongside by atomic updates.
  */
 @Entity
 @Table(name = "wallet_transactions", indexes = {
     @Index(name = "idx_wt_wallet", columnList = "wallet_id"),
     @Index(name = "idx_wt_created_at", columnList = "created_at"),
-    @Index(name = "idx_wt_reference", columnList = "reference_id")
+    @Index(name = "idx_wt_reference", columnList = "reference_id"),
+    @Index(name = "uk_wt_idempotency_key", columnList = "idempotency_key", unique = true)
 })
 public class WalletTransaction {
 
@@ -60,6 +62,10 @@ public class WalletTransaction {
     @Column(name = "description", length = 255)
     private String description;
 
+    /** Unique per posting when set; a replayed posting with the same key is skipped. */
+    @Column(name = "idempotency_key", length = 100)
+    private String idempotencyKey;
+
     @Column(name = "created_at", nullable = false)
     private Instant createdAt = Instant.now();
 
@@ -105,6 +111,9 @@ public class WalletTransaction {
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
 
+    public String getIdempotencyKey() { return idempotencyKey; }
+    public void setIdempotencyKey(String idempotencyKey) { this.idempotencyKey = idempotencyKey; }
+
     public Instant getCreatedAt() { return createdAt; }
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
 }
@@ -1,12 +1,20 @@
 package com.twsela.repository;
 
 import com.twsela.domain.AsyncJob;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -27,4 +35,80 @@ public interface AsyncJobRepository extends JpaRepository<AsyncJob, Long> {
     Optional<AsyncJob> findByJobId(String jobId);
 
     long countByStatus(AsyncJob.JobStatus status);
+
+    // ── Worker leases ──────────────────────────────────────────
+
+    /**
+     * Lock the next due jobs of a type by priority. Lock timeout -2 renders
+     * {@code FOR UPDATE SKIP LOCKED}, so concurrent workers never block on each other.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT j FROM AsyncJob j WHERE j.jobType = :jobType AND j.status = :status AND j.scheduledAt <= :now " +
+           "ORDER BY j.priority ASC, j.createdAt ASC")
+    List<AsyncJob> lockNextDue(@Param("jobType") String jobType,
+                               @Param("status") AsyncJob.JobStatus status,
+                               @Param("now") Instant now,
+                               Pageable pageable);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE AsyncJob j SET j.leaseExpiresAt = :expiresAt, j.heartbeatAt = :now, j.updatedAt = :now " +
+           "WHERE j.id IN :ids AND j.leaseOwner = :owner AND j.status = :status")
+    int renewLeases(@Param("owner") String owner,
+                    @Param("ids") Collection<Long> ids,
+                    @Param("status") AsyncJob.JobStatus status,
+                    @Param("expiresAt") Instant expiresAt,
+                    @Param("now") Instant now);
+
+    @Query("SELECT j.id FROM AsyncJob j WHERE j.id IN :ids AND j.leaseOwner = :owner AND j.status = :status")
+    List<Long> findLeasedIds(@Param("owner") String owner,
+                             @Param("ids") Collection<Long> ids,
+                             @Param("status") AsyncJob.JobStatus status);
+
+    /**
+     * Record progress (and a checkpoint when non-null) for a job this worker still leases.
+     * Returns 0 when the lease was lost or the job was cancelled.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AsyncJob j SET j.progress = :progress, j.checkpoint = COALESCE(:checkpoint, j.checkpoint), " +
+           "j.heartbeatAt = :now, j.updatedAt = :now " +
+           "WHERE j.id = :id AND j.leaseOwner = :owner AND j.status = :status")
+    int updateProgress(@Param("id") Long id,
+                       @Param("owner") String owner,
+                       @Param("status") AsyncJob.JobStatus status,
+                       @Param("progress") int progress,
+                       @Param("checkpoint") String checkpoint,
+                       @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE AsyncJob j SET j.status = :failed, j.retryCount = j.retryCount + 1, j.errorMessage = :reason, " +
+           "j.completedAt = :now, j.leaseOwner = NULL, j.leaseExpiresAt = NULL, j.updatedAt = :now " +
+           "WHERE j.status = :running AND j.leaseExpiresAt < :now AND j.retryCount + 1 >= j.maxRetries")
+    int failExpiredLeases(@Param("running") AsyncJob.JobStatus running,
+                          @Param("failed") AsyncJob.JobStatus failed,
+                          @Param("reason") String reason,
+                          @Param("now") Instant now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE AsyncJob j SET j.status = :queued, j.retryCount = j.retryCount + 1, " +
+           "j.leaseOwner = NULL, j.leaseExpiresAt = NULL, j.updatedAt = :now " +
+           "WHERE j.status = :running AND j.leaseExpiresAt < :now")
+    int requeueExpiredLeases(@Param("running") AsyncJob.JobStatus running,
+                             @Param("queued") AsyncJob.JobStatus queued,
+                             @Param("now") Instant now);
+
+    /** Hand jobs back to the queue without counting a retry (graceful shutdown). */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AsyncJob j SET j.status = :queued, j.leaseOwner = NULL, j.leaseExpiresAt = NULL, j.updatedAt = :now " +
+           "WHERE j.id IN :ids AND j.leaseOwner = :owner AND j.status = :running")
+    int releaseLeases(@Param("owner") String owner,
+                      @Param("ids") Collection<Long> ids,
+                      @Param("running") AsyncJob.JobStatus running,
+                      @Param("queued") AsyncJob.JobStatus queued,
+                      @Param("now") Instant now);
 }
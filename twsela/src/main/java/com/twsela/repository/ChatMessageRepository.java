@@ -1,7 +1,10 @@
 package com.twsela.repository;
 
 import com.twsela.domain.ChatMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -14,4 +17,13 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     List<ChatMessage> findByChatRoomIdOrderBySentAtDesc(Long chatRoomId);
 
     long countByChatRoomId(Long chatRoomId);
+
+    /** Newest messages of a room, newest first (keyset page one). */
+    @Query("SELECT m FROM ChatMessage m JOIN FETCH m.sender WHERE m.chatRoom.id = :roomId ORDER BY m.id DESC")
+    List<ChatMessage> findLatest(@Param("roomId") Long roomId, Pageable pageable);
+
+    /** Messages older than {@code beforeId}, newest first — seeks on idx_cm_room_id, no OFFSET. */
+    @Query("SELECT m FROM ChatMessage m JOIN FETCH m.sender " +
+           "WHERE m.chatRoom.id = :roomId AND m.id < :beforeId ORDER BY m.id DESC")
+    List<ChatMessage> findBefore(@Param("roomId") Long roomId, @Param("beforeId") Long beforeId, Pageable pageable);
 }
@@ -0,0 +1,38 @@
+package com.twsela.repository;
+
+import com.twsela.domain.ChatRoom;
+import com.twsela.domain.ChatRoomMember;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface ChatRoomMemberRepository extends JpaRepository<ChatRoomMember, Long> {
+
+    /** Rooms a user belongs to, newest first, resolved through idx_crm_user_room. */
+    @Query("SELECT r FROM ChatRoomMember m JOIN m.chatRoom r WHERE m.user.id = :userId ORDER BY r.id DESC")
+    List<ChatRoom> findRoomsByUserId(@Param("userId") Long userId);
+
+    @Query("SELECT m.user.id FROM ChatRoomMember m WHERE m.chatRoom.id = :roomId ORDER BY m.user.id")
+    List<Long> findUserIdsByRoomId(@Param("roomId") Long roomId);
+
+    boolean existsByChatRoomIdAndUserId(Long chatRoomId, Long userId);
+
+    /**
+     * Move a member's read marker forward; an older receipt never moves it back.
+     *
+     * @return 1 if the marker moved
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ChatRoomMember m SET m.lastReadMessageId = :messageId " +
+           "WHERE m.chatRoom.id = :roomId AND m.user.id = :userId " +
+           "AND (m.lastReadMessageId IS NULL OR m.lastReadMessageId < :messageId)")
+    int advanceLastRead(@Param("roomId") Long roomId, @Param("userId") Long userId,
+                        @Param("messageId") Long messageId);
+}
@@ -11,8 +11,6 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
 
     List<ChatRoom> findByShipmentId(Long shipmentId);
 
-    List<ChatRoom> findByParticipantsContaining(String userId);
-
     List<ChatRoom> findByShipmentIdAndRoomType(Long shipmentId, ChatRoom.RoomType roomType);
 
     List<ChatRoom> findByShipmentIdAndStatus(Long shipmentId, ChatRoom.RoomStatus status);
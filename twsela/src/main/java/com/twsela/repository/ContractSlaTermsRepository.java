@@ -2,12 +2,17 @@ package com.twsela.repository;
 
 import com.twsela.domain.ContractSlaTerms;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ContractSlaTermsRepository extends JpaRepository<ContractSlaTerms, Long> {
 
     Optional<ContractSlaTerms> findByContractId(Long contractId);
+
+    @Query("SELECT t FROM ContractSlaTerms t JOIN FETCH t.contract c JOIN FETCH c.party WHERE c.status = 'ACTIVE'")
+    List<ContractSlaTerms> findAllForActiveContracts();
 }
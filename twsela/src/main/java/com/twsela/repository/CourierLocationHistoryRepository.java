@@ -7,10 +7,13 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface CourierLocationHistoryRepository extends JpaRepository<CourierLocationHistory, Long> {
     List<CourierLocationHistory> findByCourierIdOrderByTimestampDesc(Long courierId);
+
+    Optional<CourierLocationHistory> findFirstByCourierIdOrderByTimestampDesc(Long courierId);
     
     @Query("SELECT clh FROM CourierLocationHistory clh WHERE clh.courier.id = :courierId AND clh.timestamp >= :fromTime ORDER BY clh.timestamp DESC")
     List<CourierLocationHistory> findByCourierIdAndTimestampAfter(@Param("courierId") Long courierId, @Param("fromTime") Instant fromTime);
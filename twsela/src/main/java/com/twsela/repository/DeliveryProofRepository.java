@@ -1,9 +1,16 @@
 package com.twsela.repository;
 
 import com.twsela.domain.DeliveryProof;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,4 +19,43 @@ public interface DeliveryProofRepository extends JpaRepository<DeliveryProof, Lo
     Optional<DeliveryProof> findByShipmentId(Long shipmentId);
 
     boolean existsByShipmentId(Long shipmentId);
+
+    /** Proofs whose images still wait for processing and have attempts left, oldest first. */
+    @Query("SELECT p.id FROM DeliveryProof p " +
+           "WHERE p.imagesPending = true AND p.imageAttempts < :maxAttempts AND p.createdAt < :before " +
+           "ORDER BY p.createdAt, p.id")
+    List<Long> findPendingImageIds(@Param("before") Instant before,
+                                   @Param("maxAttempts") int maxAttempts,
+                                   Pageable pageable);
+
+    /** Count one processing attempt; returns 0 when the images are no longer pending. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DeliveryProof p SET p.imageAttempts = p.imageAttempts + 1 " +
+           "WHERE p.id = :id AND p.imagesPending = true")
+    int recordImageAttempt(@Param("id") Long id);
+
+    /**
+     * Swap in the processed images and clear {@code images_pending}. Null URLs keep the
+     * current value; the coordinates are only filled where the proof has none.
+     * Returns 0 when another worker finished the proof first.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DeliveryProof p SET p.photoUrl = COALESCE(:photoUrl, p.photoUrl), " +
+           "p.thumbnailUrl = COALESCE(:thumbnailUrl, p.thumbnailUrl), " +
+           "p.signatureUrl = COALESCE(:signatureUrl, p.signatureUrl), " +
+           "p.latitude = COALESCE(p.latitude, :latitude), p.longitude = COALESCE(p.longitude, :longitude), " +
+           "p.imagesPending = false " +
+           "WHERE p.id = :id AND p.imagesPending = true")
+    int completeImages(@Param("id") Long id,
+                       @Param("photoUrl") String photoUrl,
+                       @Param("thumbnailUrl") String thumbnailUrl,
+                       @Param("signatureUrl") String signatureUrl,
+                       @Param("latitude") Double latitude,
+                       @Param("longitude") Double longitude);
+
+    @Query("SELECT p.shipment.id FROM DeliveryProof p " +
+           "WHERE p.photoUrl = :url OR p.thumbnailUrl = :url OR p.signatureUrl = :url")
+    List<Long> findShipmentIdsByImageUrl(@Param("url") String url);
 }
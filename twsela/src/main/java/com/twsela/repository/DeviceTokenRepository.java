@@ -4,6 +4,7 @@ import com.twsela.domain.DeviceToken;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -12,6 +13,8 @@ public interface DeviceTokenRepository extends JpaRepository<DeviceToken, Long>
 
     List<DeviceToken> findByUserIdAndActiveTrue(Long userId);
 
+    List<DeviceToken> findByUserIdInAndActiveTrue(Collection<Long> userIds);
+
     Optional<DeviceToken> findByToken(String token);
 
     void deleteByUserIdAndToken(Long userId, String token);
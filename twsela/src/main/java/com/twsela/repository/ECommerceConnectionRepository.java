@@ -3,8 +3,13 @@ package com.twsela.repository;
 import com.twsela.domain.ECommerceConnection;
 import com.twsela.domain.ECommerceConnection.ECommercePlatform;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -18,4 +23,15 @@ public interface ECommerceConnectionRepository extends JpaRepository<ECommerceCo
     List<ECommerceConnection> findByActiveTrue();
 
     List<ECommerceConnection> findByPlatformAndActiveTrue(ECommercePlatform platform);
+
+    /**
+     * Apply accumulated ingestion stats in one statement, without loading the connection.
+     * {@code lastSyncAt} only moves forward.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ECommerceConnection c SET c.syncErrors = c.syncErrors + :errors, " +
+           "c.lastSyncAt = CASE WHEN c.lastSyncAt IS NULL OR c.lastSyncAt < :syncedAt THEN :syncedAt ELSE c.lastSyncAt END " +
+           "WHERE c.id = :id")
+    int recordSync(@Param("id") Long id, @Param("syncedAt") Instant syncedAt, @Param("errors") int errors);
 }
@@ -0,0 +1,17 @@
+package com.twsela.repository;
+
+import com.twsela.domain.ECommerceConnection.ECommercePlatform;
+
+/**
+ * JDBC append for the webhook hot path: one INSERT, no entity loading, and a duplicate
+ * delivery key is reported instead of failing the surrounding transaction.
+ */
+public interface ECommerceInboundOrderBatchRepository {
+
+    /**
+     * Append a webhook payload to the ingestion queue.
+     *
+     * @return the new row id, or null when a row with the same delivery key already exists
+     */
+    Long enqueue(Long connectionId, ECommercePlatform platform, String deliveryKey, String rawPayload);
+}
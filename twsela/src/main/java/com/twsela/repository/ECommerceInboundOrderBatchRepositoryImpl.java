@@ -0,0 +1,49 @@
+package com.twsela.repository;
+
+import com.twsela.domain.ECommerceConnection.ECommercePlatform;
+import com.twsela.domain.ECommerceInboundOrder.InboundStatus;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+class ECommerceInboundOrderBatchRepositoryImpl implements ECommerceInboundOrderBatchRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO ecommerce_inbound_orders (connection_id, platform, delivery_key, raw_payload, status, " +
+            "attempts, received_at) VALUES (?, ?, ?, ?, ?, 0, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    ECommerceInboundOrderBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public Long enqueue(Long connectionId, ECommercePlatform platform, String deliveryKey, String rawPayload) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement ps = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS);
+                ps.setLong(1, connectionId);
+                ps.setString(2, platform.name());
+                ps.setString(3, deliveryKey);
+                ps.setString(4, rawPayload);
+                ps.setString(5, InboundStatus.PENDING.name());
+                ps.setTimestamp(6, Timestamp.from(Instant.now()));
+                return ps;
+            }, keys);
+        } catch (DuplicateKeyException e) {
+            return null;
+        }
+        Number id = keys.getKey();
+        return id != null ? id.longValue() : null;
+    }
+}
@@ -0,0 +1,55 @@
+package com.twsela.repository;
+
+import com.twsela.domain.ECommerceInboundOrder;
+import com.twsela.domain.ECommerceInboundOrder.InboundStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface ECommerceInboundOrderRepository extends JpaRepository<ECommerceInboundOrder, Long>,
+        ECommerceInboundOrderBatchRepository {
+
+    long countByStatus(InboundStatus status);
+
+    /**
+     * Lock the oldest pending rows. Lock timeout -2 renders {@code FOR UPDATE SKIP LOCKED},
+     * so workers on several nodes claim disjoint batches without blocking each other.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("SELECT i FROM ECommerceInboundOrder i WHERE i.status = :status ORDER BY i.id ASC")
+    List<ECommerceInboundOrder> lockNextPending(@Param("status") InboundStatus status, Pageable pageable);
+
+    /** Fail expired claims that have used up their attempts. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ECommerceInboundOrder i SET i.status = :failed, i.errorMessage = :reason, i.processedAt = :now, " +
+           "i.leaseOwner = NULL, i.leaseExpiresAt = NULL " +
+           "WHERE i.status = :processing AND i.leaseExpiresAt < :now AND i.attempts >= :maxAttempts")
+    int failExpiredLeases(@Param("processing") InboundStatus processing,
+                          @Param("failed") InboundStatus failed,
+                          @Param("maxAttempts") int maxAttempts,
+                          @Param("reason") String reason,
+                          @Param("now") Instant now);
+
+    /** Put expired claims (crashed worker) back in the queue. */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ECommerceInboundOrder i SET i.status = :pending, i.leaseOwner = NULL, i.leaseExpiresAt = NULL " +
+           "WHERE i.status = :processing AND i.leaseExpiresAt < :now")
+    int requeueExpiredLeases(@Param("processing") InboundStatus processing,
+                             @Param("pending") InboundStatus pending,
+                             @Param("now") Instant now);
+}
@@ -4,8 +4,11 @@ import com.twsela.domain.ECommerceConnection.ECommercePlatform;
 import com.twsela.domain.ECommerceOrder;
 import com.twsela.domain.ECommerceOrder.OrderStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -19,4 +22,7 @@ public interface ECommerceOrderRepository extends JpaRepository<ECommerceOrder,
     List<ECommerceOrder> findByStatus(OrderStatus status);
 
     long countByConnectionIdAndStatus(Long connectionId, OrderStatus status);
+
+    @Query("SELECT o.idempotencyKey FROM ECommerceOrder o WHERE o.idempotencyKey IN :keys")
+    List<String> findExistingIdempotencyKeys(@Param("keys") Collection<String> keys);
 }
@@ -0,0 +1,31 @@
+package com.twsela.repository;
+
+import com.twsela.domain.NotificationDeliveryLog;
+
+import java.util.List;
+
+/**
+ * Bulk write fragment for {@link NotificationDeliveryLogRepository}.
+ * <p>
+ * The entity uses IDENTITY ids, which disables Hibernate insert batching, so bulk writes
+ * go through JDBC batches instead. The other {@code *BatchRepository} fragments in this
+ * package exist for the same reason.
+ */
+public interface NotificationDeliveryLogBatchRepository {
+
+    /**
+     * Insert delivery log rows in JDBC batches. Generated ids are not populated.
+     *
+     * @return number of rows inserted
+     */
+    int insertBatch(List<NotificationDeliveryLog> logs);
+
+    /**
+     * Write retry outcomes back in JDBC batches: status, sent time, retry count and next retry
+     * time by id. A null error message keeps the stored one. Rows that are no longer FAILED are
+     * left alone.
+     *
+     * @return number of rows updated
+     */
+    int updateRetryStates(List<NotificationDeliveryLog> logs);
+}
@@ -0,0 +1,81 @@
+package com.twsela.repository;
+
+import com.twsela.domain.NotificationDeliveryLog;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.List;
+
+class NotificationDeliveryLogBatchRepositoryImpl implements NotificationDeliveryLogBatchRepository {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String INSERT_SQL =
+            "INSERT INTO notification_delivery_log (notification_id, channel, recipient, status, external_id, " +
+            "error_message, sent_at, delivered_at, retry_count, next_retry_at, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_RETRY_SQL =
+            "UPDATE notification_delivery_log SET status = ?, error_message = COALESCE(?, error_message), " +
+            "sent_at = COALESCE(?, sent_at), retry_count = ?, next_retry_at = ? WHERE id = ? AND status = 'FAILED'";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    NotificationDeliveryLogBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public int insertBatch(List<NotificationDeliveryLog> logs) {
+        if (logs.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, logs, BATCH_SIZE, (ps, entry) -> {
+            if (entry.getNotificationId() != null) {
+                ps.setLong(1, entry.getNotificationId());
+            } else {
+                ps.setNull(1, Types.BIGINT);
+            }
+            ps.setString(2, entry.getChannel().name());
+            ps.setString(3, entry.getRecipient());
+            ps.setString(4, entry.getStatus().name());
+            ps.setString(5, entry.getExternalId());
+            ps.setString(6, entry.getErrorMessage());
+            ps.setTimestamp(7, toTimestamp(entry.getSentAt()));
+            ps.setTimestamp(8, toTimestamp(entry.getDeliveredAt()));
+            ps.setInt(9, entry.getRetryCount());
+            ps.setTimestamp(10, toTimestamp(entry.getNextRetryAt()));
+            ps.setTimestamp(11, toTimestamp(entry.getCreatedAt()));
+        });
+        return logs.size();
+    }
+
+    @Override
+    @Transactional
+    public int updateRetryStates(List<NotificationDeliveryLog> logs) {
+        if (logs.isEmpty()) {
+            return 0;
+        }
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_RETRY_SQL, logs, BATCH_SIZE, (ps, entry) -> {
+            ps.setString(1, entry.getStatus().name());
+            ps.setString(2, entry.getErrorMessage());
+            ps.setTimestamp(3, toTimestamp(entry.getSentAt()));
+            ps.setInt(4, entry.getRetryCount());
+            ps.setTimestamp(5, toTimestamp(entry.getNextRetryAt()));
+            ps.setLong(6, entry.getId());
+        });
+        int updated = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                updated += Math.max(count, 0);
+            }
+        }
+        return updated;
+    }
+
+    private static Timestamp toTimestamp(Instant instant) {
+        return instant != null ? Timestamp.from(instant) : null;
+    }
+}
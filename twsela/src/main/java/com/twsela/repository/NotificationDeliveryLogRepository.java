@@ -3,6 +3,7 @@ package com.twsela.repository;
 import com.twsela.domain.NotificationChannel;
 import com.twsela.domain.NotificationDeliveryLog;
 import com.twsela.domain.NotificationDeliveryLog.DeliveryStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -12,12 +13,21 @@ import java.time.Instant;
 import java.util.List;
 
 @Repository
-public interface NotificationDeliveryLogRepository extends JpaRepository<NotificationDeliveryLog, Long> {
+public interface NotificationDeliveryLogRepository extends JpaRepository<NotificationDeliveryLog, Long>,
+        NotificationDeliveryLogBatchRepository {
 
     List<NotificationDeliveryLog> findByNotificationId(Long notificationId);
 
     List<NotificationDeliveryLog> findByStatusAndNextRetryAtBefore(DeliveryStatus status, Instant now);
 
+    /** Retries due by {@code until}, earliest first; served by idx_ndl_status_retry. */
+    @Query("SELECT l FROM NotificationDeliveryLog l " +
+           "WHERE l.status = :status AND l.nextRetryAt <= :until " +
+           "ORDER BY l.nextRetryAt, l.id")
+    List<NotificationDeliveryLog> findDueForRetry(@Param("status") DeliveryStatus status,
+                                                  @Param("until") Instant until,
+                                                  Pageable pageable);
+
     @Query("SELECT COUNT(l) FROM NotificationDeliveryLog l " +
            "WHERE l.channel = :channel AND l.status = :status " +
            "AND l.sentAt BETWEEN :from AND :to")
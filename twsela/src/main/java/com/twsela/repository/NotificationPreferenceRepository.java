@@ -4,6 +4,8 @@ import com.twsela.domain.NotificationPreference;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -12,4 +14,6 @@ public interface NotificationPreferenceRepository extends JpaRepository<Notifica
     Optional<NotificationPreference> findByUserId(Long userId);
 
     boolean existsByUserId(Long userId);
+
+    List<NotificationPreference> findByUserIdIn(Collection<Long> userIds);
 }
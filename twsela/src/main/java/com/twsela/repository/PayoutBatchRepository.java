@@ -0,0 +1,49 @@
+package com.twsela.repository;
+
+import com.twsela.domain.Payout;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Set-based payout writes for {@link PayoutRepository}.
+ * <p>
+ * A shipment is eligible for a payout type when it is DELIVERED, was delivered before the
+ * cut-off and has no payout item on a payout of that type yet — so each shipment is paid at
+ * most once per type no matter how often a run is repeated. Supports
+ * {@link Payout.PayoutType#COURIER_SETTLEMENT} (by manifest courier, cash not yet reconciled)
+ * and {@link Payout.PayoutType#MERCHANT_PAYOUT} (by merchant).
+ */
+public interface PayoutBatchRepository {
+
+    /** Eligible shipment count and earnings of one payee. */
+    record PayoutCandidate(Long userId, long shipments, BigDecimal amount) {}
+
+    /**
+     * One grouped pass over eligible shipments: per payee count and sum of
+     * {@code ROUND(delivery_fee * rate, 2)}, ordered by user id.
+     *
+     * @param userId restrict to one payee, or null for all
+     */
+    List<PayoutCandidate> findPayoutCandidates(Payout.PayoutType type, BigDecimal rate,
+                                               Instant deliveredBefore, Long userId);
+
+    /**
+     * Insert one SHIPMENT payout item per eligible shipment of the payee with a single
+     * {@code INSERT ... SELECT}.
+     *
+     * @return number of items inserted
+     */
+    int insertShipmentItems(Long payoutId, Payout.PayoutType type, Long userId,
+                            BigDecimal rate, Instant deliveredBefore);
+
+    /**
+     * Point every shipment itemised on the payout at it with one {@code UPDATE}. A shipment
+     * already linked to a payout of the other type keeps that link; its items still record both.
+     */
+    int linkShipments(Long payoutId);
+
+    /** Row-lock the payee until commit so concurrent runs for the same user serialize. */
+    void lockPayee(Long userId);
+}
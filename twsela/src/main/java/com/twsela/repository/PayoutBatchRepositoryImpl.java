@@ -0,0 +1,99 @@
+package com.twsela.repository;
+
+import com.twsela.domain.Payout;
+import com.twsela.domain.PayoutItem;
+import com.twsela.domain.ShipmentStatusConstants;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+class PayoutBatchRepositoryImpl implements PayoutBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    PayoutBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<PayoutCandidate> findPayoutCandidates(Payout.PayoutType type, BigDecimal rate,
+                                                      Instant deliveredBefore, Long userId) {
+        String payee = payeeColumn(type);
+        List<Object> args = new ArrayList<>();
+        args.add(rate);
+        StringBuilder sql = new StringBuilder("SELECT ").append(payee)
+                .append(", COUNT(*), COALESCE(SUM(ROUND(s.delivery_fee * ?, 2)), 0)")
+                .append(eligibleFrom(type, deliveredBefore, args));
+        if (userId != null) {
+            sql.append(" AND ").append(payee).append(" = ?");
+            args.add(userId);
+        }
+        sql.append(" GROUP BY ").append(payee).append(" ORDER BY ").append(payee);
+
+        return jdbcTemplate.query(sql.toString(), (rs, rowNum) ->
+                new PayoutCandidate(rs.getLong(1), rs.getLong(2), rs.getBigDecimal(3)), args.toArray());
+    }
+
+    @Override
+    @Transactional
+    public int insertShipmentItems(Long payoutId, Payout.PayoutType type, Long userId,
+                                   BigDecimal rate, Instant deliveredBefore) {
+        List<Object> args = new ArrayList<>();
+        args.add(payoutId);
+        args.add(PayoutItem.SourceType.SHIPMENT.name());
+        args.add(rate);
+        args.add(Timestamp.from(Instant.now()));
+        String sql = "INSERT INTO payout_items (payout_id, source_type, source_id, amount, description, created_at) " +
+                "SELECT ?, ?, s.id, ROUND(s.delivery_fee * ?, 2), CONCAT('Delivery fee for shipment ', s.tracking_number), ?" +
+                eligibleFrom(type, deliveredBefore, args) +
+                " AND " + payeeColumn(type) + " = ?";
+        args.add(userId);
+        return jdbcTemplate.update(sql, args.toArray());
+    }
+
+    @Override
+    @Transactional
+    public int linkShipments(Long payoutId) {
+        return jdbcTemplate.update(
+                "UPDATE shipments SET payout_id = ? WHERE payout_id IS NULL AND id IN " +
+                "(SELECT pi.source_id FROM payout_items pi WHERE pi.payout_id = ? AND pi.source_type = ?)",
+                payoutId, payoutId, PayoutItem.SourceType.SHIPMENT.name());
+    }
+
+    @Override
+    @Transactional
+    public void lockPayee(Long userId) {
+        jdbcTemplate.queryForList("SELECT id FROM users WHERE id = ? FOR UPDATE", Long.class, userId);
+    }
+
+    private static String payeeColumn(Payout.PayoutType type) {
+        return switch (type) {
+            case COURIER_SETTLEMENT -> "sm.courier_id";
+            case MERCHANT_PAYOUT -> "s.merchant_id";
+            default -> throw new IllegalArgumentException("Unsupported payout type: " + type);
+        };
+    }
+
+    /** FROM/WHERE of eligible shipments; appends its bind values to {@code args}. */
+    private static String eligibleFrom(Payout.PayoutType type, Instant deliveredBefore, List<Object> args) {
+        boolean courier = type == Payout.PayoutType.COURIER_SETTLEMENT;
+        args.add(ShipmentStatusConstants.DELIVERED);
+        args.add(Timestamp.from(deliveredBefore));
+        args.add(PayoutItem.SourceType.SHIPMENT.name());
+        args.add(type.name());
+        return " FROM shipments s" +
+                " JOIN shipment_statuses ss ON ss.id = s.status_id" +
+                (courier ? " JOIN shipment_manifests sm ON sm.id = s.manifest_id" : "") +
+                " WHERE ss.name = ?" +
+                " AND (s.delivered_at IS NULL OR s.delivered_at < ?)" +
+                (courier ? " AND s.cash_reconciled = FALSE" : "") +
+                " AND NOT EXISTS (SELECT 1 FROM payout_items pi JOIN payouts p ON p.id = pi.payout_id" +
+                " WHERE pi.source_type = ? AND pi.source_id = s.id AND p.payout_type = ?)";
+    }
+}
@@ -2,12 +2,18 @@ package com.twsela.repository;
 
 import com.twsela.domain.PayoutItem;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import java.math.BigDecimal;
 import java.util.List;
 
 @Repository
 public interface PayoutItemRepository extends JpaRepository<PayoutItem, Long> {
     List<PayoutItem> findByPayoutId(Long payoutId);
     List<PayoutItem> findBySourceTypeAndSourceId(PayoutItem.SourceType sourceType, Long sourceId);
+
+    @Query("SELECT COALESCE(SUM(pi.amount), 0) FROM PayoutItem pi WHERE pi.payout.id = :payoutId")
+    BigDecimal sumAmountByPayoutId(@Param("payoutId") Long payoutId);
 }
 
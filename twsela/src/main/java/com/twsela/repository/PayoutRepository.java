@@ -11,7 +11,7 @@ import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface PayoutRepository extends JpaRepository<Payout, Long> {
+public interface PayoutRepository extends JpaRepository<Payout, Long>, PayoutBatchRepository {
     List<Payout> findByUserId(Long userId);
     List<Payout> findByUserIdOrderByPayoutPeriodEndDesc(Long userId);
     List<Payout> findByPayoutTypeAndPayoutPeriodEndBetween(Payout.PayoutType payoutType, LocalDate startDate, LocalDate endDate);
@@ -20,6 +20,9 @@ public interface PayoutRepository extends JpaRepository<Payout, Long> {
     List<Payout> findActivePayoutsForUser(@Param("userId") Long userId, @Param("date") LocalDate date);
     
     List<Payout> findByStatus(PayoutStatus status);
+
+    Optional<Payout> findFirstByUserIdAndPayoutTypeAndPayoutPeriodStartAndPayoutPeriodEnd(
+            Long userId, Payout.PayoutType payoutType, LocalDate payoutPeriodStart, LocalDate payoutPeriodEnd);
     
     // Additional method for testing - find PayoutStatus by name
     @Query("SELECT ps FROM PayoutStatus ps WHERE ps.name = :statusName")
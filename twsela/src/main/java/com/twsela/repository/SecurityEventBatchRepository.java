@@ -0,0 +1,20 @@
+package com.twsela.repository;
+
+import com.twsela.domain.SecurityEvent;
+
+import java.util.List;
+
+/**
+ * Bulk write fragment for {@link SecurityEventRepository}, used by the audit pipeline's
+ * background writer.
+ */
+public interface SecurityEventBatchRepository {
+
+    /**
+     * Insert security event rows in JDBC batches. Only the user's id is read from
+     * {@link SecurityEvent#getUser()}; generated ids are not populated.
+     *
+     * @return number of rows inserted
+     */
+    int insertBatch(List<SecurityEvent> events);
+}
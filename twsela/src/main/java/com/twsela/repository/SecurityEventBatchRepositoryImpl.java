@@ -0,0 +1,45 @@
+package com.twsela.repository;
+
+import com.twsela.domain.SecurityEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+class SecurityEventBatchRepositoryImpl implements SecurityEventBatchRepository {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String INSERT_SQL =
+            "INSERT INTO security_events (user_id, event_type, ip_address, user_agent, details, severity, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    SecurityEventBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public int insertBatch(List<SecurityEvent> events) {
+        if (events.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, events, BATCH_SIZE, (ps, event) -> {
+            if (event.getUser() != null && event.getUser().getId() != null) {
+                ps.setLong(1, event.getUser().getId());
+            } else {
+                ps.setNull(1, Types.BIGINT);
+            }
+            ps.setString(2, event.getEventType().name());
+            ps.setString(3, event.getIpAddress());
+            ps.setString(4, event.getUserAgent());
+            ps.setString(5, event.getDetails());
+            ps.setString(6, event.getSeverity().name());
+            ps.setTimestamp(7, Timestamp.from(event.getCreatedAt()));
+        });
+        return events.size();
+    }
+}
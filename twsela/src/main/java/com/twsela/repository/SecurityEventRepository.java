@@ -10,7 +10,8 @@ import java.time.Instant;
 import java.util.List;
 
 @Repository
-public interface SecurityEventRepository extends JpaRepository<SecurityEvent, Long> {
+public interface SecurityEventRepository extends JpaRepository<SecurityEvent, Long>,
+        SecurityEventBatchRepository {
 
     List<SecurityEvent> findByUserIdOrderByCreatedAtDesc(Long userId);
 
@@ -2,10 +2,14 @@ package com.twsela.repository;
 
 import com.twsela.domain.SettlementBatch;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
@@ -21,4 +25,22 @@ public interface SettlementBatchRepository extends JpaRepository<SettlementBatch
 
     @Query("SELECT sb FROM SettlementBatch sb WHERE sb.startDate >= :start AND sb.endDate <= :end ORDER BY sb.createdAt DESC")
     List<SettlementBatch> findByDateRange(@Param("start") LocalDate start, @Param("end") LocalDate end);
+
+    /**
+     * Add item totals to a batch in place while it is still in {@code status}.
+     * Returns 0 when the batch has moved on (e.g. processing started).
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE SettlementBatch sb SET sb.totalTransactions = sb.totalTransactions + :count, " +
+           "sb.totalAmount = sb.totalAmount + :amount, sb.totalFees = sb.totalFees + :fees, " +
+           "sb.netAmount = sb.netAmount + :net, sb.updatedAt = :now " +
+           "WHERE sb.id = :id AND sb.status = :status")
+    int addTotals(@Param("id") Long id,
+                  @Param("status") SettlementBatch.BatchStatus status,
+                  @Param("count") int count,
+                  @Param("amount") BigDecimal amount,
+                  @Param("fees") BigDecimal fees,
+                  @Param("net") BigDecimal net,
+                  @Param("now") Instant now);
 }
@@ -0,0 +1,20 @@
+package com.twsela.repository;
+
+import com.twsela.domain.SettlementItem;
+
+import java.util.List;
+
+/**
+ * Bulk write fragment for {@link SettlementItemRepository}, used when settlement items are
+ * appended to a draft batch in chunks.
+ */
+public interface SettlementItemBatchRepository {
+
+    /**
+     * Insert settlement items in JDBC batches. Only the ids of the batch, shipment,
+     * merchant and payment intent associations are read. Generated ids are not populated.
+     *
+     * @return number of rows inserted
+     */
+    int insertBatch(List<SettlementItem> items);
+}
@@ -0,0 +1,55 @@
+package com.twsela.repository;
+
+import com.twsela.domain.SettlementItem;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+class SettlementItemBatchRepositoryImpl implements SettlementItemBatchRepository {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String INSERT_SQL =
+            "INSERT INTO settlement_items (batch_id, payment_intent_id, shipment_id, merchant_id, amount, fee, " +
+            "net_amount, type, description, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    SettlementItemBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public int insertBatch(List<SettlementItem> items) {
+        if (items.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, items, BATCH_SIZE, (ps, item) -> {
+            ps.setLong(1, item.getBatch().getId());
+            setId(ps, 2, item.getPaymentIntent() != null ? item.getPaymentIntent().getId() : null);
+            setId(ps, 3, item.getShipment() != null ? item.getShipment().getId() : null);
+            setId(ps, 4, item.getMerchant() != null ? item.getMerchant().getId() : null);
+            ps.setBigDecimal(5, item.getAmount());
+            ps.setBigDecimal(6, item.getFee());
+            ps.setBigDecimal(7, item.getNetAmount());
+            ps.setString(8, item.getType().name());
+            ps.setString(9, item.getDescription());
+            ps.setTimestamp(10, Timestamp.from(item.getCreatedAt()));
+        });
+        return items.size();
+    }
+
+    private static void setId(PreparedStatement ps, int index, Long id) throws SQLException {
+        if (id != null) {
+            ps.setLong(index, id);
+        } else {
+            ps.setNull(index, Types.BIGINT);
+        }
+    }
+}
@@ -10,7 +10,8 @@ import java.math.BigDecimal;
 import java.util.List;
 
 @Repository
-public interface SettlementItemRepository extends JpaRepository<SettlementItem, Long> {
+public interface SettlementItemRepository extends JpaRepository<SettlementItem, Long>,
+        SettlementItemBatchRepository {
 
     List<SettlementItem> findByBatchId(Long batchId);
 
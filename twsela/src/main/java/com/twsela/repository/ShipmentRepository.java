@@ -29,6 +29,9 @@ public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
     @EntityGraph(value = "Shipment.summary")
     List<Shipment> findTop10ByMerchantIdOrderByUpdatedAtDesc(Long merchantId);
 
+    @Query("SELECT s.id FROM Shipment s WHERE s.podData = :podData")
+    List<Long> findIdsByPodData(@Param("podData") String podData);
+
     @Query("SELECT COALESCE(SUM(s.deliveryFee), 0) FROM Shipment s WHERE s.status.name = :statusName")
     BigDecimal sumDeliveryFeeByStatusName(@Param("statusName") String statusName);
 
@@ -43,6 +46,9 @@ public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
     @Query("SELECT COUNT(s) FROM Shipment s WHERE s.manifest.courier.id = :courierId AND s.createdAt BETWEEN :start AND :end")
     long countByCourierIdAndCreatedAtBetween(@Param("courierId") Long courierId, @Param("start") Instant start, @Param("end") Instant end);
 
+    @Query("SELECT m.courier.id FROM Shipment s JOIN s.manifest m WHERE s.id = :shipmentId")
+    Optional<Long> findCourierIdById(@Param("shipmentId") Long shipmentId);
+
     @Query("SELECT COUNT(s) FROM Shipment s WHERE s.manifest.courier.id = :courierId AND s.status.name = :statusName")
     long countByCourierIdAndStatusName(@Param("courierId") Long courierId, @Param("statusName") String statusName);
 
@@ -116,6 +122,9 @@ public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
     
     @Query("SELECT s FROM Shipment s WHERE s.manifest.courier.id = :courierId AND s.status.name = :statusName AND s.cashReconciled = false")
     List<Shipment> findByCourierIdAndStatusNameAndCashReconciledFalse(@Param("courierId") Long courierId, @Param("statusName") String statusName);
+
+    @Query("SELECT COALESCE(SUM(s.deliveryFee), 0) FROM Shipment s WHERE s.manifest.courier.id = :courierId AND s.status.name = :statusName AND s.cashReconciled = false")
+    BigDecimal sumDeliveryFeeByCourierIdAndStatusNameAndCashReconciledFalse(@Param("courierId") Long courierId, @Param("statusName") String statusName);
     
     // Dashboard KPI queries
     List<Shipment> findByCreatedAtBetween(Instant start, Instant end);
@@ -164,4 +173,28 @@ public interface ShipmentRepository extends JpaRepository<Shipment, Long> {
 
     @Query("SELECT s FROM Shipment s WHERE s.merchant.id = :merchantId AND s.createdAt BETWEEN :start AND :end")
     List<Shipment> findByMerchantIdAndCreatedAtBetween(@Param("merchantId") Long merchantId, @Param("start") Instant start, @Param("end") Instant end);
+
+    /** SLA counts of a merchant's shipments created in a period; see {@link #countSlaOutcomes}. */
+    interface SlaCounts {
+        long getTotal();
+        long getDelivered();
+        long getLate();
+        long getLost();
+    }
+
+    /**
+     * Totals, deliveries, late deliveries and returns in one pass over the merchant's
+     * shipments for the period. A delivery is late when it took at least {@code lateSeconds}
+     * from creation to {@code deliveredAt} (or the last update for rows without one).
+     */
+    @Query("SELECT COUNT(s) AS total, "
+            + "COALESCE(SUM(CASE WHEN st.name = 'DELIVERED' THEN 1 ELSE 0 END), 0) AS delivered, "
+            + "COALESCE(SUM(CASE WHEN st.name = 'DELIVERED' "
+            + "AND (COALESCE(s.deliveredAt, s.updatedAt) - s.createdAt) BY SECOND >= :lateSeconds "
+            + "THEN 1 ELSE 0 END), 0) AS late, "
+            + "COALESCE(SUM(CASE WHEN st.name = 'RETURNED' THEN 1 ELSE 0 END), 0) AS lost "
+            + "FROM Shipment s LEFT JOIN s.status st "
+            + "WHERE s.merchant.id = :merchantId AND s.createdAt BETWEEN :start AND :end")
+    SlaCounts countSlaOutcomes(@Param("merchantId") Long merchantId, @Param("start") Instant start,
+                               @Param("end") Instant end, @Param("lateSeconds") long lateSeconds);
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package com.twsela.repository;
+
+import com.twsela.domain.SlaEvaluation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface SlaEvaluationRepository extends JpaRepository<SlaEvaluation, Long> {
+
+    Optional<SlaEvaluation> findByContractIdAndPeriodStartAndPeriodEnd(Long contractId, Instant periodStart, Instant periodEnd);
+
+    List<SlaEvaluation> findByContractIdOrderByPeriodStartDesc(Long contractId);
+}
@@ -0,0 +1,9 @@
+package com.twsela.repository;
+
+import com.twsela.domain.SpeedProfile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface SpeedProfileRepository extends JpaRepository<SpeedProfile, Long> {
+}
@@ -0,0 +1,19 @@
+package com.twsela.repository;
+
+import com.twsela.domain.SystemAuditLog;
+
+import java.util.List;
+
+/**
+ * Bulk write fragment for {@link SystemAuditLogRepository}, used by the audit pipeline's
+ * background writer.
+ */
+public interface SystemAuditLogBatchRepository {
+
+    /**
+     * Insert audit rows in JDBC batches. Generated ids are not populated.
+     *
+     * @return number of rows inserted
+     */
+    int insertBatch(List<SystemAuditLog> logs);
+}
@@ -0,0 +1,53 @@
+package com.twsela.repository;
+
+import com.twsela.domain.SystemAuditLog;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+class SystemAuditLogBatchRepositoryImpl implements SystemAuditLogBatchRepository {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String INSERT_SQL =
+            "INSERT INTO system_audit_log (user_id, action_type, entity_type, entity_id, old_values, new_values, " +
+            "ip_address, user_agent, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    SystemAuditLogBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public int insertBatch(List<SystemAuditLog> logs) {
+        if (logs.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, logs, BATCH_SIZE, (ps, entry) -> {
+            setLong(ps, 1, entry.getUserId());
+            ps.setString(2, entry.getActionType());
+            ps.setString(3, entry.getEntityType());
+            setLong(ps, 4, entry.getEntityId());
+            ps.setString(5, entry.getOldValues());
+            ps.setString(6, entry.getNewValues());
+            ps.setString(7, entry.getIpAddress());
+            ps.setString(8, entry.getUserAgent());
+            ps.setTimestamp(9, Timestamp.from(entry.getCreatedAt()));
+        });
+        return logs.size();
+    }
+
+    private static void setLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        if (value != null) {
+            ps.setLong(index, value);
+        } else {
+            ps.setNull(index, Types.BIGINT);
+        }
+    }
+}
@@ -10,7 +10,8 @@ import java.time.Instant;
 import java.util.List;
 
 @Repository
-public interface SystemAuditLogRepository extends JpaRepository<SystemAuditLog, Long> {
+public interface SystemAuditLogRepository extends JpaRepository<SystemAuditLog, Long>,
+        SystemAuditLogBatchRepository {
     
     List<SystemAuditLog> findByUserIdOrderByCreatedAtDesc(Long userId);
     
@@ -14,6 +14,8 @@ public interface TaxRuleRepository extends JpaRepository<TaxRule, Long> {
 
     List<TaxRule> findByCountryCodeAndActiveTrue(String countryCode);
 
+    List<TaxRule> findByActiveTrue();
+
     @Query("SELECT tr FROM TaxRule tr WHERE tr.countryCode = :countryCode " +
            "AND tr.active = true " +
            "AND tr.validFrom <= :date " +
@@ -12,12 +12,17 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByPhone(String phone);
+
+    /** {@code [phone, id]} pairs of the users with these phones. */
+    @Query("SELECT u.phone, u.id FROM User u WHERE u.phone IN :phones")
+    List<Object[]> findIdsByPhoneIn(@Param("phones") Collection<String> phones);
     
     // Optimized query to load user with role and status for authentication
     @Query("SELECT u FROM User u JOIN FETCH u.role JOIN FETCH u.status WHERE u.phone = :phone AND u.isDeleted = false")
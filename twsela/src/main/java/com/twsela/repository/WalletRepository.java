@@ -2,8 +2,14 @@ package com.twsela.repository;
 
 import com.twsela.domain.Wallet;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,4 +21,26 @@ public interface WalletRepository extends JpaRepository<Wallet, Long> {
     List<Wallet> findByWalletType(Wallet.WalletType walletType);
 
     boolean existsByUserId(Long userId);
+
+    List<Wallet> findByUserIdIn(Collection<Long> userIds);
+
+    @Query("SELECT w.balance FROM Wallet w WHERE w.id = :id")
+    Optional<BigDecimal> findBalanceById(@Param("id") Long id);
+
+    /**
+     * Atomically add to the balance. Holds the row lock until commit, so a balance read
+     * afterwards in the same transaction is exactly this posting's result.
+     */
+    @Modifying
+    @Query("UPDATE Wallet w SET w.balance = w.balance + :amount, w.updatedAt = :now WHERE w.id = :id")
+    int applyCredit(@Param("id") Long id, @Param("amount") BigDecimal amount, @Param("now") Instant now);
+
+    /**
+     * Atomically subtract from the balance only if funds suffice.
+     *
+     * @return 0 when the balance is insufficient (or the wallet does not exist)
+     */
+    @Modifying
+    @Query("UPDATE Wallet w SET w.balance = w.balance - :amount, w.updatedAt = :now WHERE w.id = :id AND w.balance >= :amount")
+    int applyDebit(@Param("id") Long id, @Param("amount") BigDecimal amount, @Param("now") Instant now);
 }
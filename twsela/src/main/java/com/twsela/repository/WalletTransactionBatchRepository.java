@@ -0,0 +1,13 @@
+package com.twsela.repository;
+
+import com.twsela.domain.WalletTransaction;
+
+import java.util.List;
+
+/**
+ * JDBC batch insert for ledger postings.
+ */
+public interface WalletTransactionBatchRepository {
+
+    int insertBatch(List<WalletTransaction> transactions);
+}
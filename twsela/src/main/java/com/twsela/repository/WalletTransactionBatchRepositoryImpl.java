@@ -0,0 +1,49 @@
+package com.twsela.repository;
+
+import com.twsela.domain.WalletTransaction;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+class WalletTransactionBatchRepositoryImpl implements WalletTransactionBatchRepository {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String INSERT_SQL =
+            "INSERT INTO wallet_transactions (wallet_id, type, amount, reason, reference_id, balance_before, " +
+            "balance_after, description, idempotency_key, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    WalletTransactionBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public int insertBatch(List<WalletTransaction> transactions) {
+        if (transactions.isEmpty()) {
+            return 0;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, transactions, BATCH_SIZE, (ps, tx) -> {
+            ps.setLong(1, tx.getWallet().getId());
+            ps.setString(2, tx.getType().name());
+            ps.setBigDecimal(3, tx.getAmount());
+            ps.setString(4, tx.getReason().name());
+            if (tx.getReferenceId() != null) {
+                ps.setLong(5, tx.getReferenceId());
+            } else {
+                ps.setNull(5, Types.BIGINT);
+            }
+            ps.setBigDecimal(6, tx.getBalanceBefore());
+            ps.setBigDecimal(7, tx.getBalanceAfter());
+            ps.setString(8, tx.getDescription());
+            ps.setString(9, tx.getIdempotencyKey());
+            ps.setTimestamp(10, Timestamp.from(tx.getCreatedAt()));
+        });
+        return transactions.size();
+    }
+}
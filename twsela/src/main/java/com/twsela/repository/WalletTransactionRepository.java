@@ -9,10 +9,12 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
-import java.util.Optional;
+import java.util.Collection;
+import java.util.List;
 
 @Repository
-public interface WalletTransactionRepository extends JpaRepository<WalletTransaction, Long> {
+public interface WalletTransactionRepository extends JpaRepository<WalletTransaction, Long>,
+        WalletTransactionBatchRepository {
 
     Page<WalletTransaction> findByWalletIdOrderByCreatedAtDesc(Long walletId, Pageable pageable);
 
@@ -22,4 +24,7 @@ public interface WalletTransactionRepository extends JpaRepository<WalletTransac
 
     boolean existsByWalletIdAndReferenceIdAndReason(Long walletId, Long referenceId,
                                                      WalletTransaction.TransactionReason reason);
+
+    @Query("SELECT t.idempotencyKey FROM WalletTransaction t WHERE t.idempotencyKey IN :keys")
+    List<String> findExistingIdempotencyKeys(@Param("keys") Collection<String> keys);
 }
@@ -5,8 +5,13 @@ import com.twsela.domain.WebhookEvent.DeliveryStatus;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.util.List;
 
 @Repository
@@ -17,4 +22,13 @@ public interface WebhookEventRepository extends JpaRepository<WebhookEvent, Long
     List<WebhookEvent> findByStatusAndAttemptsLessThan(DeliveryStatus status, int maxAttempts);
 
     long countBySubscriptionIdAndStatus(Long subscriptionId, DeliveryStatus status);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE WebhookEvent e SET e.status = :status, e.attempts = :attempts, e.lastAttemptAt = :at, " +
+           "e.responseCode = :responseCode, e.responseBody = :responseBody WHERE e.id = :id")
+    int recordAttempt(@Param("id") Long id, @Param("status") DeliveryStatus status,
+                      @Param("attempts") int attempts, @Param("at") Instant at,
+                      @Param("responseCode") Integer responseCode,
+                      @Param("responseBody") String responseBody);
 }
@@ -2,7 +2,6 @@ package com.twsela.repository;
 
 import com.twsela.domain.WebhookSubscription;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -14,6 +13,5 @@ public interface WebhookSubscriptionRepository extends JpaRepository<WebhookSubs
 
     List<WebhookSubscription> findByMerchantId(Long merchantId);
 
-    @Query("SELECT ws FROM WebhookSubscription ws WHERE ws.active = true AND ws.events LIKE %:eventType%")
-    List<WebhookSubscription> findActiveByEventType(String eventType);
+    List<WebhookSubscription> findByActiveTrue();
 }
@@ -42,15 +42,8 @@ public class IpBlacklistFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /** Same address the login endpoint blocks: the peer, or the client a trusted proxy forwarded for. */
     private String getClientIp(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isBlank()) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isBlank()) {
-            return xRealIp.trim();
-        }
         return request.getRemoteAddr();
     }
 }
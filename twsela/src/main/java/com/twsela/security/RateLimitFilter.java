@@ -116,16 +116,11 @@ public class RateLimitFilter extends OncePerRequestFilter {
         return uri;
     }
 
-    /** Extract the real client IP, respecting X-Forwarded-For from reverse proxy */
+    /**
+     * The peer, or the client a trusted proxy forwarded for (server.forward-headers-strategy).
+     * Raw X-Forwarded-For / X-Real-IP values are client-controlled and never pick the bucket.
+     */
     private String getClientIp(HttpServletRequest request) {
-        String xff = request.getHeader("X-Forwarded-For");
-        if (xff != null && !xff.isBlank()) {
-            return xff.split(",")[0].trim();
-        }
-        String realIp = request.getHeader("X-Real-IP");
-        if (realIp != null && !realIp.isBlank()) {
-            return realIp.trim();
-        }
         return request.getRemoteAddr();
     }
 
@@ -65,7 +65,7 @@ public class SecurityConfig {
                 .requestMatchers("/merchant/**", "/owner/**", "/courier/**", "/warehouse/**", "/admin/**").permitAll()
                 // Actuator endpoints for monitoring — only health/info public
                 .requestMatchers("/actuator/health", "/actuator/info").permitAll()
-                .requestMatchers("/actuator/metrics", "/actuator/prometheus").hasAnyRole("OWNER", "ADMIN")
+                .requestMatchers("/actuator/metrics", "/actuator/prometheus", "/actuator/dbusage").hasAnyRole("OWNER", "ADMIN")
                 // Authentication required for /api/auth/me and /api/v1/auth/me
                 .requestMatchers("/api/auth/me", "/api/v1/auth/me").authenticated()
                 // All other auth endpoints are open for registration, password reset, etc.
@@ -117,7 +117,8 @@ public class SecurityConfig {
                 .requestMatchers(HttpMethod.GET, "/api/currencies/**").permitAll()
                 .requestMatchers("/api/admin/countries/**").hasAnyRole("OWNER", "ADMIN")
                 .requestMatchers("/api/admin/currencies/**").hasAnyRole("OWNER", "ADMIN")
-                .requestMatchers("/api/tax/calculate").authenticated()
+                .requestMatchers(HttpMethod.POST, "/api/currencies/convert/batch").authenticated()
+                .requestMatchers("/api/tax/calculate", "/api/tax/calculate/batch").authenticated()
                 .requestMatchers("/api/admin/tax/**").hasAnyRole("OWNER", "ADMIN")
                 .requestMatchers("/api/admin/einvoice/**").hasAnyRole("OWNER", "ADMIN")
                 .requestMatchers("/api/contact/**").permitAll()
@@ -129,6 +130,9 @@ public class SecurityConfig {
                 // Delivery Proof & Attempts
                 .requestMatchers("/api/delivery/admin/**").hasAnyRole("OWNER", "ADMIN")
                 .requestMatchers("/api/delivery/**").hasAnyRole("OWNER", "ADMIN", "MERCHANT", "COURIER")
+                // Stored files (POD photos, signatures, reports, exports); FileController checks each file
+                .requestMatchers("/api/files/exports/**", "/api/files/reports/**").hasAnyRole("OWNER", "ADMIN")
+                .requestMatchers("/api/files/**").authenticated()
                 // Pickup Scheduling
                 .requestMatchers("/api/pickups/admin/**").hasAnyRole("OWNER", "ADMIN")
                 .requestMatchers("/api/pickups/**").hasAnyRole("OWNER", "ADMIN", "MERCHANT", "COURIER")
@@ -140,7 +144,7 @@ public class SecurityConfig {
                 .requestMatchers("/api/admin/contracts/**").hasAnyRole("OWNER", "ADMIN")
                 .requestMatchers("/api/contracts/my").authenticated()
                 .requestMatchers("/api/contracts/*/sign").authenticated()
-                .requestMatchers("/api/pricing/calculate").authenticated()
+                .requestMatchers("/api/pricing/calculate", "/api/pricing/calculate/batch").authenticated()
                 // API Platform & E-Commerce (Sprint 30)
                 .requestMatchers("/api/ecommerce/webhook/**").permitAll()
                 .requestMatchers("/api/developer/**").hasAnyRole("MERCHANT", "OWNER")
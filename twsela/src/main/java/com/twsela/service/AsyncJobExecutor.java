@@ -2,75 +2,361 @@ package com.twsela.service;
 
 import com.twsela.domain.AsyncJob;
 import com.twsela.repository.AsyncJobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * منفذ المهام غير المتزامنة — يسحب من القائمة وينفذ.
+ * منفذ المهام غير المتزامنة — عمّال يحجزون المهام بعقود إيجار (leases) وينفذونها.
+ * <p>
+ * Each poll claims due jobs per registered {@link AsyncJobHandler} type, by priority,
+ * with {@code SKIP LOCKED} so several nodes can poll the same table. A claimed job is
+ * leased to this worker; the heartbeat extends the lease while the job runs, and any
+ * node reclaims leases that expire (crashed worker). Jobs run on two fixed pools — one
+ * sized to the CPUs, a larger one for I/O-bound handlers — with a per-type concurrency
+ * limit on top.
+ * <p>
+ * Heartbeat and reclaim run on the executor's own scheduler thread rather than the shared
+ * {@code @Scheduled} pool, so a slow nightly job can never delay lease renewal long
+ * enough for running jobs to be reclaimed from under their worker.
  */
 @Service
 public class AsyncJobExecutor {
 
     private static final Logger log = LoggerFactory.getLogger(AsyncJobExecutor.class);
 
-    private final AsyncJobRepository asyncJobRepository;
     private final AsyncJobService asyncJobService;
+    private final AsyncJobRepository asyncJobRepository;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, AsyncJobHandler> handlers = new LinkedHashMap<>();
+    private final ExecutorService cpuPool;
+    private final ExecutorService ioPool;
+    private final ScheduledExecutorService leaseScheduler;
+    private final int cpuThreads;
+    private final int ioThreads;
+    private final Duration leaseDuration;
+    private final long heartbeatIntervalMs;
+    private final long reclaimIntervalMs;
+    private final int defaultTypeConcurrency;
+    private final String workerId;
 
-    public AsyncJobExecutor(AsyncJobRepository asyncJobRepository,
-                             AsyncJobService asyncJobService) {
-        this.asyncJobRepository = asyncJobRepository;
+    private final ConcurrentHashMap<Long, JobRun> running = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> runningByType = new ConcurrentHashMap<>();
+    private final AtomicInteger cpuActive = new AtomicInteger();
+    private final AtomicInteger ioActive = new AtomicInteger();
+    private final Counter reclaimedCounter;
+    private volatile boolean shuttingDown;
+
+    @Autowired
+    public AsyncJobExecutor(AsyncJobService asyncJobService,
+                            AsyncJobRepository asyncJobRepository,
+                            List<AsyncJobHandler> handlerList,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.jobs.cpu-threads:0}") int cpuThreads,
+                            @Value("${app.jobs.io-threads:16}") int ioThreads,
+                            @Value("${app.jobs.lease-seconds:60}") int leaseSeconds,
+                            @Value("${app.jobs.heartbeat-interval-ms:15000}") long heartbeatIntervalMs,
+                            @Value("${app.jobs.reclaim-interval-ms:30000}") long reclaimIntervalMs,
+                            @Value("${app.jobs.default-type-concurrency:2}") int defaultTypeConcurrency) {
+        this(asyncJobService, asyncJobRepository, handlerList, meterRegistry,
+                resolveCpuThreads(cpuThreads), ioThreads,
+                Executors.newFixedThreadPool(resolveCpuThreads(cpuThreads), new CustomizableThreadFactory("job-cpu-")),
+                Executors.newFixedThreadPool(ioThreads, new CustomizableThreadFactory("job-io-")),
+                Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("job-lease-")),
+                Duration.ofSeconds(leaseSeconds), heartbeatIntervalMs, reclaimIntervalMs, defaultTypeConcurrency);
+    }
+
+    AsyncJobExecutor(AsyncJobService asyncJobService,
+                     AsyncJobRepository asyncJobRepository,
+                     List<AsyncJobHandler> handlerList,
+                     MeterRegistry meterRegistry,
+                     int cpuThreads, int ioThreads,
+                     ExecutorService cpuPool, ExecutorService ioPool,
+                     ScheduledExecutorService leaseScheduler,
+                     Duration leaseDuration, long heartbeatIntervalMs, long reclaimIntervalMs,
+                     int defaultTypeConcurrency) {
         this.asyncJobService = asyncJobService;
+        this.asyncJobRepository = asyncJobRepository;
+        this.meterRegistry = meterRegistry;
+        this.cpuThreads = cpuThreads;
+        this.ioThreads = ioThreads;
+        this.cpuPool = cpuPool;
+        this.ioPool = ioPool;
+        this.leaseScheduler = leaseScheduler;
+        this.leaseDuration = leaseDuration;
+        this.heartbeatIntervalMs = Math.max(1, heartbeatIntervalMs);
+        this.reclaimIntervalMs = Math.max(1, reclaimIntervalMs);
+        this.defaultTypeConcurrency = defaultTypeConcurrency;
+        this.workerId = newWorkerId();
+
+        for (AsyncJobHandler handler : handlerList) {
+            handlers.put(handler.getJobType(), handler);
+            runningByType.put(handler.getJobType(), new AtomicInteger());
+        }
+
+        meterRegistry.gauge("twsela.jobs.running", running, Map::size);
+        meterRegistry.gauge("twsela.jobs.pool.active", Tags.of("pool", "cpu"), cpuActive);
+        meterRegistry.gauge("twsela.jobs.pool.active", Tags.of("pool", "io"), ioActive);
+        this.reclaimedCounter = Counter.builder("twsela.jobs.reclaimed")
+                .description("Jobs whose worker lease expired and were requeued or failed")
+                .register(meterRegistry);
+
+        log.info("Async job worker {} started: types={}, cpuThreads={}, ioThreads={}, lease={}",
+                workerId, handlers.keySet(), cpuThreads, ioThreads, leaseDuration);
     }
 
+    @PostConstruct
+    public void start() {
+        leaseScheduler.scheduleWithFixedDelay(this::heartbeat,
+                heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+        leaseScheduler.scheduleWithFixedDelay(this::reclaimExpiredLeases,
+                reclaimIntervalMs, reclaimIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ── Scheduling loops ────────────────────────────────────────
+
     /**
-     * تنفيذ المهام المجدولة.
+     * حجز المهام المستحقة وتوزيعها على العمّال.
+     *
+     * @return number of jobs dispatched
      */
-    @Async
-    @Transactional
-    public void executeQueuedJobs() {
-        List<AsyncJob> queued = asyncJobRepository.findByStatusAndScheduledAtBefore(
-                AsyncJob.JobStatus.QUEUED, Instant.now());
-
-        for (AsyncJob job : queued) {
+    @Scheduled(fixedDelayString = "${app.jobs.poll-interval-ms:2000}")
+    public int pollAndDispatch() {
+        if (shuttingDown) {
+            return 0;
+        }
+        int dispatched = 0;
+        for (AsyncJobHandler handler : handlers.values()) {
+            int free = Math.min(typeLimit(handler) - runningByType.get(handler.getJobType()).get(),
+                    poolSize(handler) - poolActive(handler).get());
+            if (free <= 0) {
+                continue;
+            }
             try {
-                asyncJobService.startJob(job.getId());
-                executeJob(job);
-                asyncJobService.completeJob(job.getId(), "{\"status\":\"success\"}");
+                for (AsyncJob job : asyncJobService.claimJobs(handler.getJobType(), workerId, free, leaseDuration)) {
+                    submit(handler, job);
+                    dispatched++;
+                }
             } catch (Exception e) {
+                log.error("Failed to claim {} jobs: {}", handler.getJobType(), e.getMessage());
+            }
+        }
+        return dispatched;
+    }
+
+    /**
+     * تمديد حجوزات المهام الجارية؛ المهام التي فقدت حجزها تُعلَّم كملغاة.
+     */
+    public void heartbeat() {
+        if (running.isEmpty()) {
+            return;
+        }
+        Set<Long> ids = new HashSet<>(running.keySet());
+        try {
+            Set<Long> stillLeased = new HashSet<>(asyncJobService.renewLeases(workerId, ids, leaseDuration));
+            for (Long id : ids) {
+                JobRun run = running.get(id);
+                if (run != null && !stillLeased.contains(id)) {
+                    log.warn("Job {} lost its lease (reclaimed or cancelled) — signalling handler to stop", run.job.getJobId());
+                    run.cancelled = true;
+                }
+            }
+        } catch (Exception e) {
+            log.error("Lease heartbeat failed for worker {}: {}", workerId, e.getMessage());
+        }
+    }
+
+    /**
+     * استرجاع المهام التي توقف عمّالها (انتهت حجوزاتها).
+     */
+    public int reclaimExpiredLeases() {
+        try {
+            int reclaimed = asyncJobService.reclaimExpiredLeases();
+            reclaimedCounter.increment(reclaimed);
+            return reclaimed;
+        } catch (Exception e) {
+            log.error("Lease reclaim failed: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    // ── Execution ───────────────────────────────────────────────
+
+    private void submit(AsyncJobHandler handler, AsyncJob job) {
+        JobRun run = new JobRun(job);
+        running.put(job.getId(), run);
+        runningByType.get(handler.getJobType()).incrementAndGet();
+        poolActive(handler).incrementAndGet();
+        meterRegistry.counter("twsela.jobs.claimed", "type", handler.getJobType()).increment();
+        try {
+            (handler.isIoBound() ? ioPool : cpuPool).execute(() -> execute(handler, run));
+        } catch (RejectedExecutionException e) {
+            release(handler, run);
+            asyncJobService.releaseLeases(workerId, List.of(job.getId()));
+        }
+    }
+
+    void execute(AsyncJobHandler handler, JobRun run) {
+        AsyncJob job = run.job;
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome;
+        try {
+            log.info("Executing job: type={}, jobId={}, worker={}", job.getJobType(), job.getJobId(), workerId);
+            String result = handler.execute(job, run);
+            if (run.isCancelled()) {
+                // Stopped early (lease lost or shutdown): hand back whatever is still ours
+                asyncJobService.releaseLeases(workerId, List.of(job.getId()));
+                outcome = "cancelled";
+            } else {
+                outcome = asyncJobService.completeLeasedJob(job.getId(), workerId, result) ? "success" : "lease_lost";
+            }
+        } catch (Exception e) {
+            if (run.isCancelled()) {
+                log.info("Job {} stopped after cancellation: {}", job.getJobId(), e.getMessage());
+                asyncJobService.releaseLeases(workerId, List.of(job.getId()));
+                outcome = "cancelled";
+            } else {
                 log.error("Job execution failed: jobId={}, error={}", job.getJobId(), e.getMessage());
-                asyncJobService.failJob(job.getId(), e.getMessage());
+                outcome = failQuietly(job, e.getMessage()) ? "failure" : "lease_lost";
             }
+        } finally {
+            release(handler, run);
+        }
+        sample.stop(Timer.builder("twsela.jobs.duration")
+                .description("Async job execution time")
+                .tag("type", job.getJobType())
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    private boolean failQuietly(AsyncJob job, String message) {
+        try {
+            return asyncJobService.failLeasedJob(job.getId(), workerId, message);
+        } catch (Exception e) {
+            log.error("Could not record failure for job {}: {}", job.getJobId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private void release(AsyncJobHandler handler, JobRun run) {
+        if (running.remove(run.job.getId()) != null) {
+            runningByType.get(handler.getJobType()).decrementAndGet();
+            poolActive(handler).decrementAndGet();
         }
     }
 
+    private int typeLimit(AsyncJobHandler handler) {
+        return handler.getMaxConcurrency() > 0 ? handler.getMaxConcurrency() : defaultTypeConcurrency;
+    }
+
+    private int poolSize(AsyncJobHandler handler) {
+        return handler.isIoBound() ? ioThreads : cpuThreads;
+    }
+
+    private AtomicInteger poolActive(AsyncJobHandler handler) {
+        return handler.isIoBound() ? ioActive : cpuActive;
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    public int getRunningCount() {
+        return running.size();
+    }
+
     /**
-     * تنفيذ مهمة واحدة حسب النوع.
+     * إيقاف منظم — انتظار المهام الجارية ثم إعادة ما تبقى للقائمة.
      */
-    void executeJob(AsyncJob job) {
-        log.info("Executing job: type={}, jobId={}", job.getJobType(), job.getJobId());
-        switch (job.getJobType()) {
-            case "BULK_SHIPMENT_PROCESS" -> processBulkShipments(job);
-            case "REPORT_GENERATION" -> generateReport(job);
-            case "SETTLEMENT_CALCULATION" -> calculateSettlements(job);
-            default -> log.info("Generic job execution for type: {}", job.getJobType());
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        running.values().forEach(run -> run.cancelled = true);
+        leaseScheduler.shutdown();
+        cpuPool.shutdown();
+        ioPool.shutdown();
+        try {
+            cpuPool.awaitTermination(10, TimeUnit.SECONDS);
+            ioPool.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!running.isEmpty()) {
+            int released = asyncJobService.releaseLeases(workerId, Set.copyOf(running.keySet()));
+            log.info("Worker {} released {} unfinished job(s) on shutdown", workerId, released);
         }
     }
 
-    private void processBulkShipments(AsyncJob job) {
-        log.info("Processing bulk shipments: {}", job.getPayload());
+    private static int resolveCpuThreads(int configured) {
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
     }
 
-    private void generateReport(AsyncJob job) {
-        log.info("Generating report: {}", job.getPayload());
+    private static String newWorkerId() {
+        String id = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        return id.length() > 100 ? id.substring(id.length() - 100) : id;
     }
 
-    private void calculateSettlements(AsyncJob job) {
-        log.info("Calculating settlements: {}", job.getPayload());
+    /**
+     * One claimed job in flight; doubles as the handler's progress context.
+     */
+    final class JobRun implements AsyncJobHandler.Context {
+
+        final AsyncJob job;
+        volatile boolean cancelled;
+
+        JobRun(AsyncJob job) {
+            this.job = job;
+        }
+
+        @Override
+        public void reportProgress(int percent) {
+            checkpoint(percent, null);
+        }
+
+        @Override
+        public void checkpoint(int percent, String state) {
+            int updated = asyncJobRepository.updateProgress(job.getId(), workerId, AsyncJob.JobStatus.RUNNING,
+                    Math.max(0, Math.min(100, percent)), state, Instant.now());
+            if (updated == 0) {
+                cancelled = true;
+            }
+        }
+
+        @Override
+        public String getCheckpoint() {
+            return job.getCheckpoint();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled || shuttingDown;
+        }
     }
 }
@@ -0,0 +1,52 @@
+package com.twsela.service;
+
+import com.twsela.domain.AsyncJob;
+
+/**
+ * معالج نوع من المهام غير المتزامنة.
+ * <p>
+ * Each implementation is a Spring bean picked up by {@link AsyncJobExecutor}; only job
+ * types with a registered handler are claimed. A handler may run again for the same job
+ * after a crash or lease loss, so it should resume from {@link Context#getCheckpoint()}
+ * and keep its side effects idempotent.
+ */
+public interface AsyncJobHandler {
+
+    /** The {@link AsyncJob#getJobType()} this handler executes. */
+    String getJobType();
+
+    /**
+     * Run the job.
+     *
+     * @return result stored on the job (JSON)
+     */
+    String execute(AsyncJob job, Context context) throws Exception;
+
+    /** I/O-bound handlers (remote calls, file output) run on the larger I/O pool. */
+    default boolean isIoBound() {
+        return false;
+    }
+
+    /** Max jobs of this type running at once on one node; 0 uses {@code app.jobs.default-type-concurrency}. */
+    default int getMaxConcurrency() {
+        return 0;
+    }
+
+    /**
+     * Progress reporting and cancellation for a running job.
+     */
+    interface Context {
+
+        /** Record progress (0–100). Also extends the lease heartbeat. */
+        void reportProgress(int percent);
+
+        /** Record progress together with resume state for a later attempt. */
+        void checkpoint(int percent, String state);
+
+        /** Resume state saved by a previous attempt, or null on the first run. */
+        String getCheckpoint();
+
+        /** True once the lease is lost, the job is cancelled, or the node is shutting down. */
+        boolean isCancelled();
+    }
+}
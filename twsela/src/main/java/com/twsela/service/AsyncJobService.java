@@ -6,10 +6,13 @@ import com.twsela.web.exception.BusinessRuleException;
 import com.twsela.web.exception.ResourceNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +26,8 @@ public class AsyncJobService {
 
     private static final Logger log = LoggerFactory.getLogger(AsyncJobService.class);
     private static final int MAX_CONCURRENT_JOBS = 10;
+    private static final Duration RETRY_BASE_DELAY = Duration.ofSeconds(30);
+    private static final int MAX_RETRY_SHIFT = 6;
 
     private final AsyncJobRepository asyncJobRepository;
 
@@ -59,8 +64,7 @@ public class AsyncJobService {
         }
 
         // Check concurrent job limit
-        List<AsyncJob> running = asyncJobRepository.findRunningJobs();
-        if (running.size() >= MAX_CONCURRENT_JOBS) {
+        if (asyncJobRepository.countByStatus(AsyncJob.JobStatus.RUNNING) >= MAX_CONCURRENT_JOBS) {
             throw new BusinessRuleException("الحد الأقصى للمهام المتزامنة (" + MAX_CONCURRENT_JOBS + ") قد تم الوصول إليه");
         }
 
@@ -77,13 +81,7 @@ public class AsyncJobService {
     public AsyncJob completeJob(Long jobId, String result) {
         AsyncJob job = asyncJobRepository.findById(jobId)
                 .orElseThrow(() -> new ResourceNotFoundException("AsyncJob", "id", jobId));
-
-        job.setStatus(AsyncJob.JobStatus.COMPLETED);
-        job.setCompletedAt(Instant.now());
-        job.setResult(result);
-
-        log.info("Job {} completed successfully", job.getJobId());
-        return asyncJobRepository.save(job);
+        return markCompleted(job, result);
     }
 
     /**
@@ -92,20 +90,7 @@ public class AsyncJobService {
     public AsyncJob failJob(Long jobId, String errorMessage) {
         AsyncJob job = asyncJobRepository.findById(jobId)
                 .orElseThrow(() -> new ResourceNotFoundException("AsyncJob", "id", jobId));
-
-        job.setRetryCount(job.getRetryCount() + 1);
-        job.setErrorMessage(errorMessage);
-
-        if (job.getRetryCount() >= job.getMaxRetries()) {
-            job.setStatus(AsyncJob.JobStatus.FAILED);
-            job.setCompletedAt(Instant.now());
-            log.error("Job {} failed permanently after {} retries", job.getJobId(), job.getRetryCount());
-        } else {
-            job.setStatus(AsyncJob.JobStatus.QUEUED);
-            log.warn("Job {} failed — retry {}/{}", job.getJobId(), job.getRetryCount(), job.getMaxRetries());
-        }
-
-        return asyncJobRepository.save(job);
+        return markFailed(job, errorMessage);
     }
 
     /**
@@ -121,11 +106,114 @@ public class AsyncJobService {
 
         job.setStatus(AsyncJob.JobStatus.CANCELLED);
         job.setCompletedAt(Instant.now());
+        clearLease(job);
 
         log.info("Job {} cancelled", job.getJobId());
         return asyncJobRepository.save(job);
     }
 
+    // ── Worker leases ──────────────────────────────────────────
+
+    /**
+     * حجز المهام المستحقة من نوع معين لعامل — بالأولوية مع تخطي الصفوف المقفلة.
+     */
+    public List<AsyncJob> claimJobs(String jobType, String workerId, int limit, Duration leaseDuration) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        Instant now = Instant.now();
+        List<AsyncJob> jobs = asyncJobRepository.lockNextDue(
+                jobType, AsyncJob.JobStatus.QUEUED, now, PageRequest.of(0, limit));
+        for (AsyncJob job : jobs) {
+            job.setStatus(AsyncJob.JobStatus.RUNNING);
+            job.setStartedAt(now);
+            job.setLeaseOwner(workerId);
+            job.setLeaseExpiresAt(now.plus(leaseDuration));
+            job.setHeartbeatAt(now);
+        }
+        if (!jobs.isEmpty()) {
+            asyncJobRepository.saveAll(jobs);
+            log.debug("Worker {} claimed {} {} job(s)", workerId, jobs.size(), jobType);
+        }
+        return jobs;
+    }
+
+    /**
+     * إتمام مهمة محجوزة — يُتجاهل إذا فقد العامل الحجز.
+     *
+     * @return false if the lease was reclaimed or the job cancelled meanwhile
+     */
+    public boolean completeLeasedJob(Long jobId, String workerId, String result) {
+        AsyncJob job = asyncJobRepository.findById(jobId)
+                .orElseThrow(() -> new ResourceNotFoundException("AsyncJob", "id", jobId));
+        if (!holdsLease(job, workerId)) {
+            log.warn("Job {} finished on {} after losing its lease — result discarded", job.getJobId(), workerId);
+            return false;
+        }
+        markCompleted(job, result);
+        return true;
+    }
+
+    /**
+     * تسجيل فشل مهمة محجوزة — يُتجاهل إذا فقد العامل الحجز.
+     */
+    public boolean failLeasedJob(Long jobId, String workerId, String errorMessage) {
+        AsyncJob job = asyncJobRepository.findById(jobId)
+                .orElseThrow(() -> new ResourceNotFoundException("AsyncJob", "id", jobId));
+        if (!holdsLease(job, workerId)) {
+            log.warn("Job {} failed on {} after losing its lease — ignored", job.getJobId(), workerId);
+            return false;
+        }
+        markFailed(job, errorMessage);
+        return true;
+    }
+
+    /**
+     * تمديد حجوزات العامل.
+     *
+     * @return ids still leased by the worker; anything missing was reclaimed or cancelled
+     */
+    public List<Long> renewLeases(String workerId, Collection<Long> jobIds, Duration leaseDuration) {
+        if (jobIds.isEmpty()) {
+            return List.of();
+        }
+        Instant now = Instant.now();
+        int renewed = asyncJobRepository.renewLeases(
+                workerId, jobIds, AsyncJob.JobStatus.RUNNING, now.plus(leaseDuration), now);
+        if (renewed == jobIds.size()) {
+            return List.copyOf(jobIds);
+        }
+        return asyncJobRepository.findLeasedIds(workerId, jobIds, AsyncJob.JobStatus.RUNNING);
+    }
+
+    /**
+     * استرجاع المهام التي انتهت حجوزاتها (توقف العامل) — تُعاد للقائمة أو تفشل نهائياً.
+     *
+     * @return number of jobs reclaimed
+     */
+    public int reclaimExpiredLeases() {
+        Instant now = Instant.now();
+        int failed = asyncJobRepository.failExpiredLeases(
+                AsyncJob.JobStatus.RUNNING, AsyncJob.JobStatus.FAILED, "Worker lease expired", now);
+        int requeued = asyncJobRepository.requeueExpiredLeases(
+                AsyncJob.JobStatus.RUNNING, AsyncJob.JobStatus.QUEUED, now);
+        if (failed + requeued > 0) {
+            log.warn("Reclaimed expired job leases: requeued={}, failed={}", requeued, failed);
+        }
+        return failed + requeued;
+    }
+
+    /**
+     * إعادة مهام العامل للقائمة دون احتساب محاولة (إيقاف منظم).
+     */
+    public int releaseLeases(String workerId, Collection<Long> jobIds) {
+        if (jobIds.isEmpty()) {
+            return 0;
+        }
+        return asyncJobRepository.releaseLeases(workerId, jobIds,
+                AsyncJob.JobStatus.RUNNING, AsyncJob.JobStatus.QUEUED, Instant.now());
+    }
+
     /**
      * جلب مهمة حسب jobId (UUID).
      */
@@ -157,4 +245,47 @@ public class AsyncJobService {
         stats.put("total", asyncJobRepository.count());
         return stats;
     }
+
+    private AsyncJob markCompleted(AsyncJob job, String result) {
+        job.setStatus(AsyncJob.JobStatus.COMPLETED);
+        job.setCompletedAt(Instant.now());
+        job.setResult(result);
+        job.setProgress(100);
+        clearLease(job);
+
+        log.info("Job {} completed successfully", job.getJobId());
+        return asyncJobRepository.save(job);
+    }
+
+    private AsyncJob markFailed(AsyncJob job, String errorMessage) {
+        job.setRetryCount(job.getRetryCount() + 1);
+        job.setErrorMessage(errorMessage);
+        clearLease(job);
+
+        if (job.getRetryCount() >= job.getMaxRetries()) {
+            job.setStatus(AsyncJob.JobStatus.FAILED);
+            job.setCompletedAt(Instant.now());
+            log.error("Job {} failed permanently after {} retries", job.getJobId(), job.getRetryCount());
+        } else {
+            job.setStatus(AsyncJob.JobStatus.QUEUED);
+            job.setScheduledAt(Instant.now().plus(retryDelay(job.getRetryCount())));
+            log.warn("Job {} failed — retry {}/{}", job.getJobId(), job.getRetryCount(), job.getMaxRetries());
+        }
+
+        return asyncJobRepository.save(job);
+    }
+
+    /** 30s, 60s, 120s … capped at 32 minutes. */
+    static Duration retryDelay(int retryCount) {
+        return RETRY_BASE_DELAY.multipliedBy(1L << Math.min(Math.max(retryCount - 1, 0), MAX_RETRY_SHIFT));
+    }
+
+    private static boolean holdsLease(AsyncJob job, String workerId) {
+        return job.getStatus() == AsyncJob.JobStatus.RUNNING && workerId.equals(job.getLeaseOwner());
+    }
+
+    private static void clearLease(AsyncJob job) {
+        job.setLeaseOwner(null);
+        job.setLeaseExpiresAt(null);
+    }
 }
@@ -0,0 +1,534 @@
+package com.twsela.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.domain.SecurityEvent;
+import com.twsela.domain.SystemAuditLog;
+import com.twsela.domain.User;
+import com.twsela.repository.SecurityEventRepository;
+import com.twsela.repository.SystemAuditLogRepository;
+import com.twsela.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * خط كتابة سجلات التدقيق والأحداث الأمنية في الخلفية.
+ * <p>
+ * {@link AuditService} and {@link SecurityEventService} only append to a bounded lock-free
+ * queue; a single writer thread drains it every {@code app.audit.flush-interval-ms} and inserts
+ * each batch into {@code system_audit_log} and {@code security_events} with JDBC batches in one
+ * transaction, resolving audit users by phone with one query per batch. Client-supplied
+ * values (IP, user agent) are cut to their column lengths when queued.
+ * <p>
+ * Events that do not fit in the queue, and batches written while the database is unavailable,
+ * are appended as JSON lines to a spill file under {@code app.audit.spill-dir}, which must be
+ * a durable directory; the writer replays spill files once the queue is empty and the
+ * database accepts writes again. A batch the database rejects row by row (constraint or
+ * data errors) is split in halves until the offending rows are isolated; those go to a
+ * dead-letter file in the same directory so they cannot hold up the rows behind them. An
+ * event is only lost when the spill file cannot be written either.
+ * <p>
+ * Meters: {@code twsela.audit.queue.depth}, {@code twsela.audit.written},
+ * {@code twsela.audit.spilled} (by reason), {@code twsela.audit.replayed},
+ * {@code twsela.audit.dead-lettered} and {@code twsela.audit.dropped}.
+ */
+@Service
+public class AuditPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditPipeline.class);
+    static final String SPILL_FILE = "audit-spill.jsonl";
+    static final String DEAD_LETTER_FILE = "audit-dead-letter.jsonl";
+    static final int IP_ADDRESS_LENGTH = 45;
+    static final int USER_AGENT_LENGTH = 500;
+    private static final int NAME_LENGTH = 100;
+    private static final String REPLAY_PREFIX = "audit-spill-";
+    private static final String REPLAY_SUFFIX = ".replay";
+
+    sealed interface Entry permits AuditEntry, SecurityEntry {}
+
+    /** A {@code system_audit_log} row; without a user id the writer resolves {@code userPhone}. */
+    public record AuditEntry(Long userId, String userPhone, String actionType, String entityType, Long entityId,
+                             String oldValues, String newValues, String ipAddress, String userAgent,
+                             Instant createdAt) implements Entry {}
+
+    /** A {@code security_events} row. */
+    public record SecurityEntry(Long userId, SecurityEvent.EventType eventType, String ipAddress, String userAgent,
+                                String details, SecurityEvent.Severity severity, Instant createdAt) implements Entry {}
+
+    /** One line of a spill file; exactly one of the two is set. */
+    record SpillLine(AuditEntry audit, SecurityEntry security) {}
+
+    /** Rows written by one call, and the rows left for the spill file because the database is unavailable. */
+    private record WriteResult(int written, List<Entry> unwritten) {}
+
+    private final SystemAuditLogRepository auditLogRepository;
+    private final SecurityEventRepository securityEventRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService scheduler;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final Path spillDir;
+
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Object spillLock = new Object();
+    private volatile boolean spillPending;
+
+    private final Counter writtenAudit;
+    private final Counter writtenSecurity;
+    private final Counter spilledOverflow;
+    private final Counter spilledWriteFailed;
+    private final Counter replayed;
+    private final Counter deadLettered;
+    private final Counter dropped;
+
+    @Autowired
+    public AuditPipeline(SystemAuditLogRepository auditLogRepository,
+                         SecurityEventRepository securityEventRepository,
+                         UserRepository userRepository,
+                         PlatformTransactionManager transactionManager,
+                         ObjectMapper objectMapper,
+                         MeterRegistry meterRegistry,
+                         @Value("${app.audit.queue-capacity:10000}") int capacity,
+                         @Value("${app.audit.batch-size:500}") int batchSize,
+                         @Value("${app.audit.flush-interval-ms:200}") long flushIntervalMs,
+                         @Value("${app.audit.spill-dir}") String spillDir) {
+        this(auditLogRepository, securityEventRepository, userRepository, transactionManager, objectMapper,
+                meterRegistry, Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("audit-writer-")),
+                capacity, batchSize, flushIntervalMs, Path.of(spillDir));
+    }
+
+    AuditPipeline(SystemAuditLogRepository auditLogRepository,
+                  SecurityEventRepository securityEventRepository,
+                  UserRepository userRepository,
+                  PlatformTransactionManager transactionManager,
+                  ObjectMapper objectMapper,
+                  MeterRegistry meterRegistry,
+                  ScheduledExecutorService scheduler,
+                  int capacity, int batchSize, long flushIntervalMs, Path spillDir) {
+        this.auditLogRepository = auditLogRepository;
+        this.securityEventRepository = securityEventRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.scheduler = scheduler;
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.spillDir = spillDir;
+
+        Gauge.builder("twsela.audit.queue.depth", depth, AtomicInteger::get)
+                .description("Audit and security events waiting for the background writer")
+                .register(meterRegistry);
+        this.writtenAudit = writtenCounter(meterRegistry, "system_audit_log");
+        this.writtenSecurity = writtenCounter(meterRegistry, "security_events");
+        this.spilledOverflow = spilledCounter(meterRegistry, "overflow");
+        this.spilledWriteFailed = spilledCounter(meterRegistry, "write-failed");
+        this.replayed = Counter.builder("twsela.audit.replayed")
+                .description("Spilled audit events written to the database on replay")
+                .register(meterRegistry);
+        this.deadLettered = Counter.builder("twsela.audit.dead-lettered")
+                .description("Audit events the database rejected, moved to the dead-letter file")
+                .register(meterRegistry);
+        this.dropped = Counter.builder("twsela.audit.dropped")
+                .description("Audit events lost because the spill file could not be written or read")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (spillDir.toAbsolutePath().startsWith(Path.of(System.getProperty("java.io.tmpdir")).toAbsolutePath())) {
+            log.warn("Audit spill directory {} is under the temp directory and may not survive a restart", spillDir);
+        }
+        try {
+            Files.createDirectories(spillDir);
+            try (Stream<Path> files = Files.list(spillDir)) {
+                spillPending = files.anyMatch(AuditPipeline::isSpillFile);
+            }
+        } catch (IOException e) {
+            log.error("Audit spill directory {} is not usable: {}", spillDir, e.getMessage());
+        }
+        scheduler.scheduleWithFixedDelay(this::safeFlush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        safeFlush();
+    }
+
+    /** Queue an audit row; never blocks on the database and never throws. */
+    public void append(AuditEntry entry) {
+        enqueue(fit(entry));
+    }
+
+    /** Queue a security event row; never blocks on the database and never throws. */
+    public void append(SecurityEntry entry) {
+        enqueue(fit(entry));
+    }
+
+    /** Events waiting for the writer. */
+    public int queueDepth() {
+        return depth.get();
+    }
+
+    /**
+     * Write everything queued, then replay spill files if the database accepted the writes.
+     * Runs on the writer thread; package-private so tests can drive it.
+     */
+    synchronized void flush() {
+        List<Entry> batch;
+        while (!(batch = drain()).isEmpty()) {
+            List<Entry> unwritten = write(batch).unwritten();
+            if (!unwritten.isEmpty()) {
+                // The database is unavailable: park what is left and the rest of the queue until the next tick
+                spill(unwritten, spilledWriteFailed);
+                while (!(batch = drain()).isEmpty()) {
+                    spill(batch, spilledWriteFailed);
+                }
+                return;
+            }
+        }
+        if (spillPending) {
+            replaySpilled();
+        }
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    private void enqueue(Entry entry) {
+        if (depth.incrementAndGet() > capacity) {
+            depth.decrementAndGet();
+            spill(List.of(entry), spilledOverflow);
+            return;
+        }
+        queue.add(entry);
+    }
+
+    private List<Entry> drain() {
+        List<Entry> batch = new ArrayList<>();
+        Entry entry;
+        while (batch.size() < batchSize && (entry = queue.poll()) != null) {
+            depth.decrementAndGet();
+            batch.add(entry);
+        }
+        return batch;
+    }
+
+    private void safeFlush() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Audit flush failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Write {@code batch} in one transaction. If the database rejects the data, write each half
+     * on its own until the rejected rows are isolated and dead-lettered; any other failure stops
+     * the write and returns what is left.
+     */
+    private WriteResult write(List<Entry> batch) {
+        try {
+            insert(batch);
+            return new WriteResult(batch.size(), List.of());
+        } catch (DataIntegrityViolationException e) {
+            if (batch.size() == 1) {
+                deadLetter(batch.get(0), e);
+                return new WriteResult(0, List.of());
+            }
+            int half = batch.size() / 2;
+            WriteResult first = write(batch.subList(0, half));
+            if (!first.unwritten().isEmpty()) {
+                List<Entry> unwritten = new ArrayList<>(first.unwritten());
+                unwritten.addAll(batch.subList(half, batch.size()));
+                return new WriteResult(first.written(), unwritten);
+            }
+            WriteResult second = write(batch.subList(half, batch.size()));
+            return new WriteResult(first.written() + second.written(), second.unwritten());
+        } catch (RuntimeException e) {
+            log.warn("Audit write of {} events failed, spilling to {}: {}", batch.size(), spillDir, e.getMessage());
+            return new WriteResult(0, batch);
+        }
+    }
+
+    private void insert(List<Entry> batch) {
+        List<AuditEntry> audits = new ArrayList<>();
+        List<SecurityEntry> securityEntries = new ArrayList<>();
+        for (Entry entry : batch) {
+            if (entry instanceof AuditEntry audit) {
+                audits.add(audit);
+            } else if (entry instanceof SecurityEntry security) {
+                securityEntries.add(security);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            auditLogRepository.insertBatch(toAuditLogs(audits));
+            securityEventRepository.insertBatch(toSecurityEvents(securityEntries));
+        });
+        writtenAudit.increment(audits.size());
+        writtenSecurity.increment(securityEntries.size());
+    }
+
+    private List<SystemAuditLog> toAuditLogs(List<AuditEntry> audits) {
+        Set<String> phones = new HashSet<>();
+        for (AuditEntry audit : audits) {
+            if (audit.userId() == null && audit.userPhone() != null) {
+                phones.add(audit.userPhone());
+            }
+        }
+        Map<String, Long> userIds = new HashMap<>();
+        if (!phones.isEmpty()) {
+            for (Object[] row : userRepository.findIdsByPhoneIn(phones)) {
+                userIds.put((String) row[0], (Long) row[1]);
+            }
+        }
+
+        List<SystemAuditLog> logs = new ArrayList<>(audits.size());
+        for (AuditEntry audit : audits) {
+            SystemAuditLog auditLog = new SystemAuditLog();
+            auditLog.setUserId(audit.userId() != null ? audit.userId() : userIds.get(audit.userPhone()));
+            auditLog.setActionType(audit.actionType());
+            auditLog.setEntityType(audit.entityType());
+            auditLog.setEntityId(audit.entityId());
+            auditLog.setOldValues(audit.oldValues());
+            auditLog.setNewValues(audit.newValues());
+            auditLog.setIpAddress(audit.ipAddress());
+            auditLog.setUserAgent(audit.userAgent());
+            auditLog.setCreatedAt(audit.createdAt());
+            logs.add(auditLog);
+        }
+        return logs;
+    }
+
+    private static List<SecurityEvent> toSecurityEvents(List<SecurityEntry> entries) {
+        List<SecurityEvent> events = new ArrayList<>(entries.size());
+        for (SecurityEntry entry : entries) {
+            SecurityEvent event = new SecurityEvent();
+            if (entry.userId() != null) {
+                User user = new User();
+                user.setId(entry.userId());
+                event.setUser(user);
+            }
+            event.setEventType(entry.eventType());
+            event.setIpAddress(entry.ipAddress());
+            event.setUserAgent(entry.userAgent());
+            event.setDetails(entry.details());
+            event.setSeverity(entry.severity());
+            event.setCreatedAt(entry.createdAt());
+            events.add(event);
+        }
+        return events;
+    }
+
+    private void spill(List<Entry> entries, Counter reason) {
+        synchronized (spillLock) {
+            try (BufferedWriter out = Files.newBufferedWriter(spillDir.resolve(SPILL_FILE), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (Entry entry : entries) {
+                    out.write(toLine(entry));
+                    out.newLine();
+                }
+                spillPending = true;
+                reason.increment(entries.size());
+            } catch (IOException e) {
+                dropped.increment(entries.size());
+                log.error("Audit spill to {} failed, {} events dropped: {}", spillDir, entries.size(), e.getMessage());
+            }
+        }
+    }
+
+    private void deadLetter(Entry entry, RuntimeException cause) {
+        log.error("Audit event rejected by the database, moved to {}: {}", DEAD_LETTER_FILE, cause.getMessage());
+        synchronized (spillLock) {
+            try (BufferedWriter out = Files.newBufferedWriter(spillDir.resolve(DEAD_LETTER_FILE),
+                    StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                out.write(toLine(entry));
+                out.newLine();
+                deadLettered.increment();
+            } catch (IOException e) {
+                dropped.increment();
+                log.error("Audit dead-letter write to {} failed, event dropped: {}", spillDir, e.getMessage());
+            }
+        }
+    }
+
+    private String toLine(Entry entry) throws IOException {
+        SpillLine line = entry instanceof AuditEntry audit
+                ? new SpillLine(audit, null)
+                : new SpillLine(null, (SecurityEntry) entry);
+        return objectMapper.writeValueAsString(line);
+    }
+
+    /**
+     * Move the active spill file aside and write every spill file to the database, oldest
+     * first. A file that fails part-way keeps only its unwritten lines for the next attempt.
+     */
+    private void replaySpilled() {
+        List<Path> files;
+        try {
+            synchronized (spillLock) {
+                Path active = spillDir.resolve(SPILL_FILE);
+                if (Files.exists(active)) {
+                    Files.move(active, spillDir.resolve(REPLAY_PREFIX + System.currentTimeMillis() + REPLAY_SUFFIX),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+                spillPending = false;
+            }
+            try (Stream<Path> listing = Files.list(spillDir)) {
+                files = listing.filter(p -> p.getFileName().toString().endsWith(REPLAY_SUFFIX)).sorted().toList();
+            }
+            for (Path file : files) {
+                if (!replay(file)) {
+                    spillPending = true;
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            spillPending = true;
+            log.error("Audit spill replay from {} failed: {}", spillDir, e.getMessage());
+        }
+    }
+
+    private boolean replay(Path file) throws IOException {
+        int total = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<String> lines = new ArrayList<>(batchSize);
+            String line;
+            while (true) {
+                lines.clear();
+                while (lines.size() < batchSize && (line = in.readLine()) != null) {
+                    lines.add(line);
+                }
+                if (lines.isEmpty()) {
+                    break;
+                }
+                WriteResult result = write(parse(lines));
+                replayed.increment(result.written());
+                total += result.written();
+                if (!result.unwritten().isEmpty()) {
+                    keepUnwritten(file, result.unwritten(), in);
+                    return false;
+                }
+            }
+        }
+        Files.delete(file);
+        log.info("Replayed {} spilled audit events from {}", total, file.getFileName());
+        return true;
+    }
+
+    private List<Entry> parse(List<String> lines) {
+        List<Entry> entries = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                SpillLine spilled = objectMapper.readValue(line, SpillLine.class);
+                // Files spilled before values were cut to size must not block replay
+                if (spilled.audit() != null) {
+                    entries.add(fit(spilled.audit()));
+                } else if (spilled.security() != null) {
+                    entries.add(fit(spilled.security()));
+                }
+            } catch (IOException e) {
+                dropped.increment();
+                log.error("Unreadable spilled audit event skipped: {}", e.getMessage());
+            }
+        }
+        return entries;
+    }
+
+    private void keepUnwritten(Path file, List<Entry> unwritten, BufferedReader rest) throws IOException {
+        Path remainder = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(remainder, StandardCharsets.UTF_8)) {
+            for (Entry entry : unwritten) {
+                out.write(toLine(entry));
+                out.newLine();
+            }
+            String line;
+            while ((line = rest.readLine()) != null) {
+                out.write(line);
+                out.newLine();
+            }
+        }
+        Files.move(remainder, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static AuditEntry fit(AuditEntry entry) {
+        return new AuditEntry(entry.userId(), entry.userPhone(), cut(entry.actionType(), NAME_LENGTH),
+                cut(entry.entityType(), NAME_LENGTH), entry.entityId(), entry.oldValues(), entry.newValues(),
+                cut(entry.ipAddress(), IP_ADDRESS_LENGTH), cut(entry.userAgent(), USER_AGENT_LENGTH),
+                entry.createdAt());
+    }
+
+    private static SecurityEntry fit(SecurityEntry entry) {
+        return new SecurityEntry(entry.userId(), entry.eventType(), cut(entry.ipAddress(), IP_ADDRESS_LENGTH),
+                cut(entry.userAgent(), USER_AGENT_LENGTH), entry.details(), entry.severity(), entry.createdAt());
+    }
+
+    private static String cut(String value, int length) {
+        return value != null && value.length() > length ? value.substring(0, length) : value;
+    }
+
+    private static boolean isSpillFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.equals(SPILL_FILE) || name.endsWith(REPLAY_SUFFIX);
+    }
+
+    private static Counter writtenCounter(MeterRegistry registry, String table) {
+        return Counter.builder("twsela.audit.written")
+                .description("Audit and security events written by the background writer")
+                .tag("table", table)
+                .register(registry);
+    }
+
+    private static Counter spilledCounter(MeterRegistry registry, String reason) {
+        return Counter.builder("twsela.audit.spilled")
+                .description("Audit events appended to the spill file")
+                .tag("reason", reason)
+                .register(registry);
+    }
+}
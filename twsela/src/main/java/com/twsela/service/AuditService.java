@@ -1,19 +1,22 @@
 package com.twsela.service;
 
 import com.twsela.domain.SystemAuditLog;
-import com.twsela.domain.User;
 import com.twsela.repository.SystemAuditLogRepository;
-import com.twsela.repository.UserRepository;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.security.core.Authentication;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
 
+/**
+ * تسجيل عمليات التدقيق. Writes go through {@link AuditPipeline}, so logging never waits on
+ * the database; the acting user is resolved from the authentication's phone by the writer.
+ */
 @Service
 @Transactional
 public class AuditService {
@@ -21,22 +24,23 @@ public class AuditService {
     private static final Logger log = LoggerFactory.getLogger(AuditService.class);
 
     private final SystemAuditLogRepository systemAuditLogRepository;
-    private final UserRepository userRepository;
+    private final AuditPipeline auditPipeline;
 
     public AuditService(SystemAuditLogRepository systemAuditLogRepository,
-                        UserRepository userRepository) {
+                        AuditPipeline auditPipeline) {
         this.systemAuditLogRepository = systemAuditLogRepository;
-        this.userRepository = userRepository;
+        this.auditPipeline = auditPipeline;
     }
 
     /**
      * Log a successful operation
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void logSuccess(String action, String entityType, Long entityId, String description, 
                           Authentication authentication, HttpServletRequest request) {
         try {
-            SystemAuditLog auditLog = createAuditLog(action, entityType, entityId, description, authentication, request);
-            systemAuditLogRepository.save(auditLog);
+            auditPipeline.append(createAuditEntry(action, entityType, entityId, null, description,
+                    authentication, request));
         } catch (Exception e) {
             // Don't let audit logging break the main operation
             log.error("Failed to log audit: {}", e.getMessage(), e);
@@ -46,12 +50,12 @@ public class AuditService {
     /**
      * Log a failed operation
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void logFailure(String action, String entityType, Long entityId, String description, 
                           String errorMessage, Authentication authentication, HttpServletRequest request) {
         try {
-            SystemAuditLog auditLog = createAuditLog(action, entityType, entityId, description, authentication, request);
-            auditLog.setOldValues(errorMessage);
-            systemAuditLogRepository.save(auditLog);
+            auditPipeline.append(createAuditEntry(action, entityType, entityId, errorMessage, description,
+                    authentication, request));
         } catch (Exception e) {
             // Don't let audit logging break the main operation
             log.error("Failed to log audit: {}", e.getMessage(), e);
@@ -61,22 +65,13 @@ public class AuditService {
     /**
      * Log authentication events
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void logAuthentication(String action, String phone, String ipAddress, String userAgent, boolean success, String errorMessage) {
         try {
-            SystemAuditLog auditLog = new SystemAuditLog();
-            auditLog.setActionType(action);
-            auditLog.setEntityType("AUTHENTICATION");
-            auditLog.setIpAddress(ipAddress);
-            auditLog.setUserAgent(userAgent);
-            auditLog.setCreatedAt(Instant.now());
-            
-            if (success) {
-                auditLog.setNewValues("Authentication successful for: " + phone);
-            } else {
-                auditLog.setOldValues("Authentication failed for: " + phone + " - " + errorMessage);
-            }
-            
-            systemAuditLogRepository.save(auditLog);
+            String oldValues = success ? null : "Authentication failed for: " + phone + " - " + errorMessage;
+            String newValues = success ? "Authentication successful for: " + phone : null;
+            auditPipeline.append(new AuditPipeline.AuditEntry(null, null, action, "AUTHENTICATION", null,
+                    oldValues, newValues, ipAddress, userAgent, Instant.now()));
         } catch (Exception e) {
             log.error("Failed to log authentication audit: {}", e.getMessage(), e);
         }
@@ -107,51 +102,20 @@ public class AuditService {
     }
 
     /**
-     * Create audit log object
+     * Create audit entry
      */
-    private SystemAuditLog createAuditLog(String action, String entityType, Long entityId, String description, 
-                                   Authentication authentication, HttpServletRequest request) {
-        SystemAuditLog auditLog = new SystemAuditLog();
-        auditLog.setActionType(action);
-        auditLog.setEntityType(entityType);
-        auditLog.setEntityId(entityId);
-        auditLog.setNewValues(description);
-        auditLog.setCreatedAt(Instant.now());
-
-        if (authentication != null && authentication.isAuthenticated()) {
-            try {
-                String phone = authentication.getName();
-                User user = userRepository.findByPhone(phone).orElse(null);
-                if (user != null) {
-                    auditLog.setUserId(user.getId());
-                }
-            } catch (Exception e) {
-                // User not found, continue without user info
-            }
-        }
-
-        if (request != null) {
-            auditLog.setIpAddress(getClientIpAddress(request));
-            auditLog.setUserAgent(request.getHeader("User-Agent"));
-        }
-
-        return auditLog;
+    private AuditPipeline.AuditEntry createAuditEntry(String action, String entityType, Long entityId,
+                                                     String oldValues, String description,
+                                                     Authentication authentication, HttpServletRequest request) {
+        String phone = authentication != null && authentication.isAuthenticated() ? authentication.getName() : null;
+        String ipAddress = request != null ? getClientIpAddress(request) : null;
+        String userAgent = request != null ? request.getHeader("User-Agent") : null;
+        return new AuditPipeline.AuditEntry(null, phone, action, entityType, entityId, oldValues, description,
+                ipAddress, userAgent, Instant.now());
     }
 
-    /**
-     * Get client IP address from request
-     */
+    /** Same address the login endpoint blocks: the peer, or the client a trusted proxy forwarded for. */
     private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-        
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
-        
         return request.getRemoteAddr();
     }
 }
@@ -2,6 +2,7 @@ package com.twsela.service;
 
 import com.twsela.domain.User;
 import static com.twsela.domain.ShipmentStatusConstants.*;
+import com.twsela.repository.DeliveryProofRepository;
 import com.twsela.repository.ShipmentRepository;
 import com.twsela.repository.UserRepository;
 import org.slf4j.Logger;
@@ -10,6 +11,9 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Service
 public class AuthorizationService {
 
@@ -17,10 +21,13 @@ public class AuthorizationService {
 
     private final UserRepository userRepository;
     private final ShipmentRepository shipmentRepository;
+    private final DeliveryProofRepository deliveryProofRepository;
 
-    public AuthorizationService(UserRepository userRepository, ShipmentRepository shipmentRepository) {
+    public AuthorizationService(UserRepository userRepository, ShipmentRepository shipmentRepository,
+                                DeliveryProofRepository deliveryProofRepository) {
         this.userRepository = userRepository;
         this.shipmentRepository = shipmentRepository;
+        this.deliveryProofRepository = deliveryProofRepository;
     }
 
     /**
@@ -70,6 +77,26 @@ public class AuthorizationService {
                 .orElse(false);
     }
 
+    /**
+     * Check if the current user can download a stored file. Owners and admins can read every
+     * file; everyone else only POD photos, delivery photos, thumbnails and signatures that belong
+     * to a shipment they can access. Content-addressed files are shared, so access through any
+     * shipment that references the file is enough.
+     *
+     * @param storedPath the path the file was stored under, e.g. {@code /uploads/pod/<sha256>.jpg}
+     */
+    public boolean canAccessFile(String storedPath) {
+        User currentUser = getCurrentUser();
+        String role = currentUser.getRole().getName();
+        if ("OWNER".equals(role) || "ADMIN".equals(role)) {
+            return true;
+        }
+
+        List<Long> shipmentIds = new ArrayList<>(shipmentRepository.findIdsByPodData(storedPath));
+        shipmentIds.addAll(deliveryProofRepository.findShipmentIdsByImageUrl(storedPath));
+        return shipmentIds.stream().distinct().anyMatch(this::canAccessShipment);
+    }
+
     /**
      * Check if the current user can access another user's data
      */
@@ -0,0 +1,344 @@
+package com.twsela.service;
+
+import com.twsela.domain.SecurityEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * كاشف محاولات brute force في الذاكرة — نوافذ منزلقة لكل عنوان IP ولكل حساب.
+ * <p>
+ * Each key holds a ring of per-bucket failure counts ({@code app.brute-force.window-minutes}
+ * split into {@code bucket-seconds} buckets), so recording a failed login and reading the
+ * window total never touch the database. Both maps are capped at {@code max-keys}; when full,
+ * idle keys are swept first and then arbitrary ones are evicted.
+ * <p>
+ * Failures are persisted only in aggregate: {@link #report} writes one {@code LOGIN_FAILURE}
+ * security event per IP with the failures seen since the previous report. An IP that crosses
+ * its threshold trips once per block; {@link IpBlockingService} then puts it on the blocklist
+ * and {@link #isBlocked} answers for it without a query until the block ends. Blocks start at
+ * {@code block-minutes} and double each time the same IP trips again, up to
+ * {@code max-block-minutes}; an IP that stays quiet for {@code max-block-minutes} after its last
+ * block starts over.
+ */
+@Service
+public class BruteForceDetector {
+
+    private static final Logger log = LoggerFactory.getLogger(BruteForceDetector.class);
+
+    /** Window totals after a failure, whether this failure crossed a threshold, and until when a tripped IP is blocked. */
+    public record Verdict(int ipFailures, int accountFailures, boolean ipTripped, boolean accountTripped,
+                          Instant ipBlockedUntil) {
+
+        public Verdict(int ipFailures, int accountFailures, boolean ipTripped, boolean accountTripped) {
+            this(ipFailures, accountFailures, ipTripped, accountTripped, null);
+        }
+    }
+
+    private final AuditPipeline auditPipeline;
+    private final int ipThreshold;
+    private final int accountThreshold;
+    private final int buckets;
+    private final long bucketMillis;
+    private final long blockMillis;
+    private final long maxBlockMillis;
+    private final int maxKeys;
+
+    private final Map<String, Window> ips = new ConcurrentHashMap<>();
+    private final Map<String, Window> accounts = new ConcurrentHashMap<>();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+
+    private final Counter failures;
+    private final Counter ipTrips;
+    private final Counter accountTrips;
+    private final Counter evicted;
+
+    public BruteForceDetector(AuditPipeline auditPipeline,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.brute-force.ip-threshold:5}") int ipThreshold,
+                              @Value("${app.brute-force.account-threshold:5}") int accountThreshold,
+                              @Value("${app.brute-force.window-minutes:15}") int windowMinutes,
+                              @Value("${app.brute-force.bucket-seconds:60}") int bucketSeconds,
+                              @Value("${app.brute-force.block-minutes:15}") int blockMinutes,
+                              @Value("${app.brute-force.max-block-minutes:1440}") int maxBlockMinutes,
+                              @Value("${app.brute-force.max-keys:100000}") int maxKeys) {
+        this.auditPipeline = auditPipeline;
+        this.ipThreshold = Math.max(1, ipThreshold);
+        this.accountThreshold = Math.max(1, accountThreshold);
+        this.bucketMillis = Math.max(1, bucketSeconds) * 1000L;
+        long windowMillis = Math.max(1, windowMinutes) * 60_000L;
+        this.buckets = (int) Math.max(1, (windowMillis + bucketMillis - 1) / bucketMillis);
+        this.blockMillis = Math.max(1, blockMinutes) * 60_000L;
+        this.maxBlockMillis = Math.max(this.blockMillis, Math.max(1, maxBlockMinutes) * 60_000L);
+        this.maxKeys = Math.max(1, maxKeys);
+
+        Gauge.builder("twsela.bruteforce.tracked", ips, Map::size).tag("scope", "ip")
+                .description("Keys with a failed-login window in memory").register(meterRegistry);
+        Gauge.builder("twsela.bruteforce.tracked", accounts, Map::size).tag("scope", "account")
+                .description("Keys with a failed-login window in memory").register(meterRegistry);
+        this.failures = Counter.builder("twsela.bruteforce.failures")
+                .description("Failed logins recorded by the brute-force detector").register(meterRegistry);
+        this.ipTrips = Counter.builder("twsela.bruteforce.tripped").tag("scope", "ip")
+                .description("Failed-login thresholds crossed").register(meterRegistry);
+        this.accountTrips = Counter.builder("twsela.bruteforce.tripped").tag("scope", "account")
+                .description("Failed-login thresholds crossed").register(meterRegistry);
+        this.evicted = Counter.builder("twsela.bruteforce.evicted")
+                .description("Failed-login windows dropped because the key cap was reached").register(meterRegistry);
+    }
+
+    /** Count a failed login for the IP and the account; either may be null. */
+    public Verdict recordFailure(String ipAddress, String account) {
+        return recordFailure(ipAddress, account, System.currentTimeMillis());
+    }
+
+    /** Whether the IP has reached its threshold within the window. */
+    public boolean isBruteForce(String ipAddress) {
+        return failuresOf(ips, ipAddress, System.currentTimeMillis()) >= ipThreshold;
+    }
+
+    /** Failed logins of the account within the window. */
+    public int accountFailures(String account) {
+        return failuresOf(accounts, account, System.currentTimeMillis());
+    }
+
+    /** Whether this node tripped the IP and its block has not ended; false means "ask the blocklist". */
+    public boolean isBlocked(String ipAddress) {
+        return isBlocked(ipAddress, System.currentTimeMillis());
+    }
+
+    /** Forget the IP, e.g. after it was unblocked by hand. */
+    public void clearIp(String ipAddress) {
+        if (ipAddress != null) {
+            ips.remove(ipAddress);
+        }
+    }
+
+    /** Forget the account's failures after a successful login. */
+    public void resetAccount(String account) {
+        if (account != null) {
+            accounts.remove(account);
+        }
+    }
+
+    /** Persist the failures seen since the last report, one security event per IP, and sweep idle keys. */
+    @Scheduled(fixedDelayString = "${app.brute-force.report-interval-ms:60000}",
+               initialDelayString = "${app.brute-force.report-interval-ms:60000}")
+    public void report() {
+        try {
+            report(System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            log.error("Brute-force report failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    Verdict recordFailure(String ipAddress, String account, long nowMillis) {
+        long bucket = nowMillis / bucketMillis;
+        failures.increment();
+
+        int ipFailures = 0;
+        boolean ipTripped = false;
+        long ipBlockedUntil = 0;
+        if (ipAddress != null) {
+            Window window = window(ips, ipAddress, bucket, nowMillis);
+            synchronized (window) {
+                ipFailures = window.add(bucket);
+                window.unreported++;
+                window.lastAccount = account;
+                if (ipFailures >= ipThreshold && window.blockedUntil <= nowMillis) {
+                    if (window.blockedUntil + maxBlockMillis <= nowMillis) {
+                        window.blocks = 0;
+                    }
+                    window.blockedUntil = nowMillis + blockDuration(window.blocks++);
+                    ipBlockedUntil = window.blockedUntil;
+                    ipTripped = true;
+                }
+            }
+        }
+
+        int accountFailures = 0;
+        boolean accountTripped = false;
+        if (account != null) {
+            Window window = window(accounts, account, bucket, nowMillis);
+            synchronized (window) {
+                accountFailures = window.add(bucket);
+                // An account trips on the failure that reaches the threshold, then again once a window has passed or after a reset
+                accountTripped = accountFailures >= accountThreshold && window.blockedUntil <= nowMillis;
+                if (accountTripped) {
+                    window.blockedUntil = nowMillis + (long) buckets * bucketMillis;
+                }
+            }
+        }
+
+        if (ipTripped) {
+            ipTrips.increment();
+            log.warn("Brute force from IP {}: {} failed logins within {} min, blocked for {} min", ipAddress,
+                    ipFailures, buckets * bucketMillis / 60_000, (ipBlockedUntil - nowMillis) / 60_000);
+        }
+        if (accountTripped) {
+            accountTrips.increment();
+        }
+        return new Verdict(ipFailures, accountFailures, ipTripped, accountTripped,
+                ipTripped ? Instant.ofEpochMilli(ipBlockedUntil) : null);
+    }
+
+    /** Block length for an IP's n-th consecutive trip (0-based): doubles each time, capped. */
+    long blockDuration(int previousBlocks) {
+        return previousBlocks >= 30 ? maxBlockMillis : Math.min(maxBlockMillis, blockMillis << previousBlocks);
+    }
+
+    boolean isBlocked(String ipAddress, long nowMillis) {
+        Window window = ipAddress != null ? ips.get(ipAddress) : null;
+        if (window == null) {
+            return false;
+        }
+        synchronized (window) {
+            return window.blockedUntil > nowMillis;
+        }
+    }
+
+    int report(long nowMillis) {
+        long bucket = nowMillis / bucketMillis;
+        Instant at = Instant.ofEpochMilli(nowMillis);
+        int reported = 0;
+        for (Map.Entry<String, Window> entry : ips.entrySet()) {
+            Window window = entry.getValue();
+            int count;
+            int inWindow;
+            String lastAccount;
+            synchronized (window) {
+                count = window.unreported;
+                inWindow = window.total(bucket);
+                lastAccount = window.lastAccount;
+                window.unreported = 0;
+            }
+            if (count > 0) {
+                SecurityEvent.Severity severity = inWindow >= ipThreshold
+                        ? SecurityEvent.Severity.HIGH : SecurityEvent.Severity.MEDIUM;
+                auditPipeline.append(new AuditPipeline.SecurityEntry(null, SecurityEvent.EventType.LOGIN_FAILURE,
+                        entry.getKey(), null, count + " failed logins since last report, " + inWindow
+                        + " in window, last account " + lastAccount, severity, at));
+                reported++;
+            }
+        }
+        sweep(ips, bucket, nowMillis);
+        sweep(accounts, bucket, nowMillis);
+        return reported;
+    }
+
+    private int failuresOf(Map<String, Window> map, String key, long nowMillis) {
+        Window window = key != null ? map.get(key) : null;
+        if (window == null) {
+            return 0;
+        }
+        synchronized (window) {
+            return window.total(nowMillis / bucketMillis);
+        }
+    }
+
+    private Window window(Map<String, Window> map, String key, long bucket, long nowMillis) {
+        Window window = map.get(key);
+        if (window != null) {
+            return window;
+        }
+        if (map.size() >= maxKeys) {
+            evict(map, bucket, nowMillis);
+        }
+        return map.computeIfAbsent(key, k -> new Window(buckets));
+    }
+
+    /** Make room below the cap: idle keys first, then whatever the iteration yields. */
+    private void evict(Map<String, Window> map, long bucket, long nowMillis) {
+        if (!sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            sweepIdle(map, bucket, nowMillis);
+            int target = maxKeys - Math.max(1, maxKeys / 10);
+            Iterator<Window> it = map.values().iterator();
+            while (map.size() > target && it.hasNext()) {
+                it.next();
+                it.remove();
+                evicted.increment();
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private void sweep(Map<String, Window> map, long bucket, long nowMillis) {
+        sweepLock.lock();
+        try {
+            sweepIdle(map, bucket, nowMillis);
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    private void sweepIdle(Map<String, Window> map, long bucket, long nowMillis) {
+        map.values().removeIf(window -> {
+            synchronized (window) {
+                return window.idle(bucket, nowMillis, maxBlockMillis);
+            }
+        });
+    }
+
+    /** Failure counts of one key in a ring of buckets; guarded by its own monitor. */
+    static final class Window {
+
+        private final int[] counts;
+        private final long[] slots;
+        private long lastBucket;
+        private int unreported;
+        private String lastAccount;
+        private long blockedUntil;
+        private int blocks;
+
+        Window(int buckets) {
+            this.counts = new int[buckets];
+            this.slots = new long[buckets];
+            Arrays.fill(slots, Long.MIN_VALUE);
+        }
+
+        int add(long bucket) {
+            int i = (int) Math.floorMod(bucket, (long) counts.length);
+            if (slots[i] != bucket) {
+                slots[i] = bucket;
+                counts[i] = 0;
+            }
+            counts[i]++;
+            lastBucket = Math.max(lastBucket, bucket);
+            return total(bucket);
+        }
+
+        int total(long bucket) {
+            long oldest = bucket - counts.length;
+            int sum = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (slots[i] > oldest && slots[i] <= bucket) {
+                    sum += counts[i];
+                }
+            }
+            return sum;
+        }
+
+        /** Nothing in the window, nothing to report, and no block whose escalation is still remembered. */
+        boolean idle(long bucket, long nowMillis, long escalationMillis) {
+            return lastBucket <= bucket - counts.length && unreported == 0
+                    && blockedUntil + (blocks > 0 ? escalationMillis : 0) <= nowMillis;
+        }
+    }
+}
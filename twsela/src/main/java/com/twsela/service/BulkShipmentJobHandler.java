@@ -0,0 +1,92 @@
+package com.twsela.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.domain.AsyncJob;
+import com.twsela.web.exception.BusinessRuleException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * معالج مهام BULK_SHIPMENT_PROCESS — تحديث حالة مجموعة شحنات.
+ * <p>
+ * Payload: {@code {"trackingNumbers": [...], "status": "DELIVERED", "reason": "..."}}.
+ * Each shipment is updated in its own transaction; the index of the next shipment is
+ * checkpointed every {@value #CHECKPOINT_EVERY} items so a reclaimed job resumes there.
+ */
+@Component
+public class BulkShipmentJobHandler implements AsyncJobHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkShipmentJobHandler.class);
+
+    public static final String JOB_TYPE = "BULK_SHIPMENT_PROCESS";
+    static final int CHECKPOINT_EVERY = 50;
+    private static final int MAX_REPORTED_ERRORS = 20;
+
+    private final ShipmentService shipmentService;
+    private final ObjectMapper objectMapper;
+
+    public BulkShipmentJobHandler(ShipmentService shipmentService, ObjectMapper objectMapper) {
+        this.shipmentService = shipmentService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getJobType() {
+        return JOB_TYPE;
+    }
+
+    @Override
+    public String execute(AsyncJob job, Context context) throws Exception {
+        JsonNode payload = objectMapper.readTree(job.getPayload() != null ? job.getPayload() : "{}");
+        String status = payload.path("status").asText(null);
+        if (status == null || !payload.path("trackingNumbers").isArray()) {
+            throw new BusinessRuleException("trackingNumbers و status مطلوبان لمهمة الشحنات المجمعة");
+        }
+        List<String> trackingNumbers = new ArrayList<>();
+        payload.get("trackingNumbers").forEach(node -> trackingNumbers.add(node.asText()));
+        String reason = payload.path("reason").asText(null);
+
+        int start = context.getCheckpoint() != null ? Integer.parseInt(context.getCheckpoint()) : 0;
+        int total = trackingNumbers.size();
+        int processed = 0;
+        List<String> errors = new ArrayList<>();
+
+        int i = start;
+        for (; i < total && !context.isCancelled(); i++) {
+            String trackingNumber = trackingNumbers.get(i);
+            try {
+                shipmentService.updateStatusWithReason(trackingNumber, status, reason);
+                processed++;
+            } catch (Exception e) {
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add(trackingNumber + ": " + e.getMessage());
+                }
+            }
+            if ((i + 1) % CHECKPOINT_EVERY == 0) {
+                context.checkpoint(percent(i + 1, total), String.valueOf(i + 1));
+            }
+        }
+        if (start > 0) {
+            log.info("Bulk job {} resumed at {}/{}", job.getJobId(), start, total);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("total", total);
+        result.put("resumedAt", start);
+        result.put("processed", processed);
+        result.put("failed", (i - start) - processed);
+        result.put("errors", errors);
+        return objectMapper.writeValueAsString(result);
+    }
+
+    private static int percent(int done, int total) {
+        return total == 0 ? 100 : (int) (done * 100L / total);
+    }
+}
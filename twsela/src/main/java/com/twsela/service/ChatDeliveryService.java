@@ -0,0 +1,232 @@
+package com.twsela.service;
+
+import com.twsela.repository.ChatRoomMemberRepository;
+import com.twsela.web.dto.ChatDTO.MessageView;
+import com.twsela.web.dto.ChatDTO.ReadReceipt;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * توزيع رسائل المحادثة وإيصالات القراءة عبر وسيط STOMP على دفعات.
+ * <p>
+ * Messages are queued once their transaction commits and a dedicated thread flushes the
+ * queue every {@code flush-interval-ms}: all messages of a room since the last flush go
+ * out as one frame on {@code /topic/chat/{roomId}} ({@code {"roomId", "messages": [...]}}).
+ * Read receipts are coalesced per member to the highest message id, written with one
+ * conditional UPDATE per member and broadcast as one frame per room on
+ * {@code /topic/chat/{roomId}/read}.
+ */
+@Service
+public class ChatDeliveryService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatDeliveryService.class);
+
+    private record ReadKey(Long roomId, Long userId) {}
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatRecentMessageCache recentMessages;
+    private final ChatRoomMemberRepository memberRepository;
+    private final ScheduledExecutorService scheduler;
+    private final long flushIntervalMs;
+    private final long readFlushIntervalMs;
+    private final int maxFrameMessages;
+
+    private final Queue<MessageView> outbound = new ConcurrentLinkedQueue<>();
+    private final Map<ReadKey, Long> pendingReads = new ConcurrentHashMap<>();
+
+    private final Counter framesCounter;
+    private final Counter messagesCounter;
+    private final Counter receiptsCounter;
+
+    @Autowired
+    public ChatDeliveryService(SimpMessagingTemplate messagingTemplate,
+                               ChatRecentMessageCache recentMessages,
+                               ChatRoomMemberRepository memberRepository,
+                               MeterRegistry meterRegistry,
+                               @Value("${app.chat.delivery.flush-interval-ms:50}") long flushIntervalMs,
+                               @Value("${app.chat.delivery.read-flush-interval-ms:1000}") long readFlushIntervalMs,
+                               @Value("${app.chat.delivery.max-frame-messages:100}") int maxFrameMessages) {
+        this(messagingTemplate, recentMessages, memberRepository, meterRegistry,
+                Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("chat-delivery-")),
+                flushIntervalMs, readFlushIntervalMs, maxFrameMessages);
+    }
+
+    ChatDeliveryService(SimpMessagingTemplate messagingTemplate,
+                        ChatRecentMessageCache recentMessages,
+                        ChatRoomMemberRepository memberRepository,
+                        MeterRegistry meterRegistry,
+                        ScheduledExecutorService scheduler,
+                        long flushIntervalMs, long readFlushIntervalMs, int maxFrameMessages) {
+        this.messagingTemplate = messagingTemplate;
+        this.recentMessages = recentMessages;
+        this.memberRepository = memberRepository;
+        this.scheduler = scheduler;
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        this.readFlushIntervalMs = Math.max(1, readFlushIntervalMs);
+        this.maxFrameMessages = Math.max(1, maxFrameMessages);
+
+        this.framesCounter = Counter.builder("twsela.chat.delivery.frames")
+                .description("Batched chat frames sent to the STOMP broker")
+                .register(meterRegistry);
+        this.messagesCounter = Counter.builder("twsela.chat.delivery.messages")
+                .description("Chat messages delivered through batched frames")
+                .register(meterRegistry);
+        this.receiptsCounter = Counter.builder("twsela.chat.read.receipts")
+                .description("Read receipts received before coalescing")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::safeFlushMessages, flushIntervalMs, flushIntervalMs,
+                TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::safeFlushReadReceipts, readFlushIntervalMs, readFlushIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        safeFlushMessages();
+        safeFlushReadReceipts();
+    }
+
+    // ── Messages ────────────────────────────────────────────────
+
+    /**
+     * Deliver a message once the surrounding transaction commits (or immediately when
+     * there is none), so subscribers never see a message that was rolled back.
+     */
+    public void publishAfterCommit(MessageView message) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish(message);
+                }
+            });
+        } else {
+            publish(message);
+        }
+    }
+
+    void publish(MessageView message) {
+        recentMessages.append(message);
+        outbound.add(message);
+    }
+
+    /**
+     * Send everything queued so far, one frame per room (split at {@code max-frame-messages}).
+     *
+     * @return number of frames sent
+     */
+    public int flushMessages() {
+        Map<Long, List<MessageView>> byRoom = new LinkedHashMap<>();
+        MessageView message;
+        while ((message = outbound.poll()) != null) {
+            byRoom.computeIfAbsent(message.roomId(), id -> new ArrayList<>()).add(message);
+        }
+
+        int frames = 0;
+        for (Map.Entry<Long, List<MessageView>> room : byRoom.entrySet()) {
+            List<MessageView> messages = room.getValue();
+            for (int from = 0; from < messages.size(); from += maxFrameMessages) {
+                List<MessageView> chunk = messages.subList(from, Math.min(from + maxFrameMessages, messages.size()));
+                try {
+                    messagingTemplate.convertAndSend("/topic/chat/" + room.getKey(),
+                            Map.of("roomId", room.getKey(), "messages", List.copyOf(chunk)));
+                    frames++;
+                    messagesCounter.increment(chunk.size());
+                } catch (Exception e) {
+                    log.warn("Failed to deliver {} chat messages in room {}: {}", chunk.size(), room.getKey(),
+                            e.getMessage());
+                }
+            }
+        }
+        framesCounter.increment(frames);
+        return frames;
+    }
+
+    // ── Read receipts ───────────────────────────────────────────
+
+    /** Record that a member has read up to {@code messageId}; only the highest id per flush is kept. */
+    public void markRead(Long roomId, Long userId, Long messageId) {
+        receiptsCounter.increment();
+        pendingReads.merge(new ReadKey(roomId, userId), messageId, Math::max);
+    }
+
+    /**
+     * Persist coalesced read markers and broadcast the ones that moved.
+     *
+     * @return number of read markers that moved forward
+     */
+    public int flushReadReceipts() {
+        Map<Long, List<ReadReceipt>> moved = new LinkedHashMap<>();
+        for (ReadKey key : pendingReads.keySet()) {
+            Long messageId = pendingReads.remove(key);
+            if (messageId == null) {
+                continue;
+            }
+            try {
+                if (memberRepository.advanceLastRead(key.roomId(), key.userId(), messageId) > 0) {
+                    moved.computeIfAbsent(key.roomId(), id -> new ArrayList<>())
+                            .add(new ReadReceipt(key.userId(), messageId));
+                }
+            } catch (RuntimeException e) {
+                pendingReads.merge(key, messageId, Math::max);
+                log.warn("Failed to store read marker for user {} in room {}: {}", key.userId(), key.roomId(),
+                        e.getMessage());
+            }
+        }
+
+        int receipts = 0;
+        for (Map.Entry<Long, List<ReadReceipt>> room : moved.entrySet()) {
+            receipts += room.getValue().size();
+            try {
+                messagingTemplate.convertAndSend("/topic/chat/" + room.getKey() + "/read",
+                        Map.of("roomId", room.getKey(), "receipts", room.getValue()));
+            } catch (Exception e) {
+                log.warn("Failed to broadcast read receipts in room {}: {}", room.getKey(), e.getMessage());
+            }
+        }
+        return receipts;
+    }
+
+    private void safeFlushMessages() {
+        try {
+            flushMessages();
+        } catch (RuntimeException e) {
+            log.error("Chat delivery flush failed: {}", e.getMessage());
+        }
+    }
+
+    private void safeFlushReadReceipts() {
+        try {
+            flushReadReceipts();
+        } catch (RuntimeException e) {
+            log.error("Read receipt flush failed: {}", e.getMessage());
+        }
+    }
+}
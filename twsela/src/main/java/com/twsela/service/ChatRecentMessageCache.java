@@ -0,0 +1,221 @@
+package com.twsela.service;
+
+import com.twsela.web.dto.ChatDTO.MessageView;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * ذاكرة مؤقتة لأحدث رسائل الغرف النشطة.
+ * <p>
+ * Each cached room keeps its newest {@code capacity} messages in a fixed ring buffer;
+ * rooms are evicted least-recently-used beyond {@code maxRooms}. A room is primed from
+ * the database on its first history read and then kept current by {@link #append} as
+ * messages commit. To avoid priming with a snapshot that misses a message committed
+ * mid-read, appends bump a striped version that {@link #prime} checks against the
+ * {@link #stamp} taken before the read.
+ * <p>
+ * {@link #append} only sees messages published on this node. With more than one node
+ * ({@code app.websocket.broker.mode} other than {@code simple}) a room is therefore
+ * re-primed from the database once it is older than {@code app.chat.multi-node-ttl-ms},
+ * which bounds how long messages posted on other nodes can be missing from its history.
+ */
+@Component
+public class ChatRecentMessageCache {
+
+    private static final int VERSION_STRIPES = 64;
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final Map<Long, RoomBuffer> rooms;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    @Autowired
+    public ChatRecentMessageCache(@Value("${app.chat.recent-messages:50}") int capacity,
+                                  @Value("${app.chat.cached-rooms:2000}") int maxRooms,
+                                  @Value("${app.websocket.broker.mode:simple}") String brokerMode,
+                                  @Value("${app.chat.multi-node-ttl-ms:5000}") long multiNodeTtlMs) {
+        this(capacity, maxRooms, "simple".equalsIgnoreCase(brokerMode) ? 0 : multiNodeTtlMs, System::nanoTime);
+    }
+
+    /** Single-node cache: rooms never expire. */
+    ChatRecentMessageCache(int capacity, int maxRooms) {
+        this(capacity, maxRooms, 0, System::nanoTime);
+    }
+
+    /**
+     * @param ttlMs age after which a room is re-primed, or 0 to keep rooms until evicted
+     * @param clock nanosecond time source
+     */
+    ChatRecentMessageCache(int capacity, int maxRooms, long ttlMs, LongSupplier clock) {
+        this.capacity = Math.max(1, capacity);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttlMs));
+        this.clock = clock;
+        int roomLimit = Math.max(1, maxRooms);
+        this.rooms = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, RoomBuffer> eldest) {
+                return size() > roomLimit;
+            }
+        });
+    }
+
+    /** Messages kept per room; also the number of rows to load when priming. */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Newest {@code limit} messages of a room, newest first, or empty if the room is not
+     * cached, has expired, or the buffer cannot answer the whole page.
+     */
+    public Optional<List<MessageView>> latest(Long roomId, int limit) {
+        RoomBuffer buffer = rooms.get(roomId);
+        if (buffer == null) {
+            return Optional.empty();
+        }
+        if (ttlNanos > 0 && clock.getAsLong() - buffer.primedAt > ttlNanos) {
+            rooms.remove(roomId, buffer);
+            return Optional.empty();
+        }
+        return buffer.latest(limit);
+    }
+
+    /** Read before loading a room from the database; pass the result to {@link #prime}. */
+    public long stamp(Long roomId) {
+        return versions.get(stripe(roomId));
+    }
+
+    /**
+     * Install a room loaded from the database.
+     *
+     * @param newestFirst up to {@link #capacity()} newest messages; fewer means the whole history
+     * @param stamp       value of {@link #stamp} taken before the load
+     */
+    public void prime(Long roomId, List<MessageView> newestFirst, long stamp) {
+        RoomBuffer buffer = new RoomBuffer(capacity, newestFirst.size() < capacity, clock.getAsLong());
+        for (int i = newestFirst.size() - 1; i >= 0; i--) {
+            buffer.add(newestFirst.get(i));
+        }
+        // Sequenced against append(): both touch the room under the map's lock
+        synchronized (rooms) {
+            if (versions.get(stripe(roomId)) == stamp) {
+                rooms.putIfAbsent(roomId, buffer);
+            }
+        }
+    }
+
+    /** Record a committed message; a no-op for rooms that are not cached. */
+    public void append(MessageView message) {
+        RoomBuffer buffer;
+        synchronized (rooms) {
+            versions.incrementAndGet(stripe(message.roomId()));
+            buffer = rooms.get(message.roomId());
+        }
+        if (buffer != null) {
+            buffer.add(message);
+        }
+    }
+
+    public void evict(Long roomId) {
+        rooms.remove(roomId);
+    }
+
+    public int cachedRooms() {
+        return rooms.size();
+    }
+
+    private static int stripe(Long roomId) {
+        return (int) (roomId % VERSION_STRIPES + VERSION_STRIPES) % VERSION_STRIPES;
+    }
+
+    /**
+     * Ring buffer of one room's newest messages in ascending id order. {@code complete}
+     * means it holds the room's entire history, so short rooms can answer any page size.
+     */
+    static final class RoomBuffer {
+
+        private final MessageView[] ring;
+        private final long primedAt;
+        private int head;
+        private int size;
+        private boolean complete;
+
+        RoomBuffer(int capacity, boolean complete, long primedAt) {
+            this.ring = new MessageView[capacity];
+            this.complete = complete;
+            this.primedAt = primedAt;
+        }
+
+        synchronized void add(MessageView message) {
+            if (size > 0 && message.messageId() <= at(size - 1).messageId()) {
+                insertOutOfOrder(message);
+                return;
+            }
+            if (size == ring.length) {
+                ring[head] = message;
+                head = (head + 1) % ring.length;
+                complete = false;
+            } else {
+                ring[(head + size) % ring.length] = message;
+                size++;
+            }
+        }
+
+        synchronized Optional<List<MessageView>> latest(int limit) {
+            if (limit > size && !complete) {
+                return Optional.empty();
+            }
+            int count = Math.min(limit, size);
+            List<MessageView> page = new ArrayList<>(count);
+            for (int i = size - 1; i >= size - count; i--) {
+                page.add(at(i));
+            }
+            return Optional.of(page);
+        }
+
+        /** Commits can land out of id order; rare, so a rebuild is fine. */
+        private void insertOutOfOrder(MessageView message) {
+            List<MessageView> ordered = new ArrayList<>(size + 1);
+            for (int i = 0; i < size; i++) {
+                MessageView existing = at(i);
+                if (existing.messageId().equals(message.messageId())) {
+                    return;
+                }
+                ordered.add(existing);
+            }
+            if (size == ring.length && message.messageId() < ordered.get(0).messageId()) {
+                return;
+            }
+            int position = 0;
+            while (position < ordered.size() && ordered.get(position).messageId() < message.messageId()) {
+                position++;
+            }
+            ordered.add(position, message);
+            if (ordered.size() > ring.length) {
+                ordered.remove(0);
+                complete = false;
+            }
+            head = 0;
+            size = ordered.size();
+            for (int i = 0; i < size; i++) {
+                ring[i] = ordered.get(i);
+            }
+        }
+
+        private MessageView at(int index) {
+            return ring[(head + index) % ring.length];
+        }
+    }
+}
@@ -2,25 +2,39 @@ package com.twsela.service;
 
 import com.twsela.domain.ChatMessage;
 import com.twsela.domain.ChatRoom;
+import com.twsela.domain.ChatRoomMember;
 import com.twsela.domain.Shipment;
 import com.twsela.domain.User;
 import com.twsela.repository.ChatMessageRepository;
+import com.twsela.repository.ChatRoomMemberRepository;
 import com.twsela.repository.ChatRoomRepository;
 import com.twsela.repository.ShipmentRepository;
 import com.twsela.repository.UserRepository;
+import com.twsela.web.dto.ChatDTO.MessagePage;
+import com.twsela.web.dto.ChatDTO.MessageView;
+import com.twsela.web.exception.BusinessRuleException;
 import com.twsela.web.exception.ResourceNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 /**
  * خدمة المحادثات — إنشاء غرف وإرسال رسائل مع بث WebSocket.
+ * <p>
+ * Room membership lives in {@code chat_room_members}; {@link ChatRoom#getParticipants()}
+ * is kept as a display copy. History is paged by message id (keyset), with the newest
+ * page of active rooms served from {@link ChatRecentMessageCache}. Delivery and read
+ * receipts go through {@link ChatDeliveryService} after commit.
  */
 @Service
 @Transactional
@@ -28,39 +42,57 @@ public class ChatService {
 
     private static final Logger log = LoggerFactory.getLogger(ChatService.class);
 
+    static final int DEFAULT_PAGE_SIZE = 30;
+    static final int MAX_PAGE_SIZE = 100;
+
     private final ChatRoomRepository chatRoomRepository;
     private final ChatMessageRepository chatMessageRepository;
+    private final ChatRoomMemberRepository memberRepository;
     private final ShipmentRepository shipmentRepository;
     private final UserRepository userRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final ChatRecentMessageCache recentMessages;
+    private final ChatDeliveryService deliveryService;
 
     public ChatService(ChatRoomRepository chatRoomRepository,
                        ChatMessageRepository chatMessageRepository,
+                       ChatRoomMemberRepository memberRepository,
                        ShipmentRepository shipmentRepository,
                        UserRepository userRepository,
-                       SimpMessagingTemplate messagingTemplate) {
+                       ChatRecentMessageCache recentMessages,
+                       ChatDeliveryService deliveryService) {
         this.chatRoomRepository = chatRoomRepository;
         this.chatMessageRepository = chatMessageRepository;
+        this.memberRepository = memberRepository;
         this.shipmentRepository = shipmentRepository;
         this.userRepository = userRepository;
-        this.messagingTemplate = messagingTemplate;
+        this.recentMessages = recentMessages;
+        this.deliveryService = deliveryService;
     }
 
     /**
      * إنشاء غرفة محادثة جديدة لشحنة.
+     *
+     * @param participants comma-separated user ids, e.g. {@code "10,20"}
      */
     public ChatRoom createRoom(Long shipmentId, ChatRoom.RoomType roomType, String participants) {
         Shipment shipment = shipmentRepository.findById(shipmentId)
                 .orElseThrow(() -> new ResourceNotFoundException("Shipment", "id", shipmentId));
+        Set<Long> memberIds = parseParticipants(participants);
+        List<User> members = userRepository.findAllById(memberIds);
+        if (members.size() != memberIds.size()) {
+            throw new BusinessRuleException("بعض المشاركين غير موجودين");
+        }
 
         ChatRoom room = new ChatRoom();
         room.setShipment(shipment);
         room.setRoomType(roomType);
-        room.setParticipants(participants);
+        room.setParticipants(memberIds.isEmpty() ? null
+                : String.join(",", memberIds.stream().map(String::valueOf).toList()));
         room.setStatus(ChatRoom.RoomStatus.ACTIVE);
         room.setCreatedAt(Instant.now());
 
         ChatRoom saved = chatRoomRepository.save(room);
+        memberRepository.saveAll(members.stream().map(user -> new ChatRoomMember(saved, user)).toList());
         log.info("Chat room {} created for shipment {} (type: {})", saved.getId(), shipmentId, roomType);
         return saved;
     }
@@ -88,19 +120,63 @@ public class ChatService {
 
         ChatMessage saved = chatMessageRepository.save(message);
 
-        // Broadcast message via WebSocket
-        broadcastMessage(room, saved, sender);
+        // Broadcast via WebSocket once committed, batched with the room's other new messages
+        deliveryService.publishAfterCommit(toView(roomId, saved));
 
         log.debug("Message {} sent in room {} by user {}", saved.getId(), roomId, senderId);
         return saved;
     }
 
     /**
-     * الحصول على رسائل غرفة المحادثة.
+     * الحصول على صفحة من رسائل غرفة المحادثة.
+     *
+     * @param beforeId return messages older than this id; null for the newest page
+     * @param limit    page size, capped at {@value #MAX_PAGE_SIZE}
+     */
+    @Transactional(readOnly = true)
+    public MessagePage getMessages(Long roomId, Long beforeId, Integer limit) {
+        int size = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<MessageView> newestFirst;
+        if (beforeId == null && size <= recentMessages.capacity()) {
+            newestFirst = latestMessages(roomId, size);
+        } else {
+            List<ChatMessage> rows = beforeId == null
+                    ? chatMessageRepository.findLatest(roomId, PageRequest.of(0, size))
+                    : chatMessageRepository.findBefore(roomId, beforeId, PageRequest.of(0, size));
+            newestFirst = rows.stream().map(row -> toView(roomId, row)).toList();
+        }
+
+        List<MessageView> chronological = new ArrayList<>(newestFirst);
+        Collections.reverse(chronological);
+        Long nextBeforeId = newestFirst.size() < size ? null : chronological.get(0).messageId();
+        return new MessagePage(roomId, chronological, nextBeforeId);
+    }
+
+    /** Newest page from the ring buffer, priming it from the database on a miss. */
+    private List<MessageView> latestMessages(Long roomId, int size) {
+        Optional<List<MessageView>> cached = recentMessages.latest(roomId, size);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        long stamp = recentMessages.stamp(roomId);
+        List<MessageView> loaded = chatMessageRepository
+                .findLatest(roomId, PageRequest.of(0, recentMessages.capacity())).stream()
+                .map(row -> toView(roomId, row))
+                .toList();
+        recentMessages.prime(roomId, loaded, stamp);
+        return loaded.subList(0, Math.min(size, loaded.size()));
+    }
+
+    /**
+     * تسجيل قراءة المستخدم لرسائل الغرفة حتى رسالة معينة.
+     * Receipts are coalesced and written in the background by {@link ChatDeliveryService}.
      */
     @Transactional(readOnly = true)
-    public List<ChatMessage> getMessages(Long roomId) {
-        return chatMessageRepository.findByChatRoomIdOrderBySentAtAsc(roomId);
+    public void markRead(Long roomId, Long userId, Long messageId) {
+        if (!memberRepository.existsByChatRoomIdAndUserId(roomId, userId)) {
+            throw new BusinessRuleException("المستخدم ليس عضواً في غرفة المحادثة");
+        }
+        deliveryService.markRead(roomId, userId, messageId);
     }
 
     /**
@@ -116,7 +192,7 @@ public class ChatService {
      */
     @Transactional(readOnly = true)
     public List<ChatRoom> getRoomsForUser(Long userId) {
-        return chatRoomRepository.findByParticipantsContaining(String.valueOf(userId));
+        return memberRepository.findRoomsByUserId(userId);
     }
 
     /**
@@ -126,6 +202,7 @@ public class ChatService {
         ChatRoom room = chatRoomRepository.findById(roomId)
                 .orElseThrow(() -> new ResourceNotFoundException("ChatRoom", "id", roomId));
         room.setStatus(ChatRoom.RoomStatus.ARCHIVED);
+        recentMessages.evict(roomId);
         log.info("Chat room {} archived", roomId);
         return chatRoomRepository.save(room);
     }
@@ -136,22 +213,28 @@ public class ChatService {
                 .orElseThrow(() -> new ResourceNotFoundException("ChatRoom", "id", roomId));
     }
 
-    private void broadcastMessage(ChatRoom room, ChatMessage message, User sender) {
-        try {
-            messagingTemplate.convertAndSend(
-                "/topic/chat/" + room.getId(),
-                Map.of(
-                    "messageId", message.getId(),
-                    "roomId", room.getId(),
-                    "senderId", sender.getId(),
-                    "senderName", sender.getName(),
-                    "content", message.getContent(),
-                    "messageType", message.getMessageType().name(),
-                    "sentAt", message.getSentAt().toString()
-                )
-            );
-        } catch (Exception e) {
-            log.warn("Failed to broadcast chat message {} in room {}: {}", message.getId(), room.getId(), e.getMessage());
+    private static MessageView toView(Long roomId, ChatMessage message) {
+        User sender = message.getSender();
+        return new MessageView(message.getId(), roomId, sender.getId(), sender.getName(), message.getContent(),
+                message.getMessageType().name(), message.getSentAt());
+    }
+
+    private static Set<Long> parseParticipants(String participants) {
+        Set<Long> ids = new LinkedHashSet<>();
+        if (participants == null || participants.isBlank()) {
+            return ids;
+        }
+        for (String token : participants.split(",")) {
+            String trimmed = token.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            try {
+                ids.add(Long.parseLong(trimmed));
+            } catch (NumberFormatException e) {
+                throw new BusinessRuleException("معرّف مشارك غير صالح: " + trimmed);
+            }
         }
+        return ids;
     }
 }
@@ -0,0 +1,101 @@
+package com.twsela.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A notification template pre-parsed into literal and variable segments.
+ * <p>
+ * {@code literals} always has one more entry than {@code variables}: rendering
+ * writes literal 0, variable 0, literal 1, … so no scanning happens per render.
+ * Parsing matches the {@code {{name}}} syntax ({@code name} = {@code \w+});
+ * unknown variables are written back as {@code {{name}}}, as before.
+ */
+public final class CompiledTemplate {
+
+    private final String[] literals;
+    private final String[] variables;
+    private final String[] placeholders;
+    private final int literalLength;
+
+    private CompiledTemplate(String[] literals, String[] variables) {
+        this.literals = literals;
+        this.variables = variables;
+        this.placeholders = new String[variables.length];
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        for (int i = 0; i < variables.length; i++) {
+            placeholders[i] = "{{" + variables[i] + "}}";
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Parse a raw template. A {@code null} or blank template compiles to the empty string.
+     */
+    public static CompiledTemplate compile(String template) {
+        if (template == null || template.isBlank()) {
+            return new CompiledTemplate(new String[]{""}, new String[0]);
+        }
+        List<String> literals = new ArrayList<>();
+        List<String> variables = new ArrayList<>();
+        int length = template.length();
+        int literalStart = 0;
+        int i = 0;
+        while (i + 1 < length) {
+            if (template.charAt(i) == '{' && template.charAt(i + 1) == '{') {
+                int nameStart = i + 2;
+                int nameEnd = nameStart;
+                while (nameEnd < length && isWordChar(template.charAt(nameEnd))) {
+                    nameEnd++;
+                }
+                if (nameEnd > nameStart && nameEnd + 1 < length
+                        && template.charAt(nameEnd) == '}' && template.charAt(nameEnd + 1) == '}') {
+                    literals.add(template.substring(literalStart, i));
+                    variables.add(template.substring(nameStart, nameEnd));
+                    i = nameEnd + 2;
+                    literalStart = i;
+                    continue;
+                }
+            }
+            i++;
+        }
+        literals.add(template.substring(literalStart));
+        return new CompiledTemplate(literals.toArray(new String[0]), variables.toArray(new String[0]));
+    }
+
+    /**
+     * Append the rendered template to {@code out}.
+     */
+    public void renderTo(StringBuilder out, Map<String, String> values) {
+        out.ensureCapacity(out.length() + literalLength + variables.length * 16);
+        out.append(literals[0]);
+        for (int i = 0; i < variables.length; i++) {
+            String value = values.get(variables[i]);
+            out.append(value != null ? value : placeholders[i]);
+            out.append(literals[i + 1]);
+        }
+    }
+
+    /** Whether the template has no variable slots (rendering is a constant). */
+    public boolean isConstant() {
+        return variables.length == 0;
+    }
+
+    /** The constant text of a template without variables. */
+    String constantText() {
+        return literals[0];
+    }
+
+    public int variableCount() {
+        return variables.length;
+    }
+
+    /** Same character class as the regex {@code \w}: ASCII letters, digits and underscore. */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+}
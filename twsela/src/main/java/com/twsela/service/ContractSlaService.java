@@ -2,8 +2,10 @@ package com.twsela.service;
 
 import com.twsela.domain.Contract;
 import com.twsela.domain.ContractSlaTerms;
+import com.twsela.domain.SlaEvaluation;
 import com.twsela.repository.ContractSlaTermsRepository;
 import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.SlaEvaluationRepository;
 import com.twsela.web.exception.ResourceNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,30 +13,44 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.time.Duration;
+import java.math.RoundingMode;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Service for SLA compliance checking and penalty calculations.
+ * <p>
+ * Compliance is counted in the database with one grouped aggregate per contract and range;
+ * shipments are never loaded. {@link SlaEvaluationJob} stores the result for every active
+ * contract's current and previous review period each night, and reports for exactly those
+ * periods are served from the stored rows.
  */
 @Service
 @Transactional
 public class ContractSlaService {
 
     private static final Logger log = LoggerFactory.getLogger(ContractSlaService.class);
+    static final ZoneId SLA_ZONE = ZoneId.of("Africa/Cairo");
+
+    /** A review period, both ends inclusive. */
+    public record Period(Instant start, Instant end) {}
 
     private final ContractSlaTermsRepository slaRepository;
     private final ShipmentRepository shipmentRepository;
     private final ContractService contractService;
+    private final SlaEvaluationRepository evaluationRepository;
 
     public ContractSlaService(ContractSlaTermsRepository slaRepository,
                                ShipmentRepository shipmentRepository,
-                               ContractService contractService) {
+                               ContractService contractService,
+                               SlaEvaluationRepository evaluationRepository) {
         this.slaRepository = slaRepository;
         this.shipmentRepository = shipmentRepository;
         this.contractService = contractService;
+        this.evaluationRepository = evaluationRepository;
     }
 
     /**
@@ -74,79 +90,159 @@ public class ContractSlaService {
     }
 
     /**
-     * Check SLA compliance for a contract over a date range.
+     * Check SLA compliance for a contract over a date range. A range that is exactly one of the
+     * contract's review periods is served from the nightly {@link SlaEvaluation} when there is
+     * one; any other range is computed with a single aggregate query.
      */
     @Transactional(readOnly = true)
     public Map<String, Object> checkSlaCompliance(Long contractId, Instant from, Instant to) {
         Contract contract = contractService.findById(contractId);
-        ContractSlaTerms sla = slaRepository.findByContractId(contractId)
-                .orElseThrow(() -> new ResourceNotFoundException("ContractSlaTerms", "contractId", contractId));
+        ContractSlaTerms sla = getSlaTermsOrThrow(contractId);
 
-        Long partyId = contract.getParty().getId();
+        return toReport(contract, evaluationFor(contract, sla, from, to));
+    }
 
-        // Total and delivered shipments for this merchant
-        long totalShipments = shipmentRepository.countByMerchantIdAndCreatedAtBetween(partyId, from, to);
-        long delivered = shipmentRepository.countByMerchantIdAndStatusNameAndCreatedAtBetween(
-                partyId, "DELIVERED", from, to);
+    /**
+     * Compliance for the review period in progress, as of the last nightly evaluation.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> checkCurrentSlaCompliance(Long contractId) {
+        Contract contract = contractService.findById(contractId);
+        ContractSlaTerms sla = getSlaTermsOrThrow(contractId);
 
-        double actualRate = totalShipments > 0 ? (double) delivered / totalShipments : 0;
-        boolean isCompliant = actualRate >= sla.getTargetDeliveryRate();
+        Period period = reviewPeriod(sla.getSlaReviewPeriod(), Instant.now());
+        return toReport(contract, evaluationFor(contract, sla, period.start(), period.end()));
+    }
 
-        // Late shipments (delivered but over max hours)
-        var allShipments = shipmentRepository.findByMerchantIdAndCreatedAtBetween(partyId, from, to);
-        long lateShipments = allShipments.stream()
-                .filter(s -> s.getStatus() != null && "DELIVERED".equals(s.getStatus().getName()))
-                .filter(s -> s.getUpdatedAt() != null && s.getCreatedAt() != null)
-                .filter(s -> Duration.between(s.getCreatedAt(), s.getUpdatedAt()).toHours() > sla.getMaxDeliveryHours())
-                .count();
+    /**
+     * Calculate penalties for SLA violations.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> calculatePenalties(Long contractId, Instant from, Instant to) {
+        ContractSlaTerms sla = getSlaTermsOrThrow(contractId);
+        Contract contract = contractService.findById(contractId);
 
-        // Lost shipments (RETURNED or LOST status)
-        long lostShipments = shipmentRepository.countByMerchantIdAndStatusNameAndCreatedAtBetween(
-                partyId, "RETURNED", from, to);
+        SlaEvaluation evaluation = evaluationFor(contract, sla, from, to);
 
-        Map<String, Object> report = new LinkedHashMap<>();
-        report.put("contractId", contractId);
-        report.put("contractNumber", contract.getContractNumber());
-        report.put("targetRate", sla.getTargetDeliveryRate());
-        report.put("actualRate", Math.round(actualRate * 10000.0) / 10000.0);
-        report.put("isCompliant", isCompliant);
-        report.put("totalShipments", totalShipments);
-        report.put("deliveredShipments", delivered);
-        report.put("lateShipments", lateShipments);
-        report.put("lostShipments", lostShipments);
-        return report;
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("contractId", contractId);
+        result.put("lateShipments", evaluation.getLateShipments());
+        result.put("latePenalties", evaluation.getLatePenalties());
+        result.put("lostShipments", evaluation.getLostShipments());
+        result.put("lostPenalties", evaluation.getLostPenalties());
+        result.put("totalPenalties", evaluation.getTotalPenalties());
+        return result;
     }
 
     /**
-     * Calculate penalties for SLA violations.
+     * Precomputed evaluations of a contract, latest period first.
      */
     @Transactional(readOnly = true)
-    public Map<String, Object> calculatePenalties(Long contractId, Instant from, Instant to) {
-        ContractSlaTerms sla = slaRepository.findByContractId(contractId)
-                .orElseThrow(() -> new ResourceNotFoundException("ContractSlaTerms", "contractId", contractId));
+    public List<SlaEvaluation> getSlaEvaluations(Long contractId) {
+        return evaluationRepository.findByContractIdOrderByPeriodStartDesc(contractId);
+    }
+
+    /**
+     * Recompute and store one contract's evaluation for a review period; called by
+     * {@link SlaEvaluationJob}, one transaction per contract and period.
+     */
+    public SlaEvaluation storeEvaluation(ContractSlaTerms sla, Period period, Instant now) {
+        Contract contract = sla.getContract();
+        SlaEvaluation computed = evaluate(contract, sla, period.start(), period.end(), now);
+        SlaEvaluation stored = evaluationRepository
+                .findByContractIdAndPeriodStartAndPeriodEnd(contract.getId(), period.start(), period.end())
+                .orElse(computed);
+        if (stored != computed) {
+            copyResults(computed, stored);
+        }
+        return evaluationRepository.save(stored);
+    }
 
-        Map<String, Object> compliance = checkSlaCompliance(contractId, from, to);
+    /**
+     * The review period containing {@code at}: calendar month or quarter in Africa/Cairo, as
+     * {@code [start, end]} with the end inclusive to the microsecond stored by the database.
+     */
+    public static Period reviewPeriod(ContractSlaTerms.SlaReviewPeriod type, Instant at) {
+        LocalDate day = at.atZone(SLA_ZONE).toLocalDate();
+        LocalDate first = type == ContractSlaTerms.SlaReviewPeriod.QUARTERLY
+                ? LocalDate.of(day.getYear(), ((day.getMonthValue() - 1) / 3) * 3 + 1, 1)
+                : day.withDayOfMonth(1);
+        int months = type == ContractSlaTerms.SlaReviewPeriod.QUARTERLY ? 3 : 1;
+        return new Period(first.atStartOfDay(SLA_ZONE).toInstant(),
+                first.plusMonths(months).atStartOfDay(SLA_ZONE).toInstant().minus(1, ChronoUnit.MICROS));
+    }
 
-        long lateShipments = (long) compliance.get("lateShipments");
-        long lostShipments = (long) compliance.get("lostShipments");
+    // ── Internals ──────────────────────────────────────────────
 
-        BigDecimal latePenalties = sla.getLatePenaltyPerShipment() != null
-                ? sla.getLatePenaltyPerShipment().multiply(BigDecimal.valueOf(lateShipments))
-                : BigDecimal.ZERO;
+    private ContractSlaTerms getSlaTermsOrThrow(Long contractId) {
+        return slaRepository.findByContractId(contractId)
+                .orElseThrow(() -> new ResourceNotFoundException("ContractSlaTerms", "contractId", contractId));
+    }
 
-        BigDecimal lostPenalties = sla.getLostPenaltyFixed() != null
-                ? sla.getLostPenaltyFixed().multiply(BigDecimal.valueOf(lostShipments))
+    private SlaEvaluation evaluationFor(Contract contract, ContractSlaTerms sla, Instant from, Instant to) {
+        return evaluationRepository.findByContractIdAndPeriodStartAndPeriodEnd(contract.getId(), from, to)
+                .orElseGet(() -> evaluate(contract, sla, from, to, Instant.now()));
+    }
+
+    private SlaEvaluation evaluate(Contract contract, ContractSlaTerms sla, Instant from, Instant to, Instant now) {
+        // Late means more than maxDeliveryHours whole hours, i.e. at least one hour past the limit
+        long lateSeconds = (sla.getMaxDeliveryHours() + 1L) * 3600;
+        ShipmentRepository.SlaCounts counts = shipmentRepository.countSlaOutcomes(
+                contract.getParty().getId(), from, to, lateSeconds);
+
+        double actualRate = counts.getTotal() > 0 ? (double) counts.getDelivered() / counts.getTotal() : 0;
+        BigDecimal latePenalties = penalty(sla.getLatePenaltyPerShipment(), counts.getLate());
+        BigDecimal lostPenalties = penalty(sla.getLostPenaltyFixed(), counts.getLost());
+
+        SlaEvaluation evaluation = new SlaEvaluation(contract.getId(), from, to);
+        evaluation.setTotalShipments(counts.getTotal());
+        evaluation.setDeliveredShipments(counts.getDelivered());
+        evaluation.setLateShipments(counts.getLate());
+        evaluation.setLostShipments(counts.getLost());
+        evaluation.setTargetRate(sla.getTargetDeliveryRate());
+        evaluation.setActualRate(Math.round(actualRate * 10000.0) / 10000.0);
+        evaluation.setCompliant(actualRate >= sla.getTargetDeliveryRate());
+        evaluation.setLatePenalties(latePenalties);
+        evaluation.setLostPenalties(lostPenalties);
+        evaluation.setTotalPenalties(latePenalties.add(lostPenalties));
+        evaluation.setEvaluatedAt(now);
+        return evaluation;
+    }
+
+    private static BigDecimal penalty(BigDecimal perShipment, long shipments) {
+        return perShipment != null
+                ? perShipment.multiply(BigDecimal.valueOf(shipments)).setScale(2, RoundingMode.HALF_UP)
                 : BigDecimal.ZERO;
+    }
 
-        BigDecimal totalPenalties = latePenalties.add(lostPenalties);
+    private static void copyResults(SlaEvaluation from, SlaEvaluation to) {
+        to.setTotalShipments(from.getTotalShipments());
+        to.setDeliveredShipments(from.getDeliveredShipments());
+        to.setLateShipments(from.getLateShipments());
+        to.setLostShipments(from.getLostShipments());
+        to.setTargetRate(from.getTargetRate());
+        to.setActualRate(from.getActualRate());
+        to.setCompliant(from.isCompliant());
+        to.setLatePenalties(from.getLatePenalties());
+        to.setLostPenalties(from.getLostPenalties());
+        to.setTotalPenalties(from.getTotalPenalties());
+        to.setEvaluatedAt(from.getEvaluatedAt());
+    }
 
-        Map<String, Object> result = new LinkedHashMap<>();
-        result.put("contractId", contractId);
-        result.put("lateShipments", lateShipments);
-        result.put("latePenalties", latePenalties);
-        result.put("lostShipments", lostShipments);
-        result.put("lostPenalties", lostPenalties);
-        result.put("totalPenalties", totalPenalties);
-        return result;
+    private static Map<String, Object> toReport(Contract contract, SlaEvaluation evaluation) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("contractId", contract.getId());
+        report.put("contractNumber", contract.getContractNumber());
+        report.put("targetRate", evaluation.getTargetRate());
+        report.put("actualRate", evaluation.getActualRate());
+        report.put("isCompliant", evaluation.isCompliant());
+        report.put("totalShipments", evaluation.getTotalShipments());
+        report.put("deliveredShipments", evaluation.getDeliveredShipments());
+        report.put("lateShipments", evaluation.getLateShipments());
+        report.put("lostShipments", evaluation.getLostShipments());
+        report.put("from", evaluation.getPeriodStart());
+        report.put("to", evaluation.getPeriodEnd());
+        report.put("evaluatedAt", evaluation.getEvaluatedAt());
+        return report;
     }
 }
@@ -30,18 +30,16 @@ public class CourierLocationService {
 
     private static final Logger log = LoggerFactory.getLogger(CourierLocationService.class);
 
-    /**
-     * Average courier speed in km/h for ETA calculation (urban traffic).
-     */
-    private static final double AVERAGE_SPEED_KMH = 25.0;
-
     private final CourierLocationHistoryRepository locationRepository;
     private final UserRepository userRepository;
+    private final ETACalculationService etaCalculationService;
 
     public CourierLocationService(CourierLocationHistoryRepository locationRepository,
-                                  UserRepository userRepository) {
+                                  UserRepository userRepository,
+                                  ETACalculationService etaCalculationService) {
         this.locationRepository = locationRepository;
         this.userRepository = userRepository;
+        this.etaCalculationService = etaCalculationService;
     }
 
     /**
@@ -63,6 +61,7 @@ public class CourierLocationService {
 
         CourierLocationHistory location = new CourierLocationHistory(courier, latitude, longitude);
         CourierLocationHistory saved = locationRepository.save(location);
+        etaCalculationService.onCourierLocation(courierId, saved.getTimestamp());
         log.debug("Saved location for courier {}: ({}, {})", courierId, latitude, longitude);
         return saved;
     }
@@ -93,31 +92,16 @@ public class CourierLocationService {
     }
 
     /**
-     * Calculate estimated minutes to delivery using straight-line distance.
+     * Estimated minutes to delivery from {@link ETACalculationService}: along the courier's route
+     * with learned speeds, cached per shipment until the courier reports a newer position.
      * Returns null if courier location or shipment destination is unknown.
      */
     @Transactional(readOnly = true)
     public Long calculateETA(Shipment shipment) {
-        if (shipment == null || shipment.getDeliveryLatitude() == null || shipment.getDeliveryLongitude() == null) {
-            return null;
-        }
-        User courier = shipment.getCourier();
-        if (courier == null) {
-            return null;
-        }
-        Optional<LocationDTO> lastLocation = getLastLocation(courier.getId());
-        if (lastLocation.isEmpty()) {
+        if (shipment == null) {
             return null;
         }
-        LocationDTO loc = lastLocation.get();
-        double distanceKm = haversineDistance(
-                loc.getLatitude().doubleValue(), loc.getLongitude().doubleValue(),
-                shipment.getDeliveryLatitude().doubleValue(), shipment.getDeliveryLongitude().doubleValue()
-        );
-        // Multiply by 1.3 for road factor (roads are not straight lines)
-        double roadDistanceKm = distanceKm * 1.3;
-        long minutes = Math.round((roadDistanceKm / AVERAGE_SPEED_KMH) * 60);
-        return Math.max(minutes, 1); // At least 1 minute
+        return etaCalculationService.getRemainingMinutes(shipment);
     }
 
     /**
@@ -8,13 +8,19 @@ import com.twsela.web.dto.CountryDTO.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Currencies and exchange rates. Conversions and rate lookups read the in-memory
+ * {@link ReferenceDataCache}; rate updates go to the database.
+ */
 @Service
 @Transactional
 public class CurrencyService {
@@ -23,11 +29,14 @@ public class CurrencyService {
 
     private final CurrencyRepository currencyRepository;
     private final ExchangeRateRepository exchangeRateRepository;
+    private final ReferenceDataCache referenceData;
 
     public CurrencyService(CurrencyRepository currencyRepository,
-                           ExchangeRateRepository exchangeRateRepository) {
+                           ExchangeRateRepository exchangeRateRepository,
+                           ReferenceDataCache referenceData) {
         this.currencyRepository = currencyRepository;
         this.exchangeRateRepository = exchangeRateRepository;
+        this.referenceData = referenceData;
     }
 
     @Transactional(readOnly = true)
@@ -41,26 +50,33 @@ public class CurrencyService {
     /**
      * Convert amount from one currency to another.
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public ConvertResponse convert(BigDecimal amount, String fromCurrency, String toCurrency) {
-        if (fromCurrency.equalsIgnoreCase(toCurrency)) {
-            return new ConvertResponse(amount, fromCurrency, amount, toCurrency, BigDecimal.ONE);
-        }
-
-        BigDecimal rate = getLatestRate(fromCurrency.toUpperCase(), toCurrency.toUpperCase());
-        BigDecimal converted = amount.multiply(rate).setScale(6, RoundingMode.HALF_UP);
+        return convert(referenceData.snapshot(), amount, fromCurrency, toCurrency, null);
+    }
 
-        return new ConvertResponse(amount, fromCurrency.toUpperCase(),
-                converted, toCurrency.toUpperCase(), rate);
+    /**
+     * Convert every item at the rates in effect on {@code date}, or the latest rates if null.
+     * All items are converted from the same snapshot, without a query per item.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<ConvertResponse> convertAll(List<ConvertRequest> items, LocalDate date) {
+        ReferenceData snapshot = referenceData.snapshot();
+        List<ConvertResponse> results = new ArrayList<>(items.size());
+        for (ConvertRequest item : items) {
+            results.add(convert(snapshot, item.amount(), item.fromCurrency(), item.toCurrency(), date));
+        }
+        return results;
     }
 
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public ExchangeRateResponse getExchangeRate(String baseCurrency, String targetCurrency) {
-        ExchangeRate er = exchangeRateRepository
-                .findLatestRate(baseCurrency.toUpperCase(), targetCurrency.toUpperCase())
+        ReferenceData.Rate er = referenceData.snapshot().latestRate(baseCurrency, targetCurrency)
                 .orElseThrow(() -> new ResourceNotFoundException(
                         "سعر الصرف غير موجود: " + baseCurrency + " → " + targetCurrency));
-        return toResponse(er);
+        return new ExchangeRateResponse(er.id(), er.baseCurrency(),
+                er.targetCurrency(), er.rate(), er.effectiveDate(),
+                er.source().name());
     }
 
     public ExchangeRateResponse updateRate(UpdateExchangeRateRequest req) {
@@ -75,11 +91,21 @@ public class CurrencyService {
         return toResponse(er);
     }
 
-    private BigDecimal getLatestRate(String base, String target) {
-        return exchangeRateRepository.findLatestRate(base, target)
-                .map(ExchangeRate::getRate)
+    private static ConvertResponse convert(ReferenceData snapshot, BigDecimal amount,
+                                           String fromCurrency, String toCurrency, LocalDate date) {
+        if (fromCurrency.equalsIgnoreCase(toCurrency)) {
+            return new ConvertResponse(amount, fromCurrency, amount, toCurrency, BigDecimal.ONE);
+        }
+
+        String base = fromCurrency.toUpperCase();
+        String target = toCurrency.toUpperCase();
+        BigDecimal rate = (date != null ? snapshot.rateOn(base, target, date) : snapshot.latestRate(base, target))
+                .map(ReferenceData.Rate::rate)
                 .orElseThrow(() -> new ResourceNotFoundException(
                         "سعر الصرف غير موجود: " + base + " → " + target));
+        BigDecimal converted = amount.multiply(rate).setScale(6, RoundingMode.HALF_UP);
+
+        return new ConvertResponse(amount, base, converted, target, rate);
     }
 
     private ExchangeRateResponse toResponse(ExchangeRate er) {
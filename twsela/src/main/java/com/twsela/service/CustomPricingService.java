@@ -5,23 +5,23 @@ import com.twsela.domain.CustomPricingRule;
 import com.twsela.domain.Zone;
 import com.twsela.repository.ContractRepository;
 import com.twsela.repository.CustomPricingRuleRepository;
-import com.twsela.repository.ShipmentRepository;
 import com.twsela.repository.ZoneRepository;
 import com.twsela.web.exception.ResourceNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.Instant;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
 
 /**
  * Custom pricing service — resolves effective pricing for merchants with contracts.
  * Priority: Contract pricing > Volume discount > Default pricing.
+ * Quotes come from the compiled tables of {@link PricingEngine}; rule edits here
+ * invalidate them on commit.
  */
 @Service
 @Transactional
@@ -31,94 +31,36 @@ public class CustomPricingService {
 
     private final ContractRepository contractRepository;
     private final CustomPricingRuleRepository pricingRuleRepository;
-    private final ShipmentRepository shipmentRepository;
     private final ZoneRepository zoneRepository;
+    private final PricingEngine pricingEngine;
 
     public CustomPricingService(ContractRepository contractRepository,
                                  CustomPricingRuleRepository pricingRuleRepository,
-                                 ShipmentRepository shipmentRepository,
-                                 ZoneRepository zoneRepository) {
+                                 ZoneRepository zoneRepository,
+                                 PricingEngine pricingEngine) {
         this.contractRepository = contractRepository;
         this.pricingRuleRepository = pricingRuleRepository;
-        this.shipmentRepository = shipmentRepository;
         this.zoneRepository = zoneRepository;
+        this.pricingEngine = pricingEngine;
     }
 
     /**
      * Calculate effective price for a merchant shipment.
-     * Checks active contract → falls back to default pricing.
+     * Checks active contract → falls back to default pricing; see {@link PricingEngine}.
+     * No transaction of its own: a cached quote needs no connection.
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Map<String, Object> calculatePrice(Long merchantId, Long zoneFromId, Long zoneToId,
                                                 double weightKg, BigDecimal codAmount) {
-        Map<String, Object> result = new LinkedHashMap<>();
-
-        // 1. Check for active contract
-        Optional<Contract> activeContract = contractRepository.findActiveByPartyId(merchantId);
-        if (activeContract.isPresent()) {
-            Contract contract = activeContract.get();
-            List<CustomPricingRule> rules = pricingRuleRepository.findActiveByContractIdAndZones(
-                    contract.getId(), zoneFromId, zoneToId);
-
-            if (!rules.isEmpty()) {
-                CustomPricingRule rule = rules.get(0); // Most specific rule
-
-                BigDecimal base = rule.getBasePrice() != null ? rule.getBasePrice() : BigDecimal.ZERO;
-                BigDecimal weightCharge = rule.getPerKgPrice() != null
-                        ? rule.getPerKgPrice().multiply(BigDecimal.valueOf(weightKg))
-                        : BigDecimal.ZERO;
-                BigDecimal codFee = BigDecimal.ZERO;
-                if (codAmount != null && rule.getCodFeePercent() != null) {
-                    codFee = codAmount.multiply(rule.getCodFeePercent()).divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-                }
-
-                BigDecimal subtotal = base.add(weightCharge).add(codFee);
-
-                // Apply volume discount if eligible
-                BigDecimal discount = BigDecimal.ZERO;
-                if (rule.getDiscountPercent() != null && rule.getMinMonthlyShipments() > 0) {
-                    long monthlyCount = shipmentRepository.countByMerchantIdAndCreatedAtBetween(
-                            merchantId,
-                            Instant.now().minus(30, ChronoUnit.DAYS),
-                            Instant.now());
-                    if (monthlyCount >= rule.getMinMonthlyShipments()) {
-                        discount = subtotal.multiply(rule.getDiscountPercent())
-                                .divide(BigDecimal.valueOf(100), 2, RoundingMode.HALF_UP);
-                    }
-                }
-
-                BigDecimal total = subtotal.subtract(discount);
-                BigDecimal minimum = rule.getMinimumCharge() != null ? rule.getMinimumCharge() : BigDecimal.ZERO;
-                total = total.max(minimum);
-
-                result.put("basePrice", base);
-                result.put("weightCharge", weightCharge);
-                result.put("codFee", codFee);
-                result.put("discount", discount);
-                result.put("totalPrice", total);
-                result.put("source", "CONTRACT");
-                result.put("contractNumber", contract.getContractNumber());
-                return result;
-            }
-        }
+        return toResult(pricingEngine.quote(merchantId, zoneFromId, zoneToId, weightKg, codAmount));
+    }
 
-        // 2. Fallback to default pricing (simplified)
-        BigDecimal defaultBase = new BigDecimal("25.00");
-        BigDecimal defaultPerKg = new BigDecimal("2.00");
-        BigDecimal weightCharge = defaultPerKg.multiply(BigDecimal.valueOf(weightKg));
-        BigDecimal codFee = BigDecimal.ZERO;
-        if (codAmount != null) {
-            codFee = codAmount.multiply(new BigDecimal("0.02")); // 2% COD fee
-        }
-        BigDecimal total = defaultBase.add(weightCharge).add(codFee);
-
-        result.put("basePrice", defaultBase);
-        result.put("weightCharge", weightCharge);
-        result.put("codFee", codFee);
-        result.put("discount", BigDecimal.ZERO);
-        result.put("totalPrice", total);
-        result.put("source", "DEFAULT");
-        return result;
+    /**
+     * Calculate prices for a batch of shipments in one call, in request order.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<Map<String, Object>> calculatePrices(List<PricingEngine.QuoteRequest> requests) {
+        return pricingEngine.quoteAll(requests).stream().map(CustomPricingService::toResult).toList();
     }
 
     /**
@@ -197,4 +139,18 @@ public class CustomPricingService {
     public List<CustomPricingRule> getPricingRules(Long contractId) {
         return pricingRuleRepository.findByContractId(contractId);
     }
+
+    private static Map<String, Object> toResult(PricingEngine.Quote quote) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("basePrice", quote.basePrice());
+        result.put("weightCharge", quote.weightChargeAmount());
+        result.put("codFee", quote.codFeeAmount());
+        result.put("discount", quote.discountAmount());
+        result.put("totalPrice", quote.totalPrice());
+        result.put("source", quote.source());
+        if (quote.contractNumber() != null) {
+            result.put("contractNumber", quote.contractNumber());
+        }
+        return result;
+    }
 }
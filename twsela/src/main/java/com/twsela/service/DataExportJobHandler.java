@@ -0,0 +1,122 @@
+package com.twsela.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.twsela.domain.AsyncJob;
+import com.twsela.service.StreamingExportService.Dataset;
+import com.twsela.service.StreamingExportService.ExportQuery;
+import com.twsela.service.StreamingExportService.Format;
+import com.twsela.web.exception.BusinessRuleException;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * معالج مهام DATA_EXPORT — تصدير صفوف الشحنات/التسويات/الفواتير إلى ملف.
+ * <p>
+ * Payload: {@code {"dataset": "SHIPMENTS|SETTLEMENTS|INVOICES", "format": "XLSX|CSV",
+ * "from": ISO-8601, "to": ISO-8601, "status": "DELIVERED"}}; the range defaults to the
+ * last 30 days. The export streams into {@link FileStorageService} so memory use stays
+ * flat regardless of row count.
+ */
+@Component
+public class DataExportJobHandler implements AsyncJobHandler {
+
+    public static final String JOB_TYPE = "DATA_EXPORT";
+    private static final String EXPORT_DIRECTORY = "exports";
+
+    private final StreamingExportService streamingExportService;
+    private final FileStorageService fileStorageService;
+    private final ObjectMapper objectMapper;
+
+    public DataExportJobHandler(StreamingExportService streamingExportService,
+                                FileStorageService fileStorageService,
+                                ObjectMapper objectMapper) {
+        this.streamingExportService = streamingExportService;
+        this.fileStorageService = fileStorageService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getJobType() {
+        return JOB_TYPE;
+    }
+
+    @Override
+    public boolean isIoBound() {
+        return true;
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return 2;
+    }
+
+    @Override
+    public String execute(AsyncJob job, Context context) throws Exception {
+        JsonNode payload = objectMapper.readTree(job.getPayload() != null ? job.getPayload() : "{}");
+        ExportQuery query = toQuery(payload);
+        Format format = parse(Format.class, payload.path("format").asText("XLSX"));
+
+        long total = streamingExportService.count(query);
+        context.reportProgress(1);
+
+        String filename = job.getJobId() + "." + format.name().toLowerCase(Locale.ROOT);
+        long[] rows = {0};
+        String path = fileStorageService.storeStream(EXPORT_DIRECTORY, filename, out ->
+                rows[0] = streamingExportService.export(query, format, out, written -> {
+                    if (context.isCancelled()) {
+                        throw new CancellationException("Export cancelled after " + written + " rows");
+                    }
+                    context.reportProgress(total > 0 ? (int) Math.min(99, written * 100 / total) : 50);
+                }));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("dataset", query.dataset().name());
+        result.put("format", format.name());
+        result.put("rows", rows[0]);
+        result.put("path", path);
+        return objectMapper.writeValueAsString(result);
+    }
+
+    /**
+     * Build the job payload for an export request.
+     */
+    public static String payloadFor(ExportQuery query, Format format) {
+        ObjectNode payload = JsonNodeFactory.instance.objectNode()
+                .put("dataset", query.dataset().name())
+                .put("format", format.name())
+                .put("from", query.from().toString())
+                .put("to", query.to().toString());
+        if (query.status() != null) {
+            payload.put("status", query.status());
+        }
+        return payload.toString();
+    }
+
+    static ExportQuery toQuery(JsonNode payload) {
+        Dataset dataset = parse(Dataset.class, payload.path("dataset").asText(""));
+        Instant to = payload.hasNonNull("to") ? Instant.parse(payload.get("to").asText()) : Instant.now();
+        Instant from = payload.hasNonNull("from")
+                ? Instant.parse(payload.get("from").asText()) : to.minus(30, ChronoUnit.DAYS);
+        if (!from.isBefore(to)) {
+            throw new BusinessRuleException("تاريخ البداية يجب أن يسبق تاريخ النهاية");
+        }
+        return new ExportQuery(dataset, from, to, payload.path("status").asText(null));
+    }
+
+    public static <E extends Enum<E>> E parse(Class<E> type, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BusinessRuleException("قيمة غير مدعومة: " + value);
+        }
+    }
+}
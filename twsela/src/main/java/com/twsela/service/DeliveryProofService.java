@@ -27,20 +27,21 @@ public class DeliveryProofService {
     private final DeliveryProofRepository proofRepository;
     private final ShipmentRepository shipmentRepository;
     private final UserRepository userRepository;
-    private final FileStorageService fileStorageService;
+    private final ProofImagePipeline imagePipeline;
 
     public DeliveryProofService(DeliveryProofRepository proofRepository,
                                  ShipmentRepository shipmentRepository,
                                  UserRepository userRepository,
-                                 FileStorageService fileStorageService) {
+                                 ProofImagePipeline imagePipeline) {
         this.proofRepository = proofRepository;
         this.shipmentRepository = shipmentRepository;
         this.userRepository = userRepository;
-        this.fileStorageService = fileStorageService;
+        this.imagePipeline = imagePipeline;
     }
 
     /**
-     * Submit proof of delivery for a shipment.
+     * Submit proof of delivery for a shipment. Photo and signature are stored as uploaded
+     * and shrunk by {@link ProofImagePipeline} after the proof is committed.
      */
     public DeliveryProof submitProof(Long shipmentId, MultipartFile photo, MultipartFile signature,
                                       Double latitude, Double longitude,
@@ -66,8 +67,9 @@ public class DeliveryProofService {
         // Store photo
         if (photo != null && !photo.isEmpty()) {
             try {
-                String photoPath = fileStorageService.storeFile(photo, "delivery-photos");
+                String photoPath = imagePipeline.stage(photo, "delivery-photos");
                 proof.setPhotoUrl(photoPath);
+                proof.setImagesPending(true);
             } catch (IOException e) {
                 log.warn("Failed to store delivery photo for shipment {}: {}", shipmentId, e.getMessage());
             }
@@ -76,14 +78,18 @@ public class DeliveryProofService {
         // Store signature
         if (signature != null && !signature.isEmpty()) {
             try {
-                String sigPath = fileStorageService.storeFile(signature, "delivery-signatures");
+                String sigPath = imagePipeline.stage(signature, "delivery-signatures");
                 proof.setSignatureUrl(sigPath);
+                proof.setImagesPending(true);
             } catch (IOException e) {
                 log.warn("Failed to store delivery signature for shipment {}: {}", shipmentId, e.getMessage());
             }
         }
 
         DeliveryProof saved = proofRepository.save(proof);
+        if (saved.isImagesPending()) {
+            imagePipeline.processAfterCommit(saved.getId());
+        }
         log.info("Delivery proof submitted for shipment {} by courier {}", shipmentId, courierId);
         return saved;
     }
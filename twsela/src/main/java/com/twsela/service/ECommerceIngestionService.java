@@ -0,0 +1,380 @@
+package com.twsela.service;
+
+import com.twsela.domain.ECommerceConnection;
+import com.twsela.domain.ECommerceConnection.ECommercePlatform;
+import com.twsela.domain.ECommerceInboundOrder.InboundStatus;
+import com.twsela.repository.ECommerceConnectionRepository;
+import com.twsela.repository.ECommerceInboundOrderRepository;
+import com.twsela.service.ECommerceService.SyncTally;
+import com.twsela.web.exception.BusinessRuleException;
+import com.twsela.web.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * استقبال طلبات المتاجر الإلكترونية عبر طابور دائم.
+ * <p>
+ * The webhook thread only checks the connection and signature and appends the payload
+ * to {@code ecommerce_inbound_orders}; a platform retry of the same delivery is caught
+ * by an in-memory set of recent delivery keys and, across nodes and restarts, by the
+ * table's unique key. Workers claim micro-batches with {@code SKIP LOCKED} and hand them
+ * to {@link ECommerceService#processInboundOrders}, which creates orders and shipments in
+ * one transaction per batch; a failing batch is retried row by row so one bad order
+ * cannot hold up the rest. Connection stats (last sync, sync errors) are accumulated in
+ * memory and written periodically with one UPDATE per connection.
+ */
+@Service
+public class ECommerceIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(ECommerceIngestionService.class);
+
+    /** Acknowledgement for a webhook; {@code inboundId} is null for a duplicate delivery. */
+    public record Receipt(Long inboundId, boolean duplicate) {}
+
+    /** What the webhook path needs from a connection, cached briefly. */
+    private record Source(ECommercePlatform platform, boolean active, String webhookSecret, long loadedAtNanos) {}
+
+    /** Connection stats not yet written. */
+    record SyncDelta(int errors, Instant syncedAt) {
+        SyncDelta plus(SyncDelta other) {
+            return new SyncDelta(errors + other.errors, syncedAt.isAfter(other.syncedAt) ? syncedAt : other.syncedAt);
+        }
+    }
+
+    private final ECommerceService eCommerceService;
+    private final ECommerceConnectionRepository connectionRepository;
+    private final ECommerceInboundOrderRepository inboundOrderRepository;
+    private final ECommerceIntegrationFactory integrationFactory;
+    private final Executor workerPool;
+    private final Semaphore workerSlots;
+    private final int batchSize;
+    private final Duration leaseDuration;
+    private final int maxAttempts;
+    private final long connectionCacheNanos;
+    private final String workerId;
+
+    private final ConcurrentHashMap<Long, Source> sources = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, SyncDelta> pendingSync = new ConcurrentHashMap<>();
+    private final RecentKeys recentKeys;
+
+    private final Counter acceptedCounter;
+    private final Counter duplicateCounter;
+    private final Counter processedCounter;
+    private final Counter failedCounter;
+    private final Timer batchTimer;
+
+    private volatile boolean shuttingDown;
+
+    @Autowired
+    public ECommerceIngestionService(ECommerceService eCommerceService,
+                                     ECommerceConnectionRepository connectionRepository,
+                                     ECommerceInboundOrderRepository inboundOrderRepository,
+                                     ECommerceIntegrationFactory integrationFactory,
+                                     MeterRegistry meterRegistry,
+                                     @Value("${app.ecommerce.ingest.workers:4}") int workers,
+                                     @Value("${app.ecommerce.ingest.batch-size:100}") int batchSize,
+                                     @Value("${app.ecommerce.ingest.lease-seconds:60}") int leaseSeconds,
+                                     @Value("${app.ecommerce.ingest.max-attempts:5}") int maxAttempts,
+                                     @Value("${app.ecommerce.ingest.recent-keys:100000}") int recentKeys,
+                                     @Value("${app.ecommerce.ingest.connection-cache-seconds:10}") int connectionCacheSeconds) {
+        this(eCommerceService, connectionRepository, inboundOrderRepository, integrationFactory, meterRegistry,
+                Executors.newFixedThreadPool(Math.max(1, workers), new CustomizableThreadFactory("ecommerce-ingest-")),
+                Math.max(1, workers), batchSize, Duration.ofSeconds(leaseSeconds), maxAttempts, recentKeys,
+                Duration.ofSeconds(connectionCacheSeconds));
+    }
+
+    ECommerceIngestionService(ECommerceService eCommerceService,
+                              ECommerceConnectionRepository connectionRepository,
+                              ECommerceInboundOrderRepository inboundOrderRepository,
+                              ECommerceIntegrationFactory integrationFactory,
+                              MeterRegistry meterRegistry,
+                              Executor workerPool, int workers, int batchSize, Duration leaseDuration,
+                              int maxAttempts, int recentKeys, Duration connectionCache) {
+        this.eCommerceService = eCommerceService;
+        this.connectionRepository = connectionRepository;
+        this.inboundOrderRepository = inboundOrderRepository;
+        this.integrationFactory = integrationFactory;
+        this.workerPool = workerPool;
+        this.workerSlots = new Semaphore(workers);
+        this.batchSize = Math.max(1, batchSize);
+        this.leaseDuration = leaseDuration;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.recentKeys = new RecentKeys(Math.max(2, recentKeys));
+        this.connectionCacheNanos = connectionCache.toNanos();
+        this.workerId = newWorkerId();
+
+        this.acceptedCounter = Counter.builder("twsela.ecommerce.ingest.accepted")
+                .description("Webhook orders appended to the ingestion queue")
+                .register(meterRegistry);
+        this.duplicateCounter = Counter.builder("twsela.ecommerce.ingest.duplicates")
+                .description("Webhook deliveries dropped as already received")
+                .register(meterRegistry);
+        this.processedCounter = Counter.builder("twsela.ecommerce.ingest.processed")
+                .description("Queued webhook orders processed by ingestion workers")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("twsela.ecommerce.ingest.failed")
+                .description("Queued webhook orders that failed after all attempts")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("twsela.ecommerce.ingest.batch")
+                .description("Time to process one claimed micro-batch")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        if (workerPool instanceof ExecutorService service) {
+            service.shutdown();
+        }
+        flushConnectionStats();
+    }
+
+    // ── Webhook path ────────────────────────────────────────────
+
+    /**
+     * Validate a webhook and append it to the ingestion queue.
+     *
+     * @throws BusinessRuleException if the connection is inactive or the signature is invalid
+     */
+    public Receipt accept(Long connectionId, String rawPayload, String signature) {
+        Source source = source(connectionId);
+        if (!source.active()) {
+            throw new BusinessRuleException("الاتصال غير نشط");
+        }
+        if (source.webhookSecret() != null && signature != null
+                && !integrationFactory.getIntegration(source.platform())
+                        .validateWebhook(rawPayload, signature, source.webhookSecret())) {
+            throw new BusinessRuleException("توقيع Webhook غير صالح");
+        }
+
+        String key = deliveryKey(connectionId, rawPayload);
+        if (recentKeys.contains(key)) {
+            duplicateCounter.increment();
+            return new Receipt(null, true);
+        }
+        Long inboundId = inboundOrderRepository.enqueue(connectionId, source.platform(), key, rawPayload);
+        recentKeys.add(key);
+        if (inboundId == null) {
+            duplicateCounter.increment();
+            return new Receipt(null, true);
+        }
+        acceptedCounter.increment();
+        return new Receipt(inboundId, false);
+    }
+
+    private Source source(Long connectionId) {
+        Source cached = sources.get(connectionId);
+        if (cached != null && System.nanoTime() - cached.loadedAtNanos() < connectionCacheNanos) {
+            return cached;
+        }
+        ECommerceConnection connection = connectionRepository.findById(connectionId)
+                .orElseThrow(() -> new ResourceNotFoundException("ECommerceConnection", "id", connectionId));
+        Source fresh = new Source(connection.getPlatform(), connection.isActive(), connection.getWebhookSecret(),
+                System.nanoTime());
+        sources.put(connectionId, fresh);
+        return fresh;
+    }
+
+    /** {@code <connectionId>:<sha-256 of the payload>} — identical redeliveries share it. */
+    static String deliveryKey(Long connectionId, String rawPayload) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(rawPayload.getBytes(StandardCharsets.UTF_8));
+            return connectionId + ":" + HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // ── Workers ─────────────────────────────────────────────────
+
+    /**
+     * Claim pending micro-batches while a worker is free and process them in the background.
+     *
+     * @return number of queue rows dispatched
+     */
+    @Scheduled(fixedDelayString = "${app.ecommerce.ingest.poll-interval-ms:200}")
+    public int drain() {
+        int dispatched = 0;
+        while (!shuttingDown && workerSlots.tryAcquire()) {
+            List<Long> ids;
+            try {
+                ids = eCommerceService.claimInboundOrders(workerId, batchSize, leaseDuration);
+            } catch (RuntimeException e) {
+                workerSlots.release();
+                log.error("Failed to claim inbound orders: {}", e.getMessage());
+                break;
+            }
+            if (ids.isEmpty()) {
+                workerSlots.release();
+                break;
+            }
+            try {
+                workerPool.execute(() -> {
+                    try {
+                        processBatch(ids);
+                    } finally {
+                        workerSlots.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down: the claimed rows are requeued when their lease expires
+                workerSlots.release();
+                break;
+            }
+            dispatched += ids.size();
+            if (ids.size() < batchSize) {
+                break;
+            }
+        }
+        return dispatched;
+    }
+
+    void processBatch(List<Long> ids) {
+        Timer.Sample sample = Timer.start();
+        try {
+            record(eCommerceService.processInboundOrders(ids));
+        } catch (RuntimeException batchFailure) {
+            log.warn("Inbound batch of {} failed ({}) — retrying row by row", ids.size(), batchFailure.getMessage());
+            for (Long id : ids) {
+                try {
+                    record(eCommerceService.processInboundOrders(List.of(id)));
+                } catch (RuntimeException e) {
+                    release(id, e);
+                }
+            }
+        } finally {
+            sample.stop(batchTimer);
+        }
+    }
+
+    private void release(Long inboundId, RuntimeException cause) {
+        try {
+            if (eCommerceService.releaseInboundOrder(inboundId, cause.getMessage(), maxAttempts)) {
+                failedCounter.increment();
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to release inbound order {} (requeued when its lease expires): {}",
+                    inboundId, e.getMessage());
+        }
+    }
+
+    private void record(List<SyncTally> tallies) {
+        Instant now = Instant.now();
+        for (SyncTally tally : tallies) {
+            processedCounter.increment(tally.orders() + tally.duplicates());
+            if (tally.orders() > 0) {
+                pendingSync.merge(tally.connectionId(), new SyncDelta(tally.errors(), now), SyncDelta::plus);
+            }
+        }
+    }
+
+    /**
+     * Write accumulated connection stats, one UPDATE per connection.
+     *
+     * @return number of connections updated
+     */
+    @Scheduled(fixedDelayString = "${app.ecommerce.ingest.stats-flush-interval-ms:5000}")
+    public int flushConnectionStats() {
+        int flushed = 0;
+        for (Long connectionId : pendingSync.keySet()) {
+            SyncDelta delta = pendingSync.remove(connectionId);
+            if (delta == null) {
+                continue;
+            }
+            try {
+                connectionRepository.recordSync(connectionId, delta.syncedAt(), delta.errors());
+                flushed++;
+            } catch (RuntimeException e) {
+                pendingSync.merge(connectionId, delta, SyncDelta::plus);
+                log.warn("Failed to write sync stats for connection {}: {}", connectionId, e.getMessage());
+            }
+        }
+        return flushed;
+    }
+
+    /**
+     * Requeue rows whose worker died mid-batch, or fail them once out of attempts.
+     */
+    @Scheduled(fixedDelayString = "${app.ecommerce.ingest.reclaim-interval-ms:30000}")
+    public int reclaimExpiredLeases() {
+        try {
+            Instant now = Instant.now();
+            int failed = inboundOrderRepository.failExpiredLeases(InboundStatus.PROCESSING, InboundStatus.FAILED,
+                    maxAttempts, "Worker lease expired after " + maxAttempts + " attempts", now);
+            int requeued = inboundOrderRepository.requeueExpiredLeases(InboundStatus.PROCESSING,
+                    InboundStatus.PENDING, now);
+            if (failed + requeued > 0) {
+                failedCounter.increment(failed);
+                log.warn("Reclaimed expired inbound order leases: requeued={}, failed={}", requeued, failed);
+            }
+            return failed + requeued;
+        } catch (RuntimeException e) {
+            log.error("Inbound lease reclaim failed: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    private static String newWorkerId() {
+        String id = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+        return id.length() > 100 ? id.substring(id.length() - 100) : id;
+    }
+
+    /**
+     * Bounded memory of recent delivery keys: two generations of {@code capacity / 2};
+     * when the current one fills up it replaces the previous one.
+     */
+    static final class RecentKeys {
+
+        private final int generationSize;
+        private volatile Set<String> current = ConcurrentHashMap.newKeySet();
+        private volatile Set<String> previous = Set.of();
+
+        RecentKeys(int capacity) {
+            this.generationSize = Math.max(1, capacity / 2);
+        }
+
+        boolean contains(String key) {
+            return current.contains(key) || previous.contains(key);
+        }
+
+        void add(String key) {
+            Set<String> generation = current;
+            generation.add(key);
+            if (generation.size() >= generationSize) {
+                synchronized (this) {
+                    if (current == generation) {
+                        previous = generation;
+                        current = ConcurrentHashMap.newKeySet();
+                    }
+                }
+            }
+        }
+    }
+}
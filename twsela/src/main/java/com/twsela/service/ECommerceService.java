@@ -2,8 +2,10 @@ package com.twsela.service;
 
 import com.twsela.domain.*;
 import com.twsela.domain.ECommerceConnection.ECommercePlatform;
+import com.twsela.domain.ECommerceInboundOrder.InboundStatus;
 import com.twsela.domain.ECommerceOrder.OrderStatus;
 import com.twsela.repository.ECommerceConnectionRepository;
+import com.twsela.repository.ECommerceInboundOrderRepository;
 import com.twsela.repository.ECommerceOrderRepository;
 import com.twsela.repository.UserRepository;
 import com.twsela.repository.ZoneRepository;
@@ -11,14 +13,21 @@ import com.twsela.web.exception.BusinessRuleException;
 import com.twsela.web.exception.ResourceNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 
 /**
  * E-commerce integration service — connects stores, processes incoming orders, syncs fulfillment.
+ * <p>
+ * Webhooks do not reach this service directly: {@link ECommerceIngestionService} queues
+ * them and calls {@link #processInboundOrders} with claimed micro-batches.
  */
 @Service
 @Transactional
@@ -31,17 +40,23 @@ public class ECommerceService {
     private final ECommerceIntegrationFactory integrationFactory;
     private final UserRepository userRepository;
     private final ZoneRepository zoneRepository;
+    private final ECommerceInboundOrderRepository inboundOrderRepository;
+    private final ShipmentService shipmentService;
 
     public ECommerceService(ECommerceConnectionRepository connectionRepository,
                              ECommerceOrderRepository orderRepository,
                              ECommerceIntegrationFactory integrationFactory,
                              UserRepository userRepository,
-                             ZoneRepository zoneRepository) {
+                             ZoneRepository zoneRepository,
+                             ECommerceInboundOrderRepository inboundOrderRepository,
+                             ShipmentService shipmentService) {
         this.connectionRepository = connectionRepository;
         this.orderRepository = orderRepository;
         this.integrationFactory = integrationFactory;
         this.userRepository = userRepository;
         this.zoneRepository = zoneRepository;
+        this.inboundOrderRepository = inboundOrderRepository;
+        this.shipmentService = shipmentService;
     }
 
     /**
@@ -90,82 +105,250 @@ public class ECommerceService {
         log.info("E-commerce connection {} disconnected", connectionId);
     }
 
+    // ── Inbound queue ──────────────────────────────────────────
+
+    /** Result of processing queued webhooks for one connection. */
+    public record SyncTally(Long connectionId, int orders, int errors, int duplicates) {}
+
+    /** A claimed queue row with its parsed order, or the parse error. */
+    private record ParsedOrder(ECommerceInboundOrder inbound, ECommerceConnection connection,
+                               Map<String, Object> data, String idempotencyKey, String parseError) {}
+
     /**
-     * Process an incoming order from a webhook.
+     * Claim the oldest pending queue rows for a worker.
+     *
+     * @return ids of the claimed rows, in queue order
      */
-    public ECommerceOrder processIncomingOrder(Long connectionId, String rawPayload, String signature) {
-        ECommerceConnection connection = connectionRepository.findById(connectionId)
-                .orElseThrow(() -> new ResourceNotFoundException("ECommerceConnection", "id", connectionId));
-
-        if (!connection.isActive()) {
-            throw new BusinessRuleException("الاتصال غير نشط");
+    public List<Long> claimInboundOrders(String owner, int limit, Duration lease) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        Instant now = Instant.now();
+        List<ECommerceInboundOrder> claimed = inboundOrderRepository.lockNextPending(
+                InboundStatus.PENDING, PageRequest.of(0, limit));
+        List<Long> ids = new ArrayList<>(claimed.size());
+        for (ECommerceInboundOrder inbound : claimed) {
+            inbound.setStatus(InboundStatus.PROCESSING);
+            inbound.setAttempts(inbound.getAttempts() + 1);
+            inbound.setLeaseOwner(owner);
+            inbound.setLeaseExpiresAt(now.plus(lease));
+            ids.add(inbound.getId());
         }
+        return ids;
+    }
 
-        ECommerceIntegration integration = integrationFactory.getIntegration(connection.getPlatform());
+    /**
+     * Turn claimed queue rows into orders, and into shipments for stores with auto-create
+     * on, in one transaction. Payloads are parsed first so that duplicates of the whole
+     * batch are found with one idempotency-key query. Rows whose order cannot be created
+     * (unparseable payload, unknown zone, invalid recipient) are recorded as FAILED orders;
+     * any other exception rolls the batch back so the caller can retry row by row.
+     *
+     * @return per-connection tallies, for the asynchronous connection stats
+     */
+    public List<SyncTally> processInboundOrders(List<Long> inboundIds) {
+        List<ECommerceInboundOrder> batch = new ArrayList<>(inboundOrderRepository.findAllById(inboundIds));
+        batch.sort(Comparator.comparing(ECommerceInboundOrder::getId));
+
+        Set<Long> connectionIds = new HashSet<>();
+        for (ECommerceInboundOrder inbound : batch) {
+            connectionIds.add(inbound.getConnection().getId());
+        }
+        Map<Long, ECommerceConnection> connections = new HashMap<>();
+        for (ECommerceConnection connection : connectionRepository.findAllById(connectionIds)) {
+            connections.put(connection.getId(), connection);
+        }
 
-        // Validate webhook signature
-        if (connection.getWebhookSecret() != null && signature != null) {
-            boolean valid = integration.validateWebhook(rawPayload, signature, connection.getWebhookSecret());
-            if (!valid) {
-                throw new BusinessRuleException("توقيع Webhook غير صالح");
+        List<ParsedOrder> parsed = new ArrayList<>(batch.size());
+        Set<String> keys = new HashSet<>();
+        for (ECommerceInboundOrder inbound : batch) {
+            if (inbound.getStatus() != InboundStatus.PROCESSING) {
+                continue;
+            }
+            ECommerceConnection connection = connections.get(inbound.getConnection().getId());
+            try {
+                Map<String, Object> data = integrationFactory.getIntegration(connection.getPlatform())
+                        .parseOrder(inbound.getRawPayload());
+                String key = orderIdempotencyKey(connection.getId(),
+                        (String) data.getOrDefault("externalOrderId", ""));
+                keys.add(key);
+                parsed.add(new ParsedOrder(inbound, connection, data, key, null));
+            } catch (Exception e) {
+                parsed.add(new ParsedOrder(inbound, connection, null, null, e.getMessage()));
             }
         }
+        // Keys already stored, plus those taken by earlier rows of this batch
+        Set<String> taken = keys.isEmpty()
+                ? new HashSet<>() : new HashSet<>(orderRepository.findExistingIdempotencyKeys(keys));
+
+        Map<Long, int[]> tallies = new LinkedHashMap<>();
+        Map<String, Zone> zonesByCity = new HashMap<>();
+        List<ECommerceOrder> orders = new ArrayList<>(parsed.size());
+        for (ParsedOrder p : parsed) {
+            ECommerceInboundOrder inbound = p.inbound();
+            ECommerceConnection connection = p.connection();
+            int[] tally = tallies.computeIfAbsent(connection.getId(), id -> new int[3]);
+
+            if (!connection.isActive()) {
+                finishInbound(inbound, InboundStatus.FAILED, "الاتصال غير نشط");
+                continue;
+            }
+            if (p.parseError() != null) {
+                ECommerceOrder failedOrder = newOrder(connection, inbound);
+                failedOrder.setExternalOrderId("PARSE_ERROR_" + inbound.getId());
+                failedOrder.setStatus(OrderStatus.FAILED);
+                failedOrder.setErrorMessage(truncate(p.parseError()));
+                orders.add(failedOrder);
+                finishInbound(inbound, InboundStatus.DONE, null);
+                tally[0]++;
+                continue;
+            }
 
-        // Parse order
-        Map<String, Object> orderData;
-        try {
-            orderData = integration.parseOrder(rawPayload);
-        } catch (Exception e) {
-            ECommerceOrder failedOrder = new ECommerceOrder();
-            failedOrder.setConnection(connection);
-            failedOrder.setExternalOrderId("PARSE_ERROR_" + Instant.now().toEpochMilli());
-            failedOrder.setPlatform(connection.getPlatform());
-            failedOrder.setStatus(OrderStatus.FAILED);
-            failedOrder.setRawPayload(rawPayload);
-            failedOrder.setErrorMessage(e.getMessage());
-            return orderRepository.save(failedOrder);
+            String externalOrderId = (String) p.data().getOrDefault("externalOrderId", "");
+            if (!taken.add(p.idempotencyKey())) {
+                log.debug("Duplicate order received: {} ({})", externalOrderId, connection.getPlatform());
+                finishInbound(inbound, InboundStatus.DONE, "Duplicate order " + externalOrderId);
+                tally[2]++;
+                continue;
+            }
+
+            ECommerceOrder order = newOrder(connection, inbound);
+            order.setExternalOrderId(externalOrderId);
+            order.setExternalOrderNumber((String) p.data().getOrDefault("externalOrderNumber", ""));
+            order.setIdempotencyKey(p.idempotencyKey());
+            if (connection.isAutoCreateShipments()) {
+                try {
+                    order.setShipment(createShipment(connection, p.data(), zonesByCity));
+                    order.setStatus(OrderStatus.SHIPMENT_CREATED);
+                    order.setProcessedAt(Instant.now());
+                } catch (BusinessRuleException e) {
+                    order.setStatus(OrderStatus.FAILED);
+                    order.setErrorMessage(e.getMessage());
+                    tally[1]++;
+                }
+            } else {
+                order.setStatus(OrderStatus.RECEIVED);
+            }
+            orders.add(order);
+            finishInbound(inbound, InboundStatus.DONE, null);
+            tally[0]++;
         }
+        orderRepository.saveAll(orders);
 
-        String externalOrderId = (String) orderData.getOrDefault("externalOrderId", "");
+        List<SyncTally> result = new ArrayList<>(tallies.size());
+        tallies.forEach((connectionId, t) -> result.add(new SyncTally(connectionId, t[0], t[1], t[2])));
+        return result;
+    }
 
-        // Check for duplicate
-        Optional<ECommerceOrder> existing = orderRepository.findByExternalOrderIdAndPlatform(
-                externalOrderId, connection.getPlatform());
-        if (existing.isPresent()) {
-            log.warn("Duplicate order received: {} ({})", externalOrderId, connection.getPlatform());
-            return existing.get();
+    /**
+     * Hand a claimed row back after its processing failed: requeue it, or fail it for good
+     * once it has used {@code maxAttempts}.
+     *
+     * @return true if the row was failed permanently
+     */
+    public boolean releaseInboundOrder(Long inboundId, String error, int maxAttempts) {
+        ECommerceInboundOrder inbound = inboundOrderRepository.findById(inboundId).orElse(null);
+        if (inbound == null || inbound.getStatus() != InboundStatus.PROCESSING) {
+            return false;
+        }
+        boolean exhausted = inbound.getAttempts() >= maxAttempts;
+        inbound.setStatus(exhausted ? InboundStatus.FAILED : InboundStatus.PENDING);
+        inbound.setErrorMessage(truncate(error));
+        inbound.setLeaseOwner(null);
+        inbound.setLeaseExpiresAt(null);
+        if (exhausted) {
+            inbound.setProcessedAt(Instant.now());
+            log.warn("Inbound {} order {} failed after {} attempts: {}", inbound.getPlatform(), inboundId,
+                    inbound.getAttempts(), error);
         }
+        return exhausted;
+    }
+
+    static String orderIdempotencyKey(Long connectionId, String externalOrderId) {
+        return connectionId + ":" + externalOrderId;
+    }
 
-        // Create order record
+    private ECommerceOrder newOrder(ECommerceConnection connection, ECommerceInboundOrder inbound) {
         ECommerceOrder order = new ECommerceOrder();
         order.setConnection(connection);
-        order.setExternalOrderId(externalOrderId);
-        order.setExternalOrderNumber((String) orderData.getOrDefault("externalOrderNumber", ""));
         order.setPlatform(connection.getPlatform());
-        order.setRawPayload(rawPayload);
+        order.setRawPayload(inbound.getRawPayload());
+        order.setReceivedAt(inbound.getReceivedAt());
+        return order;
+    }
 
-        if (connection.isAutoCreateShipments()) {
-            try {
-                // In a production system, this would call ShipmentService.createShipment()
-                // For now, we mark as SHIPMENT_CREATED and log the data
-                order.setStatus(OrderStatus.SHIPMENT_CREATED);
-                order.setProcessedAt(Instant.now());
-                log.info("Auto-created shipment for {} order {}",
-                        connection.getPlatform(), externalOrderId);
-            } catch (Exception e) {
-                order.setStatus(OrderStatus.FAILED);
-                order.setErrorMessage(e.getMessage());
-                connection.setSyncErrors(connection.getSyncErrors() + 1);
-                connectionRepository.save(connection);
+    private void finishInbound(ECommerceInboundOrder inbound, InboundStatus status, String note) {
+        inbound.setStatus(status);
+        inbound.setErrorMessage(note != null ? truncate(note) : null);
+        inbound.setProcessedAt(Instant.now());
+        inbound.setLeaseOwner(null);
+        inbound.setLeaseExpiresAt(null);
+    }
+
+    /**
+     * Map a parsed order onto a shipment and create it through {@link ShipmentService}.
+     * Everything ShipmentService would reject inside the transaction is checked here first
+     * and reported as a {@link BusinessRuleException}, which only fails this order.
+     */
+    private Shipment createShipment(ECommerceConnection connection, Map<String, Object> data,
+                                    Map<String, Zone> zonesByCity) {
+        Zone zone = connection.getDefaultZone();
+        if (zone == null) {
+            String city = String.valueOf(data.getOrDefault("city", "")).trim();
+            zone = zonesByCity.computeIfAbsent(city.toLowerCase(Locale.ROOT),
+                    key -> key.isEmpty() ? null : zoneRepository.findByNameIgnoreCase(city).orElse(null));
+            if (zone == null) {
+                throw new BusinessRuleException("لا توجد منطقة مطابقة للمدينة: " + city);
             }
-        } else {
-            order.setStatus(OrderStatus.RECEIVED);
         }
 
-        connection.setLastSyncAt(Instant.now());
-        connectionRepository.save(connection);
+        String phone = String.valueOf(data.getOrDefault("recipientPhone", "")).replaceAll("[^0-9]", "");
+        if (phone.length() < 10 || phone.length() > 15) {
+            throw new BusinessRuleException("رقم هاتف المستلم غير صالح");
+        }
+        String name = String.valueOf(data.getOrDefault("recipientName", "")).trim();
+        if (name.length() < 2 || name.length() > 100) {
+            throw new BusinessRuleException("اسم المستلم غير صالح");
+        }
+        String address = String.valueOf(data.getOrDefault("recipientAddress", "")).trim();
+        if (address.isEmpty()) {
+            address = String.valueOf(data.getOrDefault("city", "")).trim();
+        }
+        if (address.isEmpty()) {
+            throw new BusinessRuleException("عنوان المستلم مطلوب");
+        }
 
-        return orderRepository.save(order);
+        Shipment shipment = new Shipment();
+        shipment.setRecipientDetails(new RecipientDetails(phone, name, address));
+        shipment.setItemValue(amount(data.get("itemValue")));
+        shipment.setCodAmount(amount(data.get("codAmount")));
+        Object notes = data.get("notes");
+        if (notes != null) {
+            shipment.setRecipientNotes(String.valueOf(notes));
+        }
+        return shipmentService.createShipment(shipment, connection.getMerchant().getId(), zone.getId());
+    }
+
+    private static BigDecimal amount(Object value) {
+        if (value == null || String.valueOf(value).isBlank()) {
+            return BigDecimal.ZERO;
+        }
+        try {
+            BigDecimal amount = new BigDecimal(String.valueOf(value).trim());
+            if (amount.signum() < 0) {
+                throw new BusinessRuleException("مبلغ غير صالح: " + value);
+            }
+            return amount.setScale(2, RoundingMode.HALF_UP);
+        } catch (NumberFormatException e) {
+            throw new BusinessRuleException("مبلغ غير صالح: " + value);
+        }
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() <= 1000 ? message : message.substring(0, 1000);
     }
 
     /**
@@ -1,78 +1,383 @@
 package com.twsela.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.domain.OptimizedRoute;
+import com.twsela.domain.Shipment;
+import com.twsela.domain.SpeedProfile;
 import com.twsela.domain.TrackingSession;
+import com.twsela.repository.CourierLocationHistoryRepository;
+import com.twsela.repository.OptimizedRouteRepository;
+import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.SpeedProfileRepository;
+import com.twsela.repository.TrackingSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * حساب الوقت المتوقع للوصول بناءً على السرعة والمسافة المتبقية.
+ * حساب الوقت المتوقع للوصول من المسافة المتبقية على مسار المندوب وسرعات مُتعلَّمة.
+ * <p>
+ * The remaining distance follows the courier's latest {@link OptimizedRoute}: the leg the
+ * courier is on is found from the current position, then the route's stops are walked up to
+ * the shipment's stop. A shipment that is not on a current route is measured straight from
+ * the courier. Straight-line distance is scaled by the learned detour factor and turned into
+ * time with the per-zone, per-hour speeds of {@link SpeedProfiles}, plus the learned dwell
+ * time of every stop still to serve first (see {@link SpeedProfileLearner}).
+ * <p>
+ * Estimates are computed when a ping arrives ({@link #calculateETA}) and cached per shipment.
+ * Polling ({@link #getEstimate}) is served from the cache and recomputes only after the
+ * courier reported a newer position, or once the entry is older than
+ * {@code app.eta.cache.ttl-ms}, which bounds staleness for pings handled by another node.
  */
 @Service
 public class ETACalculationService {
 
     private static final Logger log = LoggerFactory.getLogger(ETACalculationService.class);
 
-    // Default average speed when no speed data is available (km/h)
-    private static final double DEFAULT_SPEED_KMH = 30.0;
-    // Minimum speed to use for ETA calculation (km/h)
-    private static final double MIN_SPEED_KMH = 5.0;
+    // A position within this much extra distance of a leg counts as travelling that leg; half
+    // the leg admits the corner of a street-grid leg (√2 − 1 ≈ 0.41 of its straight length)
+    static final double LEG_TOLERANCE_KM = 0.3;
+    static final double LEG_TOLERANCE_RATIO = 0.5;
 
     /**
-     * حساب الوقت المتوقع للوصول.
+     * A computed ETA. {@code basedOn} is the time of the courier position it was computed
+     * from; {@code routed} tells whether the remaining distance followed the courier's route,
+     * and {@code stopsBefore} counts the route's stops still to serve before this shipment.
+     */
+    public record Estimate(Long shipmentId, Long courierId, double remainingKm, int stopsBefore,
+                           long travelSeconds, Instant eta, Instant basedOn, Instant computedAt, boolean routed) {
+
+        /** Whole minutes left from {@code now}, at least 1. */
+        public long remainingMinutes(Instant now) {
+            long seconds = Duration.between(now, eta).getSeconds();
+            return Math.max(1, (seconds + 59) / 60);
+        }
+    }
+
+    /** A route stop, in visiting order. */
+    record Stop(Long shipmentId, double lat, double lng) {}
+
+    /** Straight-line distance left along a route and the stops to serve on the way. */
+    record Remaining(double straightKm, int stopsBefore) {}
+
+    /** A parsed route; {@code cumulativeKm[i]} is the straight-line length from the first stop to stop i. */
+    record RouteSnapshot(List<Stop> stops, double[] cumulativeKm, Instant loadedAt) {
+
+        static RouteSnapshot of(List<Stop> stops, Instant loadedAt) {
+            double[] cumulative = new double[stops.size()];
+            for (int i = 1; i < stops.size(); i++) {
+                cumulative[i] = cumulative[i - 1] + distanceKm(stops.get(i - 1), stops.get(i).lat(), stops.get(i).lng());
+            }
+            return new RouteSnapshot(stops, cumulative, loadedAt);
+        }
+
+        int indexOf(Long shipmentId) {
+            for (int i = 0; i < stops.size(); i++) {
+                if (stops.get(i).shipmentId().equals(shipmentId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private record Position(Long courierId, double lat, double lng, Instant at) {}
+
+    private final OptimizedRouteRepository routeRepository;
+    private final SpeedProfileRepository profileRepository;
+    private final TrackingSessionRepository sessionRepository;
+    private final CourierLocationHistoryRepository locationRepository;
+    private final ShipmentRepository shipmentRepository;
+    private final ObjectMapper objectMapper;
+    private final Duration cacheTtl;
+    private final Duration routeTtl;
+    private final Duration routeMaxAge;
+    private final long minSampleSeconds;
+    private final double defaultSpeedKmh;
+    private final double defaultDetour;
+    private final double defaultDwellSeconds;
+
+    private final Map<Long, Estimate> estimates;
+    private final Map<Long, RouteSnapshot> routes = new ConcurrentHashMap<>();
+    private final Map<Long, Instant> courierPositions = new ConcurrentHashMap<>();
+    private volatile SpeedProfiles profiles;
+
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+    private final Counter routedEstimates;
+    private final Counter directEstimates;
+
+    public ETACalculationService(OptimizedRouteRepository routeRepository,
+                                 SpeedProfileRepository profileRepository,
+                                 TrackingSessionRepository sessionRepository,
+                                 CourierLocationHistoryRepository locationRepository,
+                                 ShipmentRepository shipmentRepository,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.eta.cache.ttl-ms:60000}") long cacheTtlMs,
+                                 @Value("${app.eta.cache.max-entries:100000}") int maxEntries,
+                                 @Value("${app.eta.route.ttl-ms:300000}") long routeTtlMs,
+                                 @Value("${app.eta.route.max-age-hours:16}") long routeMaxAgeHours,
+                                 @Value("${app.eta.min-sample-seconds:900}") long minSampleSeconds,
+                                 @Value("${app.eta.default-speed-kmh:25}") double defaultSpeedKmh,
+                                 @Value("${app.eta.default-detour-factor:1.3}") double defaultDetour,
+                                 @Value("${app.eta.default-stop-dwell-seconds:180}") double defaultDwellSeconds) {
+        this.routeRepository = routeRepository;
+        this.profileRepository = profileRepository;
+        this.sessionRepository = sessionRepository;
+        this.locationRepository = locationRepository;
+        this.shipmentRepository = shipmentRepository;
+        this.objectMapper = objectMapper;
+        this.cacheTtl = Duration.ofMillis(cacheTtlMs);
+        this.routeTtl = Duration.ofMillis(routeTtlMs);
+        this.routeMaxAge = Duration.ofHours(routeMaxAgeHours);
+        this.minSampleSeconds = minSampleSeconds;
+        this.defaultSpeedKmh = defaultSpeedKmh;
+        this.defaultDetour = defaultDetour;
+        this.defaultDwellSeconds = defaultDwellSeconds;
+        int limit = Math.max(1, maxEntries);
+        this.estimates = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Estimate> eldest) {
+                return size() > limit;
+            }
+        });
+        this.cacheHits = Counter.builder("twsela.eta.cache").tag("result", "hit")
+                .description("ETA reads served from the per-shipment cache").register(meterRegistry);
+        this.cacheMisses = Counter.builder("twsela.eta.cache").tag("result", "miss")
+                .description("ETA reads that had to recompute").register(meterRegistry);
+        this.routedEstimates = Counter.builder("twsela.eta.estimates").tag("path", "route")
+                .description("ETAs computed along the courier's optimized route").register(meterRegistry);
+        this.directEstimates = Counter.builder("twsela.eta.estimates").tag("path", "direct")
+                .description("ETAs computed straight from the courier's position").register(meterRegistry);
+    }
+
+    /**
+     * حساب الوقت المتوقع للوصول عند وصول نقطة موقع جديدة، وتخزينه للشحنة.
      *
-     * @param session   جلسة التتبع الحالية
-     * @param currentSpeed السرعة الحالية بالمتر/ثانية (nullable)
+     * @param session جلسة التتبع بعد تحديث موقعها الحالي
      * @return الوقت المتوقع للوصول أو null إذا لم يكن هناك بيانات كافية
      */
-    public Instant calculateETA(TrackingSession session, Float currentSpeed) {
-        if (session == null || session.getShipment() == null) {
+    public Instant calculateETA(TrackingSession session) {
+        if (session == null || session.getShipment() == null
+                || session.getCurrentLat() == null || session.getCurrentLng() == null) {
             return null;
         }
-
-        // We'd normally use the shipment destination coordinates, but for now
-        // we'll use a simple speed-based estimate if we have remaining distance estimation
-        Double estimatedRemainingKm = estimateRemainingDistance(session);
-        if (estimatedRemainingKm == null || estimatedRemainingKm <= 0) {
+        Shipment shipment = session.getShipment();
+        if (shipment.getId() == null || !hasDestination(shipment)) {
             return null;
         }
+        Instant now = Instant.now();
+        Long courierId = session.getCourier() != null ? session.getCourier().getId() : null;
+        Instant basedOn = session.getLastPingAt() != null ? session.getLastPingAt() : now;
+        if (courierId != null) {
+            onCourierLocation(courierId, basedOn);
+        }
+        Estimate estimate = estimate(shipment, courierId, session.getCurrentLat(), session.getCurrentLng(), basedOn, now);
+        estimates.put(shipment.getId(), estimate);
+        log.debug("ETA for shipment {}: {} km ({}) = {} s, arrival at {}", shipment.getId(),
+                estimate.remainingKm(), estimate.routed() ? "route" : "direct", estimate.travelSeconds(), estimate.eta());
+        return estimate.eta();
+    }
 
-        double speedKmh;
-        if (currentSpeed != null && currentSpeed > 0) {
-            // Convert m/s to km/h
-            speedKmh = currentSpeed * 3.6;
-            if (speedKmh < MIN_SPEED_KMH) {
-                speedKmh = MIN_SPEED_KMH;
-            }
+    /**
+     * ETA for polling: the cached estimate while it is current, otherwise recomputed from the
+     * shipment's active tracking session or, failing that, the courier's last known location.
+     */
+    @Transactional(readOnly = true)
+    public Optional<Estimate> getEstimate(Shipment shipment) {
+        if (shipment == null || shipment.getId() == null || !hasDestination(shipment)) {
+            return Optional.empty();
+        }
+        Instant now = Instant.now();
+        Estimate cached = estimates.get(shipment.getId());
+        if (cached != null && isCurrent(cached, now)) {
+            cacheHits.increment();
+            return Optional.of(cached);
+        }
+        cacheMisses.increment();
+        Optional<Estimate> computed = currentPosition(shipment.getId())
+                .map(position -> estimate(shipment, position.courierId(), position.lat(), position.lng(),
+                        position.at(), now));
+        if (computed.isPresent()) {
+            estimates.put(shipment.getId(), computed.get());
         } else {
-            speedKmh = DEFAULT_SPEED_KMH;
+            estimates.remove(shipment.getId());
         }
+        return computed;
+    }
 
-        // time = distance / speed  (in hours)
-        double hoursRemaining = estimatedRemainingKm / speedKmh;
-        long secondsRemaining = (long) (hoursRemaining * 3600);
+    /** Minutes until arrival, or null when the courier's position or the destination is unknown. */
+    @Transactional(readOnly = true)
+    public Long getRemainingMinutes(Shipment shipment) {
+        return getEstimate(shipment).map(estimate -> estimate.remainingMinutes(Instant.now())).orElse(null);
+    }
+
+    /** Record a courier position reported outside a tracking session; older estimates become stale. */
+    public void onCourierLocation(Long courierId, Instant at) {
+        courierPositions.merge(courierId, at, (previous, latest) -> latest.isAfter(previous) ? latest : previous);
+    }
 
-        Instant eta = Instant.now().plusSeconds(secondsRemaining);
-        log.debug("ETA calculated: {} km remaining at {} km/h = {} seconds, arrival at {}",
-                estimatedRemainingKm, speedKmh, secondsRemaining, eta);
-        return eta;
+    /** Drop the cached route of a courier, e.g. after it was re-optimized. */
+    public void evictRoute(Long courierId) {
+        routes.remove(courierId);
     }
 
     /**
-     * تقدير المسافة المتبقية — في التطبيق الحقيقي يستخدم Google Maps API.
-     * حالياً يُرجع قيمة افتراضية بسيطة.
+     * Reload learned speed profiles. Runs after every learning run and periodically, so that
+     * every node picks up profiles learned on another one.
      */
-    Double estimateRemainingDistance(TrackingSession session) {
-        // Placeholder: In production, this would call Google Maps Distance Matrix API
-        // For now, return a simple estimate based on total distance traveled
-        if (session.getTotalDistanceKm() != null && session.getTotalDistanceKm() > 0) {
-            // Assume a typical delivery is ~10km total, subtract what's been traveled
-            double estimatedTotal = 10.0;
-            double remaining = estimatedTotal - session.getTotalDistanceKm();
-            return remaining > 0 ? remaining : 0.5; // Minimum 0.5 km
-        }
-        return 5.0; // Default: 5km remaining
+    @Scheduled(fixedDelayString = "${app.eta.profile-refresh-ms:3600000}",
+               initialDelayString = "${app.eta.profile-refresh-ms:3600000}")
+    public void reloadProfiles() {
+        List<SpeedProfile> rows = profileRepository.findAll();
+        profiles = SpeedProfiles.of(rows, minSampleSeconds, defaultSpeedKmh, defaultDetour, defaultDwellSeconds);
+        log.info("Loaded {} speed profiles", rows.size());
+    }
+
+    /** Compute an estimate for a courier at ({@code lat}, {@code lng}) heading for the shipment. */
+    Estimate estimate(Shipment shipment, Long courierId, double lat, double lng, Instant basedOn, Instant now) {
+        SpeedProfiles table = profiles();
+        Long zoneId = shipment.getZone() != null ? shipment.getZone().getId() : null;
+        int hour = now.atZone(SpeedProfiles.LOCAL_ZONE).getHour();
+
+        Remaining remaining = courierId != null
+                ? remainingAlongRoute(route(courierId, now), shipment.getId(), lat, lng)
+                : null;
+        boolean routed = remaining != null;
+        if (routed) {
+            routedEstimates.increment();
+        } else {
+            remaining = new Remaining(SmartAssignmentService.haversineKm(lat, lng,
+                    shipment.getDeliveryLatitude().doubleValue(), shipment.getDeliveryLongitude().doubleValue()), 0);
+            directEstimates.increment();
+        }
+        double roadKm = remaining.straightKm() * table.detourFactor(zoneId, hour);
+        long seconds = table.travelSeconds(zoneId, roadKm, now)
+                + Math.round(remaining.stopsBefore() * table.stopDwellSeconds(zoneId, hour));
+        return new Estimate(shipment.getId(), courierId, Math.round(roadKm * 100.0) / 100.0, remaining.stopsBefore(),
+                seconds, now.plusSeconds(seconds), basedOn, now, routed);
+    }
+
+    /**
+     * Distance from the position to the shipment's stop along the route, or null if the
+     * shipment is not on it. The courier is placed on the leg whose detour through the
+     * position is smallest (ties go to the later leg); with no leg close enough the courier
+     * is taken to be heading for the first stop.
+     */
+    static Remaining remainingAlongRoute(RouteSnapshot route, Long shipmentId, double lat, double lng) {
+        int target = route.indexOf(shipmentId);
+        if (target < 0) {
+            return null;
+        }
+        List<Stop> stops = route.stops();
+        double[] cumulative = route.cumulativeKm();
+        int next = 0;
+        double bestExcess = Double.MAX_VALUE;
+        for (int leg = 1; leg <= target; leg++) {
+            double legKm = cumulative[leg] - cumulative[leg - 1];
+            double excess = distanceKm(stops.get(leg - 1), lat, lng) + distanceKm(stops.get(leg), lat, lng) - legKm;
+            if (excess <= Math.max(LEG_TOLERANCE_KM, LEG_TOLERANCE_RATIO * legKm) && excess <= bestExcess) {
+                bestExcess = excess;
+                next = leg;
+            }
+        }
+        return new Remaining(distanceKm(stops.get(next), lat, lng) + cumulative[target] - cumulative[next],
+                target - next);
+    }
+
+    // ── Internals ───────────────────────────────────────────────
+
+    private SpeedProfiles profiles() {
+        SpeedProfiles table = profiles;
+        if (table == null) {
+            reloadProfiles();
+            table = profiles;
+        }
+        return table;
+    }
+
+    private boolean isCurrent(Estimate estimate, Instant now) {
+        if (Duration.between(estimate.computedAt(), now).compareTo(cacheTtl) >= 0) {
+            return false;
+        }
+        Instant latest = estimate.courierId() != null ? courierPositions.get(estimate.courierId()) : null;
+        return latest == null || !latest.isAfter(estimate.basedOn());
+    }
+
+    private Optional<Position> currentPosition(Long shipmentId) {
+        Optional<TrackingSession> session = sessionRepository
+                .findFirstByShipmentIdAndStatusOrderByStartedAtDesc(shipmentId, TrackingSession.SessionStatus.ACTIVE)
+                .filter(s -> s.getCurrentLat() != null && s.getCurrentLng() != null);
+        if (session.isPresent()) {
+            TrackingSession s = session.get();
+            return Optional.of(new Position(s.getCourier() != null ? s.getCourier().getId() : null,
+                    s.getCurrentLat(), s.getCurrentLng(), s.getLastPingAt() != null ? s.getLastPingAt() : s.getStartedAt()));
+        }
+        return shipmentRepository.findCourierIdById(shipmentId)
+                .flatMap(courierId -> locationRepository.findFirstByCourierIdOrderByTimestampDesc(courierId)
+                        .map(location -> new Position(courierId, location.getLatitude().doubleValue(),
+                                location.getLongitude().doubleValue(), location.getTimestamp())));
+    }
+
+    private RouteSnapshot route(Long courierId, Instant now) {
+        RouteSnapshot cached = routes.get(courierId);
+        if (cached != null && Duration.between(cached.loadedAt(), now).compareTo(routeTtl) < 0) {
+            return cached;
+        }
+        RouteSnapshot loaded = routeRepository.findTopByCourierIdOrderByOptimizedAtDesc(courierId)
+                .filter(route -> route.getOptimizedAt() != null && route.getOptimizedAt().isAfter(now.minus(routeMaxAge)))
+                .map(route -> RouteSnapshot.of(parseStops(route), now))
+                .orElseGet(() -> RouteSnapshot.of(List.of(), now));
+        routes.put(courierId, loaded);
+        return loaded;
+    }
+
+    private List<Stop> parseStops(OptimizedRoute route) {
+        if (route.getWaypoints() == null || route.getWaypoints().isBlank()) {
+            return List.of();
+        }
+        try {
+            List<JsonNode> nodes = new ArrayList<>();
+            for (JsonNode node : objectMapper.readTree(route.getWaypoints())) {
+                if (node.hasNonNull("shipmentId") && node.hasNonNull("lat") && node.hasNonNull("lng")) {
+                    nodes.add(node);
+                }
+            }
+            nodes.sort(Comparator.comparingInt(node -> node.path("order").asInt()));
+            List<Stop> stops = new ArrayList<>(nodes.size());
+            for (JsonNode node : nodes) {
+                stops.add(new Stop(node.get("shipmentId").asLong(), node.get("lat").asDouble(), node.get("lng").asDouble()));
+            }
+            return stops;
+        } catch (Exception e) {
+            log.warn("Unreadable waypoints on route {}: {}", route.getId(), e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static boolean hasDestination(Shipment shipment) {
+        return shipment.getDeliveryLatitude() != null && shipment.getDeliveryLongitude() != null;
+    }
+
+    private static double distanceKm(Stop stop, double lat, double lng) {
+        return SmartAssignmentService.haversineKm(stop.lat(), stop.lng(), lat, lng);
     }
 }
@@ -1,5 +1,6 @@
 package com.twsela.service;
 
+import com.twsela.domain.RecipientDetails;
 import com.twsela.domain.Shipment;
 import com.twsela.domain.User;
 import com.twsela.repository.UserRepository;
@@ -88,6 +89,7 @@ public class ExcelService {
 
     private Shipment createShipmentFromRow(Row row, User merchant) throws Exception {
         Shipment shipment = new Shipment();
+        shipment.setRecipientDetails(new RecipientDetails());
 
         // Recipient Name (required)
         String recipientName = getCellValueAsString(row.getCell(0));
@@ -121,8 +123,8 @@ public class ExcelService {
         }
         
         // Validate zone exists
-        zoneRepository.findByNameIgnoreCase(zoneName.trim())
-            .orElseThrow(() -> new RuntimeException("المنطقة غير موجودة: " + zoneName));
+        shipment.setZone(zoneRepository.findByNameIgnoreCase(zoneName.trim())
+            .orElseThrow(() -> new RuntimeException("المنطقة غير موجودة: " + zoneName)));
         
         // COD Amount (required)
         String codAmountStr = getCellValueAsString(row.getCell(4));
@@ -2,20 +2,35 @@ package com.twsela.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
 import java.util.Set;
-import java.util.UUID;
+import java.util.regex.Pattern;
 
 /**
- * Generic file storage service. Stores files on the local filesystem.
- * Can be replaced by an S3-compatible implementation later.
+ * Generic file storage service on top of a pluggable {@link StorageBackend}.
+ * <p>
+ * Uploads are streamed into a staged temp file while their SHA-256 is computed and then
+ * committed under {@code <directory>/<sha256><ext>}, so identical content is stored once.
+ * Generated files (reports, exports) keep their given name and replace the previous version.
+ * Reads never load a file into memory: callers look a file up with {@link #find} and stream
+ * it with {@link #open}, or hand {@link #localPath} to the servlet container.
  */
 @Service
 public class FileStorageService {
@@ -23,13 +38,29 @@ public class FileStorageService {
     private static final Logger log = LoggerFactory.getLogger(FileStorageService.class);
 
     private static final String BASE_UPLOAD_DIR = System.getProperty("app.upload.dir", "uploads/");
+    private static final String PUBLIC_PREFIX = "/uploads/";
     private static final long MAX_FILE_SIZE = 5 * 1024 * 1024; // 5 MB
     private static final Set<String> ALLOWED_TYPES = Set.of(
             "image/jpeg", "image/png", "image/gif", "image/webp"
     );
+    private static final Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+
+    /** A stored file as seen by readers; {@code etag} is unquoted. */
+    public record StoredFile(String path, String key, long size, Instant lastModified, String etag) {}
+
+    private final StorageBackend backend;
+
+    public FileStorageService() {
+        this(new LocalDiskStorageBackend(Paths.get(BASE_UPLOAD_DIR)));
+    }
+
+    @Autowired
+    public FileStorageService(StorageBackend backend) {
+        this.backend = backend;
+    }
 
     /**
-     * Store a file in the specified sub-directory.
+     * Store an uploaded image in the specified sub-directory.
      *
      * @param file      the uploaded file
      * @param directory sub-directory under the base upload dir (e.g., "delivery-photos")
@@ -48,57 +79,168 @@ public class FileStorageService {
             throw new IllegalArgumentException("نوع الملف غير مسموح به — فقط JPG, PNG, GIF, WEBP");
         }
 
-        // Prepare directory
-        Path uploadPath = Paths.get(BASE_UPLOAD_DIR, directory).toAbsolutePath().normalize();
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
-        }
+        return storeUpload(file, directory, getExtension(file.getOriginalFilename()));
+    }
 
-        // Generate unique filename
-        String extension = getExtension(file.getOriginalFilename());
-        String filename = UUID.randomUUID().toString() + extension;
-        Path filePath = uploadPath.resolve(filename).normalize();
+    /**
+     * Store an already validated upload under its content hash. Uploading the same bytes
+     * twice returns the same path and keeps a single copy.
+     *
+     * @param extension file extension including the dot, or empty
+     * @return the relative path to the stored file
+     */
+    public String storeUpload(MultipartFile file, String directory, String extension) throws IOException {
+        return storeContent(directory, extension, out -> {
+            try (InputStream in = file.getInputStream()) {
+                in.transferTo(out);
+            }
+        });
+    }
 
-        // Path traversal check
-        if (!filePath.startsWith(uploadPath)) {
-            throw new SecurityException("مسار ملف غير صالح");
+    /**
+     * Store generated content under its content hash, like {@link #storeUpload}.
+     *
+     * @param extension file extension including the dot, or empty
+     * @return the relative path to the stored file
+     */
+    public String storeContent(String directory, String extension, ContentWriter writer) throws IOException {
+        Path staged = backend.createStagingFile();
+        String key;
+        try {
+            MessageDigest digest = sha256();
+            try (OutputStream out = new DigestOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(staged), 64 * 1024), digest)) {
+                writer.writeTo(out);
+            }
+            key = directory + "/" + HexFormat.of().formatHex(digest.digest()) + extension;
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(staged);
+            throw e;
         }
 
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-        log.debug("File stored: {}", filePath);
+        if (backend.commit(staged, key, false)) {
+            log.debug("File stored: {}", key);
+        } else {
+            log.debug("File already stored, reusing: {}", key);
+        }
+        return PUBLIC_PREFIX + key;
+    }
 
-        return "/uploads/" + directory + "/" + filename;
+    /**
+     * Writes generated content to an output stream.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
     }
 
     /**
-     * Retrieve file bytes from storage.
+     * Store generated content (reports, exports) under a fixed file name.
+     *
+     * @return the relative path to the stored file
      */
-    public byte[] getFile(String relativePath) throws IOException {
-        Path filePath = Paths.get(BASE_UPLOAD_DIR)
-                .resolve(relativePath.replaceFirst("^/uploads/", ""))
-                .toAbsolutePath().normalize();
+    public String storeBytes(byte[] content, String directory, String filename) throws IOException {
+        return storeStream(directory, filename, out -> out.write(content));
+    }
 
-        if (!Files.exists(filePath)) {
-            throw new IOException("الملف غير موجود: " + relativePath);
+    /**
+     * Stream generated content to a file without buffering it in memory. The content is
+     * written to a staged file first and committed once complete, so readers never
+     * see a partial file.
+     *
+     * @return the relative path to the stored file
+     */
+    public String storeStream(String directory, String filename, ContentWriter writer) throws IOException {
+        String key = directory + "/" + filename;
+        Path staged = backend.createStagingFile();
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(staged), 64 * 1024)) {
+                writer.writeTo(out);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(staged);
+            throw e;
         }
-        return Files.readAllBytes(filePath);
+        backend.commit(staged, key, true);
+        log.debug("File stored: {}", key);
+
+        return PUBLIC_PREFIX + key;
+    }
+
+    /**
+     * Look up a stored file by the path returned when it was stored.
+     */
+    public Optional<StoredFile> find(String relativePath) throws IOException {
+        String key = toKey(relativePath);
+        return backend.stat(key).map(info -> new StoredFile(PUBLIC_PREFIX + key, key, info.size(),
+                info.lastModified(), etag(key, info)));
+    }
+
+    /**
+     * Open a stored file for streaming; the resource knows its length, so byte ranges can be
+     * served from it without reading the whole file.
+     */
+    public Resource open(StoredFile file) {
+        return backend.open(file.key());
+    }
+
+    /**
+     * The stored file on local disk, if the backend keeps one.
+     */
+    public Optional<Path> localPath(StoredFile file) {
+        return backend.localPath(file.key());
     }
 
     /**
-     * Delete a file from storage.
+     * Delete a file from storage. Content-addressed files are shared by every shipment or proof
+     * that stored the same bytes, so they are never deleted here and {@code false} is returned.
      */
     public boolean deleteFile(String relativePath) {
+        String key = toKey(relativePath);
+        if (isContentAddressed(key)) {
+            log.warn("Refusing to delete shared content-addressed file {}", key);
+            return false;
+        }
         try {
-            Path filePath = Paths.get(BASE_UPLOAD_DIR)
-                    .resolve(relativePath.replaceFirst("^/uploads/", ""))
-                    .toAbsolutePath().normalize();
-            return Files.deleteIfExists(filePath);
+            return backend.delete(key);
         } catch (IOException e) {
             log.warn("Failed to delete file {}: {}", relativePath, e.getMessage());
             return false;
         }
     }
 
+    // ── Internals ──────────────────────────────────────────────
+
+    private static String toKey(String relativePath) {
+        return relativePath.replaceFirst("^/uploads/", "").replaceFirst("^/+", "");
+    }
+
+    /** The content hash for content-addressed files, size and modification time otherwise. */
+    private static String etag(String key, StorageBackend.ObjectInfo info) {
+        if (isContentAddressed(key)) {
+            return stem(key);
+        }
+        return Long.toHexString(info.size()) + "-" + Long.toHexString(info.lastModified().toEpochMilli());
+    }
+
+    private static boolean isContentAddressed(String key) {
+        return CONTENT_HASH.matcher(stem(key)).matches();
+    }
+
+    private static String stem(String key) {
+        String name = key.substring(key.lastIndexOf('/') + 1);
+        int dot = name.indexOf('.');
+        return dot >= 0 ? name.substring(0, dot) : name;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
     private String getExtension(String filename) {
         if (filename != null && filename.contains(".")) {
             String ext = filename.substring(filename.lastIndexOf(".")).toLowerCase();
@@ -6,19 +6,21 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 
 @Service
 public class FileUploadService {
 
     private static final Logger log = LoggerFactory.getLogger(FileUploadService.class);
 
-    private static final String UPLOAD_DIR = System.getProperty("app.upload.dir", "uploads/pod/");
+    private static final String POD_DIRECTORY = "pod";
     private static final String PUBLIC_PATH = "/uploads/pod/";
 
+    private final FileStorageService fileStorageService;
+
+    public FileUploadService(FileStorageService fileStorageService) {
+        this.fileStorageService = fileStorageService;
+    }
+
     public String uploadPodImage(MultipartFile file, String trackingNumber) throws IOException {
         // Validate file
         if (file.isEmpty()) {
@@ -31,51 +33,31 @@ public class FileUploadService {
             throw new IllegalArgumentException("File must be an image");
         }
 
-        // Sanitize tracking number to prevent path traversal
-        String sanitizedTrackingNumber = trackingNumber.replaceAll("[^a-zA-Z0-9_-]", "_");
-
-        // Create upload directory if it doesn't exist
-        Path uploadPath = Paths.get(UPLOAD_DIR).toAbsolutePath().normalize();
-        if (!Files.exists(uploadPath)) {
-            Files.createDirectories(uploadPath);
-        }
-
-        // Generate filename using sanitized tracking number
         String originalFilename = file.getOriginalFilename();
         String fileExtension = "";
         if (originalFilename != null && originalFilename.contains(".")) {
-            fileExtension = originalFilename.substring(originalFilename.lastIndexOf("."));
+            fileExtension = originalFilename.substring(originalFilename.lastIndexOf(".")).toLowerCase();
             // Only allow safe extensions
             if (!fileExtension.matches("\\.(jpg|jpeg|png|gif|webp)")) {
                 throw new IllegalArgumentException("Unsupported image format");
             }
         }
 
-        String filename = sanitizedTrackingNumber + fileExtension;
-        Path filePath = uploadPath.resolve(filename).normalize();
-        
-        // Verify resolved path is still within upload directory (prevent path traversal)
-        if (!filePath.startsWith(uploadPath)) {
-            throw new SecurityException("Invalid file path detected");
-        }
-
-        // Save file
-        Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
-
-        // Return public path
-        return PUBLIC_PATH + filename;
+        // Stored under its content hash; re-uploading the same photo reuses the stored copy
+        String path = fileStorageService.storeUpload(file, POD_DIRECTORY, fileExtension);
+        log.debug("POD image for {} stored at {}", trackingNumber, path);
+        return path;
     }
 
+    /**
+     * POD images are stored under their content hash and may be shared with other shipments,
+     * so {@link FileStorageService#deleteFile} keeps them; this only returns {@code true} for
+     * legacy, uniquely named files.
+     */
     public boolean deletePodImage(String imagePath) {
-        try {
-            if (imagePath != null && imagePath.startsWith(PUBLIC_PATH)) {
-                String filename = imagePath.substring(PUBLIC_PATH.length());
-                Path filePath = Paths.get(UPLOAD_DIR + filename);
-                return Files.deleteIfExists(filePath);
-            }
-            return false;
-        } catch (IOException e) {
-            return false;
+        if (imagePath != null && imagePath.startsWith(PUBLIC_PATH)) {
+            return fileStorageService.deleteFile(imagePath);
         }
+        return false;
     }
 }
@@ -2,20 +2,25 @@ package com.twsela.service;
 
 import com.twsela.domain.*;
 import com.twsela.repository.*;
+import com.twsela.web.exception.BusinessRuleException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 @Transactional
 public class FinancialService {
 
     private static final Logger log = LoggerFactory.getLogger(FinancialService.class);
+    private static final BigDecimal COURIER_SHARE = new BigDecimal("0.70");
 
     private final PayoutRepository payoutRepository;
     private final PayoutItemRepository payoutItemRepository;
@@ -34,76 +39,62 @@ public class FinancialService {
     }
 
     public Payout createCourierPayout(Long courierId, LocalDate startDate, LocalDate endDate) {
-        User courier = userRepository.findById(courierId).orElseThrow();
-        
-        // Get all delivered shipments for the courier in the period
-        List<Shipment> deliveredShipments = shipmentRepository.findByCourierIdAndStatusNameAndCashReconciledFalse(
-            courierId, "DELIVERED");
-        
-        // Calculate total earnings (70% of delivery fees)
-        BigDecimal totalEarnings = deliveredShipments.stream()
-            .map(shipment -> shipment.getDeliveryFee().multiply(BigDecimal.valueOf(0.70)))
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        // Create payout
-        PayoutStatus pendingStatus = payoutStatusRepository.findByName("PENDING").orElseThrow();
-        Payout payout = new Payout(courier, Payout.PayoutType.COURIER_SETTLEMENT, pendingStatus, 
-                                 startDate, endDate, totalEarnings);
-        payout.setDescription("Courier settlement for period " + startDate + " to " + endDate);
-        
-        payout = payoutRepository.save(payout);
-        
-        // Create payout items for each shipment
-        for (Shipment shipment : deliveredShipments) {
-            BigDecimal courierEarning = shipment.getDeliveryFee().multiply(BigDecimal.valueOf(0.70));
-            PayoutItem item = new PayoutItem(payout, PayoutItem.SourceType.SHIPMENT, 
-                                          shipment.getId(), courierEarning, 
-                                          "Delivery fee for shipment " + shipment.getTrackingNumber());
-            payoutItemRepository.save(item);
-            
-            // Link shipment to payout
-            shipment.setPayout(payout);
-            shipmentRepository.save(shipment);
-        }
-        
-        return payout;
+        return createPayout(Payout.PayoutType.COURIER_SETTLEMENT, courierId, startDate, endDate);
     }
 
     public Payout createMerchantPayout(Long merchantId, LocalDate startDate, LocalDate endDate) {
-        User merchant = userRepository.findById(merchantId).orElseThrow();
-        
-        // Get all delivered shipments for the merchant in the period
-        List<Shipment> deliveredShipments = shipmentRepository.findByMerchantIdAndStatusNameAndPayoutIsNull(
-            merchantId, "DELIVERED");
-        
-        // Calculate total delivery fees collected
-        BigDecimal totalFees = deliveredShipments.stream()
-            .map(Shipment::getDeliveryFee)
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        // Create payout
+        return createPayout(Payout.PayoutType.MERCHANT_PAYOUT, merchantId, startDate, endDate);
+    }
+
+    /**
+     * Create a user's payout for a period with set-based SQL: items are inserted with one
+     * {@code INSERT ... SELECT} over the eligible shipments delivered up to the period end,
+     * and those shipments are linked with one {@code UPDATE}. Idempotent — the payee row is
+     * locked, an existing payout for the same user, type and period is returned unchanged,
+     * and a shipment already itemised on a payout of this type is never paid again.
+     */
+    public Payout createPayout(Payout.PayoutType type, Long userId, LocalDate startDate, LocalDate endDate) {
+        BigDecimal rate = payoutRate(type);
+        User user = userRepository.findById(userId).orElseThrow();
+        payoutRepository.lockPayee(userId);
+
+        Optional<Payout> existing = payoutRepository.findFirstByUserIdAndPayoutTypeAndPayoutPeriodStartAndPayoutPeriodEnd(
+                userId, type, startDate, endDate);
+        if (existing.isPresent()) {
+            log.debug("{} payout for user {} and period {} to {} already exists", type, userId, startDate, endDate);
+            return existing.get();
+        }
+
         PayoutStatus pendingStatus = payoutStatusRepository.findByName("PENDING").orElseThrow();
-        Payout payout = new Payout(merchant, Payout.PayoutType.MERCHANT_PAYOUT, pendingStatus, 
-                                 startDate, endDate, totalFees);
-        payout.setDescription("Merchant payout for period " + startDate + " to " + endDate);
-        
+        Payout payout = new Payout(user, type, pendingStatus, startDate, endDate, BigDecimal.ZERO);
+        payout.setDescription((type == Payout.PayoutType.COURIER_SETTLEMENT ? "Courier settlement" : "Merchant payout")
+                + " for period " + startDate + " to " + endDate);
         payout = payoutRepository.save(payout);
-        
-        // Create payout items for each shipment
-        for (Shipment shipment : deliveredShipments) {
-            PayoutItem item = new PayoutItem(payout, PayoutItem.SourceType.SHIPMENT, 
-                                          shipment.getId(), shipment.getDeliveryFee(), 
-                                          "Delivery fee for shipment " + shipment.getTrackingNumber());
-            payoutItemRepository.save(item);
-            
-            // Link shipment to payout
-            shipment.setPayout(payout);
-            shipmentRepository.save(shipment);
+
+        int items = payoutRepository.insertShipmentItems(payout.getId(), type, userId, rate, periodCutoff(endDate));
+        if (items > 0) {
+            payoutRepository.linkShipments(payout.getId());
+            payout.setNetAmount(payoutItemRepository.sumAmountByPayoutId(payout.getId()));
         }
-        
+        log.info("{} payout {} created for user {} — {} shipments, net={}", type, payout.getId(), userId, items,
+                payout.getNetAmount());
         return payout;
     }
 
+    /** Share of the delivery fee paid out per shipment for a payout type. */
+    static BigDecimal payoutRate(Payout.PayoutType type) {
+        return switch (type) {
+            case COURIER_SETTLEMENT -> COURIER_SHARE;
+            case MERCHANT_PAYOUT -> BigDecimal.ONE;
+            default -> throw new BusinessRuleException("نوع الدفعة غير مدعوم: " + type);
+        };
+    }
+
+    /** Shipments delivered before the start of the day after {@code endDate} (Cairo time) belong to the period. */
+    static Instant periodCutoff(LocalDate endDate) {
+        return endDate.plusDays(1).atStartOfDay(SettlementBatchBuilder.SETTLEMENT_ZONE).toInstant();
+    }
+
     public List<Payout> getPayoutsForUser(Long userId) {
         return payoutRepository.findByUserIdOrderByPayoutPeriodEndDesc(userId);
     }
@@ -123,8 +114,8 @@ public class FinancialService {
 
     public BigDecimal calculateTotalRevenue(LocalDate startDate, LocalDate endDate) {
         List<Shipment> shipments = shipmentRepository.findByCreatedAtBetween(
-            startDate.atStartOfDay().atZone(java.time.ZoneId.systemDefault()).toInstant(),
-            endDate.plusDays(1).atStartOfDay().atZone(java.time.ZoneId.systemDefault()).toInstant()
+            startDate.atStartOfDay(SettlementBatchBuilder.SETTLEMENT_ZONE).toInstant(),
+            endDate.plusDays(1).atStartOfDay(SettlementBatchBuilder.SETTLEMENT_ZONE).toInstant()
         );
         
         return shipments.stream()
@@ -134,12 +125,9 @@ public class FinancialService {
     }
 
     public BigDecimal calculateCourierEarnings(Long courierId, LocalDate startDate, LocalDate endDate) {
-        List<Shipment> shipments = shipmentRepository.findByCourierIdAndStatusNameAndCashReconciledFalse(
+        BigDecimal deliveryFees = shipmentRepository.sumDeliveryFeeByCourierIdAndStatusNameAndCashReconciledFalse(
             courierId, "DELIVERED");
-        
-        return shipments.stream()
-            .map(shipment -> shipment.getDeliveryFee().multiply(BigDecimal.valueOf(0.70)))
-            .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return deliveryFees.multiply(COURIER_SHARE).setScale(2, RoundingMode.HALF_UP);
     }
 
     public List<Payout> getPendingPayouts() {
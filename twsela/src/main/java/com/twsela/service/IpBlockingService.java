@@ -10,6 +10,7 @@ import com.twsela.web.exception.ResourceNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
@@ -25,18 +26,42 @@ import java.util.Optional;
 public class IpBlockingService {
 
     private static final Logger log = LoggerFactory.getLogger(IpBlockingService.class);
-    private static final int AUTO_BLOCK_DURATION_HOURS = 24;
+    private static final int MANUAL_BLOCK_DURATION_HOURS = 24;
 
     private final IpBlacklistRepository ipBlacklistRepository;
     private final UserRepository userRepository;
     private final SecurityEventService securityEventService;
+    private final BruteForceDetector bruteForceDetector;
 
     public IpBlockingService(IpBlacklistRepository ipBlacklistRepository,
                               UserRepository userRepository,
-                              SecurityEventService securityEventService) {
+                              SecurityEventService securityEventService,
+                              BruteForceDetector bruteForceDetector) {
         this.ipBlacklistRepository = ipBlacklistRepository;
         this.userRepository = userRepository;
         this.securityEventService = securityEventService;
+        this.bruteForceDetector = bruteForceDetector;
+    }
+
+    /**
+     * تسجيل محاولة دخول فاشلة في الذاكرة — يُحظر العنوان تلقائياً عند تجاوز الحد.
+     * <p>
+     * Only the failure that trips the detector reaches the database. The address must be the
+     * connection's peer as resolved by the servlet container ({@code request.getRemoteAddr()}),
+     * never a client-supplied header, or anyone could get a victim's address blocked.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public BruteForceDetector.Verdict recordLoginFailure(String ipAddress, String account) {
+        BruteForceDetector.Verdict verdict = bruteForceDetector.recordFailure(ipAddress, account);
+        if (verdict.ipTripped()) {
+            try {
+                autoBlockBruteForce(ipAddress, verdict.ipBlockedUntil());
+            } catch (RuntimeException e) {
+                // The detector still answers isBlocked() for this node until the block ends
+                log.error("Auto-block of IP {} failed: {}", ipAddress, e.getMessage(), e);
+            }
+        }
+        return verdict;
     }
 
     /**
@@ -57,7 +82,7 @@ public class IpBlockingService {
         entry.setBlockedBy(blocker);
         entry.setPermanent(permanent);
         if (!permanent) {
-            entry.setExpiresAt(Instant.now().plus(AUTO_BLOCK_DURATION_HOURS, ChronoUnit.HOURS));
+            entry.setExpiresAt(Instant.now().plus(MANUAL_BLOCK_DURATION_HOURS, ChronoUnit.HOURS));
         }
 
         IpBlacklist saved = ipBlacklistRepository.save(entry);
@@ -70,26 +95,38 @@ public class IpBlockingService {
     }
 
     /**
-     * حظر تلقائي عند اكتشاف brute force.
+     * حظر تلقائي عند اكتشاف brute force — لأقصر مدة حظر.
      */
     public IpBlacklist autoBlockBruteForce(String ipAddress) {
-        Optional<IpBlacklist> existing = ipBlacklistRepository.findByIpAddress(ipAddress);
-        if (existing.isPresent()) {
-            return existing.get();
+        return autoBlockBruteForce(ipAddress, Instant.now().plusMillis(bruteForceDetector.blockDuration(0)));
+    }
+
+    /**
+     * حظر تلقائي عند اكتشاف brute force حتى الوقت الذي حدده الكاشف.
+     * <p>
+     * A lapsed automatic block is renewed rather than left expired; permanent blocks are kept as they are.
+     */
+    public IpBlacklist autoBlockBruteForce(String ipAddress, Instant expiresAt) {
+        IpBlacklist entry = ipBlacklistRepository.findByIpAddress(ipAddress).orElse(null);
+        if (entry != null && (entry.isPermanent()
+                || entry.getExpiresAt() != null && !entry.getExpiresAt().isBefore(expiresAt))) {
+            return entry;
         }
 
-        IpBlacklist entry = new IpBlacklist();
-        entry.setIpAddress(ipAddress);
-        entry.setReason("حظر تلقائي — محاولات brute force");
-        entry.setPermanent(false);
-        entry.setExpiresAt(Instant.now().plus(AUTO_BLOCK_DURATION_HOURS, ChronoUnit.HOURS));
+        if (entry == null) {
+            entry = new IpBlacklist();
+            entry.setIpAddress(ipAddress);
+            entry.setReason("حظر تلقائي — محاولات brute force");
+            entry.setPermanent(false);
+        }
+        entry.setExpiresAt(expiresAt);
 
         IpBlacklist saved = ipBlacklistRepository.save(entry);
 
         securityEventService.recordEvent(null, SecurityEvent.EventType.BRUTE_FORCE_DETECTED,
                 ipAddress, null, "Auto-blocked for brute force", SecurityEvent.Severity.CRITICAL);
 
-        log.warn("IP {} auto-blocked for brute force", ipAddress);
+        log.warn("IP {} auto-blocked for brute force until {}", ipAddress, expiresAt);
         return saved;
     }
 
@@ -98,6 +135,7 @@ public class IpBlockingService {
      */
     @Transactional(readOnly = true)
     public boolean isBlocked(String ipAddress) {
+        if (bruteForceDetector.isBlocked(ipAddress)) return true;
         Optional<IpBlacklist> entry = ipBlacklistRepository.findByIpAddress(ipAddress);
         if (entry.isEmpty()) return false;
         IpBlacklist blacklist = entry.get();
@@ -112,6 +150,7 @@ public class IpBlockingService {
         IpBlacklist entry = ipBlacklistRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("IpBlacklist", "id", id));
         ipBlacklistRepository.delete(entry);
+        bruteForceDetector.clearIp(entry.getIpAddress());
         log.info("IP {} unblocked", entry.getIpAddress());
     }
 
@@ -81,7 +81,7 @@ public class LiveTrackingService {
         session.setTotalDistanceKm(session.getTotalDistanceKm() + distance);
 
         // Calculate ETA
-        Instant eta = etaCalculationService.calculateETA(session, speed);
+        Instant eta = etaCalculationService.calculateETA(session);
         session.setEstimatedArrival(eta);
         trackingSessionRepository.save(session);
 
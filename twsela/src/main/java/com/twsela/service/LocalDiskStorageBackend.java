@@ -0,0 +1,115 @@
+package com.twsela.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+
+/**
+ * {@link StorageBackend} on the local file system under {@code app.storage.local.root}.
+ * <p>
+ * Uploads are staged in a {@code .staging} directory inside the root so the commit is a
+ * rename on the same file system. Commits that must not replace an existing object use a
+ * hard link, which fails atomically if the key is already taken. Objects are read as
+ * channel-backed {@link FileSystemResource}s or handed to the container by path.
+ */
+@Service
+@ConditionalOnProperty(name = "app.storage.backend", havingValue = "local", matchIfMissing = true)
+public class LocalDiskStorageBackend implements StorageBackend {
+
+    static final String STAGING_DIR = ".staging";
+
+    private final Path root;
+
+    @Autowired
+    public LocalDiskStorageBackend(@Value("${app.storage.local.root:${app.upload.dir:uploads/}}") String root) {
+        this(Paths.get(root));
+    }
+
+    LocalDiskStorageBackend(Path root) {
+        this.root = root.toAbsolutePath().normalize();
+    }
+
+    @Override
+    public Path createStagingFile() throws IOException {
+        Path staging = Files.createDirectories(root.resolve(STAGING_DIR));
+        return Files.createTempFile(staging, "upload-", ".tmp");
+    }
+
+    @Override
+    public boolean commit(Path staged, String key, boolean replace) throws IOException {
+        Path target = resolve(key);
+        Files.createDirectories(target.getParent());
+        try {
+            if (replace) {
+                Files.move(staged, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            }
+            try {
+                Files.createLink(target, staged);
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                return false;
+            } catch (UnsupportedOperationException e) {
+                // No hard links on this file system: fall back to check-then-rename
+                if (Files.exists(target)) {
+                    return false;
+                }
+                Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            }
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    @Override
+    public Optional<ObjectInfo> stat(String key) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(resolve(key), BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return Optional.empty();
+            }
+            return Optional.of(new ObjectInfo(key, attributes.size(), attributes.lastModifiedTime().toInstant()));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public Resource open(String key) {
+        return new FileSystemResource(resolve(key));
+    }
+
+    @Override
+    public Optional<Path> localPath(String key) {
+        return Optional.of(resolve(key));
+    }
+
+    @Override
+    public boolean delete(String key) throws IOException {
+        return Files.deleteIfExists(resolve(key));
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    private Path resolve(String key) {
+        Path path = root.resolve(key).normalize();
+        if (!path.startsWith(root) || path.equals(root) || path.startsWith(root.resolve(STAGING_DIR))) {
+            throw new SecurityException("مسار ملف غير صالح");
+        }
+        return path;
+    }
+}
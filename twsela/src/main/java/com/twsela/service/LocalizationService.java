@@ -1,10 +1,8 @@
 package com.twsela.service;
 
-import com.twsela.domain.Country;
+import com.twsela.service.ReferenceData.CountryInfo;
 import com.twsela.web.exception.ResourceNotFoundException;
-import com.twsela.repository.CountryRepository;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.text.NumberFormat;
@@ -13,43 +11,43 @@ import java.util.Locale;
 
 /**
  * Localization utilities — formats addresses, phone numbers,
- * and currency values per country configuration.
+ * and currency values per country configuration, read from the in-memory
+ * {@link ReferenceDataCache}.
  */
 @Service
-@Transactional(readOnly = true)
 public class LocalizationService {
 
-    private final CountryRepository countryRepository;
+    private final ReferenceDataCache referenceData;
 
-    public LocalizationService(CountryRepository countryRepository) {
-        this.countryRepository = countryRepository;
+    public LocalizationService(ReferenceDataCache referenceData) {
+        this.referenceData = referenceData;
     }
 
     /**
      * Format phone number with country prefix.
      */
     public String formatPhone(String countryCode, String localNumber) {
-        Country country = findCountry(countryCode);
+        CountryInfo country = findCountry(countryCode);
         String cleaned = localNumber.replaceAll("[^0-9]", "");
         if (cleaned.startsWith("0")) {
             cleaned = cleaned.substring(1);
         }
-        return country.getPhonePrefix() + cleaned;
+        return country.phonePrefix() + cleaned;
     }
 
     /**
      * Format a monetary amount according to the country's currency.
      */
     public String formatCurrency(String countryCode, BigDecimal amount) {
-        Country country = findCountry(countryCode);
+        CountryInfo country = findCountry(countryCode);
         try {
-            Currency currency = Currency.getInstance(country.getCurrencyCode());
+            Currency currency = Currency.getInstance(country.currencyCode());
             Locale locale = resolveLocale(countryCode);
             NumberFormat fmt = NumberFormat.getCurrencyInstance(locale);
             fmt.setCurrency(currency);
             return fmt.format(amount);
         } catch (Exception e) {
-            return amount.toPlainString() + " " + country.getCurrencyCode();
+            return amount.toPlainString() + " " + country.currencyCode();
         }
     }
 
@@ -59,8 +57,8 @@ public class LocalizationService {
      */
     public String formatAddress(String countryCode, String line1, String line2,
                                 String city, String state, String postalCode) {
-        Country country = findCountry(countryCode);
-        String template = country.getAddressFormat();
+        CountryInfo country = findCountry(countryCode);
+        String template = country.addressFormat();
         if (template == null || template.isBlank()) {
             template = "{line1}, {line2}, {city}, {state} {postal}, {country}";
         }
@@ -70,7 +68,7 @@ public class LocalizationService {
                 .replace("{city}", nullSafe(city))
                 .replace("{state}", nullSafe(state))
                 .replace("{postal}", nullSafe(postalCode))
-                .replace("{country}", country.getNameEn())
+                .replace("{country}", country.nameEn())
                 .replaceAll(",\\s*,", ",")
                 .replaceAll("^[,\\s]+|[,\\s]+$", "");
     }
@@ -79,11 +77,11 @@ public class LocalizationService {
      * Get the timezone string for a country.
      */
     public String getTimeZone(String countryCode) {
-        return findCountry(countryCode).getTimeZone();
+        return findCountry(countryCode).timeZone();
     }
 
-    private Country findCountry(String countryCode) {
-        return countryRepository.findByCode(countryCode.toUpperCase())
+    private CountryInfo findCountry(String countryCode) {
+        return referenceData.snapshot().country(countryCode)
                 .orElseThrow(() -> new ResourceNotFoundException("الدولة غير موجودة: " + countryCode));
     }
 
@@ -0,0 +1,50 @@
+package com.twsela.service;
+
+import com.twsela.domain.NotificationChannel;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded worker pools, one per notification channel, used by batch dispatch.
+ * A slow provider (e.g. WhatsApp) only saturates its own pool; when a pool's
+ * queue is full the submitting thread runs the task itself, which throttles
+ * the producer instead of growing memory without bound.
+ */
+@Component
+public class NotificationChannelExecutors {
+
+    private final Map<NotificationChannel, ThreadPoolExecutor> pools = new EnumMap<>(NotificationChannel.class);
+
+    public NotificationChannelExecutors(
+            @Value("${app.notifications.batch.workers-per-channel:4}") int workersPerChannel,
+            @Value("${app.notifications.batch.queue-capacity:256}") int queueCapacity) {
+        for (NotificationChannel channel : NotificationChannel.values()) {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                    workersPerChannel, workersPerChannel, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity),
+                    new CustomizableThreadFactory("notify-" + channel.name().toLowerCase(Locale.ROOT) + "-"),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            pools.put(channel, pool);
+        }
+    }
+
+    public Executor forChannel(NotificationChannel channel) {
+        return pools.get(channel);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pools.values().forEach(ThreadPoolExecutor::shutdown);
+    }
+}
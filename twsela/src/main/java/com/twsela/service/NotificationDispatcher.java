@@ -9,12 +9,14 @@ import com.twsela.repository.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.time.LocalTime;
 import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Main notification dispatcher. Resolves user preferences, renders templates,
@@ -25,6 +27,18 @@ import java.util.*;
 public class NotificationDispatcher {
 
     private static final Logger log = LoggerFactory.getLogger(NotificationDispatcher.class);
+    private static final ZoneId QUIET_HOURS_ZONE = ZoneId.of("Africa/Cairo");
+    private static final String DEFAULT_LOCALE = "ar";
+    /** Recipients whose users and preferences are prefetched together. */
+    private static final int BATCH_CHUNK_SIZE = 1000;
+    /** Recipients handed to a channel worker per task. */
+    private static final int SEND_SLICE_SIZE = 250;
+
+    /**
+     * Outcome of {@link #dispatchBatch}: {@code sent} and {@code failed} count
+     * delivery log entries (one per recipient and channel).
+     */
+    public record BatchDispatchResult(int recipients, int skipped, int sent, int failed) {}
 
     private final NotificationPreferenceRepository preferenceRepository;
     private final NotificationDeliveryLogRepository deliveryLogRepository;
@@ -34,6 +48,7 @@ public class NotificationDispatcher {
     private final EmailNotificationService emailService;
     private final PushNotificationService pushService;
     private final WhatsAppNotificationService whatsAppService;
+    private final NotificationChannelExecutors channelExecutors;
 
     public NotificationDispatcher(NotificationPreferenceRepository preferenceRepository,
                                    NotificationDeliveryLogRepository deliveryLogRepository,
@@ -42,7 +57,8 @@ public class NotificationDispatcher {
                                    NotificationService notificationService,
                                    EmailNotificationService emailService,
                                    PushNotificationService pushService,
-                                   WhatsAppNotificationService whatsAppService) {
+                                   WhatsAppNotificationService whatsAppService,
+                                   NotificationChannelExecutors channelExecutors) {
         this.preferenceRepository = preferenceRepository;
         this.deliveryLogRepository = deliveryLogRepository;
         this.userRepository = userRepository;
@@ -51,6 +67,7 @@ public class NotificationDispatcher {
         this.emailService = emailService;
         this.pushService = pushService;
         this.whatsAppService = whatsAppService;
+        this.channelExecutors = channelExecutors;
     }
 
     /**
@@ -71,14 +88,14 @@ public class NotificationDispatcher {
         }
 
         // Check quiet hours
-        if (pref != null && isWithinQuietHours(pref)) {
+        if (pref != null && isWithinQuietHours(pref, LocalTime.now(QUIET_HOURS_ZONE))) {
             log.debug("Within quiet hours for user {}, skipping dispatch", userId);
             return;
         }
 
         // Determine channels
         List<NotificationChannel> channels = resolveChannels(pref, eventType);
-        String locale = "ar"; // Default Arabic
+        String locale = DEFAULT_LOCALE;
 
         for (NotificationChannel channel : channels) {
             try {
@@ -90,6 +107,87 @@ public class NotificationDispatcher {
         }
     }
 
+    /**
+     * Dispatch one notification to many users — campaigns and bulk status updates.
+     * <p>
+     * Users and preferences are prefetched per chunk instead of per user, each
+     * channel's template is rendered once for the whole run, recipients are grouped
+     * by channel and sent in slices on bounded per-channel worker pools, and the
+     * delivery logs of each chunk are written in JDBC batches. Runs outside a
+     * surrounding transaction so a large blast never becomes one huge transaction.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BatchDispatchResult dispatchBatch(Collection<Long> userIds, NotificationType eventType,
+                                             Map<String, String> templateVars) {
+        List<Long> ids = new ArrayList<>(new LinkedHashSet<>(userIds));
+        Map<NotificationChannel, String[]> renderedByChannel = new EnumMap<>(NotificationChannel.class);
+        Instant now = Instant.now();
+        LocalTime localNow = LocalTime.now(QUIET_HOURS_ZONE);
+        long started = System.nanoTime();
+        int skipped = 0;
+        int sent = 0;
+        int failed = 0;
+
+        for (int from = 0; from < ids.size(); from += BATCH_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + BATCH_CHUNK_SIZE, ids.size()));
+            List<User> users = userRepository.findAllById(chunk);
+            skipped += chunk.size() - users.size();
+
+            Map<Long, NotificationPreference> prefs = new HashMap<>();
+            for (NotificationPreference pref : preferenceRepository.findByUserIdIn(chunk)) {
+                prefs.put(pref.getUser().getId(), pref);
+            }
+
+            Map<NotificationChannel, List<User>> byChannel = new EnumMap<>(NotificationChannel.class);
+            for (User user : users) {
+                NotificationPreference pref = prefs.get(user.getId());
+                if (pref != null && ((pref.getPausedUntil() != null && now.isBefore(pref.getPausedUntil()))
+                        || isWithinQuietHours(pref, localNow))) {
+                    skipped++;
+                    continue;
+                }
+                for (NotificationChannel channel : resolveChannels(pref, eventType)) {
+                    byChannel.computeIfAbsent(channel, c -> new ArrayList<>()).add(user);
+                }
+            }
+
+            List<CompletableFuture<List<NotificationDeliveryLog>>> pending = new ArrayList<>();
+            for (Map.Entry<NotificationChannel, List<User>> entry : byChannel.entrySet()) {
+                NotificationChannel channel = entry.getKey();
+                String[] rendered = renderedByChannel.computeIfAbsent(channel,
+                        c -> templateEngine.renderForChannel(eventType, c, DEFAULT_LOCALE, templateVars));
+                if (rendered[1] == null || rendered[1].isBlank()) {
+                    log.warn("No template content for event={} channel={}", eventType, channel);
+                    continue;
+                }
+                List<User> recipients = entry.getValue();
+                for (int i = 0; i < recipients.size(); i += SEND_SLICE_SIZE) {
+                    List<User> slice = recipients.subList(i, Math.min(i + SEND_SLICE_SIZE, recipients.size()));
+                    pending.add(CompletableFuture.supplyAsync(
+                            () -> sendSlice(slice, eventType, channel, rendered[0], rendered[1], templateVars),
+                            channelExecutors.forChannel(channel)));
+                }
+            }
+
+            List<NotificationDeliveryLog> logs = new ArrayList<>();
+            for (CompletableFuture<List<NotificationDeliveryLog>> future : pending) {
+                logs.addAll(future.join());
+            }
+            for (NotificationDeliveryLog entry : logs) {
+                if (entry.getStatus() == DeliveryStatus.FAILED) {
+                    failed++;
+                } else {
+                    sent++;
+                }
+            }
+            deliveryLogRepository.insertBatch(logs);
+        }
+
+        log.info("Batch dispatch of {} to {} users: sent={}, failed={}, skipped={} in {} ms",
+                eventType, ids.size(), sent, failed, skipped, (System.nanoTime() - started) / 1_000_000);
+        return new BatchDispatchResult(ids.size(), skipped, sent, failed);
+    }
+
     private void dispatchToChannel(User user, NotificationType eventType,
                                     NotificationChannel channel, String locale,
                                     Map<String, String> templateVars) {
@@ -102,6 +200,67 @@ public class NotificationDispatcher {
             return;
         }
 
+        NotificationDeliveryLog logEntry = deliverToRecipient(user, eventType, channel, subject, body, templateVars);
+        deliveryLogRepository.save(logEntry);
+    }
+
+    /**
+     * Send one slice of recipients on one channel. In-app and push use the bulk
+     * service calls; other channels go recipient by recipient. Never throws —
+     * failures become FAILED log entries.
+     */
+    private List<NotificationDeliveryLog> sendSlice(List<User> users, NotificationType eventType,
+                                                    NotificationChannel channel, String subject, String body,
+                                                    Map<String, String> templateVars) {
+        String title = subject != null ? subject : eventType.name();
+        List<NotificationDeliveryLog> logs = new ArrayList<>(users.size());
+        try {
+            switch (channel) {
+                case IN_APP -> {
+                    List<Long> ids = users.stream().map(User::getId).toList();
+                    for (Notification inApp : notificationService.sendBulk(ids, eventType, title, body)) {
+                        NotificationDeliveryLog entry = newLog(channel, "user:" + inApp.getUserId(), DeliveryStatus.DELIVERED);
+                        entry.setNotificationId(inApp.getId());
+                        logs.add(entry);
+                    }
+                }
+                case PUSH -> {
+                    List<Long> ids = users.stream().map(User::getId).toList();
+                    Map<Long, Integer> sentPerUser = pushService.sendPushBulk(ids, title, body, templateVars);
+                    for (Long userId : ids) {
+                        boolean delivered = sentPerUser.getOrDefault(userId, 0) > 0;
+                        NotificationDeliveryLog entry = newLog(channel, "push:" + userId,
+                                delivered ? DeliveryStatus.SENT : DeliveryStatus.FAILED);
+                        if (!delivered) {
+                            entry.setErrorMessage("No active device tokens");
+                        }
+                        logs.add(entry);
+                    }
+                }
+                default -> {
+                    for (User user : users) {
+                        try {
+                            logs.add(deliverToRecipient(user, eventType, channel, subject, body, templateVars));
+                        } catch (Exception e) {
+                            logs.add(failedLog(channel, "user:" + user.getId(), e));
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.error("Batch send of {} on {} failed for {} recipients: {}",
+                    eventType, channel, users.size(), e.getMessage());
+            logs.clear();
+            for (User user : users) {
+                logs.add(failedLog(channel, "user:" + user.getId(), e));
+            }
+        }
+        return logs;
+    }
+
+    private NotificationDeliveryLog deliverToRecipient(User user, NotificationType eventType,
+                                                       NotificationChannel channel, String subject, String body,
+                                                       Map<String, String> templateVars) {
         NotificationDeliveryLog logEntry = new NotificationDeliveryLog();
         logEntry.setChannel(channel);
         logEntry.setStatus(DeliveryStatus.PENDING);
@@ -165,7 +324,23 @@ public class NotificationDispatcher {
         }
 
         logEntry.setSentAt(Instant.now());
-        deliveryLogRepository.save(logEntry);
+        return logEntry;
+    }
+
+    private static NotificationDeliveryLog newLog(NotificationChannel channel, String recipient, DeliveryStatus status) {
+        NotificationDeliveryLog entry = new NotificationDeliveryLog();
+        entry.setChannel(channel);
+        entry.setRecipient(recipient);
+        entry.setStatus(status);
+        entry.setSentAt(Instant.now());
+        return entry;
+    }
+
+    private static NotificationDeliveryLog failedLog(NotificationChannel channel, String recipient, Exception e) {
+        NotificationDeliveryLog entry = newLog(channel, recipient, DeliveryStatus.FAILED);
+        String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        entry.setErrorMessage(message.length() > 500 ? message.substring(0, 500) : message);
+        return entry;
     }
 
     /**
@@ -212,11 +387,10 @@ public class NotificationDispatcher {
         }
     }
 
-    private boolean isWithinQuietHours(NotificationPreference pref) {
+    private boolean isWithinQuietHours(NotificationPreference pref, LocalTime now) {
         if (pref.getQuietHoursStart() == null || pref.getQuietHoursEnd() == null) {
             return false;
         }
-        LocalTime now = LocalTime.now(ZoneId.of("Africa/Cairo"));
         LocalTime start = pref.getQuietHoursStart();
         LocalTime end = pref.getQuietHoursEnd();
 
@@ -4,88 +4,340 @@ import com.twsela.domain.NotificationChannel;
 import com.twsela.domain.NotificationDeliveryLog;
 import com.twsela.domain.NotificationDeliveryLog.DeliveryStatus;
 import com.twsela.repository.NotificationDeliveryLogRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Retries failed notification deliveries with exponential backoff.
- * Runs every 5 minutes via @Scheduled.
+ * Retries failed notification deliveries with jittered exponential backoff.
+ * <p>
+ * FAILED logs whose {@code nextRetryAt} falls within {@code app.notifications.retry.horizon-seconds}
+ * are loaded earliest first, at most {@code capacity} at a time, into one {@link DelayQueue} per
+ * channel, so a retry fires when its backoff ends rather than on the next poll. Each channel
+ * has its own {@code workers-per-channel} threads, so a slow provider only delays its own
+ * retries. Outcomes are written back in small JDBC batches; a failed retry whose next attempt
+ * falls within the horizon is re-queued in memory straight away.
  */
 @Service
 public class NotificationRetryService {
 
     private static final Logger log = LoggerFactory.getLogger(NotificationRetryService.class);
-    private static final int MAX_RETRIES = 3;
+
+    /** One due retry; ordered by due time, then id. */
+    record RetryTask(Long id, NotificationChannel channel, String recipient, int retryCount,
+                     Instant dueAt) implements Delayed {
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Duration.between(Instant.now(), dueAt));
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            if (other instanceof RetryTask task) {
+                int byDue = dueAt.compareTo(task.dueAt);
+                return byDue != 0 ? byDue : id.compareTo(task.id);
+            }
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+
+    /** The row state to write back; {@code requeued} keeps the id scheduled after the write. */
+    private record Outcome(NotificationDeliveryLog state, boolean requeued) {}
 
     private final NotificationDeliveryLogRepository deliveryLogRepository;
     private final EmailNotificationService emailService;
     private final PushNotificationService pushService;
     private final WhatsAppNotificationService whatsAppService;
+    private final int maxRetries;
+    private final List<Duration> backoff;
+    private final double jitter;
+    private final Duration horizon;
+    private final int capacity;
+    private final int batchSize;
+    private final int workersPerChannel;
+    private final long flushIntervalMs;
+
+    private final Map<NotificationChannel, DelayQueue<RetryTask>> queues = new EnumMap<>(NotificationChannel.class);
+    private final Set<Long> scheduled = ConcurrentHashMap.newKeySet();
+    private final Queue<Outcome> outcomes = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingOutcomes = new AtomicInteger();
+    private final ExecutorService workers;
+    private final ScheduledExecutorService flusher;
+    private volatile boolean running;
+
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter bounced;
 
     public NotificationRetryService(NotificationDeliveryLogRepository deliveryLogRepository,
-                                     EmailNotificationService emailService,
-                                     PushNotificationService pushService,
-                                     WhatsAppNotificationService whatsAppService) {
+                                    EmailNotificationService emailService,
+                                    PushNotificationService pushService,
+                                    WhatsAppNotificationService whatsAppService,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${app.notifications.retry.max-retries:3}") int maxRetries,
+                                    @Value("${app.notifications.retry.backoff-minutes:5,15,60}") String backoffMinutes,
+                                    @Value("${app.notifications.retry.jitter:0.2}") double jitter,
+                                    @Value("${app.notifications.retry.horizon-seconds:120}") long horizonSeconds,
+                                    @Value("${app.notifications.retry.capacity:10000}") int capacity,
+                                    @Value("${app.notifications.retry.batch-size:50}") int batchSize,
+                                    @Value("${app.notifications.retry.workers-per-channel:2}") int workersPerChannel,
+                                    @Value("${app.notifications.retry.flush-interval-ms:1000}") long flushIntervalMs) {
         this.deliveryLogRepository = deliveryLogRepository;
         this.emailService = emailService;
         this.pushService = pushService;
         this.whatsAppService = whatsAppService;
+        this.maxRetries = maxRetries;
+        this.backoff = parseBackoff(backoffMinutes);
+        this.jitter = Math.min(Math.max(jitter, 0), 1);
+        this.horizon = Duration.ofSeconds(Math.max(1, horizonSeconds));
+        this.capacity = Math.max(1, capacity);
+        this.batchSize = Math.max(1, batchSize);
+        this.workersPerChannel = Math.max(1, workersPerChannel);
+        this.flushIntervalMs = Math.max(1, flushIntervalMs);
+        for (NotificationChannel channel : NotificationChannel.values()) {
+            queues.put(channel, new DelayQueue<>());
+        }
+        this.workers = Executors.newFixedThreadPool(NotificationChannel.values().length * this.workersPerChannel,
+                new CustomizableThreadFactory("notify-retry-"));
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("notify-retry-flush-"));
+
+        Gauge.builder("twsela.notifications.retry.scheduled", scheduled, Set::size)
+                .description("Failed deliveries held in the retry delay queues")
+                .register(meterRegistry);
+        this.sent = outcomeCounter(meterRegistry, "sent");
+        this.failed = outcomeCounter(meterRegistry, "failed");
+        this.bounced = outcomeCounter(meterRegistry, "bounced");
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        for (NotificationChannel channel : NotificationChannel.values()) {
+            for (int i = 0; i < workersPerChannel; i++) {
+                workers.execute(() -> work(channel));
+            }
+        }
+        flusher.scheduleWithFixedDelay(this::safeFlush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
     }
 
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workers.shutdown();
+        flusher.shutdown();
+        try {
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        safeFlush();
+    }
+
+    /**
+     * Load FAILED logs due within the horizon into the delay queues.
+     * Polls every {@code app.notifications.retry.load-interval-ms}; retries themselves fire on time.
+     */
+    @Scheduled(fixedDelayString = "${app.notifications.retry.load-interval-ms:30000}")
+    public void loadDueRetries() {
+        try {
+            int loaded = loadDue(Instant.now());
+            if (loaded > 0) {
+                log.info("Scheduled {} notification retries ({} held)", loaded, scheduled.size());
+            }
+        } catch (RuntimeException e) {
+            log.error("Loading notification retries failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
     /**
-     * Retry failed notifications that are due for retry.
-     * Scheduled to run every 5 minutes.
+     * Rows already held come back first (they are the earliest due), so a page of
+     * {@code capacity} rows always reaches the ones not yet held.
      */
-    @Scheduled(fixedRate = 300000) // 5 minutes
-    @Transactional
-    public void retryFailedNotifications() {
-        List<NotificationDeliveryLog> failedLogs =
-                deliveryLogRepository.findByStatusAndNextRetryAtBefore(DeliveryStatus.FAILED, Instant.now());
+    int loadDue(Instant now) {
+        int free = capacity - scheduled.size();
+        if (free <= 0) {
+            return 0;
+        }
+        List<NotificationDeliveryLog> due = deliveryLogRepository.findDueForRetry(
+                DeliveryStatus.FAILED, now.plus(horizon), PageRequest.of(0, capacity));
+        int added = 0;
+        for (NotificationDeliveryLog entry : due) {
+            if (added >= free) {
+                break;
+            }
+            if (scheduled.add(entry.getId())) {
+                queues.get(entry.getChannel()).add(new RetryTask(entry.getId(), entry.getChannel(),
+                        entry.getRecipient(), entry.getRetryCount(), entry.getNextRetryAt()));
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /** Retries held for {@code channel}, due or not. */
+    int queued(NotificationChannel channel) {
+        return queues.get(channel).size();
+    }
 
-        if (failedLogs.isEmpty()) {
+    void process(RetryTask task) {
+        NotificationDeliveryLog state = new NotificationDeliveryLog();
+        state.setId(task.id());
+        state.setChannel(task.channel());
+        state.setRecipient(task.recipient());
+        state.setRetryCount(task.retryCount());
+
+        if (task.retryCount() >= maxRetries) {
+            state.setStatus(DeliveryStatus.BOUNCED);
+            state.setErrorMessage("Max retries exceeded");
+            state.setNextRetryAt(null);
+            bounced.increment();
+            complete(new Outcome(state, false));
             return;
         }
 
-        log.info("Retrying {} failed notifications", failedLogs.size());
+        boolean success;
+        try {
+            success = retryDelivery(task.channel(), task.recipient());
+        } catch (Exception e) {
+            success = false;
+            String message = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            state.setErrorMessage(message.length() > 500 ? message.substring(0, 500) : message);
+        }
+
+        Instant now = Instant.now();
+        if (success) {
+            state.setStatus(DeliveryStatus.SENT);
+            state.setSentAt(now);
+            state.setNextRetryAt(null);
+            sent.increment();
+            complete(new Outcome(state, false));
+            return;
+        }
 
-        for (NotificationDeliveryLog logEntry : failedLogs) {
-            if (logEntry.getRetryCount() >= MAX_RETRIES) {
-                logEntry.setStatus(DeliveryStatus.BOUNCED);
-                logEntry.setErrorMessage("Max retries exceeded");
-                logEntry.setNextRetryAt(null);
-                deliveryLogRepository.save(logEntry);
-                continue;
+        state.setStatus(DeliveryStatus.FAILED);
+        state.setRetryCount(task.retryCount() + 1);
+        state.setNextRetryAt(now.plus(nextDelay(state.getRetryCount())));
+        failed.increment();
+        boolean requeue = !state.getNextRetryAt().isAfter(now.plus(horizon));
+        if (requeue) {
+            queues.get(task.channel()).add(new RetryTask(task.id(), task.channel(), task.recipient(),
+                    state.getRetryCount(), state.getNextRetryAt()));
+        }
+        complete(new Outcome(state, requeue));
+    }
+
+    /** Write buffered outcomes back, {@code batch-size} rows per transaction. */
+    synchronized int flushOutcomes() {
+        int written = 0;
+        List<Outcome> batch;
+        while (!(batch = drain()).isEmpty()) {
+            List<NotificationDeliveryLog> states = new ArrayList<>(batch.size());
+            for (Outcome outcome : batch) {
+                states.add(outcome.state());
             }
+            try {
+                deliveryLogRepository.updateRetryStates(states);
+            } catch (RuntimeException e) {
+                // Keep the outcomes for the next flush; the rows are still FAILED and held
+                outcomes.addAll(batch);
+                pendingOutcomes.addAndGet(batch.size());
+                log.error("Writing {} notification retry outcomes failed: {}", batch.size(), e.getMessage());
+                return written;
+            }
+            for (Outcome outcome : batch) {
+                if (!outcome.requeued()) {
+                    scheduled.remove(outcome.state().getId());
+                }
+            }
+            written += batch.size();
+        }
+        return written;
+    }
 
+    /**
+     * Backoff before retry number {@code retryCount}, with up to {@code jitter} of it added or
+     * removed so retries of one outage do not land together.
+     */
+    Duration nextDelay(int retryCount) {
+        Duration base = backoff.get(Math.min(Math.max(retryCount, 1), backoff.size()) - 1);
+        double factor = 1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return Duration.ofMillis(Math.round(base.toMillis() * factor));
+    }
+
+    private void work(NotificationChannel channel) {
+        DelayQueue<RetryTask> queue = queues.get(channel);
+        while (running) {
             try {
-                boolean success = retryDelivery(logEntry);
-                if (success) {
-                    logEntry.setStatus(DeliveryStatus.SENT);
-                    logEntry.setSentAt(Instant.now());
-                    logEntry.setNextRetryAt(null);
-                } else {
-                    logEntry.setRetryCount(logEntry.getRetryCount() + 1);
-                    logEntry.setNextRetryAt(calculateNextRetry(logEntry.getRetryCount()));
+                RetryTask task = queue.poll(1, TimeUnit.SECONDS);
+                if (task != null) {
+                    process(task);
                 }
-            } catch (Exception e) {
-                logEntry.setRetryCount(logEntry.getRetryCount() + 1);
-                logEntry.setErrorMessage(e.getMessage());
-                logEntry.setNextRetryAt(calculateNextRetry(logEntry.getRetryCount()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Notification retry on {} failed: {}", channel, e.getMessage(), e);
             }
-            deliveryLogRepository.save(logEntry);
         }
     }
 
-    private boolean retryDelivery(NotificationDeliveryLog logEntry) {
-        NotificationChannel channel = logEntry.getChannel();
-        String recipient = logEntry.getRecipient();
+    private void complete(Outcome outcome) {
+        outcomes.add(outcome);
+        if (pendingOutcomes.incrementAndGet() >= batchSize && running) {
+            flusher.execute(this::safeFlush);
+        }
+    }
+
+    private List<Outcome> drain() {
+        List<Outcome> batch = new ArrayList<>();
+        Outcome outcome;
+        while (batch.size() < batchSize && (outcome = outcomes.poll()) != null) {
+            pendingOutcomes.decrementAndGet();
+            batch.add(outcome);
+        }
+        return batch;
+    }
+
+    private void safeFlush() {
+        try {
+            flushOutcomes();
+        } catch (RuntimeException e) {
+            log.error("Notification retry flush failed: {}", e.getMessage(), e);
+        }
+    }
 
+    private boolean retryDelivery(NotificationChannel channel, String recipient) {
         switch (channel) {
             case EMAIL:
                 String emailResult = emailService.sendEmail(recipient, "Twsela Notification", "Retry notification");
@@ -112,17 +364,23 @@ public class NotificationRetryService {
         }
     }
 
-    /**
-     * Calculate next retry time with exponential backoff.
-     * Retry 1: +5 min, Retry 2: +15 min, Retry 3: +60 min
-     */
-    private Instant calculateNextRetry(int retryCount) {
-        long delayMinutes;
-        switch (retryCount) {
-            case 1: delayMinutes = 5; break;
-            case 2: delayMinutes = 15; break;
-            default: delayMinutes = 60; break;
-        }
-        return Instant.now().plusSeconds(delayMinutes * 60);
+    private static List<Duration> parseBackoff(String minutes) {
+        List<Duration> delays = new ArrayList<>();
+        for (String part : minutes.split(",")) {
+            if (!part.isBlank()) {
+                delays.add(Duration.ofMinutes(Long.parseLong(part.trim())));
+            }
+        }
+        if (delays.isEmpty()) {
+            throw new IllegalArgumentException("app.notifications.retry.backoff-minutes is empty");
+        }
+        return List.copyOf(delays);
+    }
+
+    private static Counter outcomeCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("twsela.notifications.retry")
+                .description("Notification retry attempts by outcome")
+                .tag("outcome", outcome)
+                .register(registry);
     }
 }
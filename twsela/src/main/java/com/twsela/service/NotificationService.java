@@ -13,6 +13,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -43,22 +45,7 @@ public class NotificationService {
         notification.setActionUrl(actionUrl);
         notification = notificationRepository.save(notification);
 
-        // Push via WebSocket
-        try {
-            messagingTemplate.convertAndSend(
-                "/topic/notifications/" + userId,
-                Map.of(
-                    "id", notification.getId(),
-                    "type", type.name(),
-                    "title", title,
-                    "message", message,
-                    "actionUrl", actionUrl != null ? actionUrl : "",
-                    "createdAt", notification.getCreatedAt().toString()
-                )
-            );
-        } catch (Exception e) {
-            log.warn("Failed to push WebSocket notification to user {}: {}", userId, e.getMessage());
-        }
+        pushToUser(notification);
 
         log.debug("Notification sent to user {}: {} - {}", userId, type, title);
         return notification;
@@ -72,6 +59,45 @@ public class NotificationService {
         return send(userId, type, title, message, null);
     }
 
+    /**
+     * Create the same in-app notification for many users in one transaction,
+     * then push each one over WebSocket.
+     */
+    @Transactional
+    public List<Notification> sendBulk(Collection<Long> userIds, NotificationType type, String title, String message) {
+        List<Notification> batch = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            Notification notification = new Notification(userId, type, title, message);
+            notification.setChannel(NotificationChannel.IN_APP);
+            batch.add(notification);
+        }
+        List<Notification> saved = notificationRepository.saveAll(batch);
+        for (Notification notification : saved) {
+            pushToUser(notification);
+        }
+        log.debug("Bulk notification sent to {} users: {} - {}", saved.size(), type, title);
+        return saved;
+    }
+
+    private void pushToUser(Notification notification) {
+        Long userId = notification.getUserId();
+        try {
+            messagingTemplate.convertAndSend(
+                "/topic/notifications/" + userId,
+                Map.of(
+                    "id", notification.getId(),
+                    "type", notification.getType().name(),
+                    "title", notification.getTitle(),
+                    "message", notification.getMessage(),
+                    "actionUrl", notification.getActionUrl() != null ? notification.getActionUrl() : "",
+                    "createdAt", notification.getCreatedAt().toString()
+                )
+            );
+        } catch (Exception e) {
+            log.warn("Failed to push WebSocket notification to user {}: {}", userId, e.getMessage());
+        }
+    }
+
     /**
      * Get all notifications for a user (paginated).
      */
@@ -0,0 +1,152 @@
+package com.twsela.service;
+
+import com.twsela.domain.Payout;
+import com.twsela.repository.PayoutBatchRepository.PayoutCandidate;
+import com.twsela.repository.PayoutRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * توليد دفعات جميع السائقين أو التجار لفترة.
+ * <p>
+ * One grouped query finds every payee with eligible shipments; the payees are then split
+ * into contiguous partitions (by user id) that run in parallel, one payee transaction at a
+ * time through {@link FinancialService#createPayout}. Each payout is committed on its own,
+ * so a run that fails or is cancelled part-way can simply be repeated: payouts already
+ * created are returned unchanged and no shipment is paid twice.
+ */
+@Service
+public class PayoutEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(PayoutEngine.class);
+
+    /** Outcome of a run; payouts are listed in user-id order. */
+    public record RunResult(Payout.PayoutType type, int payees, List<Payout> payouts,
+                            List<Long> failedUserIds, BigDecimal totalAmount) {}
+
+    private final FinancialService financialService;
+    private final PayoutRepository payoutRepository;
+    private final int parallelism;
+
+    public PayoutEngine(FinancialService financialService,
+                        PayoutRepository payoutRepository,
+                        @Value("${app.payouts.parallelism:4}") int parallelism) {
+        this.financialService = financialService;
+        this.payoutRepository = payoutRepository;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public RunResult generatePayouts(Payout.PayoutType type, LocalDate startDate, LocalDate endDate) {
+        return generatePayouts(type, startDate, endDate, percent -> { }, () -> false);
+    }
+
+    /**
+     * Create the period's payouts for every payee of {@code type} that has eligible shipments.
+     * A payee whose payout fails is logged and reported in {@link RunResult#failedUserIds()};
+     * the others still complete.
+     *
+     * @param progress  called with 0–100 as payees finish
+     * @param cancelled checked before each payee; finished payouts are kept
+     */
+    public RunResult generatePayouts(Payout.PayoutType type, LocalDate startDate, LocalDate endDate,
+                                     IntConsumer progress, BooleanSupplier cancelled) {
+        long started = System.nanoTime();
+        List<PayoutCandidate> candidates = payoutRepository.findPayoutCandidates(type,
+                FinancialService.payoutRate(type), FinancialService.periodCutoff(endDate), null);
+        if (candidates.isEmpty()) {
+            progress.accept(100);
+            return new RunResult(type, 0, List.of(), List.of(), BigDecimal.ZERO);
+        }
+
+        int partitions = Math.min(parallelism, candidates.size());
+        int partitionSize = (candidates.size() + partitions - 1) / partitions;
+        AtomicInteger workerIds = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(partitions, runnable -> {
+            Thread thread = new Thread(runnable, "payout-" + workerIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        List<Future<?>> partitionTasks = new ArrayList<>(partitions);
+        for (int from = 0; from < candidates.size(); from += partitionSize) {
+            List<PayoutCandidate> slice = candidates.subList(from, Math.min(from + partitionSize, candidates.size()));
+            partitionTasks.add(pool.submit(() -> {
+                for (PayoutCandidate candidate : slice) {
+                    if (cancelled.getAsBoolean() || Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    outcomes.add(createPayout(type, candidate.userId(), startDate, endDate));
+                }
+            }));
+        }
+
+        List<Payout> payouts = new ArrayList<>(candidates.size());
+        List<Long> failed = new ArrayList<>();
+        try {
+            int done = 0;
+            while (done < candidates.size()) {
+                if (cancelled.getAsBoolean()) {
+                    throw new CancellationException("Payout run cancelled after " + done + " of "
+                            + candidates.size() + " payees");
+                }
+                Outcome outcome = outcomes.poll(1, TimeUnit.SECONDS);
+                if (outcome == null) {
+                    if (partitionTasks.stream().allMatch(Future::isDone) && outcomes.isEmpty()) {
+                        throw new IllegalStateException("Payout partitions stopped after " + done + " of "
+                                + candidates.size() + " payees");
+                    }
+                    continue;
+                }
+                if (outcome.payout() != null) {
+                    payouts.add(outcome.payout());
+                } else {
+                    failed.add(outcome.userId());
+                }
+                progress.accept(++done * 100 / candidates.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Payout run interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+
+        payouts.sort(Comparator.comparing(payout -> payout.getUser().getId()));
+        failed.sort(Comparator.naturalOrder());
+        BigDecimal total = payouts.stream().map(Payout::getNetAmount).reduce(BigDecimal.ZERO, BigDecimal::add);
+        log.info("{} run for {} to {}: {} payees, {} payouts, {} failed, total={} in {} ms", type, startDate, endDate,
+                candidates.size(), payouts.size(), failed.size(), total, (System.nanoTime() - started) / 1_000_000);
+        return new RunResult(type, candidates.size(), payouts, failed, total);
+    }
+
+    private Outcome createPayout(Payout.PayoutType type, Long userId, LocalDate startDate, LocalDate endDate) {
+        try {
+            return new Outcome(userId, financialService.createPayout(type, userId, startDate, endDate));
+        } catch (RuntimeException e) {
+            log.warn("{} payout for user {} failed: {}", type, userId, e.getMessage());
+            return new Outcome(userId, null);
+        }
+    }
+
+    /** One payee's result; {@code payout} is null when it failed. */
+    private record Outcome(Long userId, Payout payout) {}
+}
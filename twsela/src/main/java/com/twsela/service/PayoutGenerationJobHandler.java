@@ -0,0 +1,70 @@
+package com.twsela.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.domain.AsyncJob;
+import com.twsela.domain.Payout;
+import com.twsela.web.exception.BusinessRuleException;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * معالج مهام PAYOUT_GENERATION — توليد دفعات جميع السائقين أو التجار لفترة.
+ * <p>
+ * Payload: {@code {"type": "COURIER_SETTLEMENT", "startDate": "2024-03-01", "endDate": "2024-03-31"}}.
+ * Payouts committed by an earlier attempt are returned as-is, so a retried job only
+ * creates the ones still missing.
+ */
+@Component
+public class PayoutGenerationJobHandler implements AsyncJobHandler {
+
+    public static final String JOB_TYPE = "PAYOUT_GENERATION";
+
+    private final PayoutEngine payoutEngine;
+    private final ObjectMapper objectMapper;
+
+    public PayoutGenerationJobHandler(PayoutEngine payoutEngine, ObjectMapper objectMapper) {
+        this.payoutEngine = payoutEngine;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getJobType() {
+        return JOB_TYPE;
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return 1;
+    }
+
+    @Override
+    public String execute(AsyncJob job, Context context) throws Exception {
+        JsonNode payload = objectMapper.readTree(job.getPayload() != null ? job.getPayload() : "{}");
+        if (!payload.hasNonNull("type") || !payload.hasNonNull("startDate") || !payload.hasNonNull("endDate")) {
+            throw new BusinessRuleException("type و startDate و endDate مطلوبة لمهمة توليد الدفعات");
+        }
+        Payout.PayoutType type = Payout.PayoutType.valueOf(payload.get("type").asText());
+        LocalDate startDate = LocalDate.parse(payload.get("startDate").asText());
+        LocalDate endDate = LocalDate.parse(payload.get("endDate").asText());
+
+        PayoutEngine.RunResult run =
+                payoutEngine.generatePayouts(type, startDate, endDate, context::reportProgress, context::isCancelled);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("type", type.name());
+        result.put("payees", run.payees());
+        result.put("payouts", run.payouts().size());
+        result.put("failedUserIds", run.failedUserIds());
+        result.put("totalAmount", run.totalAmount());
+        return objectMapper.writeValueAsString(result);
+    }
+
+    public static String payloadFor(Payout.PayoutType type, LocalDate startDate, LocalDate endDate) {
+        return "{\"type\":\"" + type.name() + "\",\"startDate\":\"" + startDate
+                + "\",\"endDate\":\"" + endDate + "\"}";
+    }
+}
@@ -1,47 +1,177 @@
 package com.twsela.service;
 
+import com.twsela.domain.User;
+import com.twsela.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * خدمة حالة الاتصال — تتبع المستخدمين المتصلين عبر WebSocket.
+ * <p>
+ * A user is online while heartbeats keep arriving: every connect or heartbeat moves the
+ * user's last-seen time, and a {@link PresenceTimerWheel} expires users not heard from
+ * for {@code app.presence.ttl-seconds}, so a socket that died without a disconnect frame
+ * goes offline on its own.
+ * <p>
+ * With {@code app.presence.store=redis} the registry is shared by every node through one
+ * Redis sorted set scored by last-seen time. Heartbeats are written through at most once
+ * a third of the TTL, reads are answered from a near-cache of the set refreshed every
+ * {@code app.presence.near-cache-ms}, and entries left behind by a node that died are swept
+ * by whichever node removes them first. Open sessions are counted per user in a Redis
+ * hash, so a disconnect only removes the user (and reports them offline) when it closes
+ * their last session on any node. The default {@code local} store keeps presence per
+ * node.
+ * <p>
+ * Changes are not broadcast one by one: they are coalesced per user and flushed every
+ * {@code app.presence.flush-interval-ms} as one diff per scope, sent to
+ * {@code /topic/presence.role.{ROLE}} and {@code /topic/presence.tenant.{tenantId}} (see
+ * {@code WebSocketAuthInterceptor} for who may subscribe).
  */
 @Service
 public class PresenceService {
 
     private static final Logger log = LoggerFactory.getLogger(PresenceService.class);
 
+    static final String TOPIC_PREFIX = "/topic/presence.";
+    static final String REDIS_KEY = "twsela:presence";
+    static final String SESSIONS_KEY = "twsela:presence:sessions";
+
+    /** Close one session; when it was the last, drop the count and the presence entry. Returns 1 if gone. */
+    static final RedisScript<Long> DISCONNECT_SCRIPT = new DefaultRedisScript<>(
+            "local left = redis.call('HINCRBY', KEYS[1], ARGV[1], -1) " +
+            "if left > 0 then return 0 end " +
+            "redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "redis.call('ZREM', KEYS[2], ARGV[1]) " +
+            "return 1", Long.class);
+
+    /** Presence seen by this node; {@code writtenMs} is when it was last written to Redis. */
+    private static final class Local {
+        final List<String> scopes;
+        volatile long lastSeenMs;
+        volatile long writtenMs;
+
+        Local(List<String> scopes, long lastSeenMs) {
+            this.scopes = scopes;
+            this.lastSeenMs = lastSeenMs;
+        }
+    }
+
+    private record Change(boolean online, List<String> scopes) {}
+
+    private record Snapshot(Map<Long, Long> lastSeen, long loadedAtMs) {}
+
     private final SimpMessagingTemplate messagingTemplate;
+    private final StringRedisTemplate redisTemplate;
+    private final UserRepository userRepository;
+    private final boolean shared;
+    private final long ttlMs;
+    private final long writeIntervalMs;
+    private final long nearCacheMs;
 
-    // In-memory presence map: userId → last seen timestamp
-    private final Map<Long, Instant> onlineUsers = new ConcurrentHashMap<>();
+    private final Map<Long, Local> locals = new ConcurrentHashMap<>();
+    private final Map<Long, Change> pending = new ConcurrentHashMap<>();
+    private final PresenceTimerWheel wheel;
+    private final Object snapshotLock = new Object();
+    private volatile Snapshot snapshot = new Snapshot(Map.of(), 0);
 
-    public PresenceService(SimpMessagingTemplate messagingTemplate) {
+    private final Counter expiredCounter;
+    private final Counter diffCounter;
+
+    public PresenceService(SimpMessagingTemplate messagingTemplate,
+                           StringRedisTemplate redisTemplate,
+                           UserRepository userRepository,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.presence.store:local}") String store,
+                           @Value("${app.presence.ttl-seconds:90}") long ttlSeconds,
+                           @Value("${app.presence.tick-ms:1000}") long tickMs,
+                           @Value("${app.presence.near-cache-ms:2000}") long nearCacheMs) {
         this.messagingTemplate = messagingTemplate;
+        this.redisTemplate = redisTemplate;
+        this.userRepository = userRepository;
+        this.shared = "redis".equals(store.trim().toLowerCase(Locale.ROOT));
+        this.ttlMs = ttlSeconds * 1000;
+        this.writeIntervalMs = ttlMs / 3;
+        this.nearCacheMs = nearCacheMs;
+        // One revolution covers the TTL, so a live user is rechecked about once per TTL
+        this.wheel = new PresenceTimerWheel(tickMs, (int) Math.max(1, ttlMs / Math.max(1, tickMs) + 1),
+                System.currentTimeMillis());
+
+        this.expiredCounter = Counter.builder("twsela.presence.expired")
+                .description("Users taken offline because their heartbeats stopped")
+                .register(meterRegistry);
+        this.diffCounter = Counter.builder("twsela.presence.diffs")
+                .description("Batched presence diffs broadcast to scoped topics")
+                .register(meterRegistry);
+        Gauge.builder("twsela.presence.local", locals, Map::size)
+                .description("Users whose heartbeats arrive at this node")
+                .register(meterRegistry);
     }
 
     /**
      * تسجيل اتصال مستخدم.
      */
     public void userConnected(Long userId) {
-        onlineUsers.put(userId, Instant.now());
-        broadcastPresence(userId, true);
+        if (shared && userId != null) {
+            try {
+                redisTemplate.opsForHash().increment(SESSIONS_KEY, userId.toString(), 1);
+            } catch (Exception e) {
+                log.warn("Failed to count session of user {} in Redis: {}", userId, e.getMessage());
+            }
+        }
+        touch(userId, System.currentTimeMillis());
         log.debug("User {} connected", userId);
     }
 
+    /**
+     * نبضة من مستخدم متصل — تمدد مدة بقائه متصلاً.
+     */
+    public void heartbeat(Long userId) {
+        touch(userId, System.currentTimeMillis());
+    }
+
     /**
      * تسجيل انقطاع اتصال مستخدم.
      */
     public void userDisconnected(Long userId) {
-        onlineUsers.remove(userId);
-        broadcastPresence(userId, false);
+        if (userId == null) {
+            return;
+        }
+        Local local = locals.remove(userId);
+        if (shared) {
+            try {
+                Long gone = redisTemplate.execute(DISCONNECT_SCRIPT, List.of(SESSIONS_KEY, REDIS_KEY),
+                        userId.toString());
+                if (gone == null || gone == 0) {
+                    log.debug("User {} disconnected, sessions remain on other nodes", userId);
+                    return; // still online elsewhere; the TTL sweep catches counts left by a dead node
+                }
+            } catch (Exception e) {
+                log.warn("Failed to close session of user {} in Redis: {}", userId, e.getMessage());
+                return; // the TTL sweep takes the user offline if this was the last session
+            }
+        }
+        pending.put(userId, new Change(false, local != null ? local.scopes : scopesOf(userId)));
         log.debug("User {} disconnected", userId);
     }
 
@@ -49,42 +179,268 @@ public class PresenceService {
      * هل المستخدم متصل حالياً؟
      */
     public boolean isOnline(Long userId) {
-        return onlineUsers.containsKey(userId);
+        return lastSeenMs(userId, System.currentTimeMillis()) != null;
     }
 
     /**
      * الحصول على كل المستخدمين المتصلين.
      */
     public Set<Long> getOnlineUsers() {
-        return onlineUsers.keySet();
+        long now = System.currentTimeMillis();
+        Set<Long> online = new HashSet<>();
+        locals.forEach((userId, local) -> {
+            if (local.lastSeenMs + ttlMs > now) {
+                online.add(userId);
+            }
+        });
+        if (shared) {
+            remote(now).forEach((userId, lastSeen) -> {
+                if (lastSeen + ttlMs > now) {
+                    online.add(userId);
+                }
+            });
+        }
+        return Set.copyOf(online);
     }
 
     /**
      * آخر وقت اتصال للمستخدم.
      */
     public Instant getLastSeen(Long userId) {
-        return onlineUsers.get(userId);
+        Long lastSeen = lastSeenMs(userId, System.currentTimeMillis());
+        return lastSeen != null ? Instant.ofEpochMilli(lastSeen) : null;
     }
 
     /**
      * عدد المستخدمين المتصلين.
      */
     public int getOnlineCount() {
-        return onlineUsers.size();
+        return getOnlineUsers().size();
+    }
+
+    /** Expire users whose heartbeats stopped. */
+    @Scheduled(fixedDelayString = "${app.presence.tick-ms:1000}")
+    public void expire() {
+        expire(System.currentTimeMillis());
+    }
+
+    /** Sweep entries left in Redis by other nodes, then broadcast the coalesced changes. */
+    @Scheduled(fixedDelayString = "${app.presence.flush-interval-ms:2000}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        if (shared) {
+            sweep(now);
+        }
+        broadcast(now);
+    }
+
+    // ── Internals ───────────────────────────────────────────────
+
+    void touch(Long userId, long nowMs) {
+        if (userId == null) {
+            return;
+        }
+        Local local = locals.get(userId);
+        if (local == null) {
+            boolean elsewhere = shared && lastSeenMs(userId, nowMs) != null;
+            Local created = new Local(scopesOf(userId), nowMs);
+            local = locals.putIfAbsent(userId, created);
+            if (local == null) {
+                wheel.schedule(userId, nowMs + ttlMs);
+                write(userId, created, nowMs);
+                if (!elsewhere) {
+                    pending.put(userId, new Change(true, created.scopes));
+                }
+                return;
+            }
+        }
+        local.lastSeenMs = Math.max(local.lastSeenMs, nowMs);
+        if (shared && nowMs - local.writtenMs >= writeIntervalMs) {
+            write(userId, local, nowMs);
+        }
+    }
+
+    void expire(long nowMs) {
+        for (Long userId : wheel.advance(nowMs)) {
+            Local local = locals.get(userId);
+            if (local == null) {
+                continue;
+            }
+            long deadline = local.lastSeenMs + ttlMs;
+            if (deadline > nowMs) {
+                wheel.schedule(userId, deadline);
+                continue;
+            }
+            if (!locals.remove(userId, local)) {
+                continue;
+            }
+            if (shared && !removeIfStale(userId, nowMs)) {
+                continue; // heartbeats now arrive at another node
+            }
+            expiredCounter.increment();
+            pending.put(userId, new Change(false, local.scopes));
+            log.debug("User {} expired after {} ms without a heartbeat", userId, nowMs - local.lastSeenMs);
+        }
+    }
+
+    void broadcast(long nowMs) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, List<Long>> online = new HashMap<>();
+        Map<String, List<Long>> offline = new HashMap<>();
+        for (Long userId : new ArrayList<>(pending.keySet())) {
+            Change change = pending.remove(userId);
+            if (change == null) {
+                continue;
+            }
+            for (String scope : change.scopes()) {
+                (change.online() ? online : offline).computeIfAbsent(scope, s -> new ArrayList<>()).add(userId);
+            }
+        }
+        Set<String> scopes = new HashSet<>(online.keySet());
+        scopes.addAll(offline.keySet());
+        String timestamp = Instant.ofEpochMilli(nowMs).toString();
+        for (String scope : scopes) {
+            try {
+                messagingTemplate.convertAndSend(TOPIC_PREFIX + scope, Map.of(
+                        "online", online.getOrDefault(scope, List.of()),
+                        "offline", offline.getOrDefault(scope, List.of()),
+                        "timestamp", timestamp));
+                diffCounter.increment();
+            } catch (Exception e) {
+                log.warn("Failed to broadcast presence diff to {}: {}", scope, e.getMessage());
+            }
+        }
+    }
+
+    /** Scopes whose subscribers see this user's presence: the user's role and tenant. */
+    private List<String> scopesOf(Long userId) {
+        try {
+            User user = userRepository.findById(userId).orElse(null);
+            if (user == null) {
+                return List.of();
+            }
+            List<String> scopes = new ArrayList<>(2);
+            if (user.getRole() != null) {
+                scopes.add("role." + user.getRole().getName().toUpperCase(Locale.ROOT));
+            }
+            if (user.getTenantId() != null) {
+                scopes.add("tenant." + user.getTenantId());
+            }
+            return List.copyOf(scopes);
+        } catch (Exception e) {
+            log.warn("Failed to resolve presence scopes of user {}: {}", userId, e.getMessage());
+            return List.of();
+        }
+    }
+
+    private Long lastSeenMs(Long userId, long nowMs) {
+        if (userId == null) {
+            return null;
+        }
+        Local local = locals.get(userId);
+        if (local != null && local.lastSeenMs + ttlMs > nowMs) {
+            return local.lastSeenMs;
+        }
+        if (shared) {
+            Long lastSeen = remote(nowMs).get(userId);
+            if (lastSeen != null && lastSeen + ttlMs > nowMs) {
+                return lastSeen;
+            }
+        }
+        return null;
+    }
+
+    private void write(Long userId, Local local, long nowMs) {
+        if (!shared) {
+            return;
+        }
+        try {
+            redisTemplate.opsForZSet().add(REDIS_KEY, userId.toString(), nowMs);
+            local.writtenMs = nowMs;
+        } catch (Exception e) {
+            log.warn("Failed to write presence of user {} to Redis: {}", userId, e.getMessage());
+        }
+    }
+
+    /** The shared registry as of at most {@code nearCacheMs} ago. */
+    private Map<Long, Long> remote(long nowMs) {
+        Snapshot current = snapshot;
+        if (nowMs - current.loadedAtMs() < nearCacheMs) {
+            return current.lastSeen();
+        }
+        synchronized (snapshotLock) {
+            current = snapshot;
+            if (nowMs - current.loadedAtMs() < nearCacheMs) {
+                return current.lastSeen();
+            }
+            Map<Long, Long> lastSeen = current.lastSeen();
+            try {
+                Set<ZSetOperations.TypedTuple<String>> rows = redisTemplate.opsForZSet()
+                        .rangeByScoreWithScores(REDIS_KEY, nowMs - ttlMs, Double.POSITIVE_INFINITY);
+                lastSeen = new HashMap<>();
+                if (rows != null) {
+                    for (ZSetOperations.TypedTuple<String> row : rows) {
+                        if (row.getValue() != null && row.getScore() != null) {
+                            lastSeen.put(Long.valueOf(row.getValue()), row.getScore().longValue());
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Failed to read presence from Redis, serving the previous snapshot: {}", e.getMessage());
+            }
+            snapshot = new Snapshot(lastSeen, nowMs);
+            return lastSeen;
+        }
+    }
+
+    /** Remove a user from Redis unless a heartbeat reached another node within the TTL. */
+    private boolean removeIfStale(Long userId, long nowMs) {
+        try {
+            Double score = redisTemplate.opsForZSet().score(REDIS_KEY, userId.toString());
+            if (score == null) {
+                return true;
+            }
+            if (score.longValue() + ttlMs > nowMs) {
+                return false;
+            }
+            Long removed = redisTemplate.opsForZSet().remove(REDIS_KEY, userId.toString());
+            if (removed != null && removed > 0) {
+                redisTemplate.opsForHash().delete(SESSIONS_KEY, userId.toString());
+                return true;
+            }
+            return false;
+        } catch (Exception e) {
+            log.warn("Failed to expire presence of user {} in Redis: {}", userId, e.getMessage());
+            return true;
+        }
     }
 
-    private void broadcastPresence(Long userId, boolean online) {
+    /** Remove entries nobody refreshed within the TTL; each is reported by the node that removed it. */
+    private void sweep(long nowMs) {
         try {
-            messagingTemplate.convertAndSend(
-                "/topic/presence",
-                Map.of(
-                    "userId", userId,
-                    "online", online,
-                    "timestamp", Instant.now().toString()
-                )
-            );
+            Set<String> stale = redisTemplate.opsForZSet().rangeByScore(REDIS_KEY, 0, nowMs - ttlMs);
+            if (stale == null) {
+                return;
+            }
+            for (String member : stale) {
+                Long userId = Long.valueOf(member);
+                Local local = locals.get(userId);
+                if (local != null && local.lastSeenMs + ttlMs > nowMs) {
+                    write(userId, local, nowMs); // an earlier write failed; the user is still here
+                    continue;
+                }
+                Long removed = redisTemplate.opsForZSet().remove(REDIS_KEY, member);
+                if (removed != null && removed > 0) {
+                    redisTemplate.opsForHash().delete(SESSIONS_KEY, member);
+                    locals.remove(userId);
+                    expiredCounter.increment();
+                    pending.put(userId, new Change(false, scopesOf(userId)));
+                }
+            }
         } catch (Exception e) {
-            log.warn("Failed to broadcast presence for user {}: {}", userId, e.getMessage());
+            log.warn("Failed to sweep expired presence from Redis: {}", e.getMessage());
         }
     }
 }
@@ -0,0 +1,63 @@
+package com.twsela.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * عجلة مؤقتات لانتهاء صلاحية الحضور.
+ * <p>
+ * A hashed timer wheel of {@code slots} buckets, {@code tickMs} each: scheduling and
+ * advancing cost O(1) per id rather than a scan of every connected user. Ids are never
+ * moved when a heartbeat extends their deadline; whoever advances the wheel checks the
+ * current deadline of each drained id and schedules it again if it is still alive. A
+ * deadline further away than one revolution simply comes round early and is rescheduled.
+ */
+final class PresenceTimerWheel {
+
+    private final long tickMs;
+    private final List<Set<Long>> slots;
+    private long lastTick;
+
+    PresenceTimerWheel(long tickMs, int slots, long startMs) {
+        this.tickMs = Math.max(1, tickMs);
+        this.slots = new ArrayList<>(Math.max(1, slots));
+        for (int i = 0; i < Math.max(1, slots); i++) {
+            this.slots.add(new HashSet<>());
+        }
+        this.lastTick = Math.floorDiv(startMs, this.tickMs);
+    }
+
+    /** Schedule a check of {@code id} at {@code deadlineMs}, or on the next tick if that has passed. */
+    synchronized void schedule(Long id, long deadlineMs) {
+        long tick = Math.max(Math.floorDiv(deadlineMs + tickMs - 1, tickMs), lastTick + 1);
+        slots.get((int) Math.floorMod(tick, (long) slots.size())).add(id);
+    }
+
+    /** Move the wheel up to {@code nowMs} and return the ids of every bucket passed. */
+    synchronized List<Long> advance(long nowMs) {
+        long nowTick = Math.floorDiv(nowMs, tickMs);
+        List<Long> due = new ArrayList<>();
+        int passed = (int) Math.min(nowTick - lastTick, slots.size());
+        for (int i = 1; i <= passed; i++) {
+            int index = (int) Math.floorMod(lastTick + i, (long) slots.size());
+            Set<Long> bucket = slots.get(index);
+            if (!bucket.isEmpty()) {
+                due.addAll(bucket);
+                slots.set(index, new HashSet<>());
+            }
+        }
+        lastTick = Math.max(lastTick, nowTick);
+        return due;
+    }
+
+    /** Ids currently scheduled. */
+    synchronized int size() {
+        int size = 0;
+        for (Set<Long> bucket : slots) {
+            size += bucket.size();
+        }
+        return size;
+    }
+}
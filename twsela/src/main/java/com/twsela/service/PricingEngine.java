@@ -0,0 +1,353 @@
+package com.twsela.service;
+
+import com.twsela.domain.Contract;
+import com.twsela.domain.CustomPricingRule;
+import com.twsela.domain.DeliveryPricing;
+import com.twsela.domain.Zone;
+import com.twsela.repository.ContractRepository;
+import com.twsela.repository.CustomPricingRuleRepository;
+import com.twsela.repository.DeliveryPricingRepository;
+import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.TelemetrySettingsRepository;
+import com.twsela.repository.ZoneRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * محرك التسعير — أسعار العقود ورسوم التوصيل من جداول مُجمّعة في الذاكرة.
+ * <p>
+ * Each merchant's active contract, its {@link CustomPricingRule}s and its
+ * {@link DeliveryPricing} rows are compiled once into an immutable {@link MerchantTable}
+ * with amounts in piasters; zone default fees and the {@code DEFAULT_DELIVERY_FEE} setting
+ * are compiled into one shared {@link ZoneDefaults}. Quotes are then plain long arithmetic
+ * with no queries. The 30-day shipment count used for volume discounts is read when the
+ * table is compiled and advanced in memory by {@link #recordShipment}.
+ * <p>
+ * Like {@link TemplateEngine}, the cache is versioned: {@link #invalidate} bumps the
+ * generation so everything compiled earlier is rebuilt on next use, and a TTL covers
+ * changes made on other nodes, bulk updates and contracts reaching their start or end date.
+ * {@code PostCommitInvalidationListener} invalidates after any pricing entity is committed.
+ */
+@Service
+public class PricingEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(PricingEngine.class);
+    private static final long CACHE_TTL_NANOS = Duration.ofMinutes(5).toNanos();
+    private static final String DEFAULT_DELIVERY_FEE_KEY = "DEFAULT_DELIVERY_FEE";
+    private static final long FALLBACK_DELIVERY_FEE = 5000;
+    private static final MerchantTable NO_MERCHANT = new MerchantTable(-1, null, new CompiledRule[0], 0, Map.of());
+
+    // Non-contract quotes: 25.00 base, 2.00 per kg, 2% of COD
+    private static final long DEFAULT_BASE = 2500;
+    private static final long DEFAULT_PER_KG = 200;
+    private static final int DEFAULT_COD_BPS = 200;
+
+    public static final String SOURCE_CONTRACT = "CONTRACT";
+    public static final String SOURCE_DEFAULT = "DEFAULT";
+
+    /** One shipment to price; zone ids may be null. */
+    public record QuoteRequest(Long merchantId, Long zoneFromId, Long zoneToId, double weightKg,
+                               BigDecimal codAmount) {}
+
+    /** A priced shipment; amounts are in piasters, the BigDecimal accessors in pounds. */
+    public record Quote(String source, String contractNumber, long base, long weightCharge,
+                        long codFee, long discount, long total) {
+
+        public BigDecimal basePrice() { return money(base); }
+        public BigDecimal weightChargeAmount() { return money(weightCharge); }
+        public BigDecimal codFeeAmount() { return money(codFee); }
+        public BigDecimal discountAmount() { return money(discount); }
+        public BigDecimal totalPrice() { return money(total); }
+    }
+
+    private final ContractRepository contractRepository;
+    private final CustomPricingRuleRepository pricingRuleRepository;
+    private final DeliveryPricingRepository deliveryPricingRepository;
+    private final ZoneRepository zoneRepository;
+    private final TelemetrySettingsRepository telemetrySettingsRepository;
+    private final ShipmentRepository shipmentRepository;
+    private final ConcurrentHashMap<Long, MerchantTable> tables = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile ZoneDefaults zoneDefaults;
+    private final Counter compiled;
+
+    public PricingEngine(ContractRepository contractRepository,
+                         CustomPricingRuleRepository pricingRuleRepository,
+                         DeliveryPricingRepository deliveryPricingRepository,
+                         ZoneRepository zoneRepository,
+                         TelemetrySettingsRepository telemetrySettingsRepository,
+                         ShipmentRepository shipmentRepository,
+                         MeterRegistry meterRegistry) {
+        this.contractRepository = contractRepository;
+        this.pricingRuleRepository = pricingRuleRepository;
+        this.deliveryPricingRepository = deliveryPricingRepository;
+        this.zoneRepository = zoneRepository;
+        this.telemetrySettingsRepository = telemetrySettingsRepository;
+        this.shipmentRepository = shipmentRepository;
+        this.compiled = Counter.builder("twsela.pricing.tables.compiled")
+                .description("Merchant pricing tables compiled from the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Price one shipment: the most specific active contract rule for the zone pair,
+     * otherwise the default tariff.
+     */
+    public Quote quote(Long merchantId, Long zoneFromId, Long zoneToId, double weightKg, BigDecimal codAmount) {
+        return table(merchantId).quote(zoneFromId, zoneToId, weightKg, toPiasters(codAmount));
+    }
+
+    /** Price a batch; each merchant's table is looked up once however many shipments it has. */
+    public List<Quote> quoteAll(List<QuoteRequest> requests) {
+        Map<Long, MerchantTable> byMerchant = new HashMap<>();
+        List<Quote> quotes = new ArrayList<>(requests.size());
+        for (QuoteRequest request : requests) {
+            MerchantTable table = byMerchant.computeIfAbsent(request.merchantId(), this::table);
+            quotes.add(table.quote(request.zoneFromId(), request.zoneToId(), request.weightKg(),
+                    toPiasters(request.codAmount())));
+        }
+        return quotes;
+    }
+
+    /**
+     * Flat delivery fee for a merchant's shipment to a zone:
+     * merchant-zone price ➡️ zone default fee ➡️ {@code DEFAULT_DELIVERY_FEE} setting ➡️ 50.00.
+     */
+    public BigDecimal deliveryFee(Long merchantId, Long zoneId) {
+        MerchantTable table = table(merchantId);
+        long fee = table.deliveryFee(zoneId);
+        return money(fee >= 0 ? fee : zoneDefaults().fee(zoneId));
+    }
+
+    /** Count a new shipment towards the merchant's 30-day volume without a query. */
+    public void recordShipment(Long merchantId) {
+        MerchantTable table = merchantId != null ? tables.get(merchantId) : null;
+        if (table != null) {
+            table.newShipments.increment();
+        }
+    }
+
+    /** Drop every compiled table; the next quote for each merchant recompiles it. */
+    public void invalidate() {
+        generation.incrementAndGet();
+        tables.clear();
+        zoneDefaults = null;
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    MerchantTable table(Long merchantId) {
+        if (merchantId == null) {
+            return NO_MERCHANT;
+        }
+        long currentGeneration = generation.get();
+        MerchantTable table = tables.get(merchantId);
+        if (table != null && table.generation == currentGeneration
+                && System.nanoTime() - table.compiledAtNanos < CACHE_TTL_NANOS) {
+            return table;
+        }
+        table = compile(merchantId, currentGeneration);
+        // A table compiled across an invalidate() is used once but not kept
+        if (generation.get() == currentGeneration) {
+            tables.put(merchantId, table);
+        }
+        return table;
+    }
+
+    private MerchantTable compile(Long merchantId, long currentGeneration) {
+        compiled.increment();
+        Optional<Contract> contract = contractRepository.findActiveByPartyId(merchantId);
+        CompiledRule[] rules = new CompiledRule[0];
+        String contractNumber = null;
+        if (contract.isPresent()) {
+            contractNumber = contract.get().getContractNumber();
+            rules = pricingRuleRepository.findByContractIdAndActiveTrue(contract.get().getId()).stream()
+                    .map(CompiledRule::of)
+                    .sorted(Comparator.comparingInt(CompiledRule::specificity).thenComparingLong(CompiledRule::id))
+                    .toArray(CompiledRule[]::new);
+        }
+
+        long monthlyShipments = 0;
+        if (Arrays.stream(rules).anyMatch(CompiledRule::hasVolumeDiscount)) {
+            Instant now = Instant.now();
+            monthlyShipments = shipmentRepository.countByMerchantIdAndCreatedAtBetween(
+                    merchantId, now.minus(30, ChronoUnit.DAYS), now);
+        }
+
+        Map<Long, Long> deliveryFees = new HashMap<>();
+        for (DeliveryPricing pricing : deliveryPricingRepository.findByMerchantIdAndIsActiveTrue(merchantId)) {
+            if (pricing.getZone() != null && pricing.getDeliveryFee() != null) {
+                deliveryFees.put(pricing.getZone().getId(), toPiasters(pricing.getDeliveryFee()));
+            }
+        }
+        log.debug("Compiled pricing for merchant {}: contract={}, {} rules, {} zone fees",
+                merchantId, contractNumber, rules.length, deliveryFees.size());
+        return new MerchantTable(currentGeneration, contractNumber, rules, monthlyShipments, Map.copyOf(deliveryFees));
+    }
+
+    private ZoneDefaults zoneDefaults() {
+        ZoneDefaults defaults = zoneDefaults;
+        if (defaults != null && System.nanoTime() - defaults.compiledAtNanos < CACHE_TTL_NANOS) {
+            return defaults;
+        }
+        long currentGeneration = generation.get();
+        Map<Long, Long> fees = new HashMap<>();
+        for (Zone zone : zoneRepository.findAll()) {
+            if (zone.getDefaultFee() != null) {
+                fees.put(zone.getId(), toPiasters(zone.getDefaultFee()));
+            }
+        }
+        long systemDefault = telemetrySettingsRepository.findBySettingKey(DEFAULT_DELIVERY_FEE_KEY)
+                .map(setting -> {
+                    try {
+                        return toPiasters(new BigDecimal(setting.getSettingValue()));
+                    } catch (NumberFormatException e) {
+                        log.warn("Invalid {} setting '{}'", DEFAULT_DELIVERY_FEE_KEY, setting.getSettingValue());
+                        return FALLBACK_DELIVERY_FEE;
+                    }
+                })
+                .orElse(FALLBACK_DELIVERY_FEE);
+        defaults = new ZoneDefaults(Map.copyOf(fees), systemDefault);
+        if (generation.get() == currentGeneration) {
+            zoneDefaults = defaults;
+        }
+        return defaults;
+    }
+
+    static long toPiasters(BigDecimal amount) {
+        return amount == null ? 0 : amount.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    static BigDecimal money(long piasters) {
+        return BigDecimal.valueOf(piasters, 2);
+    }
+
+    /** {@code amount × bps / 10000}, half-up, for non-negative amounts. */
+    static long percent(long amount, int bps) {
+        return (amount * bps + 5_000) / 10_000;
+    }
+
+    private static int toBps(BigDecimal percent) {
+        return percent == null ? 0 : percent.movePointRight(2).setScale(0, RoundingMode.HALF_UP).intValue();
+    }
+
+    /** One active rule; zone ids of 0 match any zone. */
+    record CompiledRule(long id, long zoneFrom, long zoneTo, long base, long perKg, int codBps,
+                        long minimum, int discountBps, int minMonthlyShipments) {
+
+        static CompiledRule of(CustomPricingRule rule) {
+            return new CompiledRule(
+                    rule.getId() != null ? rule.getId() : 0,
+                    rule.getZoneFrom() != null ? rule.getZoneFrom().getId() : 0,
+                    rule.getZoneTo() != null ? rule.getZoneTo().getId() : 0,
+                    toPiasters(rule.getBasePrice()), toPiasters(rule.getPerKgPrice()),
+                    toBps(rule.getCodFeePercent()), toPiasters(rule.getMinimumCharge()),
+                    toBps(rule.getDiscountPercent()), rule.getMinMonthlyShipments());
+        }
+
+        /** Both zones first, then one, then neither — as the repository query orders them. */
+        int specificity() {
+            return (zoneFrom == 0 ? 1 : 0) + (zoneTo == 0 ? 1 : 0);
+        }
+
+        boolean hasVolumeDiscount() {
+            return discountBps > 0 && minMonthlyShipments > 0;
+        }
+
+        boolean matches(long from, long to) {
+            return (zoneFrom == 0 || zoneFrom == from) && (zoneTo == 0 || zoneTo == to);
+        }
+    }
+
+    /** A merchant's compiled pricing; immutable apart from the volume counter. */
+    static final class MerchantTable {
+
+        final long generation;
+        final long compiledAtNanos;
+        final String contractNumber;
+        final CompiledRule[] rules;
+        final long monthlyShipmentsAtCompile;
+        final LongAdder newShipments = new LongAdder();
+        final Map<Long, Long> deliveryFees;
+
+        MerchantTable(long generation, String contractNumber, CompiledRule[] rules,
+                      long monthlyShipmentsAtCompile, Map<Long, Long> deliveryFees) {
+            this.generation = generation;
+            this.compiledAtNanos = System.nanoTime();
+            this.contractNumber = contractNumber;
+            this.rules = rules;
+            this.monthlyShipmentsAtCompile = monthlyShipmentsAtCompile;
+            this.deliveryFees = deliveryFees;
+        }
+
+        Quote quote(Long zoneFromId, Long zoneToId, double weightKg, long cod) {
+            long from = zoneFromId != null ? zoneFromId : -1;
+            long to = zoneToId != null ? zoneToId : -1;
+            for (CompiledRule rule : rules) {
+                if (rule.matches(from, to)) {
+                    return contractQuote(rule, weightKg, cod);
+                }
+            }
+            long weightCharge = Math.round(DEFAULT_PER_KG * weightKg);
+            long codFee = percent(cod, DEFAULT_COD_BPS);
+            return new Quote(SOURCE_DEFAULT, null, DEFAULT_BASE, weightCharge, codFee, 0,
+                    DEFAULT_BASE + weightCharge + codFee);
+        }
+
+        private Quote contractQuote(CompiledRule rule, double weightKg, long cod) {
+            long weightCharge = Math.round(rule.perKg() * weightKg);
+            long codFee = percent(cod, rule.codBps());
+            long subtotal = rule.base() + weightCharge + codFee;
+            long discount = 0;
+            if (rule.hasVolumeDiscount()
+                    && monthlyShipmentsAtCompile + newShipments.sum() >= rule.minMonthlyShipments()) {
+                discount = percent(subtotal, rule.discountBps());
+            }
+            long total = Math.max(subtotal - discount, rule.minimum());
+            return new Quote(SOURCE_CONTRACT, contractNumber, rule.base(), weightCharge, codFee, discount, total);
+        }
+
+        /** The merchant's own fee for the zone, or -1. */
+        long deliveryFee(Long zoneId) {
+            Long fee = zoneId != null ? deliveryFees.get(zoneId) : null;
+            return fee != null ? fee : -1;
+        }
+    }
+
+    /** Zone default fees and the system default, shared by all merchants. */
+    private static final class ZoneDefaults {
+
+        final long compiledAtNanos = System.nanoTime();
+        final Map<Long, Long> fees;
+        final long systemDefault;
+
+        ZoneDefaults(Map<Long, Long> fees, long systemDefault) {
+            this.fees = fees;
+            this.systemDefault = systemDefault;
+        }
+
+        long fee(Long zoneId) {
+            Long fee = zoneId != null ? fees.get(zoneId) : null;
+            return fee != null ? fee : systemDefault;
+        }
+    }
+}
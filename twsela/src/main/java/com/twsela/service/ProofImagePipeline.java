@@ -0,0 +1,543 @@
+package com.twsela.service;
+
+import com.twsela.domain.DeliveryProof;
+import com.twsela.repository.DeliveryProofRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.multipart.MultipartFile;
+import org.w3c.dom.Node;
+
+import javax.imageio.IIOException;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * خط معالجة صور إثبات التسليم — تصغير وضغط وصور مصغّرة في الخلفية.
+ * <p>
+ * {@link DeliveryProofService} only stages the courier's original under
+ * {@code <directory>/incoming/} and marks the proof {@code images_pending}. Once the proof
+ * is committed, a bounded pool decodes the photo (subsampled while reading, so a
+ * 12-megapixel original never becomes a full-size raster), applies the EXIF orientation,
+ * downscales it to {@code photo-max-edge}, re-encodes it as JPEG and writes a thumbnail for
+ * the dashboard. Signatures are downscaled and re-encoded as PNG.
+ * <p>
+ * Re-encoding drops all metadata. The EXIF GPS position is read first and copied to the
+ * proof when the app sent no coordinates, so
+ * {@link DeliveryProofService#validateProofLocation} still has it.
+ * <p>
+ * When the pool is full or a node stops mid-way, the proof keeps its originals, which
+ * remain servable, and {@link #resumePending} picks it up again, oldest first. Every run
+ * counts an attempt before touching the files, so a proof that keeps failing (or takes
+ * the worker down with it) is left on its originals after {@code max-attempts} instead
+ * of crowding out the healthy ones. The result is written with a single update of the
+ * image columns, guarded by {@code images_pending}, never by saving the entity read
+ * at the start.
+ */
+@Service
+public class ProofImagePipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(ProofImagePipeline.class);
+
+    static final String INCOMING = "incoming";
+    static final String THUMBNAILS = "thumbnails";
+
+    private static final Set<String> ALLOWED_TYPES = Set.of(
+            "image/jpeg", "image/png", "image/gif", "image/webp"
+    );
+    private static final int APP1 = 0xE1;
+
+    /** Orientation (EXIF tag 0x0112, 1 = upright) and GPS position of a JPEG. */
+    record ExifInfo(int orientation, Double latitude, Double longitude) {
+
+        static final ExifInfo NONE = new ExifInfo(1, null, null);
+
+        boolean hasGps() {
+            return latitude != null && longitude != null;
+        }
+    }
+
+    private record Decoded(BufferedImage image, ExifInfo exif) {}
+
+    private final FileStorageService fileStorageService;
+    private final DeliveryProofRepository proofRepository;
+    private final MeterRegistry meterRegistry;
+    private final Executor executor;
+    private final long maxUploadBytes;
+    private final int photoMaxEdge;
+    private final int thumbnailEdge;
+    private final int signatureMaxEdge;
+    private final float jpegQuality;
+    private final int resumeBatchSize;
+    private final int maxAttempts;
+
+    /** Proofs queued or being processed on this node. */
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final Timer processingTimer;
+    private final Counter bytesSaved;
+
+    @Autowired
+    public ProofImagePipeline(FileStorageService fileStorageService,
+                              DeliveryProofRepository proofRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${app.images.workers:2}") int workers,
+                              @Value("${app.images.queue-capacity:200}") int queueCapacity,
+                              @Value("${app.images.max-upload-bytes:10485760}") long maxUploadBytes,
+                              @Value("${app.images.photo-max-edge:1600}") int photoMaxEdge,
+                              @Value("${app.images.thumbnail-edge:320}") int thumbnailEdge,
+                              @Value("${app.images.signature-max-edge:800}") int signatureMaxEdge,
+                              @Value("${app.images.jpeg-quality:0.8}") float jpegQuality,
+                              @Value("${app.images.max-attempts:3}") int maxAttempts) {
+        this(fileStorageService, proofRepository, meterRegistry,
+                new ThreadPoolExecutor(Math.max(1, workers), Math.max(1, workers), 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                        new CustomizableThreadFactory("proof-images-")),
+                maxUploadBytes, photoMaxEdge, thumbnailEdge, signatureMaxEdge, jpegQuality, Math.max(1, queueCapacity),
+                maxAttempts);
+    }
+
+    ProofImagePipeline(FileStorageService fileStorageService,
+                       DeliveryProofRepository proofRepository,
+                       MeterRegistry meterRegistry,
+                       Executor executor,
+                       long maxUploadBytes, int photoMaxEdge, int thumbnailEdge, int signatureMaxEdge,
+                       float jpegQuality, int resumeBatchSize, int maxAttempts) {
+        this.fileStorageService = fileStorageService;
+        this.proofRepository = proofRepository;
+        this.meterRegistry = meterRegistry;
+        this.executor = executor;
+        this.maxUploadBytes = maxUploadBytes;
+        this.photoMaxEdge = Math.max(1, photoMaxEdge);
+        this.thumbnailEdge = Math.max(1, thumbnailEdge);
+        this.signatureMaxEdge = Math.max(1, signatureMaxEdge);
+        this.jpegQuality = Math.min(1f, Math.max(0.1f, jpegQuality));
+        this.resumeBatchSize = resumeBatchSize;
+        this.maxAttempts = Math.max(1, maxAttempts);
+
+        Gauge.builder("twsela.images.queue.depth", inFlight, Set::size)
+                .description("Delivery proofs with images queued or being processed").register(meterRegistry);
+        this.processingTimer = Timer.builder("twsela.images.processing")
+                .description("Time to shrink the images of one delivery proof").register(meterRegistry);
+        this.bytesSaved = Counter.builder("twsela.images.bytes.saved").baseUnit("bytes")
+                .description("Storage saved by shrinking delivery proof images").register(meterRegistry);
+    }
+
+    /**
+     * Validate an uploaded image and store it as-is under {@code <directory>/incoming/};
+     * it is shrunk in the background once the proof is committed.
+     *
+     * @return the relative path to the stored original
+     */
+    public String stage(MultipartFile file, String directory) throws IOException {
+        if (file.isEmpty()) {
+            throw new IllegalArgumentException("الملف فارغ");
+        }
+        if (file.getSize() > maxUploadBytes) {
+            throw new IllegalArgumentException("حجم الملف يتجاوز الحد الأقصى ("
+                    + maxUploadBytes / (1024 * 1024) + " ميجابايت)");
+        }
+        String contentType = file.getContentType();
+        if (contentType == null || !ALLOWED_TYPES.contains(contentType)) {
+            throw new IllegalArgumentException("نوع الملف غير مسموح به — فقط JPG, PNG, GIF, WEBP");
+        }
+
+        return fileStorageService.storeStream(directory + "/" + INCOMING,
+                UUID.randomUUID() + extension(file.getOriginalFilename()), out -> {
+                    try (InputStream in = file.getInputStream()) {
+                        in.transferTo(out);
+                    }
+                });
+    }
+
+    /**
+     * Process the proof's staged images once the surrounding transaction commits
+     * (or immediately when there is none).
+     */
+    public void processAfterCommit(Long proofId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(proofId);
+                }
+            });
+        } else {
+            submit(proofId);
+        }
+    }
+
+    /** Re-queue proofs whose images were never processed, e.g. after a restart or a full queue. */
+    @Scheduled(fixedDelayString = "${app.images.resume-interval-ms:300000}",
+               initialDelayString = "${app.images.resume-interval-ms:300000}")
+    public void resumePending() {
+        try {
+            Instant before = Instant.now().minus(Duration.ofMinutes(2));
+            for (Long proofId : proofRepository.findPendingImageIds(before, maxAttempts,
+                    PageRequest.of(0, resumeBatchSize))) {
+                if (!submit(proofId)) {
+                    break;
+                }
+            }
+        } catch (RuntimeException e) {
+            log.error("Resuming pending proof images failed: {}", e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor instanceof ExecutorService service) {
+            service.shutdown();
+        }
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    boolean submit(Long proofId) {
+        if (!inFlight.add(proofId)) {
+            return true;
+        }
+        try {
+            executor.execute(() -> process(proofId));
+            return true;
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(proofId);
+            outcome("rejected");
+            log.warn("Image queue full, proof {} keeps its originals until the next resume", proofId);
+            return false;
+        }
+    }
+
+    void process(Long proofId) {
+        long started = System.nanoTime();
+        String outcome = "failed";
+        int attempt = 0;
+        try {
+            DeliveryProof proof = proofRepository.recordImageAttempt(proofId) == 1
+                    ? proofRepository.findById(proofId).orElse(null) : null;
+            if (proof == null || !proof.isImagesPending()) {
+                outcome = "skipped";
+                return;
+            }
+            attempt = proof.getImageAttempts();
+
+            String photoUrl = null;
+            String thumbnailUrl = null;
+            String signatureUrl = null;
+            Double latitude = null;
+            Double longitude = null;
+            List<String> originals = new ArrayList<>();
+            long before = 0;
+            long after = 0;
+            boolean unsupported = false;
+
+            if (isIncoming(proof.getPhotoUrl())) {
+                Optional<FileStorageService.StoredFile> original = fileStorageService.find(proof.getPhotoUrl());
+                Optional<Decoded> decoded = original.isPresent() ? decode(original.get(), photoMaxEdge) : Optional.empty();
+                if (decoded.isPresent()) {
+                    BufferedImage image = decoded.get().image();
+                    ExifInfo exif = decoded.get().exif();
+                    String directory = directoryOf(proof.getPhotoUrl());
+                    String photo = fileStorageService.storeContent(directory, ".jpg",
+                            out -> writeJpeg(fit(image, photoMaxEdge, exif.orientation(), true), out));
+                    String thumbnail = fileStorageService.storeContent(directory + "/" + THUMBNAILS, ".jpg",
+                            out -> writeJpeg(fit(image, thumbnailEdge, exif.orientation(), true), out));
+
+                    before += original.get().size();
+                    after += sizeOf(photo) + sizeOf(thumbnail);
+                    originals.add(proof.getPhotoUrl());
+                    photoUrl = photo;
+                    thumbnailUrl = thumbnail;
+                    if (proof.getLatitude() == null && proof.getLongitude() == null && exif.hasGps()) {
+                        latitude = exif.latitude();
+                        longitude = exif.longitude();
+                    }
+                } else {
+                    unsupported = true;
+                }
+            }
+
+            if (isIncoming(proof.getSignatureUrl())) {
+                Optional<FileStorageService.StoredFile> original = fileStorageService.find(proof.getSignatureUrl());
+                Optional<Decoded> decoded = original.isPresent() ? decode(original.get(), signatureMaxEdge) : Optional.empty();
+                if (decoded.isPresent()) {
+                    BufferedImage image = decoded.get().image();
+                    int orientation = decoded.get().exif().orientation();
+                    String signature = fileStorageService.storeContent(directoryOf(proof.getSignatureUrl()), ".png",
+                            out -> ImageIO.write(fit(image, signatureMaxEdge, orientation, false), "png", out));
+
+                    before += original.get().size();
+                    after += sizeOf(signature);
+                    originals.add(proof.getSignatureUrl());
+                    signatureUrl = signature;
+                } else {
+                    unsupported = true;
+                }
+            }
+
+            if (proofRepository.completeImages(proofId, photoUrl, thumbnailUrl, signatureUrl,
+                    latitude, longitude) == 0) {
+                outcome = "skipped";
+                return;
+            }
+            originals.forEach(fileStorageService::deleteFile);
+            if (before > after) {
+                bytesSaved.increment(before - after);
+            }
+            outcome = unsupported ? "unsupported" : "ok";
+        } catch (IOException | RuntimeException e) {
+            if (attempt >= maxAttempts) {
+                outcome = "abandoned";
+                log.error("Giving up on images of delivery proof {} after {} attempts, keeping the originals: {}",
+                        proofId, attempt, e.getMessage());
+            } else {
+                log.warn("Processing images of delivery proof {} failed (attempt {} of {}): {}",
+                        proofId, attempt, maxAttempts, e.getMessage());
+            }
+        } finally {
+            inFlight.remove(proofId);
+            processingTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            outcome(outcome);
+        }
+    }
+
+    /**
+     * Decode an image with source subsampling so the raster is at most about twice
+     * {@code maxEdge}; empty if the format cannot be decoded.
+     */
+    private Optional<Decoded> decode(FileStorageService.StoredFile file, int maxEdge) throws IOException {
+        try (InputStream in = fileStorageService.open(file).getInputStream();
+             ImageInputStream stream = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = stream != null ? ImageIO.getImageReaders(stream) : null;
+            if (readers == null || !readers.hasNext()) {
+                return Optional.empty();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, false);
+                int longEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ExifInfo exif = "jpeg".equalsIgnoreCase(reader.getFormatName()) ? readExif(reader) : ExifInfo.NONE;
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, longEdge / maxEdge);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return Optional.of(new Decoded(reader.read(0, param), exif));
+            } catch (IIOException e) {
+                log.warn("Cannot decode {}: {}", file.path(), e.getMessage());
+                return Optional.empty();
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static ExifInfo readExif(ImageReader reader) {
+        try {
+            IIOMetadata metadata = reader.getImageMetadata(0);
+            Node root = metadata.getAsTree("javax_imageio_jpeg_image_1.0");
+            for (Node section = root.getFirstChild(); section != null; section = section.getNextSibling()) {
+                if (!"markerSequence".equals(section.getNodeName())) {
+                    continue;
+                }
+                for (Node marker = section.getFirstChild(); marker != null; marker = marker.getNextSibling()) {
+                    if ("unknown".equals(marker.getNodeName())
+                            && String.valueOf(APP1).equals(((IIOMetadataNode) marker).getAttribute("MarkerTag"))
+                            && ((IIOMetadataNode) marker).getUserObject() instanceof byte[] data) {
+                        return parseExif(data);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Ignoring unreadable JPEG metadata: {}", e.getMessage());
+        }
+        return ExifInfo.NONE;
+    }
+
+    /** Orientation and GPS position from an APP1 segment ({@code "Exif\0\0"} followed by a TIFF structure). */
+    static ExifInfo parseExif(byte[] app1) {
+        if (app1.length < 14 || !"Exif".equals(new String(app1, 0, 4, StandardCharsets.US_ASCII))) {
+            return ExifInfo.NONE;
+        }
+        try {
+            ByteBuffer tiff = ByteBuffer.wrap(app1, 6, app1.length - 6).slice();
+            tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+
+            int ifd0 = tiff.getInt(4);
+            int orientation = 1;
+            int gpsIfd = -1;
+            int entries = tiff.getShort(ifd0) & 0xFFFF;
+            for (int i = 0; i < entries; i++) {
+                int entry = ifd0 + 2 + i * 12;
+                int tag = tiff.getShort(entry) & 0xFFFF;
+                if (tag == 0x0112) {
+                    orientation = tiff.getShort(entry + 8) & 0xFFFF;
+                } else if (tag == 0x8825) {
+                    gpsIfd = tiff.getInt(entry + 8);
+                }
+            }
+            if (gpsIfd < 0) {
+                return new ExifInfo(orientation, null, null);
+            }
+
+            char latitudeRef = 0;
+            char longitudeRef = 0;
+            Double latitude = null;
+            Double longitude = null;
+            entries = tiff.getShort(gpsIfd) & 0xFFFF;
+            for (int i = 0; i < entries; i++) {
+                int entry = gpsIfd + 2 + i * 12;
+                switch (tiff.getShort(entry) & 0xFFFF) {
+                    case 1 -> latitudeRef = (char) tiff.get(entry + 8);
+                    case 2 -> latitude = degrees(tiff, tiff.getInt(entry + 8));
+                    case 3 -> longitudeRef = (char) tiff.get(entry + 8);
+                    case 4 -> longitude = degrees(tiff, tiff.getInt(entry + 8));
+                    default -> { }
+                }
+            }
+            if (latitude == null || longitude == null || latitude > 90 || longitude > 180
+                    || (latitude == 0 && longitude == 0)) {
+                return new ExifInfo(orientation, null, null);
+            }
+            return new ExifInfo(orientation,
+                    latitudeRef == 'S' ? -latitude : latitude,
+                    longitudeRef == 'W' ? -longitude : longitude);
+        } catch (IndexOutOfBoundsException e) {
+            return ExifInfo.NONE;
+        }
+    }
+
+    /** Three RATIONALs (degrees, minutes, seconds) at {@code offset}. */
+    private static Double degrees(ByteBuffer tiff, int offset) {
+        double[] parts = new double[3];
+        for (int i = 0; i < 3; i++) {
+            long numerator = tiff.getInt(offset + i * 8) & 0xFFFFFFFFL;
+            long denominator = tiff.getInt(offset + i * 8 + 4) & 0xFFFFFFFFL;
+            if (denominator == 0) {
+                return null;
+            }
+            parts[i] = (double) numerator / denominator;
+        }
+        return parts[0] + parts[1] / 60 + parts[2] / 3600;
+    }
+
+    /**
+     * Scale the image to fit {@code maxEdge} (never up) and turn it upright. Opaque output is
+     * flattened onto white so it can be written as JPEG.
+     */
+    static BufferedImage fit(BufferedImage source, int maxEdge, int orientation, boolean opaque) {
+        double scale = Math.min(1.0, (double) maxEdge / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        boolean swap = orientation == 6 || orientation == 8;
+
+        BufferedImage target = new BufferedImage(swap ? height : width, swap ? width : height,
+                opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = target.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            if (opaque) {
+                g.setColor(Color.WHITE);
+                g.fillRect(0, 0, target.getWidth(), target.getHeight());
+            }
+            switch (orientation) {
+                case 3 -> { g.translate(width, height); g.rotate(Math.PI); }
+                case 6 -> { g.translate(height, 0); g.rotate(Math.PI / 2); }
+                case 8 -> { g.translate(0, width); g.rotate(-Math.PI / 2); }
+                default -> { }
+            }
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return target;
+    }
+
+    /** Baseline JPEG without any metadata segments. */
+    private void writeJpeg(BufferedImage image, OutputStream out) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    private long sizeOf(String path) throws IOException {
+        return fileStorageService.find(path).map(FileStorageService.StoredFile::size).orElse(0L);
+    }
+
+    private void outcome(String outcome) {
+        Counter.builder("twsela.images.processed").tag("outcome", outcome)
+                .description("Delivery proofs handled by the image pipeline").register(meterRegistry).increment();
+    }
+
+    private static boolean isIncoming(String path) {
+        return path != null && path.contains("/" + INCOMING + "/");
+    }
+
+    /** {@code /uploads/delivery-photos/incoming/x.jpg} → {@code delivery-photos}. */
+    private static String directoryOf(String incomingPath) {
+        String key = incomingPath.replaceFirst("^/uploads/", "");
+        return key.substring(0, key.indexOf("/" + INCOMING + "/"));
+    }
+
+    private static String extension(String filename) {
+        if (filename != null && filename.contains(".")) {
+            String ext = filename.substring(filename.lastIndexOf(".")).toLowerCase();
+            if (ext.matches("\\.(jpg|jpeg|png|gif|webp)")) {
+                return ext;
+            }
+        }
+        return ".jpg";
+    }
+}
@@ -7,6 +7,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -63,6 +66,44 @@ public class PushNotificationService {
         return sent;
     }
 
+    /**
+     * Send the same push notification to all active devices of many users.
+     * Device tokens are loaded with one query and touched tokens saved together.
+     *
+     * @return user id → count of successfully sent notifications (users without tokens are absent)
+     */
+    public Map<Long, Integer> sendPushBulk(Collection<Long> userIds, String title, String body, Map<String, String> data) {
+        List<DeviceToken> tokens = deviceTokenRepository.findByUserIdInAndActiveTrue(userIds);
+        Map<Long, Integer> sentPerUser = new HashMap<>();
+        List<DeviceToken> changed = new ArrayList<>(tokens.size());
+        Instant now = Instant.now();
+
+        for (DeviceToken dt : tokens) {
+            Long userId = dt.getUser().getId();
+            try {
+                // In production, use Firebase Admin SDK multicast send
+                log.debug("Sending push to device {} (platform={}) for user {}: {}",
+                        dt.getToken().substring(0, Math.min(10, dt.getToken().length())) + "...",
+                        dt.getPlatform(), userId, title);
+                dt.setLastUsedAt(now);
+                changed.add(dt);
+                sentPerUser.merge(userId, 1, Integer::sum);
+            } catch (Exception e) {
+                log.warn("Failed to send push to device {}: {}", dt.getId(), e.getMessage());
+                if (isInvalidTokenError(e)) {
+                    dt.setActive(false);
+                    changed.add(dt);
+                    log.info("Deactivated invalid device token {}", dt.getId());
+                }
+            }
+        }
+
+        deviceTokenRepository.saveAll(changed);
+        log.info("Bulk push sent to {} devices across {} users",
+                sentPerUser.values().stream().mapToInt(Integer::intValue).sum(), sentPerUser.size());
+        return sentPerUser;
+    }
+
     /**
      * Send a push notification to a topic (e.g., all couriers).
      */
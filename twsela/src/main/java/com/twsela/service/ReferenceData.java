@@ -0,0 +1,164 @@
+package com.twsela.service;
+
+import com.twsela.domain.Country;
+import com.twsela.domain.ExchangeRate;
+import com.twsela.domain.TaxRule;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * لقطة ثابتة من البيانات المرجعية: قواعد الضرائب وأسعار الصرف والدول — تُستبدل بالكامل عند إعادة التحميل.
+ * <p>
+ * Every lookup is in memory and takes an effective date where the data has one: tax rules
+ * are valid over a date range, and a currency pair has one rate per effective date. Callers
+ * that process a batch should take one snapshot from {@link ReferenceDataCache} and use it
+ * for every line, so the whole batch sees the same {@link #version()}.
+ */
+public final class ReferenceData {
+
+    /** An active tax rule as loaded. */
+    public record TaxRate(Long id, String countryCode, TaxRule.TaxType taxType, BigDecimal rate,
+                          String exemptCategories, LocalDate validFrom, LocalDate validTo) {
+
+        boolean validOn(LocalDate date) {
+            return !validFrom.isAfter(date) && (validTo == null || !validTo.isBefore(date));
+        }
+    }
+
+    /** One exchange rate of a currency pair. */
+    public record Rate(Long id, String baseCurrency, String targetCurrency, BigDecimal rate,
+                       LocalDate effectiveDate, ExchangeRate.RateSource source) {}
+
+    /** Localization settings of a country. */
+    public record CountryInfo(String code, String nameEn, String nameAr, String currencyCode,
+                              String phonePrefix, String addressFormat, String timeZone, boolean active) {}
+
+    private final long version;
+    private final Instant loadedAt;
+    private final Map<String, List<TaxRate>> taxRates;
+    private final Map<String, TreeMap<LocalDate, Rate>> rates;
+    private final Map<String, CountryInfo> countries;
+
+    private ReferenceData(long version, Instant loadedAt, Map<String, List<TaxRate>> taxRates,
+                          Map<String, TreeMap<LocalDate, Rate>> rates, Map<String, CountryInfo> countries) {
+        this.version = version;
+        this.loadedAt = loadedAt;
+        this.taxRates = taxRates;
+        this.rates = rates;
+        this.countries = countries;
+    }
+
+    /**
+     * Build a snapshot. Tax rules are kept per country in id order; inactive rules and rules
+     * without a start date are dropped. A pair with two rates on the same date keeps the later id.
+     */
+    public static ReferenceData of(long version, Instant loadedAt, List<TaxRule> taxRules,
+                                   List<ExchangeRate> exchangeRates, List<Country> countries) {
+        Map<String, List<TaxRate>> taxRates = new HashMap<>();
+        taxRules.stream()
+                .filter(r -> r.isActive() && r.getCountryCode() != null && r.getValidFrom() != null)
+                .sorted(Comparator.comparing(TaxRule::getId, Comparator.nullsLast(Comparator.naturalOrder())))
+                .forEach(r -> taxRates.computeIfAbsent(r.getCountryCode().toUpperCase(), k -> new ArrayList<>())
+                        .add(new TaxRate(r.getId(), r.getCountryCode().toUpperCase(), r.getTaxType(), r.getRate(),
+                                r.getExemptCategories(), r.getValidFrom(), r.getValidTo())));
+        taxRates.replaceAll((code, list) -> List.copyOf(list));
+
+        Map<String, TreeMap<LocalDate, Rate>> rates = new HashMap<>();
+        exchangeRates.stream()
+                .filter(r -> r.getBaseCurrency() != null && r.getTargetCurrency() != null
+                        && r.getEffectiveDate() != null && r.getRate() != null)
+                .sorted(Comparator.comparing(ExchangeRate::getId, Comparator.nullsFirst(Comparator.naturalOrder())))
+                .forEach(r -> {
+                    Rate rate = new Rate(r.getId(), r.getBaseCurrency().toUpperCase(),
+                            r.getTargetCurrency().toUpperCase(), r.getRate(), r.getEffectiveDate(), r.getSource());
+                    rates.computeIfAbsent(pair(rate.baseCurrency(), rate.targetCurrency()), k -> new TreeMap<>())
+                            .put(rate.effectiveDate(), rate);
+                });
+
+        Map<String, CountryInfo> countryInfos = new HashMap<>();
+        for (Country c : countries) {
+            if (c.getCode() != null) {
+                countryInfos.put(c.getCode().toUpperCase(), new CountryInfo(c.getCode(), c.getNameEn(), c.getNameAr(),
+                        c.getCurrencyCode(), c.getPhonePrefix(), c.getAddressFormat(), c.getTimeZone(), c.isActive()));
+            }
+        }
+        return new ReferenceData(version, loadedAt, taxRates, rates, countryInfos);
+    }
+
+    public long version() { return version; }
+
+    public Instant loadedAt() { return loadedAt; }
+
+    /** Active tax rules of the country valid on {@code date}, in id order. */
+    public List<TaxRate> taxRates(String countryCode, LocalDate date) {
+        List<TaxRate> all = taxRates.get(countryCode.toUpperCase());
+        if (all == null) {
+            return List.of();
+        }
+        List<TaxRate> valid = new ArrayList<>(all.size());
+        for (TaxRate rate : all) {
+            if (rate.validOn(date)) {
+                valid.add(rate);
+            }
+        }
+        return valid;
+    }
+
+    /** The first tax rule of the country valid on {@code date} — typically VAT. */
+    public Optional<TaxRate> primaryTaxRate(String countryCode, LocalDate date) {
+        List<TaxRate> all = taxRates.get(countryCode.toUpperCase());
+        if (all != null) {
+            for (TaxRate rate : all) {
+                if (rate.validOn(date)) {
+                    return Optional.of(rate);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /** The pair's rate with the latest effective date. */
+    public Optional<Rate> latestRate(String baseCurrency, String targetCurrency) {
+        TreeMap<LocalDate, Rate> history = rates.get(pair(baseCurrency.toUpperCase(), targetCurrency.toUpperCase()));
+        return history == null ? Optional.empty() : Optional.of(history.lastEntry().getValue());
+    }
+
+    /** The pair's rate in effect on {@code date}: the latest one effective on or before it. */
+    public Optional<Rate> rateOn(String baseCurrency, String targetCurrency, LocalDate date) {
+        TreeMap<LocalDate, Rate> history = rates.get(pair(baseCurrency.toUpperCase(), targetCurrency.toUpperCase()));
+        if (history == null) {
+            return Optional.empty();
+        }
+        Map.Entry<LocalDate, Rate> entry = history.floorEntry(date);
+        return entry == null ? Optional.empty() : Optional.of(entry.getValue());
+    }
+
+    public Optional<CountryInfo> country(String code) {
+        return Optional.ofNullable(countries.get(code.toUpperCase()));
+    }
+
+    public int taxRuleCount() {
+        return taxRates.values().stream().mapToInt(List::size).sum();
+    }
+
+    public int rateCount() {
+        return rates.values().stream().mapToInt(Map::size).sum();
+    }
+
+    public int countryCount() {
+        return countries.size();
+    }
+
+    private static String pair(String base, String target) {
+        return base + '/' + target;
+    }
+}
@@ -0,0 +1,87 @@
+package com.twsela.service;
+
+import com.twsela.repository.CountryRepository;
+import com.twsela.repository.ExchangeRateRepository;
+import com.twsela.repository.TaxRuleRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ذاكرة مؤقتة للبيانات المرجعية — لقطة واحدة ثابتة ومرقّمة بالإصدار.
+ * <p>
+ * Tax rules, exchange rates and countries are small, read on every invoice line and COD
+ * conversion, and rarely written, so they are loaded together into one immutable
+ * {@link ReferenceData} that readers use without locking. {@link #invalidate} bumps the
+ * version and the next reader reloads; {@code PostCommitInvalidationListener} calls it after
+ * any of the three entities is committed on this node, and {@link #refresh} polls so that
+ * writes made on other nodes are picked up too.
+ */
+@Service
+public class ReferenceDataCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ReferenceDataCache.class);
+
+    private final TaxRuleRepository taxRuleRepository;
+    private final ExchangeRateRepository exchangeRateRepository;
+    private final CountryRepository countryRepository;
+    private final AtomicLong version = new AtomicLong();
+    private volatile ReferenceData data;
+
+    public ReferenceDataCache(TaxRuleRepository taxRuleRepository,
+                              ExchangeRateRepository exchangeRateRepository,
+                              CountryRepository countryRepository) {
+        this.taxRuleRepository = taxRuleRepository;
+        this.exchangeRateRepository = exchangeRateRepository;
+        this.countryRepository = countryRepository;
+    }
+
+    /** The current snapshot, loading it first if it is missing or was invalidated. */
+    public ReferenceData snapshot() {
+        ReferenceData current = data;
+        if (current != null && current.version() == version.get()) {
+            return current;
+        }
+        return load();
+    }
+
+    /** Drop the snapshot; the next {@link #snapshot()} reloads. */
+    public void invalidate() {
+        version.incrementAndGet();
+    }
+
+    /** Reload now, so that request threads do not pay for it. */
+    @Scheduled(fixedDelayString = "${app.reference-data.refresh-ms:300000}",
+               initialDelayString = "${app.reference-data.refresh-ms:300000}")
+    public void refresh() {
+        try {
+            invalidate();
+            snapshot();
+        } catch (RuntimeException e) {
+            log.error("Reference data refresh failed: {}", e.getMessage(), e);
+        }
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    private synchronized ReferenceData load() {
+        long target = version.get();
+        ReferenceData current = data;
+        if (current != null && current.version() == target) {
+            return current;
+        }
+        long started = System.nanoTime();
+        ReferenceData loaded = ReferenceData.of(target, Instant.now(), taxRuleRepository.findByActiveTrue(),
+                exchangeRateRepository.findAll(), countryRepository.findAll());
+        // A snapshot loaded across an invalidate() is returned once and replaced on next use
+        data = loaded;
+        log.debug("Loaded reference data v{}: {} tax rules, {} exchange rates, {} countries in {} ms", target,
+                loaded.taxRuleCount(), loaded.rateCount(), loaded.countryCount(),
+                (System.nanoTime() - started) / 1_000_000);
+        return loaded;
+    }
+}
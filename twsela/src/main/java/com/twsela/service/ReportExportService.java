@@ -1,9 +1,15 @@
 package com.twsela.service;
 
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
@@ -11,7 +17,8 @@ import java.util.Map;
 
 /**
  * Export analytics reports to various formats: PDF, Excel, CSV.
- * Uses existing PDF/Excel generation infrastructure.
+ * Uses existing PDF/Excel generation infrastructure. Row-level exports go through
+ * {@link StreamingExportService}.
  */
 @Service
 public class ReportExportService {
@@ -46,19 +53,37 @@ public class ReportExportService {
     }
 
     /**
-     * Export report to Excel format (simplified).
+     * Export report to Excel format (XLSX workbook with one Metric/Value sheet).
      */
     public byte[] exportToExcel(String reportType, Instant from, Instant to) {
         log.info("Exporting {} report to Excel for range {} to {}", reportType, from, to);
         Map<String, Object> data = getReportData(reportType, from, to);
 
-        StringBuilder csv = new StringBuilder();
-        csv.append("Metric,Value\n");
-        for (Map.Entry<String, Object> entry : data.entrySet()) {
-            csv.append(entry.getKey()).append(",").append(entry.getValue()).append("\n");
+        try (XSSFWorkbook workbook = new XSSFWorkbook();
+             ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            Sheet sheet = workbook.createSheet(reportType);
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("Metric");
+            header.createCell(1).setCellValue("Value");
+
+            int rowIndex = 1;
+            for (Map.Entry<String, Object> entry : data.entrySet()) {
+                Row row = sheet.createRow(rowIndex++);
+                row.createCell(0).setCellValue(entry.getKey());
+                Object value = entry.getValue();
+                if (value instanceof Number number) {
+                    row.createCell(1).setCellValue(number.doubleValue());
+                } else {
+                    row.createCell(1).setCellValue(String.valueOf(value));
+                }
+            }
+            sheet.autoSizeColumn(0);
+
+            workbook.write(out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to build Excel report", e);
         }
-
-        return csv.toString().getBytes(java.nio.charset.StandardCharsets.UTF_8);
     }
 
     /**
@@ -0,0 +1,84 @@
+package com.twsela.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.domain.AsyncJob;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * معالج مهام REPORT_GENERATION — توليد تقرير وحفظه كملف.
+ * <p>
+ * Payload: {@code {"reportType": "...", "format": "CSV|EXCEL|PDF", "from": ISO-8601,
+ * "to": ISO-8601, "locale": "ar"}}; the range defaults to the last 30 days. The file is
+ * named after the job id, so a re-run overwrites rather than duplicates it.
+ */
+@Component
+public class ReportGenerationJobHandler implements AsyncJobHandler {
+
+    public static final String JOB_TYPE = "REPORT_GENERATION";
+    private static final String REPORT_DIRECTORY = "reports";
+
+    private final ReportExportService reportExportService;
+    private final FileStorageService fileStorageService;
+    private final ObjectMapper objectMapper;
+
+    public ReportGenerationJobHandler(ReportExportService reportExportService,
+                                      FileStorageService fileStorageService,
+                                      ObjectMapper objectMapper) {
+        this.reportExportService = reportExportService;
+        this.fileStorageService = fileStorageService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getJobType() {
+        return JOB_TYPE;
+    }
+
+    @Override
+    public boolean isIoBound() {
+        return true;
+    }
+
+    @Override
+    public String execute(AsyncJob job, Context context) throws Exception {
+        JsonNode payload = objectMapper.readTree(job.getPayload() != null ? job.getPayload() : "{}");
+        String reportType = payload.path("reportType").asText("summary");
+        String format = payload.path("format").asText("CSV").toUpperCase();
+        Instant to = payload.hasNonNull("to") ? Instant.parse(payload.get("to").asText()) : Instant.now();
+        Instant from = payload.hasNonNull("from")
+                ? Instant.parse(payload.get("from").asText()) : to.minus(30, ChronoUnit.DAYS);
+
+        byte[] content;
+        String extension;
+        switch (format) {
+            case "PDF" -> {
+                content = reportExportService.exportToPdf(reportType, from, to, payload.path("locale").asText("ar"));
+                extension = ".pdf";
+            }
+            case "EXCEL" -> {
+                content = reportExportService.exportToExcel(reportType, from, to);
+                extension = ".xlsx";
+            }
+            default -> {
+                content = reportExportService.exportToCsv(reportType, from, to);
+                extension = ".csv";
+            }
+        }
+        context.reportProgress(80);
+
+        String path = fileStorageService.storeBytes(content, REPORT_DIRECTORY, job.getJobId() + extension);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("reportType", reportType);
+        result.put("format", format);
+        result.put("path", path);
+        result.put("sizeBytes", content.length);
+        return objectMapper.writeValueAsString(result);
+    }
+}
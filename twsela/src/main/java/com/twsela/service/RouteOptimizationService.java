@@ -23,9 +23,12 @@ public class RouteOptimizationService {
     private static final double AVG_SPEED_KMH = 30.0; // average delivery speed in city
 
     private final OptimizedRouteRepository routeRepository;
+    private final ETACalculationService etaCalculationService;
 
-    public RouteOptimizationService(OptimizedRouteRepository routeRepository) {
+    public RouteOptimizationService(OptimizedRouteRepository routeRepository,
+                                    ETACalculationService etaCalculationService) {
         this.routeRepository = routeRepository;
+        this.etaCalculationService = etaCalculationService;
     }
 
     /**
@@ -101,7 +104,9 @@ public class RouteOptimizationService {
 
         log.info("Route optimized for courier {}: {} waypoints, {:.1f} km, ~{} min",
                 courierId, route.size(), totalDistance, estimatedMinutes);
-        return routeRepository.save(optimized);
+        OptimizedRoute saved = routeRepository.save(optimized);
+        etaCalculationService.evictRoute(courierId);
+        return saved;
     }
 
     /**
@@ -205,6 +210,8 @@ public class RouteOptimizationService {
         r.setWaypoints("[]");
         r.setTotalDistanceKm(0);
         r.setEstimatedDurationMinutes(0);
-        return routeRepository.save(r);
+        OptimizedRoute saved = routeRepository.save(r);
+        etaCalculationService.evictRoute(courierId);
+        return saved;
     }
 }
@@ -6,6 +6,7 @@ import com.twsela.repository.SecurityEventRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
@@ -22,18 +23,26 @@ import java.util.Map;
 public class SecurityEventService {
 
     private static final Logger log = LoggerFactory.getLogger(SecurityEventService.class);
-    private static final int BRUTE_FORCE_THRESHOLD = 5;
-    private static final int BRUTE_FORCE_WINDOW_MINUTES = 15;
 
     private final SecurityEventRepository securityEventRepository;
+    private final AuditPipeline auditPipeline;
+    private final BruteForceDetector bruteForceDetector;
 
-    public SecurityEventService(SecurityEventRepository securityEventRepository) {
+    public SecurityEventService(SecurityEventRepository securityEventRepository,
+                                AuditPipeline auditPipeline,
+                                BruteForceDetector bruteForceDetector) {
         this.securityEventRepository = securityEventRepository;
+        this.auditPipeline = auditPipeline;
+        this.bruteForceDetector = bruteForceDetector;
     }
 
     /**
      * تسجيل حدث أمني.
+     * <p>
+     * The event is queued on {@link AuditPipeline} and written in the background, so the
+     * returned event has no id and queries see it only after the next flush.
      */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public SecurityEvent recordEvent(User user, SecurityEvent.EventType eventType,
                                       String ipAddress, String userAgent,
                                       String details, SecurityEvent.Severity severity) {
@@ -45,7 +54,8 @@ public class SecurityEventService {
         event.setDetails(details);
         event.setSeverity(severity);
 
-        SecurityEvent saved = securityEventRepository.save(event);
+        auditPipeline.append(new AuditPipeline.SecurityEntry(user != null ? user.getId() : null, eventType,
+                ipAddress, userAgent, details, severity, event.getCreatedAt()));
 
         if (severity == SecurityEvent.Severity.CRITICAL) {
             log.warn("CRITICAL security event: type={}, ip={}, user={}",
@@ -53,18 +63,15 @@ public class SecurityEventService {
         }
 
         log.info("Security event recorded: type={}, severity={}, ip={}", eventType, severity, ipAddress);
-        return saved;
+        return event;
     }
 
     /**
-     * تحليل أنماط brute force لعنوان IP.
+     * تحليل أنماط brute force لعنوان IP — من نافذة {@link BruteForceDetector} في الذاكرة.
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS)
     public boolean detectBruteForce(String ipAddress) {
-        Instant windowStart = Instant.now().minus(BRUTE_FORCE_WINDOW_MINUTES, ChronoUnit.MINUTES);
-        List<SecurityEvent> recentFailures = securityEventRepository.findRecentByIpAndType(
-                ipAddress, SecurityEvent.EventType.LOGIN_FAILURE, windowStart);
-        return recentFailures.size() >= BRUTE_FORCE_THRESHOLD;
+        return bruteForceDetector.isBruteForce(ipAddress);
     }
 
     /**
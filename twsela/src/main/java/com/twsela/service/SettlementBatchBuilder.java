@@ -0,0 +1,189 @@
+package com.twsela.service;
+
+import com.twsela.config.StreamingJdbc;
+import com.twsela.domain.SettlementBatch;
+import com.twsela.domain.SettlementItem;
+import com.twsela.domain.ShipmentStatusConstants;
+import com.twsela.service.SettlementService.ItemDraft;
+import com.twsela.web.exception.BusinessRuleException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntConsumer;
+
+/**
+ * بناء دفعة تسوية من الشحنات المسلّمة ذات الدفع عند الاستلام.
+ * <p>
+ * Eligible shipments for the batch period are read with one forward-only cursor, ordered
+ * by merchant, and fees are computed in memory per merchant in parallel. Results are
+ * merged back in merchant-id order so a rebuild of the same data yields the same items in
+ * the same order. Items are appended through {@link SettlementService#appendItems} in
+ * chunks; each chunk is one transaction (JDBC batch insert plus one totals increment).
+ * A shipment that already has a COD item is not eligible, so a build interrupted after
+ * some chunks resumes where it stopped.
+ */
+@Service
+public class SettlementBatchBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(SettlementBatchBuilder.class);
+    static final ZoneId SETTLEMENT_ZONE = ZoneId.of("Africa/Cairo");
+
+    static final String ELIGIBLE_SQL =
+            "SELECT s.id, s.merchant_id, s.tracking_number, s.cod_amount " +
+            "FROM shipments s " +
+            "JOIN shipment_statuses ss ON ss.id = s.status_id " +
+            "WHERE ss.name = ? AND s.cod_amount > 0 AND s.delivered_at >= ? AND s.delivered_at < ? " +
+            "AND NOT EXISTS (SELECT 1 FROM settlement_items si WHERE si.shipment_id = s.id AND si.type = ?) " +
+            "ORDER BY s.merchant_id, s.id";
+
+    /** Result of a build run; totals cover only the items appended by this run. */
+    public record BuildResult(Long batchId, int merchants, int items, BigDecimal totalAmount,
+                              BigDecimal totalFees, BigDecimal netAmount) {}
+
+    private record EligibleShipment(long shipmentId, long merchantId, String trackingNumber, BigDecimal codAmount) {}
+
+    private final SettlementService settlementService;
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+    private final int chunkSize;
+
+    @Autowired
+    public SettlementBatchBuilder(SettlementService settlementService,
+                                  StreamingJdbc streamingJdbc,
+                                  @Value("${app.settlements.build.fetch-size:1000}") int fetchSize,
+                                  @Value("${app.settlements.build.chunk-size:1000}") int chunkSize) {
+        this(settlementService, streamingJdbc.getJdbcTemplate(), fetchSize, chunkSize);
+    }
+
+    SettlementBatchBuilder(SettlementService settlementService, JdbcTemplate jdbcTemplate,
+                           int fetchSize, int chunkSize) {
+        this.settlementService = settlementService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    public BuildResult build(Long batchId) {
+        return build(batchId, percent -> { }, () -> false);
+    }
+
+    /**
+     * Fill a DRAFT batch with COD items for its period.
+     *
+     * @param progress  called with 0–100 as chunks are committed
+     * @param cancelled checked between chunks; committed chunks are kept
+     */
+    public BuildResult build(Long batchId, IntConsumer progress, BooleanSupplier cancelled) {
+        long started = System.nanoTime();
+        SettlementBatch batch = settlementService.getBatchById(batchId);
+        if (batch.getStatus() != SettlementBatch.BatchStatus.DRAFT) {
+            throw new BusinessRuleException("لا يمكن بناء تسوية بحالة: " + batch.getStatus());
+        }
+        Instant from = batch.getStartDate().atStartOfDay(SETTLEMENT_ZONE).toInstant();
+        Instant to = batch.getEndDate().plusDays(1).atStartOfDay(SETTLEMENT_ZONE).toInstant();
+
+        List<List<EligibleShipment>> byMerchant = loadEligible(from, to);
+        progress.accept(5);
+
+        // Ordered stream: toList() keeps merchant order whatever thread priced each group
+        List<List<ItemDraft>> priced = (byMerchant.size() > 1 ? byMerchant.parallelStream() : byMerchant.stream())
+                .map(SettlementBatchBuilder::price)
+                .toList();
+
+        int total = 0;
+        for (List<ItemDraft> drafts : priced) {
+            total += drafts.size();
+        }
+
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        BigDecimal totalFees = BigDecimal.ZERO;
+        BigDecimal netAmount = BigDecimal.ZERO;
+        int appended = 0;
+        List<ItemDraft> chunk = new ArrayList<>(Math.min(chunkSize, Math.max(total, 1)));
+        for (List<ItemDraft> drafts : priced) {
+            for (ItemDraft draft : drafts) {
+                totalAmount = totalAmount.add(draft.amount());
+                totalFees = totalFees.add(draft.fee());
+                netAmount = netAmount.add(draft.netAmount());
+                chunk.add(draft);
+                if (chunk.size() == chunkSize) {
+                    appended += flush(batchId, chunk, cancelled);
+                    progress.accept(5 + (int) (94L * appended / total));
+                }
+            }
+        }
+        appended += flush(batchId, chunk, cancelled);
+        progress.accept(99);
+
+        log.info("Settlement batch {} built — merchants={}, items={}, net={} in {} ms", batch.getSettlementNumber(),
+                byMerchant.size(), appended, netAmount, (System.nanoTime() - started) / 1_000_000);
+        return new BuildResult(batchId, byMerchant.size(), appended, totalAmount, totalFees, netAmount);
+    }
+
+    private int flush(Long batchId, List<ItemDraft> chunk, BooleanSupplier cancelled) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        if (cancelled.getAsBoolean()) {
+            throw new CancellationException("Settlement build cancelled for batch " + batchId);
+        }
+        int appended = settlementService.appendItems(batchId, List.copyOf(chunk));
+        chunk.clear();
+        return appended;
+    }
+
+    /**
+     * Read eligible shipments in one cursor pass, grouped per merchant in merchant-id order.
+     */
+    private List<List<EligibleShipment>> loadEligible(Instant from, Instant to) {
+        PreparedStatementCreator cursor = connection -> {
+            PreparedStatement ps = connection.prepareStatement(ELIGIBLE_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setString(1, ShipmentStatusConstants.DELIVERED);
+            ps.setTimestamp(2, Timestamp.from(from));
+            ps.setTimestamp(3, Timestamp.from(to));
+            ps.setString(4, SettlementItem.ItemType.COD.name());
+            return ps;
+        };
+
+        List<List<EligibleShipment>> groups = new ArrayList<>();
+        long[] currentMerchant = {-1};
+        jdbcTemplate.query(cursor, rs -> {
+            long merchantId = rs.getLong(2);
+            if (merchantId != currentMerchant[0]) {
+                groups.add(new ArrayList<>());
+                currentMerchant[0] = merchantId;
+            }
+            groups.get(groups.size() - 1).add(
+                    new EligibleShipment(rs.getLong(1), merchantId, rs.getString(3), rs.getBigDecimal(4)));
+        });
+        return groups;
+    }
+
+    private static List<ItemDraft> price(List<EligibleShipment> shipments) {
+        List<ItemDraft> drafts = new ArrayList<>(shipments.size());
+        for (EligibleShipment shipment : shipments) {
+            BigDecimal fee = SettlementService.calculateFee(shipment.codAmount(), SettlementItem.ItemType.COD);
+            drafts.add(new ItemDraft(shipment.shipmentId(), shipment.merchantId(), shipment.codAmount(), fee,
+                    shipment.codAmount().subtract(fee), SettlementItem.ItemType.COD,
+                    "COD — " + shipment.trackingNumber()));
+        }
+        return drafts;
+    }
+}
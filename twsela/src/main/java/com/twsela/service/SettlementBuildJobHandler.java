@@ -0,0 +1,65 @@
+package com.twsela.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.domain.AsyncJob;
+import com.twsela.web.exception.BusinessRuleException;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * معالج مهام SETTLEMENT_BUILD — بناء بنود دفعة تسوية من الشحنات المسلّمة.
+ * <p>
+ * Payload: {@code {"batchId": 42}}. Chunks committed by an earlier attempt are kept and
+ * their shipments skipped, so a retried job only appends what is still missing.
+ */
+@Component
+public class SettlementBuildJobHandler implements AsyncJobHandler {
+
+    public static final String JOB_TYPE = "SETTLEMENT_BUILD";
+
+    private final SettlementBatchBuilder settlementBatchBuilder;
+    private final ObjectMapper objectMapper;
+
+    public SettlementBuildJobHandler(SettlementBatchBuilder settlementBatchBuilder, ObjectMapper objectMapper) {
+        this.settlementBatchBuilder = settlementBatchBuilder;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getJobType() {
+        return JOB_TYPE;
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return 1;
+    }
+
+    @Override
+    public String execute(AsyncJob job, Context context) throws Exception {
+        JsonNode payload = objectMapper.readTree(job.getPayload() != null ? job.getPayload() : "{}");
+        if (!payload.hasNonNull("batchId")) {
+            throw new BusinessRuleException("batchId مطلوب لمهمة بناء التسوية");
+        }
+        long batchId = payload.get("batchId").asLong();
+
+        SettlementBatchBuilder.BuildResult built =
+                settlementBatchBuilder.build(batchId, context::reportProgress, context::isCancelled);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("batchId", batchId);
+        result.put("merchants", built.merchants());
+        result.put("items", built.items());
+        result.put("totalAmount", built.totalAmount());
+        result.put("totalFees", built.totalFees());
+        result.put("netAmount", built.netAmount());
+        return objectMapper.writeValueAsString(result);
+    }
+
+    public static String payloadFor(Long batchId) {
+        return "{\"batchId\":" + batchId + "}";
+    }
+}
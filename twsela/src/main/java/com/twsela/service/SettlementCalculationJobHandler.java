@@ -0,0 +1,62 @@
+package com.twsela.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.domain.AsyncJob;
+import com.twsela.domain.SettlementBatch;
+import com.twsela.web.exception.BusinessRuleException;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * معالج مهام SETTLEMENT_CALCULATION — معالجة دفعة تسوية.
+ * <p>
+ * Payload: {@code {"batchId": 42}}. A batch already COMPLETED by an earlier attempt is
+ * reported as-is instead of being processed again.
+ */
+@Component
+public class SettlementCalculationJobHandler implements AsyncJobHandler {
+
+    public static final String JOB_TYPE = "SETTLEMENT_CALCULATION";
+
+    private final SettlementService settlementService;
+    private final ObjectMapper objectMapper;
+
+    public SettlementCalculationJobHandler(SettlementService settlementService, ObjectMapper objectMapper) {
+        this.settlementService = settlementService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public String getJobType() {
+        return JOB_TYPE;
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return 1;
+    }
+
+    @Override
+    public String execute(AsyncJob job, Context context) throws Exception {
+        JsonNode payload = objectMapper.readTree(job.getPayload() != null ? job.getPayload() : "{}");
+        if (!payload.hasNonNull("batchId")) {
+            throw new BusinessRuleException("batchId مطلوب لمهمة التسوية");
+        }
+        long batchId = payload.get("batchId").asLong();
+
+        SettlementBatch batch = settlementService.getBatchById(batchId);
+        if (batch.getStatus() != SettlementBatch.BatchStatus.COMPLETED) {
+            context.reportProgress(10);
+            batch = settlementService.processBatch(batchId);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("batchId", batchId);
+        result.put("status", batch.getStatus().name());
+        result.put("netAmount", batch.getNetAmount());
+        return objectMapper.writeValueAsString(result);
+    }
+}
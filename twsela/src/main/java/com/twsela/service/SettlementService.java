@@ -7,6 +7,7 @@ import com.twsela.domain.User;
 import com.twsela.repository.PaymentIntentRepository;
 import com.twsela.repository.SettlementBatchRepository;
 import com.twsela.repository.SettlementItemRepository;
+import com.twsela.repository.ShipmentRepository;
 import com.twsela.repository.UserRepository;
 import com.twsela.web.exception.BusinessRuleException;
 import com.twsela.web.exception.ResourceNotFoundException;
@@ -19,6 +20,7 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -36,17 +38,26 @@ public class SettlementService {
     private final SettlementItemRepository settlementItemRepository;
     private final PaymentIntentRepository paymentIntentRepository;
     private final UserRepository userRepository;
+    private final ShipmentRepository shipmentRepository;
 
     public SettlementService(SettlementBatchRepository settlementBatchRepository,
                              SettlementItemRepository settlementItemRepository,
                              PaymentIntentRepository paymentIntentRepository,
-                             UserRepository userRepository) {
+                             UserRepository userRepository,
+                             ShipmentRepository shipmentRepository) {
         this.settlementBatchRepository = settlementBatchRepository;
         this.settlementItemRepository = settlementItemRepository;
         this.paymentIntentRepository = paymentIntentRepository;
         this.userRepository = userRepository;
+        this.shipmentRepository = shipmentRepository;
     }
 
+    /**
+     * بند تسوية محسوب مسبقاً — used by {@link SettlementBatchBuilder} for bulk appends.
+     */
+    public record ItemDraft(Long shipmentId, Long merchantId, BigDecimal amount, BigDecimal fee,
+                            BigDecimal netAmount, SettlementItem.ItemType type, String description) {}
+
     /**
      * إنشاء دفعة تسوية جديدة لفترة زمنية.
      */
@@ -101,14 +112,56 @@ public class SettlementService {
         item.setType(type);
 
         SettlementItem saved = settlementItemRepository.save(item);
-
-        // Update batch totals
-        recalculateBatchTotals(batch);
+        addToBatchTotals(batchId, 1, amount, fee, netAmount);
 
         log.info("Settlement item {} added to batch {} — type={}, amount={}, fee={}", saved.getId(), batchId, type, amount, fee);
         return saved;
     }
 
+    /**
+     * إضافة بنود محسوبة مسبقاً لدفعة بالجملة.
+     * <p>
+     * Items go in as one JDBC batch and the batch totals are incremented once with their
+     * sums, in the same transaction, so a committed chunk is always reflected in the totals.
+     *
+     * @return number of items appended
+     */
+    public int appendItems(Long batchId, List<ItemDraft> drafts) {
+        if (drafts.isEmpty()) {
+            return 0;
+        }
+        BigDecimal totalAmount = BigDecimal.ZERO;
+        BigDecimal totalFees = BigDecimal.ZERO;
+        BigDecimal netAmount = BigDecimal.ZERO;
+        SettlementBatch batch = settlementBatchRepository.getReferenceById(batchId);
+        Instant now = Instant.now();
+        List<SettlementItem> items = new ArrayList<>(drafts.size());
+        for (ItemDraft draft : drafts) {
+            SettlementItem item = new SettlementItem();
+            item.setBatch(batch);
+            if (draft.shipmentId() != null) {
+                item.setShipment(shipmentRepository.getReferenceById(draft.shipmentId()));
+            }
+            if (draft.merchantId() != null) {
+                item.setMerchant(userRepository.getReferenceById(draft.merchantId()));
+            }
+            item.setAmount(draft.amount());
+            item.setFee(draft.fee());
+            item.setNetAmount(draft.netAmount());
+            item.setType(draft.type());
+            item.setDescription(draft.description());
+            item.setCreatedAt(now);
+            items.add(item);
+
+            totalAmount = totalAmount.add(draft.amount());
+            totalFees = totalFees.add(draft.fee());
+            netAmount = netAmount.add(draft.netAmount());
+        }
+
+        addToBatchTotals(batchId, items.size(), totalAmount, totalFees, netAmount);
+        return settlementItemRepository.insertBatch(items);
+    }
+
     /**
      * معالجة دفعة تسوية (تحويل المبالغ).
      */
@@ -161,30 +214,18 @@ public class SettlementService {
 
     // ── Internal helpers ──
 
-    private BigDecimal calculateFee(BigDecimal amount, SettlementItem.ItemType type) {
+    static BigDecimal calculateFee(BigDecimal amount, SettlementItem.ItemType type) {
         if (type == SettlementItem.ItemType.REFUND || type == SettlementItem.ItemType.ADJUSTMENT) {
             return BigDecimal.ZERO;
         }
         return amount.multiply(DEFAULT_FEE_PERCENTAGE).setScale(2, RoundingMode.HALF_UP);
     }
 
-    private void recalculateBatchTotals(SettlementBatch batch) {
-        List<SettlementItem> items = settlementItemRepository.findByBatchId(batch.getId());
-        BigDecimal totalAmount = BigDecimal.ZERO;
-        BigDecimal totalFees = BigDecimal.ZERO;
-        BigDecimal netAmount = BigDecimal.ZERO;
-
-        for (SettlementItem item : items) {
-            totalAmount = totalAmount.add(item.getAmount());
-            totalFees = totalFees.add(item.getFee());
-            netAmount = netAmount.add(item.getNetAmount());
+    private void addToBatchTotals(Long batchId, int count, BigDecimal amount, BigDecimal fees, BigDecimal net) {
+        int updated = settlementBatchRepository.addTotals(batchId, SettlementBatch.BatchStatus.DRAFT,
+                count, amount, fees, net, Instant.now());
+        if (updated == 0) {
+            throw new BusinessRuleException("لا يمكن إضافة بنود لتسوية لم تعد مسودة: " + batchId);
         }
-
-        batch.setTotalTransactions(items.size());
-        batch.setTotalAmount(totalAmount);
-        batch.setTotalFees(totalFees);
-        batch.setNetAmount(netAmount);
-        batch.setUpdatedAt(Instant.now());
-        settlementBatchRepository.save(batch);
     }
 }
@@ -31,35 +31,32 @@ public class ShipmentService {
     private final CourierZoneRepository courierZoneRepository;
     private final ShipmentStatusHistoryRepository shipmentStatusHistoryRepository;
     private final ShipmentStatusRepository shipmentStatusRepository;
-    private final DeliveryPricingRepository deliveryPricingRepository;
     private final RecipientDetailsRepository recipientDetailsRepository;
     private final ShipmentManifestRepository shipmentManifestRepository;
-    private final TelemetrySettingsRepository telemetrySettingsRepository;
     private final CourierLocationHistoryRepository courierLocationHistoryRepository;
     private final ReturnShipmentRepository returnShipmentRepository;
+    private final PricingEngine pricingEngine;
 
     public ShipmentService(ShipmentRepository shipmentRepository, UserRepository userRepository, 
                           ZoneRepository zoneRepository, CourierZoneRepository courierZoneRepository,
                           ShipmentStatusHistoryRepository shipmentStatusHistoryRepository, 
                           ShipmentStatusRepository shipmentStatusRepository,
-                          DeliveryPricingRepository deliveryPricingRepository,
                           RecipientDetailsRepository recipientDetailsRepository,
                           ShipmentManifestRepository shipmentManifestRepository,
-                          TelemetrySettingsRepository telemetrySettingsRepository,
                           CourierLocationHistoryRepository courierLocationHistoryRepository,
-                          ReturnShipmentRepository returnShipmentRepository) {
+                          ReturnShipmentRepository returnShipmentRepository,
+                          PricingEngine pricingEngine) {
         this.shipmentRepository = shipmentRepository;
         this.userRepository = userRepository;
         this.zoneRepository = zoneRepository;
         this.courierZoneRepository = courierZoneRepository;
         this.shipmentStatusHistoryRepository = shipmentStatusHistoryRepository;
         this.shipmentStatusRepository = shipmentStatusRepository;
-        this.deliveryPricingRepository = deliveryPricingRepository;
         this.recipientDetailsRepository = recipientDetailsRepository;
         this.shipmentManifestRepository = shipmentManifestRepository;
-        this.telemetrySettingsRepository = telemetrySettingsRepository;
         this.courierLocationHistoryRepository = courierLocationHistoryRepository;
         this.returnShipmentRepository = returnShipmentRepository;
+        this.pricingEngine = pricingEngine;
     }
 
     // Legacy method - redirects to unified method
@@ -111,6 +108,7 @@ public class ShipmentService {
         shipment.setStatus(pendingStatus);
         
         Shipment savedShipment = shipmentRepository.save(shipment);
+        pricingEngine.recordShipment(merchantId);
         
         // Create status history
         createStatusHistory(savedShipment, pendingStatus, "Shipment created from Excel");
@@ -139,37 +137,10 @@ public class ShipmentService {
     }
 
     private void calculateDeliveryFee(Long merchantId, Long zoneId, Shipment shipment) {
-        BigDecimal deliveryFee = null;
-        
         // التسلسل الهرمي للتسعير (Pricing Hierarchy):
         // (أ) Merchant-Zone Price ➡️ (ب) Zone Default Fee ➡️ (ج) System Default Fee
-        
-        // (أ) أولوية أولى: البحث عن تسعير خاص للتاجر والمنطقة
-        var merchantZonePricing = deliveryPricingRepository.findByMerchantIdAndZoneId(merchantId, zoneId);
-        if (merchantZonePricing.isPresent() && merchantZonePricing.get().getIsActive()) {
-            deliveryFee = merchantZonePricing.get().getDeliveryFee();
-        } else {
-            // (ب) أولوية ثانية: استخدام الرسوم الافتراضية للمنطقة
-            Zone zone = zoneRepository.findById(zoneId).orElse(null);
-            if (zone != null && zone.getDefaultFee() != null) {
-                deliveryFee = zone.getDefaultFee();
-            } else {
-                // (ج) أولوية ثالثة: استخدام الرسوم الافتراضية للنظام
-                var systemDefaultFee = telemetrySettingsRepository.findBySettingKey("DEFAULT_DELIVERY_FEE");
-                if (systemDefaultFee.isPresent()) {
-                    try {
-                        deliveryFee = new BigDecimal(systemDefaultFee.get().getSettingValue());
-                    } catch (NumberFormatException e) {
-                        deliveryFee = BigDecimal.valueOf(50.00); // قيمة احتياطية
-                    }
-                } else {
-                    deliveryFee = BigDecimal.valueOf(50.00); // قيمة افتراضية نهائية
-                }
-            }
-        }
-        
-        // تعيين الرسوم المحسوبة للشحنة
-        shipment.setDeliveryFee(deliveryFee);
+        // من جداول PricingEngine المُجمّعة — بدون استعلامات لكل شحنة
+        shipment.setDeliveryFee(pricingEngine.deliveryFee(merchantId, zoneId));
     }
 
     private void createStatusHistory(Shipment shipment, ShipmentStatus status, String notes) {
@@ -495,6 +466,7 @@ public class ShipmentService {
             shipment.setUpdatedAt(Instant.now());
             
             Shipment savedShipment = shipmentRepository.save(shipment);
+            pricingEngine.recordShipment(merchantId);
             
             // Create status history
             createStatusHistory(savedShipment, pendingStatus, "Shipment created");
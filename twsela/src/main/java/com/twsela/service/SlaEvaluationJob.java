@@ -0,0 +1,119 @@
+package com.twsela.service;
+
+import com.twsela.config.SchedulingConfig;
+import com.twsela.domain.ContractSlaTerms;
+import com.twsela.repository.ContractSlaTermsRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * تقييم SLA الليلي لكل العقود النشطة.
+ * <p>
+ * One query loads the SLA terms of every active contract; the contracts are then evaluated
+ * on a bounded pool, each storing its current review period to date and the previous,
+ * completed period (deliveries made after a period ends can still change its late count).
+ * Every evaluation commits on its own through {@link ContractSlaService#storeEvaluation}, so
+ * a contract that fails is logged and retried the next night without affecting the others.
+ */
+@Service
+public class SlaEvaluationJob {
+
+    private static final Logger log = LoggerFactory.getLogger(SlaEvaluationJob.class);
+
+    /** Outcome of a run; failed contracts are listed in contract-id order. */
+    public record RunResult(int contracts, int evaluations, List<Long> failedContractIds) {}
+
+    private final ContractSlaTermsRepository slaRepository;
+    private final ContractSlaService slaService;
+    private final int parallelism;
+
+    public SlaEvaluationJob(ContractSlaTermsRepository slaRepository,
+                            ContractSlaService slaService,
+                            @Value("${app.sla.evaluation-parallelism:4}") int parallelism) {
+        this.slaRepository = slaRepository;
+        this.slaService = slaService;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    @Scheduled(cron = "${app.sla.evaluation-cron:0 30 2 * * *}", zone = "Africa/Cairo",
+            scheduler = SchedulingConfig.BATCH_SCHEDULER)
+    public void scheduledEvaluate() {
+        try {
+            evaluateAll(Instant.now());
+        } catch (RuntimeException e) {
+            log.error("SLA evaluation failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Store the current and previous review period of every active contract with SLA terms.
+     */
+    public RunResult evaluateAll(Instant now) {
+        long started = System.nanoTime();
+        List<ContractSlaTerms> terms = slaRepository.findAllForActiveContracts();
+        if (terms.isEmpty()) {
+            return new RunResult(0, 0, List.of());
+        }
+
+        AtomicInteger workerIds = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, terms.size()), runnable -> {
+            Thread thread = new Thread(runnable, "sla-eval-" + workerIds.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        int evaluations = 0;
+        List<Long> failed = new ArrayList<>();
+        try {
+            List<Callable<Integer>> tasks = new ArrayList<>(terms.size());
+            for (ContractSlaTerms sla : terms) {
+                tasks.add(() -> evaluate(sla, now));
+            }
+            List<Future<Integer>> results = pool.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    evaluations += results.get(i).get();
+                } catch (ExecutionException e) {
+                    Long contractId = terms.get(i).getContract().getId();
+                    failed.add(contractId);
+                    log.error("SLA evaluation of contract {} failed: {}", contractId, e.getCause().getMessage(),
+                            e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("SLA evaluation interrupted after {} evaluations", evaluations);
+        } finally {
+            pool.shutdownNow();
+        }
+
+        failed.sort(Long::compare);
+        log.info("SLA evaluation: {} contracts, {} evaluations, {} failed in {} ms", terms.size(), evaluations,
+                failed.size(), (System.nanoTime() - started) / 1_000_000);
+        return new RunResult(terms.size(), evaluations, failed);
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    private int evaluate(ContractSlaTerms sla, Instant now) {
+        ContractSlaService.Period current = ContractSlaService.reviewPeriod(sla.getSlaReviewPeriod(), now);
+        ContractSlaService.Period previous = ContractSlaService.reviewPeriod(sla.getSlaReviewPeriod(),
+                current.start().minusSeconds(1));
+        slaService.storeEvaluation(sla, previous, now);
+        slaService.storeEvaluation(sla, current, now);
+        return 2;
+    }
+}
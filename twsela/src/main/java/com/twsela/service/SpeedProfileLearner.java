@@ -0,0 +1,355 @@
+package com.twsela.service;
+
+import com.twsela.config.SchedulingConfig;
+import com.twsela.config.StreamingJdbc;
+import com.twsela.domain.SpeedProfile;
+import com.twsela.repository.SpeedProfileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * تعلّم ملفات السرعة لكل منطقة وساعة من نقاط الموقع التاريخية.
+ * <p>
+ * Runs nightly over a rolling window of {@code location_pings}, read with one forward-only
+ * cursor ordered by session and time. Consecutive pings of a session form segments; a
+ * segment counts toward the zone (of the session's shipment) and local hour it started in.
+ * Segments with a long gap, poor GPS accuracy or an implausible speed are dropped. Moving
+ * time and short halts give the travel speed; longer halts are stops and give the dwell
+ * time per stop. The driven path of each trip between stops over its straight-line span
+ * gives the detour factor. Only the cells observed in the window are rewritten; the others
+ * keep their last values.
+ */
+@Service
+public class SpeedProfileLearner {
+
+    private static final Logger log = LoggerFactory.getLogger(SpeedProfileLearner.class);
+
+    static final String PINGS_SQL =
+            "SELECT lp.tracking_session_id, s.zone_id, lp.lat, lp.lng, lp.accuracy, lp.timestamp " +
+            "FROM location_pings lp " +
+            "JOIN tracking_sessions ts ON ts.id = lp.tracking_session_id " +
+            "JOIN shipments s ON s.id = ts.shipment_id " +
+            "WHERE lp.timestamp >= ? " +
+            "ORDER BY lp.tracking_session_id, lp.timestamp";
+
+    /** Outcome of a learning run. */
+    public record LearnResult(long pings, long segments, int profiles, long durationMs) {}
+
+    /** Aggregated observations for one zone and local hour. */
+    record Cell(Long zoneId, int hourOfDay, double km, long seconds, double tripPathKm, double tripStraightKm,
+                int stops, long dwellSeconds) {}
+
+    private final SpeedProfileRepository profileRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ETACalculationService etaCalculationService;
+    private final int lookbackDays;
+    private final int fetchSize;
+    private final int maxGapSeconds;
+    private final double maxSpeedKmh;
+    private final double maxAccuracyMeters;
+    private final double minTripKm;
+
+    @Autowired
+    public SpeedProfileLearner(SpeedProfileRepository profileRepository,
+                               StreamingJdbc streamingJdbc,
+                               ETACalculationService etaCalculationService,
+                               @Value("${app.eta.learner.lookback-days:28}") int lookbackDays,
+                               @Value("${app.eta.learner.fetch-size:5000}") int fetchSize,
+                               @Value("${app.eta.learner.max-gap-seconds:300}") int maxGapSeconds,
+                               @Value("${app.eta.learner.max-speed-kmh:130}") double maxSpeedKmh,
+                               @Value("${app.eta.learner.max-accuracy-meters:50}") double maxAccuracyMeters,
+                               @Value("${app.eta.learner.min-trip-km:0.5}") double minTripKm) {
+        this(profileRepository, streamingJdbc.getJdbcTemplate(), etaCalculationService, lookbackDays, fetchSize,
+                maxGapSeconds, maxSpeedKmh, maxAccuracyMeters, minTripKm);
+    }
+
+    SpeedProfileLearner(SpeedProfileRepository profileRepository, JdbcTemplate jdbcTemplate,
+                        ETACalculationService etaCalculationService, int lookbackDays, int fetchSize,
+                        int maxGapSeconds, double maxSpeedKmh, double maxAccuracyMeters, double minTripKm) {
+        this.profileRepository = profileRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.etaCalculationService = etaCalculationService;
+        this.lookbackDays = lookbackDays;
+        this.fetchSize = fetchSize;
+        this.maxGapSeconds = maxGapSeconds;
+        this.maxSpeedKmh = maxSpeedKmh;
+        this.maxAccuracyMeters = maxAccuracyMeters;
+        this.minTripKm = minTripKm;
+    }
+
+    @Scheduled(cron = "${app.eta.learner.cron:0 30 3 * * *}", zone = "Africa/Cairo",
+            scheduler = SchedulingConfig.BATCH_SCHEDULER)
+    public void scheduledLearn() {
+        try {
+            learn();
+        } catch (RuntimeException e) {
+            log.error("Speed profile learning failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Rebuild the profiles observed in the lookback window and reload them into the ETA engine.
+     */
+    @Transactional
+    public LearnResult learn() {
+        long started = System.nanoTime();
+        Instant since = Instant.now().minus(Duration.ofDays(lookbackDays));
+        PreparedStatementCreator cursor = connection -> {
+            PreparedStatement ps = connection.prepareStatement(PINGS_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setTimestamp(1, Timestamp.from(since));
+            return ps;
+        };
+
+        Accumulator accumulator = newAccumulator();
+        jdbcTemplate.query(cursor, rs -> {
+            long zoneId = rs.getLong(2);
+            Long zone = rs.wasNull() ? null : zoneId;
+            float accuracy = rs.getFloat(5);
+            Float fix = rs.wasNull() ? null : accuracy;
+            accumulator.accept(rs.getLong(1), zone, rs.getDouble(3), rs.getDouble(4), fix,
+                    rs.getTimestamp(6).toInstant());
+        });
+        List<Cell> cells = accumulator.finish();
+
+        Map<String, SpeedProfile> existing = new HashMap<>();
+        for (SpeedProfile profile : profileRepository.findAll()) {
+            existing.put(key(profile.getZoneId(), profile.getHourOfDay()), profile);
+        }
+        Instant now = Instant.now();
+        List<SpeedProfile> changed = new ArrayList<>(cells.size());
+        for (Cell cell : cells) {
+            SpeedProfile profile = existing.computeIfAbsent(key(cell.zoneId(), cell.hourOfDay()),
+                    k -> new SpeedProfile(cell.zoneId(), cell.hourOfDay()));
+            apply(cell, profile);
+            profile.setUpdatedAt(now);
+            changed.add(profile);
+        }
+        profileRepository.saveAll(changed);
+        etaCalculationService.reloadProfiles();
+
+        LearnResult result = new LearnResult(accumulator.pings(), accumulator.segments(), changed.size(),
+                (System.nanoTime() - started) / 1_000_000);
+        log.info("Speed profiles learned since {}: pings={}, segments={}, profiles={} in {} ms",
+                since, result.pings(), result.segments(), result.profiles(), result.durationMs());
+        return result;
+    }
+
+    Accumulator newAccumulator() {
+        return new Accumulator(maxGapSeconds, maxSpeedKmh, maxAccuracyMeters, minTripKm);
+    }
+
+    /**
+     * Copy a cell's aggregates onto its stored profile. A quantity the cell did not observe
+     * keeps the profile's previous value (0 on a new profile, meaning none observed yet).
+     */
+    static void apply(Cell cell, SpeedProfile profile) {
+        if (cell.seconds() > 0) {
+            profile.setSpeedKmh(cell.km() / cell.seconds() * 3600.0);
+            profile.setSampleSeconds(cell.seconds());
+        }
+        if (cell.tripStraightKm() > 0) {
+            profile.setDetourFactor(Math.min(SpeedProfiles.MAX_DETOUR,
+                    Math.max(SpeedProfiles.MIN_DETOUR, cell.tripPathKm() / cell.tripStraightKm())));
+        }
+        if (cell.stops() > 0) {
+            profile.setStopDwellSeconds((double) cell.dwellSeconds() / cell.stops());
+            profile.setStopCount(cell.stops());
+        }
+    }
+
+    private static String key(Long zoneId, int hour) {
+        return zoneId + ":" + hour;
+    }
+
+    /**
+     * Folds pings, in session then time order, into per-zone per-hour cells. Holds only the
+     * current session's state, so memory does not grow with the number of pings.
+     * <p>
+     * A halt (below {@link #STOPPED_SPEED_KMH}) is held back until it ends: shorter than
+     * {@link #MIN_STOP_SECONDS} it is travel time, as at a traffic light; longer it is a
+     * stop, whose time is dwell and which ends the current trip.
+     */
+    static final class Accumulator {
+
+        static final double STOPPED_SPEED_KMH = 3.0;
+        static final long MIN_STOP_SECONDS = 90;
+
+        private final int maxGapSeconds;
+        private final double maxSpeedKmh;
+        private final double maxAccuracyMeters;
+        private final double minTripKm;
+        // Per "zone:hour": km, seconds, trip path km, trip straight km, stops, dwell seconds
+        private final Map<String, double[]> cells = new HashMap<>();
+        private final Map<String, Long> cellZones = new HashMap<>();
+
+        private long pings;
+        private long segments;
+
+        private long sessionId = Long.MIN_VALUE;
+        private Long zoneId;
+        private double lastLat;
+        private double lastLng;
+        private Instant lastAt;
+        private double tripStartLat;
+        private double tripStartLng;
+        private Instant tripStartAt;
+        private double tripPathKm;
+        private Instant haltStartAt;
+        private long haltSeconds;
+        private double haltKm;
+
+        Accumulator(int maxGapSeconds, double maxSpeedKmh, double maxAccuracyMeters, double minTripKm) {
+            this.maxGapSeconds = maxGapSeconds;
+            this.maxSpeedKmh = maxSpeedKmh;
+            this.maxAccuracyMeters = maxAccuracyMeters;
+            this.minTripKm = minTripKm;
+        }
+
+        void accept(long sessionId, Long zoneId, double lat, double lng, Float accuracy, Instant at) {
+            pings++;
+            if (zoneId == null || (accuracy != null && accuracy > maxAccuracyMeters)) {
+                return;
+            }
+            if (sessionId != this.sessionId) {
+                endTrip();
+                this.sessionId = sessionId;
+                this.zoneId = zoneId;
+                startTrip(lat, lng, at);
+                return;
+            }
+            long seconds = Duration.between(lastAt, at).getSeconds();
+            if (seconds <= 0) {
+                return;
+            }
+            if (seconds > maxGapSeconds) {
+                endTrip();
+                startTrip(lat, lng, at);
+                return;
+            }
+            double km = SmartAssignmentService.haversineKm(lastLat, lastLng, lat, lng);
+            double kmh = km / seconds * 3600.0;
+            if (kmh > maxSpeedKmh) {
+                return; // GPS jump: keep comparing against the last good fix
+            }
+            segments++;
+            if (kmh < STOPPED_SPEED_KMH) {
+                if (haltSeconds == 0) {
+                    haltStartAt = lastAt;
+                }
+                haltSeconds += seconds;
+                haltKm += km;
+            } else {
+                settleHalt();
+                addTravel(lastAt, km, seconds);
+            }
+            lastLat = lat;
+            lastLng = lng;
+            lastAt = at;
+        }
+
+        /** Close the open trip and return every observed cell. */
+        List<Cell> finish() {
+            endTrip();
+            sessionId = Long.MIN_VALUE;
+            List<Cell> result = new ArrayList<>(cells.size());
+            cells.forEach((key, sums) -> {
+                if (sums[1] > 0 || sums[4] > 0) {
+                    int hour = Integer.parseInt(key.substring(key.indexOf(':') + 1));
+                    result.add(new Cell(cellZones.get(key), hour, sums[0], (long) sums[1], sums[2], sums[3],
+                            (int) sums[4], (long) sums[5]));
+                }
+            });
+            return result;
+        }
+
+        long pings() {
+            return pings;
+        }
+
+        long segments() {
+            return segments;
+        }
+
+        private void addTravel(Instant from, double km, long seconds) {
+            double[] cell = cell(zoneId, hourOf(from));
+            cell[0] += km;
+            cell[1] += seconds;
+            tripPathKm += km;
+        }
+
+        /** Resolve a pending halt into travel time or a stop; a stop ends the trip there. */
+        private void settleHalt() {
+            if (haltSeconds == 0) {
+                return;
+            }
+            if (haltSeconds >= MIN_STOP_SECONDS) {
+                double[] cell = cell(zoneId, hourOf(haltStartAt));
+                cell[4] += 1;
+                cell[5] += haltSeconds;
+                closeTrip();
+                tripStartLat = lastLat;
+                tripStartLng = lastLng;
+                tripStartAt = lastAt;
+                tripPathKm = 0;
+            } else {
+                addTravel(haltStartAt, haltKm, haltSeconds);
+            }
+            haltSeconds = 0;
+            haltKm = 0;
+        }
+
+        private void startTrip(double lat, double lng, Instant at) {
+            lastLat = tripStartLat = lat;
+            lastLng = tripStartLng = lng;
+            lastAt = tripStartAt = at;
+            tripPathKm = 0;
+        }
+
+        private void endTrip() {
+            if (tripStartAt == null) {
+                return;
+            }
+            settleHalt();
+            closeTrip();
+            tripStartAt = null;
+        }
+
+        private void closeTrip() {
+            double straightKm = SmartAssignmentService.haversineKm(tripStartLat, tripStartLng, lastLat, lastLng);
+            if (straightKm >= minTripKm) {
+                double[] cell = cell(zoneId, hourOf(tripStartAt));
+                cell[2] += tripPathKm;
+                cell[3] += straightKm;
+            }
+        }
+
+        private double[] cell(Long zoneId, int hour) {
+            String key = SpeedProfileLearner.key(zoneId, hour);
+            cellZones.putIfAbsent(key, zoneId);
+            return cells.computeIfAbsent(key, k -> new double[6]);
+        }
+
+        private static int hourOf(Instant at) {
+            return at.atZone(SpeedProfiles.LOCAL_ZONE).getHour();
+        }
+    }
+}
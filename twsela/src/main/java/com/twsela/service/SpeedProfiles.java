@@ -0,0 +1,178 @@
+package com.twsela.service;
+
+import com.twsela.domain.SpeedProfile;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * جدول سرعات مُتعلَّمة لكل منطقة وساعة — نسخة ثابتة تُستبدل بالكامل عند إعادة التحميل.
+ * <p>
+ * Lookups fall back from the zone's hour, to the zone over all hours, to all zones at that
+ * hour, to the configured defaults. Speeds and detour factors are used once a level holds
+ * at least {@code minSampleSeconds} of observed travel, stop dwell times once it holds
+ * {@link #MIN_STOPS} stops; aggregates are weighted by those same counts.
+ */
+public final class SpeedProfiles {
+
+    static final ZoneId LOCAL_ZONE = ZoneId.of("Africa/Cairo");
+    static final double MIN_SPEED_KMH = 5.0;
+    static final double MAX_SPEED_KMH = 90.0;
+    static final double MIN_DETOUR = 1.0;
+    static final double MAX_DETOUR = 3.0;
+    static final int MIN_STOPS = 5;
+
+    private final Table speed = new Table();
+    private final Table detour = new Table();
+    private final Table dwell = new Table();
+    private final double defaultSpeedKmh;
+    private final double defaultDetour;
+    private final double defaultDwellSeconds;
+    private final int profileCount;
+
+    private SpeedProfiles(List<SpeedProfile> profiles, long minSampleSeconds, double defaultSpeedKmh,
+                          double defaultDetour, double defaultDwellSeconds) {
+        this.defaultSpeedKmh = defaultSpeedKmh;
+        this.defaultDetour = defaultDetour;
+        this.defaultDwellSeconds = defaultDwellSeconds;
+        this.profileCount = profiles.size();
+        for (SpeedProfile profile : profiles) {
+            int hour = profile.getHourOfDay();
+            if (hour < 0 || hour > 23) {
+                continue;
+            }
+            if (profile.getSpeedKmh() > 0 && profile.getSampleSeconds() > 0) {
+                speed.add(profile.getZoneId(), hour, profile.getSpeedKmh(), profile.getSampleSeconds());
+                if (profile.getDetourFactor() > 0) {
+                    detour.add(profile.getZoneId(), hour, profile.getDetourFactor(), profile.getSampleSeconds());
+                }
+            }
+            if (profile.getStopCount() > 0) {
+                dwell.add(profile.getZoneId(), hour, profile.getStopDwellSeconds(), profile.getStopCount());
+            }
+        }
+        speed.seal(minSampleSeconds);
+        detour.seal(minSampleSeconds);
+        dwell.seal(MIN_STOPS);
+    }
+
+    public static SpeedProfiles of(List<SpeedProfile> profiles, long minSampleSeconds, double defaultSpeedKmh,
+                                   double defaultDetour, double defaultDwellSeconds) {
+        return new SpeedProfiles(profiles, minSampleSeconds, defaultSpeedKmh, defaultDetour, defaultDwellSeconds);
+    }
+
+    public static SpeedProfiles empty(double defaultSpeedKmh, double defaultDetour, double defaultDwellSeconds) {
+        return of(List.of(), 1, defaultSpeedKmh, defaultDetour, defaultDwellSeconds);
+    }
+
+    /** Travel speed for the zone at the given local hour, in km/h. */
+    public double speedKmh(Long zoneId, int hourOfDay) {
+        return clamp(speed.lookup(zoneId, hourOfDay, defaultSpeedKmh), MIN_SPEED_KMH, MAX_SPEED_KMH);
+    }
+
+    /** Road distance over straight-line distance for the zone at the given local hour. */
+    public double detourFactor(Long zoneId, int hourOfDay) {
+        return clamp(detour.lookup(zoneId, hourOfDay, defaultDetour), MIN_DETOUR, MAX_DETOUR);
+    }
+
+    /** Seconds a courier spends at a stop in the zone at the given local hour. */
+    public double stopDwellSeconds(Long zoneId, int hourOfDay) {
+        return Math.max(0, dwell.lookup(zoneId, hourOfDay, defaultDwellSeconds));
+    }
+
+    /**
+     * Seconds to cover {@code roadKm} starting at {@code start}, switching to the next hour's
+     * speed whenever the trip crosses an hour boundary.
+     */
+    public long travelSeconds(Long zoneId, double roadKm, Instant start) {
+        double remainingKm = roadKm;
+        double seconds = 0;
+        ZonedDateTime at = start.atZone(LOCAL_ZONE);
+        for (int hours = 0; remainingKm > 1e-9; hours++) {
+            double kmh = speedKmh(zoneId, at.getHour());
+            long secondsLeftInHour = 3600 - (at.getMinute() * 60L + at.getSecond());
+            double reachableKm = kmh * secondsLeftInHour / 3600.0;
+            if (reachableKm >= remainingKm || hours >= 48) {
+                seconds += remainingKm / kmh * 3600.0;
+                break;
+            }
+            remainingKm -= reachableKm;
+            seconds += secondsLeftInHour;
+            at = at.plusSeconds(secondsLeftInHour);
+        }
+        return Math.round(seconds);
+    }
+
+    /** Number of stored profiles this table was built from. */
+    public int size() {
+        return profileCount;
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.min(max, Math.max(min, value));
+    }
+
+    /**
+     * One learned quantity at three levels of detail, each a weighted mean; a level is only
+     * answered from once its weight reaches the threshold passed to {@link #seal}.
+     */
+    private static final class Table {
+        private final Map<Long, double[][]> zoneHour = new HashMap<>();
+        private final Map<Long, double[]> zone = new HashMap<>();
+        private final double[][] hour = new double[24][2];
+        private final Map<Long, double[]> zoneHourValue = new HashMap<>();
+        private final Map<Long, Double> zoneValue = new HashMap<>();
+        private final double[] hourValue = new double[24];
+
+        void add(Long zoneId, int hourOfDay, double value, double weight) {
+            double[] cell = zoneHour.computeIfAbsent(zoneId, z -> new double[24][2])[hourOfDay];
+            cell[0] += value * weight;
+            cell[1] += weight;
+            double[] zoneSums = zone.computeIfAbsent(zoneId, z -> new double[2]);
+            zoneSums[0] += value * weight;
+            zoneSums[1] += weight;
+            hour[hourOfDay][0] += value * weight;
+            hour[hourOfDay][1] += weight;
+        }
+
+        void seal(double minWeight) {
+            zoneHour.forEach((zoneId, hours) -> {
+                double[] values = new double[24];
+                for (int h = 0; h < 24; h++) {
+                    values[h] = hours[h][1] >= minWeight ? hours[h][0] / hours[h][1] : Double.NaN;
+                }
+                zoneHourValue.put(zoneId, values);
+            });
+            zone.forEach((zoneId, sums) -> {
+                if (sums[1] >= minWeight) {
+                    zoneValue.put(zoneId, sums[0] / sums[1]);
+                }
+            });
+            Arrays.fill(hourValue, Double.NaN);
+            for (int h = 0; h < 24; h++) {
+                if (hour[h][1] >= minWeight) {
+                    hourValue[h] = hour[h][0] / hour[h][1];
+                }
+            }
+        }
+
+        double lookup(Long zoneId, int hourOfDay, double fallback) {
+            if (zoneId != null) {
+                double[] hours = zoneHourValue.get(zoneId);
+                if (hours != null && !Double.isNaN(hours[hourOfDay])) {
+                    return hours[hourOfDay];
+                }
+                Double value = zoneValue.get(zoneId);
+                if (value != null) {
+                    return value;
+                }
+            }
+            return !Double.isNaN(hourValue[hourOfDay]) ? hourValue[hourOfDay] : fallback;
+        }
+    }
+}
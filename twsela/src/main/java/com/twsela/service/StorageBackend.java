@@ -0,0 +1,53 @@
+package com.twsela.service;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Storage backend behind {@link FileStorageService}.
+ * Selected with {@code app.storage.backend}; {@link LocalDiskStorageBackend} is the default,
+ * an S3-compatible implementation can be dropped in later without touching callers.
+ * <p>
+ * Keys are relative, slash-separated paths such as {@code delivery-photos/<sha256>.jpg}.
+ * Writes always go through a staged temp file that is committed in one step, so readers
+ * never see a partial object.
+ */
+public interface StorageBackend {
+
+    /** Size and modification time of a stored object. */
+    record ObjectInfo(String key, long size, Instant lastModified) {}
+
+    /**
+     * Create an empty temp file to stage an upload in. The caller either commits it
+     * or deletes it.
+     */
+    Path createStagingFile() throws IOException;
+
+    /**
+     * Publish a staged file under {@code key}; the staged file is consumed either way.
+     *
+     * @param replace overwrite an existing object; when false an existing object is kept
+     * @return true if the staged content was written, false if the key already existed
+     */
+    boolean commit(Path staged, String key, boolean replace) throws IOException;
+
+    /** Metadata of the object, or empty if it does not exist. */
+    Optional<ObjectInfo> stat(String key) throws IOException;
+
+    /** The object as a readable resource; reading it never loads the whole object into memory. */
+    Resource open(String key);
+
+    /**
+     * The object as a file on local disk, for servers that can send it with {@code sendfile}
+     * ({@code FileChannel.transferTo} straight to the socket);
+     * empty when the backend is not file based.
+     */
+    Optional<Path> localPath(String key);
+
+    /** Delete the object; returns false if it did not exist. */
+    boolean delete(String key) throws IOException;
+}
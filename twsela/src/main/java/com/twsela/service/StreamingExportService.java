@@ -0,0 +1,394 @@
+package com.twsela.service;
+
+import com.twsela.config.StreamingJdbc;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * تصدير البيانات على مستوى الصفوف (شحنات، تسويات، فواتير) بشكل متدفق.
+ * <p>
+ * Rows are read through a forward-only, read-only JDBC cursor with a fixed fetch size
+ * (on MySQL through the cursor-fetch connections of {@link StreamingJdbc}) and
+ * written straight to the caller's stream — CSV as it goes, XLSX through an
+ * {@link SXSSFWorkbook} that keeps only a small window of rows in memory and spills the
+ * rest to compressed temp files. Heap use does not grow with the number of rows.
+ */
+@Service
+public class StreamingExportService {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingExportService.class);
+
+    static final int MAX_ROWS_PER_SHEET = 1_000_000;
+    private static final int PROGRESS_EVERY = 10_000;
+    private static final ZoneId REPORT_ZONE = ZoneId.of("Africa/Cairo");
+    private static final DateTimeFormatter CSV_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    public enum Format { CSV, XLSX }
+
+    /**
+     * Exportable row sets: selected columns (in {@code headers} order), the FROM clause,
+     * the column filtered by date range and the one backing the optional status filter.
+     */
+    public enum Dataset {
+        SHIPMENTS(
+                "s.tracking_number, ss.name, m.name, z.name, r.name, r.phone, " +
+                "s.item_value, s.cod_amount, s.delivery_fee, s.created_at, s.delivered_at",
+                "shipments s " +
+                "JOIN shipment_statuses ss ON ss.id = s.status_id " +
+                "JOIN users m ON m.id = s.merchant_id " +
+                "JOIN zones z ON z.id = s.zone_id " +
+                "JOIN recipient_details r ON r.id = s.recipient_detail_id",
+                "s.created_at", "ss.name",
+                "Tracking Number", "Status", "Merchant", "Zone", "Recipient", "Recipient Phone",
+                "Item Value", "COD Amount", "Delivery Fee", "Created At", "Delivered At"),
+        SETTLEMENTS(
+                "sb.settlement_number, sb.status, si.type, m.name, sh.tracking_number, " +
+                "si.amount, si.fee, si.net_amount, si.description, si.created_at",
+                "settlement_items si " +
+                "JOIN settlement_batches sb ON sb.id = si.batch_id " +
+                "LEFT JOIN users m ON m.id = si.merchant_id " +
+                "LEFT JOIN shipments sh ON sh.id = si.shipment_id",
+                "si.created_at", "sb.status",
+                "Settlement Number", "Batch Status", "Type", "Merchant", "Tracking Number",
+                "Amount", "Fee", "Net Amount", "Description", "Created At"),
+        INVOICES(
+                "i.invoice_number, m.name, i.status, i.amount, i.tax, i.total_amount, " +
+                "i.due_date, i.paid_at, i.payment_gateway, i.created_at",
+                "invoices i " +
+                "JOIN merchant_subscriptions ms ON ms.id = i.subscription_id " +
+                "JOIN users m ON m.id = ms.merchant_id",
+                "i.created_at", "i.status",
+                "Invoice Number", "Merchant", "Status", "Amount", "Tax", "Total",
+                "Due Date", "Paid At", "Payment Gateway", "Created At");
+
+        private final String columns;
+        private final String from;
+        private final String dateColumn;
+        private final String statusColumn;
+        private final String[] headers;
+
+        Dataset(String columns, String from, String dateColumn, String statusColumn, String... headers) {
+            this.columns = columns;
+            this.from = from;
+            this.dateColumn = dateColumn;
+            this.statusColumn = statusColumn;
+            this.headers = headers;
+        }
+
+        public String[] getHeaders() {
+            return headers.clone();
+        }
+    }
+
+    /** Rows of {@code dataset} created in [from, to), optionally with one status. */
+    public record ExportQuery(Dataset dataset, Instant from, Instant to, String status) {}
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int fetchSize;
+    private final int rowWindow;
+
+    @Autowired
+    public StreamingExportService(StreamingJdbc streamingJdbc,
+                                  @Value("${app.reports.export.fetch-size:1000}") int fetchSize,
+                                  @Value("${app.reports.export.row-window:200}") int rowWindow) {
+        this(streamingJdbc.getJdbcTemplate(), fetchSize, rowWindow);
+    }
+
+    StreamingExportService(JdbcTemplate jdbcTemplate, int fetchSize, int rowWindow) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = fetchSize;
+        this.rowWindow = rowWindow;
+    }
+
+    /**
+     * Stream the query result to {@code out}. The stream is flushed but not closed.
+     *
+     * @return number of data rows written
+     */
+    public long export(ExportQuery query, Format format, OutputStream out) throws IOException {
+        return export(query, format, out, rows -> { });
+    }
+
+    /**
+     * As {@link #export(ExportQuery, Format, OutputStream)}, calling {@code progress} with
+     * the running row count every {@value #PROGRESS_EVERY} rows.
+     */
+    public long export(ExportQuery query, Format format, OutputStream out, LongConsumer progress) throws IOException {
+        long started = System.nanoTime();
+        long rows;
+        try (RowSink sink = format == Format.XLSX ? new XlsxSink(rowWindow) : new CsvSink(out)) {
+            sink.header(query.dataset().headers);
+            rows = streamRows(query, sink, progress);
+            sink.finish(out);
+        }
+        log.info("Exported {} {} rows as {} in {} ms", rows, query.dataset(), format,
+                (System.nanoTime() - started) / 1_000_000);
+        return rows;
+    }
+
+    /**
+     * Count matching rows (used for job progress).
+     */
+    public long count(ExportQuery query) {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM ").append(query.dataset().from);
+        List<Object> args = appendFilters(sql, query);
+        Long count = jdbcTemplate.queryForObject(sql.toString(), Long.class, args.toArray());
+        return count != null ? count : 0;
+    }
+
+    private long streamRows(ExportQuery query, RowSink sink, LongConsumer progress) throws IOException {
+        StringBuilder sql = new StringBuilder("SELECT ").append(query.dataset().columns)
+                .append(" FROM ").append(query.dataset().from);
+        List<Object> args = appendFilters(sql, query);
+        sql.append(" ORDER BY ").append(query.dataset().dateColumn);
+
+        PreparedStatementCreator cursor = connection -> {
+            PreparedStatement ps = connection.prepareStatement(sql.toString(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        };
+
+        int columns = query.dataset().headers.length;
+        Object[] values = new Object[columns];
+        long[] written = {0};
+        try {
+            jdbcTemplate.query(cursor, rs -> {
+                for (int i = 0; i < columns; i++) {
+                    values[i] = rs.getObject(i + 1);
+                }
+                try {
+                    sink.row(values);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (++written[0] % PROGRESS_EVERY == 0) {
+                    progress.accept(written[0]);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return written[0];
+    }
+
+    private static List<Object> appendFilters(StringBuilder sql, ExportQuery query) {
+        List<Object> args = new ArrayList<>(3);
+        String dateColumn = query.dataset().dateColumn;
+        sql.append(" WHERE ").append(dateColumn).append(" >= ? AND ").append(dateColumn).append(" < ?");
+        args.add(Timestamp.from(query.from()));
+        args.add(Timestamp.from(query.to()));
+        if (query.status() != null && !query.status().isBlank()) {
+            sql.append(" AND ").append(query.dataset().statusColumn).append(" = ?");
+            args.add(query.status());
+        }
+        return args;
+    }
+
+    private static LocalDateTime toLocal(Object value) {
+        if (value instanceof Timestamp ts) {
+            return LocalDateTime.ofInstant(ts.toInstant(), REPORT_ZONE);
+        }
+        if (value instanceof LocalDateTime ldt) {
+            return ldt;
+        }
+        return null;
+    }
+
+    // ── Sinks ──────────────────────────────────────────────────
+
+    private interface RowSink extends AutoCloseable {
+        void header(String[] headers) throws IOException;
+
+        void row(Object[] values) throws IOException;
+
+        void finish(OutputStream out) throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * RFC 4180 CSV with a UTF-8 BOM so Excel opens Arabic text correctly.
+     * Cells starting with a formula character are prefixed with {@code '}.
+     */
+    static final class CsvSink implements RowSink {
+
+        private final Writer writer;
+
+        CsvSink(OutputStream out) throws IOException {
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+            writer.write('\uFEFF');
+        }
+
+        @Override
+        public void header(String[] headers) throws IOException {
+            row(headers);
+        }
+
+        @Override
+        public void row(Object[] values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writeCell(values[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        private void writeCell(Object value) throws IOException {
+            if (value == null) {
+                return;
+            }
+            if (value instanceof Number) {
+                writer.write(value instanceof BigDecimal bd ? bd.toPlainString() : value.toString());
+                return;
+            }
+            LocalDateTime dateTime = toLocal(value);
+            if (dateTime != null) {
+                writer.write(CSV_DATE_TIME.format(dateTime));
+                return;
+            }
+            String text = value.toString();
+            boolean formula = !text.isEmpty() && "=+-@".indexOf(text.charAt(0)) >= 0;
+            boolean quote = formula || text.indexOf(',') >= 0 || text.indexOf('"') >= 0
+                    || text.indexOf('\n') >= 0 || text.indexOf('\r') >= 0;
+            if (!quote) {
+                writer.write(text);
+                return;
+            }
+            writer.write('"');
+            if (formula) {
+                writer.write('\'');
+            }
+            writer.write(text.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        @Override
+        public void finish(OutputStream out) throws IOException {
+            writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+        }
+    }
+
+    /**
+     * SXSSF workbook keeping {@code rowWindow} rows in memory; starts a new sheet every
+     * {@value #MAX_ROWS_PER_SHEET} rows to stay under the XLSX sheet limit.
+     */
+    static final class XlsxSink implements RowSink {
+
+        private final SXSSFWorkbook workbook;
+        private final CellStyle headerStyle;
+        private final CellStyle dateStyle;
+        private String[] headers;
+        private SXSSFSheet sheet;
+        private int rowIndex;
+        private int sheetCount;
+
+        XlsxSink(int rowWindow) {
+            this.workbook = new SXSSFWorkbook(rowWindow);
+            workbook.setCompressTempFiles(true);
+            this.headerStyle = workbook.createCellStyle();
+            Font bold = workbook.createFont();
+            bold.setBold(true);
+            headerStyle.setFont(bold);
+            this.dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd hh:mm:ss"));
+        }
+
+        @Override
+        public void header(String[] headers) {
+            this.headers = headers;
+            newSheet();
+        }
+
+        private void newSheet() {
+            sheet = workbook.createSheet(++sheetCount == 1 ? "Data" : "Data " + sheetCount);
+            Row row = sheet.createRow(0);
+            for (int i = 0; i < headers.length; i++) {
+                Cell cell = row.createCell(i);
+                cell.setCellValue(headers[i]);
+                cell.setCellStyle(headerStyle);
+            }
+            sheet.createFreezePane(0, 1);
+            rowIndex = 1;
+        }
+
+        @Override
+        public void row(Object[] values) {
+            if (rowIndex > MAX_ROWS_PER_SHEET) {
+                newSheet();
+            }
+            Row row = sheet.createRow(rowIndex++);
+            for (int i = 0; i < values.length; i++) {
+                Object value = values[i];
+                if (value == null) {
+                    continue;
+                }
+                Cell cell = row.createCell(i);
+                if (value instanceof Number number) {
+                    cell.setCellValue(number.doubleValue());
+                } else {
+                    LocalDateTime dateTime = toLocal(value);
+                    if (dateTime != null) {
+                        cell.setCellValue(dateTime);
+                        cell.setCellStyle(dateStyle);
+                    } else {
+                        cell.setCellValue(value.toString());
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void finish(OutputStream out) throws IOException {
+            workbook.write(out);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+}
@@ -5,44 +5,52 @@ import com.twsela.web.exception.ResourceNotFoundException;
 import com.twsela.repository.TaxRuleRepository;
 import com.twsela.web.dto.CountryDTO.*;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Tax rules and tax calculation. Calculations read the rules from the in-memory
+ * {@link ReferenceDataCache}; rule management goes to the database.
+ */
 @Service
 @Transactional
 public class TaxService {
 
     private final TaxRuleRepository taxRuleRepository;
+    private final ReferenceDataCache referenceData;
 
-    public TaxService(TaxRuleRepository taxRuleRepository) {
+    public TaxService(TaxRuleRepository taxRuleRepository, ReferenceDataCache referenceData) {
         this.taxRuleRepository = taxRuleRepository;
+        this.referenceData = referenceData;
     }
 
     /**
      * Calculate total tax for an amount in a given country.
      */
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public TaxCalculationResponse calculateTax(BigDecimal amount, String countryCode) {
-        List<TaxRule> rules = taxRuleRepository.findApplicable(
-                countryCode.toUpperCase(), LocalDate.now());
+        return calculateTax(referenceData.snapshot(), amount, countryCode, LocalDate.now());
+    }
 
-        if (rules.isEmpty()) {
-            return new TaxCalculationResponse(amount, countryCode,
-                    BigDecimal.ZERO, BigDecimal.ZERO, amount, "NONE");
+    /**
+     * Calculate tax for every line with the rules in effect on {@code date} (today if null).
+     * All lines are taxed from the same snapshot, without a query per line.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public List<TaxCalculationResponse> calculateTaxes(List<TaxLineRequest> lines, LocalDate date) {
+        ReferenceData snapshot = referenceData.snapshot();
+        LocalDate effective = date != null ? date : LocalDate.now();
+        List<TaxCalculationResponse> results = new ArrayList<>(lines.size());
+        for (TaxLineRequest line : lines) {
+            results.add(calculateTax(snapshot, line.amount(), line.countryCode(), effective));
         }
-
-        // Use primary tax rule (first applicable — typically VAT)
-        TaxRule rule = rules.get(0);
-        BigDecimal taxAmount = amount.multiply(rule.getRate())
-                .setScale(2, RoundingMode.HALF_UP);
-        BigDecimal total = amount.add(taxAmount);
-
-        return new TaxCalculationResponse(amount, countryCode,
-                rule.getRate(), taxAmount, total, rule.getTaxType().name());
+        return results;
     }
 
     @Transactional(readOnly = true)
@@ -80,16 +88,31 @@ public class TaxService {
         return toResponse(taxRuleRepository.save(rule));
     }
 
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean isExempt(String countryCode, String category) {
-        List<TaxRule> rules = taxRuleRepository.findApplicable(
-                countryCode.toUpperCase(), LocalDate.now());
-        return rules.stream().anyMatch(r -> {
-            String exempt = r.getExemptCategories();
+        return referenceData.snapshot().taxRates(countryCode, LocalDate.now()).stream().anyMatch(r -> {
+            String exempt = r.exemptCategories();
             return exempt != null && exempt.contains(category);
         });
     }
 
+    private static TaxCalculationResponse calculateTax(ReferenceData snapshot, BigDecimal amount,
+                                                       String countryCode, LocalDate date) {
+        // Use primary tax rule (first applicable — typically VAT)
+        ReferenceData.TaxRate rule = snapshot.primaryTaxRate(countryCode, date).orElse(null);
+        if (rule == null) {
+            return new TaxCalculationResponse(amount, countryCode,
+                    BigDecimal.ZERO, BigDecimal.ZERO, amount, "NONE");
+        }
+
+        BigDecimal taxAmount = amount.multiply(rule.rate())
+                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal total = amount.add(taxAmount);
+
+        return new TaxCalculationResponse(amount, countryCode,
+                rule.rate(), taxAmount, total, rule.taxType().name());
+    }
+
     private TaxRuleResponse toResponse(TaxRule r) {
         return new TaxRuleResponse(r.getId(), r.getCountryCode(),
                 r.getTaxType().name(), r.getRate(), r.getExemptCategories(),
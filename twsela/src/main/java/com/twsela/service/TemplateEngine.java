@@ -8,20 +8,33 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Renders notification templates by substituting {{variable}} placeholders.
+ * <p>
+ * Templates are compiled once into {@link CompiledTemplate} segments and kept in a
+ * versioned cache keyed by event type and channel. {@link #invalidate} bumps the
+ * cache generation so every entry compiled earlier is reloaded on next use; a short
+ * TTL covers template edits made on other nodes. Ad-hoc template text passed to
+ * {@link #render} is compiled once per distinct text into a small bounded cache.
  */
 @Service
 public class TemplateEngine {
 
     private static final Logger log = LoggerFactory.getLogger(TemplateEngine.class);
-    private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\{\\{(\\w+)}}");
+    private static final long CACHE_TTL_NANOS = Duration.ofMinutes(5).toNanos();
+    private static final int MAX_POOLED_BUILDER_CAPACITY = 8 * 1024;
+    private static final int MAX_TEXT_CACHE_ENTRIES = 256;
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(512));
 
     private final NotificationTemplateRepository templateRepository;
+    private final ConcurrentHashMap<TemplateKey, CachedTemplate> cache = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final ConcurrentHashMap<String, CompiledTemplate> compiledByText = new ConcurrentHashMap<>();
 
     public TemplateEngine(NotificationTemplateRepository templateRepository) {
         this.templateRepository = templateRepository;
@@ -34,15 +47,24 @@ public class TemplateEngine {
         if (template == null || template.isBlank()) {
             return "";
         }
-        Matcher matcher = VARIABLE_PATTERN.matcher(template);
-        StringBuilder result = new StringBuilder();
-        while (matcher.find()) {
-            String varName = matcher.group(1);
-            String value = variables.getOrDefault(varName, "{{" + varName + "}}");
-            matcher.appendReplacement(result, Matcher.quoteReplacement(value));
+        return renderCompiled(compiledFor(template), variables);
+    }
+
+    /**
+     * Render an already compiled template using this thread's pooled buffer.
+     */
+    public String renderCompiled(CompiledTemplate template, Map<String, String> variables) {
+        if (template.isConstant()) {
+            return template.constantText();
         }
-        matcher.appendTail(result);
-        return result.toString();
+        StringBuilder sb = BUILDER.get();
+        sb.setLength(0);
+        template.renderTo(sb, variables);
+        String result = sb.toString();
+        if (sb.capacity() > MAX_POOLED_BUILDER_CAPACITY) {
+            BUILDER.set(new StringBuilder(512));
+        }
+        return result;
     }
 
     /**
@@ -52,21 +74,96 @@ public class TemplateEngine {
      */
     public String[] renderForChannel(NotificationType eventType, NotificationChannel channel,
                                       String locale, Map<String, String> variables) {
-        return templateRepository.findByEventTypeAndChannel(eventType, channel)
+        CachedTemplate cached = lookup(eventType, channel);
+        if (cached.body(locale) == null) {
+            return new String[]{null, null};
+        }
+        return new String[]{
+                cached.subject != null ? renderCompiled(cached.subject, variables) : null,
+                renderCompiled(cached.body(locale), variables)
+        };
+    }
+
+    /**
+     * Drop compiled templates after a {@link NotificationTemplate} changes.
+     * Any entry compiled before this call is reloaded on next use.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        cache.clear();
+    }
+
+    /**
+     * Compiled form of {@code template}, shared by every call with the same text. The cache
+     * is emptied when it fills up, so callers building unique texts cannot grow it unbounded.
+     */
+    CompiledTemplate compiledFor(String template) {
+        CompiledTemplate compiled = compiledByText.get(template);
+        if (compiled == null) {
+            if (compiledByText.size() >= MAX_TEXT_CACHE_ENTRIES) {
+                compiledByText.clear();
+            }
+            compiled = compiledByText.computeIfAbsent(template, CompiledTemplate::compile);
+        }
+        return compiled;
+    }
+
+    private CachedTemplate lookup(NotificationType eventType, NotificationChannel channel) {
+        TemplateKey key = new TemplateKey(eventType, channel);
+        long currentGeneration = generation.get();
+        CachedTemplate cached = cache.get(key);
+        if (cached != null && cached.generation == currentGeneration
+                && System.nanoTime() - cached.loadedAtNanos < CACHE_TTL_NANOS) {
+            return cached;
+        }
+        cached = templateRepository.findByEventTypeAndChannel(eventType, channel)
                 .filter(NotificationTemplate::isActive)
-                .map(template -> {
-                    String body = "ar".equalsIgnoreCase(locale)
-                            ? template.getBodyTemplateAr()
-                            : (template.getBodyTemplateEn() != null ? template.getBodyTemplateEn() : template.getBodyTemplateAr());
-                    String subject = template.getSubjectTemplate();
-                    return new String[]{
-                            subject != null ? render(subject, variables) : null,
-                            render(body, variables)
-                    };
-                })
+                .map(template -> CachedTemplate.of(template, currentGeneration))
                 .orElseGet(() -> {
                     log.warn("No active template found for event={} channel={}", eventType, channel);
-                    return new String[]{null, null};
+                    return CachedTemplate.missing(currentGeneration);
                 });
+        cache.put(key, cached);
+        return cached;
+    }
+
+    private record TemplateKey(NotificationType eventType, NotificationChannel channel) {}
+
+    /**
+     * Compiled form of one template row. {@code generation} is the cache generation
+     * at load time; a missing or inactive template is cached too, with null bodies.
+     */
+    private static final class CachedTemplate {
+
+        final long generation;
+        final long loadedAtNanos;
+        final CompiledTemplate subject;
+        final CompiledTemplate bodyAr;
+        final CompiledTemplate bodyEn;
+
+        private CachedTemplate(long generation, CompiledTemplate subject,
+                               CompiledTemplate bodyAr, CompiledTemplate bodyEn) {
+            this.generation = generation;
+            this.loadedAtNanos = System.nanoTime();
+            this.subject = subject;
+            this.bodyAr = bodyAr;
+            this.bodyEn = bodyEn;
+        }
+
+        static CachedTemplate of(NotificationTemplate template, long generation) {
+            CompiledTemplate ar = CompiledTemplate.compile(template.getBodyTemplateAr());
+            return new CachedTemplate(generation,
+                    template.getSubjectTemplate() != null ? CompiledTemplate.compile(template.getSubjectTemplate()) : null,
+                    ar,
+                    template.getBodyTemplateEn() != null ? CompiledTemplate.compile(template.getBodyTemplateEn()) : ar);
+        }
+
+        static CachedTemplate missing(long generation) {
+            return new CachedTemplate(generation, null, null, null);
+        }
+
+        CompiledTemplate body(String locale) {
+            return "ar".equalsIgnoreCase(locale) ? bodyAr : bodyEn;
+        }
     }
 }
@@ -19,6 +19,14 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
  * Wallet service: credit, debit, settlement upon delivery.
@@ -27,12 +35,19 @@ import java.time.Instant;
  *   1. Courier wallet  ← CREDIT (COD amount collected)
  *   2. Company wallet  ← CREDIT (commission = delivery fee)
  *   3. Merchant wallet ← CREDIT (COD amount − delivery fee)
+ *
+ * Balances change only through conditional atomic UPDATEs; every change is recorded
+ * as an append-only {@link WalletTransaction} with its before/after balance.
  */
 @Service
 @Transactional
 public class WalletService {
 
     private static final Logger log = LoggerFactory.getLogger(WalletService.class);
+    private static final int KEY_LOOKUP_CHUNK = 1000;
+    /** Stable: keeps the listed order among credits and among debits. */
+    private static final Comparator<Posting> CREDITS_FIRST =
+            Comparator.comparing(posting -> posting.type() != TransactionType.CREDIT);
 
     private final WalletRepository walletRepository;
     private final WalletTransactionRepository transactionRepository;
@@ -80,20 +95,7 @@ public class WalletService {
         if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new BusinessRuleException("مبلغ الإيداع يجب أن يكون أكبر من صفر");
         }
-
-        Wallet wallet = walletRepository.findById(walletId)
-                .orElseThrow(() -> new ResourceNotFoundException("Wallet", "id", walletId));
-
-        BigDecimal before = wallet.getBalance();
-        BigDecimal after = before.add(amount);
-        wallet.setBalance(after);
-        wallet.setUpdatedAt(Instant.now());
-        walletRepository.save(wallet);
-
-        WalletTransaction tx = new WalletTransaction(wallet, TransactionType.CREDIT, amount, reason, referenceId, description);
-        tx.setBalanceBefore(before);
-        tx.setBalanceAfter(after);
-        return transactionRepository.save(tx);
+        return postSingle(walletId, TransactionType.CREDIT, amount, reason, referenceId, description);
     }
 
     /**
@@ -104,26 +106,143 @@ public class WalletService {
         if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
             throw new BusinessRuleException("مبلغ السحب يجب أن يكون أكبر من صفر");
         }
+        return postSingle(walletId, TransactionType.DEBIT, amount, reason, referenceId, description);
+    }
 
-        Wallet wallet = walletRepository.findById(walletId)
-                .orElseThrow(() -> new ResourceNotFoundException("Wallet", "id", walletId));
-
-        if (wallet.getBalance().compareTo(amount) < 0) {
-            throw new BusinessRuleException("رصيد غير كافٍ — الرصيد الحالي: " + wallet.getBalance());
+    /**
+     * Apply the balance change with one conditional UPDATE, then read the balance back
+     * under the row lock that UPDATE holds. Concurrent postings on the same wallet
+     * serialize on that lock instead of overwriting each other's read-modify-write.
+     */
+    private WalletTransaction postSingle(Long walletId, TransactionType type, BigDecimal amount,
+                                         TransactionReason reason, Long referenceId, String description) {
+        Instant now = Instant.now();
+        int updated = type == TransactionType.CREDIT
+                ? walletRepository.applyCredit(walletId, amount, now)
+                : walletRepository.applyDebit(walletId, amount, now);
+        if (updated == 0) {
+            BigDecimal current = walletRepository.findBalanceById(walletId)
+                    .orElseThrow(() -> new ResourceNotFoundException("Wallet", "id", walletId));
+            throw new BusinessRuleException("رصيد غير كافٍ — الرصيد الحالي: " + current);
         }
 
-        BigDecimal before = wallet.getBalance();
-        BigDecimal after = before.subtract(amount);
-        wallet.setBalance(after);
-        wallet.setUpdatedAt(Instant.now());
-        walletRepository.save(wallet);
+        BigDecimal after = currentBalance(walletId);
+        BigDecimal before = type == TransactionType.CREDIT ? after.subtract(amount) : after.add(amount);
 
-        WalletTransaction tx = new WalletTransaction(wallet, TransactionType.DEBIT, amount, reason, referenceId, description);
+        WalletTransaction tx = new WalletTransaction(walletRepository.getReferenceById(walletId),
+                type, amount, reason, referenceId, description);
         tx.setBalanceBefore(before);
         tx.setBalanceAfter(after);
+        tx.setCreatedAt(now);
         return transactionRepository.save(tx);
     }
 
+    // ── Batched ledger postings ─────────────────────────────────
+
+    /**
+     * A ledger entry to post. Entries with an {@code idempotencyKey} already in the
+     * ledger (or repeated within the batch) are skipped.
+     */
+    public record Posting(Long walletId, TransactionType type, BigDecimal amount, TransactionReason reason,
+                          Long referenceId, String description, String idempotencyKey) {}
+
+    /**
+     * Post many entries in one transaction: one key lookup for the whole batch, one
+     * conditional UPDATE per wallet for the net change, and one JDBC batch insert.
+     * Wallets are updated in id order so concurrent batches cannot deadlock. Within a
+     * wallet, credits are chained before debits, so only a negative closing balance
+     * rolls the whole batch back, whatever order the entries were listed in.
+     *
+     * @return number of entries posted (excluding skipped duplicates)
+     */
+    public int postAll(List<Posting> postings) {
+        List<Posting> pending = withoutPostedKeys(postings);
+        if (pending.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, List<Posting>> byWallet = new TreeMap<>();
+        for (Posting posting : pending) {
+            if (posting.amount() == null || posting.amount().compareTo(BigDecimal.ZERO) <= 0) {
+                throw new BusinessRuleException("مبلغ المعاملة يجب أن يكون أكبر من صفر");
+            }
+            byWallet.computeIfAbsent(posting.walletId(), id -> new ArrayList<>()).add(posting);
+        }
+        byWallet.values().forEach(walletPostings -> walletPostings.sort(CREDITS_FIRST));
+
+        Instant now = Instant.now();
+        List<WalletTransaction> transactions = new ArrayList<>(pending.size());
+        for (Map.Entry<Long, List<Posting>> entry : byWallet.entrySet()) {
+            Long walletId = entry.getKey();
+            List<Posting> walletPostings = entry.getValue();
+
+            BigDecimal net = BigDecimal.ZERO;
+            for (Posting posting : walletPostings) {
+                net = posting.type() == TransactionType.CREDIT ? net.add(posting.amount()) : net.subtract(posting.amount());
+            }
+            // A zero net still takes the row lock so the balance chain below stays consistent
+            int updated = net.signum() >= 0
+                    ? walletRepository.applyCredit(walletId, net, now)
+                    : walletRepository.applyDebit(walletId, net.negate(), now);
+            if (updated == 0) {
+                BigDecimal current = walletRepository.findBalanceById(walletId)
+                        .orElseThrow(() -> new ResourceNotFoundException("Wallet", "id", walletId));
+                throw new BusinessRuleException("رصيد غير كافٍ — الرصيد الحالي: " + current);
+            }
+
+            Wallet wallet = walletRepository.getReferenceById(walletId);
+            BigDecimal running = currentBalance(walletId).subtract(net);
+            for (Posting posting : walletPostings) {
+                BigDecimal before = running;
+                running = posting.type() == TransactionType.CREDIT
+                        ? running.add(posting.amount()) : running.subtract(posting.amount());
+                WalletTransaction tx = new WalletTransaction(wallet, posting.type(), posting.amount(),
+                        posting.reason(), posting.referenceId(), posting.description());
+                tx.setBalanceBefore(before);
+                tx.setBalanceAfter(running);
+                tx.setIdempotencyKey(posting.idempotencyKey());
+                tx.setCreatedAt(now);
+                transactions.add(tx);
+            }
+        }
+
+        return transactionRepository.insertBatch(transactions);
+    }
+
+    /**
+     * Drop postings whose key is already in the ledger or repeated earlier in the batch.
+     * The unique index on {@code idempotency_key} remains the backstop for concurrent callers.
+     */
+    private List<Posting> withoutPostedKeys(List<Posting> postings) {
+        Set<String> keys = new HashSet<>();
+        for (Posting posting : postings) {
+            if (posting.idempotencyKey() != null) {
+                keys.add(posting.idempotencyKey());
+            }
+        }
+        Set<String> seen = new HashSet<>();
+        if (!keys.isEmpty()) {
+            List<String> keyList = new ArrayList<>(keys);
+            for (int i = 0; i < keyList.size(); i += KEY_LOOKUP_CHUNK) {
+                seen.addAll(transactionRepository.findExistingIdempotencyKeys(
+                        keyList.subList(i, Math.min(i + KEY_LOOKUP_CHUNK, keyList.size()))));
+            }
+        }
+
+        List<Posting> pending = new ArrayList<>(postings.size());
+        for (Posting posting : postings) {
+            if (posting.idempotencyKey() == null || seen.add(posting.idempotencyKey())) {
+                pending.add(posting);
+            }
+        }
+        return pending;
+    }
+
+    private BigDecimal currentBalance(Long walletId) {
+        return walletRepository.findBalanceById(walletId)
+                .orElseThrow(() -> new ResourceNotFoundException("Wallet", "id", walletId));
+    }
+
     /**
      * Get wallet balance.
      */
@@ -149,50 +268,88 @@ public class WalletService {
     public void settleShipment(Long shipmentId) {
         Shipment shipment = shipmentRepository.findById(shipmentId)
                 .orElseThrow(() -> new ResourceNotFoundException("Shipment", "id", shipmentId));
+        settle(List.of(shipment));
+    }
 
-        BigDecimal codAmount = shipment.getCodAmount() != null ? shipment.getCodAmount() : BigDecimal.ZERO;
-        BigDecimal deliveryFee = shipment.getDeliveryFee() != null ? shipment.getDeliveryFee() : BigDecimal.ZERO;
-
-        // Skip if no money involved
-        if (codAmount.compareTo(BigDecimal.ZERO) == 0 && deliveryFee.compareTo(BigDecimal.ZERO) == 0) {
-            log.debug("Skipping settlement for shipment {} — no COD/fee", shipmentId);
-            return;
+    /**
+     * Settle many delivered shipments in one transaction. Shipments and wallets are loaded
+     * in bulk and all legs are posted through {@link #postAll}; legs already settled are
+     * skipped by their idempotency key. Unknown ids are ignored.
+     *
+     * @return number of ledger entries posted
+     */
+    public int settleShipments(List<Long> shipmentIds) {
+        if (shipmentIds == null || shipmentIds.isEmpty()) {
+            return 0;
         }
+        return settle(shipmentRepository.findAllById(shipmentIds));
+    }
 
-        // 1. Courier wallet — credit COD collected
-        User courier = shipment.getCourier();
-        if (courier != null && codAmount.compareTo(BigDecimal.ZERO) > 0) {
-            Wallet courierWallet = getOrCreateWallet(courier.getId(), WalletType.COURIER);
-            // Idempotency check
-            if (!transactionRepository.existsByWalletIdAndReferenceIdAndReason(
-                    courierWallet.getId(), shipmentId, TransactionReason.COD_COLLECTED)) {
-                credit(courierWallet.getId(), codAmount, TransactionReason.COD_COLLECTED,
-                        shipmentId, "COD collected for shipment " + shipment.getTrackingNumber());
+    private int settle(List<Shipment> shipments) {
+        List<SettlementLeg> legs = new ArrayList<>();
+        for (Shipment shipment : shipments) {
+            BigDecimal codAmount = shipment.getCodAmount() != null ? shipment.getCodAmount() : BigDecimal.ZERO;
+            BigDecimal deliveryFee = shipment.getDeliveryFee() != null ? shipment.getDeliveryFee() : BigDecimal.ZERO;
+
+            // Skip if no money involved
+            if (codAmount.compareTo(BigDecimal.ZERO) == 0 && deliveryFee.compareTo(BigDecimal.ZERO) == 0) {
+                log.debug("Skipping settlement for shipment {} — no COD/fee", shipment.getId());
+                continue;
+            }
+
+            // 1. Courier wallet — credit COD collected
+            User courier = shipment.getCourier();
+            if (courier != null && codAmount.compareTo(BigDecimal.ZERO) > 0) {
+                legs.add(new SettlementLeg(shipment, courier.getId(), WalletType.COURIER, codAmount,
+                        TransactionReason.COD_COLLECTED, "COD collected for shipment "));
             }
-        }
 
-        // 2. Merchant wallet — credit (COD − delivery fee)
-        User merchant = shipment.getMerchant();
-        if (merchant != null) {
+            // 2. Merchant wallet — credit (COD − delivery fee)
+            User merchant = shipment.getMerchant();
             BigDecimal merchantAmount = codAmount.subtract(deliveryFee);
-            if (merchantAmount.compareTo(BigDecimal.ZERO) > 0) {
-                Wallet merchantWallet = getOrCreateWallet(merchant.getId(), WalletType.MERCHANT);
-                if (!transactionRepository.existsByWalletIdAndReferenceIdAndReason(
-                        merchantWallet.getId(), shipmentId, TransactionReason.SETTLEMENT)) {
-                    credit(merchantWallet.getId(), merchantAmount, TransactionReason.SETTLEMENT,
-                            shipmentId, "Settlement for shipment " + shipment.getTrackingNumber());
-                }
+            if (merchant != null && merchantAmount.compareTo(BigDecimal.ZERO) > 0) {
+                legs.add(new SettlementLeg(shipment, merchant.getId(), WalletType.MERCHANT, merchantAmount,
+                        TransactionReason.SETTLEMENT, "Settlement for shipment "));
             }
         }
+        if (legs.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, Wallet> walletsByUser = new HashMap<>();
+        Set<Long> userIds = new HashSet<>();
+        legs.forEach(leg -> userIds.add(leg.userId()));
+        for (Wallet wallet : walletRepository.findByUserIdIn(userIds)) {
+            walletsByUser.put(wallet.getUser().getId(), wallet);
+        }
+
+        List<Posting> postings = new ArrayList<>(legs.size());
+        for (SettlementLeg leg : legs) {
+            Wallet wallet = walletsByUser.computeIfAbsent(leg.userId(), id -> getOrCreateWallet(id, leg.walletType()));
+            Shipment shipment = leg.shipment();
+            postings.add(new Posting(wallet.getId(), TransactionType.CREDIT, leg.amount(), leg.reason(),
+                    shipment.getId(), leg.descriptionPrefix() + shipment.getTrackingNumber(),
+                    settlementKey(shipment.getId(), leg.reason())));
+        }
+
+        int posted = postAll(postings);
+        log.info("Settled {} shipments — {} ledger entries posted", shipments.size(), posted);
+        return posted;
+    }
 
-        log.info("Settled shipment {} — COD: {}, fee: {}", shipmentId, codAmount, deliveryFee);
+    /** Idempotency key of one settlement leg; matches keys backfilled by V61. */
+    static String settlementKey(Long shipmentId, TransactionReason reason) {
+        return "SHIP:" + shipmentId + ":" + reason.name();
     }
 
+    private record SettlementLeg(Shipment shipment, Long userId, WalletType walletType, BigDecimal amount,
+                                 TransactionReason reason, String descriptionPrefix) {}
+
     /**
      * Get all wallets (admin).
      */
     @Transactional(readOnly = true)
-    public java.util.List<Wallet> getAllWallets() {
+    public List<Wallet> getAllWallets() {
         return walletRepository.findAll();
     }
 }
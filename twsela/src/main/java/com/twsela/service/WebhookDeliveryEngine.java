@@ -0,0 +1,510 @@
+package com.twsela.service;
+
+import com.twsela.domain.WebhookEvent.DeliveryStatus;
+import com.twsela.domain.WebhookSubscription;
+import com.twsela.repository.WebhookEventRepository;
+import com.twsela.repository.WebhookSubscriptionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous webhook delivery engine.
+ * <p>
+ * Active subscriptions are indexed in memory by event type. Each endpoint
+ * (subscription) gets its own lane: a bounded queue drained with at most
+ * {@code maxInFlightPerEndpoint} concurrent {@link HttpClient#sendAsync} calls,
+ * so a slow merchant endpoint only ever delays its own deliveries.
+ * Failed attempts are retried with exponential backoff and jitter, and a
+ * per-endpoint circuit breaker stops hammering endpoints that keep failing.
+ */
+@Component
+public class WebhookDeliveryEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(WebhookDeliveryEngine.class);
+    private static final String HMAC_ALGO = "HmacSHA256";
+
+    /** Immutable view of an active subscription used by the delivery path. */
+    public record Target(Long subscriptionId, String url, String secret) {}
+
+    /** A single queued delivery attempt. {@code attempts} counts attempts already made. */
+    public record Delivery(Long eventId, String eventType, String payload, int attempts, Target target) {}
+
+    public enum CircuitState { CLOSED, OPEN, HALF_OPEN }
+
+    private final WebhookSubscriptionRepository subscriptionRepository;
+    private final WebhookEventRepository eventRepository;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final MeterRegistry meterRegistry;
+
+    private final int maxInFlightPerEndpoint;
+    private final int queueCapacity;
+    private final Duration requestTimeout;
+    private final int maxAttempts;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final int breakerFailureThreshold;
+    private final long breakerOpenMs;
+
+    /** Event type → active targets. {@code null} means stale; rebuilt on next lookup. */
+    private volatile Map<String, List<Target>> index;
+    private final ConcurrentHashMap<Long, EndpointLane> lanes = new ConcurrentHashMap<>();
+    /** Event ids queued, in flight or waiting for a retry — guards against double delivery. */
+    private final Set<Long> pendingEventIds = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejectedCounter;
+    private final Counter circuitOpenedCounter;
+    private final Counter retryScheduledCounter;
+
+    @Autowired
+    public WebhookDeliveryEngine(WebhookSubscriptionRepository subscriptionRepository,
+                                 WebhookEventRepository eventRepository,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.webhooks.delivery.worker-threads:8}") int workerThreads,
+                                 @Value("${app.webhooks.delivery.max-in-flight-per-endpoint:4}") int maxInFlightPerEndpoint,
+                                 @Value("${app.webhooks.delivery.queue-capacity-per-endpoint:1000}") int queueCapacity,
+                                 @Value("${app.webhooks.delivery.timeout-seconds:10}") int timeoutSeconds,
+                                 @Value("${app.webhooks.delivery.max-attempts:5}") int maxAttempts,
+                                 @Value("${app.webhooks.delivery.base-backoff-ms:2000}") long baseBackoffMs,
+                                 @Value("${app.webhooks.delivery.max-backoff-ms:300000}") long maxBackoffMs,
+                                 @Value("${app.webhooks.delivery.breaker-failure-threshold:5}") int breakerFailureThreshold,
+                                 @Value("${app.webhooks.delivery.breaker-open-seconds:60}") int breakerOpenSeconds) {
+        this(subscriptionRepository, eventRepository, meterRegistry,
+                HttpClient.newBuilder()
+                        .connectTimeout(Duration.ofSeconds(10))
+                        .executor(Executors.newFixedThreadPool(workerThreads,
+                                new CustomizableThreadFactory("webhook-io-")))
+                        .build(),
+                Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("webhook-retry-")),
+                maxInFlightPerEndpoint, queueCapacity, Duration.ofSeconds(timeoutSeconds), maxAttempts,
+                baseBackoffMs, maxBackoffMs, breakerFailureThreshold, breakerOpenSeconds * 1000L);
+    }
+
+    WebhookDeliveryEngine(WebhookSubscriptionRepository subscriptionRepository,
+                          WebhookEventRepository eventRepository,
+                          MeterRegistry meterRegistry,
+                          HttpClient httpClient,
+                          ScheduledExecutorService scheduler,
+                          int maxInFlightPerEndpoint, int queueCapacity, Duration requestTimeout,
+                          int maxAttempts, long baseBackoffMs, long maxBackoffMs,
+                          int breakerFailureThreshold, long breakerOpenMs) {
+        this.subscriptionRepository = subscriptionRepository;
+        this.eventRepository = eventRepository;
+        this.meterRegistry = meterRegistry;
+        this.httpClient = httpClient;
+        this.scheduler = scheduler;
+        this.maxInFlightPerEndpoint = maxInFlightPerEndpoint;
+        this.queueCapacity = queueCapacity;
+        this.requestTimeout = requestTimeout;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffMs = baseBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.breakerFailureThreshold = breakerFailureThreshold;
+        this.breakerOpenMs = breakerOpenMs;
+
+        meterRegistry.gauge("twsela.webhooks.queue.depth", queueDepth);
+        meterRegistry.gauge("twsela.webhooks.inflight", inFlight);
+        this.rejectedCounter = Counter.builder("twsela.webhooks.delivery.rejected")
+                .description("Webhook deliveries rejected because the endpoint queue was full")
+                .register(meterRegistry);
+        this.circuitOpenedCounter = Counter.builder("twsela.webhooks.circuit.opened")
+                .description("Number of times a webhook endpoint circuit breaker opened")
+                .register(meterRegistry);
+        this.retryScheduledCounter = Counter.builder("twsela.webhooks.delivery.retries")
+                .description("Webhook delivery retries scheduled with backoff")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        httpClient.executor().ifPresent(executor -> {
+            if (executor instanceof ExecutorService service) {
+                service.shutdown();
+            }
+        });
+    }
+
+    // ── Subscription index ──────────────────────────────────────
+
+    /**
+     * Active targets subscribed to the given event type (exact match).
+     */
+    public List<Target> targetsFor(String eventType) {
+        Map<String, List<Target>> current = index;
+        if (current == null) {
+            current = rebuildIndex();
+        }
+        return current.getOrDefault(eventType, List.of());
+    }
+
+    /**
+     * Active target for a subscription id, or empty if it is inactive or unknown.
+     */
+    public Optional<Target> targetFor(Long subscriptionId) {
+        Map<String, List<Target>> current = index;
+        if (current == null) {
+            current = rebuildIndex();
+        }
+        for (List<Target> targets : current.values()) {
+            for (Target target : targets) {
+                if (target.subscriptionId().equals(subscriptionId)) {
+                    return Optional.of(target);
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Mark the index stale; it is rebuilt lazily on the next lookup.
+     * Called whenever a subscription is created or deactivated.
+     */
+    public void invalidateIndex() {
+        index = null;
+    }
+
+    /**
+     * Periodic rebuild so subscription changes made on other nodes are picked up.
+     */
+    @Scheduled(fixedDelayString = "${app.webhooks.delivery.index-refresh-ms:60000}")
+    public void refreshIndex() {
+        rebuildIndex();
+    }
+
+    private synchronized Map<String, List<Target>> rebuildIndex() {
+        Map<String, List<Target>> built = new HashMap<>();
+        for (WebhookSubscription sub : subscriptionRepository.findByActiveTrue()) {
+            Target target = new Target(sub.getId(), sub.getUrl(), sub.getSecret());
+            for (String eventType : sub.getEvents().split(",")) {
+                String key = eventType.trim();
+                if (!key.isEmpty()) {
+                    built.computeIfAbsent(key, k -> new ArrayList<>()).add(target);
+                }
+            }
+        }
+        built.replaceAll((k, v) -> List.copyOf(v));
+        Map<String, List<Target>> snapshot = Map.copyOf(built);
+        index = snapshot;
+        lanes.keySet().removeIf(id -> snapshot.values().stream()
+                .flatMap(List::stream)
+                .noneMatch(t -> t.subscriptionId().equals(id)) && lanes.get(id).isIdle());
+        return snapshot;
+    }
+
+    // ── Enqueueing ──────────────────────────────────────────────
+
+    /**
+     * Queue deliveries once the surrounding transaction commits (or immediately
+     * when there is none), so the delivery path never races the event insert.
+     */
+    public void enqueueAfterCommit(List<Delivery> deliveries) {
+        if (deliveries.isEmpty()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    deliveries.forEach(WebhookDeliveryEngine.this::enqueue);
+                }
+            });
+        } else {
+            deliveries.forEach(this::enqueue);
+        }
+    }
+
+    /**
+     * Queue a delivery on its endpoint lane.
+     *
+     * @return false if the event is already pending or the endpoint queue is full
+     */
+    public boolean enqueue(Delivery delivery) {
+        if (!pendingEventIds.add(delivery.eventId())) {
+            return false;
+        }
+        return offerToLane(delivery);
+    }
+
+    private boolean offerToLane(Delivery delivery) {
+        EndpointLane lane = lanes.computeIfAbsent(delivery.target().subscriptionId(), EndpointLane::new);
+        if (!lane.offer(delivery)) {
+            pendingEventIds.remove(delivery.eventId());
+            rejectedCounter.increment();
+            persistAttempt(delivery.eventId(), DeliveryStatus.FAILED, delivery.attempts(), null,
+                    "Delivery queue full for endpoint");
+            log.warn("Webhook queue full for subscription {}; event {} left for retry sweep",
+                    delivery.target().subscriptionId(), delivery.eventId());
+            return false;
+        }
+        lane.drain();
+        return true;
+    }
+
+    /**
+     * Whether a failed event with the given attempt count is due for another try.
+     */
+    public boolean isRetryDue(int attempts, Instant lastAttemptAt, Instant now) {
+        if (attempts >= maxAttempts) {
+            return false;
+        }
+        if (lastAttemptAt == null) {
+            return true;
+        }
+        return !lastAttemptAt.plusMillis(backoffCeilingMillis(attempts)).isAfter(now);
+    }
+
+    public boolean isPending(Long eventId) {
+        return pendingEventIds.contains(eventId);
+    }
+
+    public CircuitState circuitState(Long subscriptionId) {
+        EndpointLane lane = lanes.get(subscriptionId);
+        return lane == null ? CircuitState.CLOSED : lane.state(System.currentTimeMillis());
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    // ── Delivery ────────────────────────────────────────────────
+
+    private void send(EndpointLane lane, Delivery delivery) {
+        long start = System.nanoTime();
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder()
+                    .uri(URI.create(delivery.target().url()))
+                    .timeout(requestTimeout)
+                    .header("Content-Type", "application/json")
+                    .header("X-Webhook-Signature", computeHmac(delivery.payload(), delivery.target().secret()))
+                    .header("X-Webhook-Event", delivery.eventType())
+                    .POST(HttpRequest.BodyPublishers.ofString(delivery.payload()))
+                    .build();
+        } catch (RuntimeException e) {
+            complete(lane, delivery, null, e, start);
+            return;
+        }
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> complete(lane, delivery, response, error, start));
+    }
+
+    private void complete(EndpointLane lane, Delivery delivery, HttpResponse<String> response,
+                          Throwable error, long startNanos) {
+        inFlight.decrementAndGet();
+        boolean success = error == null && response.statusCode() >= 200 && response.statusCode() < 300;
+        String outcome = error != null ? "error" : (success ? "success" : "http_" + (response.statusCode() / 100) + "xx");
+        Timer.builder("twsela.webhooks.delivery.latency")
+                .description("Webhook delivery round-trip latency")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+
+        int attempts = delivery.attempts() + 1;
+        if (success) {
+            persistAttempt(delivery.eventId(), DeliveryStatus.SENT, attempts, response.statusCode(), response.body());
+        } else if (error != null) {
+            persistAttempt(delivery.eventId(), DeliveryStatus.FAILED, attempts, null, error.toString());
+            log.warn("Webhook delivery failed for event {} → {}: {}",
+                    delivery.eventId(), delivery.target().url(), error.toString());
+        } else {
+            persistAttempt(delivery.eventId(), DeliveryStatus.FAILED, attempts, response.statusCode(), response.body());
+            log.warn("Webhook {} returned HTTP {} for event {}",
+                    delivery.target().url(), response.statusCode(), delivery.eventId());
+        }
+
+        lane.onResult(success);
+
+        if (!success && attempts < maxAttempts) {
+            long delay = backoffWithJitterMillis(attempts);
+            retryScheduledCounter.increment();
+            Delivery retry = new Delivery(delivery.eventId(), delivery.eventType(), delivery.payload(),
+                    attempts, delivery.target());
+            Runnable resend = () -> offerToLane(retry);
+            scheduler.schedule(resend, delay, TimeUnit.MILLISECONDS);
+        } else {
+            pendingEventIds.remove(delivery.eventId());
+        }
+        lane.drain();
+    }
+
+    private void persistAttempt(Long eventId, DeliveryStatus status, int attempts,
+                                Integer responseCode, String responseBody) {
+        try {
+            eventRepository.recordAttempt(eventId, status, attempts, Instant.now(),
+                    responseCode, truncate(responseBody, 1000));
+        } catch (Exception e) {
+            log.error("Failed to record webhook attempt for event {}", eventId, e);
+        }
+    }
+
+    /** Upper bound of the backoff window after {@code attempts} attempts: base · 2^(attempts-1), capped. */
+    long backoffCeilingMillis(int attempts) {
+        int exponent = Math.max(0, Math.min(attempts - 1, 30));
+        return Math.min(maxBackoffMs, baseBackoffMs << exponent);
+    }
+
+    /** "Equal jitter": half the ceiling fixed, the other half random, to spread retry storms. */
+    long backoffWithJitterMillis(int attempts) {
+        long ceiling = backoffCeilingMillis(attempts);
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    // ── Per-endpoint lane ───────────────────────────────────────
+
+    /**
+     * Queue, concurrency limit and circuit breaker for a single endpoint.
+     * All mutable state is guarded by the lane's monitor; HTTP calls are
+     * always started outside it.
+     */
+    private final class EndpointLane {
+
+        private final Long subscriptionId;
+        private final ArrayDeque<Delivery> queue = new ArrayDeque<>();
+        private int active;
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean probeInFlight;
+        private boolean drainScheduled;
+
+        EndpointLane(Long subscriptionId) {
+            this.subscriptionId = subscriptionId;
+        }
+
+        synchronized boolean offer(Delivery delivery) {
+            if (queue.size() >= queueCapacity) {
+                return false;
+            }
+            queue.addLast(delivery);
+            queueDepth.incrementAndGet();
+            return true;
+        }
+
+        synchronized boolean isIdle() {
+            return queue.isEmpty() && active == 0;
+        }
+
+        synchronized CircuitState state(long now) {
+            if (openUntil == 0) {
+                return CircuitState.CLOSED;
+            }
+            return now < openUntil ? CircuitState.OPEN : CircuitState.HALF_OPEN;
+        }
+
+        void drain() {
+            List<Delivery> ready = new ArrayList<>();
+            synchronized (this) {
+                long now = System.currentTimeMillis();
+                while (!queue.isEmpty() && active < maxInFlightPerEndpoint) {
+                    CircuitState state = state(now);
+                    if (state == CircuitState.OPEN) {
+                        scheduleDrain(openUntil - now);
+                        break;
+                    }
+                    if (state == CircuitState.HALF_OPEN) {
+                        if (probeInFlight) {
+                            break;
+                        }
+                        probeInFlight = true;
+                    }
+                    ready.add(queue.pollFirst());
+                    queueDepth.decrementAndGet();
+                    active++;
+                }
+            }
+            for (Delivery delivery : ready) {
+                inFlight.incrementAndGet();
+                send(this, delivery);
+            }
+        }
+
+        synchronized void onResult(boolean success) {
+            active--;
+            probeInFlight = false;
+            if (success) {
+                consecutiveFailures = 0;
+                openUntil = 0;
+                return;
+            }
+            consecutiveFailures++;
+            if (consecutiveFailures >= breakerFailureThreshold) {
+                boolean wasClosed = openUntil == 0;
+                openUntil = System.currentTimeMillis() + breakerOpenMs;
+                if (wasClosed) {
+                    circuitOpenedCounter.increment();
+                    log.warn("Circuit opened for webhook subscription {} after {} consecutive failures",
+                            subscriptionId, consecutiveFailures);
+                }
+            }
+        }
+
+        private void scheduleDrain(long delayMs) {
+            if (drainScheduled) {
+                return;
+            }
+            drainScheduled = true;
+            scheduler.schedule(() -> {
+                synchronized (this) {
+                    drainScheduled = false;
+                }
+                drain();
+            }, Math.max(1, delayMs), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────
+
+    static String computeHmac(String payload, String secret) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGO);
+            SecretKeySpec keySpec = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGO);
+            mac.init(keySpec);
+            byte[] hash = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (Exception e) {
+            throw new RuntimeException("HMAC computation failed", e);
+        }
+    }
+
+    private static String truncate(String s, int maxLen) {
+        if (s == null) return null;
+        return s.length() <= maxLen ? s : s.substring(0, maxLen);
+    }
+}
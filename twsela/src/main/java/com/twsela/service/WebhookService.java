@@ -17,44 +17,33 @@ import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Manages webhook subscriptions and dispatches events via HTTP POST.
- * Payloads are signed with HMAC-SHA256 (X-Webhook-Signature header).
+ * Payloads are signed with HMAC-SHA256 (X-Webhook-Signature header) and
+ * delivered by {@link WebhookDeliveryEngine}.
  */
 @Service
 @Transactional
 public class WebhookService {
 
     private static final Logger log = LoggerFactory.getLogger(WebhookService.class);
-    private static final int MAX_ATTEMPTS = 5;
-    private static final String HMAC_ALGO = "HmacSHA256";
 
     private final WebhookSubscriptionRepository subscriptionRepository;
     private final WebhookEventRepository eventRepository;
     private final ObjectMapper objectMapper;
-    private final HttpClient httpClient;
+    private final WebhookDeliveryEngine deliveryEngine;
 
     public WebhookService(WebhookSubscriptionRepository subscriptionRepository,
                           WebhookEventRepository eventRepository,
-                          ObjectMapper objectMapper) {
+                          ObjectMapper objectMapper,
+                          WebhookDeliveryEngine deliveryEngine) {
         this.subscriptionRepository = subscriptionRepository;
         this.eventRepository = eventRepository;
         this.objectMapper = objectMapper;
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+        this.deliveryEngine = deliveryEngine;
     }
 
     // ── Subscription management ─────────────────────────────────
@@ -71,7 +60,9 @@ public class WebhookService {
         String events = String.join(",", eventTypes);
         WebhookSubscription sub = new WebhookSubscription(merchant, url, secret, events);
         log.info("New webhook subscription for merchant {} → {}", merchant.getId(), url);
-        return subscriptionRepository.save(sub);
+        WebhookSubscription saved = subscriptionRepository.save(sub);
+        deliveryEngine.invalidateIndex();
+        return saved;
     }
 
     public void unsubscribe(Long subscriptionId, Long merchantId) {
@@ -83,6 +74,7 @@ public class WebhookService {
         sub.setActive(false);
         sub.setUpdatedAt(Instant.now());
         subscriptionRepository.save(sub);
+        deliveryEngine.invalidateIndex();
         log.info("Deactivated webhook subscription {}", subscriptionId);
     }
 
@@ -106,121 +98,96 @@ public class WebhookService {
 
     /**
      * Dispatch an event to all active subscribers of that event type.
-     * Runs asynchronously so the main transaction is not slowed down.
+     * Events are persisted here and handed to the {@link WebhookDeliveryEngine},
+     * which delivers them per endpoint without blocking the caller.
      */
     @Async
     public void dispatch(String eventType, Map<String, Object> data) {
-        List<WebhookSubscription> subscribers = subscriptionRepository.findActiveByEventType(eventType);
-        if (subscribers.isEmpty()) {
+        List<WebhookDeliveryEngine.Target> targets = deliveryEngine.targetsFor(eventType);
+        if (targets.isEmpty()) {
             return;
         }
 
         String payload;
         try {
-            Map<String, Object> body = new LinkedHashMap<>();
-            body.put("event", eventType);
-            body.put("timestamp", Instant.now().toString());
-            body.put("data", data);
-            payload = objectMapper.writeValueAsString(body);
+            payload = buildPayload(eventType, data);
         } catch (Exception e) {
             log.error("Failed to serialize webhook payload for event {}", eventType, e);
             return;
         }
 
-        for (WebhookSubscription sub : subscribers) {
-            WebhookEvent evt = new WebhookEvent(sub, eventType, payload);
-            evt = eventRepository.save(evt);
-            deliverEvent(evt, sub);
+        List<WebhookEvent> events = new ArrayList<>(targets.size());
+        for (WebhookDeliveryEngine.Target target : targets) {
+            WebhookSubscription ref = subscriptionRepository.getReferenceById(target.subscriptionId());
+            events.add(new WebhookEvent(ref, eventType, payload));
         }
+        List<WebhookEvent> saved = eventRepository.saveAll(events);
+
+        List<WebhookDeliveryEngine.Delivery> deliveries = new ArrayList<>(saved.size());
+        for (int i = 0; i < saved.size(); i++) {
+            deliveries.add(new WebhookDeliveryEngine.Delivery(
+                    saved.get(i).getId(), eventType, payload, 0, targets.get(i)));
+        }
+        deliveryEngine.enqueueAfterCommit(deliveries);
     }
 
     /**
-     * Send test event to a subscription.
+     * Send test event to a subscription. The event is queued like any other
+     * delivery; its outcome shows up in the subscription's event log.
      */
     public WebhookEvent sendTestEvent(Long subscriptionId) {
         WebhookSubscription sub = getSubscription(subscriptionId);
         Map<String, Object> testData = Map.of("test", true, "message", "اختبار webhook");
         String payload;
         try {
-            Map<String, Object> body = new LinkedHashMap<>();
-            body.put("event", "TEST");
-            body.put("timestamp", Instant.now().toString());
-            body.put("data", testData);
-            payload = objectMapper.writeValueAsString(body);
+            payload = buildPayload("TEST", testData);
         } catch (Exception e) {
             throw new BusinessRuleException("فشل في إنشاء حمولة الاختبار");
         }
         WebhookEvent evt = new WebhookEvent(sub, "TEST", payload);
         evt = eventRepository.save(evt);
-        deliverEvent(evt, sub);
+        WebhookDeliveryEngine.Target target = new WebhookDeliveryEngine.Target(sub.getId(), sub.getUrl(), sub.getSecret());
+        deliveryEngine.enqueueAfterCommit(List.of(
+                new WebhookDeliveryEngine.Delivery(evt.getId(), "TEST", payload, 0, target)));
         return evt;
     }
 
     /**
-     * Retry all failed events that have not exceeded MAX_ATTEMPTS.
+     * Re-queue failed events whose backoff window has elapsed and that have not
+     * exceeded the maximum attempts. Events already queued or waiting for an
+     * in-memory retry are skipped.
      */
     public int retryFailed() {
         List<WebhookEvent> failed = eventRepository.findByStatusAndAttemptsLessThan(
-                DeliveryStatus.FAILED, MAX_ATTEMPTS);
-        int retried = 0;
+                DeliveryStatus.FAILED, deliveryEngine.getMaxAttempts());
+        Instant now = Instant.now();
+        List<WebhookDeliveryEngine.Delivery> deliveries = new ArrayList<>();
         for (WebhookEvent evt : failed) {
-            deliverEvent(evt, evt.getSubscription());
-            retried++;
-        }
-        log.info("Retried {} failed webhook events", retried);
-        return retried;
-    }
-
-    // ── Internal delivery ───────────────────────────────────────
-
-    private void deliverEvent(WebhookEvent evt, WebhookSubscription sub) {
-        try {
-            String signature = computeHmac(evt.getPayload(), sub.getSecret());
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(sub.getUrl()))
-                    .timeout(Duration.ofSeconds(15))
-                    .header("Content-Type", "application/json")
-                    .header("X-Webhook-Signature", signature)
-                    .header("X-Webhook-Event", evt.getEventType())
-                    .POST(HttpRequest.BodyPublishers.ofString(evt.getPayload()))
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-            evt.setAttempts(evt.getAttempts() + 1);
-            evt.setLastAttemptAt(Instant.now());
-            evt.setResponseCode(response.statusCode());
-            evt.setResponseBody(truncate(response.body(), 1000));
-
-            if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                evt.setStatus(DeliveryStatus.SENT);
-            } else {
-                evt.setStatus(DeliveryStatus.FAILED);
-                log.warn("Webhook {} returned HTTP {} for event {}", sub.getUrl(), response.statusCode(), evt.getId());
+            if (deliveryEngine.isPending(evt.getId())
+                    || !deliveryEngine.isRetryDue(evt.getAttempts(), evt.getLastAttemptAt(), now)) {
+                continue;
             }
-        } catch (Exception e) {
-            evt.setAttempts(evt.getAttempts() + 1);
-            evt.setLastAttemptAt(Instant.now());
-            evt.setStatus(DeliveryStatus.FAILED);
-            evt.setResponseBody(truncate(e.getMessage(), 1000));
-            log.error("Webhook delivery failed for event {} → {}", evt.getId(), sub.getUrl(), e);
+            WebhookSubscription sub = evt.getSubscription();
+            if (!sub.isActive()) {
+                continue;
+            }
+            WebhookDeliveryEngine.Target target = new WebhookDeliveryEngine.Target(sub.getId(), sub.getUrl(), sub.getSecret());
+            deliveries.add(new WebhookDeliveryEngine.Delivery(
+                    evt.getId(), evt.getEventType(), evt.getPayload(), evt.getAttempts(), target));
         }
-        eventRepository.save(evt);
+        deliveryEngine.enqueueAfterCommit(deliveries);
+        log.info("Re-queued {} failed webhook events", deliveries.size());
+        return deliveries.size();
     }
 
     // ── Helpers ─────────────────────────────────────────────────
 
-    private String computeHmac(String payload, String secret) {
-        try {
-            Mac mac = Mac.getInstance(HMAC_ALGO);
-            SecretKeySpec keySpec = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGO);
-            mac.init(keySpec);
-            byte[] hash = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
-            return Base64.getEncoder().encodeToString(hash);
-        } catch (Exception e) {
-            throw new RuntimeException("HMAC computation failed", e);
-        }
+    private String buildPayload(String eventType, Map<String, Object> data) throws Exception {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("event", eventType);
+        body.put("timestamp", Instant.now().toString());
+        body.put("data", data);
+        return objectMapper.writeValueAsString(body);
     }
 
     private String generateSecret() {
@@ -228,9 +195,4 @@ public class WebhookService {
         new java.security.SecureRandom().nextBytes(bytes);
         return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
     }
-
-    private static String truncate(String s, int maxLen) {
-        if (s == null) return null;
-        return s.length() <= maxLen ? s : s.substring(0, maxLen);
-    }
 }
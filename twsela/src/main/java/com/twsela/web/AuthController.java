@@ -6,6 +6,8 @@ import com.twsela.security.AuthenticationHelper;
 import com.twsela.security.JwtService;
 import com.twsela.security.TokenBlacklistService;
 import com.twsela.service.AuditService;
+import com.twsela.service.BruteForceDetector;
+import com.twsela.service.IpBlockingService;
 import com.twsela.service.MetricsService;
 import com.twsela.web.dto.ChangePasswordRequest;
 import com.twsela.web.dto.DtoMapper;
@@ -43,6 +45,8 @@ public class AuthController {
     private final MetricsService metricsService;
     private final TokenBlacklistService tokenBlacklistService;
     private final AuthenticationHelper authHelper;
+    private final IpBlockingService ipBlockingService;
+    private final BruteForceDetector bruteForceDetector;
 
     public AuthController(AuthenticationManager authenticationManager,
                           JwtService jwtService,
@@ -50,7 +54,9 @@ public class AuthController {
                           AuditService auditService,
                           MetricsService metricsService,
                           TokenBlacklistService tokenBlacklistService,
-                          AuthenticationHelper authHelper) {
+                          AuthenticationHelper authHelper,
+                          IpBlockingService ipBlockingService,
+                          BruteForceDetector bruteForceDetector) {
         this.authenticationManager = authenticationManager;
         this.jwtService = jwtService;
         this.userRepository = userRepository;
@@ -58,6 +64,8 @@ public class AuthController {
         this.metricsService = metricsService;
         this.tokenBlacklistService = tokenBlacklistService;
         this.authHelper = authHelper;
+        this.ipBlockingService = ipBlockingService;
+        this.bruteForceDetector = bruteForceDetector;
     }
 
     @Operation(summary = "تسجيل الدخول", description = "تسجيل دخول المستخدم والحصول على JWT Token")
@@ -79,6 +87,8 @@ public class AuthController {
                 metricsService.recordLoginFailure();
                 auditService.logAuthentication("LOGIN_FAILED", phone,
                         getClientIpAddress(request), request.getHeader("User-Agent"), false, "User not found");
+                // Unknown phones count against the IP only
+                ipBlockingService.recordLoginFailure(getClientIpAddress(request), null);
                 return ResponseEntity.status(401)
                         .body(com.twsela.web.dto.ApiResponse.error("Invalid phone number or password"));
             }
@@ -103,6 +113,7 @@ public class AuthController {
             authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(phone, password));
 
             // Reset failed attempts on successful login
+            bruteForceDetector.resetAccount(phone);
             if (user.getFailedLoginAttempts() > 0) {
                 user.setFailedLoginAttempts(0);
                 user.setLockedUntil(null);
@@ -131,8 +142,12 @@ public class AuthController {
             auditService.logAuthentication("LOGIN_FAILED", loginRequest.getPhone(),
                     getClientIpAddress(request), request.getHeader("User-Agent"), false, e.getMessage());
 
-            // Increment failed attempts
-            incrementFailedAttempts(loginRequest.getPhone());
+            // Count the failure in memory; the account is written only when it gets locked
+            BruteForceDetector.Verdict verdict = ipBlockingService.recordLoginFailure(
+                    getClientIpAddress(request), loginRequest.getPhone());
+            if (verdict.accountTripped()) {
+                lockAccount(loginRequest.getPhone(), verdict.accountFailures());
+            }
 
             return ResponseEntity.status(401)
                     .body(com.twsela.web.dto.ApiResponse.error("Invalid phone number or password"));
@@ -218,27 +233,21 @@ public class AuthController {
 
     // ── Private helpers ──────────────────────────────────────────
 
-    private void incrementFailedAttempts(String phone) {
+    private void lockAccount(String phone, int attempts) {
         userRepository.findByPhone(phone).ifPresent(user -> {
-            int attempts = user.getFailedLoginAttempts() + 1;
             user.setFailedLoginAttempts(attempts);
-            if (attempts >= 5) {
-                user.setLockedUntil(java.time.Instant.now().plusSeconds(15 * 60)); // 15 minutes
-                log.warn("Account locked for user {} after {} failed attempts", phone, attempts);
-            }
+            user.setLockedUntil(java.time.Instant.now().plusSeconds(15 * 60)); // 15 minutes
             userRepository.save(user);
+            log.warn("Account locked for user {} after {} failed attempts", phone, attempts);
         });
     }
 
+    /**
+     * The peer address as resolved by the container. Behind a trusted reverse proxy Tomcat's
+     * RemoteIpValve ({@code server.forward-headers-strategy: native}) has already replaced it with
+     * the forwarded client address; a forged X-Forwarded-For from anywhere else is ignored.
+     */
     private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
-        }
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
-        }
         return request.getRemoteAddr();
     }
 }
@@ -5,6 +5,7 @@ import com.twsela.domain.ChatRoom;
 import com.twsela.security.AuthenticationHelper;
 import com.twsela.service.ChatService;
 import com.twsela.web.dto.ApiResponse;
+import com.twsela.web.dto.ChatDTO.MessagePage;
 import com.twsela.web.dto.CreateChatRoomRequest;
 import com.twsela.web.dto.SendChatMessageRequest;
 import io.swagger.v3.oas.annotations.Operation;
@@ -64,12 +65,28 @@ public class ChatController {
         ), "تم إرسال الرسالة"));
     }
 
-    @Operation(summary = "الحصول على رسائل غرفة المحادثة")
+    @Operation(summary = "الحصول على رسائل غرفة المحادثة (صفحات حسب معرّف الرسالة)")
     @GetMapping("/rooms/{roomId}/messages")
-    public ResponseEntity<ApiResponse<List<ChatMessage>>> getMessages(
-            @PathVariable Long roomId) {
-        List<ChatMessage> messages = chatService.getMessages(roomId);
-        return ResponseEntity.ok(ApiResponse.ok(messages));
+    public ResponseEntity<ApiResponse<MessagePage>> getMessages(
+            @PathVariable Long roomId,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(required = false) Integer limit) {
+        MessagePage page = chatService.getMessages(roomId, beforeId, limit);
+        return ResponseEntity.ok(ApiResponse.ok(page));
+    }
+
+    @Operation(summary = "تسجيل قراءة رسائل الغرفة حتى رسالة معينة")
+    @PostMapping("/rooms/{roomId}/read")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> markRead(
+            @PathVariable Long roomId,
+            @RequestParam Long messageId,
+            Authentication authentication) {
+        Long userId = authenticationHelper.getCurrentUserId(authentication);
+        chatService.markRead(roomId, userId, messageId);
+        return ResponseEntity.ok(ApiResponse.ok(Map.of(
+                "roomId", roomId,
+                "messageId", messageId
+        ), "تم تسجيل القراءة"));
     }
 
     @Operation(summary = "الحصول على غرف المحادثة لشحنة")
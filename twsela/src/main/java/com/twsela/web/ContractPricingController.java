@@ -2,6 +2,7 @@ package com.twsela.web;
 
 import com.twsela.domain.CustomPricingRule;
 import com.twsela.service.CustomPricingService;
+import com.twsela.service.PricingEngine;
 import com.twsela.web.dto.ApiResponse;
 import com.twsela.web.dto.ContractDTO.*;
 import io.swagger.v3.oas.annotations.Operation;
@@ -79,6 +80,17 @@ public class ContractPricingController {
         return ResponseEntity.ok(ApiResponse.ok(result, "تم حساب السعر"));
     }
 
+    @PostMapping("/pricing/calculate/batch")
+    @Operation(summary = "حساب أسعار مجموعة شحنات دفعة واحدة")
+    public ResponseEntity<ApiResponse<List<Map<String, Object>>>> calculatePrices(
+            @Valid @RequestBody PricingBatchRequest request) {
+        List<Map<String, Object>> results = pricingService.calculatePrices(request.items().stream()
+                .map(item -> new PricingEngine.QuoteRequest(item.merchantId(), item.zoneFromId(),
+                        item.zoneToId(), item.weightKg(), item.codAmount()))
+                .toList());
+        return ResponseEntity.ok(ApiResponse.ok(results, "تم حساب الأسعار"));
+    }
+
     private PricingRuleResponse toResponse(CustomPricingRule rule) {
         return new PricingRuleResponse(
                 rule.getId(), rule.getContract().getId(),
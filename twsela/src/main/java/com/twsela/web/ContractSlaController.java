@@ -4,6 +4,7 @@ import com.twsela.domain.ContractSlaTerms;
 import com.twsela.service.ContractSlaService;
 import com.twsela.web.dto.ApiResponse;
 import com.twsela.web.dto.ContractDTO.*;
+import com.twsela.web.exception.BusinessRuleException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
@@ -13,6 +14,7 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -57,12 +59,28 @@ public class ContractSlaController {
     @Operation(summary = "تقرير الالتزام بـ SLA")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getSlaCompliance(
             @PathVariable Long contractId,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
-        Map<String, Object> report = slaService.checkSlaCompliance(contractId, from, to);
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to) {
+        if ((from == null) != (to == null)) {
+            throw new BusinessRuleException("يجب تحديد بداية ونهاية الفترة معاً");
+        }
+        Map<String, Object> report = from == null
+                ? slaService.checkCurrentSlaCompliance(contractId)
+                : slaService.checkSlaCompliance(contractId, from, to);
         return ResponseEntity.ok(ApiResponse.ok(report, "تقرير الالتزام"));
     }
 
+    @GetMapping("/{contractId}/sla/evaluations")
+    @Operation(summary = "تقييمات SLA المحسوبة ليلياً")
+    public ResponseEntity<ApiResponse<List<SlaEvaluationResponse>>> getSlaEvaluations(@PathVariable Long contractId) {
+        List<SlaEvaluationResponse> evaluations = slaService.getSlaEvaluations(contractId).stream()
+                .map(e -> new SlaEvaluationResponse(e.getPeriodStart(), e.getPeriodEnd(), e.getTotalShipments(),
+                        e.getDeliveredShipments(), e.getLateShipments(), e.getLostShipments(), e.getTargetRate(),
+                        e.getActualRate(), e.isCompliant(), e.getTotalPenalties(), e.getEvaluatedAt()))
+                .toList();
+        return ResponseEntity.ok(ApiResponse.ok(evaluations));
+    }
+
     @GetMapping("/{contractId}/sla/penalties")
     @Operation(summary = "حساب غرامات مخالفات SLA")
     public ResponseEntity<ApiResponse<Map<String, Object>>> getSlapenalties(
@@ -36,6 +36,12 @@ public class CurrencyController {
         return ResponseEntity.ok(ApiResponse.ok(currencyService.convert(amount, from, to), "تم التحويل"));
     }
 
+    @PostMapping("/api/currencies/convert/batch")
+    @Operation(summary = "تحويل دفعة من المبالغ")
+    public ResponseEntity<ApiResponse<?>> convertBatch(@Valid @RequestBody ConvertBatchRequest req) {
+        return ResponseEntity.ok(ApiResponse.ok(currencyService.convertAll(req.items(), req.date()), "تم التحويل"));
+    }
+
     @GetMapping("/api/currencies/rate")
     @Operation(summary = "جلب سعر صرف بين عملتين")
     public ResponseEntity<ApiResponse<?>> getRate(
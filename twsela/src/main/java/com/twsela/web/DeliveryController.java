@@ -114,6 +114,7 @@ public class DeliveryController {
                 p.getShipment().getTrackingNumber(),
                 p.getPhotoUrl(),
                 p.getSignatureUrl(),
+                p.getThumbnailUrl(),
                 p.getRecipientName(),
                 p.getLatitude(),
                 p.getLongitude(),
@@ -1,73 +1,68 @@
 package com.twsela.web;
 
-import com.twsela.domain.ECommerceOrder;
-import com.twsela.service.ECommerceService;
+import com.twsela.service.ECommerceIngestionService;
 import com.twsela.web.dto.ApiResponse;
-import com.twsela.web.dto.DeveloperDTO.ECommerceOrderResponse;
+import com.twsela.web.dto.DeveloperDTO.ECommerceWebhookReceipt;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 /**
  * REST controller for receiving e-commerce platform webhooks.
  * These endpoints are permit-all — authentication is done via webhook signature verification.
+ * Orders are queued and acknowledged with 202; shipments are created by the ingestion workers.
  */
 @RestController
 @RequestMapping("/api/ecommerce/webhook")
 @Tag(name = "E-Commerce Webhooks", description = "استقبال إشعارات منصات التجارة")
 public class ECommerceWebhookController {
 
-    private final ECommerceService eCommerceService;
+    private final ECommerceIngestionService ingestionService;
 
-    public ECommerceWebhookController(ECommerceService eCommerceService) {
-        this.eCommerceService = eCommerceService;
+    public ECommerceWebhookController(ECommerceIngestionService ingestionService) {
+        this.ingestionService = ingestionService;
     }
 
     @PostMapping("/shopify/{connectionId}")
     @Operation(summary = "استقبال Webhook من Shopify")
-    public ResponseEntity<ApiResponse<ECommerceOrderResponse>> shopifyWebhook(
+    public ResponseEntity<ApiResponse<ECommerceWebhookReceipt>> shopifyWebhook(
             @PathVariable Long connectionId,
             @RequestBody String rawPayload,
             @RequestHeader(value = "X-Shopify-Hmac-SHA256", required = false) String signature) {
-        ECommerceOrder order = eCommerceService.processIncomingOrder(connectionId, rawPayload, signature);
-        return ResponseEntity.ok(ApiResponse.ok(toResponse(order)));
+        return accepted(ingestionService.accept(connectionId, rawPayload, signature));
     }
 
     @PostMapping("/woocommerce/{connectionId}")
     @Operation(summary = "استقبال Webhook من WooCommerce")
-    public ResponseEntity<ApiResponse<ECommerceOrderResponse>> wooCommerceWebhook(
+    public ResponseEntity<ApiResponse<ECommerceWebhookReceipt>> wooCommerceWebhook(
             @PathVariable Long connectionId,
             @RequestBody String rawPayload,
             @RequestHeader(value = "X-WC-Webhook-Signature", required = false) String signature) {
-        ECommerceOrder order = eCommerceService.processIncomingOrder(connectionId, rawPayload, signature);
-        return ResponseEntity.ok(ApiResponse.ok(toResponse(order)));
+        return accepted(ingestionService.accept(connectionId, rawPayload, signature));
     }
 
     @PostMapping("/salla/{connectionId}")
     @Operation(summary = "استقبال Webhook من سلة")
-    public ResponseEntity<ApiResponse<ECommerceOrderResponse>> sallaWebhook(
+    public ResponseEntity<ApiResponse<ECommerceWebhookReceipt>> sallaWebhook(
             @PathVariable Long connectionId,
             @RequestBody String rawPayload,
             @RequestHeader(value = "X-Salla-Signature", required = false) String signature) {
-        ECommerceOrder order = eCommerceService.processIncomingOrder(connectionId, rawPayload, signature);
-        return ResponseEntity.ok(ApiResponse.ok(toResponse(order)));
+        return accepted(ingestionService.accept(connectionId, rawPayload, signature));
     }
 
     @PostMapping("/zid/{connectionId}")
     @Operation(summary = "استقبال Webhook من زد")
-    public ResponseEntity<ApiResponse<ECommerceOrderResponse>> zidWebhook(
+    public ResponseEntity<ApiResponse<ECommerceWebhookReceipt>> zidWebhook(
             @PathVariable Long connectionId,
             @RequestBody String rawPayload,
             @RequestHeader(value = "X-Zid-Signature", required = false) String signature) {
-        ECommerceOrder order = eCommerceService.processIncomingOrder(connectionId, rawPayload, signature);
-        return ResponseEntity.ok(ApiResponse.ok(toResponse(order)));
+        return accepted(ingestionService.accept(connectionId, rawPayload, signature));
     }
 
-    private ECommerceOrderResponse toResponse(ECommerceOrder o) {
-        return new ECommerceOrderResponse(o.getId(), o.getExternalOrderId(),
-                o.getExternalOrderNumber(), o.getPlatform(), o.getStatus(),
-                o.getShipment() != null ? o.getShipment().getId() : null,
-                o.getReceivedAt(), o.getProcessedAt(), o.getErrorMessage());
+    private ResponseEntity<ApiResponse<ECommerceWebhookReceipt>> accepted(ECommerceIngestionService.Receipt receipt) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+                .body(ApiResponse.ok(new ECommerceWebhookReceipt(receipt.inboundId(), receipt.duplicate())));
     }
 }
@@ -0,0 +1,127 @@
+package com.twsela.web;
+
+import com.twsela.service.AuthorizationService;
+import com.twsela.service.FileStorageService;
+import com.twsela.web.exception.ResourceNotFoundException;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Serves stored files (POD photos, signatures, reports, exports) by the path
+ * {@link FileStorageService} returned when they were stored, e.g.
+ * {@code /uploads/pod/<sha256>.jpg} is downloaded from {@code /api/files/pod/<sha256>.jpg}.
+ * A path is not a secret: every download is checked with
+ * {@link AuthorizationService#canAccessFile}, and a file the caller may not read is reported
+ * as missing so its existence is not confirmed either.
+ * <p>
+ * Files are never read into memory. On Tomcat, full and single-range responses for files on
+ * local disk are handed to the connector's {@code sendfile}, which copies them to the socket
+ * with {@code FileChannel.transferTo}. Everything else is streamed from the file's
+ * {@link Resource}, with Spring answering single and multi-part Range requests. Responses
+ * carry an ETag and Last-Modified so clients can revalidate with 304s.
+ */
+@RestController
+@RequestMapping("/api/files")
+@PreAuthorize("isAuthenticated()")
+@Tag(name = "Files", description = "تحميل الملفات المخزنة")
+public class FileController {
+
+    static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final FileStorageService fileStorageService;
+    private final AuthorizationService authorizationService;
+
+    public FileController(FileStorageService fileStorageService, AuthorizationService authorizationService) {
+        this.fileStorageService = fileStorageService;
+        this.authorizationService = authorizationService;
+    }
+
+    @GetMapping("/{*path}")
+    @Operation(summary = "تحميل ملف مخزن مع دعم Range و ETag")
+    public ResponseEntity<Resource> download(@PathVariable String path,
+                                             @RequestHeader HttpHeaders headers,
+                                             HttpServletRequest request,
+                                             HttpServletResponse response) throws IOException {
+        FileStorageService.StoredFile file = fileStorageService.find(path)
+                .filter(found -> authorizationService.canAccessFile(found.path()))
+                .orElseThrow(() -> new ResourceNotFoundException("الملف غير موجود"));
+
+        if (new ServletWebRequest(request, response)
+                .checkNotModified(file.etag(), file.lastModified().toEpochMilli())) {
+            return null;
+        }
+
+        MediaType contentType = MediaTypeFactory.getMediaType(file.key())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+        List<HttpRange> ranges;
+        try {
+            ranges = headers.getRange();
+            for (HttpRange range : ranges) {
+                range.getRangeStart(file.size());
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + file.size())
+                    .build();
+        }
+
+        Optional<Path> localPath = fileStorageService.localPath(file);
+        if (localPath.isPresent() && ranges.size() <= 1 && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            return sendfile(file, localPath.get(), contentType, ranges, request);
+        }
+
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .eTag(file.etag())
+                .lastModified(file.lastModified())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .body(fileStorageService.open(file));
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    /** Set the headers and let the connector write the body after the handler returns. */
+    private ResponseEntity<Resource> sendfile(FileStorageService.StoredFile file, Path localPath, MediaType contentType,
+                                              List<HttpRange> ranges, HttpServletRequest request) {
+        long start = 0;
+        long end = file.size();
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+        if (!ranges.isEmpty()) {
+            start = ranges.get(0).getRangeStart(file.size());
+            end = ranges.get(0).getRangeEnd(file.size()) + 1;
+            builder = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (end - 1) + "/" + file.size());
+        }
+
+        request.setAttribute(SENDFILE_FILENAME, localPath.toString());
+        request.setAttribute(SENDFILE_START, start);
+        request.setAttribute(SENDFILE_END, end);
+
+        return builder.contentType(contentType)
+                .contentLength(end - start)
+                .eTag(file.etag())
+                .lastModified(file.lastModified())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .build();
+    }
+}
@@ -3,8 +3,11 @@ package com.twsela.web;
 import com.twsela.domain.*;
 import com.twsela.repository.*;
 import com.twsela.security.AuthenticationHelper;
+import com.twsela.service.AsyncJobService;
 import com.twsela.service.FinancialService;
+import com.twsela.service.PayoutGenerationJobHandler;
 import com.twsela.web.dto.CreatePayoutRequest;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -31,15 +34,18 @@ public class FinancialController {
     private final PayoutRepository payoutRepository;
     private final UserRepository userRepository;
     private final AuthenticationHelper authHelper;
+    private final AsyncJobService asyncJobService;
 
     public FinancialController(FinancialService financialService,
                                PayoutRepository payoutRepository,
                                UserRepository userRepository,
-                               AuthenticationHelper authHelper) {
+                               AuthenticationHelper authHelper,
+                               AsyncJobService asyncJobService) {
         this.financialService = financialService;
         this.payoutRepository = payoutRepository;
         this.userRepository = userRepository;
         this.authHelper = authHelper;
+        this.asyncJobService = asyncJobService;
     }
 
     @Operation(summary = "جميع المدفوعات", description = "عرض قائمة المدفوعات")
@@ -107,6 +113,37 @@ public class FinancialController {
         return ResponseEntity.ok(payout);
     }
 
+    @Operation(summary = "توليد دفعات الفترة", description = "جدولة توليد دفعات جميع المناديب أو التجار لفترة كمهمة غير متزامنة")
+    @ApiResponse(responseCode = "200", description = "تم جدولة التوليد")
+    @PostMapping("/payouts/runs")
+    public ResponseEntity<AsyncJob> runPayouts(@RequestParam String payoutType,
+                                               @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate startDate,
+                                               @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate endDate,
+                                               Authentication authentication) {
+        User currentUser = getCurrentUser(authentication);
+
+        // Only OWNER and ADMIN can generate payouts
+        if (!currentUser.getRole().getName().equals("OWNER") && !currentUser.getRole().getName().equals("ADMIN")) {
+            return ResponseEntity.status(403).build();
+        }
+
+        Payout.PayoutType type;
+        if (payoutType.equals("COURIER")) {
+            type = Payout.PayoutType.COURIER_SETTLEMENT;
+        } else if (payoutType.equals("MERCHANT")) {
+            type = Payout.PayoutType.MERCHANT_PAYOUT;
+        } else {
+            return ResponseEntity.badRequest().build();
+        }
+        if (endDate.isBefore(startDate)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        AsyncJob job = asyncJobService.createJob(PayoutGenerationJobHandler.JOB_TYPE,
+                PayoutGenerationJobHandler.payloadFor(type, startDate, endDate), 3, 3);
+        return ResponseEntity.ok(job);
+    }
+
     @Operation(summary = "تفاصيل دفعة", description = "الحصول على تفاصيل دفعة بالمعرف")
     @ApiResponse(responseCode = "200", description = "تم بنجاح")
     @GetMapping("/payouts/{payoutId}")
@@ -5,6 +5,7 @@ import com.twsela.domain.NotificationType;
 import com.twsela.repository.NotificationTemplateRepository;
 import com.twsela.service.NotificationAnalyticsService;
 import com.twsela.service.NotificationDispatcher;
+import com.twsela.service.TemplateEngine;
 import com.twsela.web.dto.AdvancedNotificationDTO.*;
 import com.twsela.web.dto.ApiResponse;
 import com.twsela.web.exception.ResourceNotFoundException;
@@ -33,13 +34,16 @@ public class NotificationTemplateController {
     private final NotificationTemplateRepository templateRepository;
     private final NotificationDispatcher dispatcher;
     private final NotificationAnalyticsService analyticsService;
+    private final TemplateEngine templateEngine;
 
     public NotificationTemplateController(NotificationTemplateRepository templateRepository,
                                            NotificationDispatcher dispatcher,
-                                           NotificationAnalyticsService analyticsService) {
+                                           NotificationAnalyticsService analyticsService,
+                                           TemplateEngine templateEngine) {
         this.templateRepository = templateRepository;
         this.dispatcher = dispatcher;
         this.analyticsService = analyticsService;
+        this.templateEngine = templateEngine;
     }
 
     @GetMapping("/templates")
@@ -76,6 +80,7 @@ public class NotificationTemplateController {
         template.setUpdatedAt(Instant.now());
 
         template = templateRepository.save(template);
+        templateEngine.invalidate();
         return ResponseEntity.ok(ApiResponse.ok(toTemplateResponse(template), "تم تحديث القالب"));
     }
 
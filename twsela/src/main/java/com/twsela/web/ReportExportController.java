@@ -1,6 +1,10 @@
 package com.twsela.web;
 
+import com.twsela.domain.AsyncJob;
+import com.twsela.service.AsyncJobService;
+import com.twsela.service.DataExportJobHandler;
 import com.twsela.service.ReportExportService;
+import com.twsela.service.StreamingExportService;
 import com.twsela.web.dto.ApiResponse;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -10,13 +14,15 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
 /**
- * REST controller for exporting analytics reports in PDF, Excel, or CSV format.
+ * REST controller for exporting analytics reports in PDF, Excel, or CSV format,
+ * and row-level data exports streamed to the response or run as async jobs.
  */
 @RestController
 @RequestMapping("/api/reports/export")
@@ -25,9 +31,15 @@ import java.time.format.DateTimeFormatter;
 public class ReportExportController {
 
     private final ReportExportService exportService;
+    private final StreamingExportService streamingExportService;
+    private final AsyncJobService asyncJobService;
 
-    public ReportExportController(ReportExportService exportService) {
+    public ReportExportController(ReportExportService exportService,
+                                  StreamingExportService streamingExportService,
+                                  AsyncJobService asyncJobService) {
         this.exportService = exportService;
+        this.streamingExportService = streamingExportService;
+        this.asyncJobService = asyncJobService;
     }
 
     @GetMapping("/{reportType}")
@@ -73,4 +85,50 @@ public class ReportExportController {
                 .header(HttpHeaders.CONTENT_TYPE, contentType)
                 .body(data);
     }
+
+    @GetMapping("/rows/{dataset}")
+    @Operation(summary = "تصدير صفوف الشحنات أو التسويات أو الفواتير مباشرة (XLSX أو CSV)")
+    public ResponseEntity<StreamingResponseBody> exportRows(
+            @PathVariable String dataset,
+            @RequestParam(defaultValue = "xlsx") String format,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String status) {
+
+        StreamingExportService.ExportQuery query = new StreamingExportService.ExportQuery(
+                DataExportJobHandler.parse(StreamingExportService.Dataset.class, dataset), from, to, status);
+        StreamingExportService.Format exportFormat = DataExportJobHandler.parse(StreamingExportService.Format.class, format);
+
+        String contentType = exportFormat == StreamingExportService.Format.XLSX
+                ? "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"
+                : "text/csv; charset=UTF-8";
+        String filename = String.format("twsela_%s_%s.%s",
+                query.dataset().name().toLowerCase(),
+                DateTimeFormatter.ofPattern("yyyyMMdd").withZone(ZoneId.of("Africa/Cairo")).format(from),
+                exportFormat.name().toLowerCase());
+
+        StreamingResponseBody body = out -> streamingExportService.export(query, exportFormat, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .header(HttpHeaders.CONTENT_TYPE, contentType)
+                .body(body);
+    }
+
+    @PostMapping("/rows/{dataset}/jobs")
+    @Operation(summary = "تصدير صفوف كمهمة غير متزامنة — الملف يُحفظ في التخزين")
+    public ResponseEntity<ApiResponse<AsyncJob>> exportRowsAsync(
+            @PathVariable String dataset,
+            @RequestParam(defaultValue = "xlsx") String format,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String status) {
+
+        StreamingExportService.ExportQuery query = new StreamingExportService.ExportQuery(
+                DataExportJobHandler.parse(StreamingExportService.Dataset.class, dataset), from, to, status);
+        StreamingExportService.Format exportFormat = DataExportJobHandler.parse(StreamingExportService.Format.class, format);
+
+        AsyncJob job = asyncJobService.createJob(DataExportJobHandler.JOB_TYPE,
+                DataExportJobHandler.payloadFor(query, exportFormat), 5, 3);
+        return ResponseEntity.ok(ApiResponse.ok(job, "تم جدولة التصدير"));
+    }
 }
@@ -1,8 +1,11 @@
 package com.twsela.web;
 
+import com.twsela.domain.AsyncJob;
 import com.twsela.domain.SettlementBatch;
 import com.twsela.domain.SettlementItem;
 import com.twsela.security.AuthenticationHelper;
+import com.twsela.service.AsyncJobService;
+import com.twsela.service.SettlementBuildJobHandler;
 import com.twsela.service.SettlementService;
 import com.twsela.web.dto.ApiResponse;
 import com.twsela.web.dto.GenerateSettlementRequest;
@@ -28,11 +31,14 @@ public class SettlementController {
 
     private final SettlementService settlementService;
     private final AuthenticationHelper authHelper;
+    private final AsyncJobService asyncJobService;
 
     public SettlementController(SettlementService settlementService,
-                                 AuthenticationHelper authHelper) {
+                                 AuthenticationHelper authHelper,
+                                 AsyncJobService asyncJobService) {
         this.settlementService = settlementService;
         this.authHelper = authHelper;
+        this.asyncJobService = asyncJobService;
     }
 
     @GetMapping
@@ -88,6 +94,16 @@ public class SettlementController {
         return ResponseEntity.ok(ApiResponse.ok(data, "تم إنشاء التسوية بنجاح"));
     }
 
+    @PostMapping("/{id}/build")
+    @Operation(summary = "بناء بنود التسوية من الشحنات المسلّمة كمهمة غير متزامنة")
+    @PreAuthorize("hasAnyRole('OWNER', 'ADMIN')")
+    public ResponseEntity<ApiResponse<AsyncJob>> buildBatch(@PathVariable Long id) {
+        settlementService.getBatchById(id);
+        AsyncJob job = asyncJobService.createJob(SettlementBuildJobHandler.JOB_TYPE,
+                SettlementBuildJobHandler.payloadFor(id), 3, 3);
+        return ResponseEntity.ok(ApiResponse.ok(job, "تم جدولة بناء التسوية"));
+    }
+
     @GetMapping("/{id}/items")
     @Operation(summary = "بنود التسوية")
     @PreAuthorize("hasAnyRole('OWNER', 'ADMIN')")
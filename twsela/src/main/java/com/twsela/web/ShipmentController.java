@@ -30,6 +30,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
 import com.twsela.web.dto.CreateShipmentRequest;
@@ -458,6 +459,7 @@ public class ShipmentController {
      */
     @PostMapping("/warehouse/dispatch/{courierId}")
     @PreAuthorize("hasRole('WAREHOUSE_MANAGER') or hasRole('OWNER')")
+    @Transactional
     public ResponseEntity<?> dispatchToCourier(
             @PathVariable Long courierId,
             @RequestBody Map<String, List<Long>> request) {
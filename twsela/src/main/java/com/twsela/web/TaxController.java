@@ -29,6 +29,12 @@ public class TaxController {
         return ResponseEntity.ok(ApiResponse.ok(taxService.calculateTax(amount, countryCode), "نتيجة حساب الضريبة"));
     }
 
+    @PostMapping("/api/tax/calculate/batch")
+    @Operation(summary = "حساب الضريبة لدفعة من البنود")
+    public ResponseEntity<ApiResponse<?>> calculateBatch(@Valid @RequestBody TaxBatchRequest req) {
+        return ResponseEntity.ok(ApiResponse.ok(taxService.calculateTaxes(req.lines(), req.date()), "نتيجة حساب الضريبة"));
+    }
+
     @GetMapping("/api/admin/tax/rules")
     @Operation(summary = "جلب جميع قواعد الضرائب")
     public ResponseEntity<ApiResponse<?>> getAllRules() {
@@ -73,6 +73,23 @@ public class WebSocketMessageController {
         }
     }
 
+    /**
+     * استقبال إيصال قراءة عبر WebSocket.
+     * Client sends to: /app/chat.read
+     */
+    @MessageMapping("/chat.read")
+    public void handleChatRead(@Payload Map<String, Object> payload) {
+        try {
+            Long roomId = toLong(payload.get("roomId"));
+            Long userId = toLong(payload.get("userId"));
+            Long messageId = toLong(payload.get("messageId"));
+
+            chatService.markRead(roomId, userId, messageId);
+        } catch (Exception e) {
+            log.error("Error processing chat read receipt: {}", e.getMessage());
+        }
+    }
+
     /**
      * تسجيل حالة الاتصال.
      * Client sends to: /app/presence.connect
@@ -87,6 +104,20 @@ public class WebSocketMessageController {
         }
     }
 
+    /**
+     * نبضة حضور — يرسلها العميل دورياً ليبقى متصلاً.
+     * Client sends to: /app/presence.heartbeat
+     */
+    @MessageMapping("/presence.heartbeat")
+    public void handlePresenceHeartbeat(@Payload Map<String, Object> payload) {
+        try {
+            Long userId = toLong(payload.get("userId"));
+            presenceService.heartbeat(userId);
+        } catch (Exception e) {
+            log.error("Error processing presence heartbeat: {}", e.getMessage());
+        }
+    }
+
     /**
      * تسجيل انقطاع الاتصال.
      * Client sends to: /app/presence.disconnect
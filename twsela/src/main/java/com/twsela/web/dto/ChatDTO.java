@@ -0,0 +1,37 @@
+package com.twsela.web.dto;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * DTOs لسجل المحادثات وإيصالات القراءة.
+ */
+public class ChatDTO {
+
+    /** A message as delivered over STOMP, cached per room and returned by the history API. */
+    public record MessageView(
+            Long messageId,
+            Long roomId,
+            Long senderId,
+            String senderName,
+            String content,
+            String messageType,
+            Instant sentAt
+    ) {}
+
+    /**
+     * One page of room history in chronological order. Pass {@code nextBeforeId} as
+     * {@code beforeId} to fetch the previous (older) page; it is null on the oldest page.
+     */
+    public record MessagePage(
+            Long roomId,
+            List<MessageView> messages,
+            Long nextBeforeId
+    ) {}
+
+    /** A member's read marker: every message up to {@code messageId} has been read. */
+    public record ReadReceipt(
+            Long userId,
+            Long messageId
+    ) {}
+}
@@ -3,11 +3,15 @@ package com.twsela.web.dto;
 import com.twsela.domain.Contract.ContractStatus;
 import com.twsela.domain.Contract.ContractType;
 import com.twsela.domain.ContractSlaTerms.SlaReviewPeriod;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.List;
 
 /**
  * DTOs for Contract Management endpoints.
@@ -94,6 +98,10 @@ public class ContractDTO {
             BigDecimal codAmount
     ) {}
 
+    public record PricingBatchRequest(
+            @NotEmpty @Size(max = 1000) List<@Valid @NotNull PricingCalculationRequest> items
+    ) {}
+
     public record SlaTermsRequest(
             double targetDeliveryRate,
             int maxDeliveryHours,
@@ -111,4 +119,18 @@ public class ContractDTO {
             BigDecimal lostPenaltyFixed,
             SlaReviewPeriod slaReviewPeriod
     ) {}
+
+    public record SlaEvaluationResponse(
+            Instant periodStart,
+            Instant periodEnd,
+            long totalShipments,
+            long deliveredShipments,
+            long lateShipments,
+            long lostShipments,
+            double targetRate,
+            double actualRate,
+            boolean compliant,
+            BigDecimal totalPenalties,
+            Instant evaluatedAt
+    ) {}
 }
@@ -1,8 +1,10 @@
 package com.twsela.web.dto;
 
+import jakarta.validation.Valid;
 import jakarta.validation.constraints.*;
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.List;
 
 /**
  * DTOs for multi-country & internationalization module.
@@ -58,6 +60,11 @@ public final class CountryDTO {
         BigDecimal rate
     ) {}
 
+    public record ConvertBatchRequest(
+        LocalDate date,
+        @NotEmpty @Size(max = 5000) List<@Valid @NotNull ConvertRequest> items
+    ) {}
+
     // ── Tax ──
     public record CreateTaxRuleRequest(
         @NotBlank String countryCode,
@@ -74,6 +81,16 @@ public final class CountryDTO {
         LocalDate validFrom, LocalDate validTo, boolean active
     ) {}
 
+    public record TaxLineRequest(
+        @NotNull BigDecimal amount,
+        @NotBlank @Size(min = 2, max = 2) String countryCode
+    ) {}
+
+    public record TaxBatchRequest(
+        LocalDate date,
+        @NotEmpty @Size(max = 5000) List<@Valid @NotNull TaxLineRequest> lines
+    ) {}
+
     public record TaxCalculationResponse(
         BigDecimal originalAmount, String countryCode,
         BigDecimal taxRate, BigDecimal taxAmount,
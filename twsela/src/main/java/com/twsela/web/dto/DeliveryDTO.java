@@ -29,6 +29,7 @@ public class DeliveryDTO {
             String trackingNumber,
             String photoUrl,
             String signatureUrl,
+            String thumbnailUrl,
             String recipientName,
             Double latitude,
             Double longitude,
@@ -82,4 +82,9 @@ public class DeveloperDTO {
             Instant processedAt,
             String errorMessage
     ) {}
+
+    public record ECommerceWebhookReceipt(
+            Long inboundId,
+            boolean duplicate
+    ) {}
 }
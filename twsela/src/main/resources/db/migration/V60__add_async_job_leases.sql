@@ -0,0 +1,10 @@
+-- Lease-based claiming for AsyncJobExecutor workers
+ALTER TABLE async_jobs
+    ADD COLUMN lease_owner VARCHAR(100) NULL,
+    ADD COLUMN lease_expires_at TIMESTAMP(6) NULL,
+    ADD COLUMN heartbeat_at TIMESTAMP(6) NULL,
+    ADD COLUMN progress INT NOT NULL DEFAULT 0,
+    ADD COLUMN checkpoint TEXT NULL;
+
+CREATE INDEX idx_async_job_claim ON async_jobs (job_type, status, priority, scheduled_at);
+CREATE INDEX idx_async_job_lease ON async_jobs (status, lease_expires_at);
@@ -0,0 +1,15 @@
+-- Append-only wallet ledger: one row per idempotency key
+ALTER TABLE wallet_transactions
+    ADD COLUMN idempotency_key VARCHAR(100) NULL;
+
+CREATE UNIQUE INDEX uk_wt_idempotency_key ON wallet_transactions (idempotency_key);
+
+-- Backfill keys for settlement legs posted before this migration so re-settling skips them.
+-- Only the first row of any (shipment, reason) pair is keyed; earlier races may have duplicated legs.
+UPDATE wallet_transactions wt
+    JOIN (SELECT MIN(id) AS id
+          FROM wallet_transactions
+          WHERE reference_id IS NOT NULL
+            AND reason IN ('COD_COLLECTED', 'SETTLEMENT')
+          GROUP BY reference_id, reason) first_leg ON first_leg.id = wt.id
+SET wt.idempotency_key = CONCAT('SHIP:', wt.reference_id, ':', wt.reason);
@@ -0,0 +1,34 @@
+-- Durable queue between the e-commerce webhook endpoints and the ingestion workers
+CREATE TABLE ecommerce_inbound_orders (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    connection_id BIGINT NOT NULL,
+    platform VARCHAR(20) NOT NULL,
+    delivery_key VARCHAR(100) NOT NULL,
+    raw_payload MEDIUMTEXT NOT NULL,
+    status VARCHAR(20) NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    lease_owner VARCHAR(100) NULL,
+    lease_expires_at TIMESTAMP(6) NULL,
+    error_message VARCHAR(1000) NULL,
+    received_at TIMESTAMP(6) NOT NULL,
+    processed_at TIMESTAMP(6) NULL,
+    CONSTRAINT fk_inbound_connection FOREIGN KEY (connection_id) REFERENCES ecommerce_connections (id)
+);
+
+CREATE UNIQUE INDEX uk_inbound_delivery_key ON ecommerce_inbound_orders (delivery_key);
+CREATE INDEX idx_inbound_claim ON ecommerce_inbound_orders (status, id);
+CREATE INDEX idx_inbound_lease ON ecommerce_inbound_orders (status, lease_expires_at);
+
+-- One order per store order: <connection_id>:<external_order_id>
+ALTER TABLE ecommerce_orders
+    ADD COLUMN idempotency_key VARCHAR(150) NULL;
+
+CREATE UNIQUE INDEX uk_ecommerce_order_idempotency_key ON ecommerce_orders (idempotency_key);
+
+-- Key only the first order of any (connection, external id) pair; earlier races may have duplicated it.
+UPDATE ecommerce_orders eo
+    JOIN (SELECT MIN(id) AS id
+          FROM ecommerce_orders
+          WHERE external_order_id NOT LIKE 'PARSE\_ERROR\_%'
+          GROUP BY connection_id, external_order_id) first_order ON first_order.id = eo.id
+SET eo.idempotency_key = CONCAT(eo.connection_id, ':', eo.external_order_id);
@@ -0,0 +1,39 @@
+-- Normalized chat room membership; replaces substring matching on chat_rooms.participants
+CREATE TABLE chat_room_members (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    chat_room_id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    last_read_message_id BIGINT NULL,
+    joined_at TIMESTAMP(6) NOT NULL,
+    CONSTRAINT fk_crm_room FOREIGN KEY (chat_room_id) REFERENCES chat_rooms (id),
+    CONSTRAINT fk_crm_user FOREIGN KEY (user_id) REFERENCES users (id),
+    CONSTRAINT uk_crm_room_user UNIQUE (chat_room_id, user_id)
+);
+
+CREATE INDEX idx_crm_user_room ON chat_room_members (user_id, chat_room_id);
+
+-- Keyset paging of room history: WHERE chat_room_id = ? AND id < ? ORDER BY id DESC
+CREATE INDEX idx_cm_room_id ON chat_messages (chat_room_id, id);
+
+-- Backfill members from the comma-separated participants of existing rooms, skipping
+-- tokens that are not ids of existing users.
+INSERT IGNORE INTO chat_room_members (chat_room_id, user_id, joined_at)
+WITH RECURSIVE split (room_id, item, rest, created_at) AS (
+    SELECT id,
+           TRIM(SUBSTRING_INDEX(participants, ',', 1)),
+           IF(LOCATE(',', participants) > 0, SUBSTRING(participants, LOCATE(',', participants) + 1), NULL),
+           created_at
+    FROM chat_rooms
+    WHERE participants IS NOT NULL AND participants <> ''
+    UNION ALL
+    SELECT room_id,
+           TRIM(SUBSTRING_INDEX(rest, ',', 1)),
+           IF(LOCATE(',', rest) > 0, SUBSTRING(rest, LOCATE(',', rest) + 1), NULL),
+           created_at
+    FROM split
+    WHERE rest IS NOT NULL
+)
+SELECT s.room_id, u.id, s.created_at
+FROM split s
+JOIN users u ON u.id = CAST(s.item AS UNSIGNED)
+WHERE s.item REGEXP '^[0-9]+$';
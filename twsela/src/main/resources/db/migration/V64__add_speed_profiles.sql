@@ -0,0 +1,19 @@
+-- Per-zone, per-hour courier speeds learned from location_pings by SpeedProfileLearner
+CREATE TABLE speed_profiles (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    zone_id BIGINT NOT NULL,
+    hour_of_day INT NOT NULL,
+    speed_kmh DOUBLE NOT NULL,
+    detour_factor DOUBLE NOT NULL,
+    sample_seconds BIGINT NOT NULL,
+    stop_dwell_seconds DOUBLE NOT NULL,
+    stop_count INT NOT NULL,
+    updated_at TIMESTAMP(6) NOT NULL,
+    CONSTRAINT uk_sp_zone_hour UNIQUE (zone_id, hour_of_day)
+);
+
+-- Learner scans pings per session in time order; also serves the per-session history queries
+CREATE INDEX idx_lp_session_ts ON location_pings (tracking_session_id, timestamp);
+
+-- Latest location of a courier without reading the whole history
+CREATE INDEX idx_clh_courier_ts ON courier_location_history (courier_id, timestamp);
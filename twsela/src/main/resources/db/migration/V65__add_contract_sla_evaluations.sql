@@ -0,0 +1,19 @@
+-- Per-contract SLA results for a review period, precomputed nightly by SlaEvaluationJob
+CREATE TABLE contract_sla_evaluations (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    contract_id BIGINT NOT NULL,
+    period_start TIMESTAMP(6) NOT NULL,
+    period_end TIMESTAMP(6) NOT NULL,
+    total_shipments BIGINT NOT NULL,
+    delivered_shipments BIGINT NOT NULL,
+    late_shipments BIGINT NOT NULL,
+    lost_shipments BIGINT NOT NULL,
+    target_rate DOUBLE NOT NULL,
+    actual_rate DOUBLE NOT NULL,
+    compliant BOOLEAN NOT NULL,
+    late_penalties DECIMAL(12,2) NOT NULL,
+    lost_penalties DECIMAL(12,2) NOT NULL,
+    total_penalties DECIMAL(12,2) NOT NULL,
+    evaluated_at TIMESTAMP(6) NOT NULL,
+    CONSTRAINT uk_cse_contract_period UNIQUE (contract_id, period_start, period_end)
+);
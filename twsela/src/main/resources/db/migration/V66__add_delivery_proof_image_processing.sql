@@ -0,0 +1,8 @@
+-- Downscaled proof photos with a dashboard thumbnail, produced by ProofImagePipeline after upload;
+-- image_attempts counts processing runs so images that keep failing stop being retried
+ALTER TABLE delivery_proofs
+    ADD COLUMN thumbnail_url VARCHAR(500) NULL,
+    ADD COLUMN images_pending BOOLEAN NOT NULL DEFAULT FALSE,
+    ADD COLUMN image_attempts INT NOT NULL DEFAULT 0;
+
+CREATE INDEX idx_dp_images_pending ON delivery_proofs (images_pending, created_at);
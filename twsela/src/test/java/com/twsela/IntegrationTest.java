@@ -1,6 +1,7 @@
 package com.twsela;
 
 import com.twsela.config.ApiVersionFilter;
+import com.twsela.config.DbUsageCapture;
 import com.twsela.domain.*;
 import com.twsela.repository.*;
 import com.twsela.security.JwtService;
@@ -16,6 +17,9 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.math.BigDecimal;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -35,6 +39,15 @@ class IntegrationTest {
     @Autowired private MockMvc mockMvc;
     @Autowired private AwbService awbService;
     @Autowired private BarcodeService barcodeService;
+    @Autowired private RoleRepository roleRepository;
+    @Autowired private UserStatusRepository userStatusRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private ZoneRepository zoneRepository;
+    @Autowired private ShipmentStatusRepository shipmentStatusRepository;
+    @Autowired private RecipientDetailsRepository recipientDetailsRepository;
+    @Autowired private ShipmentRepository shipmentRepository;
+    @Autowired private ShipmentStatusHistoryRepository statusHistoryRepository;
+    @Autowired private JwtService jwtService;
 
     @Test
     @DisplayName("Health endpoint returns 200")
@@ -43,6 +56,19 @@ class IntegrationTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    @DisplayName("Health endpoint stays within its DB statement budget")
+    void healthEndpointDbBudget() throws Exception {
+        try (DbUsageCapture db = DbUsageCapture.start()) {
+            mockMvc.perform(get("/api/health"))
+                    .andExpect(status().isOk());
+
+            // At most: tenant by subdomain and by domain, the IP blacklist check, and the SELECT 1 probe
+            db.assertQueriesAtMost(4)
+                    .assertEntityLoadsAtMost(0);
+        }
+    }
+
     @Test
     @DisplayName("API version header present on all responses")
     void apiVersionHeader() throws Exception {
@@ -82,6 +108,35 @@ class IntegrationTest {
                 .andExpect(status().is4xxClientError());
     }
 
+    @Test
+    @DisplayName("Public tracking loads the status timeline of a stored shipment")
+    void publicTrackingTimeline() throws Exception {
+        storedShipment("TRK-INTEGRATION-1", ShipmentStatusConstants.PENDING, storedUser("MERCHANT", "01590000001"));
+
+        mockMvc.perform(get("/api/public/tracking/{trackingNumber}", "TRK-INTEGRATION-1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.currentStatus").value(ShipmentStatusConstants.PENDING))
+                .andExpect(jsonPath("$.data.statusTimeline.length()").value(1));
+    }
+
+    @Test
+    @DisplayName("Warehouse dispatch moves a stored shipment at the hub to the courier")
+    void warehouseDispatch() throws Exception {
+        Shipment shipment = storedShipment("TRK-INTEGRATION-2", ShipmentStatusConstants.RECEIVED_AT_HUB,
+                storedUser("MERCHANT", "01590000002"));
+        User courier = storedUser("COURIER", "01590000003");
+        User manager = storedUser("WAREHOUSE_MANAGER", "01590000004");
+        String token = jwtService.generateToken(manager.getPhone(), Map.of("role", "ROLE_WAREHOUSE_MANAGER"));
+
+        mockMvc.perform(post("/api/shipments/warehouse/dispatch/{courierId}", courier.getId())
+                        .header("Authorization", "Bearer " + token)
+                        .contentType("application/json")
+                        .content("{\"shipmentIds\":[" + shipment.getId() + "]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.updatedShipments").value(1))
+                .andExpect(jsonPath("$.errors.length()").value(0));
+    }
+
     @Test
     @DisplayName("AWB service generates valid tracking numbers")
     void awbServiceIntegration() {
@@ -118,4 +173,35 @@ class IntegrationTest {
                             "CORS preflight should return 200 or 403, got: " + status);
                 });
     }
+
+    // ── Helpers ─────────────────────────────────────────────────
+
+    private User storedUser(String roleName, String phone) {
+        User user = new User();
+        user.setName("Integration " + roleName.replace('_', ' ').toLowerCase());
+        user.setPhone(phone);
+        user.setPassword("password");
+        user.setRole(roleRepository.findByName(roleName).orElseThrow());
+        user.setStatus(userStatusRepository.findByName("ACTIVE").orElseThrow());
+        return userRepository.save(user);
+    }
+
+    /** A shipment of {@code merchant} in {@code statusName} with one matching status history entry. */
+    private Shipment storedShipment(String trackingNumber, String statusName, User merchant) {
+        ShipmentStatus status = shipmentStatusRepository.findByName(statusName).orElseThrow();
+        Shipment shipment = new Shipment();
+        shipment.setTrackingNumber(trackingNumber);
+        shipment.setMerchant(merchant);
+        shipment.setZone(zoneRepository.save(new Zone("ZONE-" + trackingNumber, "integration test zone",
+                new BigDecimal("30.0444"), new BigDecimal("31.2357"))));
+        shipment.setStatus(status);
+        shipment.setRecipientDetails(recipientDetailsRepository.save(
+                new RecipientDetails("01012345678", "Recipient", "1 Integration Street")));
+        shipment.setItemValue(new BigDecimal("100.00"));
+        shipment.setCodAmount(new BigDecimal("100.00"));
+        shipment.setDeliveryFee(new BigDecimal("35.00"));
+        shipment = shipmentRepository.save(shipment);
+        statusHistoryRepository.save(new ShipmentStatusHistory(shipment, status, "created"));
+        return shipment;
+    }
 }
@@ -0,0 +1,81 @@
+package com.twsela.config;
+
+import com.twsela.domain.Role;
+import com.twsela.domain.User;
+import com.twsela.domain.UserStatus;
+import com.twsela.repository.RoleRepository;
+import com.twsela.repository.UserRepository;
+import com.twsela.repository.UserStatusRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base for tests that hammer the real database from many threads (H2 + test profile).
+ * <p>
+ * Each context gets its own in-memory database, with a lock timeout long enough for
+ * contended row locks and a larger connection pool. Subclasses add their own properties
+ * with {@code @TestPropertySource} and submit work to {@link #pool}.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:concurrency-${random.uuid};DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;MODE=MySQL;LOCK_TIMEOUT=30000",
+        "spring.datasource.hikari.maximum-pool-size=24",
+        "springdoc.api-docs.enabled=false",
+        "springdoc.swagger-ui.enabled=false"
+})
+@ActiveProfiles("test")
+public abstract class ConcurrencyTestSupport {
+
+    @Autowired protected JdbcTemplate jdbcTemplate;
+    @Autowired private UserRepository userRepository;
+    @Autowired private RoleRepository roleRepository;
+    @Autowired private UserStatusRepository userStatusRepository;
+
+    protected ExecutorService pool;
+
+    /** Worker threads in {@link #pool}. */
+    protected int threads() {
+        return 16;
+    }
+
+    @BeforeEach
+    void startPool() {
+        pool = Executors.newFixedThreadPool(threads());
+    }
+
+    @AfterEach
+    void stopPool() throws InterruptedException {
+        pool.shutdownNow();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────
+
+    /** An active merchant with a random phone under the given prefix. */
+    protected User newMerchant(String name, String phonePrefix) {
+        Role role = roleRepository.findByName("MERCHANT").orElseGet(() -> roleRepository.save(new Role("MERCHANT")));
+        UserStatus status = userStatusRepository.findByName("ACTIVE")
+                .orElseGet(() -> userStatusRepository.save(new UserStatus("ACTIVE")));
+
+        User user = new User();
+        user.setName(name);
+        user.setPhone(phonePrefix + ThreadLocalRandom.current().nextLong(10_000_000L, 100_000_000L));
+        user.setPassword("password");
+        user.setRole(role);
+        user.setStatus(status);
+        return userRepository.save(user);
+    }
+
+    protected long count(String sql, Object... args) {
+        Long value = jdbcTemplate.queryForObject(sql, Long.class, args);
+        return value == null ? 0 : value;
+    }
+}
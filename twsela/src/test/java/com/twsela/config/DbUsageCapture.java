@@ -0,0 +1,64 @@
+package com.twsela.config;
+
+/**
+ * Counts what the code under test does to the database, for tests that guard against N+1.
+ * <p>
+ * Works around {@code MockMvc} calls and direct service calls alike, since both run on the
+ * test's thread; requests and transactions inside the capture nest under it.
+ * <pre>
+ * try (DbUsageCapture db = DbUsageCapture.start()) {
+ *     mockMvc.perform(get("/api/shipments"));
+ *     db.assertQueriesAtMost(3).assertCollectionFetchesAtMost(0);
+ * }
+ * </pre>
+ */
+public final class DbUsageCapture implements AutoCloseable {
+
+    private final RequestDbStats stats;
+
+    private DbUsageCapture(RequestDbStats stats) {
+        this.stats = stats;
+    }
+
+    public static DbUsageCapture start() {
+        return new DbUsageCapture(RequestDbStats.begin());
+    }
+
+    public int queries() {
+        return stats.queries();
+    }
+
+    public int entityLoads() {
+        return stats.entityLoads();
+    }
+
+    public int collectionFetches() {
+        return stats.collectionFetches();
+    }
+
+    public DbUsageCapture assertQueriesAtMost(int max) {
+        return check("statements", stats.queries(), max);
+    }
+
+    public DbUsageCapture assertEntityLoadsAtMost(int max) {
+        return check("entity loads", stats.entityLoads(), max);
+    }
+
+    public DbUsageCapture assertCollectionFetchesAtMost(int max) {
+        return check("lazy collection fetches", stats.collectionFetches(), max);
+    }
+
+    @Override
+    public void close() {
+        RequestDbStats.end(stats);
+    }
+
+    private DbUsageCapture check(String what, int actual, int max) {
+        if (actual > max) {
+            throw new AssertionError("Expected at most " + max + " " + what + " but was " + actual
+                    + " (" + stats.queries() + " statements, " + stats.entityLoads() + " entity loads, "
+                    + stats.collectionFetches() + " collection fetches, top entity " + stats.topEntity() + ")");
+        }
+        return this;
+    }
+}
@@ -0,0 +1,131 @@
+package com.twsela.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DbUsageMonitorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final DbUsageMonitor monitor = new DbUsageMonitor(meterRegistry, 5, 10, 2, 3);
+
+    @AfterEach
+    void noLeak() {
+        assertNull(RequestDbStats.current());
+    }
+
+    private static RequestDbStats stats(int queries, int shipmentLoads, int fetches) {
+        RequestDbStats stats = RequestDbStats.begin();
+        RequestDbStats.end(stats);
+        for (int i = 0; i < queries; i++) {
+            stats.record(1_000_000);
+        }
+        for (int i = 0; i < shipmentLoads; i++) {
+            stats.recordEntityLoad("Shipment");
+        }
+        stats.recordEntityLoad("User");
+        for (int i = 0; i < fetches; i++) {
+            stats.recordCollectionFetch();
+        }
+        return stats;
+    }
+
+    @Test
+    @DisplayName("السجلات المتداخلة تُضاف إلى السجل الخارجي")
+    void nestedRecordsRollUp() {
+        RequestDbStats request = RequestDbStats.begin();
+        request.record(100);
+        RequestDbStats tx = RequestDbStats.begin();
+        RequestDbStats.current().record(100);
+        RequestDbStats.current().recordEntityLoad("Shipment");
+        RequestDbStats.current().recordCollectionFetch();
+        RequestDbStats.end(tx);
+
+        assertSame(request, RequestDbStats.current());
+        RequestDbStats.end(request);
+
+        assertEquals(1, tx.queries());
+        assertEquals(2, request.queries());
+        assertEquals(200, request.nanos());
+        assertEquals(1, request.entityLoads());
+        assertEquals(1, request.collectionFetches());
+    }
+
+    @Test
+    @DisplayName("ضمن الحدود — يُقاس ولا يُبلّغ عنه")
+    void withinBudget() {
+        monitor.recordRequest("GET", "/api/shipments/{id}", "/api/shipments/7", stats(3, 2, 1));
+
+        assertEquals(1, meterRegistry.get("twsela.http.db.entity-loads").tag("route", "/api/shipments/{id}")
+                .summary().count());
+        assertEquals(3.0, meterRegistry.get("twsela.http.db.entity-loads").summary().totalAmount());
+        assertEquals(0.0, meterRegistry.get("twsela.db.flagged").tag("scope", "request").counter().count());
+        assertEquals(List.of(), monitor.snapshot().get("recentFlagged"));
+    }
+
+    @Test
+    @DisplayName("تجاوز عدد الكيانات — يُبلّغ مع الكيان الأكثر تحميلاً")
+    void flagsEntityLoadsWithTopEntity() {
+        monitor.recordRequest("GET", "/api/shipments", "/api/shipments", stats(2, 40, 0));
+
+        assertEquals(1.0, meterRegistry.get("twsela.db.flagged").tag("scope", "request").counter().count());
+        DbUsageMonitor.Flagged flagged = recentFlagged().get(0);
+        assertEquals("GET /api/shipments", flagged.name());
+        assertEquals(41, flagged.entityLoads());
+        assertEquals("Shipment×40", flagged.topEntity());
+    }
+
+    @Test
+    @DisplayName("المعاملات تُقاس باسم الصنف والدالة")
+    void transactionsByMethod() {
+        monitor.recordTransaction("ShipmentService.list", stats(1, 0, 0));
+        monitor.recordTransaction("ShipmentService.list", stats(9, 0, 0));
+
+        assertEquals(10.0, meterRegistry.get("twsela.tx.db.queries").tag("method", "ShipmentService.list")
+                .summary().totalAmount());
+        assertEquals(1.0, meterRegistry.get("twsela.db.flagged").tag("scope", "transaction").counter().count());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> tx = ((List<Map<String, Object>>) monitor.snapshot().get("transactions")).get(0);
+        assertEquals(2L, tx.get("count"));
+        assertEquals(9, tx.get("maxQueries"));
+    }
+
+    @Test
+    @DisplayName("قائمة آخر التجاوزات محدودة والأحدث أولاً")
+    void recentFlaggedBounded() {
+        for (int i = 1; i <= 5; i++) {
+            monitor.recordTransaction("Tx" + i, stats(0, 0, 3));
+        }
+
+        List<DbUsageMonitor.Flagged> flagged = recentFlagged();
+        assertEquals(3, flagged.size());
+        assertEquals("Tx5", flagged.get(0).name());
+    }
+
+    @Test
+    @DisplayName("DbUsageCapture — يفشل عند تجاوز الحد ويذكر الكيان")
+    void captureAssertions() {
+        try (DbUsageCapture db = DbUsageCapture.start()) {
+            RequestDbStats request = RequestDbStats.begin();
+            RequestDbStats.current().record(100);
+            RequestDbStats.current().recordEntityLoad("Shipment");
+            RequestDbStats.current().recordEntityLoad("Shipment");
+            RequestDbStats.end(request);
+
+            db.assertQueriesAtMost(1).assertEntityLoadsAtMost(2).assertCollectionFetchesAtMost(0);
+            AssertionError error = assertThrows(AssertionError.class, () -> db.assertEntityLoadsAtMost(1));
+            assertTrue(error.getMessage().contains("Shipment×2"), error.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<DbUsageMonitor.Flagged> recentFlagged() {
+        return (List<DbUsageMonitor.Flagged>) monitor.snapshot().get("recentFlagged");
+    }
+}
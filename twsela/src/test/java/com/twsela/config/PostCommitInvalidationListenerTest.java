@@ -0,0 +1,97 @@
+package com.twsela.config;
+
+import com.twsela.domain.Shipment;
+import com.twsela.domain.TaxRule;
+import com.twsela.domain.Zone;
+import com.twsela.service.PricingEngine;
+import com.twsela.service.ReferenceDataCache;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PostCommitInvalidationListenerTest {
+
+    @Mock private EntityManagerFactory entityManagerFactory;
+    @Mock private PricingEngine pricingEngine;
+    @Mock private ReferenceDataCache referenceDataCache;
+
+    private PostCommitInvalidationListener listener;
+
+    @BeforeEach
+    void setUp() {
+        listener = new PostCommitInvalidationListener(entityManagerFactory, pricingEngine, referenceDataCache);
+    }
+
+    @Test
+    @DisplayName("تعديل منطقة - إبطال جداول التسعير فقط")
+    void zoneUpdateInvalidatesPricing() {
+        EntityPersister zone = persister(Zone.class);
+        PostUpdateEvent event = mock(PostUpdateEvent.class);
+        when(event.getPersister()).thenReturn(zone);
+
+        listener.onPostUpdate(event);
+
+        verify(pricingEngine).invalidate();
+        verifyNoInteractions(referenceDataCache);
+    }
+
+    @Test
+    @DisplayName("إضافة أو حذف قاعدة ضريبة - إبطال البيانات المرجعية فقط")
+    void taxRuleChangesInvalidateReferenceData() {
+        EntityPersister taxRule = persister(TaxRule.class);
+        PostInsertEvent insert = mock(PostInsertEvent.class);
+        when(insert.getPersister()).thenReturn(taxRule);
+        PostDeleteEvent delete = mock(PostDeleteEvent.class);
+        when(delete.getPersister()).thenReturn(taxRule);
+
+        listener.onPostInsert(insert);
+        listener.onPostDelete(delete);
+
+        verify(referenceDataCache, times(2)).invalidate();
+        verifyNoInteractions(pricingEngine);
+    }
+
+    @Test
+    @DisplayName("كيان غير مرتبط - لا معالجة بعد التثبيت ولا إبطال")
+    void unrelatedEntityIsIgnored() {
+        EntityPersister shipment = persister(Shipment.class);
+        PostUpdateEvent event = mock(PostUpdateEvent.class);
+        when(event.getPersister()).thenReturn(shipment);
+
+        assertThat(listener.requiresPostCommitHandling(shipment)).isFalse();
+        listener.onPostUpdate(event);
+
+        verifyNoInteractions(pricingEngine, referenceDataCache);
+    }
+
+    @Test
+    @DisplayName("فشل أحد الإبطالات - لا يُرمى للمعاملة المثبَتة")
+    void failingCallbackIsContained() {
+        doThrow(new IllegalStateException("boom")).when(pricingEngine).invalidate();
+        EntityPersister zone = persister(Zone.class);
+        PostUpdateEvent event = mock(PostUpdateEvent.class);
+        when(event.getPersister()).thenReturn(zone);
+
+        assertThatCode(() -> listener.onPostUpdate(event)).doesNotThrowAnyException();
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────
+
+    private static EntityPersister persister(Class<?> entity) {
+        EntityPersister persister = mock(EntityPersister.class);
+        doReturn(entity).when(persister).getMappedClass();
+        return persister;
+    }
+}
@@ -0,0 +1,124 @@
+package com.twsela.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class RedisBrokerBridgeTest {
+
+    private static final String CHANNEL = "twsela:websocket:broadcast";
+
+    @Mock private StringRedisTemplate redisTemplate;
+    @Mock private MessageChannel brokerChannel;
+    @Mock private ExecutorService publisher;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private RedisBrokerBridge bridge;
+
+    @BeforeEach
+    void setUp() {
+        lenient().doAnswer(inv -> {
+            inv.<Runnable>getArgument(0).run();
+            return null;
+        }).when(publisher).execute(any(Runnable.class));
+        bridge = new RedisBrokerBridge(redisTemplate, () -> brokerChannel, objectMapper, new SimpleMeterRegistry(),
+                publisher, CHANNEL, "node-a");
+    }
+
+    private static Message<byte[]> brokerMessage(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage("{\"x\":1}".getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+    }
+
+    @Test
+    @DisplayName("publishes topic and user broadcasts to Redis and lets them through locally")
+    void preSend_publishesBroadcasts() throws Exception {
+        Message<byte[]> message = brokerMessage("/topic/chat/50");
+
+        assertThat(bridge.preSend(message, brokerChannel)).isSameAs(message);
+        bridge.preSend(brokerMessage("/user/bob/queue/notifications"), brokerChannel);
+
+        ArgumentCaptor<String> json = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate, times(2)).convertAndSend(eq(CHANNEL), json.capture());
+        RedisBrokerBridge.Envelope envelope = objectMapper.readValue(json.getAllValues().get(0),
+                RedisBrokerBridge.Envelope.class);
+        assertThat(envelope.origin()).isEqualTo("node-a");
+        assertThat(envelope.destination()).isEqualTo("/topic/chat/50");
+        assertThat(envelope.contentType()).isEqualTo("application/json");
+        assertThat(new String(envelope.payload(), StandardCharsets.UTF_8)).isEqualTo("{\"x\":1}");
+    }
+
+    @Test
+    @DisplayName("does not relay resolved session queues or messages that came from Redis")
+    void preSend_skipsLocalOnlyMessages() {
+        bridge.preSend(brokerMessage("/queue/notifications-user1a2b"), brokerChannel);
+
+        SimpMessageHeaderAccessor relayed = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        relayed.setDestination("/topic/chat/50");
+        relayed.setHeader(RedisBrokerBridge.RELAYED_HEADER, "node-b");
+        bridge.preSend(MessageBuilder.createMessage(new byte[0], relayed.getMessageHeaders()), brokerChannel);
+
+        verifyNoInteractions(redisTemplate);
+    }
+
+    @Test
+    @DisplayName("re-injects messages from other nodes into the local broker")
+    @SuppressWarnings("unchecked")
+    void onMessage_injectsRemoteMessages() throws Exception {
+        String json = objectMapper.writeValueAsString(new RedisBrokerBridge.Envelope("node-b", "/topic/chat/50",
+                "application/json", "{\"x\":1}".getBytes(StandardCharsets.UTF_8)));
+
+        bridge.onMessage(json.getBytes(StandardCharsets.UTF_8));
+
+        ArgumentCaptor<Message<?>> injected = ArgumentCaptor.forClass(Message.class);
+        verify(brokerChannel).send(injected.capture());
+        Message<?> message = injected.getValue();
+        assertThat(SimpMessageHeaderAccessor.getDestination(message.getHeaders())).isEqualTo("/topic/chat/50");
+        assertThat(message.getHeaders().get(RedisBrokerBridge.RELAYED_HEADER)).isEqualTo("node-b");
+        assertThat(bridge.shouldRelay(message)).isFalse();
+    }
+
+    @Test
+    @DisplayName("ignores its own messages echoed back by Redis")
+    void onMessage_ignoresOwnMessages() throws Exception {
+        String json = objectMapper.writeValueAsString(new RedisBrokerBridge.Envelope("node-a", "/topic/chat/50",
+                null, new byte[0]));
+
+        bridge.onMessage(json.getBytes(StandardCharsets.UTF_8));
+        bridge.onMessage("not json".getBytes(StandardCharsets.UTF_8));
+
+        verifyNoInteractions(brokerChannel);
+    }
+
+    @Test
+    @DisplayName("a Redis failure drops the cross-node copy without failing the sender")
+    void preSend_redisFailureIsContained() {
+        doThrow(new RuntimeException("connection refused")).when(redisTemplate).convertAndSend(anyString(), anyString());
+        Message<byte[]> message = brokerMessage("/topic/presence");
+
+        assertThat(bridge.preSend(message, brokerChannel)).isSameAs(message);
+    }
+}
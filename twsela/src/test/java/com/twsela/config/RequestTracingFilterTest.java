@@ -1,16 +1,25 @@
 package com.twsela.config;
 
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.slf4j.MDC;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 
 class RequestTracingFilterTest {
 
-    private final RequestTracingFilter filter = new RequestTracingFilter();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RequestTracingFilter filter =
+            new RequestTracingFilter(new DbUsageMonitor(meterRegistry, 50, 500, 50, 100), 1000, 1.0);
 
     @Test
     @DisplayName("Generates X-Request-Id when not provided")
@@ -61,4 +70,69 @@ class RequestTracingFilterTest {
 
         assertNotNull(response.getHeader("X-Request-Id"));
     }
+
+    @Test
+    @DisplayName("Rejects unsafe incoming X-Request-Id")
+    void rejectsUnsafeRequestId() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/test");
+        request.addHeader("X-Request-Id", "abc\nFAKE LOG LINE");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, (req, res) -> {});
+
+        assertEquals(8, response.getHeader("X-Request-Id").length());
+    }
+
+    @Test
+    @DisplayName("Counts DB statements per route template, not raw URI")
+    void recordsDbStatsByRouteTemplate() throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement("SELECT 1")).thenReturn(statement);
+        Connection tracked = QueryTrackingDataSource.track(connection);
+
+        for (long id : new long[]{41, 42}) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/shipments/" + id);
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(request, response, (req, res) -> {
+                req.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/shipments/{id}");
+                try (PreparedStatement ps = tracked.prepareStatement("SELECT 1")) {
+                    ps.executeQuery();
+                    ps.executeQuery();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        Timer dbTime = meterRegistry.get("twsela.http.db.time").tag("route", "/api/shipments/{id}").timer();
+        assertEquals(2, dbTime.count());
+        assertEquals(4.0, meterRegistry.get("twsela.http.db.queries").tag("method", "GET").summary().totalAmount());
+        verify(statement, times(4)).executeQuery();
+    }
+
+    @Test
+    @DisplayName("Statements outside a request are not counted")
+    void statementsOutsideRequestNotCounted() throws Exception {
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(connection.prepareStatement("SELECT 1")).thenReturn(statement);
+
+        QueryTrackingDataSource.track(connection).prepareStatement("SELECT 1").executeQuery();
+
+        assertNull(RequestDbStats.current());
+        verify(statement).executeQuery();
+    }
+
+    @Test
+    @DisplayName("Works without a DbUsageMonitor, as in web slice tests")
+    void worksWithoutMonitor() throws Exception {
+        RequestTracingFilter sliceFilter = new RequestTracingFilter(null, 1000, 1.0);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        sliceFilter.doFilter(new MockHttpServletRequest("GET", "/api/test"), response, (req, res) -> {});
+
+        assertNotNull(response.getHeader("X-Request-Id"));
+        assertNull(RequestDbStats.current());
+    }
 }
@@ -0,0 +1,42 @@
+package com.twsela.config;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class StreamingJdbcTest {
+
+    @Test
+    @DisplayName("withCursorFetch - إضافة المعامل لعنوان MySQL")
+    void addsCursorFetchToUrl() {
+        assertThat(StreamingJdbc.withCursorFetch("jdbc:mysql://db:3306/twsela?useSSL=true"))
+                .isEqualTo("jdbc:mysql://db:3306/twsela?useSSL=true&useCursorFetch=true");
+        assertThat(StreamingJdbc.withCursorFetch("jdbc:mysql://db:3306/twsela"))
+                .isEqualTo("jdbc:mysql://db:3306/twsela?useCursorFetch=true");
+    }
+
+    @Test
+    @DisplayName("withCursorFetch - لا تكرار إذا كان المعامل موجودًا")
+    void keepsExplicitSetting() {
+        String url = "jdbc:mysql://db:3306/twsela?useCursorFetch=false";
+        assertThat(StreamingJdbc.withCursorFetch(url)).isEqualTo(url);
+    }
+
+    @Test
+    @DisplayName("قاعدة غير MySQL - استخدام المصدر الرئيسي دون مجمع إضافي")
+    void otherDatabasesReuseMainPool() {
+        DataSource main = mock(DataSource.class);
+        DataSourceProperties properties = new DataSourceProperties();
+        properties.setUrl("jdbc:h2:mem:streaming");
+
+        StreamingJdbc streamingJdbc = new StreamingJdbc(main, properties, 4);
+
+        assertThat(streamingJdbc.getJdbcTemplate().getDataSource()).isSameAs(main);
+        streamingJdbc.close();
+    }
+}
@@ -3,12 +3,16 @@ package com.twsela.config;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Answers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.StompWebSocketEndpointRegistration;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -18,15 +22,22 @@ import static org.mockito.Mockito.*;
 class WebSocketConfigTest {
 
     @Mock private WebSocketAuthInterceptor authInterceptor;
+    @Mock private WebSocketSlowConsumerMonitor slowConsumerMonitor;
+    @Mock private ObjectProvider<RedisBrokerBridge> redisBrokerBridge;
+    @Mock private RedisBrokerBridge bridge;
     @Mock private MessageBrokerRegistry brokerRegistry;
     @Mock private StompEndpointRegistry endpointRegistry;
     @Mock private StompWebSocketEndpointRegistration endpointRegistration;
-    @Mock private ChannelRegistration channelRegistration;
+    @Mock(answer = Answers.RETURNS_DEEP_STUBS) private ChannelRegistration channelRegistration;
+
+    private WebSocketConfig config(String mode) {
+        return new WebSocketConfig(authInterceptor, slowConsumerMonitor, redisBrokerBridge, mode);
+    }
 
     @Test
     @DisplayName("configureMessageBroker enables /topic and /queue prefixes")
     void configureMessageBroker_setsCorrectPrefixes() {
-        WebSocketConfig config = new WebSocketConfig(authInterceptor);
+        WebSocketConfig config = config("simple");
         when(brokerRegistry.enableSimpleBroker("/topic", "/queue")).thenReturn(null);
 
         config.configureMessageBroker(brokerRegistry);
@@ -34,12 +45,48 @@ class WebSocketConfigTest {
         verify(brokerRegistry).enableSimpleBroker("/topic", "/queue");
         verify(brokerRegistry).setApplicationDestinationPrefixes("/app");
         verify(brokerRegistry).setUserDestinationPrefix("/user");
+        verify(brokerRegistry, never()).enableStompBrokerRelay(any(String[].class));
+    }
+
+    @Test
+    @DisplayName("relay mode relays to an external broker and shares user destinations")
+    void configureMessageBroker_relayMode() {
+        WebSocketConfig config = config("relay");
+        StompBrokerRelayRegistration relay = mock(StompBrokerRelayRegistration.class, RETURNS_SELF);
+        when(brokerRegistry.enableStompBrokerRelay("/topic", "/queue")).thenReturn(relay);
+
+        config.configureMessageBroker(brokerRegistry);
+
+        verify(relay).setUserDestinationBroadcast("/topic/unresolved-user-destination");
+        verify(relay).setUserRegistryBroadcast("/topic/simp-user-registry");
+        verify(brokerRegistry, never()).enableSimpleBroker(any(String[].class));
+        verify(brokerRegistry).setUserDestinationPrefix("/user");
+    }
+
+    @Test
+    @DisplayName("redis mode adds the Redis bridge to the broker channel")
+    void configureMessageBroker_redisMode() {
+        WebSocketConfig config = config("REDIS");
+        ChannelRegistration brokerChannel = mock(ChannelRegistration.class);
+        when(brokerRegistry.configureBrokerChannel()).thenReturn(brokerChannel);
+        when(redisBrokerBridge.getObject()).thenReturn(bridge);
+
+        config.configureMessageBroker(brokerRegistry);
+
+        verify(brokerRegistry).enableSimpleBroker("/topic", "/queue");
+        verify(brokerChannel).interceptors(bridge);
+    }
+
+    @Test
+    @DisplayName("unknown broker mode fails at startup")
+    void unknownMode_rejected() {
+        assertThrows(IllegalArgumentException.class, () -> config("kafka"));
     }
 
     @Test
     @DisplayName("registerStompEndpoints registers /ws with SockJS")
     void registerStompEndpoints_registersWsEndpoint() {
-        WebSocketConfig config = new WebSocketConfig(authInterceptor);
+        WebSocketConfig config = config("simple");
         when(endpointRegistry.addEndpoint("/ws")).thenReturn(endpointRegistration);
         when(endpointRegistration.setAllowedOriginPatterns("*")).thenReturn(endpointRegistration);
 
@@ -51,12 +98,24 @@ class WebSocketConfigTest {
     }
 
     @Test
-    @DisplayName("configureClientInboundChannel wires auth interceptor")
+    @DisplayName("configureClientInboundChannel wires auth interceptor and a bounded pool")
     void configureClientInboundChannel_wiresInterceptor() {
-        WebSocketConfig config = new WebSocketConfig(authInterceptor);
+        WebSocketConfig config = config("simple");
 
         config.configureClientInboundChannel(channelRegistration);
 
         verify(channelRegistration).interceptors(authInterceptor);
+        verify(channelRegistration, atLeastOnce()).taskExecutor();
+    }
+
+    @Test
+    @DisplayName("configureWebSocketTransport installs the slow-consumer monitor")
+    void configureWebSocketTransport_addsMonitor() {
+        WebSocketConfig config = config("simple");
+        WebSocketTransportRegistration transport = mock(WebSocketTransportRegistration.class, RETURNS_SELF);
+
+        config.configureWebSocketTransport(transport);
+
+        verify(transport).addDecoratorFactory(slowConsumerMonitor);
     }
 }
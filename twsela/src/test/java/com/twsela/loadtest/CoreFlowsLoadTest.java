@@ -0,0 +1,311 @@
+package com.twsela.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.repository.RecipientDetailsRepository;
+import com.twsela.repository.RoleRepository;
+import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.ShipmentStatusRepository;
+import com.twsela.repository.UserRepository;
+import com.twsela.repository.UserStatusRepository;
+import com.twsela.repository.ZoneRepository;
+import com.twsela.security.JwtService;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+
+/**
+ * Peak-day load on the core API flows, in-JVM: H2, an in-memory Redis stand-in, seeded
+ * merchants, couriers, zones and shipments, and concurrent virtual users driving the real
+ * filter chain through MockMvc with JWTs. Prints throughput, p50/p99 latency and database
+ * statements per flow and writes them to {@code target/load-report.json}.
+ * <p>
+ * Excluded from the regular build; run with {@code mvn -Pload-test test} and size it with
+ * {@code -Dload.users}, {@code -Dload.duration-seconds}, {@code -Dload.shipments} and friends.
+ * Set {@code -Dload.max-error-rate=0} to fail the run on any failed operation.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:loadtest;DB_CLOSE_DELAY=-1;DB_CLOSE_ON_EXIT=FALSE;MODE=MySQL;LOCK_TIMEOUT=30000",
+        "spring.datasource.hikari.maximum-pool-size=${load.users:32}",
+        "springdoc.api-docs.enabled=false",
+        "springdoc.swagger-ui.enabled=false",
+        "logging.level.com.twsela=WARN",
+        "logging.level.com.twsela.loadtest=INFO"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Tag("load")
+class CoreFlowsLoadTest {
+
+    private static final Logger log = LoggerFactory.getLogger(CoreFlowsLoadTest.class);
+
+    private static final int USERS = Integer.getInteger("load.users", 32);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup-seconds", 10);
+    private static final int DURATION_SECONDS = Integer.getInteger("load.duration-seconds", 30);
+    private static final LoadFixtures.Volumes VOLUMES = new LoadFixtures.Volumes(
+            Integer.getInteger("load.zones", 25),
+            Integer.getInteger("load.merchants", 200),
+            Integer.getInteger("load.couriers", 300),
+            Integer.getInteger("load.shipments", 15_000));
+    private static final String REPORT = System.getProperty("load.report", "target/load-report.json");
+    private static final String MAX_ERROR_RATE = System.getProperty("load.max-error-rate");
+
+    private static final int WAREHOUSE_BATCH = 10;
+    private static final int BULK_ROWS = 50;
+    private static final MediaType XLSX =
+            MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+    @TestConfiguration
+    static class LocalRedisConfig {
+        @Bean
+        StringRedisTemplate stringRedisTemplate() {
+            return new InMemoryRedisTemplate();
+        }
+    }
+
+    @Autowired private MockMvc mockMvc;
+    @Autowired private ObjectMapper objectMapper;
+    @Autowired private TransactionTemplate transactionTemplate;
+    @Autowired private RoleRepository roleRepository;
+    @Autowired private UserStatusRepository userStatusRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private ZoneRepository zoneRepository;
+    @Autowired private ShipmentStatusRepository shipmentStatusRepository;
+    @Autowired private RecipientDetailsRepository recipientDetailsRepository;
+    @Autowired private ShipmentRepository shipmentRepository;
+    @Autowired private JwtService jwtService;
+
+    private LoadFixtures.Data data;
+    private List<LoadFixtures.SeededShipment> trackable;
+    private final AtomicInteger pickupCursor = new AtomicInteger();
+    private final Queue<Long> atHub = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> outForDelivery = new ConcurrentLinkedQueue<>();
+    private byte[] bulkWorkbook;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        long started = System.nanoTime();
+        data = new LoadFixtures(transactionTemplate, roleRepository, userStatusRepository, userRepository,
+                zoneRepository, shipmentStatusRepository, recipientDetailsRepository, shipmentRepository, jwtService)
+                .seed(VOLUMES);
+        log.info("Seeded {} in {} s", VOLUMES, (System.nanoTime() - started) / 1_000_000_000);
+
+        trackable = new ArrayList<>(data.awaitingPickup());
+        trackable.addAll(data.atHub());
+        trackable.addAll(data.outForDelivery());
+        data.atHub().forEach(shipment -> atHub.add(shipment.id()));
+        data.outForDelivery().forEach(shipment -> outForDelivery.add(shipment.id()));
+        bulkWorkbook = bulkWorkbook();
+    }
+
+    @Test
+    @DisplayName("تدفقات API الأساسية تحت حمل متزامن — الإنتاجية وزمن الاستجابة والاستعلامات لكل تدفق")
+    void coreFlowsUnderLoad() throws Exception {
+        LoadReport report = new LoadHarness(USERS, Duration.ofSeconds(WARMUP_SECONDS), Duration.ofSeconds(DURATION_SECONDS))
+                .flow("public-tracking", 30, this::publicTracking)
+                .flow("location-ping", 30, this::locationPing)
+                .flow("create-shipment", 15, this::createShipment)
+                .flow("status-update", 10, this::statusUpdate)
+                .flow("dashboard", 5, this::dashboard)
+                .flow("warehouse-receive", 4, this::warehouseReceive)
+                .flow("warehouse-dispatch", 3, this::warehouseDispatch)
+                .flow("bulk-upload", 1, this::bulkUpload)
+                .run();
+
+        log.info("Load test results\n{}", report.format());
+        report.writeJson(Path.of(REPORT));
+
+        for (LoadReport.FlowResult flow : report.flows()) {
+            assertThat(flow.operations()).as("%s operations", flow.name()).isPositive();
+            if (MAX_ERROR_RATE != null) {
+                assertThat(flow.errorRate()).as("%s error rate (%s)", flow.name(), flow.firstError())
+                        .isLessThanOrEqualTo(Double.parseDouble(MAX_ERROR_RATE));
+            }
+        }
+    }
+
+    // ── Flows ──────────────────────────────────────────────────
+
+    /** Recipients polling the public tracking page, each from their own address. */
+    private void publicTracking() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String address = "10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256);
+        expectOk(get("/api/public/tracking/{trackingNumber}", pick(trackable).trackingNumber())
+                .with(request -> {
+                    request.setRemoteAddr(address);
+                    return request;
+                }));
+    }
+
+    private void locationPing() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        expectOk(post("/api/couriers/location")
+                .header(HttpHeaders.AUTHORIZATION, bearer(pick(data.couriers())))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"latitude\":" + (30.0444 + (random.nextDouble() - 0.5) * 0.4)
+                        + ",\"longitude\":" + (31.2357 + (random.nextDouble() - 0.5) * 0.4) + "}"));
+    }
+
+    private void createShipment() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Object> request = Map.of(
+                "recipientName", "Load Recipient",
+                "recipientPhone", "010" + random.nextInt(10_000_000, 100_000_000),
+                "recipientAddress", random.nextInt(1, 200) + " Load Test Street",
+                "packageDescription", "clothes",
+                "packageWeight", 0.5 + random.nextInt(10) * 0.5,
+                "codAmount", 100 + random.nextInt(900),
+                "zoneId", pick(data.zones()).getId(),
+                "priority", "STANDARD",
+                "shippingFeePaidBy", "MERCHANT");
+        expectOk(post("/api/shipments")
+                .header(HttpHeaders.AUTHORIZATION, bearer(pick(data.merchants())))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)));
+    }
+
+    /** A courier handing over the next out-for-delivery shipment and submitting its proof of delivery. */
+    private void statusUpdate() throws Exception {
+        Long id = outForDelivery.poll();
+        if (id == null) {
+            throw new IllegalStateException("No shipments out for delivery");
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        expectOk(multipart("/api/delivery/{shipmentId}/proof", id)
+                .param("recipientName", "Load Recipient")
+                .param("latitude", String.valueOf(30.0444 + (random.nextDouble() - 0.5) * 0.4))
+                .param("longitude", String.valueOf(31.2357 + (random.nextDouble() - 0.5) * 0.4))
+                .header(HttpHeaders.AUTHORIZATION, bearer(pick(data.couriers()))));
+    }
+
+    private void dashboard() throws Exception {
+        expectOk(get("/api/dashboard/summary").header(HttpHeaders.AUTHORIZATION, bearer(pick(data.merchants()))));
+    }
+
+    /** Scan the next batch of picked-up shipments in; they become available for dispatch. */
+    private void warehouseReceive() throws Exception {
+        List<LoadFixtures.SeededShipment> batch = new ArrayList<>(WAREHOUSE_BATCH);
+        int start = pickupCursor.getAndAdd(WAREHOUSE_BATCH);
+        for (int i = 0; i < WAREHOUSE_BATCH; i++) {
+            batch.add(data.awaitingPickup().get(Math.floorMod(start + i, data.awaitingPickup().size())));
+        }
+        JsonNode body = expectOk(post("/api/shipments/warehouse/receive")
+                .header(HttpHeaders.AUTHORIZATION, bearer(data.warehouseManager()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("trackingNumbers",
+                        batch.stream().map(LoadFixtures.SeededShipment::trackingNumber).toList()))));
+        expectNoErrors(body.path("errors"));
+        batch.forEach(shipment -> atHub.add(shipment.id()));
+    }
+
+    private void warehouseDispatch() throws Exception {
+        List<Long> batch = new ArrayList<>(WAREHOUSE_BATCH);
+        Long id;
+        while (batch.size() < WAREHOUSE_BATCH && (id = atHub.poll()) != null) {
+            batch.add(id);
+        }
+        if (batch.isEmpty()) {
+            throw new IllegalStateException("No shipments at the hub to dispatch");
+        }
+        JsonNode body = expectOk(post("/api/shipments/warehouse/dispatch/{courierId}", pick(data.couriers()).id())
+                .header(HttpHeaders.AUTHORIZATION, bearer(data.warehouseManager()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("shipmentIds", batch))));
+        expectNoErrors(body.path("errors"));
+    }
+
+    private void bulkUpload() throws Exception {
+        JsonNode body = expectOk(multipart("/api/shipments/bulk")
+                .file(new MockMultipartFile("file", "shipments.xlsx", XLSX.toString(), bulkWorkbook))
+                .header(HttpHeaders.AUTHORIZATION, bearer(pick(data.merchants()))));
+        JsonNode result = body.path("data");
+        if (result.path("successCount").asInt() != BULK_ROWS) {
+            throw new AssertionError("Bulk upload created " + result.path("successCount").asInt() + "/" + BULK_ROWS
+                    + " shipments: " + result.path("errors").path(0).asText());
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────
+
+    private JsonNode expectOk(RequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        String body = result.getResponse().getContentAsString();
+        int status = result.getResponse().getStatus();
+        if (status != 200) {
+            throw new AssertionError("HTTP " + status + ": " + body.substring(0, Math.min(body.length(), 200)));
+        }
+        return body.isEmpty() ? objectMapper.missingNode() : objectMapper.readTree(body);
+    }
+
+    private static void expectNoErrors(JsonNode errors) {
+        if (errors.size() > 0) {
+            throw new AssertionError(errors.size() + " shipments rejected: " + errors.get(0).asText());
+        }
+    }
+
+    private static String bearer(LoadFixtures.Account account) {
+        return "Bearer " + account.token();
+    }
+
+    private static <T> T pick(List<T> values) {
+        return values.get(ThreadLocalRandom.current().nextInt(values.size()));
+    }
+
+    private byte[] bulkWorkbook() throws IOException {
+        try (XSSFWorkbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            Sheet sheet = workbook.createSheet("Shipments");
+            String[] headers = {"Recipient Name", "Phone", "Address", "Zone Name", "COD Amount", "Package Size", "Notes"};
+            Row header = sheet.createRow(0);
+            for (int i = 0; i < headers.length; i++) {
+                header.createCell(i).setCellValue(headers[i]);
+            }
+            for (int i = 1; i <= BULK_ROWS; i++) {
+                Row row = sheet.createRow(i);
+                row.createCell(0).setCellValue("Bulk Recipient " + i);
+                row.createCell(1).setCellValue(String.format("0111%07d", i));
+                row.createCell(2).setCellValue(i + " Bulk Street");
+                row.createCell(3).setCellValue(data.zones().get(i % data.zones().size()).getName());
+                row.createCell(4).setCellValue("250.00");
+                row.createCell(5).setCellValue("1.5");
+                row.createCell(6).setCellValue("load test");
+            }
+            workbook.write(out);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.twsela.loadtest;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for Redis during load tests: the string commands the token blacklist and
+ * OTP store use, kept in a map with expiry. Anything else throws, which those callers
+ * already treat as Redis being unavailable.
+ */
+class InMemoryRedisTemplate extends StringRedisTemplate {
+
+    private record Entry(String value, long expiresAtMillis) {
+        boolean expired(long now) {
+            return expiresAtMillis > 0 && now >= expiresAtMillis;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ValueOperations<String, String> valueOps = valueOperations();
+
+    @Override
+    public void afterPropertiesSet() {
+        // No connection factory to check
+    }
+
+    @Override
+    public ValueOperations<String, String> opsForValue() {
+        return valueOps;
+    }
+
+    @Override
+    public Boolean hasKey(String key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public Boolean delete(String key) {
+        return entries.remove(key) != null;
+    }
+
+    @Override
+    public Long delete(Collection<String> keys) {
+        return keys.stream().filter(this::delete).count();
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    private String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expired(System.currentTimeMillis())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    private void set(String key, String value, long ttlMillis) {
+        entries.put(key, new Entry(value, ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : 0));
+    }
+
+    private long increment(String key, long delta) {
+        long now = System.currentTimeMillis();
+        Entry updated = entries.compute(key, (k, entry) -> {
+            if (entry == null || entry.expired(now)) {
+                return new Entry(Long.toString(delta), 0);
+            }
+            return new Entry(Long.toString(Long.parseLong(entry.value()) + delta), entry.expiresAtMillis());
+        });
+        return Long.parseLong(updated.value());
+    }
+
+    @SuppressWarnings("unchecked")
+    private ValueOperations<String, String> valueOperations() {
+        return (ValueOperations<String, String>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ValueOperations.class}, (proxy, method, args) -> {
+                    int arity = args == null ? 0 : args.length;
+                    switch (method.getName() + "/" + arity) {
+                        case "get/1":
+                            return get((String) args[0]);
+                        case "set/2":
+                            set((String) args[0], (String) args[1], 0);
+                            return null;
+                        case "set/3":
+                            if (!(args[2] instanceof Duration ttl)) {
+                                throw new UnsupportedOperationException("ValueOperations.set(offset)");
+                            }
+                            set((String) args[0], (String) args[1], ttl.toMillis());
+                            return null;
+                        case "set/4":
+                            set((String) args[0], (String) args[1], ((TimeUnit) args[3]).toMillis((Long) args[2]));
+                            return null;
+                        case "increment/1":
+                            return increment((String) args[0], 1);
+                        case "increment/2":
+                            return increment((String) args[0], ((Number) args[1]).longValue());
+                        default:
+                            throw new UnsupportedOperationException("ValueOperations." + method.getName());
+                    }
+                });
+    }
+}
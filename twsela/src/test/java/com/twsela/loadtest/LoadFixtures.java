@@ -0,0 +1,166 @@
+package com.twsela.loadtest;
+
+import com.twsela.domain.RecipientDetails;
+import com.twsela.domain.Role;
+import com.twsela.domain.Shipment;
+import com.twsela.domain.ShipmentStatus;
+import com.twsela.domain.ShipmentStatusConstants;
+import com.twsela.domain.User;
+import com.twsela.domain.UserStatus;
+import com.twsela.domain.Zone;
+import com.twsela.repository.RecipientDetailsRepository;
+import com.twsela.repository.RoleRepository;
+import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.ShipmentStatusRepository;
+import com.twsela.repository.UserRepository;
+import com.twsela.repository.UserStatusRepository;
+import com.twsela.repository.ZoneRepository;
+import com.twsela.security.JwtService;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Seeds a peak-day data set for {@link CoreFlowsLoadTest}: zones around Greater Cairo,
+ * merchants, couriers, a warehouse manager, and shipments spread over the pipeline —
+ * waiting for pickup, sitting at the hub, and out with couriers. Rows are written in
+ * chunks through the repositories, one transaction per chunk.
+ */
+final class LoadFixtures {
+
+    private static final int CHUNK = 500;
+    private static final double CAIRO_LAT = 30.0444;
+    private static final double CAIRO_LNG = 31.2357;
+
+    record Account(Long id, String phone, String token) {}
+
+    record SeededShipment(Long id, String trackingNumber) {}
+
+    record Volumes(int zones, int merchants, int couriers, int shipments) {}
+
+    /** What the flows draw from; the shipment lists are partitioned by status. */
+    record Data(List<Zone> zones, List<Account> merchants, List<Account> couriers, Account warehouseManager,
+                List<SeededShipment> awaitingPickup, List<SeededShipment> atHub, List<SeededShipment> outForDelivery) {}
+
+    private final TransactionTemplate transactionTemplate;
+    private final RoleRepository roleRepository;
+    private final UserStatusRepository userStatusRepository;
+    private final UserRepository userRepository;
+    private final ZoneRepository zoneRepository;
+    private final ShipmentStatusRepository shipmentStatusRepository;
+    private final RecipientDetailsRepository recipientDetailsRepository;
+    private final ShipmentRepository shipmentRepository;
+    private final JwtService jwtService;
+    private final Random random = new Random(42);
+
+    LoadFixtures(TransactionTemplate transactionTemplate, RoleRepository roleRepository,
+                 UserStatusRepository userStatusRepository, UserRepository userRepository,
+                 ZoneRepository zoneRepository, ShipmentStatusRepository shipmentStatusRepository,
+                 RecipientDetailsRepository recipientDetailsRepository, ShipmentRepository shipmentRepository,
+                 JwtService jwtService) {
+        this.transactionTemplate = transactionTemplate;
+        this.roleRepository = roleRepository;
+        this.userStatusRepository = userStatusRepository;
+        this.userRepository = userRepository;
+        this.zoneRepository = zoneRepository;
+        this.shipmentStatusRepository = shipmentStatusRepository;
+        this.recipientDetailsRepository = recipientDetailsRepository;
+        this.shipmentRepository = shipmentRepository;
+        this.jwtService = jwtService;
+    }
+
+    Data seed(Volumes volumes) {
+        List<Zone> zones = zoneRepository.saveAll(zones(volumes.zones()));
+        List<Account> merchants = accounts("MERCHANT", "0150", volumes.merchants());
+        List<Account> couriers = accounts("COURIER", "0151", volumes.couriers());
+        Account warehouseManager = accounts("WAREHOUSE_MANAGER", "0152", 1).get(0);
+
+        int third = volumes.shipments() / 3;
+        List<SeededShipment> awaitingPickup = shipments(ShipmentStatusConstants.PENDING, third, zones, merchants);
+        List<SeededShipment> atHub = shipments(ShipmentStatusConstants.RECEIVED_AT_HUB, third, zones, merchants);
+        List<SeededShipment> outForDelivery = shipments(ShipmentStatusConstants.OUT_FOR_DELIVERY,
+                volumes.shipments() - 2 * third, zones, merchants);
+        return new Data(zones, merchants, couriers, warehouseManager, awaitingPickup, atHub, outForDelivery);
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    private List<Zone> zones(int count) {
+        List<Zone> zones = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Zone zone = new Zone(String.format("LOAD-ZONE-%02d", i + 1), "load test zone",
+                    BigDecimal.valueOf(CAIRO_LAT + (random.nextDouble() - 0.5) * 0.4),
+                    BigDecimal.valueOf(CAIRO_LNG + (random.nextDouble() - 0.5) * 0.4));
+            zone.setDefaultFee(new BigDecimal(35 + random.nextInt(6) * 5));
+            zones.add(zone);
+        }
+        return zones;
+    }
+
+    private List<Account> accounts(String roleName, String phonePrefix, int count) {
+        Role role = roleRepository.findByName(roleName).orElseThrow();
+        UserStatus active = userStatusRepository.findByName("ACTIVE").orElseThrow();
+        List<Account> accounts = new ArrayList<>(count);
+        for (int from = 0; from < count; from += CHUNK) {
+            int to = Math.min(count, from + CHUNK);
+            List<User> users = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                User user = new User();
+                user.setName("Load " + roleName.replace('_', ' ').toLowerCase());
+                user.setPhone(phonePrefix + String.format("%07d", i + 1));
+                user.setPassword("load-test");
+                user.setRole(role);
+                user.setStatus(active);
+                users.add(user);
+            }
+            for (User user : transactionTemplate.execute(tx -> userRepository.saveAll(users))) {
+                String token = jwtService.generateToken(user.getPhone(), Map.of("role", "ROLE_" + roleName));
+                accounts.add(new Account(user.getId(), user.getPhone(), token));
+            }
+        }
+        return accounts;
+    }
+
+    private List<SeededShipment> shipments(String statusName, int count, List<Zone> zones, List<Account> merchants) {
+        ShipmentStatus status = shipmentStatusRepository.findByName(statusName).orElseThrow();
+        List<SeededShipment> seeded = new ArrayList<>(count);
+        for (int chunkStart = 0; chunkStart < count; chunkStart += CHUNK) {
+            int from = chunkStart;
+            int to = Math.min(count, from + CHUNK);
+            List<Shipment> chunk = transactionTemplate.execute(tx -> {
+                List<Shipment> shipments = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    Zone zone = zones.get(random.nextInt(zones.size()));
+                    RecipientDetails recipient = recipientDetailsRepository.save(new RecipientDetails(
+                            "010" + String.format("%08d", random.nextInt(100_000_000)), "Recipient " + i,
+                            (i % 200 + 1) + " Load Test Street, " + zone.getName()));
+
+                    Shipment shipment = new Shipment();
+                    shipment.setTrackingNumber(String.format("LT-%s-%07d", statusName.substring(0, 3), i + 1));
+                    shipment.setMerchant(userRepository.getReferenceById(
+                            merchants.get(random.nextInt(merchants.size())).id()));
+                    shipment.setZone(zone);
+                    shipment.setStatus(status);
+                    shipment.setRecipientDetails(recipient);
+                    shipment.setItemValue(new BigDecimal(100 + random.nextInt(900)));
+                    shipment.setCodAmount(shipment.getItemValue());
+                    shipment.setDeliveryFee(zone.getDefaultFee());
+                    shipment.setDeliveryLatitude(zone.getCenterLatitude()
+                            .add(BigDecimal.valueOf((random.nextDouble() - 0.5) * 0.05)));
+                    shipment.setDeliveryLongitude(zone.getCenterLongitude()
+                            .add(BigDecimal.valueOf((random.nextDouble() - 0.5) * 0.05)));
+                    shipments.add(shipment);
+                }
+                return shipmentRepository.saveAll(shipments);
+            });
+            for (Shipment shipment : chunk) {
+                seeded.add(new SeededShipment(shipment.getId(), shipment.getTrackingNumber()));
+            }
+        }
+        return seeded;
+    }
+}
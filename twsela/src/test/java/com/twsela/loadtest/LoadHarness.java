@@ -0,0 +1,176 @@
+package com.twsela.loadtest;
+
+import com.twsela.config.DbUsageCapture;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load generator: each virtual user picks a flow by weight, runs it, and goes
+ * again until the run ends. Operations that finish during the warm-up are discarded; the
+ * rest are timed and their database statements counted with {@link DbUsageCapture}, which
+ * works because MockMvc requests and direct service calls run on the user's own thread.
+ * <p>
+ * Every user is a platform thread (the build targets Java 17), so keep the user count in
+ * the tens to hundreds, where the connection pool rather than the thread count is the limit.
+ */
+final class LoadHarness {
+
+    /** One scripted operation; throwing marks it failed. */
+    @FunctionalInterface
+    interface Flow {
+        void run() throws Exception;
+    }
+
+    private record WeightedFlow(String name, int weight, Flow flow) {}
+
+    private final int users;
+    private final Duration warmup;
+    private final Duration measurement;
+    private final List<WeightedFlow> flows = new ArrayList<>();
+    private int totalWeight;
+
+    LoadHarness(int users, Duration warmup, Duration measurement) {
+        this.users = users;
+        this.warmup = warmup;
+        this.measurement = measurement;
+    }
+
+    LoadHarness flow(String name, int weight, Flow flow) {
+        flows.add(new WeightedFlow(name, weight, flow));
+        totalWeight += weight;
+        return this;
+    }
+
+    LoadReport run() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(users);
+        try {
+            long start = System.nanoTime();
+            long measureFrom = start + warmup.toNanos();
+            long end = measureFrom + measurement.toNanos();
+
+            List<Callable<Map<String, Recorder>>> virtualUsers = new ArrayList<>();
+            for (int i = 0; i < users; i++) {
+                virtualUsers.add(() -> drive(measureFrom, end));
+            }
+
+            Map<String, Recorder> merged = new LinkedHashMap<>();
+            for (WeightedFlow flow : flows) {
+                merged.put(flow.name(), new Recorder());
+            }
+            for (Future<Map<String, Recorder>> user : pool.invokeAll(virtualUsers)) {
+                user.get().forEach((name, recorder) -> merged.get(name).merge(recorder));
+            }
+
+            double seconds = measurement.toNanos() / 1e9;
+            List<LoadReport.FlowResult> results = new ArrayList<>();
+            merged.forEach((name, recorder) -> results.add(recorder.result(name, seconds)));
+            return new LoadReport(users, measurement.toSeconds(), results);
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    // ── Internals ──────────────────────────────────────────────
+
+    private Map<String, Recorder> drive(long measureFrom, long end) {
+        Map<String, Recorder> recorders = new LinkedHashMap<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end && !Thread.currentThread().isInterrupted()) {
+            WeightedFlow flow = pick(random.nextInt(totalWeight));
+            Throwable failure = null;
+            int queries;
+            long started = System.nanoTime();
+            try (DbUsageCapture db = DbUsageCapture.start()) {
+                try {
+                    flow.flow().run();
+                } catch (Exception | AssertionError e) {
+                    failure = e;
+                }
+                queries = db.queries();
+            }
+            long finished = System.nanoTime();
+            if (started >= measureFrom && finished <= end) {
+                recorders.computeIfAbsent(flow.name(), name -> new Recorder())
+                        .record(finished - started, queries, failure);
+            }
+        }
+        return recorders;
+    }
+
+    private WeightedFlow pick(int ticket) {
+        for (WeightedFlow flow : flows) {
+            ticket -= flow.weight();
+            if (ticket < 0) {
+                return flow;
+            }
+        }
+        return flows.get(flows.size() - 1);
+    }
+
+    /** One user's (and after merging, everyone's) timings for one flow. */
+    private static final class Recorder {
+        private long[] latencies = new long[1024];
+        private int operations;
+        private int errors;
+        private long queries;
+        private int maxQueries;
+        private String firstError;
+
+        void record(long nanos, int statementCount, Throwable failure) {
+            if (operations == latencies.length) {
+                latencies = Arrays.copyOf(latencies, operations * 2);
+            }
+            latencies[operations++] = nanos;
+            queries += statementCount;
+            maxQueries = Math.max(maxQueries, statementCount);
+            if (failure != null) {
+                errors++;
+                if (firstError == null) {
+                    firstError = failure.getClass().getSimpleName() + ": " + failure.getMessage();
+                }
+            }
+        }
+
+        void merge(Recorder other) {
+            if (operations + other.operations > latencies.length) {
+                latencies = Arrays.copyOf(latencies, operations + other.operations);
+            }
+            System.arraycopy(other.latencies, 0, latencies, operations, other.operations);
+            operations += other.operations;
+            errors += other.errors;
+            queries += other.queries;
+            maxQueries = Math.max(maxQueries, other.maxQueries);
+            if (firstError == null) {
+                firstError = other.firstError;
+            }
+        }
+
+        LoadReport.FlowResult result(String name, double seconds) {
+            long[] sorted = Arrays.copyOf(latencies, operations);
+            Arrays.sort(sorted);
+            return new LoadReport.FlowResult(name, operations, errors, operations / seconds,
+                    percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.99),
+                    operations == 0 ? 0 : (double) queries / operations, maxQueries, firstError);
+        }
+
+        private static double percentileMillis(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(index, 0)] / 1e6;
+        }
+    }
+}
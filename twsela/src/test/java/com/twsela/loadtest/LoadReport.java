@@ -0,0 +1,53 @@
+package com.twsela.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Result of a {@link LoadHarness} run: per flow throughput, latency percentiles and
+ * database statements per operation, as a console table and as JSON for comparing runs.
+ */
+record LoadReport(int users, long measuredSeconds, List<FlowResult> flows) {
+
+    record FlowResult(String name, int operations, int errors, double throughputPerSecond,
+                      double p50Millis, double p99Millis, double queriesPerOperation, int maxQueries,
+                      String firstError) {
+
+        double errorRate() {
+            return operations == 0 ? 0 : (double) errors / operations;
+        }
+    }
+
+    FlowResult flow(String name) {
+        return flows.stream().filter(flow -> flow.name().equals(name)).findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No flow " + name));
+    }
+
+    String format() {
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT,
+                "%d users, %ds measured%n%-20s %8s %7s %9s %9s %9s %9s %7s%n", users, measuredSeconds,
+                "flow", "ops", "errors", "ops/s", "p50 ms", "p99 ms", "stmt/op", "max"));
+        for (FlowResult flow : flows) {
+            table.append(String.format(Locale.ROOT, "%-20s %8d %7d %9.1f %9.2f %9.2f %9.1f %7d%n",
+                    flow.name(), flow.operations(), flow.errors(), flow.throughputPerSecond(),
+                    flow.p50Millis(), flow.p99Millis(), flow.queriesPerOperation(), flow.maxQueries()));
+        }
+        for (FlowResult flow : flows) {
+            if (flow.firstError() != null) {
+                table.append(String.format("%s first error: %s%n", flow.name(), flow.firstError()));
+            }
+        }
+        return table.toString();
+    }
+
+    void writeJson(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), this);
+    }
+}
@@ -0,0 +1,37 @@
+package com.twsela.security;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("RateLimitFilter — per-client limits on sensitive endpoints")
+class RateLimitFilterTest {
+
+    private final RateLimitFilter filter = new RateLimitFilter();
+
+    private int login(String remoteAddr, String forwardedFor) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/login");
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getStatus();
+    }
+
+    @Test
+    @DisplayName("a forged X-Forwarded-For does not give the client a fresh bucket")
+    void forgedForwardedForIgnored() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, login("203.0.113.7", "10.0.0." + i));
+        }
+
+        assertEquals(429, login("203.0.113.7", "10.0.0.99"));
+        assertEquals(200, login("203.0.113.8", null), "another peer has its own bucket");
+    }
+}
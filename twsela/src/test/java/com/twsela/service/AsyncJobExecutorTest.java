@@ -0,0 +1,218 @@
+package com.twsela.service;
+
+import com.twsela.domain.AsyncJob;
+import com.twsela.repository.AsyncJobRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class AsyncJobExecutorTest {
+
+    private static final Duration LEASE = Duration.ofSeconds(60);
+
+    @Mock private AsyncJobService asyncJobService;
+    @Mock private AsyncJobRepository asyncJobRepository;
+    @Mock private ExecutorService cpuPool;
+    @Mock private ExecutorService ioPool;
+    @Mock private ScheduledExecutorService leaseScheduler;
+
+    private SimpleMeterRegistry meterRegistry;
+    private final List<Runnable> queuedTasks = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        doAnswer(inv -> queuedTasks.add(inv.getArgument(0))).when(cpuPool).execute(any());
+        doAnswer(inv -> queuedTasks.add(inv.getArgument(0))).when(ioPool).execute(any());
+    }
+
+    private AsyncJobExecutor executor(AsyncJobHandler... handlers) {
+        return new AsyncJobExecutor(asyncJobService, asyncJobRepository, List.of(handlers), meterRegistry,
+                4, 8, cpuPool, ioPool, leaseScheduler, LEASE, 15_000, 30_000, 2);
+    }
+
+    private static AsyncJob job(long id, String type) {
+        AsyncJob job = new AsyncJob();
+        job.setId(id);
+        job.setJobId("job-" + id);
+        job.setJobType(type);
+        job.setStatus(AsyncJob.JobStatus.RUNNING);
+        return job;
+    }
+
+    private static AsyncJobHandler handler(String type, boolean ioBound, AsyncJobHandler.Context[] seen, Exception failure) {
+        return new AsyncJobHandler() {
+            @Override public String getJobType() { return type; }
+            @Override public boolean isIoBound() { return ioBound; }
+            @Override public String execute(AsyncJob job, Context context) throws Exception {
+                if (seen != null) seen[0] = context;
+                if (failure != null) throw failure;
+                return "{\"ok\":true}";
+            }
+        };
+    }
+
+    private void runQueued() {
+        List<Runnable> tasks = new ArrayList<>(queuedTasks);
+        queuedTasks.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    @Test
+    @DisplayName("pollAndDispatch - حجز وتنفيذ وإتمام المهمة")
+    void poll_claimsExecutesAndCompletes() {
+        AsyncJobExecutor executor = executor(handler("REPORT", false, null, null));
+        when(asyncJobService.claimJobs(eq("REPORT"), anyString(), eq(2), eq(LEASE))).thenReturn(List.of(job(1L, "REPORT")));
+        when(asyncJobService.completeLeasedJob(eq(1L), anyString(), anyString())).thenReturn(true);
+
+        assertThat(executor.pollAndDispatch()).isEqualTo(1);
+        assertThat(executor.getRunningCount()).isEqualTo(1);
+        runQueued();
+
+        verify(asyncJobService).completeLeasedJob(1L, executor.getWorkerId(), "{\"ok\":true}");
+        assertThat(executor.getRunningCount()).isZero();
+        assertThat(meterRegistry.find("twsela.jobs.duration").tag("outcome", "success").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("pollAndDispatch - احترام حد التزامن لكل نوع")
+    void poll_respectsPerTypeLimit() {
+        AsyncJobExecutor executor = executor(handler("REPORT", false, null, null));
+        when(asyncJobService.claimJobs(eq("REPORT"), anyString(), eq(2), eq(LEASE)))
+                .thenReturn(List.of(job(1L, "REPORT"), job(2L, "REPORT")));
+
+        executor.pollAndDispatch();
+        executor.pollAndDispatch();
+
+        verify(asyncJobService, times(1)).claimJobs(anyString(), anyString(), anyInt(), any());
+        assertThat(executor.getRunningCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("pollAndDispatch - مهام الإدخال/الإخراج على مجمع I/O")
+    void poll_ioBoundHandlerUsesIoPool() {
+        AsyncJobExecutor executor = executor(handler("EXPORT", true, null, null));
+        when(asyncJobService.claimJobs(eq("EXPORT"), anyString(), anyInt(), eq(LEASE))).thenReturn(List.of(job(1L, "EXPORT")));
+
+        executor.pollAndDispatch();
+
+        verify(ioPool).execute(any());
+        verify(cpuPool, never()).execute(any());
+    }
+
+    @Test
+    @DisplayName("execute - فشل المعالج يسجل فشل المهمة")
+    void execute_handlerFailure_failsJob() {
+        AsyncJobExecutor executor = executor(handler("REPORT", false, null, new IllegalStateException("boom")));
+        when(asyncJobService.claimJobs(anyString(), anyString(), anyInt(), any())).thenReturn(List.of(job(1L, "REPORT")));
+        when(asyncJobService.failLeasedJob(anyLong(), anyString(), anyString())).thenReturn(true);
+
+        executor.pollAndDispatch();
+        runQueued();
+
+        verify(asyncJobService).failLeasedJob(1L, executor.getWorkerId(), "boom");
+        verify(asyncJobService, never()).completeLeasedJob(anyLong(), anyString(), any());
+    }
+
+    @Test
+    @DisplayName("heartbeat - فقد الحجز يلغي سياق المهمة")
+    void heartbeat_lostLease_cancelsContext() {
+        AsyncJobHandler.Context[] seen = new AsyncJobHandler.Context[1];
+        AsyncJobExecutor executor = executor(handler("REPORT", false, seen, null));
+        when(asyncJobService.claimJobs(anyString(), anyString(), anyInt(), any()))
+                .thenReturn(List.of(job(1L, "REPORT"), job(2L, "REPORT")));
+        when(asyncJobService.renewLeases(anyString(), anyCollection(), eq(LEASE))).thenReturn(List.of(2L));
+
+        executor.pollAndDispatch();
+        executor.heartbeat();
+        queuedTasks.remove(0).run();
+
+        assertThat(seen[0].isCancelled()).isTrue();
+        verify(asyncJobService, never()).completeLeasedJob(anyLong(), anyString(), any());
+        verify(asyncJobService).releaseLeases(executor.getWorkerId(), List.of(1L));
+    }
+
+    @Test
+    @DisplayName("checkpoint - تسجيل التقدم وإلغاء السياق إذا فُقد الحجز")
+    void checkpoint_updatesProgressAndDetectsLoss() {
+        AtomicReference<AsyncJobHandler.Context> context = new AtomicReference<>();
+        AsyncJobHandler handler = new AsyncJobHandler() {
+            @Override public String getJobType() { return "BULK"; }
+            @Override public String execute(AsyncJob job, Context ctx) {
+                context.set(ctx);
+                ctx.checkpoint(50, "25");
+                ctx.reportProgress(150);
+                return "{}";
+            }
+        };
+        AsyncJobExecutor executor = executor(handler);
+        when(asyncJobService.claimJobs(anyString(), anyString(), anyInt(), any())).thenReturn(List.of(job(1L, "BULK")));
+        when(asyncJobRepository.updateProgress(eq(1L), anyString(), eq(AsyncJob.JobStatus.RUNNING), eq(50), eq("25"), any()))
+                .thenReturn(1);
+        when(asyncJobRepository.updateProgress(eq(1L), anyString(), eq(AsyncJob.JobStatus.RUNNING), eq(100), isNull(), any()))
+                .thenReturn(0);
+
+        executor.pollAndDispatch();
+        runQueued();
+
+        assertThat(context.get().isCancelled()).isTrue();
+        verify(asyncJobService, never()).completeLeasedJob(anyLong(), anyString(), any());
+    }
+
+    @Test
+    @DisplayName("reclaimExpiredLeases - تسجيل عدد المهام المسترجعة")
+    void reclaim_recordsMetric() {
+        AsyncJobExecutor executor = executor(handler("REPORT", false, null, null));
+        when(asyncJobService.reclaimExpiredLeases()).thenReturn(3);
+
+        assertThat(executor.reclaimExpiredLeases()).isEqualTo(3);
+        assertThat(meterRegistry.find("twsela.jobs.reclaimed").counter().count()).isEqualTo(3.0);
+    }
+
+    @Test
+    @DisplayName("start - النبض والاسترجاع على مجدول المنفذ الخاص")
+    void start_schedulesLeaseLoopsOnOwnScheduler() {
+        AsyncJobExecutor executor = executor(handler("REPORT", false, null, null));
+
+        executor.start();
+
+        verify(leaseScheduler).scheduleWithFixedDelay(any(), eq(15_000L), eq(15_000L), eq(TimeUnit.MILLISECONDS));
+        verify(leaseScheduler).scheduleWithFixedDelay(any(), eq(30_000L), eq(30_000L), eq(TimeUnit.MILLISECONDS));
+
+        executor.shutdown();
+        verify(leaseScheduler).shutdown();
+    }
+
+    @Test
+    @DisplayName("shutdown - إعادة المهام غير المكتملة للقائمة")
+    void shutdown_releasesUnfinishedJobs() {
+        AsyncJobExecutor executor = executor(handler("REPORT", false, null, null));
+        when(asyncJobService.claimJobs(anyString(), anyString(), anyInt(), any())).thenReturn(List.of(job(1L, "REPORT")));
+
+        executor.pollAndDispatch();
+        executor.shutdown();
+
+        verify(asyncJobService).releaseLeases(eq(executor.getWorkerId()), argThat(ids -> ids.contains(1L)));
+        assertThat(executor.pollAndDispatch()).isZero();
+    }
+}
@@ -6,14 +6,16 @@ import com.twsela.web.exception.BusinessRuleException;
 import com.twsela.web.exception.ResourceNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
 
+import java.time.Duration;
 import java.time.Instant;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -69,7 +71,7 @@ class AsyncJobServiceTest {
     @DisplayName("بدء تنفيذ مهمة")
     void startJob_shouldSetRunning() {
         when(asyncJobRepository.findById(1L)).thenReturn(Optional.of(sampleJob));
-        when(asyncJobRepository.findRunningJobs()).thenReturn(Collections.emptyList());
+        when(asyncJobRepository.countByStatus(AsyncJob.JobStatus.RUNNING)).thenReturn(0L);
         when(asyncJobRepository.save(any(AsyncJob.class))).thenAnswer(inv -> inv.getArgument(0));
 
         AsyncJob result = asyncJobService.startJob(1L);
@@ -91,9 +93,8 @@ class AsyncJobServiceTest {
     @Test
     @DisplayName("بدء مهمة مع تجاوز الحد الأقصى")
     void startJob_maxConcurrent_shouldThrow() {
-        List<AsyncJob> runningJobs = Collections.nCopies(10, new AsyncJob());
         when(asyncJobRepository.findById(1L)).thenReturn(Optional.of(sampleJob));
-        when(asyncJobRepository.findRunningJobs()).thenReturn(runningJobs);
+        when(asyncJobRepository.countByStatus(AsyncJob.JobStatus.RUNNING)).thenReturn(10L);
 
         assertThatThrownBy(() -> asyncJobService.startJob(1L))
                 .isInstanceOf(BusinessRuleException.class);
@@ -125,6 +126,7 @@ class AsyncJobServiceTest {
         assertThat(result.getStatus()).isEqualTo(AsyncJob.JobStatus.QUEUED);
         assertThat(result.getRetryCount()).isEqualTo(1);
         assertThat(result.getErrorMessage()).isEqualTo("Temporary error");
+        assertThat(result.getScheduledAt()).isAfter(Instant.now());
     }
 
     @Test
@@ -180,4 +182,89 @@ class AsyncJobServiceTest {
         assertThat(stats.get("completed")).isEqualTo(10L);
         assertThat(stats.get("total")).isEqualTo(18L);
     }
+
+    @Nested
+    @DisplayName("حجوزات العمّال")
+    class LeaseTests {
+
+        @Test
+        @DisplayName("claimJobs - حجز المهام وتعيين مالك الحجز")
+        void claimJobs_setsLease() {
+            when(asyncJobRepository.lockNextDue(eq("BULK_SHIPMENT_PROCESS"), eq(AsyncJob.JobStatus.QUEUED),
+                    any(Instant.class), any(Pageable.class))).thenReturn(List.of(sampleJob));
+
+            List<AsyncJob> claimed = asyncJobService.claimJobs("BULK_SHIPMENT_PROCESS", "worker-1", 3, Duration.ofSeconds(60));
+
+            assertThat(claimed).containsExactly(sampleJob);
+            assertThat(sampleJob.getStatus()).isEqualTo(AsyncJob.JobStatus.RUNNING);
+            assertThat(sampleJob.getLeaseOwner()).isEqualTo("worker-1");
+            assertThat(sampleJob.getLeaseExpiresAt()).isAfter(Instant.now().plusSeconds(50));
+            verify(asyncJobRepository).saveAll(List.of(sampleJob));
+        }
+
+        @Test
+        @DisplayName("claimJobs - بدون سعة لا يستعلم")
+        void claimJobs_zeroLimit_noQuery() {
+            assertThat(asyncJobService.claimJobs("BULK_SHIPMENT_PROCESS", "worker-1", 0, Duration.ofSeconds(60))).isEmpty();
+            verifyNoInteractions(asyncJobRepository);
+        }
+
+        @Test
+        @DisplayName("completeLeasedJob - إتمام مع مسح الحجز")
+        void completeLeasedJob_ownLease() {
+            sampleJob.setStatus(AsyncJob.JobStatus.RUNNING);
+            sampleJob.setLeaseOwner("worker-1");
+            when(asyncJobRepository.findById(1L)).thenReturn(Optional.of(sampleJob));
+            when(asyncJobRepository.save(any(AsyncJob.class))).thenAnswer(inv -> inv.getArgument(0));
+
+            assertThat(asyncJobService.completeLeasedJob(1L, "worker-1", "{}")).isTrue();
+
+            assertThat(sampleJob.getStatus()).isEqualTo(AsyncJob.JobStatus.COMPLETED);
+            assertThat(sampleJob.getProgress()).isEqualTo(100);
+            assertThat(sampleJob.getLeaseOwner()).isNull();
+        }
+
+        @Test
+        @DisplayName("completeLeasedJob - تجاهل النتيجة بعد فقد الحجز")
+        void completeLeasedJob_lostLease_ignored() {
+            sampleJob.setStatus(AsyncJob.JobStatus.RUNNING);
+            sampleJob.setLeaseOwner("worker-2");
+            when(asyncJobRepository.findById(1L)).thenReturn(Optional.of(sampleJob));
+
+            assertThat(asyncJobService.completeLeasedJob(1L, "worker-1", "{}")).isFalse();
+
+            assertThat(sampleJob.getStatus()).isEqualTo(AsyncJob.JobStatus.RUNNING);
+            verify(asyncJobRepository, never()).save(any());
+        }
+
+        @Test
+        @DisplayName("renewLeases - إرجاع المهام التي ما زالت محجوزة فقط")
+        void renewLeases_partial_returnsStillLeased() {
+            List<Long> ids = List.of(1L, 2L);
+            when(asyncJobRepository.renewLeases(eq("worker-1"), eq(ids), eq(AsyncJob.JobStatus.RUNNING),
+                    any(Instant.class), any(Instant.class))).thenReturn(1);
+            when(asyncJobRepository.findLeasedIds("worker-1", ids, AsyncJob.JobStatus.RUNNING)).thenReturn(List.of(2L));
+
+            assertThat(asyncJobService.renewLeases("worker-1", ids, Duration.ofSeconds(60))).containsExactly(2L);
+        }
+
+        @Test
+        @DisplayName("reclaimExpiredLeases - إعادة أو إفشال المهام المنتهية")
+        void reclaimExpiredLeases_countsBoth() {
+            when(asyncJobRepository.failExpiredLeases(eq(AsyncJob.JobStatus.RUNNING), eq(AsyncJob.JobStatus.FAILED),
+                    anyString(), any(Instant.class))).thenReturn(1);
+            when(asyncJobRepository.requeueExpiredLeases(eq(AsyncJob.JobStatus.RUNNING), eq(AsyncJob.JobStatus.QUEUED),
+                    any(Instant.class))).thenReturn(2);
+
+            assertThat(asyncJobService.reclaimExpiredLeases()).isEqualTo(3);
+        }
+
+        @Test
+        @DisplayName("retryDelay - تأخير أسي مع حد أقصى")
+        void retryDelay_exponentialCapped() {
+            assertThat(AsyncJobService.retryDelay(1)).isEqualTo(Duration.ofSeconds(30));
+            assertThat(AsyncJobService.retryDelay(3)).isEqualTo(Duration.ofSeconds(120));
+            assertThat(AsyncJobService.retryDelay(50)).isEqualTo(Duration.ofMinutes(32));
+        }
+    }
 }
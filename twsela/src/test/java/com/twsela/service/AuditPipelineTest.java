@@ -0,0 +1,223 @@
+package com.twsela.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.domain.SecurityEvent;
+import com.twsela.domain.SystemAuditLog;
+import com.twsela.repository.SecurityEventRepository;
+import com.twsela.repository.SystemAuditLogRepository;
+import com.twsela.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("خط كتابة سجلات التدقيق")
+class AuditPipelineTest {
+
+    private static final Instant AT = Instant.parse("2026-03-01T10:00:00Z");
+
+    @Mock private SystemAuditLogRepository auditLogRepository;
+    @Mock private SecurityEventRepository securityEventRepository;
+    @Mock private UserRepository userRepository;
+    @Mock private PlatformTransactionManager transactionManager;
+    @Mock private ScheduledExecutorService scheduler;
+
+    @TempDir Path spillDir;
+
+    private SimpleMeterRegistry meterRegistry;
+    private AuditPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        pipeline = new AuditPipeline(auditLogRepository, securityEventRepository, userRepository, transactionManager,
+                new ObjectMapper().findAndRegisterModules(), meterRegistry, scheduler, 3, 100, 200, spillDir);
+        pipeline.start();
+    }
+
+    private static AuditPipeline.AuditEntry audit(String phone, String action) {
+        return new AuditPipeline.AuditEntry(null, phone, action, "SHIPMENT", 7L, null, "ok", "10.0.0.1", "ua", AT);
+    }
+
+    private static AuditPipeline.SecurityEntry security(Long userId) {
+        return new AuditPipeline.SecurityEntry(userId, SecurityEvent.EventType.LOGIN_FAILURE, "10.0.0.1", "ua",
+                "bad password", SecurityEvent.Severity.MEDIUM, AT);
+    }
+
+    private double counter(String name, String... tags) {
+        return meterRegistry.get(name).tags(tags).counter().count();
+    }
+
+    @Test
+    @DisplayName("يكتب الدفعة في الجدولين ويحل المستخدمين باستعلام واحد")
+    @SuppressWarnings("unchecked")
+    void flushWritesBatch() {
+        when(userRepository.findIdsByPhoneIn(anyCollection()))
+                .thenReturn(List.<Object[]>of(new Object[]{"0100", 42L}));
+
+        pipeline.append(audit("0100", "CREATE"));
+        pipeline.append(audit("0100", "UPDATE"));
+        pipeline.append(security(5L));
+        assertThat(pipeline.queueDepth()).isEqualTo(3);
+
+        pipeline.flush();
+
+        ArgumentCaptor<List<SystemAuditLog>> logs = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<SecurityEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(auditLogRepository).insertBatch(logs.capture());
+        verify(securityEventRepository).insertBatch(events.capture());
+        verify(userRepository, times(1)).findIdsByPhoneIn(anyCollection());
+        assertThat(logs.getValue()).extracting(SystemAuditLog::getUserId).containsExactly(42L, 42L);
+        assertThat(logs.getValue()).extracting(SystemAuditLog::getActionType).containsExactly("CREATE", "UPDATE");
+        assertThat(events.getValue().get(0).getUser().getId()).isEqualTo(5L);
+        assertThat(events.getValue().get(0).getCreatedAt()).isEqualTo(AT);
+        assertThat(pipeline.queueDepth()).isZero();
+        assertThat(counter("twsela.audit.written", "table", "system_audit_log")).isEqualTo(2);
+        assertThat(meterRegistry.get("twsela.audit.queue.depth").gauge().value()).isZero();
+    }
+
+    @Test
+    @DisplayName("الفائض عن سعة الطابور يُحفظ في الملف ثم يُعاد تشغيله")
+    @SuppressWarnings("unchecked")
+    void overflowSpillsAndReplays() {
+        for (int i = 0; i < 5; i++) {
+            pipeline.append(security((long) i));
+        }
+        assertThat(pipeline.queueDepth()).isEqualTo(3);
+        assertThat(spillDir.resolve(AuditPipeline.SPILL_FILE)).exists();
+        assertThat(counter("twsela.audit.spilled", "reason", "overflow")).isEqualTo(2);
+
+        pipeline.flush();
+
+        ArgumentCaptor<List<SecurityEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(securityEventRepository, times(2)).insertBatch(events.capture());
+        assertThat(events.getAllValues().get(0)).hasSize(3);
+        assertThat(events.getAllValues().get(1)).extracting(e -> e.getUser().getId()).containsExactly(3L, 4L);
+        assertThat(counter("twsela.audit.replayed")).isEqualTo(2);
+        assertThat(spillDir).isEmptyDirectory();
+    }
+
+    @Test
+    @DisplayName("فشل قاعدة البيانات يحفظ الدفعة في الملف دون فقدها")
+    void writeFailureSpills() throws Exception {
+        doThrow(new DataAccessResourceFailureException("db down"))
+                .doReturn(1)
+                .when(securityEventRepository).insertBatch(anyList());
+
+        pipeline.append(security(9L));
+        pipeline.flush();
+
+        assertThat(counter("twsela.audit.spilled", "reason", "write-failed")).isEqualTo(1);
+        assertThat(Files.readString(spillDir.resolve(AuditPipeline.SPILL_FILE))).contains("LOGIN_FAILURE");
+        verify(transactionManager).rollback(any());
+
+        pipeline.flush();
+
+        verify(securityEventRepository, times(2)).insertBatch(anyList());
+        assertThat(counter("twsela.audit.replayed")).isEqualTo(1);
+        assertThat(counter("twsela.audit.dropped")).isZero();
+        assertThat(spillDir).isEmptyDirectory();
+    }
+
+    @Test
+    @DisplayName("ملف إعادة تشغيل يفشل يحتفظ بالأسطر غير المكتوبة")
+    void failedReplayKeepsFile() throws Exception {
+        doThrow(new DataAccessResourceFailureException("db down"))
+                .when(securityEventRepository).insertBatch(anyList());
+        for (int i = 0; i < 4; i++) {
+            pipeline.append(security((long) i));
+        }
+        pipeline.flush();
+
+        pipeline.flush();
+
+        verify(securityEventRepository, times(2)).insertBatch(anyList());
+        assertThat(counter("twsela.audit.replayed")).isZero();
+        try (var files = Files.list(spillDir)) {
+            List<Path> left = files.toList();
+            assertThat(left).singleElement().satisfies(p -> assertThat(p.toString()).endsWith(".replay"));
+            assertThat(Files.readAllLines(left.get(0))).hasSize(4);
+        }
+    }
+
+    @Test
+    @DisplayName("يقص عنوان IP ووكيل المستخدم إلى طول العمود عند الإضافة")
+    @SuppressWarnings("unchecked")
+    void oversizedValuesAreCutOnAppend() {
+        pipeline.append(new AuditPipeline.SecurityEntry(1L, SecurityEvent.EventType.LOGIN_FAILURE,
+                "1".repeat(80), "u".repeat(2000), "bad password", SecurityEvent.Severity.MEDIUM, AT));
+
+        pipeline.flush();
+
+        ArgumentCaptor<List<SecurityEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(securityEventRepository).insertBatch(events.capture());
+        SecurityEvent written = events.getValue().get(0);
+        assertThat(written.getIpAddress()).hasSize(AuditPipeline.IP_ADDRESS_LENGTH);
+        assertThat(written.getUserAgent()).hasSize(AuditPipeline.USER_AGENT_LENGTH);
+    }
+
+    @Test
+    @DisplayName("صف مرفوض يُعزل في ملف الرسائل الميتة وتُكتب بقية الدفعة")
+    @SuppressWarnings("unchecked")
+    void rejectedRowIsDeadLettered() throws Exception {
+        doAnswer(inv -> {
+            List<SecurityEvent> events = inv.getArgument(0);
+            if (events.stream().anyMatch(e -> e.getUser().getId() == 1L)) {
+                throw new DataIntegrityViolationException("check constraint");
+            }
+            return events.size();
+        }).when(securityEventRepository).insertBatch(anyList());
+        for (long i = 0; i < 3; i++) {
+            pipeline.append(security(i));
+        }
+
+        pipeline.flush();
+
+        assertThat(counter("twsela.audit.written", "table", "security_events")).isEqualTo(2);
+        assertThat(counter("twsela.audit.dead-lettered")).isEqualTo(1);
+        assertThat(counter("twsela.audit.spilled", "reason", "write-failed")).isZero();
+        assertThat(Files.readAllLines(spillDir.resolve(AuditPipeline.DEAD_LETTER_FILE)))
+                .singleElement().asString().contains("\"userId\":1");
+        assertThat(spillDir.resolve(AuditPipeline.SPILL_FILE)).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("ملف قديم بقيم طويلة يُعاد تشغيله بعد قصها")
+    @SuppressWarnings("unchecked")
+    void replayCutsOversizedSpilledValues() throws Exception {
+        AuditPipeline.SpillLine line = new AuditPipeline.SpillLine(null, new AuditPipeline.SecurityEntry(7L,
+                SecurityEvent.EventType.LOGIN_FAILURE, "10.0.0.1", "u".repeat(900), "old", SecurityEvent.Severity.LOW, AT));
+        Files.writeString(spillDir.resolve(AuditPipeline.SPILL_FILE),
+                new ObjectMapper().findAndRegisterModules().writeValueAsString(line) + "\n");
+        AuditPipeline restarted = new AuditPipeline(auditLogRepository, securityEventRepository, userRepository,
+                transactionManager, new ObjectMapper().findAndRegisterModules(), new SimpleMeterRegistry(), scheduler,
+                3, 100, 200, spillDir);
+        restarted.start();
+
+        restarted.flush();
+
+        ArgumentCaptor<List<SecurityEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(securityEventRepository).insertBatch(events.capture());
+        assertThat(events.getValue().get(0).getUserAgent()).hasSize(AuditPipeline.USER_AGENT_LENGTH);
+        assertThat(spillDir).isEmptyDirectory();
+    }
+}
@@ -0,0 +1,96 @@
+package com.twsela.service;
+
+import com.twsela.domain.Role;
+import com.twsela.domain.Shipment;
+import com.twsela.domain.User;
+import com.twsela.repository.DeliveryProofRepository;
+import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuthorizationServiceTest {
+
+    private static final String POD = "/uploads/pod/9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08.jpg";
+
+    @Mock private UserRepository userRepository;
+    @Mock private ShipmentRepository shipmentRepository;
+    @Mock private DeliveryProofRepository deliveryProofRepository;
+
+    @InjectMocks private AuthorizationService authorizationService;
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    @DisplayName("canAccessFile - التاجر يقرأ صورة إثبات شحنته")
+    void merchantReadsOwnShipmentFile() {
+        User merchant = signIn(10L, "MERCHANT");
+        when(shipmentRepository.findIdsByPodData(POD)).thenReturn(List.of(5L));
+        when(deliveryProofRepository.findShipmentIdsByImageUrl(POD)).thenReturn(List.of());
+        when(shipmentRepository.findById(5L)).thenReturn(Optional.of(shipmentOf(merchant)));
+
+        assertThat(authorizationService.canAccessFile(POD)).isTrue();
+    }
+
+    @Test
+    @DisplayName("canAccessFile - التاجر لا يقرأ ملف شحنة تاجر آخر")
+    void merchantCannotReadOtherMerchantsFile() {
+        signIn(10L, "MERCHANT");
+        User other = new User();
+        other.setId(11L);
+        when(shipmentRepository.findIdsByPodData(POD)).thenReturn(List.of());
+        when(deliveryProofRepository.findShipmentIdsByImageUrl(POD)).thenReturn(List.of(6L));
+        when(shipmentRepository.findById(6L)).thenReturn(Optional.of(shipmentOf(other)));
+
+        assertThat(authorizationService.canAccessFile(POD)).isFalse();
+    }
+
+    @Test
+    @DisplayName("canAccessFile - ملف غير مرتبط بشحنة متاح للمدير فقط")
+    void unlinkedFileOnlyForAdmins() {
+        signIn(10L, "COURIER");
+        when(shipmentRepository.findIdsByPodData("/uploads/reports/job-1.csv")).thenReturn(List.of());
+        when(deliveryProofRepository.findShipmentIdsByImageUrl("/uploads/reports/job-1.csv")).thenReturn(List.of());
+        assertThat(authorizationService.canAccessFile("/uploads/reports/job-1.csv")).isFalse();
+
+        signIn(1L, "ADMIN");
+        assertThat(authorizationService.canAccessFile("/uploads/reports/job-1.csv")).isTrue();
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────
+
+    private User signIn(Long id, String role) {
+        User user = new User();
+        user.setId(id);
+        user.setPhone("0100000" + id);
+        user.setRole(new Role(role));
+        when(userRepository.findByPhone(user.getPhone())).thenReturn(Optional.of(user));
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                user.getPhone(), null, AuthorityUtils.createAuthorityList("ROLE_" + role)));
+        return user;
+    }
+
+    private static Shipment shipmentOf(User merchant) {
+        Shipment shipment = new Shipment();
+        shipment.setMerchant(merchant);
+        return shipment;
+    }
+}
@@ -0,0 +1,226 @@
+package com.twsela.service;
+
+import com.twsela.domain.SecurityEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("كاشف brute force في الذاكرة")
+class BruteForceDetectorTest {
+
+    private static final long T0 = 1_767_000_000_000L;
+    private static final long MINUTE = 60_000L;
+
+    @Mock private AuditPipeline auditPipeline;
+
+    private SimpleMeterRegistry meterRegistry;
+    private BruteForceDetector detector;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        detector = detector(100_000);
+    }
+
+    private BruteForceDetector detector(int maxKeys) {
+        // 5 failures per IP / account within 15 one-minute buckets, 60-minute blocks doubling up to 240
+        return new BruteForceDetector(auditPipeline, meterRegistry, 5, 5, 15, 60, 60, 240, maxKeys);
+    }
+
+    @Test
+    @DisplayName("الحد يُتجاوز مرة واحدة فقط خلال مدة الحظر")
+    void tripsOnceWhileBlocked() {
+        for (int i = 1; i <= 4; i++) {
+            assertThat(detector.recordFailure("10.0.0.1", null, T0 + i).ipTripped()).isFalse();
+        }
+        BruteForceDetector.Verdict fifth = detector.recordFailure("10.0.0.1", null, T0 + 5);
+        BruteForceDetector.Verdict sixth = detector.recordFailure("10.0.0.1", null, T0 + 6);
+
+        assertThat(fifth.ipTripped()).isTrue();
+        assertThat(fifth.ipFailures()).isEqualTo(5);
+        assertThat(sixth.ipTripped()).isFalse();
+        assertThat(detector.isBlocked("10.0.0.1", T0 + 59 * MINUTE)).isTrue();
+        assertThat(detector.isBlocked("10.0.0.1", T0 + 61 * MINUTE)).isFalse();
+    }
+
+    @Test
+    @DisplayName("الحظر المتكرر يتضاعف حتى الحد الأقصى ثم يبدأ من جديد بعد الهدوء")
+    void repeatTripsEscalate() {
+        long at = T0;
+        long[] expectedMinutes = {60, 120, 240, 240};
+        for (long minutes : expectedMinutes) {
+            BruteForceDetector.Verdict verdict = null;
+            for (int i = 0; i < 5; i++) {
+                verdict = detector.recordFailure("10.0.0.9", null, at + i);
+            }
+            assertThat(verdict.ipTripped()).isTrue();
+            assertThat(verdict.ipBlockedUntil().toEpochMilli()).isEqualTo(at + 4 + minutes * MINUTE);
+            at = verdict.ipBlockedUntil().toEpochMilli() + MINUTE;
+        }
+
+        // Quiet for the maximum block length after the last block: back to the shortest block
+        at += 240 * MINUTE;
+        detector.report(at);
+        BruteForceDetector.Verdict verdict = null;
+        for (int i = 0; i < 5; i++) {
+            verdict = detector.recordFailure("10.0.0.9", null, at + i);
+        }
+        assertThat(verdict.ipBlockedUntil().toEpochMilli()).isEqualTo(at + 4 + 60 * MINUTE);
+    }
+
+    @Test
+    @DisplayName("المحاولات الأقدم من النافذة تخرج من العدّ")
+    void windowSlides() {
+        detector.recordFailure("10.0.0.2", "0100", T0);
+        detector.recordFailure("10.0.0.2", "0100", T0 + 5 * MINUTE);
+        detector.recordFailure("10.0.0.2", "0100", T0 + 10 * MINUTE);
+
+        BruteForceDetector.Verdict verdict = detector.recordFailure("10.0.0.2", "0100", T0 + 16 * MINUTE);
+
+        assertThat(verdict.ipFailures()).isEqualTo(3);
+        assertThat(verdict.accountFailures()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("الحساب يُحسب مستقلاً عن العنوان ويُصفَّر بعد الدخول الناجح")
+    void accountCountedAcrossIps() {
+        BruteForceDetector.Verdict last = null;
+        for (int i = 0; i < 5; i++) {
+            last = detector.recordFailure("10.1.0." + i, "0100", T0 + i);
+        }
+
+        assertThat(last.accountTripped()).isTrue();
+        assertThat(last.ipTripped()).isFalse();
+
+        detector.resetAccount("0100");
+        assertThat(detector.recordFailure("10.1.0.9", "0100", T0 + 10).accountFailures()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("التقرير يكتب حدثاً مجمّعاً واحداً لكل عنوان")
+    void reportAggregatesPerIp() {
+        for (int i = 0; i < 7; i++) {
+            detector.recordFailure("10.0.0.3", "0100", T0 + i);
+        }
+        detector.recordFailure("10.0.0.4", "0200", T0 + 10);
+
+        assertThat(detector.report(T0 + MINUTE)).isEqualTo(2);
+
+        ArgumentCaptor<AuditPipeline.SecurityEntry> entries = ArgumentCaptor.forClass(AuditPipeline.SecurityEntry.class);
+        verify(auditPipeline, times(2)).append(entries.capture());
+        AuditPipeline.SecurityEntry hot = entries.getAllValues().stream()
+                .filter(e -> e.ipAddress().equals("10.0.0.3")).findFirst().orElseThrow();
+        assertThat(hot.eventType()).isEqualTo(SecurityEvent.EventType.LOGIN_FAILURE);
+        assertThat(hot.severity()).isEqualTo(SecurityEvent.Severity.HIGH);
+        assertThat(hot.details()).startsWith("7 failed logins");
+
+        assertThat(detector.report(T0 + 2 * MINUTE)).isZero();
+    }
+
+    @Test
+    @DisplayName("الخريطة محدودة وتُخلي المفاتيح عند الامتلاء")
+    void boundedMap() {
+        meterRegistry = new SimpleMeterRegistry();
+        BruteForceDetector small = detector(1_000);
+        for (int i = 0; i < 5_000; i++) {
+            small.recordFailure("172.16." + (i / 256) + "." + (i % 256), null, T0);
+        }
+
+        assertThat(meterRegistry.get("twsela.bruteforce.tracked").tag("scope", "ip").gauge().value())
+                .isLessThanOrEqualTo(1_000);
+        assertThat(meterRegistry.get("twsela.bruteforce.evicted").counter().count()).isPositive();
+    }
+
+    @Test
+    @DisplayName("اندفاع 10 آلاف محاولة فاشلة متزامنة — عدّ دقيق دون قاعدة بيانات")
+    void burstOfTenThousandConcurrentFailures() throws Exception {
+        int threads = 16;
+        int perThread = 10_000 / threads;
+        AtomicInteger tripped = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        // 1,000 attacking IPs spraying 2,000 accounts, all within the same second
+                        int n = thread * perThread + i;
+                        BruteForceDetector.Verdict verdict = detector.recordFailure(
+                                "203.0." + (n % 1000 / 256) + "." + (n % 1000 % 256), "01" + (n % 2000), T0 + i % 1000);
+                        if (verdict.ipTripped()) {
+                            tripped.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(tripped.get()).as("every attacking IP trips exactly once").isEqualTo(1_000);
+        assertThat(meterRegistry.get("twsela.bruteforce.failures").counter().count()).isEqualTo(10_000);
+        assertThat(detector.report(T0 + 1_000)).isEqualTo(1_000);
+        verify(auditPipeline, times(1_000)).append(any(AuditPipeline.SecurityEntry.class));
+    }
+
+    @Test
+    @Tag("load")
+    @DisplayName("10 آلاف محاولة فاشلة في الثانية على الأقل")
+    void tenThousandFailuresPerSecond() throws Exception {
+        int threads = 16;
+        int perThread = 100_000 / threads;
+        // Warm up so the measured run is not dominated by class loading and JIT
+        burst(detector(100_000), threads, perThread);
+
+        long started = System.nanoTime();
+        burst(detector(100_000), threads, perThread);
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        assertThat(threads * perThread / seconds).as("failed logins recorded per second").isGreaterThan(10_000);
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────
+
+    private static void burst(BruteForceDetector target, int threads, int perThread) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        int n = thread * perThread + i;
+                        target.recordFailure("198.51." + (n % 1000 / 256) + "." + (n % 1000 % 256),
+                                "01" + (n % 2000), T0 + i % 1000);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
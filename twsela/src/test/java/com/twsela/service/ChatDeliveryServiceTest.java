@@ -0,0 +1,120 @@
+package com.twsela.service;
+
+import com.twsela.repository.ChatRoomMemberRepository;
+import com.twsela.web.dto.ChatDTO.MessageView;
+import com.twsela.web.dto.ChatDTO.ReadReceipt;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("اختبارات توزيع رسائل المحادثة")
+class ChatDeliveryServiceTest {
+
+    @Mock private SimpMessagingTemplate messagingTemplate;
+    @Mock private ChatRoomMemberRepository memberRepository;
+    @Mock private ScheduledExecutorService scheduler;
+
+    private ChatRecentMessageCache cache;
+    private ChatDeliveryService delivery;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ChatRecentMessageCache(10, 10);
+        delivery = new ChatDeliveryService(messagingTemplate, cache, memberRepository, new SimpleMeterRegistry(),
+                scheduler, 50, 1000, 2);
+    }
+
+    private static MessageView message(long id, long roomId) {
+        return new MessageView(id, roomId, 10L, "مرسل", "m" + id, "TEXT", Instant.now());
+    }
+
+    @Test
+    @DisplayName("يجمع رسائل كل غرفة في إطار واحد ويقسّم الإطارات الكبيرة")
+    @SuppressWarnings("unchecked")
+    void flushMessages_onFramePerRoom() {
+        delivery.publish(message(1, 50));
+        delivery.publish(message(2, 60));
+        delivery.publish(message(3, 50));
+        delivery.publish(message(4, 50));
+
+        assertThat(delivery.flushMessages()).isEqualTo(3);
+
+        ArgumentCaptor<Map<String, Object>> frames = ArgumentCaptor.forClass(Map.class);
+        verify(messagingTemplate, times(2)).convertAndSend(eq("/topic/chat/50"), frames.capture());
+        verify(messagingTemplate).convertAndSend(eq("/topic/chat/60"), any(Map.class));
+        List<MessageView> firstFrame = (List<MessageView>) frames.getAllValues().get(0).get("messages");
+        assertThat(firstFrame).extracting(MessageView::messageId).containsExactly(1L, 3L);
+        assertThat(delivery.flushMessages()).isZero();
+    }
+
+    @Test
+    @DisplayName("فشل البث لغرفة لا يوقف بقية الغرف")
+    void flushMessages_continuesAfterFailure() {
+        doThrow(new RuntimeException("broker down")).when(messagingTemplate)
+                .convertAndSend(eq("/topic/chat/50"), any(Map.class));
+        delivery.publish(message(1, 50));
+        delivery.publish(message(2, 60));
+
+        assertThat(delivery.flushMessages()).isEqualTo(1);
+        verify(messagingTemplate).convertAndSend(eq("/topic/chat/60"), any(Map.class));
+    }
+
+    @Test
+    @DisplayName("النشر يحدّث الذاكرة المؤقتة للغرف المحمّلة")
+    void publish_appendsToCachedRoom() {
+        cache.prime(50L, List.of(message(1, 50)), cache.stamp(50L));
+
+        delivery.publish(message(2, 50));
+
+        assertThat(cache.latest(50L, 5).orElseThrow()).extracting(MessageView::messageId).containsExactly(2L, 1L);
+    }
+
+    @Test
+    @DisplayName("إيصالات القراءة تُدمج إلى أعلى رسالة لكل عضو")
+    @SuppressWarnings("unchecked")
+    void flushReadReceipts_coalescesPerMember() {
+        when(memberRepository.advanceLastRead(50L, 10L, 9L)).thenReturn(1);
+        when(memberRepository.advanceLastRead(50L, 20L, 4L)).thenReturn(0);
+
+        delivery.markRead(50L, 10L, 5L);
+        delivery.markRead(50L, 10L, 9L);
+        delivery.markRead(50L, 10L, 7L);
+        delivery.markRead(50L, 20L, 4L);
+
+        assertThat(delivery.flushReadReceipts()).isEqualTo(1);
+
+        ArgumentCaptor<Map<String, Object>> frame = ArgumentCaptor.forClass(Map.class);
+        verify(messagingTemplate).convertAndSend(eq("/topic/chat/50/read"), frame.capture());
+        assertThat((List<ReadReceipt>) frame.getValue().get("receipts")).containsExactly(new ReadReceipt(10L, 9L));
+        verify(memberRepository, times(2)).advanceLastRead(anyLong(), anyLong(), anyLong());
+    }
+
+    @Test
+    @DisplayName("فشل حفظ مؤشر القراءة يعيده للدورة التالية")
+    void flushReadReceipts_retriesFailedWrites() {
+        when(memberRepository.advanceLastRead(50L, 10L, 9L))
+                .thenThrow(new RuntimeException("lock timeout"))
+                .thenReturn(1);
+        delivery.markRead(50L, 10L, 9L);
+
+        assertThat(delivery.flushReadReceipts()).isZero();
+        assertThat(delivery.flushReadReceipts()).isEqualTo(1);
+        verify(messagingTemplate).convertAndSend(eq("/topic/chat/50/read"), any(Map.class));
+    }
+}
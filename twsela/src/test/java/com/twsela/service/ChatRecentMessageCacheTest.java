@@ -0,0 +1,108 @@
+package com.twsela.service;
+
+import com.twsela.web.dto.ChatDTO.MessageView;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.*;
+
+@DisplayName("اختبارات ذاكرة أحدث رسائل المحادثة")
+class ChatRecentMessageCacheTest {
+
+    private final ChatRecentMessageCache cache = new ChatRecentMessageCache(3, 2);
+
+    private static MessageView message(long id, long roomId) {
+        return new MessageView(id, roomId, 10L, "مرسل", "m" + id, "TEXT", Instant.now());
+    }
+
+    private static List<Long> ids(Optional<List<MessageView>> page) {
+        return page.orElseThrow().stream().map(MessageView::messageId).toList();
+    }
+
+    @Test
+    @DisplayName("الحلقة تحتفظ بأحدث الرسائل فقط")
+    void ringKeepsNewest() {
+        cache.prime(50L, List.of(), cache.stamp(50L));
+        for (long id = 1; id <= 5; id++) {
+            cache.append(message(id, 50));
+        }
+
+        assertThat(ids(cache.latest(50L, 3))).containsExactly(5L, 4L, 3L);
+        assertThat(cache.latest(50L, 4)).as("older history was dropped").isEmpty();
+    }
+
+    @Test
+    @DisplayName("الغرفة القصيرة تجيب أي حجم صفحة")
+    void completeRoomAnswersLargerPages() {
+        cache.prime(50L, List.of(message(2, 50), message(1, 50)), cache.stamp(50L));
+
+        assertThat(ids(cache.latest(50L, 30))).containsExactly(2L, 1L);
+    }
+
+    @Test
+    @DisplayName("لا يُحمَّل لقطة قديمة إذا وصلت رسالة أثناء القراءة")
+    void stalePrimeIsDropped() {
+        long stamp = cache.stamp(50L);
+        cache.append(message(7, 50));
+
+        cache.prime(50L, List.of(message(6, 50)), stamp);
+
+        assertThat(cache.latest(50L, 1)).isEmpty();
+        assertThat(cache.cachedRooms()).isZero();
+    }
+
+    @Test
+    @DisplayName("الرسائل المتأخرة تُرتَّب والمكررة تُتجاهل")
+    void outOfOrderAndDuplicateAppends() {
+        cache.prime(50L, List.of(message(3, 50), message(1, 50)), cache.stamp(50L));
+
+        cache.append(message(2, 50));
+        cache.append(message(3, 50));
+
+        assertThat(ids(cache.latest(50L, 3))).containsExactly(3L, 2L, 1L);
+    }
+
+    @Test
+    @DisplayName("تُطرد الغرف الأقل استخداماً عند تجاوز الحد")
+    void leastRecentlyUsedRoomIsEvicted() {
+        cache.prime(1L, List.of(), cache.stamp(1L));
+        cache.prime(2L, List.of(), cache.stamp(2L));
+        cache.latest(1L, 1);
+        cache.prime(3L, List.of(), cache.stamp(3L));
+
+        assertThat(cache.latest(1L, 1)).isPresent();
+        assertThat(cache.latest(2L, 1)).isEmpty();
+        assertThat(cache.latest(3L, 1)).isPresent();
+    }
+
+    @Test
+    @DisplayName("مع عدة عقد تنتهي صلاحية الغرفة ويُعاد تحميلها من قاعدة البيانات")
+    void multiNodeRoomExpires() {
+        AtomicLong now = new AtomicLong();
+        ChatRecentMessageCache multiNode = new ChatRecentMessageCache(3, 2, 5000, now::get);
+        multiNode.prime(50L, List.of(message(1, 50)), multiNode.stamp(50L));
+        multiNode.append(message(2, 50));
+
+        now.set(TimeUnit.MILLISECONDS.toNanos(5000));
+        assertThat(ids(multiNode.latest(50L, 3))).containsExactly(2L, 1L);
+
+        now.set(TimeUnit.MILLISECONDS.toNanos(5001));
+        assertThat(multiNode.latest(50L, 3)).isEmpty();
+        assertThat(multiNode.cachedRooms()).isZero();
+    }
+
+    @Test
+    @DisplayName("وضع الوسيط البسيط لا يضع مهلة للغرف")
+    void simpleBrokerHasNoTtl() {
+        ChatRecentMessageCache simple = new ChatRecentMessageCache(3, 2, "simple", 1);
+        simple.prime(50L, List.of(message(1, 50)), simple.stamp(50L));
+
+        assertThat(ids(simple.latest(50L, 3))).containsExactly(1L);
+    }
+}
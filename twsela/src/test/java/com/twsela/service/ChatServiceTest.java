@@ -2,26 +2,32 @@ package com.twsela.service;
 
 import com.twsela.domain.ChatMessage;
 import com.twsela.domain.ChatRoom;
+import com.twsela.domain.ChatRoomMember;
 import com.twsela.domain.Shipment;
 import com.twsela.domain.User;
 import com.twsela.repository.ChatMessageRepository;
+import com.twsela.repository.ChatRoomMemberRepository;
 import com.twsela.repository.ChatRoomRepository;
 import com.twsela.repository.ShipmentRepository;
 import com.twsela.repository.UserRepository;
+import com.twsela.web.dto.ChatDTO.MessagePage;
+import com.twsela.web.dto.ChatDTO.MessageView;
+import com.twsela.web.exception.BusinessRuleException;
 import com.twsela.web.exception.ResourceNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.data.domain.Pageable;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -32,11 +38,12 @@ class ChatServiceTest {
 
     @Mock private ChatRoomRepository chatRoomRepository;
     @Mock private ChatMessageRepository chatMessageRepository;
+    @Mock private ChatRoomMemberRepository memberRepository;
     @Mock private ShipmentRepository shipmentRepository;
     @Mock private UserRepository userRepository;
-    @Mock private SimpMessagingTemplate messagingTemplate;
+    @Mock private ChatDeliveryService deliveryService;
 
-    @InjectMocks private ChatService chatService;
+    private ChatService chatService;
 
     private Shipment shipment;
     private User sender;
@@ -44,6 +51,9 @@ class ChatServiceTest {
 
     @BeforeEach
     void setUp() {
+        chatService = new ChatService(chatRoomRepository, chatMessageRepository, memberRepository,
+                shipmentRepository, userRepository, new ChatRecentMessageCache(5, 10), deliveryService);
+
         shipment = new Shipment();
         shipment.setId(1L);
 
@@ -64,19 +74,41 @@ class ChatServiceTest {
     @Test
     @DisplayName("createRoom() creates a new chat room")
     void createRoom_success() {
+        User other = new User();
+        other.setId(20L);
         when(shipmentRepository.findById(1L)).thenReturn(Optional.of(shipment));
+        when(userRepository.findAllById(Set.of(10L, 20L))).thenReturn(List.of(sender, other));
         when(chatRoomRepository.save(any(ChatRoom.class))).thenAnswer(inv -> {
             ChatRoom r = inv.getArgument(0);
             r.setId(50L);
             return r;
         });
 
-        ChatRoom result = chatService.createRoom(1L, ChatRoom.RoomType.MERCHANT_COURIER, "10,20");
+        ChatRoom result = chatService.createRoom(1L, ChatRoom.RoomType.MERCHANT_COURIER, " 10, 20,10");
 
         assertNotNull(result);
         assertEquals(50L, result.getId());
         assertEquals(ChatRoom.RoomType.MERCHANT_COURIER, result.getRoomType());
+        assertEquals("10,20", result.getParticipants());
         verify(chatRoomRepository).save(any(ChatRoom.class));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<ChatRoomMember>> members = ArgumentCaptor.forClass(List.class);
+        verify(memberRepository).saveAll(members.capture());
+        assertEquals(List.of(10L, 20L), members.getValue().stream().map(m -> m.getUser().getId()).toList());
+    }
+
+    @Test
+    @DisplayName("createRoom() rejects unknown or malformed participants")
+    void createRoom_invalidParticipants() {
+        when(shipmentRepository.findById(1L)).thenReturn(Optional.of(shipment));
+        when(userRepository.findAllById(Set.of(10L, 99L))).thenReturn(List.of(sender));
+
+        assertThrows(BusinessRuleException.class,
+                () -> chatService.createRoom(1L, ChatRoom.RoomType.SUPPORT, "10,99"));
+        assertThrows(BusinessRuleException.class,
+                () -> chatService.createRoom(1L, ChatRoom.RoomType.SUPPORT, "10,abc"));
+        verify(chatRoomRepository, never()).save(any());
     }
 
     @Test
@@ -88,7 +120,7 @@ class ChatServiceTest {
     }
 
     @Test
-    @DisplayName("sendMessage() sends a message and broadcasts via WebSocket")
+    @DisplayName("sendMessage() saves the message and hands it to batched delivery")
     void sendMessage_success() {
         when(chatRoomRepository.findById(50L)).thenReturn(Optional.of(activeRoom));
         when(userRepository.findById(10L)).thenReturn(Optional.of(sender));
@@ -103,7 +135,13 @@ class ChatServiceTest {
         assertNotNull(result);
         assertEquals(1L, result.getId());
         assertEquals("مرحبا", result.getContent());
-        verify(messagingTemplate).convertAndSend(eq("/topic/chat/50"), any(Map.class));
+
+        ArgumentCaptor<MessageView> view = ArgumentCaptor.forClass(MessageView.class);
+        verify(deliveryService).publishAfterCommit(view.capture());
+        assertEquals(1L, view.getValue().messageId());
+        assertEquals(50L, view.getValue().roomId());
+        assertEquals("مرسل", view.getValue().senderName());
+        assertEquals("TEXT", view.getValue().messageType());
     }
 
     @Test
@@ -126,39 +164,72 @@ class ChatServiceTest {
     }
 
     @Test
-    @DisplayName("sendMessage() continues if WebSocket broadcast fails")
-    void sendMessage_broadcastFails() {
-        when(chatRoomRepository.findById(50L)).thenReturn(Optional.of(activeRoom));
-        when(userRepository.findById(10L)).thenReturn(Optional.of(sender));
-        when(chatMessageRepository.save(any())).thenAnswer(inv -> {
-            ChatMessage m = inv.getArgument(0);
-            m.setId(2L);
-            return m;
-        });
-        doThrow(new RuntimeException("ws error")).when(messagingTemplate)
-                .convertAndSend(anyString(), any(Map.class));
+    @DisplayName("getMessages() returns the newest page in order and primes the cache")
+    void getMessages_newestPageFromCache() {
+        when(chatMessageRepository.findLatest(eq(50L), any(Pageable.class)))
+                .thenReturn(List.of(message(3L, "ثالثة"), message(2L, "ثانية"), message(1L, "أولى")));
+
+        MessagePage first = chatService.getMessages(50L, null, 2);
+        MessagePage again = chatService.getMessages(50L, null, 4);
+
+        assertEquals(List.of(2L, 3L), first.messages().stream().map(MessageView::messageId).toList());
+        assertEquals(2L, first.nextBeforeId());
+        assertEquals(List.of(1L, 2L, 3L), again.messages().stream().map(MessageView::messageId).toList());
+        assertNull(again.nextBeforeId(), "a short page means there is no older history");
+        verify(chatMessageRepository, times(1)).findLatest(eq(50L), any(Pageable.class));
+    }
 
-        ChatMessage result = chatService.sendMessage(50L, 10L, "رسالة", ChatMessage.MessageType.TEXT);
+    @Test
+    @DisplayName("getMessages() pages older history by message id")
+    void getMessages_keysetPage() {
+        List<ChatMessage> older = new ArrayList<>();
+        for (long id = 40; id > 10; id--) {
+            older.add(message(id, "m" + id));
+        }
+        when(chatMessageRepository.findBefore(eq(50L), eq(41L), argThat(p -> p.getPageSize() == 30)))
+                .thenReturn(older);
+
+        MessagePage page = chatService.getMessages(50L, 41L, null);
+
+        assertEquals(30, page.messages().size());
+        assertEquals(11L, page.messages().get(0).messageId());
+        assertEquals(11L, page.nextBeforeId());
+        verify(chatMessageRepository, never()).findLatest(anyLong(), any());
+    }
 
-        assertNotNull(result);
+    @Test
+    @DisplayName("getMessages() caps the page size")
+    void getMessages_capsLimit() {
+        when(chatMessageRepository.findLatest(eq(50L), argThat(p -> p.getPageSize() == ChatService.MAX_PAGE_SIZE)))
+                .thenReturn(List.of());
+
+        MessagePage page = chatService.getMessages(50L, null, 10_000);
+
+        assertTrue(page.messages().isEmpty());
+        assertNull(page.nextBeforeId());
     }
 
     @Test
-    @DisplayName("getMessages() returns messages in order")
-    void getMessages_returnsOrdered() {
-        ChatMessage m1 = new ChatMessage();
-        m1.setId(1L);
-        m1.setContent("أولى");
-        ChatMessage m2 = new ChatMessage();
-        m2.setId(2L);
-        m2.setContent("ثانية");
+    @DisplayName("getRoomsForUser() resolves rooms through the membership index")
+    void getRoomsForUser_usesMembership() {
+        when(memberRepository.findRoomsByUserId(1L)).thenReturn(List.of(activeRoom));
 
-        when(chatMessageRepository.findByChatRoomIdOrderBySentAtAsc(50L)).thenReturn(List.of(m1, m2));
+        List<ChatRoom> result = chatService.getRoomsForUser(1L);
 
-        List<ChatMessage> result = chatService.getMessages(50L);
+        assertEquals(List.of(activeRoom), result);
+    }
+
+    @Test
+    @DisplayName("markRead() queues the receipt for members only")
+    void markRead_membersOnly() {
+        when(memberRepository.existsByChatRoomIdAndUserId(50L, 10L)).thenReturn(true);
+        when(memberRepository.existsByChatRoomIdAndUserId(50L, 99L)).thenReturn(false);
 
-        assertEquals(2, result.size());
-        assertEquals("أولى", result.get(0).getContent());
+        chatService.markRead(50L, 10L, 7L);
+
+        verify(deliveryService).markRead(50L, 10L, 7L);
+        assertThrows(BusinessRuleException.class, () -> chatService.markRead(50L, 99L, 7L));
+        verify(deliveryService, never()).markRead(50L, 99L, 7L);
     }
 
     @Test
@@ -182,6 +253,17 @@ class ChatServiceTest {
         assertEquals(ChatRoom.RoomStatus.ARCHIVED, result.getStatus());
     }
 
+    private ChatMessage message(Long id, String content) {
+        ChatMessage m = new ChatMessage();
+        m.setId(id);
+        m.setChatRoom(activeRoom);
+        m.setSender(sender);
+        m.setContent(content);
+        m.setMessageType(ChatMessage.MessageType.TEXT);
+        m.setSentAt(Instant.now());
+        return m;
+    }
+
     @Test
     @DisplayName("archiveRoom() throws for unknown room")
     void archiveRoom_notFound() {
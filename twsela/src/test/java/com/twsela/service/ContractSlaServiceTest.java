@@ -3,11 +3,11 @@ package com.twsela.service;
 import com.twsela.domain.Contract;
 import com.twsela.domain.ContractSlaTerms;
 import com.twsela.domain.ContractSlaTerms.SlaReviewPeriod;
-import com.twsela.domain.Shipment;
-import com.twsela.domain.ShipmentStatus;
+import com.twsela.domain.SlaEvaluation;
 import com.twsela.domain.User;
 import com.twsela.repository.ContractSlaTermsRepository;
 import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.SlaEvaluationRepository;
 import com.twsela.web.exception.ResourceNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -21,7 +21,6 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -36,6 +35,7 @@ class ContractSlaServiceTest {
     @Mock private ContractSlaTermsRepository slaRepository;
     @Mock private ShipmentRepository shipmentRepository;
     @Mock private ContractService contractService;
+    @Mock private SlaEvaluationRepository evaluationRepository;
 
     @InjectMocks private ContractSlaService slaService;
 
@@ -101,6 +101,15 @@ class ContractSlaServiceTest {
         }
     }
 
+    private static ShipmentRepository.SlaCounts counts(long total, long delivered, long late, long lost) {
+        return new ShipmentRepository.SlaCounts() {
+            public long getTotal() { return total; }
+            public long getDelivered() { return delivered; }
+            public long getLate() { return late; }
+            public long getLost() { return lost; }
+        };
+    }
+
     @Nested
     @DisplayName("التحقق من الالتزام")
     class Compliance {
@@ -113,15 +122,14 @@ class ContractSlaServiceTest {
 
             when(contractService.findById(1L)).thenReturn(contract);
             when(slaRepository.findByContractId(1L)).thenReturn(Optional.of(slaTerms));
-            when(shipmentRepository.countByMerchantIdAndCreatedAtBetween(1L, from, to)).thenReturn(100L);
-            when(shipmentRepository.countByMerchantIdAndStatusNameAndCreatedAtBetween(1L, "DELIVERED", from, to)).thenReturn(97L);
-            when(shipmentRepository.findByMerchantIdAndCreatedAtBetween(1L, from, to)).thenReturn(List.of());
+            when(shipmentRepository.countSlaOutcomes(1L, from, to, 49 * 3600L)).thenReturn(counts(100, 97, 0, 0));
 
             Map<String, Object> report = slaService.checkSlaCompliance(1L, from, to);
 
             assertThat(report.get("isCompliant")).isEqualTo(true);
             assertThat(report.get("totalShipments")).isEqualTo(100L);
             assertThat(report.get("deliveredShipments")).isEqualTo(97L);
+            verify(shipmentRepository, never()).findByMerchantIdAndCreatedAtBetween(any(), any(), any());
         }
 
         @Test
@@ -132,14 +140,35 @@ class ContractSlaServiceTest {
 
             when(contractService.findById(1L)).thenReturn(contract);
             when(slaRepository.findByContractId(1L)).thenReturn(Optional.of(slaTerms));
-            when(shipmentRepository.countByMerchantIdAndCreatedAtBetween(1L, from, to)).thenReturn(100L);
-            when(shipmentRepository.countByMerchantIdAndStatusNameAndCreatedAtBetween(1L, "DELIVERED", from, to)).thenReturn(85L);
-            when(shipmentRepository.findByMerchantIdAndCreatedAtBetween(1L, from, to)).thenReturn(List.of());
+            when(shipmentRepository.countSlaOutcomes(eq(1L), eq(from), eq(to), anyLong())).thenReturn(counts(100, 85, 0, 0));
 
             Map<String, Object> report = slaService.checkSlaCompliance(1L, from, to);
 
             assertThat(report.get("isCompliant")).isEqualTo(false);
         }
+
+        @Test
+        @DisplayName("فترة مراجعة محسوبة ليلياً — تُقدَّم دون استعلام الشحنات")
+        void checkCompliance_servedFromEvaluation() {
+            ContractSlaService.Period period = ContractSlaService.reviewPeriod(SlaReviewPeriod.MONTHLY, Instant.now());
+            SlaEvaluation evaluation = new SlaEvaluation(1L, period.start(), period.end());
+            evaluation.setTotalShipments(40);
+            evaluation.setDeliveredShipments(39);
+            evaluation.setActualRate(0.975);
+            evaluation.setCompliant(true);
+
+            when(contractService.findById(1L)).thenReturn(contract);
+            when(slaRepository.findByContractId(1L)).thenReturn(Optional.of(slaTerms));
+            when(evaluationRepository.findByContractIdAndPeriodStartAndPeriodEnd(1L, period.start(), period.end()))
+                    .thenReturn(Optional.of(evaluation));
+
+            Map<String, Object> report = slaService.checkCurrentSlaCompliance(1L);
+
+            assertThat(report.get("totalShipments")).isEqualTo(40L);
+            assertThat(report.get("isCompliant")).isEqualTo(true);
+            assertThat(report.get("from")).isEqualTo(period.start());
+            verifyNoInteractions(shipmentRepository);
+        }
     }
 
     @Nested
@@ -152,20 +181,9 @@ class ContractSlaServiceTest {
             Instant from = Instant.now().minus(30, ChronoUnit.DAYS);
             Instant to = Instant.now();
 
-            // Build late shipment (delivered after 72 hours, max is 48)
-            ShipmentStatus deliveredStatus = new ShipmentStatus();
-            deliveredStatus.setName("DELIVERED");
-            Shipment lateShipment = new Shipment();
-            lateShipment.setStatus(deliveredStatus);
-            lateShipment.setCreatedAt(Instant.now().minus(72, ChronoUnit.HOURS));
-            lateShipment.setUpdatedAt(Instant.now());
-
             when(contractService.findById(1L)).thenReturn(contract);
             when(slaRepository.findByContractId(1L)).thenReturn(Optional.of(slaTerms));
-            when(shipmentRepository.countByMerchantIdAndCreatedAtBetween(1L, from, to)).thenReturn(50L);
-            when(shipmentRepository.countByMerchantIdAndStatusNameAndCreatedAtBetween(1L, "DELIVERED", from, to)).thenReturn(45L);
-            when(shipmentRepository.countByMerchantIdAndStatusNameAndCreatedAtBetween(1L, "RETURNED", from, to)).thenReturn(3L);
-            when(shipmentRepository.findByMerchantIdAndCreatedAtBetween(1L, from, to)).thenReturn(List.of(lateShipment));
+            when(shipmentRepository.countSlaOutcomes(1L, from, to, 49 * 3600L)).thenReturn(counts(50, 45, 1, 3));
 
             Map<String, Object> penalties = slaService.calculatePenalties(1L, from, to);
 
@@ -175,6 +193,7 @@ class ContractSlaServiceTest {
             BigDecimal total = (BigDecimal) penalties.get("totalPenalties");
             // 1 late * 5.00 + 3 lost * 50.00 = 155.00
             assertThat(total).isEqualByComparingTo(new BigDecimal("155.00"));
+            verify(shipmentRepository, times(1)).countSlaOutcomes(any(), any(), any(), anyLong());
         }
 
         @Test
@@ -186,4 +205,43 @@ class ContractSlaServiceTest {
                     .isInstanceOf(ResourceNotFoundException.class);
         }
     }
+
+    @Nested
+    @DisplayName("التقييم المحسوب مسبقاً")
+    class Evaluations {
+
+        @Test
+        @DisplayName("الفترة الربعية تبدأ من أول الربع بتوقيت القاهرة")
+        void quarterlyPeriod() {
+            ContractSlaService.Period period = ContractSlaService.reviewPeriod(SlaReviewPeriod.QUARTERLY,
+                    Instant.parse("2026-02-15T10:00:00Z"));
+
+            assertThat(period.start()).isEqualTo(Instant.parse("2025-12-31T22:00:00Z"));
+            assertThat(period.end()).isEqualTo(Instant.parse("2026-03-31T21:59:59.999999Z"));
+        }
+
+        @Test
+        @DisplayName("إعادة التقييم تحدّث الصف الموجود للفترة")
+        void storeEvaluation_updatesExisting() {
+            ContractSlaService.Period period = ContractSlaService.reviewPeriod(SlaReviewPeriod.MONTHLY,
+                    Instant.parse("2026-09-10T10:00:00Z"));
+            SlaEvaluation existing = new SlaEvaluation(1L, period.start(), period.end());
+            existing.setId(7L);
+            Instant now = Instant.parse("2026-09-11T00:30:00Z");
+
+            when(shipmentRepository.countSlaOutcomes(1L, period.start(), period.end(), 49 * 3600L))
+                    .thenReturn(counts(10, 9, 2, 1));
+            when(evaluationRepository.findByContractIdAndPeriodStartAndPeriodEnd(1L, period.start(), period.end()))
+                    .thenReturn(Optional.of(existing));
+            when(evaluationRepository.save(any(SlaEvaluation.class))).thenAnswer(inv -> inv.getArgument(0));
+
+            SlaEvaluation stored = slaService.storeEvaluation(slaTerms, period, now);
+
+            assertThat(stored.getId()).isEqualTo(7L);
+            assertThat(stored.getLateShipments()).isEqualTo(2);
+            assertThat(stored.getTotalPenalties()).isEqualByComparingTo(new BigDecimal("60.00"));
+            assertThat(stored.isCompliant()).isFalse();
+            assertThat(stored.getEvaluatedAt()).isEqualTo(now);
+        }
+    }
 }
@@ -30,6 +30,7 @@ class CourierLocationServiceTest {
 
     @Mock private CourierLocationHistoryRepository locationRepository;
     @Mock private UserRepository userRepository;
+    @Mock private ETACalculationService etaCalculationService;
 
     @InjectMocks
     private CourierLocationService locationService;
@@ -60,6 +61,7 @@ class CourierLocationServiceTest {
         assertThat(saved).isNotNull();
         assertThat(saved.getLatitude()).isEqualByComparingTo(new BigDecimal("30.0444"));
         verify(locationRepository).save(any());
+        verify(etaCalculationService).onCourierLocation(1L, saved.getTimestamp());
     }
 
     @Test
@@ -111,26 +113,15 @@ class CourierLocationServiceTest {
     }
 
     @Test
-    @DisplayName("calculateETA — returns estimated minutes for in-transit shipment")
-    void calculateETA_inTransitShipment_returnsMinutes() {
-        // Courier at Cairo (30.0444, 31.2357), delivery at Giza (30.0131, 31.2089)
+    @DisplayName("calculateETA — delegates to the cached ETA engine")
+    void calculateETA_delegatesToEtaEngine() {
         Shipment shipment = new Shipment();
+        shipment.setId(5L);
         shipment.setDeliveryLatitude(new BigDecimal("30.0131"));
         shipment.setDeliveryLongitude(new BigDecimal("31.2089"));
-        // Use reflection-like approach — we need a manifest with courier
-        // For simplicity, test via the service's direct courier lookup
-        // We set the shipment with a mock manifest setup
-        try {
-            var manifestField = Shipment.class.getDeclaredField("manifest");
-            manifestField.setAccessible(true);
-            // Create a minimal manifest mock using a stub
-        } catch (Exception e) {
-            // Skip manifest setup — test the null case below
-        }
-
-        // Test without courier assigned — should return null
-        Long eta = locationService.calculateETA(shipment);
-        assertThat(eta).isNull(); // No courier assigned
+        when(etaCalculationService.getRemainingMinutes(shipment)).thenReturn(17L);
+
+        assertThat(locationService.calculateETA(shipment)).isEqualTo(17L);
     }
 
     @Test
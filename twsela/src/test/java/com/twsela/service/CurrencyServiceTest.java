@@ -1,8 +1,10 @@
 package com.twsela.service;
 
 import com.twsela.domain.ExchangeRate;
+import com.twsela.repository.CountryRepository;
 import com.twsela.repository.CurrencyRepository;
 import com.twsela.repository.ExchangeRateRepository;
+import com.twsela.repository.TaxRuleRepository;
 import com.twsela.web.exception.ResourceNotFoundException;
 import com.twsela.web.dto.CountryDTO.*;
 import org.junit.jupiter.api.*;
@@ -12,7 +14,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.util.Optional;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -23,7 +25,26 @@ class CurrencyServiceTest {
 
     @Mock CurrencyRepository currencyRepository;
     @Mock ExchangeRateRepository exchangeRateRepository;
-    @InjectMocks CurrencyService currencyService;
+    @Mock TaxRuleRepository taxRuleRepository;
+    @Mock CountryRepository countryRepository;
+    CurrencyService currencyService;
+
+    @BeforeEach
+    void setUp() {
+        currencyService = new CurrencyService(currencyRepository, exchangeRateRepository,
+                new ReferenceDataCache(taxRuleRepository, exchangeRateRepository, countryRepository));
+    }
+
+    private static ExchangeRate rate(long id, String base, String target, String value, LocalDate date) {
+        ExchangeRate er = new ExchangeRate();
+        er.setId(id);
+        er.setBaseCurrency(base);
+        er.setTargetCurrency(target);
+        er.setRate(new BigDecimal(value));
+        er.setEffectiveDate(date);
+        er.setSource(ExchangeRate.RateSource.MANUAL);
+        return er;
+    }
 
     @Nested
     @DisplayName("تحويل العملات")
@@ -48,8 +69,7 @@ class CurrencyServiceTest {
             rate.setEffectiveDate(LocalDate.now());
             rate.setSource(ExchangeRate.RateSource.MANUAL);
 
-            when(exchangeRateRepository.findLatestRate("USD", "EGP"))
-                    .thenReturn(Optional.of(rate));
+            when(exchangeRateRepository.findAll()).thenReturn(List.of(rate));
 
             ConvertResponse res = currencyService.convert(
                     new BigDecimal("10.00"), "USD", "EGP");
@@ -59,11 +79,34 @@ class CurrencyServiceTest {
         @Test
         @DisplayName("تحويل بدون سعر صرف يرمي استثناء")
         void convertNoRateThrows() {
-            when(exchangeRateRepository.findLatestRate("USD", "XYZ"))
-                    .thenReturn(Optional.empty());
+            when(exchangeRateRepository.findAll()).thenReturn(List.of());
             assertThatThrownBy(() -> currencyService.convert(BigDecimal.TEN, "USD", "XYZ"))
                     .isInstanceOf(ResourceNotFoundException.class);
         }
+
+        @Test
+        @DisplayName("دفعة تحويلات — السعر الساري في التاريخ المحدد واستعلام واحد")
+        void convertBatchByEffectiveDate() {
+            when(exchangeRateRepository.findAll()).thenReturn(List.of(
+                    rate(1, "USD", "EGP", "48.000000", LocalDate.of(2024, 3, 1)),
+                    rate(2, "USD", "EGP", "50.000000", LocalDate.of(2024, 4, 1)),
+                    rate(3, "SAR", "EGP", "13.000000", LocalDate.of(2024, 1, 1))));
+            List<ConvertRequest> items = List.of(
+                    new ConvertRequest(new BigDecimal("10.00"), "usd", "egp"),
+                    new ConvertRequest(new BigDecimal("10.00"), "SAR", "EGP"),
+                    new ConvertRequest(new BigDecimal("10.00"), "EGP", "EGP"));
+
+            List<ConvertResponse> march = currencyService.convertAll(items, LocalDate.of(2024, 3, 31));
+            List<ConvertResponse> latest = currencyService.convertAll(items, null);
+
+            assertThat(march).extracting(ConvertResponse::convertedAmount)
+                    .usingElementComparator(BigDecimal::compareTo)
+                    .containsExactly(new BigDecimal("480"), new BigDecimal("130"), new BigDecimal("10"));
+            assertThat(latest.get(0).convertedAmount()).isEqualByComparingTo(new BigDecimal("500"));
+            assertThatThrownBy(() -> currencyService.convertAll(items, LocalDate.of(2023, 12, 31)))
+                    .isInstanceOf(ResourceNotFoundException.class);
+            verify(exchangeRateRepository, times(1)).findAll();
+        }
     }
 
     @Nested
@@ -81,8 +124,7 @@ class CurrencyServiceTest {
             er.setEffectiveDate(LocalDate.now());
             er.setSource(ExchangeRate.RateSource.MANUAL);
 
-            when(exchangeRateRepository.findLatestRate("USD", "SAR"))
-                    .thenReturn(Optional.of(er));
+            when(exchangeRateRepository.findAll()).thenReturn(List.of(er));
 
             ExchangeRateResponse res = currencyService.getExchangeRate("USD", "SAR");
             assertThat(res.rate()).isEqualByComparingTo(new BigDecimal("3.750000"));
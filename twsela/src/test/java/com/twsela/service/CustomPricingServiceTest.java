@@ -5,15 +5,17 @@ import com.twsela.domain.CustomPricingRule;
 import com.twsela.domain.Zone;
 import com.twsela.repository.ContractRepository;
 import com.twsela.repository.CustomPricingRuleRepository;
+import com.twsela.repository.DeliveryPricingRepository;
 import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.TelemetrySettingsRepository;
 import com.twsela.repository.ZoneRepository;
 import com.twsela.web.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -35,8 +37,10 @@ class CustomPricingServiceTest {
     @Mock private CustomPricingRuleRepository pricingRuleRepository;
     @Mock private ShipmentRepository shipmentRepository;
     @Mock private ZoneRepository zoneRepository;
+    @Mock private DeliveryPricingRepository deliveryPricingRepository;
+    @Mock private TelemetrySettingsRepository telemetrySettingsRepository;
 
-    @InjectMocks private CustomPricingService pricingService;
+    private CustomPricingService pricingService;
 
     private Contract contract;
     private Zone zoneFrom;
@@ -45,6 +49,12 @@ class CustomPricingServiceTest {
 
     @BeforeEach
     void setUp() {
+        PricingEngine pricingEngine = new PricingEngine(contractRepository, pricingRuleRepository,
+                deliveryPricingRepository, zoneRepository, telemetrySettingsRepository, shipmentRepository,
+                new SimpleMeterRegistry());
+        pricingService = new CustomPricingService(contractRepository, pricingRuleRepository, zoneRepository,
+                pricingEngine);
+
         contract = new Contract();
         contract.setId(1L);
         contract.setContractNumber("TWS-CTR-12345678");
@@ -79,8 +89,7 @@ class CustomPricingServiceTest {
         @DisplayName("يجب حساب السعر من العقد عند وجود عقد نشط")
         void calculatePrice_contractPricing() {
             when(contractRepository.findActiveByPartyId(1L)).thenReturn(Optional.of(contract));
-            when(pricingRuleRepository.findActiveByContractIdAndZones(eq(1L), eq(10L), eq(20L)))
-                    .thenReturn(List.of(rule));
+            when(pricingRuleRepository.findByContractIdAndActiveTrue(1L)).thenReturn(List.of(rule));
             when(shipmentRepository.countByMerchantIdAndCreatedAtBetween(eq(1L), any(Instant.class), any(Instant.class)))
                     .thenReturn(150L); // Over 100 threshold
 
@@ -88,7 +97,10 @@ class CustomPricingServiceTest {
 
             assertThat(result.get("source")).isEqualTo("CONTRACT");
             assertThat(result.get("basePrice")).isEqualTo(new BigDecimal("30.00"));
-            assertThat(result).containsKey("totalPrice");
+            // 30 + 2 × 3 + 2.5% of 500 = 48.50, less 10% volume discount
+            assertThat(result.get("discount")).isEqualTo(new BigDecimal("4.85"));
+            assertThat(result.get("totalPrice")).isEqualTo(new BigDecimal("43.65"));
+            assertThat(result.get("contractNumber")).isEqualTo("TWS-CTR-12345678");
         }
 
         @Test
@@ -106,8 +118,7 @@ class CustomPricingServiceTest {
         @DisplayName("يجب تطبيق رسوم الدفع عند التسليم")
         void calculatePrice_withCod() {
             when(contractRepository.findActiveByPartyId(1L)).thenReturn(Optional.of(contract));
-            when(pricingRuleRepository.findActiveByContractIdAndZones(eq(1L), eq(10L), eq(20L)))
-                    .thenReturn(List.of(rule));
+            when(pricingRuleRepository.findByContractIdAndActiveTrue(1L)).thenReturn(List.of(rule));
             when(shipmentRepository.countByMerchantIdAndCreatedAtBetween(eq(1L), any(Instant.class), any(Instant.class)))
                     .thenReturn(50L); // Below threshold, no discount
 
@@ -116,6 +127,25 @@ class CustomPricingServiceTest {
             assertThat(result.get("source")).isEqualTo("CONTRACT");
             BigDecimal codFee = (BigDecimal) result.get("codFee");
             assertThat(codFee).isEqualByComparingTo(new BigDecimal("25.00")); // 2.5% of 1000
+            assertThat(result.get("totalPrice")).isEqualTo(new BigDecimal("58.00"));
+        }
+
+        @Test
+        @DisplayName("يجب تسعير الدفعة بجدول واحد لكل تاجر")
+        void calculatePrices_batch() {
+            when(contractRepository.findActiveByPartyId(1L)).thenReturn(Optional.of(contract));
+            when(pricingRuleRepository.findByContractIdAndActiveTrue(1L)).thenReturn(List.of(rule));
+            when(shipmentRepository.countByMerchantIdAndCreatedAtBetween(eq(1L), any(Instant.class), any(Instant.class)))
+                    .thenReturn(0L);
+
+            List<Map<String, Object>> results = pricingService.calculatePrices(List.of(
+                    new PricingEngine.QuoteRequest(1L, 10L, 20L, 1.0, null),
+                    new PricingEngine.QuoteRequest(1L, 20L, 10L, 1.0, null),
+                    new PricingEngine.QuoteRequest(1L, 10L, 20L, 3.0, null)));
+
+            assertThat(results).extracting(r -> r.get("source")).containsExactly("CONTRACT", "DEFAULT", "CONTRACT");
+            assertThat(results.get(2).get("totalPrice")).isEqualTo(new BigDecimal("39.00"));
+            verify(contractRepository, times(1)).findActiveByPartyId(1L);
         }
     }
 
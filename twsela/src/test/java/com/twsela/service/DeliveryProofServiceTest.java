@@ -30,7 +30,7 @@ class DeliveryProofServiceTest {
     @Mock private DeliveryProofRepository proofRepository;
     @Mock private ShipmentRepository shipmentRepository;
     @Mock private UserRepository userRepository;
-    @Mock private FileStorageService fileStorageService;
+    @Mock private ProofImagePipeline imagePipeline;
 
     @InjectMocks
     private DeliveryProofService deliveryProofService;
@@ -80,8 +80,8 @@ class DeliveryProofServiceTest {
 
             MultipartFile photo = mock(MultipartFile.class);
             when(photo.isEmpty()).thenReturn(false);
-            when(fileStorageService.storeFile(eq(photo), eq("delivery-photos")))
-                    .thenReturn("/uploads/delivery-photos/uuid.jpg");
+            when(imagePipeline.stage(eq(photo), eq("delivery-photos")))
+                    .thenReturn("/uploads/delivery-photos/incoming/uuid.jpg");
 
             DeliveryProof result = deliveryProofService.submitProof(
                     100L, photo, null, 30.0444, 31.2357, "أحمد محمد", "ملاحظات", 20L);
@@ -89,8 +89,10 @@ class DeliveryProofServiceTest {
             assertThat(result).isNotNull();
             assertThat(result.getShipment().getId()).isEqualTo(100L);
             assertThat(result.getRecipientName()).isEqualTo("أحمد محمد");
-            assertThat(result.getPhotoUrl()).isEqualTo("/uploads/delivery-photos/uuid.jpg");
+            assertThat(result.getPhotoUrl()).isEqualTo("/uploads/delivery-photos/incoming/uuid.jpg");
+            assertThat(result.isImagesPending()).isTrue();
             verify(proofRepository).save(any(DeliveryProof.class));
+            verify(imagePipeline).processAfterCommit(1L);
         }
 
         @Test
@@ -0,0 +1,145 @@
+package com.twsela.service;
+
+import com.twsela.config.ConcurrencyTestSupport;
+import com.twsela.domain.ECommerceConnection;
+import com.twsela.domain.ECommerceConnection.ECommercePlatform;
+import com.twsela.domain.Zone;
+import com.twsela.repository.ECommerceConnectionRepository;
+import com.twsela.repository.ZoneRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Load test for the e-commerce ingestion pipeline against a real database (H2 + test
+ * profile): webhooks arrive at 500/s, with redeliveries, and every distinct order must
+ * end up as exactly one shipment.
+ * <p>
+ * Excluded from the regular build; run with {@code mvn -Pload-test test}.
+ */
+@TestPropertySource(properties = {
+        "app.ecommerce.ingest.workers=4",
+        "app.ecommerce.ingest.batch-size=100",
+        "app.ecommerce.ingest.poll-interval-ms=50"
+})
+@Tag("load")
+class ECommerceIngestionLoadTest extends ConcurrencyTestSupport {
+
+    private static final int RATE_PER_SECOND = 500;
+    private static final int ORDERS = 2000;
+    private static final int REDELIVERY_EVERY = 10;
+
+    @Autowired private ECommerceIngestionService ingestionService;
+    @Autowired private ECommerceConnectionRepository connectionRepository;
+    @Autowired private ZoneRepository zoneRepository;
+
+    @Override
+    protected int threads() {
+        return 32;
+    }
+
+    @Test
+    @DisplayName("500 طلب/ثانية مع إعادة إرسال — شحنة واحدة لكل طلب")
+    void sustainedRate_everyOrderBecomesOneShipment() throws Exception {
+        ECommerceConnection connection = newConnection();
+        long runId = System.nanoTime() % 1_000_000;
+
+        // Every REDELIVERY_EVERY-th webhook repeats the previous order: the odd ones byte for
+        // byte (caught by the delivery key), the even ones re-serialised (caught by the order key)
+        List<String> payloads = new ArrayList<>(ORDERS);
+        int distinct = 0;
+        for (int i = 0; i < ORDERS; i++) {
+            boolean redelivery = i % REDELIVERY_EVERY == REDELIVERY_EVERY - 1;
+            if (!redelivery) {
+                distinct++;
+            }
+            payloads.add(sallaOrder(runId * 10_000 + distinct, redelivery && (i / REDELIVERY_EVERY) % 2 == 0));
+        }
+
+        long start = System.nanoTime();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / RATE_PER_SECOND;
+        List<Callable<ECommerceIngestionService.Receipt>> webhooks = new ArrayList<>(ORDERS);
+        for (int i = 0; i < ORDERS; i++) {
+            long due = start + i * intervalNanos;
+            String payload = payloads.get(i);
+            webhooks.add(() -> {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                return ingestionService.accept(connection.getId(), payload, null);
+            });
+        }
+
+        int acknowledged = 0;
+        for (Future<ECommerceIngestionService.Receipt> receipt : pool.invokeAll(webhooks)) {
+            assertThat(receipt.get()).isNotNull();
+            acknowledged++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        assertThat(acknowledged).isEqualTo(ORDERS);
+        assertThat(ORDERS / seconds).as("acknowledged webhooks per second").isGreaterThan(RATE_PER_SECOND * 0.8);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(120);
+        while (pendingRows(connection) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        assertThat(pendingRows(connection)).as("queue drained").isZero();
+        ingestionService.flushConnectionStats();
+
+        assertThat(count("SELECT COUNT(*) FROM ecommerce_orders WHERE connection_id = ?", connection.getId()))
+                .isEqualTo(distinct);
+        assertThat(count("SELECT COUNT(DISTINCT shipment_id) FROM ecommerce_orders WHERE connection_id = ? " +
+                "AND status = 'SHIPMENT_CREATED'", connection.getId())).isEqualTo(distinct);
+        assertThat(count("SELECT COUNT(*) FROM ecommerce_inbound_orders WHERE connection_id = ? AND status = 'FAILED'",
+                connection.getId())).isZero();
+
+        ECommerceConnection reloaded = connectionRepository.findById(connection.getId()).orElseThrow();
+        assertThat(reloaded.getLastSyncAt()).isNotNull();
+        assertThat(reloaded.getSyncErrors()).isZero();
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────
+
+    private ECommerceConnection newConnection() {
+        Zone zone = new Zone("Load Zone " + System.nanoTime(), "ingestion load test", null, null);
+        zone.setDefaultFee(new BigDecimal("40.00"));
+        zone = zoneRepository.save(zone);
+
+        ECommerceConnection connection = new ECommerceConnection();
+        connection.setMerchant(newMerchant("Ingestion Load Test", "018"));
+        connection.setPlatform(ECommercePlatform.SALLA);
+        connection.setStoreName("Load Store");
+        connection.setStoreUrl("https://load.example.com");
+        connection.setAccessToken("load-test-token");
+        connection.setAutoCreateShipments(true);
+        connection.setDefaultZone(zone);
+        return connectionRepository.save(connection);
+    }
+
+    private static String sallaOrder(long orderId, boolean reserialised) {
+        String spacing = reserialised ? " " : "";
+        return "{\"event\":\"order.created\"," + spacing + "\"data\":{\"id\":\"" + orderId + "\",\"reference_id\":\"R"
+                + orderId + "\",\"customer\":{\"first_name\":\"Load\",\"last_name\":\"Test\",\"mobile\":\"0100"
+                + String.format("%07d", orderId % 10_000_000) + "\"},\"shipping\":{\"address\":{\"city\":\"Cairo\","
+                + "\"street_number\":\"" + orderId + "\",\"block\":\"B\"}},\"amounts\":{\"total\":{\"amount\":\"150.00\"}},"
+                + "\"payment_method\":\"cod\"}}";
+    }
+
+    private long pendingRows(ECommerceConnection connection) {
+        return count("SELECT COUNT(*) FROM ecommerce_inbound_orders WHERE connection_id = ? " +
+                "AND status IN ('PENDING', 'PROCESSING')", connection.getId());
+    }
+}
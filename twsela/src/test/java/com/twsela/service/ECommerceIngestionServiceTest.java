@@ -0,0 +1,192 @@
+package com.twsela.service;
+
+import com.twsela.domain.ECommerceConnection;
+import com.twsela.domain.ECommerceConnection.ECommercePlatform;
+import com.twsela.repository.ECommerceConnectionRepository;
+import com.twsela.repository.ECommerceInboundOrderRepository;
+import com.twsela.service.ECommerceService.SyncTally;
+import com.twsela.web.exception.BusinessRuleException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("اختبارات طابور استقبال طلبات المتاجر")
+class ECommerceIngestionServiceTest {
+
+    @Mock private ECommerceService eCommerceService;
+    @Mock private ECommerceConnectionRepository connectionRepository;
+    @Mock private ECommerceInboundOrderRepository inboundOrderRepository;
+    @Mock private ECommerceIntegrationFactory integrationFactory;
+    @Mock private ECommerceIntegration integration;
+
+    private ECommerceIngestionService ingestion;
+    private ECommerceConnection connection;
+
+    @BeforeEach
+    void setUp() {
+        ingestion = new ECommerceIngestionService(eCommerceService, connectionRepository, inboundOrderRepository,
+                integrationFactory, new SimpleMeterRegistry(), Runnable::run, 2, 2, Duration.ofSeconds(60),
+                3, 100, Duration.ofSeconds(10));
+
+        connection = new ECommerceConnection();
+        connection.setId(1L);
+        connection.setPlatform(ECommercePlatform.SALLA);
+        connection.setWebhookSecret("secret123");
+        connection.setActive(true);
+    }
+
+    @Nested
+    @DisplayName("استقبال Webhook")
+    class Accept {
+
+        @Test
+        @DisplayName("يجب رفض Webhook من اتصال غير نشط")
+        void accept_inactiveConnection() {
+            connection.setActive(false);
+            when(connectionRepository.findById(1L)).thenReturn(Optional.of(connection));
+
+            assertThatThrownBy(() -> ingestion.accept(1L, "{}", "sig"))
+                    .isInstanceOf(BusinessRuleException.class)
+                    .hasMessageContaining("غير نشط");
+            verifyNoInteractions(inboundOrderRepository);
+        }
+
+        @Test
+        @DisplayName("يجب رفض توقيع Webhook غير صالح")
+        void accept_invalidSignature() {
+            when(connectionRepository.findById(1L)).thenReturn(Optional.of(connection));
+            when(integrationFactory.getIntegration(ECommercePlatform.SALLA)).thenReturn(integration);
+            when(integration.validateWebhook("{}", "bad-sig", "secret123")).thenReturn(false);
+
+            assertThatThrownBy(() -> ingestion.accept(1L, "{}", "bad-sig"))
+                    .isInstanceOf(BusinessRuleException.class)
+                    .hasMessageContaining("توقيع");
+            verifyNoInteractions(inboundOrderRepository);
+        }
+
+        @Test
+        @DisplayName("يجب إضافة الطلب للطابور وقراءة الاتصال مرة واحدة")
+        void accept_enqueuesAndCachesConnection() {
+            when(connectionRepository.findById(1L)).thenReturn(Optional.of(connection));
+            when(integrationFactory.getIntegration(ECommercePlatform.SALLA)).thenReturn(integration);
+            when(integration.validateWebhook(anyString(), eq("sig"), eq("secret123"))).thenReturn(true);
+            when(inboundOrderRepository.enqueue(eq(1L), eq(ECommercePlatform.SALLA), anyString(), anyString()))
+                    .thenReturn(10L, 11L);
+
+            ECommerceIngestionService.Receipt first = ingestion.accept(1L, "{\"id\":1}", "sig");
+            ECommerceIngestionService.Receipt second = ingestion.accept(1L, "{\"id\":2}", "sig");
+
+            assertThat(first).isEqualTo(new ECommerceIngestionService.Receipt(10L, false));
+            assertThat(second).isEqualTo(new ECommerceIngestionService.Receipt(11L, false));
+            verify(connectionRepository, times(1)).findById(1L);
+            verify(inboundOrderRepository).enqueue(1L, ECommercePlatform.SALLA,
+                    ECommerceIngestionService.deliveryKey(1L, "{\"id\":1}"), "{\"id\":1}");
+        }
+
+        @Test
+        @DisplayName("يجب اكتشاف إعادة الإرسال من الذاكرة دون الكتابة مرة أخرى")
+        void accept_redeliveryDedupedInMemory() {
+            connection.setWebhookSecret(null);
+            when(connectionRepository.findById(1L)).thenReturn(Optional.of(connection));
+            when(inboundOrderRepository.enqueue(anyLong(), any(), anyString(), anyString())).thenReturn(10L);
+
+            ingestion.accept(1L, "{\"id\":1}", null);
+            ECommerceIngestionService.Receipt again = ingestion.accept(1L, "{\"id\":1}", null);
+
+            assertThat(again.duplicate()).isTrue();
+            assertThat(again.inboundId()).isNull();
+            verify(inboundOrderRepository, times(1)).enqueue(anyLong(), any(), anyString(), anyString());
+        }
+
+        @Test
+        @DisplayName("يجب اعتبار مفتاح التسليم الموجود في قاعدة البيانات مكرراً")
+        void accept_redeliveryDedupedByDatabase() {
+            connection.setWebhookSecret(null);
+            when(connectionRepository.findById(1L)).thenReturn(Optional.of(connection));
+            when(inboundOrderRepository.enqueue(anyLong(), any(), anyString(), anyString())).thenReturn(null);
+
+            ECommerceIngestionService.Receipt receipt = ingestion.accept(1L, "{\"id\":1}", null);
+
+            assertThat(receipt.duplicate()).isTrue();
+        }
+    }
+
+    @Nested
+    @DisplayName("العمّال")
+    class Workers {
+
+        @Test
+        @DisplayName("يجب سحب الدفعات حتى يفرغ الطابور")
+        void drain_processesUntilQueueIsEmpty() {
+            when(eCommerceService.claimInboundOrders(anyString(), eq(2), any(Duration.class)))
+                    .thenReturn(List.of(1L, 2L), List.of(3L));
+            when(eCommerceService.processInboundOrders(anyList()))
+                    .thenReturn(List.of(new SyncTally(1L, 2, 0, 0)), List.of(new SyncTally(1L, 1, 1, 0)));
+
+            int dispatched = ingestion.drain();
+
+            assertThat(dispatched).isEqualTo(3);
+            verify(eCommerceService).processInboundOrders(List.of(1L, 2L));
+            verify(eCommerceService).processInboundOrders(List.of(3L));
+            verify(eCommerceService, times(2)).claimInboundOrders(anyString(), eq(2), any(Duration.class));
+        }
+
+        @Test
+        @DisplayName("فشل الدفعة يعيد المعالجة طلباً طلباً ويعيد الفاشل للطابور")
+        void processBatch_fallsBackRowByRow() {
+            when(eCommerceService.processInboundOrders(List.of(1L, 2L)))
+                    .thenThrow(new IllegalStateException("Deadlock found"));
+            when(eCommerceService.processInboundOrders(List.of(1L)))
+                    .thenReturn(List.of(new SyncTally(1L, 1, 0, 0)));
+            when(eCommerceService.processInboundOrders(List.of(2L)))
+                    .thenThrow(new IllegalStateException("Deadlock found"));
+
+            ingestion.processBatch(List.of(1L, 2L));
+
+            verify(eCommerceService).releaseInboundOrder(2L, "Deadlock found", 3);
+            verify(eCommerceService, never()).releaseInboundOrder(eq(1L), anyString(), anyInt());
+        }
+
+        @Test
+        @DisplayName("يجب تجميع إحصائيات الاتصال وكتابتها بتحديث واحد")
+        void flushConnectionStats_aggregatesPerConnection() {
+            when(eCommerceService.processInboundOrders(anyList()))
+                    .thenReturn(List.of(new SyncTally(1L, 5, 1, 0)), List.of(new SyncTally(1L, 3, 2, 1)));
+
+            ingestion.processBatch(List.of(1L));
+            ingestion.processBatch(List.of(2L));
+
+            assertThat(ingestion.flushConnectionStats()).isEqualTo(1);
+            verify(connectionRepository).recordSync(eq(1L), any(Instant.class), eq(3));
+            assertThat(ingestion.flushConnectionStats()).isZero();
+        }
+    }
+
+    @Test
+    @DisplayName("مجموعة المفاتيح الحديثة محدودة الحجم")
+    void recentKeys_areBounded() {
+        ECommerceIngestionService.RecentKeys keys = new ECommerceIngestionService.RecentKeys(4);
+        for (int i = 0; i < 5; i++) {
+            keys.add("k" + i);
+        }
+
+        assertThat(keys.contains("k4")).isTrue();
+        assertThat(keys.contains("k2")).isTrue();
+        assertThat(keys.contains("k0")).isFalse();
+    }
+}
@@ -2,8 +2,10 @@ package com.twsela.service;
 
 import com.twsela.domain.*;
 import com.twsela.domain.ECommerceConnection.ECommercePlatform;
+import com.twsela.domain.ECommerceInboundOrder.InboundStatus;
 import com.twsela.domain.ECommerceOrder.OrderStatus;
 import com.twsela.repository.ECommerceConnectionRepository;
+import com.twsela.repository.ECommerceInboundOrderRepository;
 import com.twsela.repository.ECommerceOrderRepository;
 import com.twsela.repository.UserRepository;
 import com.twsela.repository.ZoneRepository;
@@ -14,14 +16,20 @@ import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -36,6 +44,8 @@ class ECommerceServiceTest {
     @Mock private ECommerceIntegrationFactory integrationFactory;
     @Mock private UserRepository userRepository;
     @Mock private ZoneRepository zoneRepository;
+    @Mock private ECommerceInboundOrderRepository inboundOrderRepository;
+    @Mock private ShipmentService shipmentService;
     @Mock private ECommerceIntegration mockIntegration;
 
     @InjectMocks private ECommerceService eCommerceService;
@@ -134,30 +144,176 @@ class ECommerceServiceTest {
     }
 
     @Nested
-    @DisplayName("معالجة الطلبات الواردة")
-    class ProcessIncomingOrder {
+    @DisplayName("معالجة طابور الطلبات الواردة")
+    class ProcessInboundOrders {
+
+        private ECommerceInboundOrder inbound(long id, String payload) {
+            ECommerceInboundOrder inbound = new ECommerceInboundOrder();
+            inbound.setId(id);
+            inbound.setConnection(connection);
+            inbound.setPlatform(ECommercePlatform.SHOPIFY);
+            inbound.setDeliveryKey("1:" + id);
+            inbound.setRawPayload(payload);
+            inbound.setStatus(InboundStatus.PROCESSING);
+            inbound.setAttempts(1);
+            inbound.setLeaseOwner("worker-1");
+            return inbound;
+        }
+
+        private Map<String, Object> parsed(String externalOrderId, String phone) {
+            Map<String, Object> order = new LinkedHashMap<>();
+            order.put("externalOrderId", externalOrderId);
+            order.put("externalOrderNumber", "#" + externalOrderId);
+            order.put("recipientName", "أحمد علي");
+            order.put("recipientPhone", phone);
+            order.put("recipientAddress", "15 شارع التحرير");
+            order.put("city", "Cairo");
+            order.put("itemValue", "250.00");
+            order.put("codAmount", "250.00");
+            order.put("notes", "Shopify Order #" + externalOrderId);
+            return order;
+        }
+
+        private void stubBatch(ECommerceInboundOrder... rows) {
+            List<Long> ids = Arrays.stream(rows).map(ECommerceInboundOrder::getId).toList();
+            when(inboundOrderRepository.findAllById(ids)).thenReturn(List.of(rows));
+            when(connectionRepository.findAllById(any())).thenReturn(List.of(connection));
+            when(integrationFactory.getIntegration(ECommercePlatform.SHOPIFY)).thenReturn(mockIntegration);
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<ECommerceOrder> savedOrders() {
+            ArgumentCaptor<List<ECommerceOrder>> captor = ArgumentCaptor.forClass(List.class);
+            verify(orderRepository).saveAll(captor.capture());
+            return captor.getValue();
+        }
+
+        @Test
+        @DisplayName("يجب إنشاء الشحنة عبر خدمة الشحنات وربطها بالطلب")
+        void processInboundOrders_createsShipment() {
+            Zone zone = new Zone();
+            zone.setId(5L);
+            connection.setDefaultZone(zone);
+            ECommerceInboundOrder row = inbound(11L, "{\"id\":1}");
+            stubBatch(row);
+            when(mockIntegration.parseOrder("{\"id\":1}")).thenReturn(parsed("ORD-1", "+20 101-234-5678"));
+            when(orderRepository.findExistingIdempotencyKeys(Set.of("1:ORD-1"))).thenReturn(List.of());
+            Shipment created = new Shipment();
+            created.setId(500L);
+            when(shipmentService.createShipment(any(Shipment.class), eq(1L), eq(5L))).thenReturn(created);
+
+            List<ECommerceService.SyncTally> tallies = eCommerceService.processInboundOrders(List.of(11L));
+
+            ArgumentCaptor<Shipment> shipment = ArgumentCaptor.forClass(Shipment.class);
+            verify(shipmentService).createShipment(shipment.capture(), eq(1L), eq(5L));
+            assertThat(shipment.getValue().getRecipientDetails().getPhone()).isEqualTo("201012345678");
+            assertThat(shipment.getValue().getCodAmount()).isEqualByComparingTo("250.00");
+
+            ECommerceOrder order = savedOrders().get(0);
+            assertThat(order.getStatus()).isEqualTo(OrderStatus.SHIPMENT_CREATED);
+            assertThat(order.getShipment()).isSameAs(created);
+            assertThat(order.getIdempotencyKey()).isEqualTo("1:ORD-1");
+            assertThat(row.getStatus()).isEqualTo(InboundStatus.DONE);
+            assertThat(row.getLeaseOwner()).isNull();
+            assertThat(tallies).containsExactly(new ECommerceService.SyncTally(1L, 1, 0, 0));
+        }
+
+        @Test
+        @DisplayName("يجب تجاهل الطلبات المكررة في قاعدة البيانات وداخل الدفعة")
+        void processInboundOrders_skipsDuplicates() {
+            connection.setAutoCreateShipments(false);
+            ECommerceInboundOrder stored = inbound(11L, "{1}");
+            ECommerceInboundOrder first = inbound(12L, "{2}");
+            ECommerceInboundOrder again = inbound(13L, "{3}");
+            stubBatch(stored, first, again);
+            when(mockIntegration.parseOrder("{1}")).thenReturn(parsed("ORD-1", "01012345678"));
+            when(mockIntegration.parseOrder("{2}")).thenReturn(parsed("ORD-2", "01012345678"));
+            when(mockIntegration.parseOrder("{3}")).thenReturn(parsed("ORD-2", "01012345678"));
+            when(orderRepository.findExistingIdempotencyKeys(any())).thenReturn(List.of("1:ORD-1"));
+
+            List<ECommerceService.SyncTally> tallies = eCommerceService.processInboundOrders(List.of(11L, 12L, 13L));
+
+            assertThat(savedOrders()).singleElement().satisfies(order -> {
+                assertThat(order.getExternalOrderId()).isEqualTo("ORD-2");
+                assertThat(order.getStatus()).isEqualTo(OrderStatus.RECEIVED);
+            });
+            assertThat(List.of(stored, first, again)).allMatch(row -> row.getStatus() == InboundStatus.DONE);
+            assertThat(again.getErrorMessage()).contains("Duplicate");
+            assertThat(tallies).containsExactly(new ECommerceService.SyncTally(1L, 1, 0, 2));
+            verifyNoInteractions(shipmentService);
+        }
 
         @Test
-        @DisplayName("يجب رفض Webhook من اتصال غير نشط")
-        void processIncomingOrder_inactiveConnection() {
+        @DisplayName("يجب تسجيل الطلبات غير الصالحة كفاشلة دون إيقاف الدفعة")
+        void processInboundOrders_recordsInvalidOrders() {
+            ECommerceInboundOrder unparseable = inbound(21L, "not-json");
+            ECommerceInboundOrder badPhone = inbound(22L, "{2}");
+            stubBatch(unparseable, badPhone);
+            when(mockIntegration.parseOrder("not-json")).thenThrow(new RuntimeException("فشل في تحليل الطلب"));
+            when(mockIntegration.parseOrder("{2}")).thenReturn(parsed("ORD-2", "123"));
+            when(orderRepository.findExistingIdempotencyKeys(Set.of("1:ORD-2"))).thenReturn(List.of());
+            when(zoneRepository.findByNameIgnoreCase("Cairo")).thenReturn(Optional.of(new Zone()));
+
+            List<ECommerceService.SyncTally> tallies = eCommerceService.processInboundOrders(List.of(21L, 22L));
+
+            List<ECommerceOrder> orders = savedOrders();
+            assertThat(orders).extracting(ECommerceOrder::getExternalOrderId).containsExactly("PARSE_ERROR_21", "ORD-2");
+            assertThat(orders).allMatch(order -> order.getStatus() == OrderStatus.FAILED);
+            assertThat(orders.get(1).getErrorMessage()).contains("هاتف");
+            assertThat(tallies).containsExactly(new ECommerceService.SyncTally(1L, 2, 1, 0));
+            verifyNoInteractions(shipmentService);
+        }
+
+        @Test
+        @DisplayName("يجب إفشال الطلبات الواردة لاتصال أصبح غير نشط")
+        void processInboundOrders_inactiveConnection() {
             connection.setActive(false);
-            when(connectionRepository.findById(1L)).thenReturn(Optional.of(connection));
+            ECommerceInboundOrder row = inbound(31L, "{1}");
+            stubBatch(row);
+            when(mockIntegration.parseOrder("{1}")).thenReturn(parsed("ORD-1", "01012345678"));
+            when(orderRepository.findExistingIdempotencyKeys(any())).thenReturn(List.of());
 
-            assertThatThrownBy(() -> eCommerceService.processIncomingOrder(1L, "{}", "sig"))
-                    .isInstanceOf(BusinessRuleException.class)
-                    .hasMessageContaining("غير نشط");
+            eCommerceService.processInboundOrders(List.of(31L));
+
+            assertThat(row.getStatus()).isEqualTo(InboundStatus.FAILED);
+            assertThat(row.getErrorMessage()).contains("غير نشط");
+            assertThat(savedOrders()).isEmpty();
         }
 
         @Test
-        @DisplayName("يجب رفض توقيع Webhook غير صالح")
-        void processIncomingOrder_invalidSignature() {
-            when(connectionRepository.findById(1L)).thenReturn(Optional.of(connection));
-            when(integrationFactory.getIntegration(ECommercePlatform.SHOPIFY)).thenReturn(mockIntegration);
-            when(mockIntegration.validateWebhook("{}", "bad-sig", "secret123")).thenReturn(false);
+        @DisplayName("يجب حجز الطلبات المعلقة للعامل")
+        void claimInboundOrders_leasesRows() {
+            ECommerceInboundOrder row = inbound(41L, "{1}");
+            row.setStatus(InboundStatus.PENDING);
+            row.setAttempts(0);
+            row.setLeaseOwner(null);
+            when(inboundOrderRepository.lockNextPending(InboundStatus.PENDING, PageRequest.of(0, 50)))
+                    .thenReturn(List.of(row));
+
+            List<Long> ids = eCommerceService.claimInboundOrders("worker-2", 50, Duration.ofSeconds(60));
+
+            assertThat(ids).containsExactly(41L);
+            assertThat(row.getStatus()).isEqualTo(InboundStatus.PROCESSING);
+            assertThat(row.getAttempts()).isEqualTo(1);
+            assertThat(row.getLeaseOwner()).isEqualTo("worker-2");
+            assertThat(row.getLeaseExpiresAt()).isAfter(Instant.now());
+        }
 
-            assertThatThrownBy(() -> eCommerceService.processIncomingOrder(1L, "{}", "bad-sig"))
-                    .isInstanceOf(BusinessRuleException.class)
-                    .hasMessageContaining("توقيع");
+        @Test
+        @DisplayName("يجب إعادة الطلب للطابور أو إفشاله بعد استنفاد المحاولات")
+        void releaseInboundOrder_requeuesThenFails() {
+            ECommerceInboundOrder row = inbound(51L, "{1}");
+            when(inboundOrderRepository.findById(51L)).thenReturn(Optional.of(row));
+
+            assertThat(eCommerceService.releaseInboundOrder(51L, "deadlock", 3)).isFalse();
+            assertThat(row.getStatus()).isEqualTo(InboundStatus.PENDING);
+            assertThat(row.getLeaseOwner()).isNull();
+
+            row.setStatus(InboundStatus.PROCESSING);
+            row.setAttempts(3);
+            assertThat(eCommerceService.releaseInboundOrder(51L, "deadlock", 3)).isTrue();
+            assertThat(row.getStatus()).isEqualTo(InboundStatus.FAILED);
+            assertThat(row.getErrorMessage()).isEqualTo("deadlock");
         }
     }
 
@@ -0,0 +1,334 @@
+package com.twsela.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.domain.OptimizedRoute;
+import com.twsela.domain.Shipment;
+import com.twsela.domain.SpeedProfile;
+import com.twsela.domain.TrackingSession;
+import com.twsela.domain.User;
+import com.twsela.domain.Zone;
+import com.twsela.repository.CourierLocationHistoryRepository;
+import com.twsela.repository.OptimizedRouteRepository;
+import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.SpeedProfileRepository;
+import com.twsela.repository.TrackingSessionRepository;
+import com.twsela.service.SpeedProfileLearner.Accumulator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * دقة الوقت المتوقع للوصول وسلوك التخزين المؤقت — على رحلات مناديب مُولَّدة.
+ * <p>
+ * Multi-stop courier trips are simulated on a street grid with per-zone, per-hour speeds,
+ * a dwell at every stop and pings every 15 seconds with a few metres of GPS noise. Speed
+ * profiles are learned from one set of days and ETAs are replayed on held-out days, for
+ * every stop still ahead at each replay point. The old formula (straight line × 1.3 at
+ * 25 km/h) is the baseline.
+ */
+class ETAAccuracyBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ETAAccuracyBenchmarkTest.class);
+
+    private static final double BASE_LAT = 30.05;
+    private static final double BASE_LNG = 31.25;
+    private static final double KM_PER_DEG_LAT = 111.195;
+    private static final double KM_PER_DEG_LNG = 111.195 * Math.cos(Math.toRadians(BASE_LAT));
+    private static final int PING_SECONDS = 15;
+    private static final double GPS_NOISE_KM = 0.003;
+    private static final int STOPS_PER_TRIP = 5;
+    private static final int[] START_HOURS = {7, 9, 11, 13, 15, 17, 19};
+
+    private record Ping(double lat, double lng, Instant at) {}
+
+    private record Trip(long courierId, long zoneId, List<Ping> pings, List<Shipment> shipments,
+                        List<Instant> arrivals, OptimizedRoute route) {}
+
+    private record Errors(double maeSeconds, double p90Seconds, int samples) {}
+
+    private final OptimizedRouteRepository routeRepository = mock(OptimizedRouteRepository.class);
+    private final SpeedProfileRepository profileRepository = mock(SpeedProfileRepository.class);
+    private final Map<Long, OptimizedRoute> routes = new HashMap<>();
+    private long nextShipmentId = 1;
+    private long nextCourierId = 1;
+
+    @BeforeEach
+    void setUp() {
+        when(routeRepository.findTopByCourierIdOrderByOptimizedAtDesc(anyLong()))
+                .thenAnswer(call -> Optional.ofNullable(routes.get(call.<Long>getArgument(0))));
+    }
+
+    // ── Simulated city ──────────────────────────────────────────
+
+    /** Zone 1 is a congested centre, zone 2 an outer district; both slow down at rush hour. */
+    private static double speedKmh(long zoneId, int hour) {
+        boolean rush = (hour >= 7 && hour <= 9) || (hour >= 16 && hour <= 18);
+        if (zoneId == 1) {
+            return rush ? 11 : hour >= 10 && hour <= 15 ? 16 : 20;
+        }
+        return rush ? 24 : 34;
+    }
+
+    private static double dwellSeconds(long zoneId, Random rng) {
+        return zoneId == 1 ? 180 + 120 * rng.nextDouble() : 100 + 60 * rng.nextDouble();
+    }
+
+    private static Instant cairo(int day, int hour, int minute) {
+        return LocalDateTime.of(2026, 3, 2 + day, hour, minute).atZone(SpeedProfiles.LOCAL_ZONE).toInstant();
+    }
+
+    private static double lat(double yKm) {
+        return BASE_LAT + yKm / KM_PER_DEG_LAT;
+    }
+
+    private static double lng(long zoneId, double xKm) {
+        return BASE_LNG + (zoneId == 1 ? 0 : 20) / KM_PER_DEG_LNG + xKm / KM_PER_DEG_LNG;
+    }
+
+    /**
+     * Drive a five-stop route from the depot: along the street grid (east-west first, then
+     * north-south), at the zone's speed for the current hour scaled by a per-leg traffic factor.
+     */
+    private Trip simulate(Random rng, long zoneId, Instant start) {
+        long courierId = nextCourierId++;
+        Zone zone = new Zone();
+        zone.setId(zoneId);
+
+        double[][] stops = new double[STOPS_PER_TRIP][];
+        double px = 0;
+        double py = 0;
+        for (int k = 0; k < STOPS_PER_TRIP; k++) {
+            double sx;
+            double sy;
+            do {
+                sx = px + (rng.nextDouble() * 5 - 2.5);
+                sy = py + (rng.nextDouble() * 5 - 2.5);
+            } while (Math.hypot(sx - px, sy - py) < 0.6);
+            stops[k] = new double[]{sx, sy};
+            px = sx;
+            py = sy;
+        }
+
+        List<Shipment> shipments = new ArrayList<>();
+        StringBuilder waypoints = new StringBuilder("[");
+        for (int k = 0; k < STOPS_PER_TRIP; k++) {
+            Shipment shipment = new Shipment();
+            shipment.setId(nextShipmentId++);
+            shipment.setZone(zone);
+            shipment.setDeliveryLatitude(BigDecimal.valueOf(lat(stops[k][1])));
+            shipment.setDeliveryLongitude(BigDecimal.valueOf(lng(zoneId, stops[k][0])));
+            shipments.add(shipment);
+            waypoints.append(k > 0 ? "," : "").append("{\"shipmentId\":").append(shipment.getId())
+                    .append(",\"lat\":").append(lat(stops[k][1])).append(",\"lng\":").append(lng(zoneId, stops[k][0]))
+                    .append(",\"order\":").append(k + 1).append('}');
+        }
+        OptimizedRoute route = new OptimizedRoute();
+        route.setCourierId(courierId);
+        route.setOptimizedAt(start);
+        route.setWaypoints(waypoints.append(']').toString());
+
+        List<Ping> pings = new ArrayList<>();
+        List<Instant> arrivals = new ArrayList<>();
+        double x = 0;
+        double y = 0;
+        double clock = 0;
+        double nextPing = PING_SECONDS;
+        pings.add(ping(rng, zoneId, x, y, start, 0));
+        for (double[] stop : stops) {
+            double traffic = 0.85 + 0.3 * rng.nextDouble();
+            for (double[] target : new double[][]{{stop[0], y}, stop}) {
+                while (Math.hypot(target[0] - x, target[1] - y) > 1e-9) {
+                    int hour = start.plusMillis((long) (clock * 1000)).atZone(SpeedProfiles.LOCAL_ZONE).getHour();
+                    double kmh = speedKmh(zoneId, hour) * traffic;
+                    double left = Math.hypot(target[0] - x, target[1] - y);
+                    double reach = kmh * (nextPing - clock) / 3600.0;
+                    if (reach >= left) {
+                        x = target[0];
+                        y = target[1];
+                        clock += left / kmh * 3600.0;
+                    } else {
+                        x += (target[0] - x) * reach / left;
+                        y += (target[1] - y) * reach / left;
+                        clock = nextPing;
+                        pings.add(ping(rng, zoneId, x, y, start, clock));
+                        nextPing += PING_SECONDS;
+                    }
+                }
+            }
+            arrivals.add(start.plusMillis((long) (clock * 1000)));
+            double leaveAt = clock + dwellSeconds(zoneId, rng);
+            while (nextPing <= leaveAt) {
+                clock = nextPing;
+                pings.add(ping(rng, zoneId, x, y, start, clock));
+                nextPing += PING_SECONDS;
+            }
+            clock = leaveAt;
+        }
+        return new Trip(courierId, zoneId, pings, shipments, arrivals, route);
+    }
+
+    private static Ping ping(Random rng, long zoneId, double x, double y, Instant start, double clock) {
+        double noisyX = x + (rng.nextDouble() * 2 - 1) * GPS_NOISE_KM;
+        double noisyY = y + (rng.nextDouble() * 2 - 1) * GPS_NOISE_KM;
+        return new Ping(lat(noisyY), lng(zoneId, noisyX), start.plusMillis((long) (clock * 1000)));
+    }
+
+    private List<Trip> trips(long seed, int firstDay, int days) {
+        Random rng = new Random(seed);
+        List<Trip> trips = new ArrayList<>();
+        for (int day = firstDay; day < firstDay + days; day++) {
+            for (long zoneId = 1; zoneId <= 2; zoneId++) {
+                for (int hour : START_HOURS) {
+                    trips.add(simulate(rng, zoneId, cairo(day, hour, rng.nextInt(60))));
+                }
+            }
+        }
+        return trips;
+    }
+
+    // ── Learning and replay ─────────────────────────────────────
+
+    private List<SpeedProfile> learn(List<Trip> trips) {
+        SpeedProfileLearner learner = new SpeedProfileLearner(profileRepository, mock(JdbcTemplate.class),
+                mock(ETACalculationService.class), 28, 1000, 300, 130, 50, 0.5);
+        Accumulator accumulator = learner.newAccumulator();
+        for (Trip trip : trips) {
+            for (Ping ping : trip.pings()) {
+                accumulator.accept(trip.courierId(), trip.zoneId(), ping.lat(), ping.lng(), 5f, ping.at());
+            }
+        }
+        List<SpeedProfile> profiles = new ArrayList<>();
+        for (SpeedProfileLearner.Cell cell : accumulator.finish()) {
+            SpeedProfile profile = new SpeedProfile(cell.zoneId(), cell.hourOfDay());
+            SpeedProfileLearner.apply(cell, profile);
+            profiles.add(profile);
+        }
+        return profiles;
+    }
+
+    private ETACalculationService engine(List<SpeedProfile> profiles) {
+        return engine(profiles, new SimpleMeterRegistry());
+    }
+
+    private ETACalculationService engine(List<SpeedProfile> profiles, SimpleMeterRegistry meterRegistry) {
+        when(profileRepository.findAll()).thenReturn(profiles);
+        ETACalculationService service = new ETACalculationService(routeRepository, profileRepository,
+                mock(TrackingSessionRepository.class), mock(CourierLocationHistoryRepository.class),
+                mock(ShipmentRepository.class), new ObjectMapper(), meterRegistry,
+                60_000, 100_000, 300_000, 16, 900, 25.0, 1.3, 180.0);
+        service.reloadProfiles();
+        return service;
+    }
+
+    /** Predicted arrival for a courier at the ping, heading for the shipment. */
+    private interface Predictor {
+        Instant arrival(Trip trip, Shipment shipment, Ping ping);
+    }
+
+    private static Instant legacy(Shipment shipment, Ping ping) {
+        double km = SmartAssignmentService.haversineKm(ping.lat(), ping.lng(),
+                shipment.getDeliveryLatitude().doubleValue(), shipment.getDeliveryLongitude().doubleValue());
+        return ping.at().plusSeconds(Math.round(km * 1.3 / 25.0 * 3600));
+    }
+
+    /** Replay every fifth minute of each trip against every stop not reached yet. */
+    private Errors replay(List<Trip> trips, Predictor predictor) {
+        List<Double> errors = new ArrayList<>();
+        for (Trip trip : trips) {
+            routes.put(trip.courierId(), trip.route());
+            for (int i = 0; i < trip.pings().size(); i += 20) {
+                Ping ping = trip.pings().get(i);
+                for (int k = 0; k < STOPS_PER_TRIP; k++) {
+                    Instant actual = trip.arrivals().get(k);
+                    if (actual.isAfter(ping.at())) {
+                        Instant predicted = predictor.arrival(trip, trip.shipments().get(k), ping);
+                        errors.add((double) Math.abs(Duration.between(actual, predicted).getSeconds()));
+                    }
+                }
+            }
+        }
+        double[] sorted = errors.stream().mapToDouble(Double::doubleValue).sorted().toArray();
+        return new Errors(Arrays.stream(sorted).average().orElse(0),
+                sorted[(int) Math.floor(0.9 * (sorted.length - 1))], sorted.length);
+    }
+
+    @Test
+    @DisplayName("ملفات السرعة المُتعلَّمة على المسار — أدق بكثير من المعادلة القديمة، والقراءات تُخدم من الذاكرة المؤقتة")
+    void learnedEngineBeatsBaselines() {
+        List<Trip> training = trips(37L, 0, 14);
+        List<Trip> heldOut = trips(4242L, 21, 3);
+
+        List<SpeedProfile> learned = learn(training);
+        ETACalculationService defaults = engine(List.of());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ETACalculationService trained = engine(learned, meterRegistry);
+
+        Errors legacy = replay(heldOut, (trip, shipment, ping) -> legacy(shipment, ping));
+        Errors byDefaults = replay(heldOut, (trip, shipment, ping) ->
+                defaults.estimate(shipment, trip.courierId(), ping.lat(), ping.lng(), ping.at(), ping.at()).eta());
+        Errors byLearned = replay(heldOut, (trip, shipment, ping) ->
+                trained.estimate(shipment, trip.courierId(), ping.lat(), ping.lng(), ping.at(), ping.at()).eta());
+
+        log.info("ETA accuracy over {} predictions ({} profiles learned from {} trips)",
+                legacy.samples(), learned.size(), training.size());
+        log.info("  legacy (straight × 1.3 at 25 km/h): MAE {} s, p90 {} s", Math.round(legacy.maeSeconds()), Math.round(legacy.p90Seconds()));
+        log.info("  route + defaults:                   MAE {} s, p90 {} s", Math.round(byDefaults.maeSeconds()), Math.round(byDefaults.p90Seconds()));
+        log.info("  route + learned profiles:           MAE {} s, p90 {} s", Math.round(byLearned.maeSeconds()), Math.round(byLearned.p90Seconds()));
+
+        assertThat(byLearned.maeSeconds()).isLessThan(0.6 * legacy.maeSeconds());
+        assertThat(byLearned.maeSeconds()).isLessThan(byDefaults.maeSeconds());
+        assertThat(byLearned.p90Seconds()).isLessThan(legacy.p90Seconds());
+
+        // Cache: after a ping, polling reads reuse its estimate until the courier reports a newer position
+        Trip trip = heldOut.get(0);
+        Shipment shipment = trip.shipments().get(STOPS_PER_TRIP - 1);
+        Ping ping = trip.pings().get(0);
+        OptimizedRoute current = trip.route();
+        current.setOptimizedAt(Instant.now());
+        routes.put(trip.courierId(), current);
+        User courier = new User();
+        courier.setId(trip.courierId());
+        TrackingSession session = new TrackingSession();
+        session.setShipment(shipment);
+        session.setCourier(courier);
+        session.setCurrentLat(ping.lat());
+        session.setCurrentLng(ping.lng());
+        session.setLastPingAt(Instant.now());
+        trained.calculateETA(session);
+
+        ETACalculationService.Estimate pinged = trained.getEstimate(shipment).orElseThrow();
+        clearInvocations(routeRepository);
+
+        int reads = 1_000;
+        for (int i = 0; i < reads; i++) {
+            assertThat(trained.getEstimate(shipment)).containsSame(pinged);
+        }
+        assertThat(meterRegistry.get("twsela.eta.cache").tag("result", "hit").counter().count()).isEqualTo(reads + 1);
+        assertThat(meterRegistry.get("twsela.eta.cache").tag("result", "miss").counter().count()).isZero();
+        verify(routeRepository, never()).findTopByCourierIdOrderByOptimizedAtDesc(anyLong());
+
+        trained.onCourierLocation(trip.courierId(), Instant.now().plusSeconds(PING_SECONDS));
+        trained.getEstimate(shipment);
+        assertThat(meterRegistry.get("twsela.eta.cache").tag("result", "miss").counter().count()).isEqualTo(1);
+    }
+}
@@ -1,93 +1,277 @@
 package com.twsela.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twsela.domain.CourierLocationHistory;
+import com.twsela.domain.OptimizedRoute;
 import com.twsela.domain.Shipment;
+import com.twsela.domain.SpeedProfile;
 import com.twsela.domain.TrackingSession;
+import com.twsela.domain.User;
+import com.twsela.domain.Zone;
+import com.twsela.repository.CourierLocationHistoryRepository;
+import com.twsela.repository.OptimizedRouteRepository;
+import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.SpeedProfileRepository;
+import com.twsela.repository.TrackingSessionRepository;
+import com.twsela.service.ETACalculationService.Estimate;
+import com.twsela.service.ETACalculationService.Remaining;
+import com.twsela.service.ETACalculationService.RouteSnapshot;
+import com.twsela.service.ETACalculationService.Stop;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
-import static org.junit.jupiter.api.Assertions.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
 
+@ExtendWith(MockitoExtension.class)
 class ETACalculationServiceTest {
 
-    private final ETACalculationService etaService = new ETACalculationService();
+    private static final double LAT = 30.0;
 
-    @Test
-    @DisplayName("calculateETA() returns ETA with valid speed")
-    void calculateETA_withSpeed() {
-        TrackingSession session = new TrackingSession();
-        session.setShipment(new Shipment());
-        session.setTotalDistanceKm(3.0);
+    @Mock private OptimizedRouteRepository routeRepository;
+    @Mock private SpeedProfileRepository profileRepository;
+    @Mock private TrackingSessionRepository sessionRepository;
+    @Mock private CourierLocationHistoryRepository locationRepository;
+    @Mock private ShipmentRepository shipmentRepository;
+
+    private ETACalculationService etaService;
+    private Shipment shipment;
+    private User courier;
 
-        Instant eta = etaService.calculateETA(session, 10.0f); // 10 m/s = 36 km/h
+    @BeforeEach
+    void setUp() {
+        etaService = new ETACalculationService(routeRepository, profileRepository, sessionRepository,
+                locationRepository, shipmentRepository, new ObjectMapper(), new SimpleMeterRegistry(),
+                60_000, 1000, 300_000, 16, 900, 25.0, 1.3, 180.0);
 
-        assertNotNull(eta);
-        assertTrue(eta.isAfter(Instant.now()));
+        Zone zone = new Zone();
+        zone.setId(3L);
+        shipment = new Shipment();
+        shipment.setId(10L);
+        shipment.setZone(zone);
+        shipment.setDeliveryLatitude(BigDecimal.valueOf(LAT));
+        shipment.setDeliveryLongitude(BigDecimal.valueOf(31.10));
+
+        courier = new User();
+        courier.setId(7L);
     }
 
-    @Test
-    @DisplayName("calculateETA() uses default speed when null")
-    void calculateETA_nullSpeed() {
+    private TrackingSession session(double lat, double lng, Instant pingAt) {
         TrackingSession session = new TrackingSession();
-        session.setShipment(new Shipment());
-        session.setTotalDistanceKm(2.0);
+        session.setId(100L);
+        session.setShipment(shipment);
+        session.setCourier(courier);
+        session.setCurrentLat(lat);
+        session.setCurrentLng(lng);
+        session.setLastPingAt(pingAt);
+        return session;
+    }
 
-        Instant eta = etaService.calculateETA(session, null);
+    private static RouteSnapshot route(Stop... stops) {
+        return RouteSnapshot.of(List.of(stops), Instant.now());
+    }
 
-        assertNotNull(eta);
-        assertTrue(eta.isAfter(Instant.now()));
+    private static double km(double lat1, double lng1, double lat2, double lng2) {
+        return SmartAssignmentService.haversineKm(lat1, lng1, lat2, lng2);
     }
 
-    @Test
-    @DisplayName("calculateETA() uses minimum speed for very slow movement")
-    void calculateETA_verySlowSpeed() {
-        TrackingSession session = new TrackingSession();
-        session.setShipment(new Shipment());
-        session.setTotalDistanceKm(1.0);
+    @Nested
+    @DisplayName("remainingAlongRoute — المسافة المتبقية على المسار")
+    class RemainingAlongRoute {
 
-        Instant eta = etaService.calculateETA(session, 0.5f); // 0.5 m/s = 1.8 km/h, below minimum
+        private final RouteSnapshot route = route(
+                new Stop(1L, LAT, 31.00), new Stop(2L, LAT, 31.05), new Stop(10L, LAT, 31.10));
 
-        assertNotNull(eta);
-    }
+        @Test
+        @DisplayName("مندوب بين المحطتين الأولى والثانية — يمر بالثانية ثم الهدف")
+        void onSecondLeg() {
+            Remaining remaining = ETACalculationService.remainingAlongRoute(route, 10L, LAT + 0.001, 31.025);
 
-    @Test
-    @DisplayName("calculateETA() returns null for null session")
-    void calculateETA_nullSession() {
-        Instant eta = etaService.calculateETA(null, 10.0f);
-        assertNull(eta);
+            double expected = km(LAT + 0.001, 31.025, LAT, 31.05) + km(LAT, 31.05, LAT, 31.10);
+            assertThat(remaining.straightKm()).isCloseTo(expected, within(1e-9));
+            assertThat(remaining.stopsBefore()).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("مندوب قبل المحطة الأولى — المسار كاملاً")
+        void beforeFirstStop() {
+            Remaining remaining = ETACalculationService.remainingAlongRoute(route, 10L, LAT + 0.05, 30.95);
+
+            double expected = km(LAT + 0.05, 30.95, LAT, 31.00) + km(LAT, 31.00, LAT, 31.05)
+                    + km(LAT, 31.05, LAT, 31.10);
+            assertThat(remaining.straightKm()).isCloseTo(expected, within(1e-9));
+            assertThat(remaining.stopsBefore()).isEqualTo(2);
+        }
+
+        @Test
+        @DisplayName("شحنة ليست على المسار — null")
+        void notOnRoute() {
+            assertThat(ETACalculationService.remainingAlongRoute(route, 99L, LAT, 31.0)).isNull();
+        }
     }
 
-    @Test
-    @DisplayName("estimateRemainingDistance() returns default for no travel")
-    void estimateRemainingDistance_noTravel() {
-        TrackingSession session = new TrackingSession();
-        session.setTotalDistanceKm(null);
+    @Nested
+    @DisplayName("calculateETA — عند وصول نقطة موقع")
+    class CalculateOnPing {
+
+        @Test
+        @DisplayName("بدون مسار — مسافة مباشرة × معامل الالتفاف بالسرعة الافتراضية")
+        void directWithoutRoute() {
+            when(routeRepository.findTopByCourierIdOrderByOptimizedAtDesc(7L)).thenReturn(Optional.empty());
+            Instant before = Instant.now();
+
+            Instant eta = etaService.calculateETA(session(LAT, 31.00, before));
+
+            double roadKm = km(LAT, 31.00, LAT, 31.10) * 1.3;
+            long expectedSeconds = Math.round(roadKm / 25.0 * 3600);
+            assertThat(eta).isBetween(before.plusSeconds(expectedSeconds - 2), Instant.now().plusSeconds(expectedSeconds + 2));
+        }
+
+        @Test
+        @DisplayName("على المسار — يشمل المحطات السابقة للهدف بترتيبها ووقت التوقف عندها")
+        void alongRoute() {
+            OptimizedRoute route = new OptimizedRoute();
+            route.setId(50L);
+            route.setCourierId(7L);
+            route.setOptimizedAt(Instant.now().minusSeconds(600));
+            // Listed out of order on purpose: stops are sorted by "order"
+            route.setWaypoints("[{\"shipmentId\":10,\"lat\":30.0,\"lng\":31.10,\"order\":2},"
+                    + "{\"shipmentId\":4,\"lat\":30.05,\"lng\":31.05,\"order\":1}]");
+            when(routeRepository.findTopByCourierIdOrderByOptimizedAtDesc(7L)).thenReturn(Optional.of(route));
 
-        Double remaining = etaService.estimateRemainingDistance(session);
+            etaService.calculateETA(session(LAT, 31.00, Instant.now()));
+            Estimate estimate = etaService.getEstimate(shipment).orElseThrow();
 
-        assertEquals(5.0, remaining);
+            double straight = km(LAT, 31.00, 30.05, 31.05) + km(30.05, 31.05, LAT, 31.10);
+            assertThat(estimate.routed()).isTrue();
+            assertThat(estimate.remainingKm()).isCloseTo(straight * 1.3, within(0.01));
+            // One stop to serve first, at the default dwell
+            assertThat(estimate.stopsBefore()).isEqualTo(1);
+            assertThat(estimate.travelSeconds()).isCloseTo(Math.round(straight * 1.3 / 25.0 * 3600) + 180, within(1L));
+        }
+
+        @Test
+        @DisplayName("يستخدم ملف السرعة المُتعلَّم للمنطقة")
+        void usesLearnedSpeed() {
+            List<SpeedProfile> profiles = new ArrayList<>();
+            for (int hour = 0; hour < 24; hour++) {
+                SpeedProfile profile = new SpeedProfile(3L, hour);
+                profile.setSpeedKmh(10.0);
+                profile.setDetourFactor(1.5);
+                profile.setSampleSeconds(3600);
+                profiles.add(profile);
+            }
+            when(profileRepository.findAll()).thenReturn(profiles);
+            when(routeRepository.findTopByCourierIdOrderByOptimizedAtDesc(7L)).thenReturn(Optional.empty());
+            Instant now = Instant.now();
+
+            Estimate estimate = etaService.estimate(shipment, 7L, LAT, 31.00, now, now);
+
+            double roadKm = km(LAT, 31.00, LAT, 31.10) * 1.5;
+            assertThat(estimate.routed()).isFalse();
+            assertThat(estimate.travelSeconds()).isCloseTo(Math.round(roadKm / 10.0 * 3600), within(1L));
+        }
+
+        @Test
+        @DisplayName("جلسة بدون موقع أو شحنة بدون وجهة — null")
+        void insufficientData() {
+            assertThat(etaService.calculateETA(null)).isNull();
+
+            TrackingSession noPosition = session(LAT, 31.0, Instant.now());
+            noPosition.setCurrentLat(null);
+            assertThat(etaService.calculateETA(noPosition)).isNull();
+
+            shipment.setDeliveryLatitude(null);
+            assertThat(etaService.calculateETA(session(LAT, 31.0, Instant.now()))).isNull();
+            verifyNoInteractions(routeRepository);
+        }
     }
 
-    @Test
-    @DisplayName("estimateRemainingDistance() calculates based on traveled distance")
-    void estimateRemainingDistance_withTravel() {
-        TrackingSession session = new TrackingSession();
-        session.setTotalDistanceKm(3.0);
+    @Nested
+    @DisplayName("getEstimate — الاستعلام المتكرر")
+    class Polling {
+
+        @Test
+        @DisplayName("بعد نقطة موقع — يُقرأ من الذاكرة المؤقتة دون استعلامات")
+        void servedFromCache() {
+            when(routeRepository.findTopByCourierIdOrderByOptimizedAtDesc(7L)).thenReturn(Optional.empty());
+            Instant eta = etaService.calculateETA(session(LAT, 31.00, Instant.now()));
+
+            for (int i = 0; i < 5; i++) {
+                assertThat(etaService.getEstimate(shipment)).get().extracting(Estimate::eta).isEqualTo(eta);
+            }
+            verifyNoInteractions(sessionRepository, shipmentRepository, locationRepository);
+            verify(routeRepository, times(1)).findTopByCourierIdOrderByOptimizedAtDesc(7L);
+        }
 
-        Double remaining = etaService.estimateRemainingDistance(session);
+        @Test
+        @DisplayName("موقع أحدث للمندوب — يُعاد الحساب من الجلسة النشطة")
+        void recomputesAfterCourierMoved() {
+            when(routeRepository.findTopByCourierIdOrderByOptimizedAtDesc(7L)).thenReturn(Optional.empty());
+            Instant firstPing = Instant.now().minusSeconds(30);
+            etaService.calculateETA(session(LAT, 31.00, firstPing));
+            Estimate first = etaService.getEstimate(shipment).orElseThrow();
 
-        assertEquals(7.0, remaining); // 10 - 3 = 7
+            Instant secondPing = firstPing.plusSeconds(20);
+            etaService.onCourierLocation(7L, secondPing);
+            when(sessionRepository.findFirstByShipmentIdAndStatusOrderByStartedAtDesc(10L,
+                    TrackingSession.SessionStatus.ACTIVE)).thenReturn(Optional.of(session(LAT, 31.08, secondPing)));
+
+            Estimate second = etaService.getEstimate(shipment).orElseThrow();
+
+            assertThat(second.basedOn()).isEqualTo(secondPing);
+            assertThat(second.remainingKm()).isLessThan(first.remainingKm());
+        }
+
+        @Test
+        @DisplayName("بدون جلسة نشطة — آخر موقع مسجّل للمندوب")
+        void fallsBackToLastCourierLocation() {
+            when(sessionRepository.findFirstByShipmentIdAndStatusOrderByStartedAtDesc(10L,
+                    TrackingSession.SessionStatus.ACTIVE)).thenReturn(Optional.empty());
+            when(shipmentRepository.findCourierIdById(10L)).thenReturn(Optional.of(7L));
+            CourierLocationHistory location = new CourierLocationHistory(courier,
+                    BigDecimal.valueOf(LAT), BigDecimal.valueOf(31.05));
+            when(locationRepository.findFirstByCourierIdOrderByTimestampDesc(7L)).thenReturn(Optional.of(location));
+            when(routeRepository.findTopByCourierIdOrderByOptimizedAtDesc(7L)).thenReturn(Optional.empty());
+
+            Long minutes = etaService.getRemainingMinutes(shipment);
+
+            // ~4.8 km straight × 1.3 at 25 km/h ≈ 15 minutes
+            assertThat(minutes).isBetween(14L, 16L);
+        }
+
+        @Test
+        @DisplayName("لا موقع معروف — null")
+        void unknownPosition() {
+            when(sessionRepository.findFirstByShipmentIdAndStatusOrderByStartedAtDesc(anyLong(), any()))
+                    .thenReturn(Optional.empty());
+            when(shipmentRepository.findCourierIdById(10L)).thenReturn(Optional.empty());
+
+            assertThat(etaService.getRemainingMinutes(shipment)).isNull();
+            assertThat(etaService.getRemainingMinutes(null)).isNull();
+        }
     }
 
     @Test
-    @DisplayName("estimateRemainingDistance() returns minimum for over-travel")
-    void estimateRemainingDistance_overTravel() {
-        TrackingSession session = new TrackingSession();
-        session.setTotalDistanceKm(15.0);
-
-        Double remaining = etaService.estimateRemainingDistance(session);
+    @DisplayName("remainingMinutes — تقريب لأعلى وحد أدنى دقيقة")
+    void remainingMinutes() {
+        Instant now = Instant.now();
+        Estimate estimate = new Estimate(1L, 2L, 1.0, 0, 90, now.plusSeconds(90), now, now, false);
 
-        assertEquals(0.5, remaining); // capped at minimum
+        assertThat(estimate.remainingMinutes(now)).isEqualTo(2);
+        assertThat(estimate.remainingMinutes(now.plusSeconds(600))).isEqualTo(1);
     }
 }
@@ -0,0 +1,114 @@
+package com.twsela.service;
+
+import com.twsela.domain.Role;
+import com.twsela.domain.Shipment;
+import com.twsela.domain.User;
+import com.twsela.domain.Zone;
+import com.twsela.repository.UserRepository;
+import com.twsela.repository.ZoneRepository;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("استيراد الشحنات من Excel")
+class ExcelServiceTest {
+
+    private static final String[] HEADERS =
+            {"Recipient Name", "Phone", "Address", "Zone Name", "COD Amount", "Package Size", "Notes"};
+
+    @Mock private ShipmentService shipmentService;
+    @Mock private UserRepository userRepository;
+    @Mock private ZoneRepository zoneRepository;
+
+    private ExcelService excelService;
+    private User merchant;
+
+    @BeforeEach
+    void setUp() {
+        excelService = new ExcelService(shipmentService, userRepository, zoneRepository);
+        merchant = new User();
+        merchant.setId(5L);
+        merchant.setPhone("01000000005");
+        merchant.setRole(new Role("MERCHANT"));
+        when(userRepository.findByPhone("01000000005")).thenReturn(Optional.of(merchant));
+    }
+
+    @Test
+    @DisplayName("ينشئ الشحنة ببيانات المستلم والمنطقة من الصف")
+    void processExcelFile_setsRecipientAndZone() throws Exception {
+        Zone zone = new Zone("Nasr City", "east Cairo", new BigDecimal("30.0561"), new BigDecimal("31.3301"));
+        zone.setId(3L);
+        when(zoneRepository.findByNameIgnoreCase("Nasr City")).thenReturn(Optional.of(zone));
+
+        Map<String, Object> result = excelService.processExcelFile(
+                workbook(List.of("أحمد محمد", "01234567890", "12 شارع عباس العقاد", " Nasr City ", "150", "2.5", "")),
+                "01000000005");
+
+        assertThat(result).containsEntry("successCount", 1).containsEntry("errorCount", 0);
+        ArgumentCaptor<Shipment> captor = ArgumentCaptor.forClass(Shipment.class);
+        verify(shipmentService).createShipmentFromExcel(eq(5L), captor.capture());
+        Shipment shipment = captor.getValue();
+        assertThat(shipment.getRecipientDetails()).isNotNull();
+        assertThat(shipment.getRecipientName()).isEqualTo("أحمد محمد");
+        assertThat(shipment.getRecipientPhone()).isEqualTo("01234567890");
+        assertThat(shipment.getRecipientAddress()).isEqualTo("12 شارع عباس العقاد");
+        assertThat(shipment.getZone()).isSameAs(zone);
+        assertThat(shipment.getCodAmount()).isEqualByComparingTo("150");
+        assertThat(shipment.getRecipientNotes()).contains("2.5");
+    }
+
+    @Test
+    @DisplayName("يسجل خطأ للصف عند عدم وجود المنطقة")
+    void processExcelFile_unknownZone() throws Exception {
+        when(zoneRepository.findByNameIgnoreCase("Atlantis")).thenReturn(Optional.empty());
+
+        Map<String, Object> result = excelService.processExcelFile(
+                workbook(List.of("سارة علي", "01111111111", "شارع التحرير", "Atlantis", "80", "", "")),
+                "01000000005");
+
+        assertThat(result).containsEntry("successCount", 0).containsEntry("errorCount", 1);
+        assertThat((List<?>) result.get("errors")).singleElement().asString().contains("Atlantis");
+        verify(shipmentService, never()).createShipmentFromExcel(any(), any());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────
+
+    /** A workbook with the template headers and one data row of string cells. */
+    private static MockMultipartFile workbook(List<String> values) throws IOException {
+        try (Workbook workbook = new XSSFWorkbook()) {
+            Sheet sheet = workbook.createSheet("Shipments");
+            Row header = sheet.createRow(0);
+            for (int i = 0; i < HEADERS.length; i++) {
+                header.createCell(i).setCellValue(HEADERS[i]);
+            }
+            Row row = sheet.createRow(1);
+            for (int i = 0; i < values.size(); i++) {
+                row.createCell(i).setCellValue(values.get(i));
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            workbook.write(out);
+            return new MockMultipartFile("file", "shipments.xlsx",
+                    "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet", out.toByteArray());
+        }
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.assertj.core.api.Assertions.*;
@@ -77,6 +78,96 @@ class FileStorageServiceTest {
         }
     }
 
+    @Nested
+    @DisplayName("التخزين حسب المحتوى والقراءة المتدفقة")
+    class ContentAddressedTests {
+
+        @TempDir Path root;
+
+        private FileStorageService storage() {
+            return new FileStorageService(new LocalDiskStorageBackend(root));
+        }
+
+        private MultipartFile image(byte[] content) throws IOException {
+            MultipartFile file = mock(MultipartFile.class);
+            when(file.isEmpty()).thenReturn(false);
+            when(file.getSize()).thenReturn((long) content.length);
+            when(file.getContentType()).thenReturn("image/png");
+            when(file.getOriginalFilename()).thenReturn("sig.png");
+            when(file.getInputStream()).thenReturn(new ByteArrayInputStream(content));
+            return file;
+        }
+
+        @Test
+        @DisplayName("يجب تخزين المحتوى المتطابق مرة واحدة وإرجاع المسار نفسه")
+        void storeFile_deduplicates() throws IOException {
+            FileStorageService storage = storage();
+
+            String first = storage.storeFile(image(new byte[]{1, 2, 3}), "delivery-signatures");
+            String second = storage.storeFile(image(new byte[]{1, 2, 3}), "delivery-signatures");
+            String other = storage.storeFile(image(new byte[]{4, 5, 6}), "delivery-signatures");
+
+            assertThat(first).isEqualTo(second)
+                    .matches("/uploads/delivery-signatures/[0-9a-f]{64}\\.png");
+            assertThat(other).isNotEqualTo(first);
+            try (var files = Files.list(root.resolve("delivery-signatures"))) {
+                assertThat(files.count()).isEqualTo(2);
+            }
+            try (var staged = Files.list(root.resolve(LocalDiskStorageBackend.STAGING_DIR))) {
+                assertThat(staged.count()).isZero();
+            }
+        }
+
+        @Test
+        @DisplayName("يجب ألا يحذف deleteFile ملفًا مشتركًا حسب المحتوى")
+        void deleteFile_keepsContentAddressed() throws IOException {
+            FileStorageService storage = storage();
+            String shared = storage.storeFile(image(new byte[]{1, 2, 3}), "pod");
+            String generated = storage.storeBytes(new byte[]{7}, "reports", "job-1.csv");
+
+            assertThat(storage.deleteFile(shared)).isFalse();
+            assertThat(storage.find(shared)).isPresent();
+            assertThat(storage.deleteFile(generated)).isTrue();
+            assertThat(storage.find(generated)).isEmpty();
+        }
+
+        @Test
+        @DisplayName("يجب أن يعيد find الحجم وبصمة المحتوى كـ ETag")
+        void find_returnsSizeAndEtag() throws IOException {
+            FileStorageService storage = storage();
+            String path = storage.storeFile(image(new byte[]{1, 2, 3}), "delivery-photos");
+
+            FileStorageService.StoredFile stored = storage.find(path).orElseThrow();
+
+            assertThat(stored.path()).isEqualTo(path);
+            assertThat(stored.size()).isEqualTo(3);
+            assertThat(path).contains(stored.etag());
+            assertThat(storage.open(stored).getInputStream().readAllBytes()).containsExactly(1, 2, 3);
+            assertThat(storage.find("/uploads/delivery-photos/missing.png")).isEmpty();
+        }
+
+        @Test
+        @DisplayName("يجب أن يستبدل storeStream النسخة السابقة بالكامل")
+        void storeStream_replaces() throws IOException {
+            FileStorageService storage = storage();
+            storage.storeBytes(new byte[]{1, 2, 3, 4}, "reports", "job-1.csv");
+
+            String path = storage.storeBytes(new byte[]{9}, "reports", "job-1.csv");
+
+            assertThat(path).isEqualTo("/uploads/reports/job-1.csv");
+            assertThat(Files.readAllBytes(root.resolve("reports/job-1.csv"))).containsExactly(9);
+        }
+
+        @Test
+        @DisplayName("يجب رفض مسار يخرج من مجلد التخزين")
+        void find_rejectsTraversal() {
+            FileStorageService storage = storage();
+
+            assertThatThrownBy(() -> storage.find("/uploads/../secret.txt"))
+                    .isInstanceOf(SecurityException.class);
+        }
+    }
+
     @Nested
     @DisplayName("deleteFile — حذف الملفات")
     class DeleteFileTests {
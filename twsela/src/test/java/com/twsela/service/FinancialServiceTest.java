@@ -75,20 +75,25 @@ class FinancialServiceTest {
 
     // ======== createCourierPayout ========
 
-    @Test
-    @DisplayName("createCourierPayout — يجب إنشاء دفعة سائق وحساب 70% من الرسوم")
-    void createCourierPayout_success() {
-        when(userRepository.findById(10L)).thenReturn(Optional.of(courier));
-        when(shipmentRepository.findByCourierIdAndStatusNameAndCashReconciledFalse(eq(10L), eq("DELIVERED")))
-                .thenReturn(List.of(deliveredShipment));
+    private void stubNewPayout(Long userId, Payout.PayoutType type, long payoutId) {
+        when(payoutRepository.findFirstByUserIdAndPayoutTypeAndPayoutPeriodStartAndPayoutPeriodEnd(
+                userId, type, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31))).thenReturn(Optional.empty());
         when(payoutStatusRepository.findByName("PENDING")).thenReturn(Optional.of(pendingStatus));
         when(payoutRepository.save(any(Payout.class))).thenAnswer(inv -> {
             Payout p = inv.getArgument(0);
-            p.setId(1L);
+            p.setId(payoutId);
             return p;
         });
-        when(payoutItemRepository.save(any(PayoutItem.class))).thenAnswer(inv -> inv.getArgument(0));
-        when(shipmentRepository.save(any(Shipment.class))).thenAnswer(inv -> inv.getArgument(0));
+    }
+
+    @Test
+    @DisplayName("createCourierPayout — يجب إنشاء دفعة سائق وحساب 70% من الرسوم")
+    void createCourierPayout_success() {
+        when(userRepository.findById(10L)).thenReturn(Optional.of(courier));
+        stubNewPayout(10L, Payout.PayoutType.COURIER_SETTLEMENT, 1L);
+        when(payoutRepository.insertShipmentItems(eq(1L), eq(Payout.PayoutType.COURIER_SETTLEMENT), eq(10L),
+                argThat(rate -> rate.compareTo(new BigDecimal("0.70")) == 0), any(Instant.class))).thenReturn(1);
+        when(payoutItemRepository.sumAmountByPayoutId(1L)).thenReturn(new BigDecimal("70.00"));
 
         Payout result = financialService.createCourierPayout(10L,
                 LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
@@ -98,7 +103,42 @@ class FinancialServiceTest {
         // 70% of 100 = 70
         assertThat(result.getNetAmount()).isEqualByComparingTo(new BigDecimal("70.00"));
         assertThat(result.getPayoutType()).isEqualTo(Payout.PayoutType.COURIER_SETTLEMENT);
-        verify(payoutItemRepository).save(any(PayoutItem.class));
+        verify(payoutRepository).lockPayee(10L);
+        verify(payoutRepository).linkShipments(1L);
+    }
+
+    @Test
+    @DisplayName("createCourierPayout — بدون شحنات مؤهلة تُنشأ دفعة صفرية بلا ربط")
+    void createCourierPayout_nothingEligible() {
+        when(userRepository.findById(10L)).thenReturn(Optional.of(courier));
+        stubNewPayout(10L, Payout.PayoutType.COURIER_SETTLEMENT, 1L);
+        when(payoutRepository.insertShipmentItems(anyLong(), any(), anyLong(), any(), any())).thenReturn(0);
+
+        Payout result = financialService.createCourierPayout(10L,
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+
+        assertThat(result.getNetAmount()).isEqualByComparingTo(BigDecimal.ZERO);
+        verify(payoutRepository, never()).linkShipments(anyLong());
+        verifyNoInteractions(payoutItemRepository);
+    }
+
+    @Test
+    @DisplayName("createCourierPayout — إعادة الطلب لنفس الفترة تُرجع الدفعة الموجودة")
+    void createCourierPayout_existingPeriodIsReturned() {
+        Payout existing = new Payout(courier, Payout.PayoutType.COURIER_SETTLEMENT, pendingStatus,
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31), new BigDecimal("70.00"));
+        existing.setId(7L);
+        when(userRepository.findById(10L)).thenReturn(Optional.of(courier));
+        when(payoutRepository.findFirstByUserIdAndPayoutTypeAndPayoutPeriodStartAndPayoutPeriodEnd(
+                10L, Payout.PayoutType.COURIER_SETTLEMENT, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31)))
+                .thenReturn(Optional.of(existing));
+
+        Payout result = financialService.createCourierPayout(10L,
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+
+        assertThat(result).isSameAs(existing);
+        verify(payoutRepository, never()).save(any());
+        verify(payoutRepository, never()).insertShipmentItems(anyLong(), any(), anyLong(), any(), any());
     }
 
     // ======== createMerchantPayout ========
@@ -107,16 +147,10 @@ class FinancialServiceTest {
     @DisplayName("createMerchantPayout — يجب إنشاء دفعة تاجر بنجاح")
     void createMerchantPayout_success() {
         when(userRepository.findById(20L)).thenReturn(Optional.of(merchant));
-        when(shipmentRepository.findByMerchantIdAndStatusNameAndPayoutIsNull(eq(20L), eq("DELIVERED")))
-                .thenReturn(List.of(deliveredShipment));
-        when(payoutStatusRepository.findByName("PENDING")).thenReturn(Optional.of(pendingStatus));
-        when(payoutRepository.save(any(Payout.class))).thenAnswer(inv -> {
-            Payout p = inv.getArgument(0);
-            p.setId(2L);
-            return p;
-        });
-        when(payoutItemRepository.save(any(PayoutItem.class))).thenAnswer(inv -> inv.getArgument(0));
-        when(shipmentRepository.save(any(Shipment.class))).thenAnswer(inv -> inv.getArgument(0));
+        stubNewPayout(20L, Payout.PayoutType.MERCHANT_PAYOUT, 2L);
+        when(payoutRepository.insertShipmentItems(eq(2L), eq(Payout.PayoutType.MERCHANT_PAYOUT), eq(20L),
+                eq(BigDecimal.ONE), any(Instant.class))).thenReturn(1);
+        when(payoutItemRepository.sumAmountByPayoutId(2L)).thenReturn(new BigDecimal("100.00"));
 
         Payout result = financialService.createMerchantPayout(20L,
                 LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
@@ -124,6 +158,30 @@ class FinancialServiceTest {
         assertThat(result).isNotNull();
         assertThat(result.getNetAmount()).isEqualByComparingTo(new BigDecimal("100.00"));
         assertThat(result.getPayoutType()).isEqualTo(Payout.PayoutType.MERCHANT_PAYOUT);
+        verify(payoutRepository).linkShipments(2L);
+    }
+
+    @Test
+    @DisplayName("createPayout — يرفض نوع دفعة غير مدعوم")
+    void createPayout_rejectsUnsupportedType() {
+        assertThatThrownBy(() -> financialService.createPayout(Payout.PayoutType.WAREHOUSE_SETTLEMENT, 10L,
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31)))
+                .isInstanceOf(com.twsela.web.exception.BusinessRuleException.class);
+        verifyNoInteractions(payoutRepository);
+    }
+
+    // ======== calculateCourierEarnings ========
+
+    @Test
+    @DisplayName("calculateCourierEarnings — 70% من مجموع الرسوم مقرّبة لخانتين")
+    void calculateCourierEarnings_sumsInOneQuery() {
+        when(shipmentRepository.sumDeliveryFeeByCourierIdAndStatusNameAndCashReconciledFalse(10L, "DELIVERED"))
+                .thenReturn(new BigDecimal("123.45"));
+
+        BigDecimal result = financialService.calculateCourierEarnings(10L,
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 31));
+
+        assertThat(result).isEqualTo(new BigDecimal("86.42"));
     }
 
     // ======== getPayoutsForUser ========
@@ -201,6 +259,18 @@ class FinancialServiceTest {
                 .isInstanceOf(java.util.NoSuchElementException.class);
     }
 
+    // ======== periodCutoff ========
+
+    @Test
+    @DisplayName("periodCutoff — نهاية الفترة بتوقيت القاهرة مهما كانت منطقة الخادم")
+    void periodCutoff_cairoMidnight() {
+        assertThat(FinancialService.periodCutoff(LocalDate.of(2024, 3, 31)))
+                .isEqualTo(Instant.parse("2024-03-31T22:00:00Z"));
+        // Summer time
+        assertThat(FinancialService.periodCutoff(LocalDate.of(2024, 7, 31)))
+                .isEqualTo(Instant.parse("2024-07-31T21:00:00Z"));
+    }
+
     // ======== getPayoutItems ========
 
     @Test
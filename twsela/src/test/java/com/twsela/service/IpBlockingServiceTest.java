@@ -36,6 +36,9 @@ class IpBlockingServiceTest {
     @Mock
     private SecurityEventService securityEventService;
 
+    @Mock
+    private BruteForceDetector bruteForceDetector;
+
     @InjectMocks
     private IpBlockingService ipBlockingService;
 
@@ -137,6 +140,86 @@ class IpBlockingServiceTest {
         ipBlockingService.unblockIp(1L);
 
         verify(ipBlacklistRepository).delete(entry);
+        verify(bruteForceDetector).clearIp("10.0.0.1");
+    }
+
+    @Test
+    @DisplayName("فحص IP حظره الكاشف في الذاكرة — دون استعلام")
+    void isBlocked_trippedInMemory_skipsQuery() {
+        when(bruteForceDetector.isBlocked("10.0.0.3")).thenReturn(true);
+
+        assertTrue(ipBlockingService.isBlocked("10.0.0.3"));
+        verifyNoInteractions(ipBlacklistRepository);
+    }
+
+    @Test
+    @DisplayName("محاولة فاشلة تحت الحد — لا كتابة في قاعدة البيانات")
+    void recordLoginFailure_belowThreshold_noWrites() {
+        when(bruteForceDetector.recordFailure("10.0.0.4", "0100"))
+                .thenReturn(new BruteForceDetector.Verdict(2, 2, false, false));
+
+        BruteForceDetector.Verdict verdict = ipBlockingService.recordLoginFailure("10.0.0.4", "0100");
+
+        assertFalse(verdict.ipTripped());
+        verifyNoInteractions(ipBlacklistRepository, securityEventService);
+    }
+
+    @Test
+    @DisplayName("المحاولة التي تتجاوز الحد تحظر العنوان تلقائياً")
+    void recordLoginFailure_tripped_autoBlocks() {
+        when(bruteForceDetector.recordFailure("10.0.0.5", "0100"))
+                .thenReturn(new BruteForceDetector.Verdict(5, 1, true, false));
+        when(ipBlacklistRepository.findByIpAddress("10.0.0.5")).thenReturn(Optional.empty());
+        when(ipBlacklistRepository.save(any(IpBlacklist.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        ipBlockingService.recordLoginFailure("10.0.0.5", "0100");
+
+        verify(ipBlacklistRepository).save(argThat(e -> "10.0.0.5".equals(e.getIpAddress())));
+        verify(securityEventService).recordEvent(any(), eq(SecurityEvent.EventType.BRUTE_FORCE_DETECTED),
+                eq("10.0.0.5"), any(), anyString(), eq(SecurityEvent.Severity.CRITICAL));
+    }
+
+    @Test
+    @DisplayName("الحظر التلقائي يستمر حتى الوقت الذي حدده الكاشف")
+    void recordLoginFailure_tripped_blocksUntilDetectorSays() {
+        Instant until = Instant.now().plus(30, ChronoUnit.MINUTES);
+        when(bruteForceDetector.recordFailure("10.0.0.6", "0100"))
+                .thenReturn(new BruteForceDetector.Verdict(5, 1, true, false, until));
+        when(ipBlacklistRepository.findByIpAddress("10.0.0.6")).thenReturn(Optional.empty());
+        when(ipBlacklistRepository.save(any(IpBlacklist.class))).thenAnswer(inv -> inv.getArgument(0));
+
+        ipBlockingService.recordLoginFailure("10.0.0.6", "0100");
+
+        verify(ipBlacklistRepository).save(argThat(e -> until.equals(e.getExpiresAt()) && !e.isPermanent()));
+    }
+
+    @Test
+    @DisplayName("حظر تلقائي منتهٍ يُجدَّد بدلاً من تركه منتهياً")
+    void autoBlockBruteForce_renewsLapsedBlock() {
+        IpBlacklist lapsed = new IpBlacklist();
+        lapsed.setIpAddress("10.0.0.7");
+        lapsed.setExpiresAt(Instant.now().minus(1, ChronoUnit.HOURS));
+        Instant until = Instant.now().plus(30, ChronoUnit.MINUTES);
+        when(ipBlacklistRepository.findByIpAddress("10.0.0.7")).thenReturn(Optional.of(lapsed));
+        when(ipBlacklistRepository.save(lapsed)).thenReturn(lapsed);
+
+        IpBlacklist result = ipBlockingService.autoBlockBruteForce("10.0.0.7", until);
+
+        assertEquals(until, result.getExpiresAt());
+        verify(ipBlacklistRepository).save(lapsed);
+    }
+
+    @Test
+    @DisplayName("الحظر الدائم لا يُستبدل بحظر تلقائي مؤقت")
+    void autoBlockBruteForce_keepsPermanentBlock() {
+        IpBlacklist permanent = new IpBlacklist();
+        permanent.setIpAddress("10.0.0.8");
+        permanent.setPermanent(true);
+        when(ipBlacklistRepository.findByIpAddress("10.0.0.8")).thenReturn(Optional.of(permanent));
+
+        ipBlockingService.autoBlockBruteForce("10.0.0.8", Instant.now().plus(15, ChronoUnit.MINUTES));
+
+        verify(ipBlacklistRepository, never()).save(any());
     }
 
     @Test
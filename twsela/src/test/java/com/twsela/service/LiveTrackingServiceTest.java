@@ -61,7 +61,7 @@ class LiveTrackingServiceTest {
             return p;
         });
         when(trackingSessionRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(etaCalculationService.calculateETA(any(), any())).thenReturn(Instant.now().plusSeconds(600));
+        when(etaCalculationService.calculateETA(any())).thenReturn(Instant.now().plusSeconds(600));
 
         LocationPing result = liveTrackingService.processPing(100L, 30.0, 31.0, 5.0f, 10.0f, 90.0f, 85);
 
@@ -90,7 +90,7 @@ class LiveTrackingServiceTest {
             return p;
         });
         when(trackingSessionRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(etaCalculationService.calculateETA(any(), any())).thenReturn(null);
+        when(etaCalculationService.calculateETA(any())).thenReturn(null);
 
         liveTrackingService.processPing(100L, 30.01, 31.01, null, null, null, null);
 
@@ -126,7 +126,7 @@ class LiveTrackingServiceTest {
             return p;
         });
         when(trackingSessionRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(etaCalculationService.calculateETA(any(), any())).thenReturn(null);
+        when(etaCalculationService.calculateETA(any())).thenReturn(null);
         doThrow(new RuntimeException("ws error")).when(messagingTemplate)
                 .convertAndSend(anyString(), any(Map.class));
 
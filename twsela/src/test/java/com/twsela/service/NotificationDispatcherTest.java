@@ -16,9 +16,12 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Instant;
 import java.time.LocalTime;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executor;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -33,6 +36,7 @@ class NotificationDispatcherTest {
     @Mock private EmailNotificationService emailService;
     @Mock private PushNotificationService pushService;
     @Mock private WhatsAppNotificationService whatsAppService;
+    @Mock private NotificationChannelExecutors channelExecutors;
 
     @InjectMocks
     private NotificationDispatcher dispatcher;
@@ -138,4 +142,83 @@ class NotificationDispatcherTest {
             verify(pushService).sendPush(eq(10L), anyString(), anyString(), any());
         }
     }
+
+    @Nested
+    @DisplayName("dispatchBatch — الإرسال الجماعي")
+    class DispatchBatchTests {
+
+        private final Executor direct = Runnable::run;
+
+        private User user(long id, String phone) {
+            User u = new User();
+            u.setId(id);
+            u.setPhone(phone);
+            return u;
+        }
+
+        @Test
+        @DisplayName("يجب جلب المستخدمين والتفضيلات دفعة واحدة وكتابة السجلات كدفعة")
+        void dispatchBatch_prefetchesAndWritesLogsInBatch() {
+            User second = user(11L, "01111111111");
+            when(userRepository.findAllById(List.of(10L, 11L))).thenReturn(List.of(testUser, second));
+            when(preferenceRepository.findByUserIdIn(List.of(10L, 11L))).thenReturn(List.of());
+            when(templateEngine.renderForChannel(any(), eq(NotificationChannel.IN_APP), anyString(), any()))
+                    .thenReturn(new String[]{"عنوان", "محتوى"});
+            when(channelExecutors.forChannel(NotificationChannel.IN_APP)).thenReturn(direct);
+            when(notificationService.sendBulk(eq(List.of(10L, 11L)), any(), anyString(), anyString()))
+                    .thenReturn(List.of(
+                            new Notification(10L, NotificationType.SHIPMENT_CREATED, "عنوان", "محتوى"),
+                            new Notification(11L, NotificationType.SHIPMENT_CREATED, "عنوان", "محتوى")));
+
+            NotificationDispatcher.BatchDispatchResult result =
+                    dispatcher.dispatchBatch(List.of(10L, 11L, 10L), NotificationType.SHIPMENT_CREATED, Map.of());
+
+            assertThat(result.recipients()).isEqualTo(2);
+            assertThat(result.sent()).isEqualTo(2);
+            assertThat(result.failed()).isZero();
+            verify(templateEngine, times(1)).renderForChannel(any(), eq(NotificationChannel.IN_APP), anyString(), any());
+            verify(userRepository, never()).findById(anyLong());
+            verify(preferenceRepository, never()).findByUserId(anyLong());
+            verify(deliveryLogRepository).insertBatch(argThat(logs -> logs.size() == 2));
+            verify(deliveryLogRepository, never()).save(any());
+        }
+
+        @Test
+        @DisplayName("يجب تخطي المستخدمين الموقوفين وغير الموجودين")
+        void dispatchBatch_skipsPausedAndMissingUsers() {
+            NotificationPreference paused = new NotificationPreference();
+            paused.setUser(testUser);
+            paused.setPausedUntil(Instant.now().plusSeconds(3600));
+            when(userRepository.findAllById(List.of(10L, 99L))).thenReturn(List.of(testUser));
+            when(preferenceRepository.findByUserIdIn(List.of(10L, 99L))).thenReturn(List.of(paused));
+
+            NotificationDispatcher.BatchDispatchResult result =
+                    dispatcher.dispatchBatch(List.of(10L, 99L), NotificationType.SHIPMENT_CREATED, Map.of());
+
+            assertThat(result.skipped()).isEqualTo(2);
+            assertThat(result.sent()).isZero();
+            verifyNoInteractions(templateEngine, notificationService);
+        }
+
+        @Test
+        @DisplayName("يجب تسجيل فشل PUSH للمستخدمين بدون أجهزة")
+        void dispatchBatch_pushWithoutTokensFails() {
+            NotificationPreference pref = new NotificationPreference();
+            pref.setUser(testUser);
+            pref.setEnabledChannelsJson("{\"STATUS_CHANGED\":[\"PUSH\"]}");
+            when(userRepository.findAllById(List.of(10L))).thenReturn(List.of(testUser));
+            when(preferenceRepository.findByUserIdIn(List.of(10L))).thenReturn(List.of(pref));
+            when(templateEngine.renderForChannel(any(), eq(NotificationChannel.PUSH), anyString(), any()))
+                    .thenReturn(new String[]{"Title", "Body"});
+            when(channelExecutors.forChannel(NotificationChannel.PUSH)).thenReturn(direct);
+            when(pushService.sendPushBulk(eq(List.of(10L)), anyString(), anyString(), any())).thenReturn(Map.of());
+
+            NotificationDispatcher.BatchDispatchResult result =
+                    dispatcher.dispatchBatch(List.of(10L), NotificationType.STATUS_CHANGED, Map.of());
+
+            assertThat(result.failed()).isEqualTo(1);
+            verify(deliveryLogRepository).insertBatch(argThat(logs -> logs.size() == 1
+                    && logs.get(0).getStatus() == DeliveryStatus.FAILED));
+        }
+    }
 }
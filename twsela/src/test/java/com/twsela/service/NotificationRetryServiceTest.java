@@ -4,14 +4,19 @@ import com.twsela.domain.NotificationChannel;
 import com.twsela.domain.NotificationDeliveryLog;
 import com.twsela.domain.NotificationDeliveryLog.DeliveryStatus;
 import com.twsela.repository.NotificationDeliveryLogRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Pageable;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 
@@ -27,92 +32,173 @@ class NotificationRetryServiceTest {
     @Mock private PushNotificationService pushService;
     @Mock private WhatsAppNotificationService whatsAppService;
 
-    @InjectMocks
     private NotificationRetryService notificationRetryService;
 
+    @BeforeEach
+    void setUp() {
+        notificationRetryService = service("5,15,60", 10_000);
+    }
+
+    private NotificationRetryService service(String backoffMinutes, int capacity) {
+        return new NotificationRetryService(deliveryLogRepository, emailService, pushService, whatsAppService,
+                new SimpleMeterRegistry(), 3, backoffMinutes, 0.2, 120, capacity, 50, 2, 1000);
+    }
+
+    private static NotificationRetryService.RetryTask task(long id, NotificationChannel channel, String recipient,
+                                                           int retryCount) {
+        return new NotificationRetryService.RetryTask(id, channel, recipient, retryCount,
+                Instant.now().minusSeconds(60));
+    }
+
+    private static NotificationDeliveryLog failedLog(long id, NotificationChannel channel, Instant nextRetryAt) {
+        NotificationDeliveryLog logEntry = new NotificationDeliveryLog();
+        logEntry.setId(id);
+        logEntry.setChannel(channel);
+        logEntry.setRecipient("test@example.com");
+        logEntry.setStatus(DeliveryStatus.FAILED);
+        logEntry.setRetryCount(1);
+        logEntry.setNextRetryAt(nextRetryAt);
+        return logEntry;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<NotificationDeliveryLog> written() {
+        ArgumentCaptor<List<NotificationDeliveryLog>> captor = ArgumentCaptor.forClass(List.class);
+        verify(deliveryLogRepository, atLeastOnce()).updateRetryStates(captor.capture());
+        return captor.getAllValues().stream().flatMap(List::stream).toList();
+    }
+
     @Nested
-    @DisplayName("retryFailedNotifications — إعادة محاولة الإشعارات الفاشلة")
+    @DisplayName("process — إعادة محاولة الإشعارات الفاشلة")
     class RetryTests {
 
         @Test
         @DisplayName("يجب إعادة إرسال بريد إلكتروني فاشل بنجاح")
         void retry_emailSuccess() {
-            NotificationDeliveryLog logEntry = new NotificationDeliveryLog();
-            logEntry.setId(1L);
-            logEntry.setChannel(NotificationChannel.EMAIL);
-            logEntry.setRecipient("test@example.com");
-            logEntry.setStatus(DeliveryStatus.FAILED);
-            logEntry.setRetryCount(1);
-            logEntry.setNextRetryAt(Instant.now().minusSeconds(60));
-
-            when(deliveryLogRepository.findByStatusAndNextRetryAtBefore(eq(DeliveryStatus.FAILED), any(Instant.class)))
-                    .thenReturn(List.of(logEntry));
-            when(emailService.sendEmail(anyString(), anyString(), anyString()))
-                    .thenReturn("email-123");
-            when(deliveryLogRepository.save(any(NotificationDeliveryLog.class)))
-                    .thenAnswer(inv -> inv.getArgument(0));
+            when(emailService.sendEmail(anyString(), anyString(), anyString())).thenReturn("email-123");
 
-            notificationRetryService.retryFailedNotifications();
+            notificationRetryService.process(task(1L, NotificationChannel.EMAIL, "test@example.com", 1));
+            notificationRetryService.flushOutcomes();
 
-            verify(deliveryLogRepository).save(argThat(saved ->
-                    saved.getStatus() == DeliveryStatus.SENT));
+            NotificationDeliveryLog saved = written().get(0);
+            assertThat(saved.getId()).isEqualTo(1L);
+            assertThat(saved.getStatus()).isEqualTo(DeliveryStatus.SENT);
+            assertThat(saved.getSentAt()).isNotNull();
+            assertThat(saved.getNextRetryAt()).isNull();
         }
 
         @Test
         @DisplayName("يجب تمييز الإشعار كمرتد عند تجاوز الحد الأقصى")
         void retry_maxRetriesExceeded() {
-            NotificationDeliveryLog logEntry = new NotificationDeliveryLog();
-            logEntry.setId(2L);
-            logEntry.setChannel(NotificationChannel.EMAIL);
-            logEntry.setRecipient("fail@example.com");
-            logEntry.setStatus(DeliveryStatus.FAILED);
-            logEntry.setRetryCount(3);
-            logEntry.setNextRetryAt(Instant.now().minusSeconds(60));
-
-            when(deliveryLogRepository.findByStatusAndNextRetryAtBefore(eq(DeliveryStatus.FAILED), any(Instant.class)))
-                    .thenReturn(List.of(logEntry));
-            when(deliveryLogRepository.save(any(NotificationDeliveryLog.class)))
-                    .thenAnswer(inv -> inv.getArgument(0));
-
-            notificationRetryService.retryFailedNotifications();
-
-            verify(deliveryLogRepository).save(argThat(saved ->
-                    saved.getStatus() == DeliveryStatus.BOUNCED));
+            notificationRetryService.process(task(2L, NotificationChannel.EMAIL, "fail@example.com", 3));
+            notificationRetryService.flushOutcomes();
+
+            assertThat(written().get(0).getStatus()).isEqualTo(DeliveryStatus.BOUNCED);
+            verifyNoInteractions(emailService);
         }
 
         @Test
         @DisplayName("يجب عدم فعل شيء عند عدم وجود إشعارات فاشلة")
         void retry_noFailed() {
-            when(deliveryLogRepository.findByStatusAndNextRetryAtBefore(eq(DeliveryStatus.FAILED), any(Instant.class)))
+            when(deliveryLogRepository.findDueForRetry(eq(DeliveryStatus.FAILED), any(Instant.class), any(Pageable.class)))
                     .thenReturn(List.of());
 
-            notificationRetryService.retryFailedNotifications();
+            assertThat(notificationRetryService.loadDue(Instant.now())).isZero();
+            assertThat(notificationRetryService.flushOutcomes()).isZero();
 
-            verify(deliveryLogRepository, never()).save(any());
+            verify(deliveryLogRepository, never()).updateRetryStates(any());
         }
 
         @Test
-        @DisplayName("يجب زيادة عدد المحاولات عند فشل إعادة المحاولة")
+        @DisplayName("يجب زيادة عدد المحاولات وجدولة المحاولة التالية بتأخير عشوائي محدود")
         void retry_incrementsCount() {
-            NotificationDeliveryLog logEntry = new NotificationDeliveryLog();
-            logEntry.setId(3L);
-            logEntry.setChannel(NotificationChannel.WHATSAPP);
-            logEntry.setRecipient("+201234567890");
-            logEntry.setStatus(DeliveryStatus.FAILED);
-            logEntry.setRetryCount(1);
-            logEntry.setNextRetryAt(Instant.now().minusSeconds(60));
-
-            when(deliveryLogRepository.findByStatusAndNextRetryAtBefore(eq(DeliveryStatus.FAILED), any(Instant.class)))
-                    .thenReturn(List.of(logEntry));
-            when(whatsAppService.sendWhatsApp(anyString(), anyString(), anyList()))
-                    .thenReturn(null);
-            when(deliveryLogRepository.save(any(NotificationDeliveryLog.class)))
-                    .thenAnswer(inv -> inv.getArgument(0));
-
-            notificationRetryService.retryFailedNotifications();
-
-            verify(deliveryLogRepository).save(argThat(saved ->
-                    saved.getRetryCount() == 2 && saved.getNextRetryAt() != null));
+            when(whatsAppService.sendWhatsApp(anyString(), anyString(), anyList())).thenReturn(null);
+            Instant before = Instant.now();
+
+            notificationRetryService.process(task(3L, NotificationChannel.WHATSAPP, "+201234567890", 1));
+            notificationRetryService.flushOutcomes();
+
+            NotificationDeliveryLog saved = written().get(0);
+            assertThat(saved.getStatus()).isEqualTo(DeliveryStatus.FAILED);
+            assertThat(saved.getRetryCount()).isEqualTo(2);
+            // Second retry waits 15 minutes ± 20 %
+            assertThat(saved.getNextRetryAt())
+                    .isAfterOrEqualTo(before.plus(Duration.ofMinutes(12)))
+                    .isBeforeOrEqualTo(Instant.now().plus(Duration.ofMinutes(18)));
+        }
+
+        @Test
+        @DisplayName("يجب حفظ الخطأ عند فشل المزوّد باستثناء")
+        void retry_exceptionKeepsMessage() {
+            when(emailService.sendEmail(anyString(), anyString(), anyString()))
+                    .thenThrow(new IllegalStateException("smtp down"));
+
+            notificationRetryService.process(task(4L, NotificationChannel.EMAIL, "test@example.com", 0));
+            notificationRetryService.flushOutcomes();
+
+            NotificationDeliveryLog saved = written().get(0);
+            assertThat(saved.getErrorMessage()).isEqualTo("smtp down");
+            assertThat(saved.getRetryCount()).isEqualTo(1);
+        }
+    }
+
+    @Nested
+    @DisplayName("loadDue / flushOutcomes — طابور التأخير والحفظ على دفعات")
+    class SchedulerTests {
+
+        @Test
+        @DisplayName("يجب تحميل المحاولات المستحقة مرة واحدة فقط وضمن السعة")
+        void loadDue_skipsHeldAndRespectsCapacity() {
+            NotificationRetryService small = service("5,15,60", 2);
+            Instant due = Instant.now().plusSeconds(30);
+            when(deliveryLogRepository.findDueForRetry(eq(DeliveryStatus.FAILED), any(Instant.class), any(Pageable.class)))
+                    .thenReturn(List.of(failedLog(1L, NotificationChannel.EMAIL, due),
+                            failedLog(2L, NotificationChannel.PUSH, due),
+                            failedLog(3L, NotificationChannel.EMAIL, due)));
+
+            assertThat(small.loadDue(Instant.now())).isEqualTo(2);
+            assertThat(small.loadDue(Instant.now())).isZero();
+
+            assertThat(small.queued(NotificationChannel.EMAIL)).isEqualTo(1);
+            assertThat(small.queued(NotificationChannel.PUSH)).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("يجب إعادة الجدولة في الذاكرة عندما يقع التأخير داخل الأفق")
+        void failedRetry_requeuedInMemory() {
+            NotificationRetryService fast = service("1", 10_000);
+            when(whatsAppService.sendWhatsApp(anyString(), anyString(), anyList())).thenReturn(null);
+
+            fast.process(task(5L, NotificationChannel.WHATSAPP, "+201234567890", 0));
+
+            assertThat(fast.queued(NotificationChannel.WHATSAPP)).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("يجب الحفظ على دفعات صغيرة")
+        void flush_writesSmallBatches() {
+            when(emailService.sendEmail(anyString(), anyString(), anyString())).thenReturn("ok");
+            for (long id = 1; id <= 120; id++) {
+                notificationRetryService.process(task(id, NotificationChannel.EMAIL, "test@example.com", 1));
+            }
+
+            assertThat(notificationRetryService.flushOutcomes()).isEqualTo(120);
+
+            verify(deliveryLogRepository, times(3)).updateRetryStates(anyList());
+        }
+
+        @Test
+        @DisplayName("يجب الاحتفاظ بالنتائج عند فشل الحفظ وكتابتها في المرة التالية")
+        void flush_failureKeepsOutcomes() {
+            notificationRetryService.process(task(6L, NotificationChannel.EMAIL, "fail@example.com", 3));
+            when(deliveryLogRepository.updateRetryStates(anyList()))
+                    .thenThrow(new DataAccessResourceFailureException("db down"))
+                    .thenReturn(1);
+
+            assertThat(notificationRetryService.flushOutcomes()).isZero();
+            assertThat(notificationRetryService.flushOutcomes()).isEqualTo(1);
+
+            verify(deliveryLogRepository, times(2)).updateRetryStates(anyList());
         }
     }
 }
@@ -0,0 +1,124 @@
+package com.twsela.service;
+
+import com.twsela.domain.Payout;
+import com.twsela.domain.PayoutStatus;
+import com.twsela.domain.User;
+import com.twsela.repository.PayoutBatchRepository.PayoutCandidate;
+import com.twsela.repository.PayoutRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PayoutEngineTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 3, 1);
+    private static final LocalDate END = LocalDate.of(2024, 3, 31);
+
+    @Mock private FinancialService financialService;
+    @Mock private PayoutRepository payoutRepository;
+
+    private PayoutEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        engine = new PayoutEngine(financialService, payoutRepository, 3);
+    }
+
+    private void stubCandidates(long... userIds) {
+        List<PayoutCandidate> candidates = new ArrayList<>();
+        for (long userId : userIds) {
+            candidates.add(new PayoutCandidate(userId, 1, new BigDecimal("70.00")));
+        }
+        when(payoutRepository.findPayoutCandidates(eq(Payout.PayoutType.COURIER_SETTLEMENT),
+                argThat(rate -> rate.compareTo(new BigDecimal("0.70")) == 0), any(Instant.class), isNull()))
+                .thenReturn(candidates);
+    }
+
+    private static Payout payoutFor(Long userId) {
+        User user = new User();
+        user.setId(userId);
+        return new Payout(user, Payout.PayoutType.COURIER_SETTLEMENT, new PayoutStatus("PENDING"),
+                START, END, new BigDecimal("70.00"));
+    }
+
+    @Test
+    @DisplayName("ينشئ دفعة لكل مستحق بالتوازي ويُرجعها بترتيب المستخدم")
+    void generatePayouts_allPayees() {
+        stubCandidates(1L, 2L, 3L, 4L, 5L, 6L, 7L);
+        when(financialService.createPayout(eq(Payout.PayoutType.COURIER_SETTLEMENT), anyLong(), eq(START), eq(END)))
+                .thenAnswer(inv -> payoutFor(inv.getArgument(1)));
+        List<Integer> progress = Collections.synchronizedList(new ArrayList<>());
+
+        PayoutEngine.RunResult result = engine.generatePayouts(Payout.PayoutType.COURIER_SETTLEMENT, START, END,
+                progress::add, () -> false);
+
+        assertThat(result.payees()).isEqualTo(7);
+        assertThat(result.payouts()).extracting(p -> p.getUser().getId())
+                .containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L);
+        assertThat(result.failedUserIds()).isEmpty();
+        assertThat(result.totalAmount()).isEqualByComparingTo("490.00");
+        assertThat(progress).hasSize(7).isSorted().endsWith(100);
+    }
+
+    @Test
+    @DisplayName("فشل مستحق لا يوقف الباقين ويُبلَّغ عنه")
+    void generatePayouts_isolatesFailures() {
+        stubCandidates(1L, 2L, 3L);
+        when(financialService.createPayout(eq(Payout.PayoutType.COURIER_SETTLEMENT), anyLong(), eq(START), eq(END)))
+                .thenAnswer(inv -> {
+                    Long userId = inv.getArgument(1);
+                    if (userId == 2L) {
+                        throw new IllegalStateException("lock wait timeout");
+                    }
+                    return payoutFor(userId);
+                });
+
+        PayoutEngine.RunResult result = engine.generatePayouts(Payout.PayoutType.COURIER_SETTLEMENT, START, END);
+
+        assertThat(result.payouts()).extracting(p -> p.getUser().getId()).containsExactly(1L, 3L);
+        assertThat(result.failedUserIds()).containsExactly(2L);
+        assertThat(result.totalAmount()).isEqualByComparingTo("140.00");
+    }
+
+    @Test
+    @DisplayName("لا مستحقين — لا إنشاء")
+    void generatePayouts_nothingEligible() {
+        stubCandidates();
+        List<Integer> progress = new ArrayList<>();
+
+        PayoutEngine.RunResult result = engine.generatePayouts(Payout.PayoutType.COURIER_SETTLEMENT, START, END,
+                progress::add, () -> false);
+
+        assertThat(result.payees()).isZero();
+        assertThat(result.payouts()).isEmpty();
+        assertThat(progress).containsExactly(100);
+        verifyNoInteractions(financialService);
+    }
+
+    @Test
+    @DisplayName("الإلغاء يوقف التشغيل")
+    void generatePayouts_stopsWhenCancelled() {
+        stubCandidates(1L, 2L);
+
+        assertThatThrownBy(() -> engine.generatePayouts(Payout.PayoutType.COURIER_SETTLEMENT, START, END,
+                percent -> { }, () -> true))
+                .isInstanceOf(CancellationException.class);
+        verify(financialService, never()).createPayout(any(), anyLong(), any(), any());
+    }
+}
@@ -0,0 +1,133 @@
+package com.twsela.service;
+
+import com.twsela.domain.Payout;
+import com.twsela.domain.RecipientDetails;
+import com.twsela.domain.Shipment;
+import com.twsela.domain.ShipmentManifest;
+import com.twsela.domain.ShipmentStatusConstants;
+import com.twsela.domain.User;
+import com.twsela.domain.Zone;
+import com.twsela.repository.RecipientDetailsRepository;
+import com.twsela.repository.RoleRepository;
+import com.twsela.repository.ShipmentManifestRepository;
+import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.ShipmentStatusRepository;
+import com.twsela.repository.UserRepository;
+import com.twsela.repository.UserStatusRepository;
+import com.twsela.repository.ZoneRepository;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Runs the set-based payout SQL against the database (H2 + test profile) for a shipment
+ * that is paid out to both its merchant and its courier.
+ */
+@SpringBootTest(properties = {
+        "springdoc.api-docs.enabled=false",
+        "springdoc.swagger-ui.enabled=false"
+})
+@ActiveProfiles("test")
+class PayoutLinkingTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 3, 1);
+    private static final LocalDate END = LocalDate.of(2024, 3, 31);
+
+    @Autowired private FinancialService financialService;
+    @Autowired private JdbcTemplate jdbcTemplate;
+    @Autowired private RoleRepository roleRepository;
+    @Autowired private UserStatusRepository userStatusRepository;
+    @Autowired private UserRepository userRepository;
+    @Autowired private ZoneRepository zoneRepository;
+    @Autowired private ShipmentStatusRepository shipmentStatusRepository;
+    @Autowired private RecipientDetailsRepository recipientDetailsRepository;
+    @Autowired private ShipmentManifestRepository manifestRepository;
+    @Autowired private ShipmentRepository shipmentRepository;
+
+    @Test
+    @DisplayName("تسوية المندوب لا تنتزع الشحنة من دفعة التاجر")
+    void merchantAndCourierPayout_sameShipment() {
+        User merchant = newUser("MERCHANT");
+        User courier = newUser("COURIER");
+        Shipment shipment = deliveredShipment(merchant, courier);
+
+        Payout merchantPayout = financialService.createMerchantPayout(merchant.getId(), START, END);
+        Payout courierPayout = financialService.createCourierPayout(courier.getId(), START, END);
+
+        assertThat(merchantPayout.getNetAmount()).isEqualByComparingTo("50.00");
+        assertThat(courierPayout.getNetAmount()).isEqualByComparingTo("35.00");
+        assertThat(payoutIdOf(shipment)).isEqualTo(merchantPayout.getId());
+        assertThat(itemCount(shipment, merchantPayout)).isEqualTo(1);
+        assertThat(itemCount(shipment, courierPayout)).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("دفعة التاجر لا تنتزع الشحنة من تسوية المندوب")
+    void courierThenMerchantPayout_sameShipment() {
+        User merchant = newUser("MERCHANT");
+        User courier = newUser("COURIER");
+        Shipment shipment = deliveredShipment(merchant, courier);
+
+        Payout courierPayout = financialService.createCourierPayout(courier.getId(), START, END);
+        Payout merchantPayout = financialService.createMerchantPayout(merchant.getId(), START, END);
+
+        assertThat(payoutIdOf(shipment)).isEqualTo(courierPayout.getId());
+        assertThat(itemCount(shipment, courierPayout)).isEqualTo(1);
+        assertThat(itemCount(shipment, merchantPayout)).isEqualTo(1);
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────
+
+    private User newUser(String roleName) {
+        User user = new User();
+        user.setName(roleName + " payout");
+        user.setPhone("0159" + ThreadLocalRandom.current().nextLong(10_000_000L, 100_000_000L));
+        user.setPassword("password");
+        user.setRole(roleRepository.findByName(roleName).orElseThrow());
+        user.setStatus(userStatusRepository.findByName("ACTIVE").orElseThrow());
+        return userRepository.save(user);
+    }
+
+    /** Delivered mid-period on a manifest of {@code courier}, delivery fee 50. */
+    private Shipment deliveredShipment(User merchant, User courier) {
+        String suffix = String.valueOf(ThreadLocalRandom.current().nextLong(10_000_000L, 100_000_000L));
+        Zone zone = zoneRepository.save(new Zone("PAYOUT-" + suffix, "payout test zone",
+                new BigDecimal("30.0444"), new BigDecimal("31.2357")));
+        ShipmentManifest manifest = manifestRepository.save(new ShipmentManifest(courier, "MAN-" + suffix));
+
+        Shipment shipment = new Shipment();
+        shipment.setTrackingNumber("PAY-" + suffix);
+        shipment.setMerchant(merchant);
+        shipment.setManifest(manifest);
+        shipment.setZone(zone);
+        shipment.setStatus(shipmentStatusRepository.findByName(ShipmentStatusConstants.DELIVERED).orElseThrow());
+        shipment.setRecipientDetails(recipientDetailsRepository.save(
+                new RecipientDetails("010" + suffix, "Recipient", "1 Payout Street")));
+        shipment.setItemValue(new BigDecimal("200.00"));
+        shipment.setCodAmount(new BigDecimal("200.00"));
+        shipment.setDeliveryFee(new BigDecimal("50.00"));
+        shipment.setDeliveredAt(Instant.parse("2024-03-15T10:00:00Z"));
+        return shipmentRepository.save(shipment);
+    }
+
+    private Long payoutIdOf(Shipment shipment) {
+        return jdbcTemplate.queryForObject("SELECT payout_id FROM shipments WHERE id = ?", Long.class,
+                shipment.getId());
+    }
+
+    private Integer itemCount(Shipment shipment, Payout payout) {
+        return jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM payout_items WHERE payout_id = ? AND source_type = 'SHIPMENT' AND source_id = ?",
+                Integer.class, payout.getId(), shipment.getId());
+    }
+}
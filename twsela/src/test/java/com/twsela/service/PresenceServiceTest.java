@@ -1,16 +1,26 @@
 package com.twsela.service;
 
+import com.twsela.domain.Role;
+import com.twsela.domain.User;
+import com.twsela.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -20,17 +30,47 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class PresenceServiceTest {
 
+    private static final long TTL_MS = 90_000;
+
     @Mock private SimpMessagingTemplate messagingTemplate;
+    @Mock private StringRedisTemplate redisTemplate;
+    @Mock private ZSetOperations<String, String> zSet;
+    @Mock private HashOperations<String, Object, Object> hash;
+    @Mock private UserRepository userRepository;
+
+    private PresenceService presenceService;
+
+    @BeforeEach
+    void setUp() {
+        presenceService = service("local");
+    }
+
+    private PresenceService service(String store) {
+        return new PresenceService(messagingTemplate, redisTemplate, userRepository, new SimpleMeterRegistry(),
+                store, 90, 1000, 2000);
+    }
 
-    @InjectMocks private PresenceService presenceService;
+    private void givenUser(long id, String role, Long tenantId) {
+        User user = new User();
+        user.setId(id);
+        user.setRole(new Role(role));
+        user.setTenantId(tenantId);
+        when(userRepository.findById(id)).thenReturn(Optional.of(user));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> sentTo(String destination) {
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate).convertAndSend(eq(destination), payload.capture());
+        return (Map<String, Object>) payload.getValue();
+    }
 
     @Test
-    @DisplayName("userConnected() marks user as online and broadcasts")
+    @DisplayName("userConnected() marks user as online")
     void userConnected_success() {
         presenceService.userConnected(1L);
 
         assertTrue(presenceService.isOnline(1L));
-        verify(messagingTemplate).convertAndSend(eq("/topic/presence"), any(Map.class));
     }
 
     @Test
@@ -49,18 +89,17 @@ class PresenceServiceTest {
     }
 
     @Test
-    @DisplayName("getOnlineUsers() returns all connected users")
+    @DisplayName("getOnlineUsers() returns all connected users as a snapshot")
     void getOnlineUsers_returnsAll() {
         presenceService.userConnected(1L);
         presenceService.userConnected(2L);
         presenceService.userConnected(3L);
 
         Set<Long> online = presenceService.getOnlineUsers();
+        presenceService.userDisconnected(3L);
 
-        assertEquals(3, online.size());
-        assertTrue(online.contains(1L));
-        assertTrue(online.contains(2L));
-        assertTrue(online.contains(3L));
+        assertEquals(Set.of(1L, 2L, 3L), online);
+        assertThrows(UnsupportedOperationException.class, () -> online.add(4L));
     }
 
     @Test
@@ -87,4 +126,172 @@ class PresenceServiceTest {
     void getLastSeen_disconnected() {
         assertNull(presenceService.getLastSeen(999L));
     }
+
+    @Nested
+    @DisplayName("انتهاء الصلاحية بالنبضات")
+    class HeartbeatExpiry {
+
+        @Test
+        @DisplayName("بدون نبضات — يصبح غير متصل بعد المهلة")
+        void expiresWithoutHeartbeat() {
+            long t0 = System.currentTimeMillis();
+            presenceService.touch(1L, t0);
+
+            presenceService.expire(t0 + TTL_MS - 2000);
+            assertTrue(presenceService.isOnline(1L));
+
+            presenceService.expire(t0 + TTL_MS + 2000);
+            assertFalse(presenceService.isOnline(1L));
+        }
+
+        @Test
+        @DisplayName("النبضة تمدد المهلة")
+        void heartbeatExtends() {
+            long t0 = System.currentTimeMillis();
+            presenceService.touch(1L, t0);
+            presenceService.touch(1L, t0 + 60_000);
+
+            presenceService.expire(t0 + TTL_MS + 2000);
+            assertTrue(presenceService.isOnline(1L));
+
+            presenceService.expire(t0 + 60_000 + TTL_MS + 2000);
+            assertFalse(presenceService.isOnline(1L));
+        }
+    }
+
+    @Nested
+    @DisplayName("فروق مجمّعة لكل نطاق")
+    class BatchedDiffs {
+
+        @Test
+        @DisplayName("لا بث فوري — فرق واحد لكل دور ومستأجر عند التفريغ")
+        void coalescedPerScope() {
+            givenUser(1L, "courier", 5L);
+            givenUser(2L, "COURIER", null);
+
+            presenceService.userConnected(1L);
+            presenceService.userConnected(2L);
+            verifyNoInteractions(messagingTemplate);
+
+            presenceService.flush();
+
+            Map<String, Object> role = sentTo("/topic/presence.role.COURIER");
+            assertEquals(Set.of(1L, 2L), Set.copyOf((List<?>) role.get("online")));
+            assertEquals(List.of(), role.get("offline"));
+            assertEquals(List.of(1L), sentTo("/topic/presence.tenant.5").get("online"));
+            verifyNoMoreInteractions(messagingTemplate);
+        }
+
+        @Test
+        @DisplayName("اتصال ثم انقطاع قبل التفريغ — حالة واحدة أخيرة")
+        void latestChangeWins() {
+            givenUser(1L, "MERCHANT", null);
+
+            presenceService.userConnected(1L);
+            presenceService.userDisconnected(1L);
+            presenceService.flush();
+
+            Map<String, Object> diff = sentTo("/topic/presence.role.MERCHANT");
+            assertEquals(List.of(), diff.get("online"));
+            assertEquals(List.of(1L), diff.get("offline"));
+        }
+
+        @Test
+        @DisplayName("لا تغييرات — لا بث")
+        void nothingPending() {
+            presenceService.flush();
+
+            verifyNoInteractions(messagingTemplate);
+        }
+    }
+
+    @Nested
+    @DisplayName("التخزين المشترك في Redis")
+    class SharedStore {
+
+        @BeforeEach
+        void shared() {
+            presenceService = service("redis");
+            when(redisTemplate.opsForZSet()).thenReturn(zSet);
+            lenient().when(redisTemplate.<Object, Object>opsForHash()).thenReturn(hash);
+        }
+
+        @Test
+        @DisplayName("انقطاع جلسة مع بقاء جلسة على عقدة أخرى — لا يُزال ولا يُعلن انقطاعه")
+        void disconnectWithSessionElsewhere() {
+            givenUser(1L, "COURIER", null);
+            presenceService.userConnected(1L);
+            presenceService.flush();
+            clearInvocations(messagingTemplate);
+            when(redisTemplate.execute(PresenceService.DISCONNECT_SCRIPT,
+                    List.of(PresenceService.SESSIONS_KEY, PresenceService.REDIS_KEY), "1")).thenReturn(0L);
+
+            presenceService.userDisconnected(1L);
+            presenceService.flush();
+
+            verify(hash).increment(PresenceService.SESSIONS_KEY, "1", 1);
+            verify(zSet, never()).remove(anyString(), any());
+            verifyNoInteractions(messagingTemplate);
+        }
+
+        @Test
+        @DisplayName("انقطاع آخر جلسة — يُعلن انقطاعه")
+        void disconnectLastSession() {
+            givenUser(1L, "COURIER", null);
+            presenceService.userConnected(1L);
+            presenceService.flush();
+            clearInvocations(messagingTemplate);
+            when(redisTemplate.execute(PresenceService.DISCONNECT_SCRIPT,
+                    List.of(PresenceService.SESSIONS_KEY, PresenceService.REDIS_KEY), "1")).thenReturn(1L);
+
+            presenceService.userDisconnected(1L);
+            presenceService.flush();
+
+            assertEquals(List.of(1L), sentTo("/topic/presence.role.COURIER").get("offline"));
+        }
+
+        @Test
+        @DisplayName("النبضات تُكتب في Redis مرة كل ثلث المهلة")
+        void throttledWrites() {
+            long t0 = System.currentTimeMillis();
+
+            presenceService.touch(1L, t0);
+            presenceService.touch(1L, t0 + 10_000);
+            presenceService.touch(1L, t0 + 31_000);
+
+            verify(zSet).add(PresenceService.REDIS_KEY, "1", (double) t0);
+            verify(zSet).add(PresenceService.REDIS_KEY, "1", (double) (t0 + 31_000));
+            verify(zSet, times(2)).add(anyString(), anyString(), anyDouble());
+        }
+
+        @Test
+        @DisplayName("المستخدم متصل بعقدة أخرى — لا يُعلن انقطاعه")
+        void aliveOnAnotherNode() {
+            givenUser(1L, "COURIER", null);
+            long t0 = System.currentTimeMillis();
+            presenceService.touch(1L, t0);
+            presenceService.broadcast(t0);
+            clearInvocations(messagingTemplate);
+            when(zSet.score(PresenceService.REDIS_KEY, "1")).thenReturn((double) (t0 + 80_000));
+
+            presenceService.expire(t0 + TTL_MS + 2000);
+            presenceService.broadcast(t0 + TTL_MS + 2000);
+
+            verify(zSet, never()).remove(anyString(), any());
+            verifyNoInteractions(messagingTemplate);
+        }
+
+        @Test
+        @DisplayName("إدخالات عقدة متوقفة — تُزال ويُعلن انقطاعها")
+        void sweepsDeadNodeEntries() {
+            givenUser(9L, "COURIER", null);
+            when(zSet.rangeByScore(eq(PresenceService.REDIS_KEY), eq(0.0), anyDouble())).thenReturn(Set.of("9"));
+            when(zSet.remove(PresenceService.REDIS_KEY, "9")).thenReturn(1L);
+
+            presenceService.flush();
+
+            assertEquals(List.of(9L), sentTo("/topic/presence.role.COURIER").get("offline"));
+            verify(hash).delete(PresenceService.SESSIONS_KEY, "9");
+        }
+    }
 }
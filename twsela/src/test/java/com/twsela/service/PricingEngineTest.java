@@ -0,0 +1,164 @@
+package com.twsela.service;
+
+import com.twsela.domain.Contract;
+import com.twsela.domain.CustomPricingRule;
+import com.twsela.domain.DeliveryPricing;
+import com.twsela.domain.TelemetrySettings;
+import com.twsela.domain.Zone;
+import com.twsela.repository.ContractRepository;
+import com.twsela.repository.CustomPricingRuleRepository;
+import com.twsela.repository.DeliveryPricingRepository;
+import com.twsela.repository.ShipmentRepository;
+import com.twsela.repository.TelemetrySettingsRepository;
+import com.twsela.repository.ZoneRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("محرك التسعير المُجمّع")
+class PricingEngineTest {
+
+    @Mock private ContractRepository contractRepository;
+    @Mock private CustomPricingRuleRepository pricingRuleRepository;
+    @Mock private DeliveryPricingRepository deliveryPricingRepository;
+    @Mock private ZoneRepository zoneRepository;
+    @Mock private TelemetrySettingsRepository telemetrySettingsRepository;
+    @Mock private ShipmentRepository shipmentRepository;
+
+    private PricingEngine engine;
+    private Contract contract;
+
+    @BeforeEach
+    void setUp() {
+        engine = new PricingEngine(contractRepository, pricingRuleRepository, deliveryPricingRepository,
+                zoneRepository, telemetrySettingsRepository, shipmentRepository, new SimpleMeterRegistry());
+        contract = new Contract();
+        contract.setId(1L);
+        contract.setContractNumber("TWS-CTR-1");
+    }
+
+    private static Zone zone(long id, String defaultFee) {
+        Zone zone = new Zone();
+        zone.setId(id);
+        zone.setDefaultFee(defaultFee != null ? new BigDecimal(defaultFee) : null);
+        return zone;
+    }
+
+    private static CustomPricingRule rule(long id, Long from, Long to, String base) {
+        CustomPricingRule rule = new CustomPricingRule();
+        rule.setId(id);
+        rule.setZoneFrom(from != null ? zone(from, null) : null);
+        rule.setZoneTo(to != null ? zone(to, null) : null);
+        rule.setBasePrice(new BigDecimal(base));
+        return rule;
+    }
+
+    private void givenRules(CustomPricingRule... rules) {
+        when(contractRepository.findActiveByPartyId(5L)).thenReturn(Optional.of(contract));
+        when(pricingRuleRepository.findByContractIdAndActiveTrue(1L)).thenReturn(List.of(rules));
+    }
+
+    @Nested
+    @DisplayName("أسعار العقود")
+    class ContractQuotes {
+
+        @Test
+        @DisplayName("القاعدة الأكثر تحديداً تفوز مهما كان ترتيبها")
+        void mostSpecificRuleWins() {
+            givenRules(rule(1, null, null, "10.00"), rule(2, 10L, null, "20.00"), rule(3, 10L, 20L, "30.00"));
+
+            assertThat(engine.quote(5L, 10L, 20L, 0, null).basePrice()).isEqualTo(new BigDecimal("30.00"));
+            assertThat(engine.quote(5L, 10L, 99L, 0, null).basePrice()).isEqualTo(new BigDecimal("20.00"));
+            assertThat(engine.quote(5L, 99L, 20L, 0, null).basePrice()).isEqualTo(new BigDecimal("10.00"));
+            assertThat(engine.quote(5L, null, null, 0, null).basePrice()).isEqualTo(new BigDecimal("10.00"));
+            verify(contractRepository, times(1)).findActiveByPartyId(5L);
+        }
+
+        @Test
+        @DisplayName("لا قاعدة مطابقة — التعرفة الافتراضية بالقروش")
+        void defaultTariff() {
+            givenRules(rule(1, 10L, 20L, "30.00"));
+
+            PricingEngine.Quote quote = engine.quote(5L, 20L, 10L, 1.333, new BigDecimal("99.99"));
+
+            assertThat(quote.source()).isEqualTo(PricingEngine.SOURCE_DEFAULT);
+            assertThat(quote.weightChargeAmount()).isEqualTo(new BigDecimal("2.67"));
+            assertThat(quote.codFeeAmount()).isEqualTo(new BigDecimal("2.00"));
+            assertThat(quote.totalPrice()).isEqualTo(new BigDecimal("29.67"));
+        }
+
+        @Test
+        @DisplayName("عداد الحجم في الذاكرة يفعّل الخصم دون استعلام جديد")
+        void volumeCounterInMemory() {
+            CustomPricingRule discounted = rule(1, null, null, "100.00");
+            discounted.setDiscountPercent(new BigDecimal("10.00"));
+            discounted.setMinMonthlyShipments(3);
+            givenRules(discounted);
+            when(shipmentRepository.countByMerchantIdAndCreatedAtBetween(eq(5L), any(Instant.class), any(Instant.class)))
+                    .thenReturn(2L);
+
+            assertThat(engine.quote(5L, null, null, 0, null).discount()).isZero();
+            engine.recordShipment(5L);
+
+            assertThat(engine.quote(5L, null, null, 0, null).totalPrice()).isEqualTo(new BigDecimal("90.00"));
+            verify(shipmentRepository, times(1)).countByMerchantIdAndCreatedAtBetween(eq(5L), any(), any());
+        }
+
+        @Test
+        @DisplayName("invalidate() — يُعاد التجميع عند الطلب التالي")
+        void invalidateRecompiles() {
+            givenRules(rule(1, null, null, "10.00"));
+            engine.quote(5L, null, null, 0, null);
+
+            engine.invalidate();
+            engine.quote(5L, null, null, 0, null);
+
+            verify(contractRepository, times(2)).findActiveByPartyId(5L);
+        }
+    }
+
+    @Nested
+    @DisplayName("رسوم التوصيل")
+    class DeliveryFees {
+
+        @Test
+        @DisplayName("سعر التاجر للمنطقة ➡️ رسوم المنطقة ➡️ إعداد النظام")
+        void hierarchy() {
+            DeliveryPricing merchantPrice = new DeliveryPricing(null, zone(1, null), new BigDecimal("35.00"));
+            when(deliveryPricingRepository.findByMerchantIdAndIsActiveTrue(5L)).thenReturn(List.of(merchantPrice));
+            when(zoneRepository.findAll()).thenReturn(List.of(zone(1, "45.00"), zone(2, "40.00"), zone(3, null)));
+            when(telemetrySettingsRepository.findBySettingKey("DEFAULT_DELIVERY_FEE"))
+                    .thenReturn(Optional.of(new TelemetrySettings("DEFAULT_DELIVERY_FEE", "55", null)));
+
+            assertThat(engine.deliveryFee(5L, 1L)).isEqualTo(new BigDecimal("35.00"));
+            assertThat(engine.deliveryFee(5L, 2L)).isEqualTo(new BigDecimal("40.00"));
+            assertThat(engine.deliveryFee(5L, 3L)).isEqualTo(new BigDecimal("55.00"));
+            verify(zoneRepository, times(1)).findAll();
+        }
+
+        @Test
+        @DisplayName("إعداد غير صالح — 50.00")
+        void invalidSystemDefault() {
+            when(zoneRepository.findAll()).thenReturn(List.of());
+            when(telemetrySettingsRepository.findBySettingKey("DEFAULT_DELIVERY_FEE"))
+                    .thenReturn(Optional.of(new TelemetrySettings("DEFAULT_DELIVERY_FEE", "abc", null)));
+
+            assertThat(engine.deliveryFee(5L, 7L)).isEqualTo(new BigDecimal("50.00"));
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.twsela.service;
+
+import com.twsela.domain.DeliveryProof;
+import com.twsela.repository.DeliveryProofRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("خط معالجة صور إثبات التسليم")
+class ProofImagePipelineTest {
+
+    @Mock private DeliveryProofRepository proofRepository;
+
+    @TempDir Path root;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ProofImagePipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        pipeline = new ProofImagePipeline(new FileStorageService(new LocalDiskStorageBackend(root)), proofRepository,
+                meterRegistry, Runnable::run, 10 * 1024 * 1024, 800, 160, 400, 0.8f, 50, 3);
+    }
+
+    /** A noisy photo that compresses about as badly as a real one. */
+    private static byte[] jpeg(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(42);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | random.nextInt(256));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    /** Insert an EXIF segment (orientation 6, GPS 30.0444 N / 31.2357 E) after the JFIF header. */
+    private static byte[] withExif(byte[] jpeg) {
+        ByteBuffer tiff = ByteBuffer.allocate(140);
+        tiff.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8);
+        // IFD0: orientation, GPS IFD pointer
+        tiff.putShort((short) 2);
+        tiff.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 6).putShort((short) 0);
+        tiff.putShort((short) 0x8825).putShort((short) 4).putInt(1).putInt(38);
+        tiff.putInt(0);
+        // GPS IFD at 38: N, latitude at 92, E, longitude at 116
+        tiff.putShort((short) 4);
+        tiff.putShort((short) 1).putShort((short) 2).putInt(2).put((byte) 'N').put((byte) 0).putShort((short) 0);
+        tiff.putShort((short) 2).putShort((short) 5).putInt(3).putInt(92);
+        tiff.putShort((short) 3).putShort((short) 2).putInt(2).put((byte) 'E').put((byte) 0).putShort((short) 0);
+        tiff.putShort((short) 4).putShort((short) 5).putInt(3).putInt(116);
+        tiff.putInt(0);
+        tiff.putInt(30).putInt(1).putInt(2).putInt(1).putInt(3984).putInt(100);
+        tiff.putInt(31).putInt(1).putInt(14).putInt(1).putInt(852).putInt(100);
+
+        byte[] exif = ByteBuffer.allocate(6 + 140).put("Exif\0\0".getBytes(StandardCharsets.US_ASCII))
+                .put(tiff.array()).array();
+        int afterApp0 = 4 + ((jpeg[4] & 0xFF) << 8 | (jpeg[5] & 0xFF));
+        return ByteBuffer.allocate(jpeg.length + 4 + exif.length)
+                .put(jpeg, 0, afterApp0)
+                .put((byte) 0xFF).put((byte) 0xE1).putShort((short) (exif.length + 2)).put(exif)
+                .put(jpeg, afterApp0, jpeg.length - afterApp0)
+                .array();
+    }
+
+    private DeliveryProof pendingProof(String photoUrl) {
+        DeliveryProof proof = new DeliveryProof();
+        proof.setId(1L);
+        proof.setPhotoUrl(photoUrl);
+        proof.setImagesPending(true);
+        proof.setImageAttempts(1);
+        when(proofRepository.recordImageAttempt(1L)).thenReturn(1);
+        when(proofRepository.findById(1L)).thenReturn(Optional.of(proof));
+        return proof;
+    }
+
+    /** Arguments of the single completeImages call: photo, thumbnail, signature, latitude, longitude. */
+    private List<Object> completed() {
+        ArgumentCaptor<String> photo = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> thumbnail = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> signature = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Double> latitude = ArgumentCaptor.forClass(Double.class);
+        ArgumentCaptor<Double> longitude = ArgumentCaptor.forClass(Double.class);
+        verify(proofRepository).completeImages(eq(1L), photo.capture(), thumbnail.capture(), signature.capture(),
+                latitude.capture(), longitude.capture());
+        List<Object> values = new ArrayList<>();
+        values.add(photo.getValue());
+        values.add(thumbnail.getValue());
+        values.add(signature.getValue());
+        values.add(latitude.getValue());
+        values.add(longitude.getValue());
+        return values;
+    }
+
+    private Path file(String path) {
+        return root.resolve(path.replaceFirst("^/uploads/", ""));
+    }
+
+    private double processed(String outcome) {
+        return meterRegistry.get("twsela.images.processed").tag("outcome", outcome).counter().count();
+    }
+
+    @Test
+    @DisplayName("يصغّر الصورة ويُنشئ صورة مصغّرة ويحذف الأصل مع الإبقاء على موقع GPS")
+    void process_shrinksPhoto() throws IOException {
+        byte[] original = withExif(jpeg(2400, 1800));
+        String staged = pipeline.stage(new MockMultipartFile("photo", "photo.jpg", "image/jpeg", original),
+                "delivery-photos");
+        assertThat(staged).startsWith("/uploads/delivery-photos/incoming/");
+        pendingProof(staged);
+        when(proofRepository.completeImages(eq(1L), anyString(), anyString(), isNull(), anyDouble(), anyDouble()))
+                .thenReturn(1);
+
+        pipeline.process(1L);
+
+        List<Object> values = completed();
+        String photoUrl = (String) values.get(0);
+        String thumbnailUrl = (String) values.get(1);
+        assertThat(photoUrl).matches("/uploads/delivery-photos/[0-9a-f]{64}\\.jpg");
+        assertThat(thumbnailUrl).matches("/uploads/delivery-photos/thumbnails/[0-9a-f]{64}\\.jpg");
+        assertThat((Double) values.get(3)).isCloseTo(30.0444, within(1e-4));
+        assertThat((Double) values.get(4)).isCloseTo(31.2357, within(1e-4));
+        verify(proofRepository, never()).save(any());
+
+        // Turned upright (orientation 6) and fitted into 800 px
+        BufferedImage photo = ImageIO.read(file(photoUrl).toFile());
+        assertThat(photo.getWidth()).isEqualTo(600);
+        assertThat(photo.getHeight()).isEqualTo(800);
+        assertThat(ImageIO.read(file(thumbnailUrl).toFile()).getHeight()).isEqualTo(160);
+        assertThat(new String(Files.readAllBytes(file(photoUrl)), StandardCharsets.ISO_8859_1))
+                .doesNotContain("Exif");
+        assertThat(file(staged)).doesNotExist();
+
+        assertThat(processed("ok")).isEqualTo(1);
+        assertThat(meterRegistry.get("twsela.images.bytes.saved").counter().count()).isPositive();
+        assertThat(meterRegistry.get("twsela.images.processing").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("لا يستبدل الإحداثيات المرسلة من التطبيق")
+    void process_keepsAppCoordinates() throws IOException {
+        String staged = pipeline.stage(new MockMultipartFile("photo", "photo.jpg", "image/jpeg",
+                withExif(jpeg(400, 300))), "delivery-photos");
+        DeliveryProof proof = pendingProof(staged);
+        proof.setLatitude(29.9792);
+        proof.setLongitude(31.1342);
+
+        pipeline.process(1L);
+
+        List<Object> values = completed();
+        assertThat(values.get(3)).isNull();
+        assertThat(values.get(4)).isNull();
+    }
+
+    @Test
+    @DisplayName("يحتفظ بالأصل عند تعذر فك الصورة ولا يعيد المحاولة")
+    void process_undecodableKeepsOriginal() throws IOException {
+        String staged = pipeline.stage(new MockMultipartFile("photo", "photo.jpg", "image/jpeg",
+                "not an image".getBytes(StandardCharsets.UTF_8)), "delivery-photos");
+        pendingProof(staged);
+        when(proofRepository.completeImages(1L, null, null, null, null, null)).thenReturn(1);
+
+        pipeline.process(1L);
+
+        verify(proofRepository).completeImages(1L, null, null, null, null, null);
+        assertThat(file(staged)).exists();
+        assertThat(processed("unsupported")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("يحتفظ بالأصل إذا أنهت عقدة أخرى المعالجة أولاً")
+    void process_finishedElsewhereKeepsOriginal() throws IOException {
+        String staged = pipeline.stage(new MockMultipartFile("photo", "photo.jpg", "image/jpeg",
+                jpeg(400, 300)), "delivery-photos");
+        pendingProof(staged);
+
+        pipeline.process(1L);
+
+        assertThat(file(staged)).exists();
+        assertThat(processed("skipped")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("لا يقرأ الإثبات إذا لم تعد صوره معلقة")
+    void process_notPendingSkipped() {
+        pipeline.process(1L);
+
+        verify(proofRepository).recordImageAttempt(1L);
+        verify(proofRepository, never()).findById(any());
+        assertThat(processed("skipped")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("يتخلى عن الإثبات بعد استنفاد المحاولات")
+    void process_abandonedAfterMaxAttempts() throws IOException {
+        String staged = pipeline.stage(new MockMultipartFile("photo", "photo.jpg", "image/jpeg",
+                jpeg(400, 300)), "delivery-photos");
+        pendingProof(staged).setImageAttempts(3);
+        when(proofRepository.completeImages(eq(1L), anyString(), anyString(), isNull(), isNull(), isNull()))
+                .thenThrow(new IllegalStateException("db down"));
+
+        pipeline.process(1L);
+
+        assertThat(file(staged)).exists();
+        assertThat(processed("abandoned")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("يستأنف الإثباتات المعلقة الأقدم أولاً مع حد المحاولات")
+    void resumePending_oldestWithAttemptsLeft() {
+        when(proofRepository.findPendingImageIds(any(Instant.class), eq(3), eq(PageRequest.of(0, 50))))
+                .thenReturn(List.of(4L, 9L));
+
+        pipeline.resumePending();
+
+        verify(proofRepository).recordImageAttempt(4L);
+        verify(proofRepository).recordImageAttempt(9L);
+    }
+
+    @Test
+    @DisplayName("يجب رفض ملف يتجاوز الحد الأقصى للرفع")
+    void stage_tooLarge() {
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.isEmpty()).thenReturn(false);
+        when(file.getSize()).thenReturn(11 * 1024 * 1024L);
+
+        assertThatThrownBy(() -> pipeline.stage(file, "delivery-photos"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("10");
+    }
+
+    @Test
+    @DisplayName("عند امتلاء الطابور يبقى الإثبات معلقاً لإعادة المحاولة لاحقاً")
+    void submit_rejectedWhenQueueFull() {
+        ProofImagePipeline full = new ProofImagePipeline(new FileStorageService(new LocalDiskStorageBackend(root)),
+                proofRepository, meterRegistry, task -> { throw new RejectedExecutionException("full"); },
+                10 * 1024 * 1024, 800, 160, 400, 0.8f, 50, 3);
+
+        assertThat(full.submit(7L)).isFalse();
+
+        assertThat(processed("rejected")).isEqualTo(1);
+        verifyNoInteractions(proofRepository);
+    }
+}
@@ -26,6 +26,33 @@ class PushNotificationServiceTest {
     @InjectMocks
     private PushNotificationService pushNotificationService;
 
+    @Nested
+    @DisplayName("sendPushBulk — إرسال جماعي")
+    class SendPushBulkTests {
+
+        @Test
+        @DisplayName("يجب تحميل الأجهزة باستعلام واحد وتجميع النتائج لكل مستخدم")
+        void sendPushBulk_groupsByUser() {
+            User u1 = new User();
+            u1.setId(1L);
+            User u2 = new User();
+            u2.setId(2L);
+
+            DeviceToken a = new DeviceToken(u1, "token-aaaaa", DeviceToken.Platform.ANDROID);
+            DeviceToken b = new DeviceToken(u1, "token-bbbbb", DeviceToken.Platform.IOS);
+            DeviceToken c = new DeviceToken(u2, "token-ccccc", DeviceToken.Platform.ANDROID);
+            when(deviceTokenRepository.findByUserIdInAndActiveTrue(List.of(1L, 2L, 3L)))
+                    .thenReturn(List.of(a, b, c));
+
+            java.util.Map<Long, Integer> result =
+                    pushNotificationService.sendPushBulk(List.of(1L, 2L, 3L), "عنوان", "محتوى", java.util.Map.of());
+
+            assertThat(result).containsEntry(1L, 2).containsEntry(2L, 1).doesNotContainKey(3L);
+            verify(deviceTokenRepository).saveAll(List.of(a, b, c));
+            verify(deviceTokenRepository, never()).findByUserIdAndActiveTrue(anyLong());
+        }
+    }
+
     @Nested
     @DisplayName("sendPush — إرسال إشعار فوري")
     class SendPushTests {
@@ -0,0 +1,77 @@
+package com.twsela.service;
+
+import com.twsela.domain.Country;
+import com.twsela.domain.TaxRule;
+import com.twsela.repository.CountryRepository;
+import com.twsela.repository.ExchangeRateRepository;
+import com.twsela.repository.TaxRuleRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ذاكرة البيانات المرجعية")
+class ReferenceDataCacheTest {
+
+    @Mock private TaxRuleRepository taxRuleRepository;
+    @Mock private ExchangeRateRepository exchangeRateRepository;
+    @Mock private CountryRepository countryRepository;
+
+    private ReferenceDataCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ReferenceDataCache(taxRuleRepository, exchangeRateRepository, countryRepository);
+    }
+
+    private static Country egypt(String phonePrefix) {
+        Country country = new Country();
+        country.setCode("EG");
+        country.setNameEn("Egypt");
+        country.setCurrencyCode("EGP");
+        country.setPhonePrefix(phonePrefix);
+        return country;
+    }
+
+    @Test
+    @DisplayName("اللقطة تُحمَّل مرة واحدة وتُعاد بعد invalidate()")
+    void loadsOnceUntilInvalidated() {
+        when(countryRepository.findAll()).thenReturn(List.of(egypt("+20")), List.of(egypt("+200")));
+
+        ReferenceData first = cache.snapshot();
+        assertThat(cache.snapshot()).isSameAs(first);
+        assertThat(first.country("eg")).get().extracting(ReferenceData.CountryInfo::phonePrefix).isEqualTo("+20");
+
+        cache.invalidate();
+        ReferenceData second = cache.snapshot();
+
+        assertThat(second.version()).isGreaterThan(first.version());
+        assertThat(second.country("EG")).get().extracting(ReferenceData.CountryInfo::phonePrefix).isEqualTo("+200");
+        verify(countryRepository, times(2)).findAll();
+    }
+
+    @Test
+    @DisplayName("القواعد غير النشطة لا تدخل اللقطة")
+    void inactiveRulesDropped() {
+        TaxRule inactive = new TaxRule();
+        inactive.setId(1L);
+        inactive.setCountryCode("EG");
+        inactive.setTaxType(TaxRule.TaxType.VAT);
+        inactive.setRate(new BigDecimal("0.1000"));
+        inactive.setValidFrom(LocalDate.of(2020, 1, 1));
+        inactive.setActive(false);
+        when(taxRuleRepository.findByActiveTrue()).thenReturn(List.of(inactive));
+
+        assertThat(cache.snapshot().primaryTaxRate("EG", LocalDate.of(2024, 1, 1))).isEmpty();
+    }
+}
@@ -1,5 +1,7 @@
 package com.twsela.service;
 
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
@@ -9,6 +11,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayInputStream;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 
@@ -57,14 +60,19 @@ class ReportExportServiceTest {
 
         @Test
         @DisplayName("يجب تصدير التقرير بصيغة Excel")
-        void exportToExcel_success() {
+        void exportToExcel_success() throws Exception {
             when(biService.getExecutiveSummary(from, to)).thenReturn(java.util.Map.of("totalRevenue", "5000"));
 
             byte[] result = reportExportService.exportToExcel("summary", from, to);
 
             assertThat(result).isNotEmpty();
-            String content = new String(result);
-            assertThat(content).contains("Metric,Value");
+            try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(result))) {
+                Sheet sheet = workbook.getSheetAt(0);
+                assertThat(sheet.getRow(0).getCell(0).getStringCellValue()).isEqualTo("Metric");
+                assertThat(sheet.getRow(0).getCell(1).getStringCellValue()).isEqualTo("Value");
+                assertThat(sheet.getRow(1).getCell(0).getStringCellValue()).isEqualTo("totalRevenue");
+                assertThat(sheet.getRow(1).getCell(1).getStringCellValue()).isEqualTo("5000");
+            }
         }
     }
 
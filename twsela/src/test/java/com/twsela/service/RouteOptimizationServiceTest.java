@@ -18,6 +18,7 @@ import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,6 +26,7 @@ import static org.mockito.Mockito.when;
 class RouteOptimizationServiceTest {
 
     @Mock private OptimizedRouteRepository routeRepository;
+    @Mock private ETACalculationService etaCalculationService;
 
     @InjectMocks private RouteOptimizationService service;
 
@@ -107,6 +109,7 @@ class RouteOptimizationServiceTest {
 
         assertThat(result.getWaypoints()).contains("\"shipmentId\":10");
         assertThat(result.getTotalDistanceKm()).isGreaterThan(0);
+        verify(etaCalculationService).evictRoute(1L);
     }
 
     @Test
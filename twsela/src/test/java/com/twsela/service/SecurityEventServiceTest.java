@@ -7,6 +7,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -26,6 +27,12 @@ class SecurityEventServiceTest {
     @Mock
     private SecurityEventRepository securityEventRepository;
 
+    @Mock
+    private AuditPipeline auditPipeline;
+
+    @Mock
+    private BruteForceDetector bruteForceDetector;
+
     @InjectMocks
     private SecurityEventService securityEventService;
 
@@ -42,58 +49,45 @@ class SecurityEventServiceTest {
     @Test
     @DisplayName("تسجيل حدث أمني عادي")
     void recordEvent_success() {
-        SecurityEvent saved = new SecurityEvent();
-        saved.setId(1L);
-        saved.setUser(testUser);
-        saved.setEventType(SecurityEvent.EventType.LOGIN_SUCCESS);
-        saved.setSeverity(SecurityEvent.Severity.LOW);
-        when(securityEventRepository.save(any(SecurityEvent.class))).thenReturn(saved);
-
         SecurityEvent result = securityEventService.recordEvent(
                 testUser, SecurityEvent.EventType.LOGIN_SUCCESS,
                 "192.168.1.1", "Mozilla/5.0", "Login success", SecurityEvent.Severity.LOW);
 
         assertNotNull(result);
         assertEquals(SecurityEvent.EventType.LOGIN_SUCCESS, result.getEventType());
-        verify(securityEventRepository).save(any(SecurityEvent.class));
+        ArgumentCaptor<AuditPipeline.SecurityEntry> captor = ArgumentCaptor.forClass(AuditPipeline.SecurityEntry.class);
+        verify(auditPipeline).append(captor.capture());
+        assertEquals(1L, captor.getValue().userId());
+        assertEquals("192.168.1.1", captor.getValue().ipAddress());
+        assertEquals(result.getCreatedAt(), captor.getValue().createdAt());
+        verifyNoInteractions(securityEventRepository);
     }
 
     @Test
     @DisplayName("تسجيل حدث أمني حرج يسجل تحذيراً")
     void recordEvent_critical_logsWarning() {
-        SecurityEvent saved = new SecurityEvent();
-        saved.setId(2L);
-        saved.setSeverity(SecurityEvent.Severity.CRITICAL);
-        saved.setEventType(SecurityEvent.EventType.BRUTE_FORCE_DETECTED);
-        when(securityEventRepository.save(any(SecurityEvent.class))).thenReturn(saved);
-
         SecurityEvent result = securityEventService.recordEvent(
                 testUser, SecurityEvent.EventType.BRUTE_FORCE_DETECTED,
                 "10.0.0.1", null, "Brute force detected", SecurityEvent.Severity.CRITICAL);
 
         assertNotNull(result);
         assertEquals(SecurityEvent.Severity.CRITICAL, result.getSeverity());
+        verify(auditPipeline).append(any(AuditPipeline.SecurityEntry.class));
     }
 
     @Test
     @DisplayName("اكتشاف brute force عند تجاوز الحد")
     void detectBruteForce_aboveThreshold_returnsTrue() {
-        List<SecurityEvent> fiveFailures = List.of(
-                new SecurityEvent(), new SecurityEvent(), new SecurityEvent(),
-                new SecurityEvent(), new SecurityEvent());
-        when(securityEventRepository.findRecentByIpAndType(eq("10.0.0.1"),
-                eq(SecurityEvent.EventType.LOGIN_FAILURE), any(Instant.class)))
-                .thenReturn(fiveFailures);
+        when(bruteForceDetector.isBruteForce("10.0.0.1")).thenReturn(true);
 
         assertTrue(securityEventService.detectBruteForce("10.0.0.1"));
+        verifyNoInteractions(securityEventRepository);
     }
 
     @Test
     @DisplayName("عدم اكتشاف brute force تحت الحد")
     void detectBruteForce_belowThreshold_returnsFalse() {
-        when(securityEventRepository.findRecentByIpAndType(eq("10.0.0.1"),
-                eq(SecurityEvent.EventType.LOGIN_FAILURE), any(Instant.class)))
-                .thenReturn(List.of(new SecurityEvent(), new SecurityEvent()));
+        when(bruteForceDetector.isBruteForce("10.0.0.1")).thenReturn(false);
 
         assertFalse(securityEventService.detectBruteForce("10.0.0.1"));
     }
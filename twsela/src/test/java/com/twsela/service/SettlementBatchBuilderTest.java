@@ -0,0 +1,139 @@
+package com.twsela.service;
+
+import com.twsela.domain.SettlementBatch;
+import com.twsela.domain.SettlementItem;
+import com.twsela.service.SettlementService.ItemDraft;
+import com.twsela.web.exception.BusinessRuleException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SettlementBatchBuilderTest {
+
+    @Mock private SettlementService settlementService;
+    @Mock private JdbcTemplate jdbcTemplate;
+
+    private SettlementBatchBuilder builder;
+    private SettlementBatch batch;
+
+    @BeforeEach
+    void setUp() {
+        builder = new SettlementBatchBuilder(settlementService, jdbcTemplate, 500, 2);
+
+        batch = new SettlementBatch();
+        batch.setId(10L);
+        batch.setSettlementNumber("STL-TEST");
+        batch.setPeriod(SettlementBatch.SettlementPeriod.WEEKLY);
+        batch.setStartDate(LocalDate.of(2024, 3, 1));
+        batch.setEndDate(LocalDate.of(2024, 3, 7));
+        batch.setStatus(SettlementBatch.BatchStatus.DRAFT);
+    }
+
+    /** Rows as {shipmentId, merchantId, codAmount}, in the order the cursor returns them. */
+    private void stubEligibleRows(Object[]... rows) {
+        doAnswer(inv -> {
+            if (rows.length == 0) {
+                return null;
+            }
+            RowCallbackHandler handler = inv.getArgument(1);
+            ResultSet rs = mock(ResultSet.class);
+            int[] current = {0};
+            when(rs.getLong(anyInt())).thenAnswer(call -> (Long) rows[current[0]][call.<Integer>getArgument(0) - 1]);
+            when(rs.getString(3)).thenAnswer(call -> "TWS" + rows[current[0]][0]);
+            when(rs.getBigDecimal(4)).thenAnswer(call -> new BigDecimal((String) rows[current[0]][2]));
+            for (int i = 0; i < rows.length; i++) {
+                current[0] = i;
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    @DisplayName("يبني البنود بترتيب التاجر ويُلحقها على دفعات مع مجاميع صحيحة")
+    @SuppressWarnings("unchecked")
+    void build_appendsChunksInMerchantOrder() {
+        when(settlementService.getBatchById(10L)).thenReturn(batch);
+        stubEligibleRows(
+                new Object[]{11L, 1L, "100.00"},
+                new Object[]{12L, 1L, "200.00"},
+                new Object[]{21L, 2L, "1000.00"});
+        when(settlementService.appendItems(eq(10L), anyList()))
+                .thenAnswer(inv -> ((List<?>) inv.getArgument(1)).size());
+        List<Integer> progress = new ArrayList<>();
+
+        SettlementBatchBuilder.BuildResult result = builder.build(10L, progress::add, () -> false);
+
+        assertThat(result.merchants()).isEqualTo(2);
+        assertThat(result.items()).isEqualTo(3);
+        assertThat(result.totalAmount()).isEqualByComparingTo("1300.00");
+        assertThat(result.totalFees()).isEqualByComparingTo("32.50");
+        assertThat(result.netAmount()).isEqualByComparingTo("1267.50");
+        assertThat(progress).containsExactly(5, 67, 99);
+
+        ArgumentCaptor<List<ItemDraft>> chunks = ArgumentCaptor.forClass(List.class);
+        verify(settlementService, times(2)).appendItems(eq(10L), chunks.capture());
+        assertThat(chunks.getAllValues().get(0)).extracting(ItemDraft::shipmentId).containsExactly(11L, 12L);
+        ItemDraft last = chunks.getAllValues().get(1).get(0);
+        assertThat(last.shipmentId()).isEqualTo(21L);
+        assertThat(last.merchantId()).isEqualTo(2L);
+        assertThat(last.type()).isEqualTo(SettlementItem.ItemType.COD);
+        assertThat(last.fee()).isEqualByComparingTo("25.00");
+        assertThat(last.netAmount()).isEqualByComparingTo("975.00");
+        assertThat(last.description()).contains("TWS21");
+    }
+
+    @Test
+    @DisplayName("لا توجد شحنات مؤهلة — لا إضافة")
+    void build_nothingEligible() {
+        when(settlementService.getBatchById(10L)).thenReturn(batch);
+        stubEligibleRows();
+
+        SettlementBatchBuilder.BuildResult result = builder.build(10L);
+
+        assertThat(result.items()).isZero();
+        assertThat(result.netAmount()).isEqualByComparingTo("0");
+        verify(settlementService, never()).appendItems(anyLong(), anyList());
+    }
+
+    @Test
+    @DisplayName("يرفض بناء دفعة ليست مسودة")
+    void build_rejectsNonDraft() {
+        batch.setStatus(SettlementBatch.BatchStatus.COMPLETED);
+        when(settlementService.getBatchById(10L)).thenReturn(batch);
+
+        assertThatThrownBy(() -> builder.build(10L))
+                .isInstanceOf(BusinessRuleException.class);
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @DisplayName("الإلغاء يوقف الإضافة قبل الدفعة التالية")
+    void build_stopsWhenCancelled() {
+        when(settlementService.getBatchById(10L)).thenReturn(batch);
+        stubEligibleRows(new Object[]{11L, 1L, "100.00"});
+
+        assertThatThrownBy(() -> builder.build(10L, percent -> { }, () -> true))
+                .isInstanceOf(CancellationException.class);
+        verify(settlementService, never()).appendItems(anyLong(), anyList());
+    }
+}
@@ -8,23 +8,26 @@ import com.twsela.domain.User;
 import com.twsela.repository.PaymentIntentRepository;
 import com.twsela.repository.SettlementBatchRepository;
 import com.twsela.repository.SettlementItemRepository;
+import com.twsela.repository.ShipmentRepository;
 import com.twsela.repository.UserRepository;
 import com.twsela.web.exception.BusinessRuleException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -34,6 +37,7 @@ class SettlementServiceTest {
     @Mock private SettlementItemRepository settlementItemRepository;
     @Mock private PaymentIntentRepository paymentIntentRepository;
     @Mock private UserRepository userRepository;
+    @Mock private ShipmentRepository shipmentRepository;
 
     @InjectMocks private SettlementService settlementService;
 
@@ -109,6 +113,8 @@ class SettlementServiceTest {
             item.setId(1L);
             return item;
         });
+        when(settlementBatchRepository.addTotals(eq(10L), eq(SettlementBatch.BatchStatus.DRAFT), eq(1),
+                any(), any(), any(), any(Instant.class))).thenReturn(1);
 
         SettlementItem result = settlementService.addItem(10L, null, null,
                 new BigDecimal("1000.00"), SettlementItem.ItemType.COD);
@@ -130,6 +136,8 @@ class SettlementServiceTest {
             item.setId(2L);
             return item;
         });
+        when(settlementBatchRepository.addTotals(eq(10L), eq(SettlementBatch.BatchStatus.DRAFT), eq(1),
+                any(), any(), any(), any(Instant.class))).thenReturn(1);
 
         SettlementItem result = settlementService.addItem(10L, null, null,
                 new BigDecimal("300.00"), SettlementItem.ItemType.REFUND);
@@ -139,6 +147,71 @@ class SettlementServiceTest {
         assertEquals(0, new BigDecimal("300.00").compareTo(result.getNetAmount()));
     }
 
+    @Test
+    @DisplayName("addItem() increments batch totals instead of reloading all items")
+    void addItem_incrementsTotals() {
+        when(settlementBatchRepository.findById(10L)).thenReturn(Optional.of(draftBatch));
+        when(settlementItemRepository.save(any(SettlementItem.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(settlementBatchRepository.addTotals(anyLong(), any(), anyInt(), any(), any(), any(), any()))
+                .thenReturn(1);
+
+        settlementService.addItem(10L, null, null, new BigDecimal("1000.00"), SettlementItem.ItemType.COD);
+
+        verify(settlementBatchRepository).addTotals(eq(10L), eq(SettlementBatch.BatchStatus.DRAFT), eq(1),
+                argThat(v -> v.compareTo(new BigDecimal("1000.00")) == 0),
+                argThat(v -> v.compareTo(new BigDecimal("25.00")) == 0),
+                argThat(v -> v.compareTo(new BigDecimal("975.00")) == 0),
+                any(Instant.class));
+        verify(settlementItemRepository, never()).findByBatchId(anyLong());
+    }
+
+    @Test
+    @DisplayName("appendItems() inserts one JDBC batch and adds the summed totals once")
+    @SuppressWarnings("unchecked")
+    void appendItems_batchInsertAndSingleTotalsUpdate() {
+        when(settlementBatchRepository.getReferenceById(10L)).thenReturn(draftBatch);
+        when(shipmentRepository.getReferenceById(anyLong())).thenAnswer(inv -> {
+            Shipment s = new Shipment();
+            s.setId(inv.getArgument(0));
+            return s;
+        });
+        when(userRepository.getReferenceById(5L)).thenReturn(generator);
+        when(settlementBatchRepository.addTotals(anyLong(), any(), anyInt(), any(), any(), any(), any()))
+                .thenReturn(1);
+        when(settlementItemRepository.insertBatch(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+        int appended = settlementService.appendItems(10L, List.of(
+                new SettlementService.ItemDraft(100L, 5L, new BigDecimal("100.00"), new BigDecimal("2.50"),
+                        new BigDecimal("97.50"), SettlementItem.ItemType.COD, "COD — A"),
+                new SettlementService.ItemDraft(101L, 5L, new BigDecimal("200.00"), new BigDecimal("5.00"),
+                        new BigDecimal("195.00"), SettlementItem.ItemType.COD, "COD — B")));
+
+        assertEquals(2, appended);
+        verify(settlementBatchRepository, times(1)).addTotals(eq(10L), eq(SettlementBatch.BatchStatus.DRAFT), eq(2),
+                argThat(v -> v.compareTo(new BigDecimal("300.00")) == 0),
+                argThat(v -> v.compareTo(new BigDecimal("7.50")) == 0),
+                argThat(v -> v.compareTo(new BigDecimal("292.50")) == 0),
+                any(Instant.class));
+        ArgumentCaptor<List<SettlementItem>> captor = ArgumentCaptor.forClass(List.class);
+        verify(settlementItemRepository).insertBatch(captor.capture());
+        assertEquals(101L, captor.getValue().get(1).getShipment().getId());
+        assertEquals(draftBatch, captor.getValue().get(0).getBatch());
+        verify(settlementItemRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("appendItems() throws when the batch is no longer DRAFT")
+    void appendItems_batchNotDraft() {
+        when(settlementBatchRepository.getReferenceById(10L)).thenReturn(draftBatch);
+        when(settlementBatchRepository.addTotals(anyLong(), any(), anyInt(), any(), any(), any(), any()))
+                .thenReturn(0);
+
+        assertThrows(BusinessRuleException.class, () -> settlementService.appendItems(10L, List.of(
+                new SettlementService.ItemDraft(null, null, BigDecimal.TEN, BigDecimal.ZERO, BigDecimal.TEN,
+                        SettlementItem.ItemType.ADJUSTMENT, "adj"))));
+        verify(settlementItemRepository, never()).insertBatch(anyList());
+    }
+
     @Test
     @DisplayName("processBatch() processes a pending batch to COMPLETED")
     void processBatch_success() {
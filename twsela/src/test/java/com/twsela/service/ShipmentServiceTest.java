@@ -28,12 +28,11 @@ class ShipmentServiceTest {
     @Mock private CourierZoneRepository courierZoneRepository;
     @Mock private ShipmentStatusHistoryRepository shipmentStatusHistoryRepository;
     @Mock private ShipmentStatusRepository shipmentStatusRepository;
-    @Mock private DeliveryPricingRepository deliveryPricingRepository;
     @Mock private RecipientDetailsRepository recipientDetailsRepository;
     @Mock private ShipmentManifestRepository shipmentManifestRepository;
-    @Mock private TelemetrySettingsRepository telemetrySettingsRepository;
     @Mock private CourierLocationHistoryRepository courierLocationHistoryRepository;
     @Mock private ReturnShipmentRepository returnShipmentRepository;
+    @Mock private PricingEngine pricingEngine;
 
     @InjectMocks
     private ShipmentService shipmentService;
@@ -0,0 +1,96 @@
+package com.twsela.service;
+
+import com.twsela.domain.Contract;
+import com.twsela.domain.ContractSlaTerms;
+import com.twsela.domain.ContractSlaTerms.SlaReviewPeriod;
+import com.twsela.repository.ContractSlaTermsRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("تقييم SLA الليلي")
+class SlaEvaluationJobTest {
+
+    private static final Instant NOW = Instant.parse("2026-02-10T00:30:00Z");
+
+    @Mock private ContractSlaTermsRepository slaRepository;
+    @Mock private ContractSlaService slaService;
+
+    private SlaEvaluationJob job;
+
+    @BeforeEach
+    void setUp() {
+        job = new SlaEvaluationJob(slaRepository, slaService, 3);
+    }
+
+    private static ContractSlaTerms terms(long contractId) {
+        Contract contract = new Contract();
+        contract.setId(contractId);
+        ContractSlaTerms sla = new ContractSlaTerms();
+        sla.setContract(contract);
+        sla.setSlaReviewPeriod(SlaReviewPeriod.MONTHLY);
+        return sla;
+    }
+
+    @Test
+    @DisplayName("يقيّم الفترة الحالية والسابقة لكل عقد نشط")
+    void evaluatesCurrentAndPreviousPeriod() {
+        List<ContractSlaTerms> all = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            all.add(terms(id));
+        }
+        when(slaRepository.findAllForActiveContracts()).thenReturn(all);
+
+        SlaEvaluationJob.RunResult result = job.evaluateAll(NOW);
+
+        assertThat(result.contracts()).isEqualTo(5);
+        assertThat(result.evaluations()).isEqualTo(10);
+        assertThat(result.failedContractIds()).isEmpty();
+        ContractSlaService.Period february = ContractSlaService.reviewPeriod(SlaReviewPeriod.MONTHLY, NOW);
+        ContractSlaService.Period january = ContractSlaService.reviewPeriod(SlaReviewPeriod.MONTHLY,
+                Instant.parse("2026-01-15T00:00:00Z"));
+        verify(slaService).storeEvaluation(all.get(0), february, NOW);
+        verify(slaService).storeEvaluation(all.get(0), january, NOW);
+        verify(slaService, times(10)).storeEvaluation(any(), any(), eq(NOW));
+    }
+
+    @Test
+    @DisplayName("فشل عقد لا يوقف الباقين ويُبلَّغ عنه")
+    void failureIsIsolated() {
+        List<ContractSlaTerms> all = List.of(terms(1), terms(2), terms(3));
+        when(slaRepository.findAllForActiveContracts()).thenReturn(all);
+        // One stub for every contract: workers call in any order, on their own threads
+        when(slaService.storeEvaluation(any(), any(), eq(NOW))).thenAnswer(invocation -> {
+            if (invocation.getArgument(0) == all.get(1)) {
+                throw new IllegalStateException("db down");
+            }
+            return null;
+        });
+
+        SlaEvaluationJob.RunResult result = job.evaluateAll(NOW);
+
+        assertThat(result.evaluations()).isEqualTo(4);
+        assertThat(result.failedContractIds()).containsExactly(2L);
+    }
+
+    @Test
+    @DisplayName("لا عقود نشطة — لا شيء يُقيَّم")
+    void noContracts() {
+        when(slaRepository.findAllForActiveContracts()).thenReturn(List.of());
+
+        assertThat(job.evaluateAll(NOW).contracts()).isZero();
+        verifyNoInteractions(slaService);
+    }
+}
@@ -0,0 +1,221 @@
+package com.twsela.service;
+
+import com.twsela.domain.SpeedProfile;
+import com.twsela.repository.SpeedProfileRepository;
+import com.twsela.service.SpeedProfileLearner.Accumulator;
+import com.twsela.service.SpeedProfileLearner.Cell;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SpeedProfileLearnerTest {
+
+    private static final double LAT = 30.0;
+    /** Longitude step of about 0.5 km at latitude 30. */
+    private static final double STEP = 0.5 / (111.195 * Math.cos(Math.toRadians(LAT)));
+
+    @Mock private SpeedProfileRepository profileRepository;
+    @Mock private JdbcTemplate jdbcTemplate;
+    @Mock private ETACalculationService etaCalculationService;
+
+    private SpeedProfileLearner learner;
+
+    @BeforeEach
+    void setUp() {
+        learner = new SpeedProfileLearner(profileRepository, jdbcTemplate, etaCalculationService,
+                28, 1000, 300, 130, 50, 0.5);
+    }
+
+    private static Instant cairo(int hour, int minute, int second) {
+        return LocalDateTime.of(2026, 3, 10, hour, minute, second).atZone(SpeedProfiles.LOCAL_ZONE).toInstant();
+    }
+
+    private static Cell only(List<Cell> cells) {
+        assertThat(cells).hasSize(1);
+        return cells.get(0);
+    }
+
+    @Nested
+    @DisplayName("Accumulator — تجميع المقاطع")
+    class Accumulating {
+
+        @Test
+        @DisplayName("مقاطع متتالية — سرعة من الباب للباب تشمل التوقف")
+        void doorToDoorSpeed() {
+            Accumulator accumulator = learner.newAccumulator();
+            Instant start = cairo(8, 0, 0);
+            // 4 × 0.5 km, one ping a minute, then a minute stopped
+            for (int i = 0; i <= 4; i++) {
+                accumulator.accept(1L, 5L, LAT, 31.0 + i * STEP, 8f, start.plusSeconds(60L * i));
+            }
+            accumulator.accept(1L, 5L, LAT, 31.0 + 4 * STEP, 8f, start.plusSeconds(300));
+
+            Cell cell = only(accumulator.finish());
+
+            assertThat(cell.zoneId()).isEqualTo(5L);
+            assertThat(cell.hourOfDay()).isEqualTo(8);
+            assertThat(cell.seconds()).isEqualTo(300);
+            assertThat(cell.km()).isCloseTo(2.0, within(0.01));
+            // Straight line: path equals span
+            assertThat(cell.tripPathKm() / cell.tripStraightKm()).isCloseTo(1.0, within(1e-4));
+            assertThat(accumulator.segments()).isEqualTo(5);
+        }
+
+        @Test
+        @DisplayName("توقف دقيقتين — يُحسب توقفاً عند محطة لا وقت حركة، ويبدأ رحلة جديدة")
+        void longHaltIsStop() {
+            Accumulator accumulator = learner.newAccumulator();
+            Instant start = cairo(10, 0, 0);
+            accumulator.accept(3L, 5L, LAT, 31.0, 8f, start);
+            accumulator.accept(3L, 5L, LAT, 31.0 + STEP, 8f, start.plusSeconds(60));
+            accumulator.accept(3L, 5L, LAT, 31.0 + 2 * STEP, 8f, start.plusSeconds(120));
+            // Two minutes at the door
+            accumulator.accept(3L, 5L, LAT, 31.0 + 2 * STEP, 8f, start.plusSeconds(180));
+            accumulator.accept(3L, 5L, LAT, 31.0 + 2 * STEP, 8f, start.plusSeconds(240));
+            // Back on the road, doubling back 1 km
+            accumulator.accept(3L, 5L, LAT, 31.0 + STEP, 8f, start.plusSeconds(300));
+            accumulator.accept(3L, 5L, LAT, 31.0, 8f, start.plusSeconds(360));
+
+            Cell cell = only(accumulator.finish());
+
+            assertThat(cell.stops()).isEqualTo(1);
+            assertThat(cell.dwellSeconds()).isEqualTo(120);
+            assertThat(cell.seconds()).isEqualTo(240);
+            assertThat(cell.km()).isCloseTo(2.0, within(0.01));
+            // Two 1 km trips split at the stop, so the way back is not a zero-length round trip
+            assertThat(cell.tripStraightKm()).isCloseTo(2.0, within(0.01));
+            assertThat(cell.tripPathKm() / cell.tripStraightKm()).isCloseTo(1.0, within(1e-4));
+        }
+
+        @Test
+        @DisplayName("قفزة GPS ودقة ضعيفة وفجوة طويلة — تُستبعد")
+        void dropsBadSegments() {
+            Accumulator accumulator = learner.newAccumulator();
+            Instant start = cairo(14, 0, 0);
+            accumulator.accept(1L, 5L, LAT, 31.0, 8f, start);
+            accumulator.accept(1L, 5L, LAT, 31.0 + STEP, 8f, start.plusSeconds(60));
+            // 50 km in a minute
+            accumulator.accept(1L, 5L, LAT, 31.5, 8f, start.plusSeconds(120));
+            // Poor fix
+            accumulator.accept(1L, 5L, LAT, 31.0 + 2 * STEP, 500f, start.plusSeconds(150));
+            accumulator.accept(1L, 5L, LAT, 31.0 + 2 * STEP, 8f, start.plusSeconds(180));
+            // Ten-minute gap: neither time nor distance counted
+            accumulator.accept(1L, 5L, LAT, 31.0 + 6 * STEP, 8f, start.plusSeconds(780));
+
+            Cell cell = only(accumulator.finish());
+
+            assertThat(cell.seconds()).isEqualTo(180);
+            assertThat(cell.km()).isCloseTo(1.0, within(0.01));
+            assertThat(accumulator.pings()).isEqualTo(6);
+        }
+
+        @Test
+        @DisplayName("معامل الالتفاف — طول المسار على المسافة المستقيمة")
+        void detourFromTrip() {
+            Accumulator accumulator = learner.newAccumulator();
+            Instant start = cairo(9, 0, 0);
+            double north = 0.5 / 111.195;
+            // East 1 km then north 1 km: path 2 km over a ~1.41 km span
+            accumulator.accept(2L, 5L, LAT, 31.0, null, start);
+            accumulator.accept(2L, 5L, LAT, 31.0 + STEP, null, start.plusSeconds(60));
+            accumulator.accept(2L, 5L, LAT, 31.0 + 2 * STEP, null, start.plusSeconds(120));
+            accumulator.accept(2L, 5L, LAT + north, 31.0 + 2 * STEP, null, start.plusSeconds(180));
+            accumulator.accept(2L, 5L, LAT + 2 * north, 31.0 + 2 * STEP, null, start.plusSeconds(240));
+
+            Cell cell = only(accumulator.finish());
+
+            assertThat(cell.tripPathKm() / cell.tripStraightKm()).isCloseTo(Math.sqrt(2), within(0.01));
+        }
+
+        @Test
+        @DisplayName("المقطع يُنسب لساعة بدايته وللمنطقة الخاصة بكل جلسة")
+        void bucketsByHourAndZone() {
+            Accumulator accumulator = learner.newAccumulator();
+            accumulator.accept(1L, 5L, LAT, 31.0, 8f, cairo(8, 59, 30));
+            accumulator.accept(1L, 5L, LAT, 31.0 + STEP, 8f, cairo(9, 0, 30));
+            accumulator.accept(1L, 5L, LAT, 31.0 + 2 * STEP, 8f, cairo(9, 1, 30));
+            accumulator.accept(2L, 6L, LAT, 31.0, 8f, cairo(9, 0, 0));
+            accumulator.accept(2L, 6L, LAT, 31.0 + STEP, 8f, cairo(9, 1, 0));
+
+            List<Cell> cells = accumulator.finish().stream()
+                    .sorted(Comparator.comparing(Cell::zoneId).thenComparing(Cell::hourOfDay))
+                    .toList();
+
+            assertThat(cells).extracting(Cell::zoneId, Cell::hourOfDay, Cell::seconds)
+                    .containsExactly(tuple(5L, 8, 60L), tuple(5L, 9, 60L), tuple(6L, 9, 60L));
+        }
+    }
+
+    @Test
+    @DisplayName("learn — يحدّث الملفات الموجودة ويضيف الجديدة ثم يعيد التحميل")
+    @SuppressWarnings("unchecked")
+    void learn_upsertsAndReloads() throws Exception {
+        Instant start = cairo(8, 0, 0);
+        Object[][] rows = {
+                {1L, 5L, LAT, 31.0, start},
+                {1L, 5L, LAT, 31.0 + STEP, start.plusSeconds(60)},
+                {1L, 5L, LAT, 31.0 + 2 * STEP, start.plusSeconds(120)},
+                {2L, 6L, LAT, 31.0, start},
+                {2L, 6L, LAT, 31.0 + 0.8 * STEP, start.plusSeconds(90)}};
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            ResultSet rs = mock(ResultSet.class);
+            int[] current = {0};
+            when(rs.getLong(anyInt())).thenAnswer(call -> (Long) rows[current[0]][call.<Integer>getArgument(0) - 1]);
+            when(rs.getDouble(anyInt())).thenAnswer(call -> (Double) rows[current[0]][call.<Integer>getArgument(0) - 1]);
+            when(rs.getFloat(5)).thenReturn(0f);
+            when(rs.wasNull()).thenReturn(false, true, false, true, false, true, false, true, false, true);
+            when(rs.getTimestamp(6)).thenAnswer(call -> Timestamp.from((Instant) rows[current[0]][4]));
+            for (int i = 0; i < rows.length; i++) {
+                current[0] = i;
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        SpeedProfile existing = new SpeedProfile(5L, 8);
+        existing.setId(40L);
+        existing.setSpeedKmh(99.0);
+        existing.setDetourFactor(1.7);
+        existing.setSampleSeconds(1);
+        when(profileRepository.findAll()).thenReturn(List.of(existing));
+
+        SpeedProfileLearner.LearnResult result = learner.learn();
+
+        ArgumentCaptor<List<SpeedProfile>> saved = ArgumentCaptor.forClass(List.class);
+        verify(profileRepository).saveAll(saved.capture());
+        assertThat(saved.getValue()).hasSize(2).contains(existing);
+        // ~1 km in 2 minutes; the 1 km trip is long enough to measure the detour
+        assertThat(existing.getSpeedKmh()).isCloseTo(30.0, within(0.2));
+        assertThat(existing.getDetourFactor()).isCloseTo(1.0, within(1e-4));
+        assertThat(existing.getSampleSeconds()).isEqualTo(120);
+        SpeedProfile added = saved.getValue().stream().filter(p -> p.getZoneId() == 6L).findFirst().orElseThrow();
+        assertThat(added.getId()).isNull();
+        assertThat(added.getSpeedKmh()).isCloseTo(16.0, within(0.2));
+        // 0.4 km trip in zone 6 is below min-trip-km: no detour observed yet
+        assertThat(added.getDetourFactor()).isZero();
+        assertThat(result.pings()).isEqualTo(5);
+        assertThat(result.profiles()).isEqualTo(2);
+        verify(etaCalculationService).reloadProfiles();
+    }
+}
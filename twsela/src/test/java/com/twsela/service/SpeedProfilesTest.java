@@ -0,0 +1,100 @@
+package com.twsela.service;
+
+import com.twsela.domain.SpeedProfile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+
+class SpeedProfilesTest {
+
+    private static SpeedProfile profile(long zoneId, int hour, double speed, double detour, long seconds) {
+        SpeedProfile profile = new SpeedProfile(zoneId, hour);
+        profile.setSpeedKmh(speed);
+        profile.setDetourFactor(detour);
+        profile.setSampleSeconds(seconds);
+        return profile;
+    }
+
+    private static SpeedProfile stops(long zoneId, int hour, double dwellSeconds, int count) {
+        SpeedProfile profile = new SpeedProfile(zoneId, hour);
+        profile.setStopDwellSeconds(dwellSeconds);
+        profile.setStopCount(count);
+        return profile;
+    }
+
+    private static Instant cairo(int hour, int minute) {
+        return LocalDateTime.of(2026, 3, 10, hour, minute).atZone(SpeedProfiles.LOCAL_ZONE).toInstant();
+    }
+
+    @Test
+    @DisplayName("الرجوع التدريجي: المنطقة والساعة ← المنطقة ← الساعة ← الافتراضي")
+    void fallbackChain() {
+        SpeedProfiles profiles = SpeedProfiles.of(List.of(
+                profile(1, 8, 12.0, 1.4, 2000),
+                profile(1, 14, 30.0, 1.2, 2000),
+                profile(2, 8, 40.0, 1.1, 2000)), 1000, 25.0, 1.3, 180.0);
+
+        assertThat(profiles.speedKmh(1L, 8)).isEqualTo(12.0);
+        assertThat(profiles.detourFactor(1L, 8)).isEqualTo(1.4);
+        // Zone 1 over all hours, weighted by observed time
+        assertThat(profiles.speedKmh(1L, 20)).isCloseTo(21.0, within(1e-9));
+        // Unknown zone: all zones at 08:00
+        assertThat(profiles.speedKmh(9L, 8)).isCloseTo(26.0, within(1e-9));
+        // Nothing for zone 9 at 03:00
+        assertThat(profiles.speedKmh(9L, 3)).isEqualTo(25.0);
+        assertThat(profiles.detourFactor(null, 3)).isEqualTo(1.3);
+    }
+
+    @Test
+    @DisplayName("خلية بعينات قليلة لا تُستخدم وحدها")
+    void sparseCellFallsBack() {
+        SpeedProfiles profiles = SpeedProfiles.of(List.of(
+                profile(1, 8, 70.0, 1.0, 100),
+                profile(1, 9, 20.0, 1.5, 5000)), 1000, 25.0, 1.3, 180.0);
+
+        assertThat(profiles.speedKmh(1L, 8)).isCloseTo((70.0 * 100 + 20.0 * 5000) / 5100, within(1e-9));
+    }
+
+    @Test
+    @DisplayName("السرعة ومعامل الالتفاف محصوران في حدود معقولة")
+    void clamped() {
+        SpeedProfiles profiles = SpeedProfiles.of(List.of(profile(1, 8, 1.0, 9.0, 5000)), 1000, 25.0, 1.3, 180.0);
+
+        assertThat(profiles.speedKmh(1L, 8)).isEqualTo(SpeedProfiles.MIN_SPEED_KMH);
+        assertThat(profiles.detourFactor(1L, 8)).isEqualTo(SpeedProfiles.MAX_DETOUR);
+    }
+
+    @Test
+    @DisplayName("travelSeconds — ينتقل لسرعة الساعة التالية عند عبور الحد")
+    void travelAcrossHourBoundary() {
+        SpeedProfiles profiles = SpeedProfiles.of(List.of(
+                profile(1, 8, 60.0, 1.2, 5000),
+                profile(1, 9, 30.0, 1.2, 5000)), 1000, 25.0, 1.3, 180.0);
+
+        // 08:30 → 09:00 covers 30 km at 60 km/h, the last 10 km take 20 minutes at 30 km/h
+        assertThat(profiles.travelSeconds(1L, 40.0, cairo(8, 30))).isEqualTo(3000);
+        assertThat(profiles.travelSeconds(1L, 0.0, cairo(8, 30))).isZero();
+    }
+
+    @Test
+    @DisplayName("وقت التوقف — بعدد التوقفات وليس بوقت الحركة")
+    void stopDwellWeightedByStops() {
+        SpeedProfiles profiles = SpeedProfiles.of(List.of(
+                stops(1, 8, 240.0, 10),
+                stops(1, 9, 120.0, 2),
+                stops(2, 9, 60.0, 2)), 1000, 25.0, 1.3, 180.0);
+
+        assertThat(profiles.stopDwellSeconds(1L, 8)).isEqualTo(240.0);
+        // Too few stops at 09:00 in zone 1: zone 1 over all hours
+        assertThat(profiles.stopDwellSeconds(1L, 9)).isCloseTo((240.0 * 10 + 120.0 * 2) / 12, within(1e-9));
+        // Zone 2 and all zones at 09:00 have too few stops: the default
+        assertThat(profiles.stopDwellSeconds(2L, 9)).isEqualTo(180.0);
+        // Stops alone say nothing about speed
+        assertThat(profiles.speedKmh(1L, 8)).isEqualTo(25.0);
+    }
+}
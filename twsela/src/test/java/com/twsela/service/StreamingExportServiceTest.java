@@ -0,0 +1,181 @@
+package com.twsela.service;
+
+import com.twsela.service.StreamingExportService.Dataset;
+import com.twsela.service.StreamingExportService.ExportQuery;
+import com.twsela.service.StreamingExportService.Format;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StreamingExportServiceTest {
+
+    private static final Instant FROM = Instant.parse("2024-03-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2024-04-01T00:00:00Z");
+
+    @Mock private JdbcTemplate jdbcTemplate;
+
+    private StreamingExportService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new StreamingExportService(jdbcTemplate, 500, 50);
+    }
+
+    /** Feed {@code count} shipment rows to the row callback, one result-set position at a time. */
+    private void stubShipmentRows(int count) {
+        doAnswer(inv -> {
+            if (count == 0) {
+                return null;
+            }
+            RowCallbackHandler handler = inv.getArgument(1);
+            ResultSet rs = mock(ResultSet.class);
+            int[] current = {0};
+            when(rs.getObject(anyInt())).thenAnswer(call -> {
+                int column = call.getArgument(0);
+                int n = current[0];
+                return switch (column) {
+                    case 1 -> "TWS" + n;
+                    case 2 -> "DELIVERED";
+                    case 3 -> "=HYPERLINK(\"evil\")";
+                    case 4 -> "Cairo, Nasr City";
+                    case 7 -> new BigDecimal("150.50");
+                    case 10 -> Timestamp.from(Instant.parse("2024-03-05T10:00:00Z"));
+                    default -> null;
+                };
+            });
+            for (int i = 0; i < count; i++) {
+                current[0] = i;
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    @Nested
+    @DisplayName("CSV")
+    class CsvTests {
+
+        @Test
+        @DisplayName("يكتب الرأس والصفوف مع الاقتباس وحماية الصيغ")
+        void csv_writesEscapedRows() throws Exception {
+            stubShipmentRows(2);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            long rows = service.export(new ExportQuery(Dataset.SHIPMENTS, FROM, TO, null), Format.CSV, out);
+
+            assertThat(rows).isEqualTo(2);
+            String csv = out.toString(StandardCharsets.UTF_8);
+            assertThat(csv).startsWith("\uFEFFTracking Number,Status,Merchant");
+            String[] lines = csv.split("\r\n");
+            assertThat(lines).hasSize(3);
+            assertThat(lines[1]).isEqualTo(
+                    "TWS0,DELIVERED,\"'=HYPERLINK(\"\"evil\"\")\",\"Cairo, Nasr City\",,,150.50,,,2024-03-05 12:00:00,");
+        }
+
+        @Test
+        @DisplayName("يبلغ عن التقدم كل 10000 صف")
+        void csv_reportsProgress() throws Exception {
+            stubShipmentRows(20_001);
+            List<Long> progress = new ArrayList<>();
+
+            long rows = service.export(new ExportQuery(Dataset.SHIPMENTS, FROM, TO, null), Format.CSV,
+                    new ByteArrayOutputStream(), progress::add);
+
+            assertThat(rows).isEqualTo(20_001);
+            assertThat(progress).containsExactly(10_000L, 20_000L);
+        }
+    }
+
+    @Nested
+    @DisplayName("XLSX")
+    class XlsxTests {
+
+        @Test
+        @DisplayName("ينتج مصنف XLSX حقيقي بأنواع الخلايا الصحيحة")
+        void xlsx_writesWorkbook() throws Exception {
+            stubShipmentRows(120);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+            long rows = service.export(new ExportQuery(Dataset.SHIPMENTS, FROM, TO, null), Format.XLSX, out);
+
+            assertThat(rows).isEqualTo(120);
+            try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+                Sheet sheet = workbook.getSheetAt(0);
+                assertThat(sheet.getLastRowNum()).isEqualTo(120);
+                assertThat(sheet.getRow(0).getCell(0).getStringCellValue()).isEqualTo("Tracking Number");
+                Row last = sheet.getRow(120);
+                assertThat(last.getCell(0).getStringCellValue()).isEqualTo("TWS119");
+                assertThat(last.getCell(6).getNumericCellValue()).isEqualTo(150.50);
+                assertThat(last.getCell(9).getLocalDateTimeCellValue()).hasToString("2024-03-05T12:00");
+                assertThat(last.getCell(4)).isNull();
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("الاستعلام")
+    class QueryTests {
+
+        @Test
+        @DisplayName("مؤشر أمامي فقط بحجم جلب ثابت وفلتر الحالة")
+        void query_usesForwardOnlyCursorAndStatusFilter() throws Exception {
+            stubShipmentRows(0);
+            service.export(new ExportQuery(Dataset.SHIPMENTS, FROM, TO, "DELIVERED"), Format.CSV, new ByteArrayOutputStream());
+
+            ArgumentCaptor<PreparedStatementCreator> creator = ArgumentCaptor.forClass(PreparedStatementCreator.class);
+            verify(jdbcTemplate).query(creator.capture(), any(RowCallbackHandler.class));
+
+            Connection connection = mock(Connection.class);
+            PreparedStatement ps = mock(PreparedStatement.class);
+            ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+            when(connection.prepareStatement(sql.capture(), eq(ResultSet.TYPE_FORWARD_ONLY), eq(ResultSet.CONCUR_READ_ONLY)))
+                    .thenReturn(ps);
+
+            creator.getValue().createPreparedStatement(connection);
+
+            assertThat(sql.getValue()).contains("FROM shipments s")
+                    .contains("WHERE s.created_at >= ? AND s.created_at < ? AND ss.name = ?")
+                    .endsWith("ORDER BY s.created_at");
+            verify(ps).setFetchSize(500);
+            verify(ps).setObject(1, Timestamp.from(FROM));
+            verify(ps).setObject(3, "DELIVERED");
+        }
+
+        @Test
+        @DisplayName("العد يستخدم جملة FROM دون أعمدة مكررة")
+        void count_usesFromClause() {
+            when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT(*) FROM invoices i"), eq(Long.class), any(Object[].class)))
+                    .thenReturn(42L);
+
+            assertThat(service.count(new ExportQuery(Dataset.INVOICES, FROM, TO, null))).isEqualTo(42L);
+        }
+    }
+}
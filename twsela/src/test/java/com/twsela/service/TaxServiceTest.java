@@ -2,6 +2,8 @@ package com.twsela.service;
 
 import com.twsela.domain.TaxRule;
 import com.twsela.web.exception.ResourceNotFoundException;
+import com.twsela.repository.CountryRepository;
+import com.twsela.repository.ExchangeRateRepository;
 import com.twsela.repository.TaxRuleRepository;
 import com.twsela.web.dto.CountryDTO.*;
 import org.junit.jupiter.api.*;
@@ -23,7 +25,15 @@ import static org.mockito.Mockito.*;
 class TaxServiceTest {
 
     @Mock TaxRuleRepository taxRuleRepository;
-    @InjectMocks TaxService taxService;
+    @Mock ExchangeRateRepository exchangeRateRepository;
+    @Mock CountryRepository countryRepository;
+    TaxService taxService;
+
+    @BeforeEach
+    void setUp() {
+        taxService = new TaxService(taxRuleRepository,
+                new ReferenceDataCache(taxRuleRepository, exchangeRateRepository, countryRepository));
+    }
 
     private TaxRule egyptVat() {
         TaxRule r = new TaxRule();
@@ -54,8 +64,7 @@ class TaxServiceTest {
         @Test
         @DisplayName("حساب ضريبة مصر 14%")
         void calculateEgyptVat14() {
-            when(taxRuleRepository.findApplicable(eq("EG"), any(LocalDate.class)))
-                    .thenReturn(List.of(egyptVat()));
+            when(taxRuleRepository.findByActiveTrue()).thenReturn(List.of(egyptVat()));
 
             TaxCalculationResponse res = taxService.calculateTax(new BigDecimal("100.00"), "EG");
             assertThat(res.taxRate()).isEqualByComparingTo(new BigDecimal("0.1400"));
@@ -66,8 +75,7 @@ class TaxServiceTest {
         @Test
         @DisplayName("حساب ضريبة السعودية 15%")
         void calculateSaudiVat15() {
-            when(taxRuleRepository.findApplicable(eq("SA"), any(LocalDate.class)))
-                    .thenReturn(List.of(saudiVat()));
+            when(taxRuleRepository.findByActiveTrue()).thenReturn(List.of(egyptVat(), saudiVat()));
 
             TaxCalculationResponse res = taxService.calculateTax(new BigDecimal("200.00"), "SA");
             assertThat(res.taxAmount()).isEqualByComparingTo(new BigDecimal("30.00"));
@@ -77,13 +85,38 @@ class TaxServiceTest {
         @Test
         @DisplayName("دولة بدون ضريبة ترجع صفر")
         void noTaxRulesReturnsZero() {
-            when(taxRuleRepository.findApplicable(eq("XX"), any(LocalDate.class)))
-                    .thenReturn(Collections.emptyList());
+            when(taxRuleRepository.findByActiveTrue()).thenReturn(Collections.emptyList());
 
             TaxCalculationResponse res = taxService.calculateTax(new BigDecimal("100.00"), "XX");
             assertThat(res.taxAmount()).isEqualByComparingTo(BigDecimal.ZERO);
             assertThat(res.totalAmount()).isEqualByComparingTo(new BigDecimal("100.00"));
         }
+
+        @Test
+        @DisplayName("دفعة بنود — القواعد السارية في التاريخ المحدد واستعلام واحد")
+        void calculateBatchByEffectiveDate() {
+            TaxRule oldVat = egyptVat();
+            oldVat.setValidTo(LocalDate.of(2024, 6, 30));
+            TaxRule newVat = egyptVat();
+            newVat.setId(3L);
+            newVat.setRate(new BigDecimal("0.1500"));
+            newVat.setValidFrom(LocalDate.of(2024, 7, 1));
+            when(taxRuleRepository.findByActiveTrue()).thenReturn(List.of(newVat, oldVat, saudiVat()));
+
+            List<TaxLineRequest> lines = List.of(
+                    new TaxLineRequest(new BigDecimal("100.00"), "EG"),
+                    new TaxLineRequest(new BigDecimal("100.00"), "sa"),
+                    new TaxLineRequest(new BigDecimal("100.00"), "XX"));
+
+            List<TaxCalculationResponse> june = taxService.calculateTaxes(lines, LocalDate.of(2024, 6, 30));
+            List<TaxCalculationResponse> july = taxService.calculateTaxes(lines, LocalDate.of(2024, 7, 1));
+
+            assertThat(june).extracting(TaxCalculationResponse::taxAmount)
+                    .containsExactly(new BigDecimal("14.00"), new BigDecimal("15.00"), BigDecimal.ZERO);
+            assertThat(july.get(0).taxAmount()).isEqualByComparingTo(new BigDecimal("15.00"));
+            verify(taxRuleRepository, times(1)).findByActiveTrue();
+            verify(taxRuleRepository, never()).findApplicable(any(), any());
+        }
     }
 
     @Nested
@@ -124,8 +157,7 @@ class TaxServiceTest {
         void isExemptWhenCategoryInList() {
             TaxRule rule = egyptVat();
             rule.setExemptCategories("[\"FOOD\",\"MEDICAL\"]");
-            when(taxRuleRepository.findApplicable(eq("EG"), any(LocalDate.class)))
-                    .thenReturn(List.of(rule));
+            when(taxRuleRepository.findByActiveTrue()).thenReturn(List.of(rule));
 
             assertThat(taxService.isExempt("EG", "FOOD")).isTrue();
             assertThat(taxService.isExempt("EG", "ELECTRONICS")).isFalse();
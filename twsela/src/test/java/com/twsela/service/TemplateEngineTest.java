@@ -16,6 +16,7 @@ import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -92,4 +93,93 @@ class TemplateEngineTest {
             assertThat(result[1]).isEqualTo("تم إنشاء شحنة TS001");
         }
     }
+
+    @Nested
+    @DisplayName("compiled templates — القوالب المترجمة والتخزين المؤقت")
+    class CompiledTemplateTests {
+
+        @Test
+        @DisplayName("يجب مطابقة سلوك التعبير النمطي في الحالات الحدية")
+        void compile_edgeCasesMatchRegexSemantics() {
+            Map<String, String> vars = Map.of("a", "X", "b_1", "Y");
+
+            assertThat(templateEngine.render("{{{a}}}", vars)).isEqualTo("{X}");
+            assertThat(templateEngine.render("{{a}}{{b_1}}", vars)).isEqualTo("XY");
+            assertThat(templateEngine.render("{{ a }} {{}} {{a}", vars)).isEqualTo("{{ a }} {{}} {{a}");
+            assertThat(templateEngine.render("قيمة {{a-b}} {{a}}", vars)).isEqualTo("قيمة {{a-b}} X");
+            assertThat(templateEngine.render("$ {{a}} \\", Map.of("a", "$1\\"))).isEqualTo("$ $1\\ \\");
+        }
+
+        @Test
+        @DisplayName("يجب تقسيم القالب إلى نصوص ثابتة ومتغيرات")
+        void compile_segments() {
+            CompiledTemplate compiled = CompiledTemplate.compile("شحنة {{trackingNumber}} - {{status}}");
+
+            assertThat(compiled.variableCount()).isEqualTo(2);
+            assertThat(compiled.isConstant()).isFalse();
+            assertThat(CompiledTemplate.compile("بدون متغيرات").isConstant()).isTrue();
+        }
+
+        @Test
+        @DisplayName("يجب ترجمة نص القالب مرة واحدة وإعادة استخدامه")
+        void render_reusesCompiledText() {
+            String text = "شحنة {{trackingNumber}}";
+
+            assertThat(templateEngine.render(text, Map.of("trackingNumber", "TS1"))).isEqualTo("شحنة TS1");
+            assertThat(templateEngine.render(new String(text), Map.of("trackingNumber", "TS2"))).isEqualTo("شحنة TS2");
+            assertThat(templateEngine.compiledFor(text)).isSameAs(templateEngine.compiledFor(new String(text)));
+        }
+
+        @Test
+        @DisplayName("يجب تحميل القالب من قاعدة البيانات مرة واحدة فقط")
+        void renderForChannel_cachesCompiledTemplate() {
+            NotificationTemplate template = new NotificationTemplate();
+            template.setActive(true);
+            template.setBodyTemplateAr("تم تسليم {{trackingNumber}}");
+            when(templateRepository.findByEventTypeAndChannel(NotificationType.STATUS_CHANGED, NotificationChannel.SMS))
+                    .thenReturn(Optional.of(template));
+
+            for (int i = 0; i < 3; i++) {
+                String[] result = templateEngine.renderForChannel(NotificationType.STATUS_CHANGED,
+                        NotificationChannel.SMS, "ar", Map.of("trackingNumber", "TS" + i));
+                assertThat(result[1]).isEqualTo("تم تسليم TS" + i);
+            }
+
+            verify(templateRepository, times(1)).findByEventTypeAndChannel(any(), any());
+        }
+
+        @Test
+        @DisplayName("يجب إعادة التحميل بعد إبطال التخزين المؤقت")
+        void invalidate_reloadsUpdatedTemplate() {
+            NotificationTemplate template = new NotificationTemplate();
+            template.setActive(true);
+            template.setBodyTemplateAr("قديم {{x}}");
+            when(templateRepository.findByEventTypeAndChannel(NotificationType.STATUS_CHANGED, NotificationChannel.SMS))
+                    .thenReturn(Optional.of(template));
+
+            templateEngine.renderForChannel(NotificationType.STATUS_CHANGED, NotificationChannel.SMS, "ar", Map.of("x", "1"));
+            template.setBodyTemplateAr("جديد {{x}}");
+            templateEngine.invalidate();
+            String[] result = templateEngine.renderForChannel(NotificationType.STATUS_CHANGED,
+                    NotificationChannel.SMS, "ar", Map.of("x", "1"));
+
+            assertThat(result[1]).isEqualTo("جديد 1");
+            verify(templateRepository, times(2)).findByEventTypeAndChannel(any(), any());
+        }
+
+        @Test
+        @DisplayName("يجب إرجاع قيم فارغة للقالب غير النشط")
+        void renderForChannel_inactiveTemplate() {
+            NotificationTemplate template = new NotificationTemplate();
+            template.setActive(false);
+            template.setBodyTemplateAr("نص");
+            when(templateRepository.findByEventTypeAndChannel(NotificationType.STATUS_CHANGED, NotificationChannel.PUSH))
+                    .thenReturn(Optional.of(template));
+
+            String[] result = templateEngine.renderForChannel(NotificationType.STATUS_CHANGED,
+                    NotificationChannel.PUSH, "ar", Map.of());
+
+            assertThat(result).containsExactly(null, null);
+        }
+    }
 }
@@ -0,0 +1,140 @@
+package com.twsela.service;
+
+import com.twsela.config.ConcurrencyTestSupport;
+import com.twsela.domain.Wallet;
+import com.twsela.domain.Wallet.WalletType;
+import com.twsela.domain.WalletTransaction.TransactionReason;
+import com.twsela.domain.WalletTransaction.TransactionType;
+import com.twsela.repository.WalletRepository;
+import com.twsela.web.exception.BusinessRuleException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Stress tests for the wallet ledger against a real database (H2 + test profile):
+ * concurrent postings on one wallet must neither lose updates nor overdraw it.
+ */
+class WalletLedgerConcurrencyTest extends ConcurrencyTestSupport {
+
+    private static final int POSTINGS = 1000;
+
+    @Autowired private WalletService walletService;
+    @Autowired private WalletRepository walletRepository;
+
+    @Test
+    @DisplayName("1000 إيداع متوازٍ — لا تضيع أي عملية والسلسلة متصلة")
+    void parallelCredits_noLostUpdates() throws Exception {
+        Wallet wallet = newWallet(BigDecimal.ZERO);
+
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < POSTINGS; i++) {
+            long ref = i;
+            tasks.add(() -> walletService.credit(wallet.getId(), new BigDecimal("1.00"),
+                    TransactionReason.ADJUSTMENT, ref, "stress credit"));
+        }
+        for (Future<Object> f : pool.invokeAll(tasks)) {
+            f.get();
+        }
+
+        assertThat(balanceOf(wallet)).isEqualByComparingTo("1000.00");
+        assertContiguousChain(wallet, POSTINGS, BigDecimal.ZERO);
+    }
+
+    @Test
+    @DisplayName("سحب متوازٍ — لا يصبح الرصيد سالباً أبداً")
+    void parallelDebits_neverOverdraw() throws Exception {
+        Wallet wallet = newWallet(new BigDecimal("100.00"));
+
+        List<Callable<Object>> tasks = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            tasks.add(() -> walletService.debit(wallet.getId(), new BigDecimal("1.00"),
+                    TransactionReason.WITHDRAWAL, null, "stress debit"));
+        }
+        int succeeded = 0;
+        int rejected = 0;
+        for (Future<Object> f : pool.invokeAll(tasks)) {
+            try {
+                f.get();
+                succeeded++;
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(BusinessRuleException.class);
+                rejected++;
+            }
+        }
+
+        assertThat(succeeded).isEqualTo(100);
+        assertThat(rejected).isEqualTo(200);
+        assertThat(balanceOf(wallet)).isEqualByComparingTo("0.00");
+        assertContiguousChain(wallet, 100, new BigDecimal("100.00"));
+    }
+
+    @Test
+    @DisplayName("postAll متوازٍ — إعادة الدفعات نفسها لا تُرحّل شيئاً")
+    void parallelBatches_replayIsIdempotent() throws Exception {
+        Wallet wallet = newWallet(BigDecimal.ZERO);
+        String prefix = "TEST:" + wallet.getId() + ":";
+
+        List<Callable<Integer>> batches = new ArrayList<>();
+        for (int b = 0; b < 10; b++) {
+            List<WalletService.Posting> postings = new ArrayList<>();
+            for (int i = 0; i < POSTINGS / 10; i++) {
+                long ref = b * 100L + i;
+                postings.add(new WalletService.Posting(wallet.getId(), TransactionType.CREDIT,
+                        new BigDecimal("2.50"), TransactionReason.ADJUSTMENT, ref, "batch", prefix + ref));
+            }
+            batches.add(() -> walletService.postAll(postings));
+        }
+
+        assertThat(sum(pool.invokeAll(batches))).isEqualTo(POSTINGS);
+        assertThat(sum(pool.invokeAll(batches))).isZero();
+
+        assertThat(balanceOf(wallet)).isEqualByComparingTo("2500.00");
+        assertContiguousChain(wallet, POSTINGS, BigDecimal.ZERO);
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────
+
+    private Wallet newWallet(BigDecimal opening) {
+        Wallet wallet = new Wallet(newMerchant("Ledger Test", "019"), WalletType.MERCHANT);
+        wallet.setBalance(opening);
+        return walletRepository.save(wallet);
+    }
+
+    private BigDecimal balanceOf(Wallet wallet) {
+        return walletRepository.findBalanceById(wallet.getId()).orElseThrow();
+    }
+
+    /** Every entry's balance_before must equal the previous entry's balance_after. */
+    private void assertContiguousChain(Wallet wallet, int expectedEntries, BigDecimal opening) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                "SELECT type, balance_before, balance_after FROM wallet_transactions WHERE wallet_id = ? " +
+                "ORDER BY id", wallet.getId());
+        assertThat(rows).hasSize(expectedEntries);
+
+        BigDecimal expectedBefore = opening;
+        for (Map<String, Object> row : rows) {
+            assertThat((BigDecimal) row.get("BALANCE_BEFORE")).isEqualByComparingTo(expectedBefore);
+            expectedBefore = (BigDecimal) row.get("BALANCE_AFTER");
+        }
+        assertThat(expectedBefore).isEqualByComparingTo(balanceOf(wallet));
+    }
+
+    private static int sum(List<Future<Integer>> futures) throws Exception {
+        int total = 0;
+        for (Future<Integer> f : futures) {
+            total += f.get();
+        }
+        return total;
+    }
+}
@@ -12,8 +12,10 @@ import com.twsela.web.exception.BusinessRuleException;
 import com.twsela.web.exception.ResourceNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -104,8 +106,9 @@ class WalletServiceTest {
     @Test
     @DisplayName("credit - إيداع مبلغ بنجاح")
     void credit_success() {
-        when(walletRepository.findById(10L)).thenReturn(Optional.of(merchantWallet));
-        when(walletRepository.save(any())).thenReturn(merchantWallet);
+        when(walletRepository.applyCredit(eq(10L), eq(new BigDecimal("200.00")), any(Instant.class))).thenReturn(1);
+        when(walletRepository.findBalanceById(10L)).thenReturn(Optional.of(new BigDecimal("1200.00")));
+        when(walletRepository.getReferenceById(10L)).thenReturn(merchantWallet);
         when(transactionRepository.save(any(WalletTransaction.class))).thenAnswer(inv -> {
             WalletTransaction tx = inv.getArgument(0);
             tx.setId(1L);
@@ -117,7 +120,19 @@ class WalletServiceTest {
 
         assertThat(tx.getBalanceBefore()).isEqualByComparingTo("1000.00");
         assertThat(tx.getBalanceAfter()).isEqualByComparingTo("1200.00");
-        assertThat(merchantWallet.getBalance()).isEqualByComparingTo("1200.00");
+        verify(walletRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("credit - محفظة غير موجودة")
+    void credit_walletNotFound() {
+        when(walletRepository.applyCredit(eq(99L), any(), any())).thenReturn(0);
+        when(walletRepository.findBalanceById(99L)).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> walletService.credit(99L, BigDecimal.TEN,
+                TransactionReason.ADJUSTMENT, null, "missing"))
+                .isInstanceOf(ResourceNotFoundException.class);
+        verify(transactionRepository, never()).save(any());
     }
 
     @Test
@@ -134,8 +149,9 @@ class WalletServiceTest {
     @Test
     @DisplayName("debit - سحب مبلغ بنجاح")
     void debit_success() {
-        when(walletRepository.findById(10L)).thenReturn(Optional.of(merchantWallet));
-        when(walletRepository.save(any())).thenReturn(merchantWallet);
+        when(walletRepository.applyDebit(eq(10L), eq(new BigDecimal("300.00")), any(Instant.class))).thenReturn(1);
+        when(walletRepository.findBalanceById(10L)).thenReturn(Optional.of(new BigDecimal("700.00")));
+        when(walletRepository.getReferenceById(10L)).thenReturn(merchantWallet);
         when(transactionRepository.save(any(WalletTransaction.class))).thenAnswer(inv -> {
             WalletTransaction tx = inv.getArgument(0);
             tx.setId(2L);
@@ -152,11 +168,13 @@ class WalletServiceTest {
     @Test
     @DisplayName("debit - رصيد غير كافٍ")
     void debit_insufficientBalance() {
-        when(walletRepository.findById(10L)).thenReturn(Optional.of(merchantWallet));
+        when(walletRepository.applyDebit(eq(10L), any(), any())).thenReturn(0);
+        when(walletRepository.findBalanceById(10L)).thenReturn(Optional.of(new BigDecimal("1000.00")));
         assertThatThrownBy(() -> walletService.debit(10L, new BigDecimal("5000.00"),
                 TransactionReason.WITHDRAWAL, null, "too much"))
                 .isInstanceOf(BusinessRuleException.class)
                 .hasMessageContaining("رصيد غير كافٍ");
+        verify(transactionRepository, never()).save(any());
     }
 
     @Test
@@ -181,53 +199,186 @@ class WalletServiceTest {
         assertThat(result.getContent()).hasSize(1);
     }
 
+    @Nested
+    @DisplayName("postAll — ترحيل دفعة")
+    class PostAllTests {
+
+        @Test
+        @DisplayName("تحديث واحد لكل محفظة وسلسلة أرصدة متصلة")
+        @SuppressWarnings("unchecked")
+        void postAll_netUpdatePerWallet() {
+            when(walletRepository.applyCredit(eq(10L), eq(new BigDecimal("70.00")), any())).thenReturn(1);
+            when(walletRepository.findBalanceById(10L)).thenReturn(Optional.of(new BigDecimal("1070.00")));
+            when(walletRepository.getReferenceById(10L)).thenReturn(merchantWallet);
+            when(transactionRepository.insertBatch(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+            int posted = walletService.postAll(List.of(
+                    posting(10L, TransactionType.CREDIT, "100.00", null),
+                    posting(10L, TransactionType.DEBIT, "30.00", null)));
+
+            assertThat(posted).isEqualTo(2);
+            verify(walletRepository, times(1)).applyCredit(anyLong(), any(), any());
+            verify(walletRepository, never()).applyDebit(anyLong(), any(), any());
+
+            ArgumentCaptor<List<WalletTransaction>> captor = ArgumentCaptor.forClass(List.class);
+            verify(transactionRepository).insertBatch(captor.capture());
+            List<WalletTransaction> txs = captor.getValue();
+            assertThat(txs.get(0).getBalanceBefore()).isEqualByComparingTo("1000.00");
+            assertThat(txs.get(0).getBalanceAfter()).isEqualByComparingTo("1100.00");
+            assertThat(txs.get(1).getBalanceBefore()).isEqualByComparingTo("1100.00");
+            assertThat(txs.get(1).getBalanceAfter()).isEqualByComparingTo("1070.00");
+        }
+
+        @Test
+        @DisplayName("خصم مُدرج قبل إضافة تغطيه لا يرفض الدفعة")
+        @SuppressWarnings("unchecked")
+        void postAll_debitListedBeforeCredit() {
+            when(walletRepository.applyCredit(eq(10L), eq(new BigDecimal("50.00")), any())).thenReturn(1);
+            when(walletRepository.findBalanceById(10L)).thenReturn(Optional.of(new BigDecimal("60.00")));
+            when(walletRepository.getReferenceById(10L)).thenReturn(merchantWallet);
+            when(transactionRepository.insertBatch(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+            int posted = walletService.postAll(List.of(
+                    posting(10L, TransactionType.DEBIT, "30.00", null),
+                    posting(10L, TransactionType.CREDIT, "80.00", null)));
+
+            assertThat(posted).isEqualTo(2);
+            ArgumentCaptor<List<WalletTransaction>> captor = ArgumentCaptor.forClass(List.class);
+            verify(transactionRepository).insertBatch(captor.capture());
+            List<WalletTransaction> txs = captor.getValue();
+            assertThat(txs.get(0).getType()).isEqualTo(TransactionType.CREDIT);
+            assertThat(txs.get(0).getBalanceBefore()).isEqualByComparingTo("10.00");
+            assertThat(txs.get(0).getBalanceAfter()).isEqualByComparingTo("90.00");
+            assertThat(txs.get(1).getBalanceBefore()).isEqualByComparingTo("90.00");
+            assertThat(txs.get(1).getBalanceAfter()).isEqualByComparingTo("60.00");
+        }
+
+        @Test
+        @DisplayName("تخطي المفاتيح المُرحّلة سابقاً والمكررة في الدفعة")
+        void postAll_skipsPostedKeys() {
+            when(transactionRepository.findExistingIdempotencyKeys(anyCollection())).thenReturn(List.of("K1"));
+            when(walletRepository.applyCredit(eq(10L), eq(new BigDecimal("5.00")), any())).thenReturn(1);
+            when(walletRepository.findBalanceById(10L)).thenReturn(Optional.of(new BigDecimal("1005.00")));
+            when(walletRepository.getReferenceById(10L)).thenReturn(merchantWallet);
+            when(transactionRepository.insertBatch(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+            int posted = walletService.postAll(List.of(
+                    posting(10L, TransactionType.CREDIT, "1.00", "K1"),
+                    posting(10L, TransactionType.CREDIT, "5.00", "K2"),
+                    posting(10L, TransactionType.CREDIT, "5.00", "K2")));
+
+            assertThat(posted).isEqualTo(1);
+        }
+
+        @Test
+        @DisplayName("كل المفاتيح مُرحّلة — لا تحديث للرصيد")
+        void postAll_allPosted() {
+            when(transactionRepository.findExistingIdempotencyKeys(anyCollection())).thenReturn(List.of("K1"));
+
+            assertThat(walletService.postAll(List.of(posting(10L, TransactionType.CREDIT, "1.00", "K1")))).isZero();
+
+            verify(walletRepository, never()).applyCredit(anyLong(), any(), any());
+            verify(transactionRepository, never()).insertBatch(anyList());
+        }
+
+        @Test
+        @DisplayName("رصيد غير كافٍ يرفض الدفعة كاملة")
+        void postAll_insufficientBalance() {
+            when(walletRepository.applyDebit(eq(10L), eq(new BigDecimal("5000.00")), any())).thenReturn(0);
+            when(walletRepository.findBalanceById(10L)).thenReturn(Optional.of(new BigDecimal("1000.00")));
+
+            assertThatThrownBy(() -> walletService.postAll(List.of(
+                    posting(10L, TransactionType.DEBIT, "5000.00", null))))
+                    .isInstanceOf(BusinessRuleException.class)
+                    .hasMessageContaining("رصيد غير كافٍ");
+            verify(transactionRepository, never()).insertBatch(anyList());
+        }
+
+        private WalletService.Posting posting(Long walletId, TransactionType type, String amount, String key) {
+            return new WalletService.Posting(walletId, type, new BigDecimal(amount),
+                    TransactionReason.ADJUSTMENT, null, "test", key);
+        }
+    }
+
     @Test
     @DisplayName("settleShipment - تسوية شحنة COD")
+    @SuppressWarnings("unchecked")
     void settleShipment_codSettlement() {
-        Shipment shipment = new Shipment();
-        shipment.setId(100L);
-        shipment.setTrackingNumber("TS100");
-        shipment.setCodAmount(new BigDecimal("500.00"));
-        shipment.setDeliveryFee(new BigDecimal("30.00"));
-        shipment.setCourier(courier);
-        shipment.setMerchant(merchant);
+        Shipment shipment = codShipment();
 
         when(shipmentRepository.findById(100L)).thenReturn(Optional.of(shipment));
-        when(walletRepository.findByUserId(1L)).thenReturn(Optional.of(merchantWallet));
-        when(walletRepository.findById(10L)).thenReturn(Optional.of(merchantWallet));
-        when(walletRepository.save(any())).thenAnswer(inv -> inv.getArgument(0));
-        when(transactionRepository.save(any())).thenAnswer(inv -> {
-            WalletTransaction tx = inv.getArgument(0);
-            tx.setId(99L);
-            return tx;
-        });
-        when(transactionRepository.existsByWalletIdAndReferenceIdAndReason(anyLong(), anyLong(), any()))
-                .thenReturn(false);
+        when(walletRepository.findByUserIdIn(anyCollection())).thenReturn(List.of(merchantWallet, courierWallet));
+        when(transactionRepository.findExistingIdempotencyKeys(anyCollection())).thenReturn(List.of());
+        when(walletRepository.applyCredit(eq(10L), eq(new BigDecimal("470.00")), any())).thenReturn(1);
+        when(walletRepository.applyCredit(eq(20L), eq(new BigDecimal("500.00")), any())).thenReturn(1);
+        when(walletRepository.findBalanceById(10L)).thenReturn(Optional.of(new BigDecimal("1470.00")));
+        when(walletRepository.findBalanceById(20L)).thenReturn(Optional.of(new BigDecimal("1000.00")));
+        when(walletRepository.getReferenceById(anyLong())).thenAnswer(inv ->
+                inv.<Long>getArgument(0) == 10L ? merchantWallet : courierWallet);
+        when(transactionRepository.insertBatch(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
 
         walletService.settleShipment(100L);
 
-        verify(transactionRepository, atLeast(1)).save(any(WalletTransaction.class));
+        ArgumentCaptor<List<WalletTransaction>> captor = ArgumentCaptor.forClass(List.class);
+        verify(transactionRepository).insertBatch(captor.capture());
+        assertThat(captor.getValue())
+                .extracting(WalletTransaction::getIdempotencyKey)
+                .containsExactly("SHIP:100:SETTLEMENT", "SHIP:100:COD_COLLECTED");
+        verify(transactionRepository, never()).existsByWalletIdAndReferenceIdAndReason(anyLong(), anyLong(), any());
     }
 
     @Test
     @DisplayName("settleShipment - تخطي تسوية مكررة (idempotent)")
     void settleShipment_alreadySettled() {
+        Shipment shipment = codShipment();
+
+        when(shipmentRepository.findById(100L)).thenReturn(Optional.of(shipment));
+        when(walletRepository.findByUserIdIn(anyCollection())).thenReturn(List.of(merchantWallet, courierWallet));
+        when(transactionRepository.findExistingIdempotencyKeys(anyCollection()))
+                .thenReturn(List.of("SHIP:100:COD_COLLECTED", "SHIP:100:SETTLEMENT"));
+
+        walletService.settleShipment(100L);
+
+        verify(walletRepository, never()).applyCredit(anyLong(), any(), any());
+        verify(transactionRepository, never()).insertBatch(anyList());
+    }
+
+    @Test
+    @DisplayName("settleShipments - تحميل المحافظ دفعة واحدة")
+    void settleShipments_bulkLoadsWallets() {
+        Shipment first = codShipment();
+        Shipment second = codShipment();
+        second.setId(101L);
+
+        when(shipmentRepository.findAllById(List.of(100L, 101L))).thenReturn(List.of(first, second));
+        when(walletRepository.findByUserIdIn(anyCollection())).thenReturn(List.of(merchantWallet, courierWallet));
+        when(transactionRepository.findExistingIdempotencyKeys(anyCollection())).thenReturn(List.of());
+        when(walletRepository.applyCredit(anyLong(), any(), any())).thenReturn(1);
+        when(walletRepository.findBalanceById(10L)).thenReturn(Optional.of(new BigDecimal("1940.00")));
+        when(walletRepository.findBalanceById(20L)).thenReturn(Optional.of(new BigDecimal("1500.00")));
+        when(walletRepository.getReferenceById(anyLong())).thenAnswer(inv ->
+                inv.<Long>getArgument(0) == 10L ? merchantWallet : courierWallet);
+        when(transactionRepository.insertBatch(anyList())).thenAnswer(inv -> ((List<?>) inv.getArgument(0)).size());
+
+        int posted = walletService.settleShipments(List.of(100L, 101L));
+
+        assertThat(posted).isEqualTo(4);
+        verify(walletRepository, times(1)).findByUserIdIn(anyCollection());
+        verify(transactionRepository, times(1)).findExistingIdempotencyKeys(anyCollection());
+        verify(walletRepository, times(2)).applyCredit(anyLong(), any(), any());
+        verify(walletRepository, never()).findByUserId(anyLong());
+    }
+
+    private Shipment codShipment() {
         Shipment shipment = new Shipment();
         shipment.setId(100L);
         shipment.setTrackingNumber("TS100");
         shipment.setCodAmount(new BigDecimal("500.00"));
         shipment.setDeliveryFee(new BigDecimal("30.00"));
-        shipment.setCourier(courier);
+        // The courier comes from the shipment's manifest; setCourier is a no-op
+        shipment.setManifest(new ShipmentManifest(courier, "MAN-100"));
         shipment.setMerchant(merchant);
-
-        when(shipmentRepository.findById(100L)).thenReturn(Optional.of(shipment));
-        when(walletRepository.findByUserId(anyLong())).thenReturn(Optional.of(courierWallet));
-        when(transactionRepository.existsByWalletIdAndReferenceIdAndReason(anyLong(), anyLong(), any()))
-                .thenReturn(true);
-
-        walletService.settleShipment(100L);
-
-        verify(transactionRepository, never()).save(any());
+        return shipment;
     }
 
     @Test
@@ -0,0 +1,187 @@
+package com.twsela.service;
+
+import com.twsela.domain.WebhookEvent.DeliveryStatus;
+import com.twsela.domain.WebhookSubscription;
+import com.twsela.repository.WebhookEventRepository;
+import com.twsela.repository.WebhookSubscriptionRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class WebhookDeliveryEngineTest {
+
+    @Mock private WebhookSubscriptionRepository subscriptionRepository;
+    @Mock private WebhookEventRepository eventRepository;
+    @Mock private HttpClient httpClient;
+    @Mock private ScheduledExecutorService scheduler;
+
+    private SimpleMeterRegistry meterRegistry;
+    private WebhookDeliveryEngine.Target target;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        target = new WebhookDeliveryEngine.Target(10L, "https://example.com/hook", "secret123");
+    }
+
+    private WebhookDeliveryEngine engine(int maxInFlight, int maxAttempts, int breakerThreshold) {
+        return new WebhookDeliveryEngine(subscriptionRepository, eventRepository, meterRegistry,
+                httpClient, scheduler, maxInFlight, 100, Duration.ofSeconds(5), maxAttempts,
+                1000, 60000, breakerThreshold, 60000);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void respondWith(int status) {
+        HttpResponse<String> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(status);
+        when(response.body()).thenReturn("ok");
+        doReturn(CompletableFuture.completedFuture(response)).when(httpClient).sendAsync(any(), any());
+    }
+
+    private WebhookDeliveryEngine.Delivery delivery(long eventId) {
+        return new WebhookDeliveryEngine.Delivery(eventId, "STATUS_CHANGED", "{}", 0, target);
+    }
+
+    @Test
+    @DisplayName("targetsFor - مطابقة دقيقة لنوع الحدث")
+    void targetsFor_exactMatch() {
+        WebhookSubscription a = new WebhookSubscription(null, "https://a.example.com", "s1", "SHIPMENT_CREATED, STATUS_CHANGED");
+        a.setId(1L);
+        WebhookSubscription b = new WebhookSubscription(null, "https://b.example.com", "s2", "DELIVERED");
+        b.setId(2L);
+        when(subscriptionRepository.findByActiveTrue()).thenReturn(List.of(a, b));
+
+        WebhookDeliveryEngine engine = engine(4, 5, 5);
+
+        assertThat(engine.targetsFor("STATUS_CHANGED")).extracting(WebhookDeliveryEngine.Target::subscriptionId)
+                .containsExactly(1L);
+        assertThat(engine.targetsFor("CHANGED")).isEmpty();
+        assertThat(engine.targetFor(2L)).isPresent();
+        verify(subscriptionRepository, times(1)).findByActiveTrue();
+    }
+
+    @Test
+    @DisplayName("invalidateIndex - إعادة بناء الفهرس عند الطلب التالي")
+    void invalidateIndex_rebuildsLazily() {
+        when(subscriptionRepository.findByActiveTrue()).thenReturn(List.of());
+        WebhookDeliveryEngine engine = engine(4, 5, 5);
+
+        engine.targetsFor("DELIVERED");
+        engine.invalidateIndex();
+        engine.targetsFor("DELIVERED");
+
+        verify(subscriptionRepository, times(2)).findByActiveTrue();
+    }
+
+    @Test
+    @DisplayName("enqueue - تسليم ناجح يسجل الحالة SENT")
+    void enqueue_successPersistsSent() {
+        respondWith(200);
+        WebhookDeliveryEngine engine = engine(4, 5, 5);
+
+        assertThat(engine.enqueue(delivery(1L))).isTrue();
+
+        verify(eventRepository).recordAttempt(eq(1L), eq(DeliveryStatus.SENT), eq(1), any(), eq(200), eq("ok"));
+        assertThat(engine.isPending(1L)).isFalse();
+        assertThat(meterRegistry.find("twsela.webhooks.delivery.latency").tag("outcome", "success").timer())
+                .isNotNull();
+    }
+
+    @Test
+    @DisplayName("enqueue - الفشل يجدول إعادة المحاولة مع تأخير")
+    void enqueue_failureSchedulesBackoffRetry() {
+        respondWith(500);
+        WebhookDeliveryEngine engine = engine(4, 5, 5);
+
+        engine.enqueue(delivery(1L));
+
+        verify(eventRepository).recordAttempt(eq(1L), eq(DeliveryStatus.FAILED), eq(1), any(), eq(500), any());
+        verify(scheduler).schedule(any(Runnable.class), longThat(d -> d >= 500 && d <= 1000), eq(TimeUnit.MILLISECONDS));
+        assertThat(engine.isPending(1L)).isTrue();
+    }
+
+    @Test
+    @DisplayName("enqueue - الحدث المعلق لا يُرسل مرتين")
+    void enqueue_duplicateIgnored() {
+        doReturn(new CompletableFuture<>()).when(httpClient).sendAsync(any(), any());
+        WebhookDeliveryEngine engine = engine(4, 5, 5);
+
+        assertThat(engine.enqueue(delivery(1L))).isTrue();
+        assertThat(engine.enqueue(delivery(1L))).isFalse();
+
+        verify(httpClient, times(1)).sendAsync(any(), any());
+    }
+
+    @Test
+    @DisplayName("enqueue - حد التزامن لكل نقطة نهاية")
+    void enqueue_respectsPerEndpointConcurrency() {
+        doReturn(new CompletableFuture<>()).when(httpClient).sendAsync(any(), any());
+        WebhookDeliveryEngine engine = engine(1, 5, 5);
+
+        engine.enqueue(delivery(1L));
+        engine.enqueue(delivery(2L));
+
+        verify(httpClient, times(1)).sendAsync(any(), any());
+        assertThat(engine.getQueueDepth()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("circuit breaker - يفتح بعد فشل متتالٍ ويوقف الإرسال")
+    void circuitBreaker_opensAfterConsecutiveFailures() {
+        respondWith(503);
+        WebhookDeliveryEngine engine = engine(4, 1, 2);
+
+        engine.enqueue(delivery(1L));
+        engine.enqueue(delivery(2L));
+        engine.enqueue(delivery(3L));
+
+        assertThat(engine.circuitState(10L)).isEqualTo(WebhookDeliveryEngine.CircuitState.OPEN);
+        verify(httpClient, times(2)).sendAsync(any(), any());
+        assertThat(engine.getQueueDepth()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("backoff - تصاعد أسي مع حد أقصى")
+    void backoff_exponentialWithCap() {
+        WebhookDeliveryEngine engine = engine(4, 10, 5);
+
+        assertThat(engine.backoffCeilingMillis(1)).isEqualTo(1000);
+        assertThat(engine.backoffCeilingMillis(3)).isEqualTo(4000);
+        assertThat(engine.backoffCeilingMillis(10)).isEqualTo(60000);
+        for (int i = 0; i < 50; i++) {
+            assertThat(engine.backoffWithJitterMillis(3)).isBetween(2000L, 4000L);
+        }
+    }
+
+    @Test
+    @DisplayName("isRetryDue - احترام فترة الانتظار والحد الأقصى")
+    void isRetryDue_respectsBackoffAndMaxAttempts() {
+        WebhookDeliveryEngine engine = engine(4, 5, 5);
+        Instant now = Instant.now();
+
+        assertThat(engine.isRetryDue(2, now.minusSeconds(1), now)).isFalse();
+        assertThat(engine.isRetryDue(2, now.minusSeconds(3), now)).isTrue();
+        assertThat(engine.isRetryDue(5, now.minusSeconds(3600), now)).isFalse();
+    }
+}
@@ -20,6 +20,7 @@ import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.*;
@@ -32,6 +33,7 @@ class WebhookServiceTest {
     @Mock private WebhookSubscriptionRepository subscriptionRepository;
     @Mock private WebhookEventRepository eventRepository;
     @Mock private ObjectMapper objectMapper;
+    @Mock private WebhookDeliveryEngine deliveryEngine;
 
     @InjectMocks
     private WebhookService webhookService;
@@ -64,6 +66,7 @@ class WebhookServiceTest {
         assertThat(result.getId()).isEqualTo(10L);
         assertThat(result.getUrl()).isEqualTo("https://example.com/hook");
         verify(subscriptionRepository).save(any());
+        verify(deliveryEngine).invalidateIndex();
     }
 
     @Test
@@ -130,6 +133,36 @@ class WebhookServiceTest {
         assertThat(page.getContent()).hasSize(1);
     }
 
+    @Test
+    @DisplayName("dispatch - حفظ الأحداث وتسليمها للمحرك")
+    void dispatch_enqueuesPerTarget() throws Exception {
+        WebhookDeliveryEngine.Target target = new WebhookDeliveryEngine.Target(10L, "https://example.com/hook", "secret123");
+        when(deliveryEngine.targetsFor("STATUS_CHANGED")).thenReturn(List.of(target));
+        when(objectMapper.writeValueAsString(any())).thenReturn("{}");
+        when(subscriptionRepository.getReferenceById(10L)).thenReturn(subscription);
+        when(eventRepository.saveAll(anyList())).thenAnswer(inv -> {
+            List<WebhookEvent> events = inv.getArgument(0);
+            events.get(0).setId(5L);
+            return events;
+        });
+
+        webhookService.dispatch("STATUS_CHANGED", Map.of("shipmentId", 1));
+
+        verify(deliveryEngine).enqueueAfterCommit(argThat(list -> list.size() == 1
+                && list.get(0).eventId().equals(5L) && list.get(0).target().equals(target)));
+    }
+
+    @Test
+    @DisplayName("dispatch - لا مشتركين")
+    void dispatch_noSubscribers() {
+        when(deliveryEngine.targetsFor("DELIVERED")).thenReturn(List.of());
+
+        webhookService.dispatch("DELIVERED", Map.of());
+
+        verifyNoInteractions(eventRepository);
+        verify(deliveryEngine, never()).enqueueAfterCommit(anyList());
+    }
+
     @Test
     @DisplayName("retryFailed - إعادة محاولة الأحداث الفاشلة")
     void retryFailed_success() {
@@ -138,12 +171,31 @@ class WebhookServiceTest {
         failedEvt.setStatus(DeliveryStatus.FAILED);
         failedEvt.setAttempts(2);
 
+        when(deliveryEngine.getMaxAttempts()).thenReturn(5);
         when(eventRepository.findByStatusAndAttemptsLessThan(DeliveryStatus.FAILED, 5))
                 .thenReturn(List.of(failedEvt));
-        when(eventRepository.save(any())).thenReturn(failedEvt);
+        when(deliveryEngine.isPending(1L)).thenReturn(false);
+        when(deliveryEngine.isRetryDue(eq(2), any(), any())).thenReturn(true);
 
         int retried = webhookService.retryFailed();
         assertThat(retried).isEqualTo(1);
-        verify(eventRepository, atLeastOnce()).save(any());
+        verify(deliveryEngine).enqueueAfterCommit(argThat(list -> list.size() == 1
+                && list.get(0).attempts() == 2));
+    }
+
+    @Test
+    @DisplayName("retryFailed - تخطي الأحداث قبل انتهاء فترة الانتظار")
+    void retryFailed_skipsEventsInBackoff() {
+        WebhookEvent failedEvt = new WebhookEvent(subscription, "STATUS_CHANGED", "{}");
+        failedEvt.setId(1L);
+        failedEvt.setStatus(DeliveryStatus.FAILED);
+        failedEvt.setAttempts(3);
+
+        when(deliveryEngine.getMaxAttempts()).thenReturn(5);
+        when(eventRepository.findByStatusAndAttemptsLessThan(DeliveryStatus.FAILED, 5))
+                .thenReturn(List.of(failedEvt));
+        when(deliveryEngine.isRetryDue(eq(3), any(), any())).thenReturn(false);
+
+        assertThat(webhookService.retryFailed()).isZero();
     }
 }
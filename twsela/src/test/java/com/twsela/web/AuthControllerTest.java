@@ -9,6 +9,8 @@ import com.twsela.security.AuthenticationHelper;
 import com.twsela.security.JwtService;
 import com.twsela.security.TokenBlacklistService;
 import com.twsela.service.AuditService;
+import com.twsela.service.BruteForceDetector;
+import com.twsela.service.IpBlockingService;
 import com.twsela.service.MetricsService;
 import com.twsela.web.dto.LoginRequest;
 import org.junit.jupiter.api.BeforeEach;
@@ -27,8 +29,10 @@ import org.springframework.test.web.servlet.MockMvc;
 import java.util.Map;
 import java.util.Optional;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
@@ -65,6 +69,12 @@ class AuthControllerTest {
     @MockBean
     private MetricsService metricsService;
 
+    @MockBean
+    private IpBlockingService ipBlockingService;
+
+    @MockBean
+    private BruteForceDetector bruteForceDetector;
+
     private User testUser;
     private Role testRole;
     private UserStatus activeStatus;
@@ -155,12 +165,61 @@ class AuthControllerTest {
                 .thenReturn(Optional.of(testUser));
         when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenThrow(new BadCredentialsException("Bad credentials"));
+        when(ipBlockingService.recordLoginFailure(any(), eq("0501234567")))
+                .thenReturn(new BruteForceDetector.Verdict(1, 1, false, false));
 
         mockMvc.perform(post("/api/auth/login")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(request)))
                 .andExpect(status().isUnauthorized())
                 .andExpect(jsonPath("$.success").value(false));
+
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    @DisplayName("POST /api/auth/login - bad credentials past the account threshold lock the account")
+    void login_BadCredentials_LocksAccount() throws Exception {
+        LoginRequest request = new LoginRequest("0501234567", "wrongpassword");
+
+        when(userRepository.findByPhoneWithRoleAndStatus("0501234567"))
+                .thenReturn(Optional.of(testUser));
+        when(userRepository.findByPhone("0501234567")).thenReturn(Optional.of(testUser));
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenThrow(new BadCredentialsException("Bad credentials"));
+        when(ipBlockingService.recordLoginFailure(any(), eq("0501234567")))
+                .thenReturn(new BruteForceDetector.Verdict(5, 5, false, true));
+
+        mockMvc.perform(post("/api/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isUnauthorized());
+
+        verify(userRepository).save(testUser);
+        assertThat(testUser.getFailedLoginAttempts()).isEqualTo(5);
+        assertThat(testUser.getLockedUntil()).isAfter(java.time.Instant.now());
+    }
+
+    @Test
+    @DisplayName("POST /api/auth/login - a forged X-Forwarded-For does not choose the IP that gets counted")
+    void login_BadCredentials_IgnoresForgedForwardedFor() throws Exception {
+        LoginRequest request = new LoginRequest("0501234567", "wrongpassword");
+
+        when(userRepository.findByPhoneWithRoleAndStatus("0501234567"))
+                .thenReturn(Optional.of(testUser));
+        when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
+                .thenThrow(new BadCredentialsException("Bad credentials"));
+        when(ipBlockingService.recordLoginFailure(any(), eq("0501234567")))
+                .thenReturn(new BruteForceDetector.Verdict(1, 1, false, false));
+
+        mockMvc.perform(post("/api/auth/login")
+                        .header("X-Forwarded-For", "41.33.0.10")
+                        .with(req -> { req.setRemoteAddr("198.51.100.7"); return req; })
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isUnauthorized());
+
+        verify(ipBlockingService).recordLoginFailure("198.51.100.7", "0501234567");
     }
 
     @Test
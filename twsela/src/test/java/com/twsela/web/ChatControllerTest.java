@@ -6,6 +6,8 @@ import com.twsela.security.AuthenticationHelper;
 import com.twsela.security.JwtService;
 import com.twsela.security.TokenBlacklistService;
 import com.twsela.service.ChatService;
+import com.twsela.web.dto.ChatDTO.MessagePage;
+import com.twsela.web.dto.ChatDTO.MessageView;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,6 +25,7 @@ import java.time.Instant;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -92,18 +95,33 @@ class ChatControllerTest {
     @Test
     @DisplayName("يجب عرض رسائل غرفة المحادثة")
     void getMessages() throws Exception {
-        ChatMessage m1 = new ChatMessage();
-        m1.setId(1L);
-        m1.setContent("مرحبا");
-        m1.setMessageType(ChatMessage.MessageType.TEXT);
-        m1.setSentAt(Instant.now());
+        MessageView m1 = new MessageView(7L, 50L, 10L, "مرسل", "مرحبا", "TEXT", Instant.now());
 
-        when(chatService.getMessages(50L)).thenReturn(List.of(m1));
+        when(chatService.getMessages(50L, 8L, 1)).thenReturn(new MessagePage(50L, List.of(m1), 7L));
 
         mockMvc.perform(get("/api/chat/rooms/50/messages")
+                        .param("beforeId", "8")
+                        .param("limit", "1")
                         .with(user("merchant").roles("MERCHANT")))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.success").value(true));
+                .andExpect(jsonPath("$.success").value(true))
+                .andExpect(jsonPath("$.data.messages[0].content").value("مرحبا"))
+                .andExpect(jsonPath("$.data.nextBeforeId").value(7));
+    }
+
+    @Test
+    @DisplayName("يجب تسجيل قراءة رسائل الغرفة")
+    void markRead() throws Exception {
+        when(authHelper.getCurrentUserId(any(Authentication.class))).thenReturn(10L);
+
+        mockMvc.perform(post("/api/chat/rooms/50/read")
+                        .param("messageId", "7")
+                        .with(user("merchant").roles("MERCHANT"))
+                        .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.data.messageId").value(7));
+
+        verify(chatService).markRead(50L, 10L, 7L);
     }
 
     @Test
@@ -0,0 +1,124 @@
+package com.twsela.web;
+
+import com.twsela.security.JwtService;
+import com.twsela.service.AuthorizationService;
+import com.twsela.service.FileStorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(controllers = FileController.class, properties = {
+        "app.security.jwt.secret=dGVzdC1zZWNyZXQta2V5LWZvci1qd3QtdG9rZW4tbXVzdC1iZS1sb25n",
+        "app.security.jwt.expiration-ms=3600000"
+})
+@Import(FileControllerTest.TestMethodSecurityConfig.class)
+class FileControllerTest {
+
+    @TestConfiguration
+    @EnableMethodSecurity
+    static class TestMethodSecurityConfig {}
+
+    private static final String HASH = "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+
+    @Autowired private MockMvc mockMvc;
+
+    @MockBean private FileStorageService fileStorageService;
+    @MockBean private AuthorizationService authorizationService;
+    @MockBean private JwtService jwtService;
+    @MockBean private com.twsela.security.TokenBlacklistService tokenBlacklistService;
+    @MockBean private com.twsela.security.AuthenticationHelper authHelper;
+    @MockBean private UserDetailsService userDetailsService;
+
+    private FileStorageService.StoredFile stored;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stored = new FileStorageService.StoredFile("/uploads/pod/" + HASH + ".jpg", "pod/" + HASH + ".jpg", 6,
+                Instant.parse("2026-03-01T10:00:00Z"), HASH);
+        when(fileStorageService.find("/pod/" + HASH + ".jpg")).thenReturn(Optional.of(stored));
+        when(fileStorageService.open(stored))
+                .thenReturn(new ByteArrayResource("abcdef".getBytes(StandardCharsets.UTF_8)));
+        when(authorizationService.canAccessFile(stored.path())).thenReturn(true);
+    }
+
+    @Test
+    @DisplayName("GET /api/files/** — ملف لا يخص المستخدم يُعامل كغير موجود")
+    void download_notAllowed() throws Exception {
+        when(authorizationService.canAccessFile(stored.path())).thenReturn(false);
+
+        mockMvc.perform(get("/api/files/pod/" + HASH + ".jpg").with(user("0509999999").roles("MERCHANT")))
+                .andExpect(status().isNotFound());
+
+        verify(fileStorageService, never()).open(any());
+    }
+
+    @Test
+    @DisplayName("GET /api/files/** — يعيد الملف مع ETag")
+    void download_full() throws Exception {
+        mockMvc.perform(get("/api/files/pod/" + HASH + ".jpg").with(user("0501234567").roles("COURIER")))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + HASH + "\""))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(content().string("abcdef"));
+    }
+
+    @Test
+    @DisplayName("GET /api/files/** — يدعم طلبات Range الجزئية")
+    void download_range() throws Exception {
+        mockMvc.perform(get("/api/files/pod/" + HASH + ".jpg").with(user("0501234567").roles("COURIER"))
+                        .header(HttpHeaders.RANGE, "bytes=1-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 1-3/6"))
+                .andExpect(content().string("bcd"));
+    }
+
+    @Test
+    @DisplayName("GET /api/files/** — يعيد 304 عند تطابق If-None-Match")
+    void download_notModified() throws Exception {
+        mockMvc.perform(get("/api/files/pod/" + HASH + ".jpg").with(user("0501234567").roles("COURIER"))
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"" + HASH + "\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verify(fileStorageService, never()).open(any());
+    }
+
+    @Test
+    @DisplayName("GET /api/files/** — يرفض نطاقاً خارج حجم الملف")
+    void download_rangeNotSatisfiable() throws Exception {
+        mockMvc.perform(get("/api/files/pod/" + HASH + ".jpg").with(user("0501234567").roles("COURIER"))
+                        .header(HttpHeaders.RANGE, "bytes=10-20"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */6"));
+    }
+
+    @Test
+    @DisplayName("GET /api/files/** — يعيد 404 لملف غير موجود")
+    void download_notFound() throws Exception {
+        when(fileStorageService.find(anyString())).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/api/files/pod/missing.jpg").with(user("0501234567").roles("COURIER")))
+                .andExpect(status().isNotFound());
+    }
+}
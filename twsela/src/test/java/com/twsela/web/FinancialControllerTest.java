@@ -43,6 +43,7 @@ class FinancialControllerTest {
     @MockBean private com.twsela.security.TokenBlacklistService tokenBlacklistService;
     @MockBean private com.twsela.security.AuthenticationHelper authHelper;
     @MockBean private UserDetailsService userDetailsService;
+    @MockBean private com.twsela.service.AsyncJobService asyncJobService;
 
     private User ownerUser;
     private Payout samplePayout;
@@ -134,6 +135,40 @@ class FinancialControllerTest {
                 .andExpect(jsonPath("$.id").value(10));
     }
 
+    // ======== POST /api/financial/payouts/runs ========
+
+    @Test
+    @DisplayName("POST /api/financial/payouts/runs — يجب جدولة توليد دفعات المناديب")
+    void runPayouts_queuesJob() throws Exception {
+        AsyncJob job = new AsyncJob();
+        job.setJobType("PAYOUT_GENERATION");
+        when(asyncJobService.createJob(eq("PAYOUT_GENERATION"),
+                eq("{\"type\":\"COURIER_SETTLEMENT\",\"startDate\":\"2024-03-01\",\"endDate\":\"2024-03-31\"}"),
+                anyInt(), anyInt())).thenReturn(job);
+
+        mockMvc.perform(post("/api/financial/payouts/runs")
+                        .with(authentication(ownerAuth))
+                        .with(csrf())
+                        .param("payoutType", "COURIER")
+                        .param("startDate", "2024-03-01")
+                        .param("endDate", "2024-03-31"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.jobType").value("PAYOUT_GENERATION"));
+    }
+
+    @Test
+    @DisplayName("POST /api/financial/payouts/runs — يجب رفض نوع دفعة غير معروف")
+    void runPayouts_rejectsUnknownType() throws Exception {
+        mockMvc.perform(post("/api/financial/payouts/runs")
+                        .with(authentication(ownerAuth))
+                        .with(csrf())
+                        .param("payoutType", "WAREHOUSE")
+                        .param("startDate", "2024-03-01")
+                        .param("endDate", "2024-03-31"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(asyncJobService);
+    }
+
     // ======== GET /api/financial/payouts/{payoutId} ========
 
     @Test
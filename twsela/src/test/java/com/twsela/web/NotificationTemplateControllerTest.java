@@ -7,6 +7,7 @@ import com.twsela.repository.NotificationTemplateRepository;
 import com.twsela.security.JwtService;
 import com.twsela.service.NotificationAnalyticsService;
 import com.twsela.service.NotificationDispatcher;
+import com.twsela.service.TemplateEngine;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,6 +43,7 @@ class NotificationTemplateControllerTest {
     @MockBean private NotificationTemplateRepository templateRepository;
     @MockBean private NotificationDispatcher dispatcher;
     @MockBean private NotificationAnalyticsService analyticsService;
+    @MockBean private TemplateEngine templateEngine;
     @MockBean private JwtService jwtService;
     @MockBean private com.twsela.security.TokenBlacklistService tokenBlacklistService;
     @MockBean private com.twsela.security.AuthenticationHelper authHelper;